@@ -24,6 +24,8 @@
 package com.gazbert.bxbot;
 
 import com.gazbert.bxbot.core.engine.TradingEngine;
+import com.gazbert.bxbot.core.engine.TradingEngineHost;
+import com.gazbert.bxbot.core.failover.FailoverManager;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
@@ -39,10 +41,14 @@ import org.springframework.util.Assert;
 public class BXBot implements CommandLineRunner {
 
     private final TradingEngine tradingEngine;
+    private final TradingEngineHost tradingEngineHost;
+    private final FailoverManager failoverManager;
 
     @Autowired
-    public BXBot(TradingEngine tradingEngine) {
+    public BXBot(TradingEngine tradingEngine, TradingEngineHost tradingEngineHost, FailoverManager failoverManager) {
         this.tradingEngine = tradingEngine;
+        this.tradingEngineHost = tradingEngineHost;
+        this.failoverManager = failoverManager;
     }
 
     public static void main(String[] args) {
@@ -51,6 +57,8 @@ public class BXBot implements CommandLineRunner {
 
     @Override
     public void run(String... strings) throws Exception {
+        failoverManager.awaitActive(); // a standby waits here until the primary's lease expires
+        tradingEngineHost.startAll(); // hosted bots run on their own threads
         tradingEngine.start();
     }
 }
\ No newline at end of file
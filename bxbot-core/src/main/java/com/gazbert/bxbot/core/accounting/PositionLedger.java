@@ -0,0 +1,306 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.accounting;
+
+import com.gazbert.bxbot.core.journal.TradeJournal;
+import com.gazbert.bxbot.domain.accounting.MarketPosition;
+import com.gazbert.bxbot.trading.api.OrderType;
+import com.gazbert.bxbot.trading.api.Position;
+import com.gazbert.bxbot.trading.api.PositionProvider;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * Keeps the bot's position, average cost, realised P&amp;L, and fees for each market it trades, updating them as each
+ * fill is detected by the {@link TradeJournal}. Each fill is a constant time update - nothing is replayed.
+ * </p>
+ * <p>
+ * Unrealised P&amp;L is marked to the latest price seen by the
+ * {@link com.gazbert.bxbot.core.metrics.InstrumentedExchangeAdapter}s: the last trade price, or the mid price of the
+ * latest order book fetched. Fees are charged at the fee rates the Trading Strategies (or the order router) last
+ * fetched for the market; fills before a rate has been seen are not charged. So no extra calls are made to the
+ * exchanges.
+ * </p>
+ * <p>
+ * Positions use average cost accounting: buying adds to the cost of a long position at the fill price, and selling out
+ * of it realises the difference between the fill price and the average cost. Short positions work the same way in
+ * reverse. A fill larger than the position closes it out and opens a new one the other way at the fill price.
+ * </p>
+ * <p>
+ * Positions are built from the fills detected since the bot started. If the Trade Journal is inferring fills from
+ * orders that have gone from the open orders, the inferred fills are applied too, but the position is flagged as
+ * unconfirmed - see {@link Position#isConfirmed()}.
+ * </p>
+ *
+ * @author gazbert
+ */
+@Component
+public class PositionLedger {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    /*
+     * Average costs are rounded to this precision; everything else is exact.
+     */
+    private static final MathContext AVERAGE_COST_PRECISION = MathContext.DECIMAL64;
+
+    /*
+     * Account key -> the market's account. Each account is guarded by itself.
+     */
+    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+
+
+    @Autowired
+    public PositionLedger(TradeJournal tradeJournal) {
+        tradeJournal.addFillListener(this::onFill);
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Updates
+    // ------------------------------------------------------------------------------------------------
+
+    /**
+     * Applies a fill to the market's position.
+     *
+     * @param exchangeId the exchange id.
+     * @param marketId   the market id.
+     * @param orderType  BUY or SELL.
+     * @param price      the fill price.
+     * @param quantity   the quantity filled.
+     */
+    public void onFill(String exchangeId, String marketId, OrderType orderType, BigDecimal price, BigDecimal quantity) {
+        onFill(exchangeId, marketId, orderType, price, quantity, false);
+    }
+
+    /**
+     * Applies a fill to the market's position. An inferred fill marks the position as unconfirmed.
+     *
+     * @param exchangeId the exchange id.
+     * @param marketId   the market id.
+     * @param orderType  BUY or SELL.
+     * @param price      the fill price.
+     * @param quantity   the quantity filled.
+     * @param inferred   true if the fill was inferred rather than seen.
+     */
+    public void onFill(String exchangeId, String marketId, OrderType orderType, BigDecimal price, BigDecimal quantity,
+                       boolean inferred) {
+        if (orderType == null || price == null || quantity == null || quantity.signum() <= 0) {
+            LOG.warn(() -> "Ignoring incomplete fill for market " + marketId + " on exchange " + exchangeId
+                    + " - type: " + orderType + " price: " + price + " quantity: " + quantity);
+            return;
+        }
+        accountFor(exchangeId, marketId).applyFill(orderType, price, quantity, inferred);
+    }
+
+    /**
+     * Marks the market's position to a price just fetched from the exchange.
+     *
+     * @param exchangeId the exchange id.
+     * @param marketId   the market id.
+     * @param price      the latest price.
+     */
+    public void priceObserved(String exchangeId, String marketId, BigDecimal price) {
+        if (price != null && price.signum() > 0) {
+            accountFor(exchangeId, marketId).mark(price);
+        }
+    }
+
+    /**
+     * Records the fee rate the exchange charges on the given side of the market, as a fraction of the order value,
+     * e.g. 0.0025 for 0.25%.
+     *
+     * @param exchangeId the exchange id.
+     * @param marketId   the market id.
+     * @param orderType  BUY or SELL.
+     * @param feeRate    the fee rate.
+     */
+    public void feeRateObserved(String exchangeId, String marketId, OrderType orderType, BigDecimal feeRate) {
+        if (orderType != null && feeRate != null) {
+            accountFor(exchangeId, marketId).setFeeRate(orderType, feeRate);
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Queries
+    // ------------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the position in a market. It is flat if nothing has been filled.
+     *
+     * @param exchangeId the exchange id.
+     * @param marketId   the market id.
+     * @return the position.
+     */
+    public Position getPosition(String exchangeId, String marketId) {
+        final Account account = accounts.get(accountKey(exchangeId, marketId));
+        return account == null ? new Account(exchangeId, marketId).toPosition() : account.toPosition();
+    }
+
+    /**
+     * Returns a provider for the positions on the given exchange, for Trading Strategies to use.
+     *
+     * @param exchangeId the exchange id.
+     * @return the provider.
+     */
+    public PositionProvider providerFor(String exchangeId) {
+        return marketId -> getPosition(exchangeId, marketId);
+    }
+
+    /**
+     * Returns the position in every market a fill or price has been seen for, ordered by exchange then market.
+     *
+     * @return the positions.
+     */
+    public List<MarketPosition> getPositions() {
+        final List<MarketPosition> positions = new ArrayList<>();
+        accounts.values().forEach(account -> positions.add(account.toMarketPosition()));
+        positions.sort(Comparator.comparing(MarketPosition::getExchange).thenComparing(MarketPosition::getMarket));
+        return positions;
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Util methods
+    // ------------------------------------------------------------------------------------------------
+
+    private Account accountFor(String exchangeId, String marketId) {
+        return accounts.computeIfAbsent(accountKey(exchangeId, marketId), key -> new Account(exchangeId, marketId));
+    }
+
+    private static String accountKey(String exchangeId, String marketId) {
+        return exchangeId + '\u0000' + marketId;
+    }
+
+    /*
+     * The running totals for a market. The quantity is signed: negative when short.
+     */
+    private static final class Account {
+
+        private final String exchangeId;
+        private final String marketId;
+
+        private BigDecimal quantity = BigDecimal.ZERO;
+        private BigDecimal averageCost = BigDecimal.ZERO;
+        private BigDecimal realisedPnl = BigDecimal.ZERO;
+        private BigDecimal fees = BigDecimal.ZERO;
+        private BigDecimal buyFeeRate;
+        private BigDecimal sellFeeRate;
+        private BigDecimal markPrice;
+        private long fillCount;
+        private long inferredFillCount;
+
+        Account(String exchangeId, String marketId) {
+            this.exchangeId = exchangeId;
+            this.marketId = marketId;
+        }
+
+        synchronized void applyFill(OrderType orderType, BigDecimal price, BigDecimal fillQuantity,
+                                    boolean inferred) {
+
+            final boolean buy = orderType == OrderType.BUY;
+            final BigDecimal signedFill = buy ? fillQuantity : fillQuantity.negate();
+
+            if (quantity.signum() == 0 || quantity.signum() == signedFill.signum()) {
+                // Opening or adding to the position: blend the fill price into the average cost.
+                final BigDecimal newQuantity = quantity.add(signedFill);
+                averageCost = quantity.multiply(averageCost).add(signedFill.multiply(price))
+                        .divide(newQuantity, AVERAGE_COST_PRECISION);
+                quantity = newQuantity;
+
+            } else {
+                // Reducing the position: realise P&L on the part closed out, and flip if the fill is bigger.
+                final BigDecimal closedQuantity = fillQuantity.min(quantity.abs());
+                final BigDecimal pnlPerUnit = quantity.signum() > 0 ? price.subtract(averageCost)
+                        : averageCost.subtract(price);
+                realisedPnl = realisedPnl.add(pnlPerUnit.multiply(closedQuantity));
+                quantity = quantity.add(signedFill);
+                if (quantity.signum() == 0) {
+                    averageCost = BigDecimal.ZERO;
+                } else if (quantity.signum() == signedFill.signum()) {
+                    averageCost = price;
+                }
+            }
+
+            final BigDecimal feeRate = buy ? buyFeeRate : sellFeeRate;
+            if (feeRate != null) {
+                fees = fees.add(price.multiply(fillQuantity).multiply(feeRate));
+            }
+            if (markPrice == null) {
+                markPrice = price;
+            }
+            fillCount++;
+            if (inferred) {
+                inferredFillCount++;
+            }
+        }
+
+        synchronized void mark(BigDecimal price) {
+            markPrice = price;
+        }
+
+        synchronized void setFeeRate(OrderType orderType, BigDecimal feeRate) {
+            if (orderType == OrderType.BUY) {
+                buyFeeRate = feeRate;
+            } else {
+                sellFeeRate = feeRate;
+            }
+        }
+
+        synchronized Position toPosition() {
+            return new Position(marketId, quantity, averageCost, realisedPnl, fees, markPrice, unrealisedPnl(),
+                    fillCount, inferredFillCount);
+        }
+
+        synchronized MarketPosition toMarketPosition() {
+            final BigDecimal unrealisedPnl = unrealisedPnl();
+            final MarketPosition marketPosition = new MarketPosition(exchangeId, marketId);
+            marketPosition.setQuantity(quantity);
+            marketPosition.setAverageCost(averageCost);
+            marketPosition.setRealisedPnl(realisedPnl);
+            marketPosition.setFees(fees);
+            marketPosition.setMarkPrice(markPrice);
+            marketPosition.setUnrealisedPnl(unrealisedPnl);
+            marketPosition.setNetPnl(realisedPnl.add(unrealisedPnl).subtract(fees));
+            marketPosition.setFillCount(fillCount);
+            marketPosition.setInferredFillCount(inferredFillCount);
+            marketPosition.setConfirmed(inferredFillCount == 0);
+            return marketPosition;
+        }
+
+        private BigDecimal unrealisedPnl() {
+            return markPrice == null || quantity.signum() == 0
+                    ? BigDecimal.ZERO : markPrice.subtract(averageCost).multiply(quantity);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.alerts;
+
+/**
+ * A channel the {@link AlertDispatcher} delivers alerts on, e.g. email, webhook.
+ * <p>
+ * Channels are only ever called from the dispatcher's sender thread, so they can block on network I/O without holding
+ * up the Trading Engine.
+ *
+ * @author gazbert
+ */
+public interface AlertChannel {
+
+    /**
+     * Returns the name of the channel. Used for logging.
+     *
+     * @return the channel name.
+     */
+    String getChannelName();
+
+    /**
+     * Returns true if the channel has been configured and enabled.
+     *
+     * @return true if enabled, false otherwise.
+     */
+    boolean isEnabled();
+
+    /**
+     * Delivers an alert on the channel.
+     *
+     * @param subject    the alert subject.
+     * @param msgContent the alert content.
+     * @throws AlertChannelException if the alert could not be delivered.
+     */
+    void send(String subject, String msgContent) throws AlertChannelException;
+}
@@ -0,0 +1,381 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.alerts;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Dispatches alerts to the configured {@link AlertChannel}s.
+ * </p>
+ * <p>
+ * Alerts are put on a bounded queue and sent by a background sender thread, so a slow or unreachable mail server or
+ * webhook never holds up the caller. If the queue is full, the alert is dropped and logged - the caller is never
+ * blocked.
+ * </p>
+ * <p>
+ * To stop a misbehaving bot flooding the channels:
+ * - The same alert (same dedup key) is only sent once per dedup window. Repeats are counted and the count is
+ * reported the next time the alert is sent.
+ * - The channels are sent at most 1 message per min send interval. Alerts that arrive while the channels are rate
+ * limited are batched up and sent as a single digest.
+ * </p>
+ * <p>
+ * Any alerts still queued when the dispatcher is shutdown are sent before the sender thread exits, so a critical alert
+ * raised just before the bot shuts down still gets out.
+ * </p>
+ *
+ * @author gazbert
+ */
+@Component
+public class AlertDispatcher {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    private static final String NEWLINE = System.getProperty("line.separator");
+    private static final String HORIZONTAL_RULE = "--------------------------------------------------" + NEWLINE;
+    private static final String DIGEST_SUBJECT = "Alert digest from BX-bot";
+
+    /*
+     * How long we wait for queued alerts to be sent when shutting down.
+     */
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 30 * 1000L;
+
+    private final List<AlertChannel> alertChannels;
+    private final BlockingQueue<Alert> alertQueue;
+    private final long dedupWindowMillis;
+    private final long minSendIntervalMillis;
+
+    /*
+     * When each alert was last sent, keyed on dedup key. Only accessed by the sender thread.
+     */
+    private final Map<String, Long> lastSentTimes = new HashMap<>();
+
+    /*
+     * Number of times each alert has been suppressed since it was last sent, keyed on dedup key.
+     * Only accessed by the sender thread.
+     */
+    private final Map<String, Integer> suppressedCounts = new HashMap<>();
+
+    private final AtomicLong droppedAlertCount = new AtomicLong();
+    private final AtomicLong sentMessageCount = new AtomicLong();
+
+    private long nextSendAllowedAt;
+    private volatile boolean accepting = true;
+    private Thread senderThread;
+
+
+    @Autowired
+    public AlertDispatcher(List<AlertChannel> alertChannels,
+                           @Value("${bxbot.alerts.queue-capacity:100}") int queueCapacity,
+                           @Value("${bxbot.alerts.dedup-window-secs:300}") int dedupWindowInSecs,
+                           @Value("${bxbot.alerts.min-send-interval-secs:60}") int minSendIntervalInSecs) {
+        this(alertChannels, queueCapacity, TimeUnit.SECONDS.toMillis(dedupWindowInSecs),
+                TimeUnit.SECONDS.toMillis(minSendIntervalInSecs));
+    }
+
+    AlertDispatcher(List<AlertChannel> alertChannels, int queueCapacity, long dedupWindowMillis,
+                    long minSendIntervalMillis) {
+        this.alertChannels = new ArrayList<>(alertChannels);
+        this.alertQueue = new ArrayBlockingQueue<>(queueCapacity);
+        this.dedupWindowMillis = dedupWindowMillis;
+        this.minSendIntervalMillis = minSendIntervalMillis;
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (senderThread != null) {
+            return;
+        }
+        senderThread = new Thread(this::runSender, "bxbot-alert-dispatcher");
+        senderThread.setDaemon(true);
+        senderThread.start();
+
+        alertChannels.forEach(channel -> LOG.info(() -> "Alert channel " + channel.getChannelName() + " is "
+                + (channel.isEnabled() ? "enabled" : "disabled")));
+    }
+
+    /**
+     * Queues an alert for sending. Never blocks.
+     *
+     * @param subject    the alert subject.
+     * @param msgContent the alert content.
+     * @param dedupKey   identifies repeats of the same alert, e.g. the error details without any timestamps.
+     * @return true if the alert was queued, false if it was dropped.
+     */
+    public boolean dispatch(String subject, String msgContent, String dedupKey) {
+
+        if (!accepting) {
+            LOG.warn("Alert dispatcher is shutting down. Not sending the following alert: Subject: "
+                    + subject + " Content: " + msgContent);
+            return false;
+        }
+
+        if (!alertQueue.offer(new Alert(subject, msgContent, dedupKey, System.currentTimeMillis()))) {
+            droppedAlertCount.incrementAndGet();
+            LOG.error("Alert queue is full. Dropping the following alert: Subject: "
+                    + subject + " Content: " + msgContent);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Queues an alert for sending, using the subject and content as the dedup key. Never blocks.
+     *
+     * @param subject    the alert subject.
+     * @param msgContent the alert content.
+     * @return true if the alert was queued, false if it was dropped.
+     */
+    public boolean dispatch(String subject, String msgContent) {
+        return dispatch(subject, msgContent, subject + NEWLINE + msgContent);
+    }
+
+    long getDroppedAlertCount() {
+        return droppedAlertCount.get();
+    }
+
+    long getSentMessageCount() {
+        return sentMessageCount.get();
+    }
+
+    /**
+     * Stops accepting alerts, then waits for any queued alerts to be sent.
+     */
+    @PreDestroy
+    public void shutdown() {
+
+        accepting = false;
+
+        final Thread sender;
+        synchronized (this) {
+            sender = senderThread;
+        }
+        if (sender == null) {
+            return;
+        }
+
+        sender.interrupt(); // poke it in case it is waiting out the min send interval
+        try {
+            sender.join(SHUTDOWN_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            LOG.warn("Interrupted waiting for queued alerts to be sent");
+            Thread.currentThread().interrupt();
+        }
+
+        if (!alertQueue.isEmpty()) {
+            LOG.error("Failed to send " + alertQueue.size() + " queued alerts before shutdown");
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Sender thread
+    // ------------------------------------------------------------------------
+
+    private void runSender() {
+
+        while (accepting || !alertQueue.isEmpty()) {
+            try {
+                final Alert firstAlert = alertQueue.poll(1, TimeUnit.SECONDS);
+                if (firstAlert == null) {
+                    continue;
+                }
+
+                final List<Alert> batch = new ArrayList<>();
+                batch.add(firstAlert);
+                collectBatch(batch);
+                sendBatch(batch);
+
+            } catch (InterruptedException e) {
+                // shutdown() pokes us - loop round and send whatever is left on the queue
+                LOG.info(() -> "Alert dispatcher sender thread interrupted - sending any queued alerts...");
+
+            } catch (Exception e) {
+                LOG.error("Unexpected error sending alerts", e);
+            }
+        }
+        LOG.info(() -> "Alert dispatcher sender thread stopped");
+    }
+
+    /*
+     * Waits out the min send interval, batching up any alerts that arrive in the meantime.
+     */
+    private void collectBatch(List<Alert> batch) {
+
+        long waitMillis = nextSendAllowedAt - System.currentTimeMillis();
+        try {
+            while (accepting && waitMillis > 0) {
+                final Alert alert = alertQueue.poll(waitMillis, TimeUnit.MILLISECONDS);
+                if (alert != null) {
+                    batch.add(alert);
+                }
+                waitMillis = nextSendAllowedAt - System.currentTimeMillis();
+            }
+        } catch (InterruptedException e) {
+            LOG.info(() -> "Alert dispatcher interrupted waiting for min send interval - sending batch now...");
+        }
+        alertQueue.drainTo(batch);
+    }
+
+    private void sendBatch(List<Alert> batch) {
+
+        final long now = System.currentTimeMillis();
+
+        // Collapse repeats within the batch, then drop alerts already sent within the dedup window
+        final Map<String, AlertSummary> summaries = new LinkedHashMap<>();
+        for (final Alert alert : batch) {
+            final AlertSummary summary = summaries.get(alert.dedupKey);
+            if (summary == null) {
+                summaries.put(alert.dedupKey, new AlertSummary(alert));
+            } else {
+                summary.repeatCount++;
+            }
+        }
+
+        final List<AlertSummary> toSend = new ArrayList<>();
+        for (final AlertSummary summary : summaries.values()) {
+            final String dedupKey = summary.alert.dedupKey;
+            final Long lastSentTime = lastSentTimes.get(dedupKey);
+            if (lastSentTime != null && now - lastSentTime < dedupWindowMillis) {
+                suppressedCounts.merge(dedupKey, summary.repeatCount, Integer::sum);
+                LOG.info(() -> "Suppressing repeat alert sent within dedup window: " + summary.alert.subject);
+            } else {
+                summary.suppressedCount = suppressedCounts.getOrDefault(dedupKey, 0);
+                suppressedCounts.remove(dedupKey);
+                lastSentTimes.put(dedupKey, now);
+                toSend.add(summary);
+            }
+        }
+        lastSentTimes.values().removeIf(lastSentTime -> now - lastSentTime >= dedupWindowMillis);
+
+        if (toSend.isEmpty()) {
+            return;
+        }
+
+        final String subject;
+        final String msgContent;
+        if (toSend.size() == 1) {
+            subject = toSend.get(0).alert.subject;
+            msgContent = toSend.get(0).alert.msgContent + buildRepeatNote(toSend.get(0));
+        } else {
+            subject = DIGEST_SUBJECT + " - " + toSend.size() + " alerts";
+            msgContent = buildDigestContent(toSend);
+        }
+
+        for (final AlertChannel alertChannel : alertChannels) {
+            if (!alertChannel.isEnabled()) {
+                LOG.warn("Alert channel " + alertChannel.getChannelName() + " is disabled. Not sending the "
+                        + "following message: Subject: " + subject + " Content: " + msgContent);
+                continue;
+            }
+            try {
+                LOG.info(() -> "About to send alert on channel " + alertChannel.getChannelName()
+                        + " with message content: " + msgContent);
+                alertChannel.send(subject, msgContent);
+            } catch (AlertChannelException | RuntimeException e) {
+                // not much we can do here, especially if the alert was critical - the bot is shutting down; just log it.
+                LOG.error("Failed to send alert on channel " + alertChannel.getChannelName() + ". Details: "
+                        + e.getMessage(), e);
+            }
+        }
+
+        sentMessageCount.incrementAndGet();
+        nextSendAllowedAt = System.currentTimeMillis() + minSendIntervalMillis;
+    }
+
+    private static String buildDigestContent(List<AlertSummary> summaries) {
+
+        final StringBuilder msgContent = new StringBuilder(summaries.size() + " alerts have been raised on BX-bot.");
+        msgContent.append(NEWLINE).append(NEWLINE);
+
+        for (final AlertSummary summary : summaries) {
+            msgContent.append(HORIZONTAL_RULE);
+            msgContent.append("Subject: ");
+            msgContent.append(summary.alert.subject);
+            msgContent.append(NEWLINE);
+            msgContent.append("Raised: ");
+            msgContent.append(new Date(summary.alert.raisedAt));
+            msgContent.append(NEWLINE).append(NEWLINE);
+            msgContent.append(summary.alert.msgContent);
+            msgContent.append(buildRepeatNote(summary));
+            msgContent.append(NEWLINE).append(NEWLINE);
+        }
+        return msgContent.toString();
+    }
+
+    private static String buildRepeatNote(AlertSummary summary) {
+        final StringBuilder note = new StringBuilder();
+        if (summary.repeatCount > 1) {
+            note.append(NEWLINE).append(NEWLINE);
+            note.append("This alert was raised ").append(summary.repeatCount).append(" times.");
+        }
+        if (summary.suppressedCount > 0) {
+            note.append(NEWLINE).append(NEWLINE);
+            note.append(summary.suppressedCount).append(" repeats of this alert were suppressed since it was last sent.");
+        }
+        return note.toString();
+    }
+
+    // ------------------------------------------------------------------------
+    // Alert holders
+    // ------------------------------------------------------------------------
+
+    private static final class Alert {
+
+        private final String subject;
+        private final String msgContent;
+        private final String dedupKey;
+        private final long raisedAt;
+
+        private Alert(String subject, String msgContent, String dedupKey, long raisedAt) {
+            this.subject = subject;
+            this.msgContent = msgContent;
+            this.dedupKey = dedupKey;
+            this.raisedAt = raisedAt;
+        }
+    }
+
+    private static final class AlertSummary {
+
+        private final Alert alert;
+        private int repeatCount = 1;
+        private int suppressedCount;
+
+        private AlertSummary(Alert alert) {
+            this.alert = alert;
+        }
+    }
+}
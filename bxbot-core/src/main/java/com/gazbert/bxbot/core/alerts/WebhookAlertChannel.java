@@ -0,0 +1,130 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.alerts;
+
+import com.google.gson.Gson;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Sends alerts as a JSON POST to a webhook, e.g. a Slack or Mattermost incoming webhook.
+ * <p>
+ * The payload is: {"text": "subject\n\ncontent", "subject": "subject", "content": "content"}
+ * <p>
+ * The channel is disabled unless the bxbot.alerts.webhook.url property is set.
+ *
+ * @author gazbert
+ */
+@Component
+public class WebhookAlertChannel implements AlertChannel {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    private final URL webhookUrl;
+    private final int timeoutInMillis;
+    private final Gson gson = new Gson();
+
+
+    @Autowired
+    public WebhookAlertChannel(@Value("${bxbot.alerts.webhook.url:}") String webhookUrl,
+                               @Value("${bxbot.alerts.webhook.timeout-secs:10}") int timeoutInSecs) {
+
+        this.timeoutInMillis = timeoutInSecs * 1000;
+
+        if (webhookUrl == null || webhookUrl.trim().isEmpty()) {
+            this.webhookUrl = null;
+            return;
+        }
+
+        try {
+            this.webhookUrl = new URL(webhookUrl.trim());
+        } catch (MalformedURLException e) {
+            final String errorMsg = "Failed to initialise Webhook Alert channel. Invalid webhook URL: " + webhookUrl;
+            LOG.error(errorMsg, e);
+            throw new IllegalStateException(errorMsg, e);
+        }
+        LOG.info(() -> "Webhook URL: " + webhookUrl);
+    }
+
+    @Override
+    public String getChannelName() {
+        return "Webhook";
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return webhookUrl != null;
+    }
+
+    @Override
+    public void send(String subject, String msgContent) throws AlertChannelException {
+
+        final Map<String, String> payload = new LinkedHashMap<>();
+        payload.put("text", subject + "\n\n" + msgContent);
+        payload.put("subject", subject);
+        payload.put("content", msgContent);
+        final byte[] body = gson.toJson(payload).getBytes(StandardCharsets.UTF_8);
+
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) webhookUrl.openConnection();
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+            connection.setConnectTimeout(timeoutInMillis);
+            connection.setReadTimeout(timeoutInMillis);
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+
+            try (OutputStream outputStream = connection.getOutputStream()) {
+                outputStream.write(body);
+            }
+
+            final int statusCode = connection.getResponseCode();
+            if (statusCode < 200 || statusCode >= 300) {
+                throw new AlertChannelException("Webhook returned HTTP status " + statusCode + " "
+                        + connection.getResponseMessage());
+            }
+
+        } catch (IOException e) {
+            throw new AlertChannelException("Failed to POST alert to webhook: " + e.getMessage(), e);
+
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+}
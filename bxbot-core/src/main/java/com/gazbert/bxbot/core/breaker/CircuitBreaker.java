@@ -0,0 +1,219 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.breaker;
+
+import com.gazbert.bxbot.domain.breaker.CircuitBreakerStatus;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * The circuit breaker for an Exchange Adapter endpoint on one exchange.
+ * </p>
+ * <p>
+ * The outcomes of the last window-size calls are kept. Once the minimum number of calls has been made, the breaker
+ * opens if the percentage of them that failed reaches the failure rate threshold. A call fails if it throws an
+ * ExchangeNetworkException, or takes longer than the slow call threshold - an exchange that is down for maintenance,
+ * or timing out, trips the breaker either way. A call that gets a TradingApiException back still reached the
+ * exchange, so it does not count as a failure.
+ * </p>
+ * <p>
+ * While the breaker is open, calls are rejected without going to the exchange. Once the open duration is up, the next
+ * call is let through as a probe (half-open) and the others are still rejected: if the probe succeeds, the breaker
+ * closes with an empty window; if not, it opens again.
+ * </p>
+ * <p>
+ * Thread safe - an endpoint's breaker is shared by all the Exchange Adapter instances for the exchange.
+ * </p>
+ *
+ * @author gazbert
+ */
+public final class CircuitBreaker {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String exchange;
+    private final String endpoint;
+    private final int failureRateThreshold;
+    private final long slowCallNanos;
+    private final int minimumCalls;
+    private final long openMillis;
+
+    /*
+     * Ring buffer of the outcomes of the last window-size calls - true if the call failed. Guarded by this.
+     */
+    private final boolean[] outcomes;
+    private int callsInWindow;
+    private int failedCallsInWindow;
+    private int nextOutcome;
+
+    private State state = State.CLOSED;
+    private long lastOpenedTime;
+    private long openCount;
+    private long rejectedCallCount;
+
+
+    /*
+     * A slow call threshold of 0 means latency is not taken into account.
+     */
+    CircuitBreaker(String exchange, String endpoint, int failureRateThreshold, long slowCallMillis, int windowSize,
+                   int minimumCalls, long openMillis) {
+        this.exchange = exchange;
+        this.endpoint = endpoint;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallNanos = slowCallMillis == 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.minimumCalls = minimumCalls;
+        this.openMillis = openMillis;
+        this.outcomes = new boolean[windowSize];
+    }
+
+    /**
+     * Asks the breaker if a call can be made. If this returns true, the outcome of the call must be passed to
+     * {@link #recordCall(long, boolean, long)}.
+     *
+     * @param nowMillis the current time in epoch millis.
+     * @return true if the call can go to the exchange, false if it must fail fast.
+     */
+    public synchronized boolean tryAcquirePermission(long nowMillis) {
+        switch (state) {
+            case CLOSED:
+                return true;
+
+            case OPEN:
+                if (nowMillis < lastOpenedTime + openMillis) {
+                    rejectedCallCount++;
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                LOG.info(() -> "Circuit breaker half-open for " + endpoint + " on exchange " + exchange
+                        + " - sending probe call.");
+                return true;
+
+            default:
+                // the probe call is still in flight
+                rejectedCallCount++;
+                return false;
+        }
+    }
+
+    /**
+     * Records the outcome of a call let through by {@link #tryAcquirePermission(long)}.
+     *
+     * @param latencyInNanos how long the call took.
+     * @param networkFailure true if the call failed with an ExchangeNetworkException.
+     * @param nowMillis      the current time in epoch millis.
+     */
+    public synchronized void recordCall(long latencyInNanos, boolean networkFailure, long nowMillis) {
+
+        final boolean failed = networkFailure || latencyInNanos > slowCallNanos;
+        if (state == State.HALF_OPEN) {
+            if (failed) {
+                open(nowMillis);
+            } else {
+                close();
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // the call was let through before the breaker opened
+            return;
+        }
+
+        if (callsInWindow == outcomes.length) {
+            if (outcomes[nextOutcome]) {
+                failedCallsInWindow--;
+            }
+        } else {
+            callsInWindow++;
+        }
+        outcomes[nextOutcome] = failed;
+        if (failed) {
+            failedCallsInWindow++;
+        }
+        nextOutcome = (nextOutcome + 1) % outcomes.length;
+
+        if (callsInWindow >= minimumCalls && getFailureRate() >= failureRateThreshold) {
+            open(nowMillis);
+        }
+    }
+
+    /**
+     * Returns a snapshot of the breaker's state.
+     *
+     * @return the breaker's state.
+     */
+    public synchronized CircuitBreakerStatus getStatus() {
+        final CircuitBreakerStatus status = new CircuitBreakerStatus(exchange, endpoint, state.name());
+        status.setFailureRate(getFailureRate());
+        status.setCallsInWindow(callsInWindow);
+        status.setOpenCount(openCount);
+        status.setRejectedCallCount(rejectedCallCount);
+        status.setLastOpenedTime(lastOpenedTime);
+        status.setNextProbeTime(state == State.OPEN ? lastOpenedTime + openMillis : 0);
+        return status;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    String getExchange() {
+        return exchange;
+    }
+
+    String getEndpoint() {
+        return endpoint;
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    //  Util methods
+    // ------------------------------------------------------------------------------------------------
+
+    private double getFailureRate() {
+        return callsInWindow == 0 ? 0 : failedCallsInWindow * 100.0 / callsInWindow;
+    }
+
+    private void open(long nowMillis) {
+        LOG.warn(() -> "Circuit breaker opened for " + endpoint + " on exchange " + exchange + " - failure rate: "
+                + getFailureRate() + "% of last " + callsInWindow + " calls. Calls will fail fast for "
+                + openMillis + "ms.");
+        state = State.OPEN;
+        lastOpenedTime = nowMillis;
+        openCount++;
+    }
+
+    private void close() {
+        LOG.info(() -> "Circuit breaker closed for " + endpoint + " on exchange " + exchange + " - probe call succeeded.");
+        state = State.CLOSED;
+        callsInWindow = 0;
+        failedCallsInWindow = 0;
+        nextOutcome = 0;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.breaker;
+
+import com.gazbert.bxbot.domain.breaker.CircuitBreakerStatus;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ * Holds the {@link CircuitBreaker} for every Exchange Adapter endpoint, per exchange. The breakers are created on
+ * first use, all with the same policy from the application config, and are shared by every Exchange Adapter instance
+ * the bot has for the exchange. Each bot hosted by the {@link com.gazbert.bxbot.core.engine.TradingEngineHost} has
+ * its own registry - see {@link #forBot(String)} - as it may trade the exchange with a different API key.
+ * </p>
+ * <p>
+ * The breakers are applied by the {@link com.gazbert.bxbot.core.metrics.InstrumentedExchangeAdapter}s, and their
+ * state can be fetched as domain objects for the REST API.
+ * </p>
+ *
+ * @author gazbert
+ */
+@Component
+public class CircuitBreakerRegistry {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    private final boolean enabled;
+    private final int failureRateThreshold;
+    private final long slowCallMillis;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final long openMillis;
+
+    /*
+     * Keyed on exchange and endpoint.
+     */
+    private final ConcurrentMap<List<String>, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    /*
+     * BotId -> the registry of a hosted bot. Created on first use.
+     */
+    private final ConcurrentMap<String, CircuitBreakerRegistry> botRegistries = new ConcurrentHashMap<>();
+
+
+    @Autowired
+    public CircuitBreakerRegistry(@Value("${bxbot.circuit-breaker.enabled:true}") boolean enabled,
+                                  @Value("${bxbot.circuit-breaker.failure-rate-pct:50}") int failureRateThreshold,
+                                  @Value("${bxbot.circuit-breaker.slow-call-millis:10000}") long slowCallMillis,
+                                  @Value("${bxbot.circuit-breaker.window-size:20}") int windowSize,
+                                  @Value("${bxbot.circuit-breaker.minimum-calls:10}") int minimumCalls,
+                                  @Value("${bxbot.circuit-breaker.open-secs:60}") int openSecs) {
+
+        this.enabled = enabled;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallMillis = slowCallMillis;
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.openMillis = TimeUnit.SECONDS.toMillis(openSecs);
+
+        if (enabled && (failureRateThreshold < 1 || failureRateThreshold > 100 || slowCallMillis < 0
+                || windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize || openSecs < 1)) {
+            final String errorMsg = "Invalid circuit breaker config - failure rate must be 1-100%, slow call millis "
+                    + "at least 0, minimum calls between 1 and the window size, and open secs at least 1. Found: "
+                    + "failure rate: " + failureRateThreshold + " slow call millis: " + slowCallMillis
+                    + " window size: " + windowSize + " minimum calls: " + minimumCalls + " open secs: " + openSecs;
+            LOG.fatal(errorMsg);
+            throw new IllegalArgumentException(errorMsg);
+        }
+        LOG.info(() -> "Circuit breakers enabled: " + enabled + (enabled ? " - failure rate: "
+                + failureRateThreshold + "% slow call millis: " + slowCallMillis + " window size: " + windowSize
+                + " minimum calls: " + minimumCalls + " open secs: " + openSecs : ""));
+    }
+
+    /**
+     * Returns the registry for a bot hosted by the {@link com.gazbert.bxbot.core.engine.TradingEngineHost}, creating
+     * it on first use. Its breakers have the same policy as this registry's, but trip on the bot's calls alone.
+     *
+     * @param botId the id of the hosted bot.
+     * @return the bot's registry.
+     */
+    public CircuitBreakerRegistry forBot(String botId) {
+        return botRegistries.computeIfAbsent(botId, key -> new CircuitBreakerRegistry(enabled, failureRateThreshold,
+                slowCallMillis, windowSize, minimumCalls, (int) TimeUnit.MILLISECONDS.toSeconds(openMillis)));
+    }
+
+    /**
+     * Returns the breaker for an Exchange Adapter endpoint on an exchange, creating it if need be.
+     *
+     * @param exchange the exchange id.
+     * @param endpoint the Exchange Adapter method called.
+     * @return the breaker, or null if circuit breakers are disabled.
+     */
+    public CircuitBreaker getCircuitBreaker(String exchange, String endpoint) {
+        if (!enabled) {
+            return null;
+        }
+        return circuitBreakers.computeIfAbsent(Arrays.asList(exchange, endpoint), key -> new CircuitBreaker(
+                exchange, endpoint, failureRateThreshold, slowCallMillis, windowSize, minimumCalls, openMillis));
+    }
+
+    /**
+     * Returns the state of every breaker, sorted by exchange and endpoint.
+     *
+     * @return the breaker states.
+     */
+    public List<CircuitBreakerStatus> getCircuitBreakerStatuses() {
+        return circuitBreakers.values().stream()
+                .sorted(Comparator.comparing(CircuitBreaker::getExchange).thenComparing(CircuitBreaker::getEndpoint))
+                .map(CircuitBreaker::getStatus)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.checkpoint;
+
+import java.util.Map;
+
+/**
+ * Told about each snapshot and nonce saved to, and snapshot deleted from, the {@link CheckpointStore}, whether or not checkpointing is enabled,
+ * e.g. to replicate them to a standby bot.
+ * <p>
+ * It is called on the thread that saved them, i.e. from within the trade cycle, so it must be quick.
+ *
+ * @author gazbert
+ */
+public interface CheckpointListener {
+
+    /**
+     * Called when a strategy's snapshot is saved.
+     *
+     * @param exchangeId the id of the exchange the strategy trades on.
+     * @param marketId   the id of the market the strategy trades.
+     * @param strategyId the id of the strategy.
+     * @param snapshot   the snapshot. It must not be changed.
+     */
+    void onSnapshotSaved(String exchangeId, String marketId, String strategyId, Map<String, String> snapshot);
+
+    /**
+     * Called when a strategy's snapshot is deleted.
+     *
+     * @param exchangeId the id of the exchange the strategy traded on.
+     * @param marketId   the id of the market the strategy traded.
+     * @param strategyId the id of the strategy.
+     */
+    void onSnapshotDeleted(String exchangeId, String marketId, String strategyId);
+
+    /**
+     * Called when an exchange's nonce is saved.
+     *
+     * @param exchangeId the exchange id.
+     * @param nonce      the exchange adapter's nonce counter.
+     */
+    void onNonceSaved(String exchangeId, long nonce);
+}
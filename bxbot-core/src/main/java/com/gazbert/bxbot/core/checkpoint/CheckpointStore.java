@@ -0,0 +1,525 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.checkpoint;
+
+import com.gazbert.bxbot.core.util.Filenames;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * Keeps the latest state snapshot of each {@link com.gazbert.bxbot.strategy.api.CheckpointableStrategy} on local disk,
+ * so a strategy can pick up where it left off when the bot restarts. The nonce counter of each
+ * {@link com.gazbert.bxbot.exchange.api.NonceCheckpointable} Exchange Adapter is kept the same way, at
+ * {dir}/{exchange id}/exchange.nonce.
+ * </p>
+ * <p>
+ * Saving a snapshot just hands it to a writer thread, so the trade cycle never waits on the disk. Only the latest
+ * snapshot for each strategy is written: if a strategy saves again before the last one has been written, the older one
+ * is skipped, and a snapshot that is the same as the last one written is not written again.
+ * </p>
+ * <p>
+ * Each snapshot is a small binary file - header, checksum, then the key/value pairs - at
+ * {dir}/{exchange id}/{market id}/{strategy id}.checkpoint. It is written to a temp file, synced, then renamed over the
+ * old one, so a crash leaves either the old snapshot or the new one, never a torn one. A snapshot that fails its
+ * checksum is ignored.
+ * </p>
+ * <p>
+ * Checkpointing can be switched off with the bxbot.checkpoint.enabled property. Snapshots are kept under the
+ * bxbot.checkpoint.dir directory, ./checkpoints by default. Registered {@link CheckpointListener}s are told about
+ * every snapshot and nonce saved, even when checkpointing is switched off.
+ * </p>
+ *
+ * @author gazbert
+ */
+@Component
+public class CheckpointStore {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    static final String FILE_EXTENSION = ".checkpoint";
+    static final String NONCE_FILENAME = "exchange.nonce";
+
+    private static final String NONCE_KEY = "nonce";
+
+    /*
+     * Queued in place of a snapshot to delete the checkpoint file. Compared by identity.
+     */
+    private static final Map<String, String> DELETED = Collections.unmodifiableMap(new HashMap<>());
+
+    private static final int MAGIC = 0x42584350; // "BXCP"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 16; // magic, version, crc32, payload length
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+    private final boolean enabled;
+    private final Path checkpointDirectory;
+
+    /*
+     * Checkpoint file -> the latest snapshot not yet written, and the ones being written. Guarded by the monitor.
+     */
+    private final Map<Path, Map<String, String>> pendingSnapshots = new LinkedHashMap<>();
+    private Map<Path, Map<String, String>> snapshotsBeingWritten = Collections.emptyMap();
+
+    /*
+     * Checkpoint file -> the last snapshot written or loaded. Only used to skip writing unchanged snapshots.
+     */
+    private final Map<Path, Map<String, String>> writtenSnapshots = new ConcurrentHashMap<>();
+
+    private final List<CheckpointListener> checkpointListeners = new CopyOnWriteArrayList<>();
+
+    /*
+     * BotId -> the Checkpoint Store of a hosted bot. Created on first use.
+     */
+    private final Map<String, CheckpointStore> botCheckpointStores = new ConcurrentHashMap<>();
+
+    private final Object monitor = new Object();
+    private boolean writing;
+    private boolean accepting = true;
+    private Thread writerThread;
+
+
+    @Autowired
+    public CheckpointStore(@Value("${bxbot.checkpoint.enabled:true}") boolean enabled,
+                           @Value("${bxbot.checkpoint.dir:./checkpoints}") String checkpointDirectory) {
+        this.enabled = enabled;
+        this.checkpointDirectory = Paths.get(checkpointDirectory);
+        LOG.info(() -> "Strategy checkpoints enabled: " + enabled + " - checkpoint directory: "
+                + this.checkpointDirectory);
+    }
+
+    /**
+     * Returns the Checkpoint Store for a bot hosted by the {@link com.gazbert.bxbot.core.engine.TradingEngineHost},
+     * creating it on first use. Its snapshots are kept apart from the other bots' in a sub-directory named after the
+     * bot. It is shut down along with this one.
+     *
+     * @param botId the id of the hosted bot.
+     * @return the bot's Checkpoint Store.
+     */
+    public CheckpointStore forBot(String botId) {
+        return botCheckpointStores.computeIfAbsent(botId, key -> new CheckpointStore(enabled,
+                checkpointDirectory.resolve(Filenames.toFilename(botId)).toString()));
+    }
+
+    /**
+     * Loads the last snapshot saved for a strategy.
+     *
+     * @param exchangeId the id of the exchange the strategy trades on.
+     * @param marketId   the id of the market the strategy trades.
+     * @param strategyId the id of the strategy.
+     * @return the snapshot, or null if there is none, it is unreadable, or checkpointing is disabled.
+     */
+    public Map<String, String> load(String exchangeId, String marketId, String strategyId) {
+        return enabled ? loadSnapshot(checkpointFileFor(exchangeId, marketId, strategyId)) : null;
+    }
+
+    /**
+     * Loads the last nonce saved for an exchange.
+     *
+     * @param exchangeId the exchange id.
+     * @return the nonce, or null if there is none, it is unreadable, or checkpointing is disabled.
+     */
+    public Long loadNonce(String exchangeId) {
+        final Map<String, String> snapshot = enabled ? loadSnapshot(nonceFileFor(exchangeId)) : null;
+        if (snapshot == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(snapshot.get(NONCE_KEY));
+        } catch (NumberFormatException e) {
+            LOG.warn(() -> "Ignoring corrupt nonce checkpoint for exchange: " + exchangeId);
+            return null;
+        }
+    }
+
+    /**
+     * Saves a strategy's snapshot in the background.
+     *
+     * @param exchangeId the id of the exchange the strategy trades on.
+     * @param marketId   the id of the market the strategy trades.
+     * @param strategyId the id of the strategy.
+     * @param snapshot   the snapshot. It is copied.
+     */
+    public void save(String exchangeId, String marketId, String strategyId, Map<String, String> snapshot) {
+
+        if (snapshot == null) {
+            return;
+        }
+        final Map<String, String> copy = new LinkedHashMap<>(snapshot);
+        for (final CheckpointListener checkpointListener : checkpointListeners) {
+            try {
+                checkpointListener.onSnapshotSaved(exchangeId, marketId, strategyId, copy);
+            } catch (RuntimeException e) {
+                LOG.error("Checkpoint listener failed for strategy " + strategyId + " on exchange " + exchangeId, e);
+            }
+        }
+        if (enabled) {
+            saveSnapshot(checkpointFileFor(exchangeId, marketId, strategyId), copy);
+        }
+    }
+
+    /**
+     * Deletes a strategy's snapshot in the background, e.g. when its market has been removed from the config, so it
+     * is not restored if the market is added back later.
+     *
+     * @param exchangeId the id of the exchange the strategy traded on.
+     * @param marketId   the id of the market the strategy traded.
+     * @param strategyId the id of the strategy.
+     */
+    public void delete(String exchangeId, String marketId, String strategyId) {
+        for (final CheckpointListener checkpointListener : checkpointListeners) {
+            try {
+                checkpointListener.onSnapshotDeleted(exchangeId, marketId, strategyId);
+            } catch (RuntimeException e) {
+                LOG.error("Checkpoint listener failed for strategy " + strategyId + " on exchange " + exchangeId, e);
+            }
+        }
+        if (enabled) {
+            saveSnapshot(checkpointFileFor(exchangeId, marketId, strategyId), DELETED);
+        }
+    }
+
+    /**
+     * Saves an exchange's nonce in the background.
+     *
+     * @param exchangeId the exchange id.
+     * @param nonce      the exchange adapter's nonce counter.
+     */
+    public void saveNonce(String exchangeId, long nonce) {
+        for (final CheckpointListener checkpointListener : checkpointListeners) {
+            try {
+                checkpointListener.onNonceSaved(exchangeId, nonce);
+            } catch (RuntimeException e) {
+                LOG.error("Checkpoint listener failed for nonce on exchange " + exchangeId, e);
+            }
+        }
+        if (enabled) {
+            saveSnapshot(nonceFileFor(exchangeId), Collections.singletonMap(NONCE_KEY, String.valueOf(nonce)));
+        }
+    }
+
+    /**
+     * Registers a listener to be told about every snapshot and nonce saved.
+     *
+     * @param checkpointListener the listener.
+     */
+    public void addCheckpointListener(CheckpointListener checkpointListener) {
+        checkpointListeners.add(checkpointListener);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Waits for the snapshots saved so far to be written.
+     *
+     * @param timeoutInMillis how long to wait.
+     * @return true if they were written in time.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean flush(long timeoutInMillis) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeoutInMillis;
+        synchronized (monitor) {
+            while (!pendingSnapshots.isEmpty() || writing) {
+                final long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                monitor.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops checkpointing, for the hosted bots too: the snapshots already saved are written first.
+     */
+    @PreDestroy
+    public void shutdown() {
+        botCheckpointStores.values().forEach(CheckpointStore::shutdown);
+        final Thread writer;
+        synchronized (monitor) {
+            accepting = false;
+            writer = writerThread;
+            monitor.notifyAll();
+        }
+        if (writer != null) {
+            try {
+                writer.join(SHUTDOWN_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Writer
+    // ------------------------------------------------------------------------------------------------
+
+    private void startWriterIfRequired() {
+        if (writerThread == null) {
+            writerThread = new Thread(this::runWriter, "bxbot-checkpoint-writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+    }
+
+    private void runWriter() {
+        while (true) {
+            final Map<Path, Map<String, String>> snapshots;
+            synchronized (monitor) {
+                writing = false;
+                snapshotsBeingWritten = Collections.emptyMap();
+                monitor.notifyAll();
+                while (pendingSnapshots.isEmpty() && accepting) {
+                    try {
+                        monitor.wait();
+                    } catch (InterruptedException e) {
+                        LOG.warn("Checkpoint writer interrupted - " + pendingSnapshots.size()
+                                + " snapshots not written.");
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (pendingSnapshots.isEmpty()) {
+                    return;
+                }
+                snapshots = new LinkedHashMap<>(pendingSnapshots);
+                pendingSnapshots.clear();
+                snapshotsBeingWritten = snapshots;
+                writing = true;
+            }
+            snapshots.forEach(this::write);
+        }
+    }
+
+    private void write(Path checkpointFile, Map<String, String> snapshot) {
+        if (snapshot == DELETED) {
+            delete(checkpointFile);
+            return;
+        }
+        try {
+            Files.createDirectories(checkpointFile.getParent());
+            final Path tempFile = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+            try {
+                try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    final ByteBuffer buffer = ByteBuffer.wrap(encode(snapshot));
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    channel.force(true);
+                }
+                Files.move(tempFile, checkpointFile, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+            syncDirectory(checkpointFile.getParent());
+            writtenSnapshots.put(checkpointFile, snapshot);
+
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Failed to write strategy checkpoint: " + checkpointFile, e);
+        }
+    }
+
+    private void delete(Path checkpointFile) {
+        try {
+            if (Files.deleteIfExists(checkpointFile)) {
+                syncDirectory(checkpointFile.getParent());
+            }
+            writtenSnapshots.remove(checkpointFile);
+
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Failed to delete strategy checkpoint: " + checkpointFile, e);
+        }
+    }
+
+    /*
+     * Makes the rename durable. Not supported on every platform, e.g. Windows, so it's best effort.
+     */
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            LOG.debug(() -> "Could not fsync checkpoint directory " + directory, e);
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Encoding
+    // ------------------------------------------------------------------------------------------------
+
+    private static byte[] encode(Map<String, String> snapshot) throws IOException {
+
+        final ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+        try (DataOutputStream payload = new DataOutputStream(payloadBytes)) {
+            payload.writeInt(snapshot.size());
+            for (final Map.Entry<String, String> entry : snapshot.entrySet()) {
+                writeString(payload, entry.getKey());
+                writeString(payload, entry.getValue());
+            }
+        }
+        final byte[] payload = payloadBytes.toByteArray();
+        final CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        return ByteBuffer.allocate(HEADER_SIZE + payload.length)
+                .putInt(MAGIC)
+                .putInt(FORMAT_VERSION)
+                .putInt((int) crc.getValue())
+                .putInt(payload.length)
+                .put(payload)
+                .array();
+    }
+
+    /*
+     * Returns null if the bytes are not a valid snapshot.
+     */
+    private static Map<String, String> decode(byte[] bytes) throws IOException {
+
+        if (bytes.length < HEADER_SIZE) {
+            return null;
+        }
+        final ByteBuffer header = ByteBuffer.wrap(bytes, 0, HEADER_SIZE);
+        if (header.getInt() != MAGIC || header.getInt() != FORMAT_VERSION) {
+            return null;
+        }
+        final int expectedCrc = header.getInt();
+        final int payloadLength = header.getInt();
+        if (payloadLength != bytes.length - HEADER_SIZE) {
+            return null;
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, HEADER_SIZE, payloadLength);
+        if ((int) crc.getValue() != expectedCrc) {
+            return null;
+        }
+
+        final DataInputStream payload =
+                new DataInputStream(new ByteArrayInputStream(bytes, HEADER_SIZE, payloadLength));
+        final int entryCount = payload.readInt();
+        final Map<String, String> snapshot = new LinkedHashMap<>();
+        for (int i = 0; i < entryCount; i++) {
+            snapshot.put(readString(payload), readString(payload));
+        }
+        return snapshot;
+    }
+
+    /*
+     * Null is written as length -1.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            final byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(utf8.length);
+            out.write(utf8);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] utf8 = new byte[length];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Util methods
+    // ------------------------------------------------------------------------------------------------
+
+    private Map<String, String> loadSnapshot(Path checkpointFile) {
+
+        // A snapshot saved or deleted but not yet written wins over the file
+        synchronized (monitor) {
+            Map<String, String> unwritten = pendingSnapshots.get(checkpointFile);
+            if (unwritten == null) {
+                unwritten = snapshotsBeingWritten.get(checkpointFile);
+            }
+            if (unwritten != null) {
+                return unwritten == DELETED ? null : new LinkedHashMap<>(unwritten);
+            }
+        }
+        if (!Files.exists(checkpointFile)) {
+            return null;
+        }
+        try {
+            final Map<String, String> snapshot = decode(Files.readAllBytes(checkpointFile));
+            if (snapshot == null) {
+                LOG.warn(() -> "Ignoring corrupt strategy checkpoint: " + checkpointFile);
+                return null;
+            }
+            writtenSnapshots.put(checkpointFile, snapshot);
+            return new LinkedHashMap<>(snapshot);
+
+        } catch (IOException e) {
+            LOG.error("Failed to read strategy checkpoint: " + checkpointFile, e);
+            return null;
+        }
+    }
+
+    private void saveSnapshot(Path checkpointFile, Map<String, String> copy) {
+        synchronized (monitor) {
+            if (!accepting) {
+                return;
+            }
+            if (!pendingSnapshots.containsKey(checkpointFile) && copy != DELETED
+                    && copy.equals(writtenSnapshots.get(checkpointFile))) {
+                return;
+            }
+            pendingSnapshots.put(checkpointFile, copy);
+            startWriterIfRequired();
+            monitor.notifyAll();
+        }
+    }
+
+    private Path nonceFileFor(String exchangeId) {
+        return checkpointDirectory.resolve(Filenames.toFilename(exchangeId)).resolve(NONCE_FILENAME);
+    }
+
+    private Path checkpointFileFor(String exchangeId, String marketId, String strategyId) {
+        return checkpointDirectory.resolve(Filenames.toFilename(exchangeId)).resolve(Filenames.toFilename(marketId))
+                .resolve(Filenames.toFilename(strategyId) + FILE_EXTENSION);
+    }
+}
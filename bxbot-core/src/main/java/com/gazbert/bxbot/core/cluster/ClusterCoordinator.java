@@ -0,0 +1,85 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.cluster;
+
+import java.util.Set;
+
+/**
+ * The backend the bot nodes in a cluster coordinate through, e.g. a shared directory, ZooKeeper, etcd.
+ * <p>
+ * Each node heartbeats regularly to stay in the cluster; a node that stops heartbeating is dropped once its
+ * membership expires. A node also claims each market before it starts trading it, and releases the claim once it has
+ * stopped, so a market that moves between nodes is only ever traded by one of them. Implementations must be safe to
+ * call from any thread.
+ *
+ * @author gazbert
+ */
+public interface ClusterCoordinator {
+
+    /**
+     * Returns the name of the backend. Used for logging.
+     *
+     * @return the backend name.
+     */
+    String getName();
+
+    /**
+     * Registers the node with the cluster, or renews its membership.
+     *
+     * @param nodeId the id of the node.
+     * @return the ids of the live nodes in the cluster, including this one.
+     * @throws ClusterCoordinatorException if the backend could not be reached.
+     */
+    Set<String> heartbeat(String nodeId) throws ClusterCoordinatorException;
+
+    /**
+     * Takes the node out of the cluster straight away, so the other nodes can pick up its markets without waiting
+     * for its membership to expire.
+     *
+     * @param nodeId the id of the node.
+     * @throws ClusterCoordinatorException if the backend could not be reached.
+     */
+    void leave(String nodeId) throws ClusterCoordinatorException;
+
+    /**
+     * Claims the market for the node. The claim is granted if no node holds it, if the node already holds it, or if
+     * the node that holds it has been dropped from the cluster.
+     *
+     * @param nodeId   the id of the node.
+     * @param marketId the market key: the exchange id and market id.
+     * @return true if the node now holds the claim, false if another live node still holds it.
+     * @throws ClusterCoordinatorException if the backend could not be reached.
+     */
+    boolean claimMarket(String nodeId, String marketId) throws ClusterCoordinatorException;
+
+    /**
+     * Releases the node's claim on the market, so the node the market has moved to can claim it. Does nothing if the
+     * node does not hold the claim.
+     *
+     * @param nodeId   the id of the node.
+     * @param marketId the market key: the exchange id and market id.
+     * @throws ClusterCoordinatorException if the backend could not be reached.
+     */
+    void releaseMarket(String nodeId, String marketId) throws ClusterCoordinatorException;
+}
@@ -0,0 +1,92 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.cluster;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * <p>
+ * A consistent hash ring of cluster nodes. Each node is placed at several points on the ring - its virtual nodes - and
+ * a key belongs to the first node found walking clockwise from the key's hash. When a node joins or leaves, only the
+ * keys on the arcs next to its virtual nodes move; the rest stay where they are.
+ * </p>
+ * <p>
+ * The ring only depends on the set of node ids, so every node in the cluster builds the same ring and agrees on who
+ * owns each key without talking to the others.
+ * </p>
+ *
+ * @author gazbert
+ */
+final class ConsistentHashRing {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_32();
+
+    private final Set<String> nodeIds;
+    private final NavigableMap<Integer, String> ring = new TreeMap<>();
+
+
+    ConsistentHashRing(Collection<String> nodeIds, int virtualNodesPerNode) {
+        if (virtualNodesPerNode < 1) {
+            throw new IllegalArgumentException("Virtual nodes per node must be at least 1 - found: "
+                    + virtualNodesPerNode);
+        }
+        this.nodeIds = Collections.unmodifiableSet(new TreeSet<>(nodeIds));
+        for (final String nodeId : this.nodeIds) {
+            for (int i = 0; i < virtualNodesPerNode; i++) {
+                // on a hash collision, the lowest node id wins, so every node settles it the same way
+                ring.merge(hash(nodeId + "#" + i), nodeId,
+                        (current, other) -> current.compareTo(other) <= 0 ? current : other);
+            }
+        }
+    }
+
+    Set<String> getNodeIds() {
+        return nodeIds;
+    }
+
+    /*
+     * Returns null if the ring is empty.
+     */
+    String nodeFor(String key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        final Map.Entry<Integer, String> owner = ring.ceilingEntry(hash(key));
+        return owner != null ? owner.getValue() : ring.firstEntry().getValue();
+    }
+
+    private static int hash(String key) {
+        return HASH_FUNCTION.hashString(key, StandardCharsets.UTF_8).asInt();
+    }
+}
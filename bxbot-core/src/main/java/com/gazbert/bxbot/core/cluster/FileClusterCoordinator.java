@@ -0,0 +1,240 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.cluster;
+
+import com.gazbert.bxbot.core.util.Filenames;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Coordinates the cluster through a directory shared by the nodes, e.g. a local directory when the nodes run on one
+ * machine, or an NFS mount. Good for trying out cluster mode and for testing; a production cluster spread over several
+ * machines is better served by a backend built for the job.
+ * </p>
+ * <p>
+ * Each node keeps a file in the directory with the time of its last heartbeat; a node whose heartbeat is older than
+ * the bxbot.cluster.node-ttl-secs property is dropped from the cluster, and its file deleted. The directory is locked
+ * while it is read or written, so the nodes always see a consistent view of it. The heartbeat times are taken from
+ * each node's clock, so the TTL must comfortably exceed the clock skew between the machines.
+ * </p>
+ * <p>
+ * A market claim is kept in a file in the directory with the id of the node holding it, until the node releases it.
+ * A claim held by a node that has been dropped from the cluster can be taken by another node.
+ * </p>
+ *
+ * @author gazbert
+ */
+@Component
+public class FileClusterCoordinator implements ClusterCoordinator {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    private static final String LOCK_FILENAME = "cluster.lock";
+    private static final String NODE_FILE_SUFFIX = ".node";
+    private static final String CLAIM_FILE_SUFFIX = ".claim";
+    private static final String NODE_ID_PROPERTY = "node-id";
+    private static final String HEARTBEAT_TIME_PROPERTY = "heartbeat-time";
+
+    /*
+     * File locks are held on behalf of the whole JVM, so nodes in the same JVM, e.g. in tests, take turns here first.
+     */
+    private static final Object JVM_LOCK = new Object();
+
+    private final Path clusterDirectory;
+    private final long nodeTtlMillis;
+
+
+    @Autowired
+    public FileClusterCoordinator(@Value("${bxbot.cluster.dir:./cluster}") String clusterDirectory,
+                                  @Value("${bxbot.cluster.node-ttl-secs:30}") int nodeTtlInSecs) {
+        this(Paths.get(clusterDirectory), TimeUnit.SECONDS.toMillis(nodeTtlInSecs));
+    }
+
+    FileClusterCoordinator(Path clusterDirectory, long nodeTtlMillis) {
+        this.clusterDirectory = clusterDirectory;
+        this.nodeTtlMillis = nodeTtlMillis;
+    }
+
+    @Override
+    public String getName() {
+        return "file:" + clusterDirectory;
+    }
+
+    @Override
+    public Set<String> heartbeat(String nodeId) throws ClusterCoordinatorException {
+        return withClusterLock(() -> {
+
+            final long now = System.currentTimeMillis();
+            final Properties thisNode = new Properties();
+            thisNode.setProperty(NODE_ID_PROPERTY, nodeId);
+            thisNode.setProperty(HEARTBEAT_TIME_PROPERTY, String.valueOf(now));
+            writeFile(nodeFile(nodeId), thisNode);
+
+            final Set<String> liveNodes = new TreeSet<>();
+            try (DirectoryStream<Path> nodeFiles =
+                         Files.newDirectoryStream(clusterDirectory, "*" + NODE_FILE_SUFFIX)) {
+                for (final Path nodeFile : nodeFiles) {
+                    final Properties node = readFile(nodeFile);
+                    final String liveNodeId = node.getProperty(NODE_ID_PROPERTY);
+                    final long heartbeatTime = Long.parseLong(node.getProperty(HEARTBEAT_TIME_PROPERTY, "0"));
+                    if (liveNodeId == null || now - heartbeatTime > nodeTtlMillis) {
+                        LOG.info(() -> "Cluster node " + liveNodeId + " has expired - dropping it from the cluster.");
+                        Files.deleteIfExists(nodeFile);
+                    } else {
+                        liveNodes.add(liveNodeId);
+                    }
+                }
+            }
+            liveNodes.add(nodeId);
+            return liveNodes;
+        });
+    }
+
+    @Override
+    public void leave(String nodeId) throws ClusterCoordinatorException {
+        withClusterLock(() -> Files.deleteIfExists(nodeFile(nodeId)));
+    }
+
+    @Override
+    public boolean claimMarket(String nodeId, String marketId) throws ClusterCoordinatorException {
+        return withClusterLock(() -> {
+
+            final Path claimFile = claimFile(marketId);
+            if (Files.exists(claimFile)) {
+                final String holderNodeId = readFile(claimFile).getProperty(NODE_ID_PROPERTY);
+                if (nodeId.equals(holderNodeId)) {
+                    return true;
+                }
+                if (holderNodeId != null && isLive(holderNodeId)) {
+                    return false;
+                }
+                LOG.info(() -> "Cluster node " + holderNodeId + " has been dropped from the cluster - taking over its "
+                        + "claim on market " + marketId);
+            }
+
+            final Properties claim = new Properties();
+            claim.setProperty(NODE_ID_PROPERTY, nodeId);
+            writeFile(claimFile, claim);
+            return true;
+        });
+    }
+
+    @Override
+    public void releaseMarket(String nodeId, String marketId) throws ClusterCoordinatorException {
+        withClusterLock(() -> {
+            final Path claimFile = claimFile(marketId);
+            if (Files.exists(claimFile) && nodeId.equals(readFile(claimFile).getProperty(NODE_ID_PROPERTY))) {
+                Files.delete(claimFile);
+            }
+            return null;
+        });
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Private utils
+    // ------------------------------------------------------------------------------------------------
+
+    private <T> T withClusterLock(ClusterDirectoryTask<T> task) throws ClusterCoordinatorException {
+        synchronized (JVM_LOCK) {
+            try {
+                Files.createDirectories(clusterDirectory);
+                try (FileChannel lockChannel = FileChannel.open(clusterDirectory.resolve(LOCK_FILENAME),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                     FileLock ignored = lockChannel.lock()) {
+                    return task.run();
+                }
+            } catch (IOException | RuntimeException e) {
+                throw new ClusterCoordinatorException("Failed to update cluster directory: " + clusterDirectory, e);
+            }
+        }
+    }
+
+    /*
+     * A node is live if its heartbeat is within the TTL - an expired node file is only deleted by the next heartbeat.
+     */
+    private boolean isLive(String nodeId) throws IOException {
+        final Path nodeFile = nodeFile(nodeId);
+        if (!Files.exists(nodeFile)) {
+            return false;
+        }
+        final long heartbeatTime = Long.parseLong(readFile(nodeFile).getProperty(HEARTBEAT_TIME_PROPERTY, "0"));
+        return System.currentTimeMillis() - heartbeatTime <= nodeTtlMillis;
+    }
+
+    /*
+     * Written to a temp file first, so a node that dies mid-write never leaves a half written file behind.
+     */
+    private static void writeFile(Path file, Properties properties) throws IOException {
+        final Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tempFile)) {
+                properties.store(out, null);
+            }
+            Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static Properties readFile(Path file) throws IOException {
+        final Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+        return properties;
+    }
+
+    private Path nodeFile(String nodeId) {
+        return clusterDirectory.resolve(Filenames.toFilename(nodeId) + NODE_FILE_SUFFIX);
+    }
+
+    private Path claimFile(String marketId) {
+        return clusterDirectory.resolve(Filenames.toFilename(marketId) + CLAIM_FILE_SUFFIX);
+    }
+
+    @FunctionalInterface
+    private interface ClusterDirectoryTask<T> {
+        T run() throws IOException;
+    }
+}
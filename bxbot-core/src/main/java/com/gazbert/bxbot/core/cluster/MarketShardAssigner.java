@@ -0,0 +1,324 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.cluster;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Shares the markets out between the bot nodes in a cluster. Every node runs with the same markets config, and each
+ * market is traded by exactly one node: the one that owns the market's exchange id + market id on a
+ * {@link ConsistentHashRing} of the live nodes.
+ * </p>
+ * <p>
+ * The node heartbeats to the {@link ClusterCoordinator} on its own thread. When a node joins or leaves, the ring is
+ * rebuilt and the assignment version bumped; the Trading Engine checks the version before each trade cycle and
+ * starts or stops trading the markets that have moved. Only the markets next to the joining or leaving node move.
+ * If the coordinator cannot be reached, the node carries on with the markets it has - until half the node TTL has
+ * passed since its last heartbeat, when it gives them all up, before the other nodes can drop it and take them over.
+ * </p>
+ * <p>
+ * The nodes see a membership change at their own next heartbeat, so for a while both the old and new owner of a
+ * moved market think it is theirs. A market is therefore handed over through the coordinator: the Trading Engine
+ * {@link #claim(String)}s it before starting it, and the old owner only {@link #release(String)}s it once it has
+ * stopped trading it and saved its final checkpoint. Until then, the new owner leaves the market alone.
+ * </p>
+ * <p>
+ * Each bot hosted by the {@link com.gazbert.bxbot.core.engine.TradingEngineHost} uses its own view of the assigner -
+ * see {@link #forBot(String)} - so the same market traded by two bots is two markets to the cluster.
+ * </p>
+ * <p>
+ * Cluster mode is off by default, in which case every market is assigned to this node. Nodes should share the
+ * checkpoint directory, so a strategy picks up where it left off when its market moves to another node.
+ * </p>
+ *
+ * @author gazbert
+ */
+@Component
+public class MarketShardAssigner {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    private final boolean enabled;
+    private final String nodeId;
+    private final int virtualNodesPerNode;
+    private final long heartbeatIntervalMillis;
+    private final long nodeTtlMillis;
+    private final ClusterCoordinator clusterCoordinator;
+
+    /*
+     * Set on a hosted bot's view: the market keys are prefixed with the botId and passed on to the main assigner,
+     * which does the heartbeating. Null on the main assigner.
+     */
+    private final MarketShardAssigner mainAssigner;
+    private final String marketKeyPrefix;
+
+    /*
+     * Null until the first successful heartbeat - no markets are assigned to the node until then.
+     */
+    private volatile ConsistentHashRing ring;
+    private final AtomicLong assignmentVersion = new AtomicLong();
+    private volatile long lastHeartbeatMillis;
+
+    /*
+     * The markets this node has stopped trading but failed to release - retried at each heartbeat.
+     */
+    private final Set<String> unreleasedMarkets = ConcurrentHashMap.newKeySet();
+
+    private ScheduledExecutorService heartbeatExecutor;
+
+
+    @Autowired
+    public MarketShardAssigner(@Value("${bxbot.cluster.enabled:false}") boolean enabled,
+                               @Value("${bxbot.cluster.node-id:}") String nodeId,
+                               @Value("${bxbot.cluster.virtual-nodes:100}") int virtualNodesPerNode,
+                               @Value("${bxbot.cluster.heartbeat-interval-secs:10}") int heartbeatIntervalInSecs,
+                               @Value("${bxbot.cluster.node-ttl-secs:30}") int nodeTtlInSecs,
+                               ClusterCoordinator clusterCoordinator) {
+
+        this.enabled = enabled;
+        this.nodeId = nodeId == null || nodeId.trim().isEmpty()
+                ? ManagementFactory.getRuntimeMXBean().getName() : nodeId.trim(); // pid@hostname
+        this.virtualNodesPerNode = virtualNodesPerNode;
+        this.heartbeatIntervalMillis = TimeUnit.SECONDS.toMillis(heartbeatIntervalInSecs);
+        this.nodeTtlMillis = TimeUnit.SECONDS.toMillis(nodeTtlInSecs);
+        this.clusterCoordinator = clusterCoordinator;
+        this.mainAssigner = null;
+        this.marketKeyPrefix = "";
+
+        if (enabled && (virtualNodesPerNode < 1 || heartbeatIntervalInSecs < 1)) {
+            final String errorMsg = "Cluster virtual nodes and heartbeat interval must be at least 1 - found: "
+                    + virtualNodesPerNode + " and " + heartbeatIntervalInSecs;
+            LOG.fatal(errorMsg);
+            throw new IllegalArgumentException(errorMsg);
+        }
+        if (enabled && nodeTtlInSecs <= 2 * heartbeatIntervalInSecs) {
+            final String errorMsg = "Cluster node TTL must be more than twice the heartbeat interval - found: "
+                    + nodeTtlInSecs + " and " + heartbeatIntervalInSecs;
+            LOG.fatal(errorMsg);
+            throw new IllegalArgumentException(errorMsg);
+        }
+        LOG.info(() -> "Cluster mode enabled: " + enabled + (enabled ? " - node id: " + this.nodeId
+                + " - coordinator: " + clusterCoordinator.getName() : ""));
+    }
+
+    private MarketShardAssigner(MarketShardAssigner mainAssigner, String botId) {
+        this.enabled = mainAssigner.enabled;
+        this.nodeId = mainAssigner.nodeId;
+        this.virtualNodesPerNode = mainAssigner.virtualNodesPerNode;
+        this.heartbeatIntervalMillis = mainAssigner.heartbeatIntervalMillis;
+        this.nodeTtlMillis = mainAssigner.nodeTtlMillis;
+        this.clusterCoordinator = mainAssigner.clusterCoordinator;
+        this.mainAssigner = mainAssigner;
+        this.marketKeyPrefix = botId + '/';
+    }
+
+    /**
+     * Returns the view of the assigner for a bot hosted by the
+     * {@link com.gazbert.bxbot.core.engine.TradingEngineHost}. Its market keys are prefixed with the botId, so its
+     * claims never clash with the main bot's or the other hosted bots'. The view shares this node's membership of
+     * the cluster - starting and shutting it down does nothing.
+     *
+     * @param botId the id of the hosted bot.
+     * @return the bot's view of the assigner.
+     */
+    public MarketShardAssigner forBot(String botId) {
+        return new MarketShardAssigner(this, botId);
+    }
+
+    /**
+     * Joins the cluster, and starts heartbeating. The first heartbeat is made before returning, so the node knows
+     * its markets before the Trading Engine starts.
+     */
+    @PostConstruct
+    public synchronized void start() {
+        if (!enabled || mainAssigner != null || heartbeatExecutor != null) {
+            return;
+        }
+        heartbeat();
+        heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread heartbeatThread = new Thread(runnable, "bxbot-cluster-heartbeat");
+            heartbeatThread.setDaemon(true);
+            return heartbeatThread;
+        });
+        heartbeatExecutor.scheduleWithFixedDelay(this::heartbeat, heartbeatIntervalMillis, heartbeatIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Returns true if the market is to be traded by this node. Always true if cluster mode is off.
+     *
+     * @param marketId the market key: the exchange id and market id, e.g. bitstamp/btcusd.
+     * @return true if the market is assigned to this node, false otherwise.
+     */
+    public boolean isAssigned(String marketId) {
+        if (!enabled) {
+            return true;
+        }
+        if (mainAssigner != null) {
+            return mainAssigner.isAssigned(marketKeyPrefix + marketId);
+        }
+        final ConsistentHashRing currentRing = ring;
+        return currentRing != null && nodeId.equals(currentRing.nodeFor(marketId));
+    }
+
+    /**
+     * Claims the market for this node, so it can start trading it. The claim is refused while the node that traded
+     * the market before is still live and has not released it - the Trading Engine tries again at its next trade cycle.
+     * Always true if cluster mode is off.
+     *
+     * @param marketId the market key: the exchange id and market id, e.g. bitstamp/btcusd.
+     * @return true if this node can start trading the market, false otherwise.
+     */
+    public boolean claim(String marketId) {
+        if (!enabled) {
+            return true;
+        }
+        if (mainAssigner != null) {
+            return mainAssigner.claim(marketKeyPrefix + marketId);
+        }
+        try {
+            unreleasedMarkets.remove(marketId);
+            return clusterCoordinator.claimMarket(nodeId, marketId);
+        } catch (ClusterCoordinatorException | RuntimeException e) {
+            LOG.error("Failed to claim market " + marketId + " from cluster coordinator " + clusterCoordinator.getName()
+                    + " - will try again at next trade cycle.", e);
+            return false;
+        }
+    }
+
+    /**
+     * Releases this node's claim on the market. Must only be called once the node has stopped trading the market and
+     * saved its final checkpoint. If the coordinator cannot be reached, the release is retried at each heartbeat.
+     *
+     * @param marketId the market key: the exchange id and market id, e.g. bitstamp/btcusd.
+     */
+    public void release(String marketId) {
+        if (!enabled) {
+            return;
+        }
+        if (mainAssigner != null) {
+            mainAssigner.release(marketKeyPrefix + marketId);
+            return;
+        }
+        unreleasedMarkets.add(marketId);
+        releaseMarkets();
+    }
+
+    /**
+     * Returns the version of the market assignment. It goes up each time the cluster membership changes.
+     *
+     * @return the assignment version.
+     */
+    public long getAssignmentVersion() {
+        return mainAssigner == null ? assignmentVersion.get() : mainAssigner.getAssignmentVersion();
+    }
+
+    /**
+     * Stops heartbeating, and leaves the cluster so the other nodes pick up this node's markets straight away.
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (heartbeatExecutor == null) {
+            return;
+        }
+        heartbeatExecutor.shutdownNow();
+        heartbeatExecutor = null;
+        try {
+            clusterCoordinator.leave(nodeId);
+            LOG.info(() -> "Node " + nodeId + " has left the cluster.");
+        } catch (ClusterCoordinatorException | RuntimeException e) {
+            LOG.error("Failed to leave the cluster - the other nodes will pick up this node's markets once its "
+                    + "membership expires.", e);
+        }
+    }
+
+    /*
+     * Runs on the heartbeat thread, and on the caller's thread at startup.
+     */
+    void heartbeat() {
+
+        final long heartbeatStartMillis = System.currentTimeMillis();
+        final Set<String> liveNodes;
+        try {
+            liveNodes = clusterCoordinator.heartbeat(nodeId);
+        } catch (ClusterCoordinatorException | RuntimeException e) {
+            if (ring != null && heartbeatStartMillis - lastHeartbeatMillis > nodeTtlMillis / 2) {
+                ring = null;
+                assignmentVersion.incrementAndGet();
+                LOG.error("Failed to heartbeat to cluster coordinator " + clusterCoordinator.getName()
+                        + " for half the node TTL - giving up all markets before the other nodes take them over.", e);
+            } else {
+                LOG.error("Failed to heartbeat to cluster coordinator " + clusterCoordinator.getName()
+                        + " - carrying on with the current market assignment.", e);
+            }
+            return;
+        }
+        lastHeartbeatMillis = heartbeatStartMillis;
+        releaseMarkets();
+
+        final ConsistentHashRing currentRing = ring;
+        if (currentRing != null && currentRing.getNodeIds().equals(liveNodes)) {
+            return;
+        }
+        ring = new ConsistentHashRing(liveNodes, virtualNodesPerNode);
+        assignmentVersion.incrementAndGet();
+        LOG.info(() -> "Cluster membership has changed - live nodes: " + liveNodes + " - rebalancing markets...");
+    }
+
+    private void releaseMarkets() {
+        for (final String marketId : unreleasedMarkets) {
+            try {
+                clusterCoordinator.releaseMarket(nodeId, marketId);
+                unreleasedMarkets.remove(marketId);
+                LOG.info(() -> "Released market " + marketId + " to the cluster.");
+            } catch (ClusterCoordinatorException | RuntimeException e) {
+                LOG.error("Failed to release market " + marketId + " to cluster coordinator "
+                        + clusterCoordinator.getName() + " - will try again at next heartbeat.", e);
+            }
+        }
+    }
+}
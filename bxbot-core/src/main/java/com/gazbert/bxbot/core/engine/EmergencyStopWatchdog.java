@@ -0,0 +1,281 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.engine;
+
+import com.gazbert.bxbot.core.jfr.EmergencyStopCheckEvent;
+import com.gazbert.bxbot.core.trace.TraceRecorder;
+import com.gazbert.bxbot.exchange.api.ExchangeAdapter;
+import com.gazbert.bxbot.exchange.api.jfr.FlightRecorderSupport;
+import com.gazbert.bxbot.exchange.api.trace.TraceTimeline;
+import com.gazbert.bxbot.exchange.api.trace.Tracer;
+import com.gazbert.bxbot.trading.api.BalanceInfo;
+import com.gazbert.bxbot.trading.api.ExchangeNetworkException;
+import com.gazbert.bxbot.trading.api.TradingApiException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Checks if the Emergency Stop Currency (e.g. USD, BTC) wallet balance across the exchanges has gone *below* the
+ * configured limit. It runs on its own schedule and its own thread, so the trade cycle never waits on a private
+ * API round trip.
+ * </p>
+ * <p>
+ * If the balance drops below the limit, or cannot be obtained because of a non-network error, the watchdog tells the
+ * Trading Engine to halt straight away - it does not wait for the next trade cycle. If the balance cannot be fetched
+ * because of a network error, the balance is marked as unverified and the engine will not start any new trade cycles
+ * until the next check passes.
+ * </p>
+ * <p>
+ * This check is here to help protect runaway losses due to:
+ * - 'buggy' Trading Strategies
+ * - Unforeseen bugs in the Trading Engine and Exchange Adapter
+ * - the exchange sending corrupt order book data and the Trading Strategy being misled... this has happened.
+ * </p>
+ * <p>
+ * The watchdog owns its own Exchange Adapter instances - it never calls into an adapter an exchange lane is using.
+ * </p>
+ *
+ * @author gazbert
+ */
+final class EmergencyStopWatchdog {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    // Check outcomes for the JFR event
+    private static final String CHECK_PASSED = "PASSED";
+    private static final String CHECK_BREACHED = "BREACHED";
+    private static final String CHECK_NETWORK_ERROR = "NETWORK_ERROR";
+    private static final String CHECK_FAILED = "FAILED";
+
+    /*
+     * Callbacks to the Trading Engine. Called on the watchdog thread, or the engine thread for the initial check.
+     */
+    interface Listener {
+
+        void onEmergencyStopBreached(String breachDetails);
+
+        void onEmergencyStopCheckFailed(Exception cause);
+    }
+
+    private final Map<String, ExchangeAdapter> exchangeAdapters;
+    private final String emergencyStopCurrency;
+    private final BigDecimal emergencyStopBalance;
+    private final Listener listener;
+    private final TraceRecorder traceRecorder;
+
+    /*
+     * True if the last check passed. Read by the engine thread at the start of each trade cycle.
+     */
+    private volatile boolean balanceVerified;
+
+    private ScheduledExecutorService executor;
+
+    /*
+     * Total balance fetched by the check in progress. Only accessed by the thread running the check.
+     */
+    private BigDecimal lastBalance;
+
+
+    EmergencyStopWatchdog(Map<String, ExchangeAdapter> exchangeAdapters, String emergencyStopCurrency,
+                          BigDecimal emergencyStopBalance, Listener listener, TraceRecorder traceRecorder) {
+        this.exchangeAdapters = exchangeAdapters;
+        this.emergencyStopCurrency = emergencyStopCurrency;
+        this.emergencyStopBalance = emergencyStopBalance;
+        this.listener = listener;
+        this.traceRecorder = traceRecorder;
+    }
+
+    /*
+     * Runs the first check in the calling thread, so the engine never trades before the balance has been checked,
+     * then schedules the rest on the watchdog thread.
+     * Returns false if the first check told the engine to halt.
+     */
+    boolean start(int checkIntervalInSecs) {
+
+        if (!runTracedCheck()) {
+            return false;
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread watchdogThread = new Thread(runnable, "bxbot-emergency-stop-watchdog");
+            watchdogThread.setDaemon(true);
+            return watchdogThread;
+        });
+        executor.scheduleWithFixedDelay(() -> {
+            if (!runTracedCheck()) {
+                executor.shutdown();
+            }
+        }, checkIntervalInSecs, checkIntervalInSecs, TimeUnit.SECONDS);
+
+        LOG.info(() -> "Emergency Stop watchdog started. Check interval: " + checkIntervalInSecs + "s");
+        return true;
+    }
+
+    boolean isBalanceVerified() {
+        return balanceVerified;
+    }
+
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /*
+     * Runs the check with its own trace timeline attached, so the balance calls show up alongside the trade cycles.
+     */
+    private boolean runTracedCheck() {
+        final TraceTimeline checkTimeline = traceRecorder.begin(TraceRecorder.EMERGENCY_STOP_CHECK);
+        Tracer.attach(checkTimeline);
+        try {
+            return runCheck();
+        } finally {
+            Tracer.detach();
+            traceRecorder.record(checkTimeline);
+        }
+    }
+
+    /*
+     * Returns false if the engine has been told to halt.
+     */
+    private boolean runCheck() {
+
+        final EmergencyStopCheckEvent checkEvent =
+                FlightRecorderSupport.isAvailable() ? new EmergencyStopCheckEvent() : null;
+        if (checkEvent != null) {
+            checkEvent.begin();
+        }
+        lastBalance = null;
+        String outcome = CHECK_FAILED;
+
+        try {
+            final String breachDetails = checkBalance();
+            if (breachDetails != null) {
+                outcome = CHECK_BREACHED;
+                balanceVerified = false;
+                listener.onEmergencyStopBreached(breachDetails);
+                return false;
+            }
+            outcome = CHECK_PASSED;
+            balanceVerified = true;
+            return true;
+
+        } catch (ExchangeNetworkException e) {
+
+            // Might only be connection issue - hold off trading and retry at next check
+            outcome = CHECK_NETWORK_ERROR;
+            balanceVerified = false;
+            LOG.error("A network error occurred performing Emergency Stop check - no new trade cycles will start "
+                    + "until the next check passes...", e);
+            return true;
+
+        } catch (TradingApiException | RuntimeException e) {
+            balanceVerified = false;
+            listener.onEmergencyStopCheckFailed(e);
+            return false;
+
+        } finally {
+            if (checkEvent != null) {
+                checkEvent.end();
+                checkEvent.currency = emergencyStopCurrency;
+                checkEvent.balance = lastBalance == null ? Double.NaN : lastBalance.doubleValue();
+                checkEvent.emergencyStopBalance = emergencyStopBalance.doubleValue();
+                checkEvent.outcome = outcome;
+                checkEvent.commit();
+            }
+        }
+    }
+
+    /*
+     * Returns a description of the breach, or null if the check passed.
+     */
+    private String checkBalance() throws TradingApiException, ExchangeNetworkException {
+
+        LOG.info(() -> "Performing Emergency Stop check...");
+
+        // Total up the Emergency Stop Currency balance across all the exchanges
+        final Map<String, Map<String, BigDecimal>> balancesAvailable = new LinkedHashMap<>();
+        BigDecimal currentBalance = null;
+        for (final Map.Entry<String, ExchangeAdapter> exchange : exchangeAdapters.entrySet()) {
+
+            BalanceInfo balanceInfo;
+            try {
+                balanceInfo = exchange.getValue().getBalanceInfo();
+            } catch (TradingApiException e) {
+                final String errorMsg = "Failed to get Balance info from exchange " + exchange.getKey()
+                        + " to perform Emergency Stop check - letting Trade Engine error policy decide what to do next...";
+                LOG.error(errorMsg, e);
+                throw e;
+            }
+
+            final Map<String, BigDecimal> exchangeBalances = balanceInfo.getBalancesAvailable();
+            balancesAvailable.put(exchange.getKey(), exchangeBalances);
+
+            final BigDecimal exchangeBalance = exchangeBalances.get(emergencyStopCurrency);
+            if (exchangeBalance != null) {
+                currentBalance = currentBalance == null ? exchangeBalance : currentBalance.add(exchangeBalance);
+            }
+        }
+
+        if (currentBalance == null) {
+            final String errorMsg =
+                    "Emergency stop check: Failed to get current Emergency Stop Currency balance as '"
+                            + emergencyStopCurrency + "' key into Balances map "
+                            + "returned null. Balances returned: " + balancesAvailable;
+            LOG.error(errorMsg);
+            throw new IllegalStateException(errorMsg);
+        }
+
+        final BigDecimal totalBalance = currentBalance;
+        lastBalance = totalBalance;
+        LOG.info(() -> "Emergency Stop Currency balance available across exchanges is ["
+                + new DecimalFormat("#.########").format(totalBalance) + "] "
+                + emergencyStopCurrency);
+
+        LOG.info(() -> "Balance that will stop ALL trading across ALL markets is ["
+                + new DecimalFormat("#.########").format(emergencyStopBalance) + "] " + emergencyStopCurrency);
+
+        if (currentBalance.compareTo(emergencyStopBalance) < 0) {
+            final String balanceBlownErrorMsg =
+                    "EMERGENCY STOP triggered! - Current Emergency Stop Currency [" + emergencyStopCurrency + "] wallet balance ["
+                            + new DecimalFormat("#.########").format(currentBalance) + "] on exchange "
+                            + "is lower than configured Emergency Stop balance ["
+                            + new DecimalFormat("#.########").format(emergencyStopBalance) + "] " + emergencyStopCurrency;
+            LOG.fatal(balanceBlownErrorMsg);
+            return balanceBlownErrorMsg;
+        }
+
+        LOG.info(() -> "Emergency Stop check PASSED!");
+        return null;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.gazbert.bxbot.core.engine;
+
+import com.gazbert.bxbot.core.metrics.InstrumentedExchangeAdapter;
+import com.gazbert.bxbot.core.util.ConfigurableComponentFactory;
+import com.gazbert.bxbot.domain.exchange.AuthenticationConfig;
+import com.gazbert.bxbot.domain.exchange.ExchangeConfig;
+import com.gazbert.bxbot.domain.exchange.NetworkConfig;
+import com.gazbert.bxbot.domain.exchange.OptionalConfig;
+import com.gazbert.bxbot.exchange.api.ExchangeAdapter;
+import com.gazbert.bxbot.exchange.api.NonceCheckpointable;
+import com.gazbert.bxbot.exchange.api.impl.AuthenticationConfigImpl;
+import com.gazbert.bxbot.exchange.api.impl.ExchangeConfigImpl;
+import com.gazbert.bxbot.exchange.api.impl.NetworkConfigImpl;
+import com.gazbert.bxbot.exchange.api.impl.OptionalConfigImpl;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Creates the Exchange Adapters for a Trading Engine from the Exchange config. The exchange lanes, Emergency Stop
+ * watchdog, consolidated order book service, and smart order router each get their own adapter instances - but they
+ * share a rate limiter per API key, so the extra instances do not take the exchange over its limit.
+ *
+ * @author gazbert
+ */
+final class ExchangeAdapterFactory {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    /*
+     * Added to a restored nonce to cover the nonces used after it was saved, e.g. when a primary bot died mid trade
+     * cycle and its standby is taking over.
+     */
+    private static final long NONCE_SAFETY_MARGIN = 1000;
+
+    private final TradingEngineContext engineContext;
+
+
+    ExchangeAdapterFactory(TradingEngineContext engineContext) {
+        this.engineContext = engineContext;
+    }
+
+    /*
+     * Creates an instrumented Exchange Adapter for each exchange, keyed on exchange id.
+     */
+    Map<String, ExchangeAdapter> createExchangeAdapters(List<ExchangeConfig> domainExchangeConfigs) {
+        final Map<String, ExchangeAdapter> exchangeAdapters = new LinkedHashMap<>();
+        for (final ExchangeConfig domainExchangeConfig : domainExchangeConfigs) {
+            exchangeAdapters.put(getExchangeId(domainExchangeConfig), createExchangeAdapter(domainExchangeConfig));
+        }
+        return exchangeAdapters;
+    }
+
+    /*
+     * The exchange id is optional in config - fall back to the exchange name.
+     */
+    static String getExchangeId(ExchangeConfig domainExchangeConfig) {
+        return domainExchangeConfig.getId() != null
+                ? domainExchangeConfig.getId() : domainExchangeConfig.getExchangeName();
+    }
+
+    ExchangeAdapter createExchangeAdapter(ExchangeConfig domainExchangeConfig) {
+
+        // Every adapter call gets timed - strategies, the watchdog, book service, and router all share the metrics
+        final String exchangeId = getExchangeId(domainExchangeConfig);
+        final AuthenticationConfig authenticationConfig = domainExchangeConfig.getAuthenticationConfig();
+        return new InstrumentedExchangeAdapter(exchangeId, initExchangeAdapter(domainExchangeConfig),
+                engineContext.getExchangeMetricsRegistry(), engineContext.getTradeJournal(),
+                engineContext.getPositionLedger(), engineContext.getCircuitBreakerRegistry(),
+                engineContext.getFailoverManager(), engineContext.getRateLimiterRegistry().getRateLimiter(exchangeId,
+                domainExchangeConfig.getExchangeAdapter(),
+                authenticationConfig == null ? null : authenticationConfig.getItems()));
+    }
+
+    /*
+     * Loads the Exchange Adapter impl, instantiates it, and initialises it with its config.
+     */
+    ExchangeAdapter initExchangeAdapter(ExchangeConfig domainExchangeConfig) {
+
+        final ExchangeAdapter exchangeAdapter =
+                ConfigurableComponentFactory.createComponent(domainExchangeConfig.getExchangeAdapter());
+        LOG.info(() -> "Trading Engine will use Exchange Adapter for: " + exchangeAdapter.getImplName());
+
+        final ExchangeConfigImpl adapterExchangeConfig = new ExchangeConfigImpl();
+
+        // Fetch optional network config
+        final NetworkConfig networkConfig = domainExchangeConfig.getNetworkConfig();
+        if (networkConfig != null) {
+
+            final NetworkConfigImpl adapterNetworkConfig = new NetworkConfigImpl();
+            adapterNetworkConfig.setConnectionTimeout(networkConfig.getConnectionTimeout());
+
+            // Grab optional non-fatal error codes
+            final List<Integer> nonFatalErrorCodes = networkConfig.getNonFatalErrorCodes();
+            if (nonFatalErrorCodes != null) {
+                adapterNetworkConfig.setNonFatalErrorCodes(nonFatalErrorCodes);
+            } else {
+                LOG.info(() ->
+                        "No (optional) NetworkConfiguration NonFatalErrorCodes have been set for Exchange Adapter: "
+                                + exchangeAdapter.getImplName());
+            }
+
+            // Grab optional non-fatal error messages
+            final List<String> nonFatalErrorMessages = networkConfig.getNonFatalErrorMessages();
+            if (nonFatalErrorMessages != null) {
+                adapterNetworkConfig.setNonFatalErrorMessages(nonFatalErrorMessages);
+            } else {
+                LOG.info(() ->
+                        "No (optional) NetworkConfiguration NonFatalErrorMessages have been set for Exchange Adapter: "
+                                + exchangeAdapter.getImplName());
+            }
+
+            // Optional Accept-Encoding - the adapter falls back to its default compression if not set
+            adapterNetworkConfig.setAcceptEncoding(networkConfig.getAcceptEncoding());
+
+            // Optional retry and hedging policy for idempotent calls - off if not set
+            adapterNetworkConfig.setMaxRetries(networkConfig.getMaxRetries());
+            adapterNetworkConfig.setRetryBackoffMillis(networkConfig.getRetryBackoffMillis());
+            adapterNetworkConfig.setHedgePercentile(networkConfig.getHedgePercentile());
+
+            adapterExchangeConfig.setNetworkConfig(adapterNetworkConfig);
+            LOG.info(() -> "NetworkConfiguration has been set: " + adapterNetworkConfig);
+
+        } else {
+            LOG.info(() -> "No (optional) NetworkConfiguration has been set for Exchange Adapter: " + exchangeAdapter.getImplName());
+        }
+
+        // Fetch optional authentication config
+        final AuthenticationConfig authenticationConfig = domainExchangeConfig.getAuthenticationConfig();
+        if (authenticationConfig != null) {
+
+            final AuthenticationConfigImpl adapterAuthenticationConfig = new AuthenticationConfigImpl();
+            adapterAuthenticationConfig.setItems(authenticationConfig.getItems());
+            adapterExchangeConfig.setAuthenticationConfig(adapterAuthenticationConfig);
+
+            // WARNING - careful when you log this
+//            LOG.info(() ->
+//                    "AuthenticationConfiguration has been set: " + adapterAuthenticationConfig);
+
+        } else {
+            LOG.info(() -> "No (optional) AuthenticationConfiguration has been set for Exchange Adapter: " + exchangeAdapter.getImplName());
+        }
+
+        // Fetch optional config
+        final OptionalConfig optionalConfig = domainExchangeConfig.getOptionalConfig();
+        if (optionalConfig != null) {
+
+            final OptionalConfigImpl adapterOptionalConfig = new OptionalConfigImpl();
+            adapterOptionalConfig.setItems(optionalConfig.getItems());
+            adapterExchangeConfig.setOptionalConfig(adapterOptionalConfig);
+            LOG.info(() -> "Optional Exchange Adapter config has been set: " + adapterOptionalConfig);
+
+        } else {
+            LOG.info(() -> "No Optional config has been set for Exchange Adapter: " + exchangeAdapter.getImplName());
+        }
+
+        exchangeAdapter.init(adapterExchangeConfig);
+        if (exchangeAdapter instanceof NonceCheckpointable) {
+            restoreNonce((NonceCheckpointable) exchangeAdapter, getExchangeId(domainExchangeConfig));
+        }
+        return exchangeAdapter;
+    }
+
+    private void restoreNonce(NonceCheckpointable exchangeAdapter, String exchangeId) {
+        final Long nonce = engineContext.getCheckpointStore().loadNonce(exchangeId);
+        if (nonce != null) {
+            exchangeAdapter.restoreNonce(nonce + NONCE_SAFETY_MARGIN);
+            LOG.info(() -> "Restored nonce for exchange " + exchangeId + " from checkpoint: " + nonce);
+        }
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.engine;
+
+import com.gazbert.bxbot.core.checkpoint.CheckpointStore;
+import com.gazbert.bxbot.core.jfr.StrategyExecutionEvent;
+import com.gazbert.bxbot.core.metrics.InstrumentedExchangeAdapter;
+import com.gazbert.bxbot.exchange.api.ExchangeAdapter;
+import com.gazbert.bxbot.exchange.api.NonceCheckpointable;
+import com.gazbert.bxbot.exchange.api.jfr.FlightRecorderSupport;
+import com.gazbert.bxbot.exchange.api.resilience.CallBudget;
+import com.gazbert.bxbot.exchange.api.trace.TraceSpan;
+import com.gazbert.bxbot.exchange.api.trace.TraceTimeline;
+import com.gazbert.bxbot.exchange.api.trace.Tracer;
+import com.gazbert.bxbot.strategy.api.CheckpointableStrategy;
+import com.gazbert.bxbot.strategy.api.StrategyException;
+import com.gazbert.bxbot.strategy.api.TradingStrategy;
+import com.gazbert.bxbot.trading.api.Market;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.function.BooleanSupplier;
+
+/**
+ * <p>
+ * An execution lane for a single exchange.
+ * </p>
+ * <p>
+ * Each lane owns its own Exchange Adapter instance and a single thread that runs the Trading Strategies for the
+ * markets traded on that exchange. This keeps the 'only 1 thread through the Exchange Adapter at a time' contract,
+ * while stopping a slow exchange from stalling the markets on the other exchanges.
+ * </p>
+ * <p>
+ * After each {@link CheckpointableStrategy} is executed, its state snapshot is handed to the {@link CheckpointStore}.
+ * So is the adapter's nonce after each trade cycle, if it is {@link NonceCheckpointable} - this covers the nonces used
+ * by the other adapter instances for the same API key too, as they share its nonce source.
+ * </p>
+ *
+ * @author gazbert
+ */
+final class ExchangeLane {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    private final String exchangeId;
+    private final ExchangeAdapter exchangeAdapter;
+    private final ExecutorService executor;
+
+    /*
+     * Checked before each Trading Strategy is executed - lets the engine halt trading mid-cycle, e.g. on Emergency Stop.
+     */
+    private final BooleanSupplier tradingPermitted;
+
+    /*
+     * Markets traded in this lane. Used as crude mechanism for checking for duplicate Markets on the same exchange.
+     */
+    private final Set<Market> markets = new HashSet<>();
+
+    /*
+     * The Trading Strategies to execute each cycle, in the order they were added, and the market each one trades.
+     */
+    private final Map<TradingStrategy, Market> tradingStrategies = new LinkedHashMap<>();
+
+    /*
+     * The strategy id from the config for each Trading Strategy - the checkpoints are keyed on it.
+     */
+    private final Map<TradingStrategy, String> strategyIds = new HashMap<>();
+
+    private final CheckpointStore checkpointStore;
+
+    /*
+     * Name of the Exchange Adapter impl - used to tag the JFR events - and its class name for the alerts. Kept here so
+     * the engine thread never has to reach into the adapter.
+     */
+    private final String adapterName;
+    private final String adapterClassName;
+
+    /*
+     * The adapter, if it signs requests with a nonce we can save. Else null.
+     */
+    private final NonceCheckpointable nonceCheckpointable;
+
+    /*
+     * The current/last trade cycle dispatched to this lane. Only accessed by the engine thread.
+     */
+    private Future<Void> tradeCycle;
+
+
+    ExchangeLane(String exchangeId, ExchangeAdapter exchangeAdapter, BooleanSupplier tradingPermitted,
+                 CheckpointStore checkpointStore) {
+        this.exchangeId = exchangeId;
+        this.exchangeAdapter = exchangeAdapter;
+        this.tradingPermitted = tradingPermitted;
+        this.checkpointStore = checkpointStore;
+        final ExchangeAdapter adapterImpl = exchangeAdapter instanceof InstrumentedExchangeAdapter
+                ? ((InstrumentedExchangeAdapter) exchangeAdapter).getDelegate() : exchangeAdapter;
+        this.adapterName = adapterImpl.getClass().getSimpleName();
+        this.adapterClassName = adapterImpl.getClass().getName();
+        this.nonceCheckpointable =
+                adapterImpl instanceof NonceCheckpointable ? (NonceCheckpointable) adapterImpl : null;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread laneThread = new Thread(runnable, "bxbot-lane-" + exchangeId);
+            laneThread.setDaemon(true);
+            return laneThread;
+        });
+    }
+
+    String getExchangeId() {
+        return exchangeId;
+    }
+
+    /*
+     * Only call the adapter on the lane's thread - see {@link #submit(Callable)}.
+     */
+    ExchangeAdapter getExchangeAdapter() {
+        return exchangeAdapter;
+    }
+
+    String getAdapterClassName() {
+        return adapterClassName;
+    }
+
+    /*
+     * Returns false if the market has already been added to this lane.
+     */
+    boolean addMarket(Market market) {
+        return markets.add(market);
+    }
+
+    void addTradingStrategy(Market market, String strategyId, TradingStrategy tradingStrategy) {
+        tradingStrategies.put(tradingStrategy, market);
+        strategyIds.put(tradingStrategy, strategyId);
+    }
+
+    /*
+     * Stops trading the market. Only call this when the lane is idle - see {@link #isIdle()}.
+     */
+    void removeMarket(Market market) {
+        markets.remove(market);
+        tradingStrategies.entrySet().removeIf(strategyAndMarket -> {
+            if (strategyAndMarket.getValue().equals(market)) {
+                strategyIds.remove(strategyAndMarket.getKey());
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /*
+     * Returns true if no trade cycle is running in the lane, so its markets and strategies can be changed.
+     * Unlike {@link #awaitTradeCycle(long)}, it does not re-throw what the last cycle blew up with.
+     */
+    boolean isIdle() {
+        return tradeCycle == null || tradeCycle.isDone();
+    }
+
+    /*
+     * Runs a one-off task on the lane's thread, e.g. initialising a Trading Strategy at startup or after a config
+     * change. The task is queued behind any trade cycle or task in progress, so it never calls into the Exchange
+     * Adapter at the same time as a strategy.
+     */
+    <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(task);
+    }
+
+    /*
+     * Submits the next trade cycle to the lane's thread. Caller must check the previous cycle has completed first
+     * using {@link #awaitTradeCycle(long)}. The cycle's trace timeline is attached to the lane's thread for the
+     * duration of the cycle; it can be null if tracing is disabled. So is the cycle deadline, as the
+     * {@link CallBudget} for the Exchange Adapter's retries.
+     */
+    void dispatchTradeCycle(TraceTimeline cycleTimeline, long cycleDeadlineMillis) {
+        tradeCycle = executor.submit(() -> {
+            Tracer.attach(cycleTimeline);
+            CallBudget.setDeadline(cycleDeadlineMillis);
+            try (TraceSpan ignored = Tracer.span(Tracer.LANE, exchangeId)) {
+                for (final Map.Entry<TradingStrategy, Market> strategyAndMarket : tradingStrategies.entrySet()) {
+                    if (!tradingPermitted.getAsBoolean()) {
+                        LOG.warn(() -> "Trading halted - skipping remaining Trading Strategies on exchange: "
+                                + exchangeId);
+                        break;
+                    }
+                    executeTradingStrategy(strategyAndMarket.getKey(), strategyAndMarket.getValue());
+                }
+            } finally {
+                if (nonceCheckpointable != null) {
+                    checkpointStore.saveNonce(exchangeId, nonceCheckpointable.getNonce());
+                }
+                CallBudget.clear();
+                Tracer.detach();
+            }
+            return null;
+        });
+    }
+
+    /*
+     * Runs on the lane's thread.
+     */
+    private void executeTradingStrategy(TradingStrategy tradingStrategy, Market market) throws StrategyException {
+
+        final String strategyName = tradingStrategy.getClass().getSimpleName();
+        LOG.info(() -> "Executing Trading Strategy ---> " + strategyName + " on exchange: " + exchangeId);
+
+        final StrategyExecutionEvent strategyEvent =
+                FlightRecorderSupport.isAvailable() ? new StrategyExecutionEvent() : null;
+        if (strategyEvent != null) {
+            strategyEvent.begin();
+        }
+
+        String error = null;
+        try (TraceSpan strategySpan = Tracer.span(Tracer.STRATEGY, strategyName + " " + market.getId())) {
+            try {
+                tradingStrategy.execute();
+            } catch (StrategyException | RuntimeException e) {
+                error = e.getClass().getSimpleName();
+                strategySpan.failed(e);
+                throw e;
+            }
+        } finally {
+            if (strategyEvent != null) {
+                strategyEvent.strategy = strategyName;
+                strategyEvent.exchange = exchangeId;
+                strategyEvent.adapter = adapterName;
+                strategyEvent.marketId = market.getId();
+                strategyEvent.error = error;
+                strategyEvent.commit();
+            }
+            if (tradingStrategy instanceof CheckpointableStrategy) {
+                checkpoint((CheckpointableStrategy) tradingStrategy, market);
+            }
+        }
+    }
+
+    /*
+     * Runs on the lane's thread. Snapshots are taken even if the strategy failed - it may have placed an order first.
+     */
+    private void checkpoint(CheckpointableStrategy tradingStrategy, Market market) {
+        try {
+            checkpointStore.save(exchangeId, market.getId(), strategyIds.get(tradingStrategy),
+                    tradingStrategy.checkpoint());
+        } catch (RuntimeException e) {
+            LOG.error("Failed to checkpoint Trading Strategy " + strategyIds.get(tradingStrategy) + " on exchange "
+                    + exchangeId, e);
+        }
+    }
+
+    /*
+     * Waits up to the given time for the current trade cycle to complete.
+     * Returns true if the cycle completed (or there is nothing to wait for), false if it is still running.
+     * Any exception thrown by a Trading Strategy is re-thrown here so the engine's error policy can deal with it.
+     */
+    boolean awaitTradeCycle(long timeoutInMillis) throws StrategyException, InterruptedException {
+
+        if (tradeCycle == null) {
+            return true;
+        }
+
+        try {
+            tradeCycle.get(Math.max(0, timeoutInMillis), TimeUnit.MILLISECONDS);
+            tradeCycle = null;
+            return true;
+
+        } catch (TimeoutException e) {
+            return false;
+
+        } catch (ExecutionException e) {
+            tradeCycle = null;
+            final Throwable cause = e.getCause();
+            if (cause instanceof StrategyException) {
+                throw (StrategyException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.engine;
+
+import com.gazbert.bxbot.core.util.ConfigurableComponentFactory;
+import com.gazbert.bxbot.exchange.api.ExchangeAdapter;
+import com.gazbert.bxbot.exchange.api.replay.ResponseReplay;
+import com.gazbert.bxbot.strategy.api.StrategyException;
+import com.gazbert.bxbot.strategy.api.TradingStrategy;
+import com.gazbert.bxbot.strategy.api.impl.StrategyConfigItems;
+import com.gazbert.bxbot.trading.api.ExchangeNetworkException;
+import com.gazbert.bxbot.trading.api.TradingApi;
+import com.gazbert.bxbot.trading.api.TradingApiException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * The JIT warm-up phase for a single exchange. It runs on the exchange's lane thread before the first trade cycle.
+ * </p>
+ * <p>
+ * The responses to the read-only Trading API calls for each market are recorded once, live, through the lane's
+ * Exchange Adapter. They are then replayed through a spare adapter, so its request signing and response parsing run
+ * without going to the exchange, and through fresh copies of the markets' Trading Strategies, given a
+ * {@link WarmUpTradingApi} that never places orders. The live strategies' state is untouched.
+ * </p>
+ * <p>
+ * The replay is repeated for up to the given number of iterations, or until a steady state is reached: the mean time
+ * of the last few iterations is within the given percentage of the few before them.
+ * </p>
+ *
+ * @author gazbert
+ */
+final class ExchangeWarmUp implements Callable<Integer> {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    /*
+     * Number of iterations averaged when checking for a steady state.
+     */
+    static final int STEADY_STATE_WINDOW = 5;
+
+    private final String exchangeId;
+    private final ExchangeAdapter liveExchangeAdapter;
+    private final ExchangeAdapter replayingExchangeAdapter;
+    private final List<MarketBinding> marketBindings;
+    private final int maxIterations;
+    private final int steadyStatePercentage;
+
+
+    ExchangeWarmUp(String exchangeId, ExchangeAdapter liveExchangeAdapter, ExchangeAdapter replayingExchangeAdapter,
+                   List<MarketBinding> marketBindings, int maxIterations, int steadyStatePercentage) {
+        this.exchangeId = exchangeId;
+        this.liveExchangeAdapter = liveExchangeAdapter;
+        this.replayingExchangeAdapter = replayingExchangeAdapter;
+        this.marketBindings = marketBindings;
+        this.maxIterations = maxIterations;
+        this.steadyStatePercentage = steadyStatePercentage;
+    }
+
+    /**
+     * Runs the warm-up. Failures are only logged.
+     *
+     * @return the number of iterations run.
+     */
+    @Override
+    public Integer call() {
+
+        final ResponseReplay responseReplay = new ResponseReplay();
+        ResponseReplay.attach(responseReplay);
+        try {
+            callReadOnlyApis(liveExchangeAdapter);
+            responseReplay.startReplaying();
+            if (responseReplay.getRecordedResponseCount() == 0) {
+                LOG.warn(() -> "No exchange responses recorded for JIT warm-up on exchange " + exchangeId
+                        + " - skipping it.");
+                return 0;
+            }
+
+            final List<TradingStrategy> tradingStrategies = createTradingStrategies();
+            final List<Long> iterationTimes = new ArrayList<>();
+            while (iterationTimes.size() < maxIterations && !isSteadyState(iterationTimes, steadyStatePercentage)) {
+                final long iterationStartTime = System.nanoTime();
+                callReadOnlyApis(replayingExchangeAdapter);
+                for (final TradingStrategy tradingStrategy : tradingStrategies) {
+                    try {
+                        tradingStrategy.execute();
+                    } catch (StrategyException | RuntimeException e) {
+                        LOG.debug(() -> "Trading Strategy failed during JIT warm-up - carrying on", e);
+                    }
+                }
+                iterationTimes.add(System.nanoTime() - iterationStartTime);
+            }
+
+            LOG.info(() -> "JIT warm-up on exchange " + exchangeId + " ran " + iterationTimes.size()
+                    + " iterations - first took " + TimeUnit.NANOSECONDS.toMicros(iterationTimes.get(0))
+                    + "us, last took " + TimeUnit.NANOSECONDS.toMicros(iterationTimes.get(iterationTimes.size() - 1))
+                    + "us");
+            return iterationTimes.size();
+
+        } catch (RuntimeException e) {
+            LOG.warn("JIT warm-up failed on exchange " + exchangeId + " - carrying on", e);
+            return 0;
+
+        } finally {
+            ResponseReplay.detach();
+        }
+    }
+
+    /*
+     * Returns true if the mean of the last window of iterations is within the percentage of the window before it.
+     */
+    static boolean isSteadyState(List<Long> iterationTimes, int steadyStatePercentage) {
+        final int size = iterationTimes.size();
+        if (size < 2 * STEADY_STATE_WINDOW) {
+            return false;
+        }
+        long previousTotal = 0;
+        long lastTotal = 0;
+        for (int i = size - 2 * STEADY_STATE_WINDOW; i < size - STEADY_STATE_WINDOW; i++) {
+            previousTotal += iterationTimes.get(i);
+            lastTotal += iterationTimes.get(i + STEADY_STATE_WINDOW);
+        }
+        return Math.abs(lastTotal - previousTotal) * 100 <= previousTotal * steadyStatePercentage;
+    }
+
+    private void callReadOnlyApis(TradingApi tradingApi) {
+        callQuietly(tradingApi::getBalanceInfo);
+        for (final MarketBinding marketBinding : marketBindings) {
+            final String marketId = marketBinding.getMarket().getId();
+            callQuietly(() -> tradingApi.getMarketOrders(marketId));
+            callQuietly(() -> tradingApi.getLatestMarketPrice(marketId));
+            callQuietly(() -> tradingApi.getYourOpenOrders(marketId));
+            callQuietly(() -> tradingApi.getPercentageOfBuyOrderTakenForExchangeFee(marketId));
+            callQuietly(() -> tradingApi.getPercentageOfSellOrderTakenForExchangeFee(marketId));
+        }
+    }
+
+    private List<TradingStrategy> createTradingStrategies() {
+        final List<TradingStrategy> tradingStrategies = new ArrayList<>();
+        for (final MarketBinding marketBinding : marketBindings) {
+            try {
+                final TradingStrategy tradingStrategy = ConfigurableComponentFactory.createComponent(
+                        marketBinding.getStrategyConfig().getClassName());
+                final StrategyConfigItems strategyConfigItems = new StrategyConfigItems();
+                if (marketBinding.getStrategyConfigItems() != null) {
+                    strategyConfigItems.setItems(marketBinding.getStrategyConfigItems());
+                }
+                tradingStrategy.init(new WarmUpTradingApi(replayingExchangeAdapter), marketBinding.getMarket(),
+                        strategyConfigItems);
+                tradingStrategies.add(tradingStrategy);
+            } catch (RuntimeException e) {
+                LOG.warn("Failed to create Trading Strategy " + marketBinding.getStrategyId() + " for JIT warm-up "
+                        + "- skipping it", e);
+            }
+        }
+        return tradingStrategies;
+    }
+
+    private static void callQuietly(TradingApiCall tradingApiCall) {
+        try {
+            tradingApiCall.call();
+        } catch (ExchangeNetworkException | TradingApiException | RuntimeException e) {
+            LOG.debug(() -> "Trading API call failed during JIT warm-up - carrying on", e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface TradingApiCall {
+        void call() throws ExchangeNetworkException, TradingApiException;
+    }
+}
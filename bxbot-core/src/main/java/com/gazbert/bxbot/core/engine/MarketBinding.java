@@ -0,0 +1,135 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.engine;
+
+import com.gazbert.bxbot.domain.strategy.StrategyConfig;
+import com.gazbert.bxbot.strategy.api.TradingStrategy;
+import com.gazbert.bxbot.trading.api.Market;
+import com.google.common.base.MoreObjects;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/*
+ * A market from the config bound to the exchange lane it trades on and the Trading Strategy config it trades with.
+ * The engine diffs the bindings built from the latest config against the running ones to work out which markets
+ * need to be stopped, started, or restarted.
+ *
+ * The same market id can be traded on more than 1 exchange, so bindings are keyed on the exchange id and market id.
+ *
+ * @author gazbert
+ */
+final class MarketBinding {
+
+    private static final String KEY_SEPARATOR = "/";
+
+    private final String marketKey;
+    private final String exchangeId;
+    private final Market market;
+    private final String strategyId;
+    private final StrategyConfig strategyConfig;
+    private final Map<String, String> strategyConfigItems;
+
+    /*
+     * Only set once the market has been started.
+     */
+    private TradingStrategy tradingStrategy;
+
+
+    MarketBinding(String exchangeId, Market market, StrategyConfig strategyConfig) {
+        this.marketKey = keyFor(exchangeId, market.getId());
+        this.exchangeId = exchangeId;
+        this.market = market;
+        this.strategyId = strategyConfig.getId();
+        this.strategyConfig = strategyConfig;
+        this.strategyConfigItems = strategyConfig.getConfigItems() == null
+                ? null : new HashMap<>(strategyConfig.getConfigItems());
+    }
+
+    /*
+     * Returns the key of the market on the given exchange, e.g. bitstamp/btcusd.
+     */
+    static String keyFor(String exchangeId, String marketId) {
+        return exchangeId + KEY_SEPARATOR + marketId;
+    }
+
+    String getMarketKey() {
+        return marketKey;
+    }
+
+    String getExchangeId() {
+        return exchangeId;
+    }
+
+    Market getMarket() {
+        return market;
+    }
+
+    String getStrategyId() {
+        return strategyId;
+    }
+
+    StrategyConfig getStrategyConfig() {
+        return strategyConfig;
+    }
+
+    Map<String, String> getStrategyConfigItems() {
+        return strategyConfigItems;
+    }
+
+    TradingStrategy getTradingStrategy() {
+        return tradingStrategy;
+    }
+
+    void setTradingStrategy(TradingStrategy tradingStrategy) {
+        this.tradingStrategy = tradingStrategy;
+    }
+
+    /*
+     * Returns true if the market can keep trading as it is. Market.equals() only compares ids, so the market's
+     * name and currencies are compared here too.
+     */
+    boolean hasSameConfigAs(MarketBinding other) {
+        return exchangeId.equals(other.exchangeId)
+                && market.getId().equals(other.market.getId())
+                && Objects.equals(market.getName(), other.market.getName())
+                && Objects.equals(market.getBaseCurrency(), other.market.getBaseCurrency())
+                && Objects.equals(market.getCounterCurrency(), other.market.getCounterCurrency())
+                && strategyId.equals(other.strategyId)
+                && Objects.equals(strategyConfig.getClassName(), other.strategyConfig.getClassName())
+                && Objects.equals(strategyConfigItems, other.strategyConfigItems);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("marketKey", marketKey)
+                .add("exchangeId", exchangeId)
+                .add("market", market)
+                .add("strategyId", strategyId)
+                .add("strategyConfigItems", strategyConfigItems)
+                .toString();
+    }
+}
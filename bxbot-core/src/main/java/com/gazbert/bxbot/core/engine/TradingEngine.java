@@ -23,28 +23,37 @@
 
 package com.gazbert.bxbot.core.engine;
 
-import com.gazbert.bxbot.core.mail.EmailAlerter;
+import com.gazbert.bxbot.core.accounting.PositionLedger;
+import com.gazbert.bxbot.core.alerts.AlertDispatcher;
+import com.gazbert.bxbot.core.checkpoint.CheckpointStore;
+import com.gazbert.bxbot.core.cluster.MarketShardAssigner;
+import com.gazbert.bxbot.core.failover.FailoverManager;
+import com.gazbert.bxbot.core.jfr.TradeCycleEvent;
+import com.gazbert.bxbot.core.marketdata.ConsolidatedOrderBookService;
+import com.gazbert.bxbot.core.routing.SmartOrderRouter;
+import com.gazbert.bxbot.core.startup.StartupProfiler;
+import com.gazbert.bxbot.core.trace.TraceRecorder;
 import com.gazbert.bxbot.core.util.ConfigurableComponentFactory;
 import com.gazbert.bxbot.domain.engine.EngineConfig;
-import com.gazbert.bxbot.domain.exchange.AuthenticationConfig;
 import com.gazbert.bxbot.domain.exchange.ExchangeConfig;
-import com.gazbert.bxbot.domain.exchange.NetworkConfig;
-import com.gazbert.bxbot.domain.exchange.OptionalConfig;
 import com.gazbert.bxbot.domain.market.MarketConfig;
 import com.gazbert.bxbot.domain.strategy.StrategyConfig;
 import com.gazbert.bxbot.exchange.api.ExchangeAdapter;
-import com.gazbert.bxbot.exchange.api.impl.AuthenticationConfigImpl;
-import com.gazbert.bxbot.exchange.api.impl.ExchangeConfigImpl;
-import com.gazbert.bxbot.exchange.api.impl.NetworkConfigImpl;
-import com.gazbert.bxbot.exchange.api.impl.OptionalConfigImpl;
+import com.gazbert.bxbot.exchange.api.jfr.FlightRecorderSupport;
+import com.gazbert.bxbot.exchange.api.trace.TraceSpan;
+import com.gazbert.bxbot.exchange.api.trace.TraceTimeline;
+import com.gazbert.bxbot.exchange.api.trace.Tracer;
 import com.gazbert.bxbot.services.EngineConfigService;
 import com.gazbert.bxbot.services.ExchangeConfigService;
 import com.gazbert.bxbot.services.MarketConfigService;
 import com.gazbert.bxbot.services.StrategyConfigService;
+import com.gazbert.bxbot.strategy.api.CheckpointableStrategy;
+import com.gazbert.bxbot.strategy.api.ConsolidatedOrderBookAware;
+import com.gazbert.bxbot.strategy.api.OrderRouterAware;
+import com.gazbert.bxbot.strategy.api.PositionAware;
 import com.gazbert.bxbot.strategy.api.StrategyException;
 import com.gazbert.bxbot.strategy.api.TradingStrategy;
 import com.gazbert.bxbot.strategy.api.impl.StrategyConfigItems;
-import com.gazbert.bxbot.trading.api.BalanceInfo;
 import com.gazbert.bxbot.trading.api.ExchangeNetworkException;
 import com.gazbert.bxbot.trading.api.Market;
 import com.gazbert.bxbot.trading.api.TradingApiException;
@@ -58,22 +67,32 @@ import org.springframework.util.Assert;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.math.BigDecimal;
-import java.text.DecimalFormat;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The main Trading Engine.
  * <p>
- * The engine has been coded to fail *hard and fast* whenever something unexpected happens. If Email
+ * The engine has been coded to fail *hard and fast* whenever something unexpected happens. If Email (or other)
  * Alerts are enabled, a message will be sent with details of the problem before the bot is shutdown.
  * <p>
  * The only time the bot does not fail hard and fast is for network issues connecting to the exchange - it logs the error
  * and retries at next trade cycle.
  * <p>
+ * The runtime services the engine trades with - alerts, metrics, journal, checkpoints, cluster, failover, etc. - are
+ * given to it in a {@link TradingEngineContext}.
+ * <p>
  * To keep things simple:
- * - The engine is single threaded.
- * - The engine only supports trading on 1 exchange per instance of the bot, i.e. 1 Exchange Adapter per process.
+ * - Each exchange gets its own execution lane - only 1 thread calls a lane's Exchange Adapter at any time.
+ * - A lane that is still busy with its previous trade cycle is skipped for the current cycle.
  * - The engine only supports 1 Trading Strategy per Market.
+ * - Market and Strategy config changes are applied between trade cycles; Exchange and Engine config changes need a
+ *   restart.
  *
  * @author gazbert
  */
@@ -85,6 +104,7 @@ public class TradingEngine {
 
     // Email Alert error message stuff
     private static final String CRITICAL_EMAIL_ALERT_SUBJECT = "CRITICAL Alert message from BX-bot";
+    private static final String CONFIG_CHANGE_EMAIL_ALERT_SUBJECT = "WARNING Alert message from BX-bot";
     private static final String DETAILS_ERROR_MSG_LABEL = " Details: ";
     private static final String CAUSE_ERROR_MSG_LABEL = " Cause: ";
     private static final String NEWLINE = System.getProperty("line.separator");
@@ -93,27 +113,32 @@ public class TradingEngine {
     /*
      * Trade execution interval in secs. The time we wait/sleep in between trade cycles.
      */
-    private static int tradeExecutionInterval;
+    private int tradeExecutionInterval;
 
     /*
      * Control flag decides if the Trading Engine lives or dies.
      */
     private volatile boolean keepAlive = true;
 
+    /*
+     * Released when the engine is halted - wakes the main control loop if it is waiting for the next trade cycle.
+     */
+    private final CountDownLatch haltSignal = new CountDownLatch(1);
+
     /*
      * Is Trading Engine already running? Used to prevent multiple 'starts' of the engine.
      */
     private boolean isRunning = false;
 
     /*
-     * Monitor to use when checking if Trading Engine is running.
+     * Monitor to use when checking if Trading Engine is running. Per instance - a JVM can host more than 1 engine.
      */
-    private static final Object IS_RUNNING_MONITOR = new Object();
+    private final Object isRunningMonitor = new Object();
 
     /*
      * The thread the Trading Engine is running in.
      */
-    private Thread engineThread;
+    private volatile Thread engineThread;
 
     /*
      * Map of Trading Strategy descriptions from config.
@@ -121,9 +146,48 @@ public class TradingEngine {
     private final Map<String, StrategyConfig> strategyDescriptions = new HashMap<>();
 
     /*
-     * List of cached Trading Strategy implementations for the Trade Engine to execute.
+     * The markets being traded, keyed on exchange id + market id. Only accessed by the engine thread.
+     */
+    private final Map<String, MarketBinding> marketBindings = new LinkedHashMap<>();
+
+    /*
+     * The versions of the Market and Strategy config being traded with. Checked for changes before each trade cycle.
+     */
+    private String loadedMarketConfigVersion;
+    private String loadedStrategyConfigVersion;
+    private long loadedAssignmentVersion;
+
+    /*
+     * True if a market assigned to this node is still waiting for the node that traded it before to hand it over.
      */
-    private final List<TradingStrategy> tradingStrategiesToExecute = new ArrayList<>();
+    private boolean marketHandoverPending;
+
+    /*
+     * The exchange execution lanes, keyed on exchange id. Each lane holds the cached Trading Strategy implementations
+     * for the markets on that exchange. The first exchange loaded is the default one for markets with no exchange id.
+     */
+    private final Map<String, ExchangeLane> exchangeLanes = new LinkedHashMap<>();
+    private ExchangeLane defaultExchangeLane;
+
+    /*
+     * Consolidated cross-exchange order books. Only created if the bot trades on more than 1 exchange.
+     */
+    private ConsolidatedOrderBookService consolidatedOrderBookService;
+
+    /*
+     * Routes orders across exchanges. Only created if the bot trades on more than 1 exchange.
+     */
+    private SmartOrderRouter smartOrderRouter;
+
+    /*
+     * The Exchange config loaded at startup.
+     */
+    private List<ExchangeConfig> exchangeConfigs;
+
+    /*
+     * Runs the Emergency Stop check. Only created if an Emergency Stop balance has been configured.
+     */
+    private EmergencyStopWatchdog emergencyStopWatchdog;
 
     /*
      * The emergency stop currency value is used to prevent a catastrophic loss on the exchange.
@@ -135,8 +199,8 @@ public class TradingEngine {
     /*
      * The Emergency Stop balance.
      * It is used to prevent a catastrophic loss on the exchange.
-     * The Trading Engine checks this value at the start of every trade cycle: if the balance on
-     * the exchange drops below this value, the Trading Engine will stop trading on all markets.
+     * The Emergency Stop watchdog checks this value every trade cycle interval: if the balance across
+     * all exchanges drops below this value, the Trading Engine will stop trading on all markets.
      * Manual intervention is then required to restart the bot.
      */
     private BigDecimal emergencyStopBalance;
@@ -144,8 +208,14 @@ public class TradingEngine {
     private String botId;
     private String botName;
 
-    private final EmailAlerter emailAlerter;
-    private ExchangeAdapter exchangeAdapter;
+    private final AlertDispatcher alertDispatcher;
+    private final TraceRecorder traceRecorder;
+    private final PositionLedger positionLedger;
+    private final CheckpointStore checkpointStore;
+    private final StartupProfiler startupProfiler;
+    private final MarketShardAssigner marketShardAssigner;
+    private final FailoverManager failoverManager;
+    private final ExchangeAdapterFactory exchangeAdapterFactory;
 
     // Services
     private final ExchangeConfigService exchangeConfigService;
@@ -157,7 +227,7 @@ public class TradingEngine {
     @Autowired
     public TradingEngine(ExchangeConfigService exchangeConfigService, EngineConfigService engineConfigService,
                          StrategyConfigService strategyConfigService, MarketConfigService marketConfigService,
-                         EmailAlerter emailAlerter) {
+                         TradingEngineContext engineContext) {
 
         LOG.info(() -> "Initialising Trading Engine...");
 
@@ -165,12 +235,19 @@ public class TradingEngine {
         this.engineConfigService = engineConfigService;
         this.strategyConfigService = strategyConfigService;
         this.marketConfigService = marketConfigService;
-        this.emailAlerter = emailAlerter;
+        this.alertDispatcher = engineContext.getAlertDispatcher();
+        this.traceRecorder = engineContext.getTraceRecorder();
+        this.positionLedger = engineContext.getPositionLedger();
+        this.checkpointStore = engineContext.getCheckpointStore();
+        this.startupProfiler = engineContext.getStartupProfiler();
+        this.marketShardAssigner = engineContext.getMarketShardAssigner();
+        this.failoverManager = engineContext.getFailoverManager();
+        this.exchangeAdapterFactory = new ExchangeAdapterFactory(engineContext);
     }
 
     public void start() throws IllegalStateException {
 
-        synchronized (IS_RUNNING_MONITOR) {
+        synchronized (isRunningMonitor) {
             if (isRunning) {
                 final String errorMsg = "Cannot start Trading Engine because it is already running!";
                 LOG.error(errorMsg);
@@ -191,12 +268,154 @@ public class TradingEngine {
     private void initConfig() {
 
         LOG.info(() -> "Initialising BX-bot config...");
+        startupProfiler.contextStarted();
+
+        // the config items are independent of each other, so they are fetched in parallel
+        long phaseStartTime = System.currentTimeMillis();
+        loadedStrategyConfigVersion = strategyConfigService.getStrategyConfigVersion();
+        loadedMarketConfigVersion = marketConfigService.getMarketConfigVersion();
+        loadedAssignmentVersion = marketShardAssigner.getAssignmentVersion();
+        final List<ExchangeConfig> exchangeConfig;
+        final EngineConfig engineConfig;
+        final List<StrategyConfig> strategyConfig;
+        final List<MarketConfig> marketConfig;
+        final ExecutorService configFetcher = Executors.newFixedThreadPool(4, runnable -> {
+            final Thread fetcherThread = new Thread(runnable, "bxbot-config-fetcher");
+            fetcherThread.setDaemon(true);
+            return fetcherThread;
+        });
+        try {
+            final Future<List<ExchangeConfig>> exchangeConfigFetch =
+                    configFetcher.submit(exchangeConfigService::getAllExchangeConfig);
+            final Future<EngineConfig> engineConfigFetch = configFetcher.submit(engineConfigService::getEngineConfig);
+            final Future<List<StrategyConfig>> strategyConfigFetch =
+                    configFetcher.submit(strategyConfigService::getAllStrategyConfig);
+            final Future<List<MarketConfig>> marketConfigFetch =
+                    configFetcher.submit(marketConfigService::getAllMarketConfig);
+            exchangeConfig = awaitStartupTask(exchangeConfigFetch);
+            engineConfig = awaitStartupTask(engineConfigFetch);
+            strategyConfig = awaitStartupTask(strategyConfigFetch);
+            marketConfig = awaitStartupTask(marketConfigFetch);
+        } finally {
+            configFetcher.shutdownNow();
+        }
+        startupProfiler.record("fetch-config", phaseStartTime);
 
         // the sequence order of these methods is significant - don't change it.
-        loadExchangeAdapterConfig();
-        loadEngineConfig();
-        loadTradingStrategyConfig();
-        loadMarketConfigAndInitialiseTradingStrategies();
+        phaseStartTime = System.currentTimeMillis();
+        loadExchangeAdaptersConfig(exchangeConfig);
+        loadEngineConfig(engineConfig);
+        loadEmergencyStopWatchdog();
+        startupProfiler.record("create-exchange-adapters", phaseStartTime);
+
+        phaseStartTime = System.currentTimeMillis();
+        loadTradingStrategyConfig(strategyConfig);
+        loadMarketConfigAndInitialiseTradingStrategies(marketConfig);
+        startupProfiler.record("init-strategies", phaseStartTime);
+
+        warmUpJit(exchangeConfig);
+        prewarmExchangeConnections();
+    }
+
+    /*
+     * Waits for a startup task and re-throws anything it blew up with - startup fails hard and fast.
+     */
+    private static <T> T awaitStartupTask(Future<T> startupTask) {
+        try {
+            return startupTask.get();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Trading Engine interrupted during startup", e);
+
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /*
+     * Runs the JIT warm-up phase, if it is switched on, on each exchange lane in parallel, and waits for it to finish.
+     * Each lane gets a spare Exchange Adapter to replay the recorded exchange responses through - see ExchangeWarmUp.
+     */
+    private void warmUpJit(List<ExchangeConfig> domainExchangeConfigs) {
+
+        if (startupProfiler.getWarmUpIterations() == 0) {
+            return;
+        }
+
+        final long phaseStartTime = System.currentTimeMillis();
+        final Map<String, List<MarketBinding>> marketBindingsByExchange = new LinkedHashMap<>();
+        for (final MarketBinding marketBinding : marketBindings.values()) {
+            marketBindingsByExchange.computeIfAbsent(marketBinding.getExchangeId(), id -> new ArrayList<>())
+                    .add(marketBinding);
+        }
+
+        final List<Future<Integer>> warmUps = new ArrayList<>();
+        for (final ExchangeConfig domainExchangeConfig : domainExchangeConfigs) {
+
+            final String exchangeId = ExchangeAdapterFactory.getExchangeId(domainExchangeConfig);
+            final List<MarketBinding> exchangeMarketBindings = marketBindingsByExchange.get(exchangeId);
+            if (exchangeMarketBindings == null) {
+                continue;
+            }
+
+            final ExchangeAdapter replayingExchangeAdapter;
+            try {
+                replayingExchangeAdapter = exchangeAdapterFactory.initExchangeAdapter(domainExchangeConfig);
+            } catch (RuntimeException e) {
+                LOG.warn("Failed to create Exchange Adapter for JIT warm-up on exchange " + exchangeId
+                        + " - skipping it", e);
+                continue;
+            }
+            final ExchangeLane exchangeLane = exchangeLanes.get(exchangeId);
+            warmUps.add(exchangeLane.submit(new ExchangeWarmUp(exchangeId, exchangeLane.getExchangeAdapter(),
+                    replayingExchangeAdapter, exchangeMarketBindings, startupProfiler.getWarmUpIterations(),
+                    startupProfiler.getWarmUpSteadyStatePercentage())));
+        }
+        for (final Future<Integer> warmUp : warmUps) {
+            awaitStartupTask(warmUp);
+        }
+        startupProfiler.record("jit-warm-up", phaseStartTime);
+    }
+
+    /*
+     * Makes a cheap Trading API call down each exchange lane, so the DNS lookup, connection + TLS handshake, and class
+     * loading of the adapter's request path are done before the first trade cycle. It runs in the background on the
+     * lane threads - the first trade cycle just queues up behind it. A failure here is only logged.
+     */
+    private void prewarmExchangeConnections() {
+
+        if (!startupProfiler.isPrewarmConnections()) {
+            return;
+        }
+
+        final Set<String> exchangesWarmed = new HashSet<>();
+        for (final MarketBinding marketBinding : marketBindings.values()) {
+
+            final String exchangeId = marketBinding.getExchangeId();
+            if (!exchangesWarmed.add(exchangeId)) {
+                continue;
+            }
+
+            final ExchangeLane exchangeLane = exchangeLanes.get(exchangeId);
+            final String marketId = marketBinding.getMarket().getId();
+            final long phaseStartTime = System.currentTimeMillis();
+            exchangeLane.submit(() -> {
+                try {
+                    exchangeLane.getExchangeAdapter().getLatestMarketPrice(marketId);
+                } catch (ExchangeNetworkException | TradingApiException | RuntimeException e) {
+                    LOG.warn("Failed to warm up connection to exchange " + exchangeId + " - carrying on", e);
+                }
+                startupProfiler.record("prewarm-connection-" + exchangeId, phaseStartTime);
+                return null;
+            });
+        }
     }
 
     /*
@@ -208,63 +427,51 @@ public class TradingEngine {
 
         LOG.info(() -> "Starting Trading Engine for " + botId + " ...");
 
+        if (consolidatedOrderBookService != null) {
+            consolidatedOrderBookService.start(tradeExecutionInterval);
+        }
+
+        // First Emergency Stop check runs before we trade - the rest run on the watchdog thread
+        if (emergencyStopWatchdog != null) {
+            final long phaseStartTime = System.currentTimeMillis();
+            if (!emergencyStopWatchdog.start(tradeExecutionInterval)) {
+                keepAlive = false;
+            }
+            startupProfiler.record("first-emergency-stop-check", phaseStartTime);
+        }
+        startupProfiler.tradingStarted();
+
         while (keepAlive) {
 
             try {
 
                 LOG.info(() -> "*** Starting next trade cycle... ***");
 
-                // Emergency Stop Check MUST run at start of every trade cycle.
-                if (isEmergencyStopLimitBreached()) {
-                    break;
-                }
+                applyConfigChanges();
+
+                // Don't trade if the watchdog could not verify the Emergency Stop balance at its last check
+                if (emergencyStopWatchdog != null && !emergencyStopWatchdog.isBalanceVerified()) {
+                    LOG.warn(() -> "Emergency Stop balance could not be verified at last check - skipping trade cycle. "
+                            + "BX-bot will attempt next trade in " + tradeExecutionInterval + "s...");
 
-                // Execute the Trading Strategies
-                for (final TradingStrategy tradingStrategy : tradingStrategiesToExecute) {
-                    LOG.info(() -> "Executing Trading Strategy ---> " + tradingStrategy.getClass().getSimpleName());
-                    tradingStrategy.execute();
+                } else if (!failoverManager.isTradingAllowed()) {
+                    // A failover primary without a lease acknowledged by the standby may have been taken over
+                    LOG.warn(() -> "Failover primary does not hold a lease acknowledged by the standby - skipping trade "
+                            + "cycle. BX-bot will attempt next trade in " + tradeExecutionInterval + "s...");
+                } else {
+                    // Execute the Trading Strategies
+                    executeTradeCycleOnExchangeLanes();
                 }
 
                 LOG.info(() -> "*** Sleeping " + tradeExecutionInterval + "s til next trade cycle... ***");
 
                 try {
-                    Thread.sleep(tradeExecutionInterval * 1000);
+                    haltSignal.await(tradeExecutionInterval, TimeUnit.SECONDS);
                 } catch (InterruptedException e) {
                     LOG.warn("Control Loop thread interrupted when sleeping before next trade cycle");
                     Thread.currentThread().interrupt();
                 }
 
-            } catch (ExchangeNetworkException e) {
-
-                /*
-                 * We have a network connection issue reported by Exchange Adapter when called directly from
-                 * Trading Engine. Current policy is to log it and sleep until next trade cycle.
-                 */
-                final String WARNING_MSG = "A network error has occurred in Exchange Adapter! " +
-                        "BX-bot will attempt next trade in " + tradeExecutionInterval + "s...";
-                LOG.error(WARNING_MSG, e);
-
-                try {
-                    Thread.sleep(tradeExecutionInterval * 1000);
-                } catch (InterruptedException e1) {
-                    LOG.warn("Control Loop thread interrupted when sleeping before next trade cycle");
-                    Thread.currentThread().interrupt();
-                }
-
-            } catch (TradingApiException e) {
-
-                /*
-                 * A serious issue has occurred in the Exchange Adapter.
-                 * Current policy is to log it, send email alert if required, and shutdown bot.
-                 */
-                final String FATAL_ERROR_MSG = "A FATAL error has occurred in Exchange Adapter!";
-                LOG.fatal(FATAL_ERROR_MSG, e);
-                emailAlerter.sendMessage(CRITICAL_EMAIL_ALERT_SUBJECT,
-                        buildCriticalEmailAlertMsgContent(FATAL_ERROR_MSG +
-                                DETAILS_ERROR_MSG_LABEL + e.getMessage() +
-                                CAUSE_ERROR_MSG_LABEL + e.getCause(), e));
-                keepAlive = false;
-
             } catch (StrategyException e) {
 
                 /*
@@ -273,10 +480,9 @@ public class TradingEngine {
                  */
                 final String FATAL_ERROR_MSG = "A FATAL error has occurred in Trading Strategy!";
                 LOG.fatal(FATAL_ERROR_MSG, e);
-                emailAlerter.sendMessage(CRITICAL_EMAIL_ALERT_SUBJECT,
-                        buildCriticalEmailAlertMsgContent(FATAL_ERROR_MSG +
-                                DETAILS_ERROR_MSG_LABEL + e.getMessage() +
-                                CAUSE_ERROR_MSG_LABEL + e.getCause(), e));
+                sendCriticalAlert(FATAL_ERROR_MSG +
+                        DETAILS_ERROR_MSG_LABEL + e.getMessage() +
+                        CAUSE_ERROR_MSG_LABEL + e.getCause(), e);
                 keepAlive = false;
 
             } catch (Exception e) {
@@ -287,20 +493,90 @@ public class TradingEngine {
                  */
                 final String FATAL_ERROR_MSG = "An unexpected FATAL error has occurred in Exchange Adapter or Trading Strategy!";
                 LOG.fatal(FATAL_ERROR_MSG, e);
-                emailAlerter.sendMessage(CRITICAL_EMAIL_ALERT_SUBJECT,
-                        buildCriticalEmailAlertMsgContent(FATAL_ERROR_MSG +
-                                DETAILS_ERROR_MSG_LABEL + e.getMessage() +
-                                CAUSE_ERROR_MSG_LABEL + e.getCause(), e));
+                sendCriticalAlert(FATAL_ERROR_MSG +
+                        DETAILS_ERROR_MSG_LABEL + e.getMessage() +
+                        CAUSE_ERROR_MSG_LABEL + e.getCause(), e);
                 keepAlive = false;
             }
         }
 
+        if (emergencyStopWatchdog != null) {
+            emergencyStopWatchdog.shutdown();
+        }
+        exchangeLanes.values().forEach(ExchangeLane::shutdown);
+        if (consolidatedOrderBookService != null) {
+            consolidatedOrderBookService.shutdown();
+        }
+
         LOG.fatal("BX-bot " + botId + " is shutting down NOW!");
-        synchronized (IS_RUNNING_MONITOR) {
+        synchronized (isRunningMonitor) {
             isRunning = false;
         }
     }
 
+    /*
+     * Runs the Trading Strategies on each exchange lane and waits up to the trade execution interval for the lanes to
+     * complete. Any exception thrown by a Trading Strategy is re-thrown so the main control loop error policy can
+     * deal with it.
+     */
+    private void executeTradeCycleOnExchangeLanes() throws StrategyException {
+
+        final TraceTimeline cycleTimeline = traceRecorder.begin(TraceRecorder.TRADE_CYCLE);
+        Tracer.attach(cycleTimeline);
+        final TradeCycleEvent cycleEvent = FlightRecorderSupport.isAvailable() ? new TradeCycleEvent() : null;
+        if (cycleEvent != null) {
+            cycleEvent.begin();
+            cycleEvent.botId = botId;
+        }
+
+        final List<ExchangeLane> dispatchedLanes = new ArrayList<>();
+        int lanesSkipped = 0;
+        int lanesOverrun = 0;
+        try (TraceSpan ignored = Tracer.span(Tracer.CYCLE)) {
+
+            if (smartOrderRouter != null) {
+                smartOrderRouter.startTradeCycle();
+            }
+
+            // The lanes have until the next cycle is due - the adapters will not start a retry that overruns it
+            final long waitUntil = System.currentTimeMillis() + tradeExecutionInterval * 1000L;
+            for (final ExchangeLane exchangeLane : exchangeLanes.values()) {
+
+                // Checks the previous cycle has finished - and re-throws anything it blew up with
+                if (!exchangeLane.awaitTradeCycle(0)) {
+                    LOG.warn(() -> "Exchange " + exchangeLane.getExchangeId() + " is still busy with previous trade "
+                            + "cycle - skipping it this cycle...");
+                    lanesSkipped++;
+                    continue;
+                }
+                exchangeLane.dispatchTradeCycle(cycleTimeline, waitUntil);
+                dispatchedLanes.add(exchangeLane);
+            }
+
+            for (final ExchangeLane exchangeLane : dispatchedLanes) {
+                if (!exchangeLane.awaitTradeCycle(waitUntil - System.currentTimeMillis())) {
+                    LOG.warn(() -> "Exchange " + exchangeLane.getExchangeId() + " did not complete trade cycle within "
+                            + tradeExecutionInterval + "s - it will be checked again at next trade cycle.");
+                    lanesOverrun++;
+                }
+            }
+
+        } catch (InterruptedException e) {
+            LOG.warn("Control Loop thread interrupted when waiting for exchange lanes to complete trade cycle");
+            Thread.currentThread().interrupt();
+
+        } finally {
+            Tracer.detach();
+            traceRecorder.record(cycleTimeline);
+            if (cycleEvent != null) {
+                cycleEvent.lanesDispatched = dispatchedLanes.size();
+                cycleEvent.lanesSkipped = lanesSkipped;
+                cycleEvent.lanesOverrun = lanesOverrun;
+                cycleEvent.commit();
+            }
+        }
+    }
+
     /*
      * Shutdown the Trading Engine.
      * Might be called from a different thread.
@@ -311,86 +587,73 @@ public class TradingEngine {
         LOG.info(() -> "Shutdown request received!");
         LOG.info(() -> "Engine originally started in thread: " + engineThread);
 
-        keepAlive = false;
-        engineThread.interrupt(); // poke it in case bot is sleeping
-    }
-
-    synchronized boolean isRunning() {
-        LOG.info(() -> "isRunning: " + isRunning);
-        return isRunning;
+        halt();
+        if (engineThread != null) {
+            engineThread.interrupt(); // poke it in case bot is waiting on exchange lanes
+        }
     }
 
     /*
-     * Checks if the Emergency Stop Currency (e.g. USD, BTC) wallet balance on exchange has gone *below* configured limit.
-     * If the balance cannot be obtained or has dropped below the configured limit, we notify the main control loop to
-     * immediately shutdown the bot.
-     *
-     * This check is here to help protect runaway losses due to:
-     * - 'buggy' Trading Strategies
-     * - Unforeseen bugs in the Trading Engine and Exchange Adapter
-     * - the exchange sending corrupt order book data and the Trading Strategy being misled... this has happened.
+     * Stops the main control loop and any trade cycles in progress. Can be called from any thread.
      */
-    private boolean isEmergencyStopLimitBreached() throws TradingApiException, ExchangeNetworkException {
-
-        boolean isEmergencyStopLimitBreached = true;
+    private void halt() {
+        keepAlive = false;
+        haltSignal.countDown();
+    }
 
-        if (emergencyStopBalance.compareTo(BigDecimal.ZERO) == 0) {
-            return false;
+    boolean isRunning() {
+        synchronized (isRunningMonitor) {
+            LOG.info(() -> "isRunning: " + isRunning);
+            return isRunning;
         }
+    }
 
-        LOG.info(() -> "Performing Emergency Stop check...");
-
-        BalanceInfo balanceInfo;
-        try {
-            balanceInfo = exchangeAdapter.getBalanceInfo();
-        } catch (TradingApiException e) {
-            final String errorMsg = "Failed to get Balance info from exchange to perform Emergency Stop check - letting"
-                    + " Trade Engine error policy decide what to do next...";
-            LOG.error(errorMsg, e);
-            // re-throw to main loop - might only be connection issue and it will retry...
-            throw e;
-        }
-
-        final Map<String, BigDecimal> balancesAvailable = balanceInfo.getBalancesAvailable();
-        final BigDecimal currentBalance = balancesAvailable.get(emergencyStopCurrency);
-        if (currentBalance == null) {
-            final String errorMsg =
-                    "Emergency stop check: Failed to get current Emergency Stop Currency balance as '"
-                            + emergencyStopCurrency + "' key into Balances map "
-                            + "returned null. Balances returned: " + balancesAvailable;
-            LOG.error(errorMsg);
-            throw new IllegalStateException(errorMsg);
-        } else {
-
-            LOG.info(() -> "Emergency Stop Currency balance available on exchange is ["
-                    + new DecimalFormat("#.########").format(currentBalance) + "] "
-                    + emergencyStopCurrency);
+    // ------------------------------------------------------------------------
+    // Emergency Stop watchdog callbacks - called on the watchdog thread
+    // ------------------------------------------------------------------------
 
-            LOG.info(() -> "Balance that will stop ALL trading across ALL markets is ["
-                    + new DecimalFormat("#.########").format(emergencyStopBalance) + "] " + emergencyStopCurrency);
+    private void onEmergencyStopBreached(String breachDetails) {
+        sendCriticalAlert(breachDetails, null);
+        halt();
+    }
 
-            if (currentBalance.compareTo(emergencyStopBalance) < 0) {
-                final String balanceBlownErrorMsg =
-                        "EMERGENCY STOP triggered! - Current Emergency Stop Currency [" + emergencyStopCurrency + "] wallet balance ["
-                                + new DecimalFormat("#.########").format(currentBalance) + "] on exchange "
-                                + "is lower than configured Emergency Stop balance ["
-                                + new DecimalFormat("#.########").format(emergencyStopBalance) + "] " + emergencyStopCurrency;
+    private void onEmergencyStopCheckFailed(Exception e) {
+
+        /*
+         * A serious issue has occurred in the Exchange Adapter.
+         * Current policy is to log it, send email alert if required, and shutdown bot.
+         */
+        final String FATAL_ERROR_MSG = e instanceof TradingApiException
+                ? "A FATAL error has occurred in Exchange Adapter!"
+                : "An unexpected FATAL error has occurred in Exchange Adapter or Trading Strategy!";
+        LOG.fatal(FATAL_ERROR_MSG, e);
+        sendCriticalAlert(FATAL_ERROR_MSG +
+                DETAILS_ERROR_MSG_LABEL + e.getMessage() +
+                CAUSE_ERROR_MSG_LABEL + e.getCause(), e);
+        halt();
+    }
 
-                LOG.fatal(balanceBlownErrorMsg);
-                emailAlerter.sendMessage(CRITICAL_EMAIL_ALERT_SUBJECT,
-                        buildCriticalEmailAlertMsgContent(balanceBlownErrorMsg, null));
-            } else {
+    /*
+     * Hands the alert to the dispatcher - never blocks on the mail server. The error details are used to spot repeats.
+     */
+    private void sendCriticalAlert(String errorDetails, Throwable exception) {
+        alertDispatcher.dispatch(CRITICAL_EMAIL_ALERT_SUBJECT, buildEmailAlertMsgContent(
+                "A CRITICAL error event has occurred on BX-bot.", errorDetails,
+                "The bot will shut down NOW! Check the bot logs for more information.", exception), errorDetails);
+    }
 
-                isEmergencyStopLimitBreached = false;
-                LOG.info(() -> "Emergency Stop check PASSED!");
-            }
-        }
-        return isEmergencyStopLimitBreached;
+    /*
+     * For a Market/Strategy config change that could not be applied - the bot carries on trading.
+     */
+    private void sendConfigChangeAlert(String errorDetails, String actionTaken, Throwable exception) {
+        alertDispatcher.dispatch(CONFIG_CHANGE_EMAIL_ALERT_SUBJECT, buildEmailAlertMsgContent(
+                "A config change could not be applied on BX-bot.", errorDetails, actionTaken, exception), errorDetails);
     }
 
-    private String buildCriticalEmailAlertMsgContent(String errorDetails, Throwable exception) {
+    private String buildEmailAlertMsgContent(String summary, String errorDetails, String actionTaken,
+                                             Throwable exception) {
 
-        final StringBuilder msgContent = new StringBuilder("A CRITICAL error event has occurred on BX-bot.");
+        final StringBuilder msgContent = new StringBuilder(summary);
         msgContent.append(NEWLINE).append(NEWLINE);
 
         msgContent.append(HORIZONTAL_RULE);
@@ -402,10 +665,15 @@ public class TradingEngine {
         msgContent.append(NEWLINE).append(NEWLINE);
 
         msgContent.append(HORIZONTAL_RULE);
-        msgContent.append("Exchange Adapter:");
-        msgContent.append(NEWLINE).append(NEWLINE);
-        msgContent.append(exchangeAdapter.getClass().getName());
+        msgContent.append("Exchange Adapters:");
         msgContent.append(NEWLINE).append(NEWLINE);
+        for (final ExchangeLane exchangeLane : exchangeLanes.values()) {
+            msgContent.append(exchangeLane.getExchangeId());
+            msgContent.append(" / ");
+            msgContent.append(exchangeLane.getAdapterClassName());
+            msgContent.append(NEWLINE);
+        }
+        msgContent.append(NEWLINE);
 
         msgContent.append(HORIZONTAL_RULE);
         msgContent.append("Event Time:");
@@ -422,7 +690,7 @@ public class TradingEngine {
         msgContent.append(HORIZONTAL_RULE);
         msgContent.append("Action Taken:");
         msgContent.append(NEWLINE).append(NEWLINE);
-        msgContent.append("The bot will shut down NOW! Check the bot logs for more information.");
+        msgContent.append(actionTaken);
         msgContent.append(NEWLINE).append(NEWLINE);
 
         if (exception != null) {
@@ -442,85 +710,50 @@ public class TradingEngine {
     // Config loading methods
     // ------------------------------------------------------------------------
 
-    private void loadExchangeAdapterConfig() {
+    private void loadExchangeAdaptersConfig(List<ExchangeConfig> domainExchangeConfigs) {
 
-        final ExchangeConfig domainExchangeConfig = exchangeConfigService.getExchangeConfig();
-        LOG.info(() -> "Fetched Exchange config from repository: " + domainExchangeConfig);
+        exchangeConfigs = domainExchangeConfigs;
+        LOG.info(() -> "Fetched Exchange config from repository: " + domainExchangeConfigs);
 
-        exchangeAdapter = ConfigurableComponentFactory.createComponent(domainExchangeConfig.getExchangeAdapter());
-        LOG.info(() -> "Trading Engine will use Exchange Adapter for: " + exchangeAdapter.getImplName());
-
-        final ExchangeConfigImpl adapterExchangeConfig = new ExchangeConfigImpl();
-
-        // Fetch optional network config
-        final NetworkConfig networkConfig = domainExchangeConfig.getNetworkConfig();
-        if (networkConfig != null) {
+        if (domainExchangeConfigs == null || domainExchangeConfigs.isEmpty()) {
+            final String errorMsg = "No Exchange config has been found - at least 1 exchange must be configured!";
+            LOG.fatal(errorMsg);
+            throw new IllegalArgumentException(errorMsg);
+        }
 
-            final NetworkConfigImpl adapterNetworkConfig = new NetworkConfigImpl();
-            adapterNetworkConfig.setConnectionTimeout(networkConfig.getConnectionTimeout());
+        for (final ExchangeConfig domainExchangeConfig : domainExchangeConfigs) {
 
-            // Grab optional non-fatal error codes
-            final List<Integer> nonFatalErrorCodes = networkConfig.getNonFatalErrorCodes();
-            if (nonFatalErrorCodes != null) {
-                adapterNetworkConfig.setNonFatalErrorCodes(nonFatalErrorCodes);
-            } else {
-                LOG.info(() ->
-                        "No (optional) NetworkConfiguration NonFatalErrorCodes have been set for Exchange Adapter: "
-                                + exchangeAdapter.getImplName());
+            final String exchangeId = ExchangeAdapterFactory.getExchangeId(domainExchangeConfig);
+            if (exchangeLanes.containsKey(exchangeId)) {
+                final String errorMsg = "Found duplicate Exchange! Exchange details: " + domainExchangeConfig;
+                LOG.fatal(errorMsg);
+                throw new IllegalArgumentException(errorMsg);
             }
 
-            // Grab optional non-fatal error messages
-            final List<String> nonFatalErrorMessages = networkConfig.getNonFatalErrorMessages();
-            if (nonFatalErrorMessages != null) {
-                adapterNetworkConfig.setNonFatalErrorMessages(nonFatalErrorMessages);
-            } else {
-                LOG.info(() ->
-                        "No (optional) NetworkConfiguration NonFatalErrorMessages have been set for Exchange Adapter: "
-                                + exchangeAdapter.getImplName());
+            final ExchangeLane exchangeLane = new ExchangeLane(exchangeId,
+                    exchangeAdapterFactory.createExchangeAdapter(domainExchangeConfig),
+                    () -> keepAlive, checkpointStore);
+            exchangeLanes.put(exchangeId, exchangeLane);
+            if (defaultExchangeLane == null) {
+                defaultExchangeLane = exchangeLane;
             }
-
-            adapterExchangeConfig.setNetworkConfig(adapterNetworkConfig);
-            LOG.info(() -> "NetworkConfiguration has been set: " + adapterNetworkConfig);
-
-        } else {
-            LOG.info(() -> "No (optional) NetworkConfiguration has been set for Exchange Adapter: " + exchangeAdapter.getImplName());
-        }
-
-        // Fetch optional authentication config
-        final AuthenticationConfig authenticationConfig = domainExchangeConfig.getAuthenticationConfig();
-        if (authenticationConfig != null) {
-
-            final AuthenticationConfigImpl adapterAuthenticationConfig = new AuthenticationConfigImpl();
-            adapterAuthenticationConfig.setItems(authenticationConfig.getItems());
-            adapterExchangeConfig.setAuthenticationConfig(adapterAuthenticationConfig);
-
-            // WARNING - careful when you log this
-//            LOG.info(() ->
-//                    "AuthenticationConfiguration has been set: " + adapterAuthenticationConfig);
-
-        } else {
-            LOG.info(() -> "No (optional) AuthenticationConfiguration has been set for Exchange Adapter: " + exchangeAdapter.getImplName());
+            LOG.info(() -> "Registered Exchange with Trading Engine - ID: " + exchangeId);
         }
 
-        // Fetch optional config
-        final OptionalConfig optionalConfig = domainExchangeConfig.getOptionalConfig();
-        if (optionalConfig != null) {
-
-            final OptionalConfigImpl adapterOptionalConfig = new OptionalConfigImpl();
-            adapterOptionalConfig.setItems(optionalConfig.getItems());
-            adapterExchangeConfig.setOptionalConfig(adapterOptionalConfig);
-            LOG.info(() -> "Optional Exchange Adapter config has been set: " + adapterOptionalConfig);
+        if (exchangeLanes.size() > 1) {
 
-        } else {
-            LOG.info(() -> "No Optional config has been set for Exchange Adapter: " + exchangeAdapter.getImplName());
+            // The book service and router get their own adapters so they never call into an adapter a lane is using -
+            // they take their nonces from the same source as the lane's adapter for the API key
+            consolidatedOrderBookService = new ConsolidatedOrderBookService(
+                    exchangeAdapterFactory.createExchangeAdapters(domainExchangeConfigs));
+            smartOrderRouter = new SmartOrderRouter(
+                    exchangeAdapterFactory.createExchangeAdapters(domainExchangeConfigs), consolidatedOrderBookService,
+                    SmartOrderRouter.DEFAULT_LATENCY_PENALTY_PER_100_MILLIS);
         }
-
-        exchangeAdapter.init(adapterExchangeConfig);
     }
 
-    private void loadEngineConfig() {
+    private void loadEngineConfig(EngineConfig engineConfig) {
 
-        final EngineConfig engineConfig = engineConfigService.getEngineConfig();
         LOG.info(() -> "Fetched Engine config from repository: " + engineConfig);
 
         botId = engineConfig.getBotId();
@@ -531,26 +764,117 @@ public class TradingEngine {
         emergencyStopBalance = engineConfig.getEmergencyStopBalance();
     }
 
-    private void loadTradingStrategyConfig() {
+    private void loadEmergencyStopWatchdog() {
+
+        if (emergencyStopBalance.compareTo(BigDecimal.ZERO) == 0) {
+            LOG.warn(() -> "Emergency Stop balance is set to 0 - Emergency Stop check is disabled!");
+            return;
+        }
+
+        // The watchdog gets its own adapters so it never calls into an adapter a lane is using - they take their
+        // nonces from the same source as the lane's adapter for the API key, so they never reuse one
+        emergencyStopWatchdog = new EmergencyStopWatchdog(exchangeAdapterFactory.createExchangeAdapters(exchangeConfigs),
+                emergencyStopCurrency, emergencyStopBalance, new EmergencyStopWatchdog.Listener() {
+            @Override
+            public void onEmergencyStopBreached(String breachDetails) {
+                TradingEngine.this.onEmergencyStopBreached(breachDetails);
+            }
+
+            @Override
+            public void onEmergencyStopCheckFailed(Exception cause) {
+                TradingEngine.this.onEmergencyStopCheckFailed(cause);
+            }
+        }, traceRecorder);
+    }
+
+    private void loadTradingStrategyConfig(List<StrategyConfig> strategies) {
+        strategyDescriptions.putAll(toStrategyDescriptions(strategies));
+    }
+
+    private static Map<String, StrategyConfig> toStrategyDescriptions(List<StrategyConfig> strategies) {
 
-        final List<StrategyConfig> strategies = strategyConfigService.getAllStrategyConfig();
         LOG.debug(() -> "Fetched Strategy config from repository: " + strategies);
 
+        final Map<String, StrategyConfig> strategiesById = new HashMap<>();
         for (final StrategyConfig strategy : strategies) {
-            strategyDescriptions.put(strategy.getId(), strategy);
+            strategiesById.put(strategy.getId(), strategy);
             LOG.info(() -> "Registered Trading Strategy with Trading Engine - ID: " + strategy.getId());
         }
+        return strategiesById;
     }
 
-    private void loadMarketConfigAndInitialiseTradingStrategies() {
+    private void loadMarketConfigAndInitialiseTradingStrategies(List<MarketConfig> markets) {
 
-        final List<MarketConfig> markets = marketConfigService.getAllMarketConfig();
         LOG.info(() -> "Fetched Markets config from repository: " + markets);
 
-        // used only as crude mechanism for checking for duplicate Markets
-        final Set<Market> loadedMarkets = new HashSet<>();
-
         // Load em up and create the Strategies
+        final Map<MarketBinding, TradingStrategy> tradingStrategies = new LinkedHashMap<>();
+        for (final MarketBinding marketBinding : bindMarkets(markets, strategyDescriptions).values()) {
+            if (!isAssignedToThisNode(marketBinding) || !claimMarket(marketBinding)) {
+                continue;
+            }
+            tradingStrategies.put(marketBinding, createTradingStrategy(marketBinding));
+        }
+
+        /*
+         * Initialise the Strategies concurrently. Each exchange lane initialises the Strategies for its own markets,
+         * one after the other, so still only 1 thread calls an Exchange Adapter at any time.
+         */
+        final List<Future<Void>> initialisations = new ArrayList<>();
+        for (final Map.Entry<MarketBinding, TradingStrategy> bindingAndStrategy : tradingStrategies.entrySet()) {
+            final MarketBinding marketBinding = bindingAndStrategy.getKey();
+            initialisations.add(exchangeLanes.get(marketBinding.getExchangeId()).submit(() -> {
+                initialiseTradingStrategy(marketBinding, bindingAndStrategy.getValue(), null);
+                return null;
+            }));
+        }
+        for (final Future<Void> initialisation : initialisations) {
+            awaitStartupTask(initialisation);
+        }
+
+        tradingStrategies.forEach(this::addTradingMarket);
+
+        LOG.info(() -> "Loaded and set Market configuration successfully!");
+    }
+
+    /*
+     * In cluster mode, the other nodes trade the markets that are not assigned to us.
+     */
+    private boolean isAssignedToThisNode(MarketBinding marketBinding) {
+        if (marketShardAssigner.isAssigned(marketBinding.getMarketKey())) {
+            return true;
+        }
+        LOG.info(() -> marketBinding.getMarketKey() + " market is assigned to another node in the cluster - skipping "
+                + "to next market...");
+        return false;
+    }
+
+    /*
+     * In cluster mode, a market that has moved to this node is only started once the node that traded it before has
+     * released it, after saving its final checkpoint - so the strategy is restored from that checkpoint, and the 2
+     * nodes never trade the market at the same time. Until then, the claim is retried at each trade cycle.
+     */
+    private boolean claimMarket(MarketBinding marketBinding) {
+        if (marketShardAssigner.claim(marketBinding.getMarketKey())) {
+            return true;
+        }
+        LOG.info(() -> "Market " + marketBinding.getMarketKey() + " has not been released by the node that traded "
+                + "it before - will try to start it at next trade cycle.");
+        marketHandoverPending = true;
+        return false;
+    }
+
+    /*
+     * Works out the exchange lane and Trading Strategy for each enabled market, keyed on exchange id + market id. In
+     * cluster mode, this includes the markets assigned to the other nodes.
+     * Throws IllegalArgumentException if the config integrity is blown.
+     */
+    private Map<String, MarketBinding> bindMarkets(List<MarketConfig> markets,
+                                                   Map<String, StrategyConfig> strategies) {
+
+        final Map<String, MarketBinding> marketBindingsByKey = new LinkedHashMap<>();
+        final Set<String> marketKeys = new HashSet<>();
+
         for (final MarketConfig market : markets) {
 
             final String marketName = market.getName();
@@ -559,9 +883,20 @@ public class TradingEngine {
                 continue;
             }
 
-            final Market tradingMarket = new Market(marketName, market.getId(), market.getBaseCurrency(), market.getCounterCurrency());
-            final boolean wasAdded = loadedMarkets.add(tradingMarket);
-            if (!wasAdded) {
+            // Get the exchange to trade this Market on - default to first exchange if not set
+            final String exchangeToUse = market.getExchangeId();
+            final ExchangeLane exchangeLane =
+                    exchangeToUse == null ? defaultExchangeLane : exchangeLanes.get(exchangeToUse);
+            if (exchangeLane == null) {
+                final String errorMsg = "Failed to find matching Exchange for Market " + market
+                        + " - The Exchange [" + exchangeToUse + "] cannot be found in the Exchanges: "
+                        + exchangeLanes.keySet();
+                LOG.error(errorMsg);
+                throw new IllegalArgumentException(errorMsg);
+            }
+
+            final String marketKey = MarketBinding.keyFor(exchangeLane.getExchangeId(), market.getId());
+            if (!marketKeys.add(marketKey)) {
                 final String errorMsg = "Found duplicate Market! Market details: " + market;
                 LOG.fatal(errorMsg);
                 throw new IllegalArgumentException(errorMsg);
@@ -571,43 +906,314 @@ public class TradingEngine {
             final String strategyToUse = market.getTradingStrategyId();
             LOG.info(() -> "Market Trading Strategy Id: " + strategyToUse);
 
-            if (strategyDescriptions.containsKey(strategyToUse)) {
-                final StrategyConfig tradingStrategy = strategyDescriptions.get(strategyToUse);
-                final String tradingStrategyClassname = tradingStrategy.getClassName();
+            if (!strategies.containsKey(strategyToUse)) {
 
-                // Grab optional config for the Trading Strategy
-                final StrategyConfigItems tradingStrategyConfig = new StrategyConfigItems();
-                final Map<String, String> configItems = tradingStrategy.getConfigItems();
-                if (configItems != null) {
-                    tradingStrategyConfig.setItems(configItems);
-                } else {
-                    LOG.info(() -> "No (optional) configuration has been set for Trading Strategy: " + strategyToUse);
-                }
+                // Game over. Config integrity blown - we can't find strat.
+                final String errorMsg = "Failed to find matching Strategy for Market " + market
+                        + " - The Strategy " + "[" + strategyToUse + "] cannot be found in the "
+                        + " Strategy Descriptions map: " + strategies;
+                LOG.error(errorMsg);
+                throw new IllegalArgumentException(errorMsg);
+            }
 
-                LOG.info(() -> "StrategyConfigImpl (optional): " + tradingStrategyConfig);
+            final Market tradingMarket = new Market(marketName, market.getId(), market.getBaseCurrency(),
+                    market.getCounterCurrency());
+            marketBindingsByKey.put(marketKey, new MarketBinding(exchangeLane.getExchangeId(), tradingMarket,
+                    strategies.get(strategyToUse)));
+        }
+        return marketBindingsByKey;
+    }
 
-                /*
-                 * Load the Trading Strategy impl, instantiate it, set its config, and store in the cached
-                 * Trading Strategy execution list.
-                 */
-                final TradingStrategy strategyImpl = ConfigurableComponentFactory.createComponent(tradingStrategyClassname);
-                strategyImpl.init(exchangeAdapter, tradingMarket, tradingStrategyConfig);
+    /*
+     * Creates and initialises the market's Trading Strategy and adds it to the market's exchange lane. The strategy
+     * is restored from the given state if there is any, else from its last checkpoint. The lane must be idle.
+     *
+     * The strategy is initialised on the lane's thread, as it is at startup: an idle lane can still be running a task
+     * submitted to it, e.g. the connection pre-warm, and the strategy may call the Exchange Adapter in its init.
+     */
+    private void startTradingMarket(MarketBinding marketBinding, Map<String, String> carriedOverState) {
+        final TradingStrategy strategyImpl = createTradingStrategy(marketBinding);
+        awaitStartupTask(exchangeLanes.get(marketBinding.getExchangeId()).submit(() -> {
+            initialiseTradingStrategy(marketBinding, strategyImpl, carriedOverState);
+            return null;
+        }));
+        addTradingMarket(marketBinding, strategyImpl);
+    }
+
+    /*
+     * Loads the Trading Strategy impl, instantiates it, and gives it the providers it is aware of.
+     */
+    private TradingStrategy createTradingStrategy(MarketBinding marketBinding) {
 
-                LOG.info(() -> "Initialized trading strategy successfully. Name: [" + tradingStrategy.getName()
-                        + "] Class: " + tradingStrategy.getClassName());
+        final TradingStrategy strategyImpl = ConfigurableComponentFactory.createComponent(
+                marketBinding.getStrategyConfig().getClassName());
+        if (consolidatedOrderBookService != null && strategyImpl instanceof ConsolidatedOrderBookAware) {
+            ((ConsolidatedOrderBookAware) strategyImpl).setConsolidatedOrderBookProvider(consolidatedOrderBookService);
+        }
+        if (smartOrderRouter != null && strategyImpl instanceof OrderRouterAware) {
+            ((OrderRouterAware) strategyImpl).setOrderRouter(smartOrderRouter);
+        }
+        if (strategyImpl instanceof PositionAware) {
+            ((PositionAware) strategyImpl).setPositionProvider(
+                    positionLedger.providerFor(marketBinding.getExchangeId()));
+        }
+        return strategyImpl;
+    }
 
-                tradingStrategiesToExecute.add(strategyImpl);
+    /*
+     * Sets the Trading Strategy's config and restores its state. Runs on the market's exchange lane thread.
+     */
+    private void initialiseTradingStrategy(MarketBinding marketBinding, TradingStrategy strategyImpl,
+                                           Map<String, String> carriedOverState) {
+
+        final ExchangeLane exchangeLane = exchangeLanes.get(marketBinding.getExchangeId());
+        final Market tradingMarket = marketBinding.getMarket();
+        final StrategyConfig tradingStrategy = marketBinding.getStrategyConfig();
+        final String strategyToUse = marketBinding.getStrategyId();
+
+        // Grab optional config for the Trading Strategy
+        final StrategyConfigItems tradingStrategyConfig = new StrategyConfigItems();
+        final Map<String, String> configItems = marketBinding.getStrategyConfigItems();
+        if (configItems != null) {
+            tradingStrategyConfig.setItems(configItems);
+        } else {
+            LOG.info(() -> "No (optional) configuration has been set for Trading Strategy: " + strategyToUse);
+        }
+
+        LOG.info(() -> "StrategyConfigImpl (optional): " + tradingStrategyConfig);
+
+        strategyImpl.init(exchangeLane.getExchangeAdapter(), tradingMarket, tradingStrategyConfig);
+        if (strategyImpl instanceof CheckpointableStrategy) {
+            restoreCheckpoint((CheckpointableStrategy) strategyImpl, exchangeLane.getExchangeId(),
+                    tradingMarket, strategyToUse, carriedOverState);
+        }
+
+        LOG.info(() -> "Initialized trading strategy successfully. Name: [" + tradingStrategy.getName()
+                + "] Class: " + tradingStrategy.getClassName() + " Exchange: " + exchangeLane.getExchangeId());
+    }
+
+    /*
+     * Stores the initialised Trading Strategy in the cached Trading Strategy execution list.
+     */
+    private void addTradingMarket(MarketBinding marketBinding, TradingStrategy strategyImpl) {
+
+        final ExchangeLane exchangeLane = exchangeLanes.get(marketBinding.getExchangeId());
+        final Market tradingMarket = marketBinding.getMarket();
+
+        if (consolidatedOrderBookService != null) {
+            consolidatedOrderBookService.trackMarket(exchangeLane.getExchangeId(), tradingMarket);
+        }
+        if (smartOrderRouter != null) {
+            smartOrderRouter.trackMarket(exchangeLane.getExchangeId(), tradingMarket);
+        }
+        exchangeLane.addMarket(tradingMarket);
+        exchangeLane.addTradingStrategy(tradingMarket, marketBinding.getStrategyId(), strategyImpl);
+
+        marketBinding.setTradingStrategy(strategyImpl);
+        marketBindings.put(marketBinding.getMarketKey(), marketBinding);
+    }
+
+    /*
+     * Takes the market out of its exchange lane. The lane must be idle. A CheckpointableStrategy is checkpointed one
+     * last time and its state returned, so it can be carried over to the strategy that replaces it; returns null
+     * otherwise.
+     */
+    private Map<String, String> stopTradingMarket(MarketBinding marketBinding) {
+
+        final String exchangeId = marketBinding.getExchangeId();
+        final Market tradingMarket = marketBinding.getMarket();
+
+        exchangeLanes.get(exchangeId).removeMarket(tradingMarket);
+        if (consolidatedOrderBookService != null) {
+            consolidatedOrderBookService.untrackMarket(exchangeId, tradingMarket);
+        }
+        if (smartOrderRouter != null) {
+            smartOrderRouter.untrackMarket(exchangeId, tradingMarket);
+        }
+        marketBindings.remove(marketBinding.getMarketKey());
+        LOG.info(() -> "Stopped trading Market " + tradingMarket.getId() + " on exchange " + exchangeId);
+
+        final TradingStrategy strategyImpl = marketBinding.getTradingStrategy();
+        if (!(strategyImpl instanceof CheckpointableStrategy)) {
+            return null;
+        }
+        try {
+            final Map<String, String> state = ((CheckpointableStrategy) strategyImpl).checkpoint();
+            checkpointStore.save(exchangeId, tradingMarket.getId(), marketBinding.getStrategyId(), state);
+            return state;
+        } catch (RuntimeException e) {
+            LOG.error("Failed to checkpoint Trading Strategy " + marketBinding.getStrategyId() + " on exchange "
+                    + exchangeId, e);
+            return null;
+        }
+    }
+
+    /*
+     * Picks up Market and Strategy config changes made since the last trade cycle, e.g. through the REST API. Only
+     * the markets whose config has changed are stopped, started, or restarted - the rest keep trading undisturbed.
+     * A market whose exchange lane is still busy with a trade cycle is left alone, and the change is retried at the
+     * next trade cycle. Exchange and Engine config changes still need a restart.
+     *
+     * In cluster mode, markets are also started and stopped here when they move between nodes. A market that has
+     * moved away is released once it has been stopped; one that has moved in is started once it has been released.
+     */
+    private void applyConfigChanges() {
+
+        final String marketConfigVersion;
+        final String strategyConfigVersion;
+        final long assignmentVersion = marketShardAssigner.getAssignmentVersion();
+        try {
+            marketConfigVersion = marketConfigService.getMarketConfigVersion();
+            strategyConfigVersion = strategyConfigService.getStrategyConfigVersion();
+        } catch (RuntimeException e) {
+            LOG.error("Failed to check for Market/Strategy config changes - will check again at next trade cycle.", e);
+            return;
+        }
+        if (Objects.equals(marketConfigVersion, loadedMarketConfigVersion)
+                && Objects.equals(strategyConfigVersion, loadedStrategyConfigVersion)
+                && assignmentVersion == loadedAssignmentVersion
+                && !marketHandoverPending) {
+            return;
+        }
+
+        final Map<String, MarketBinding> latestMarketBindings;
+        final Map<String, StrategyConfig> latestStrategyDescriptions;
+        try {
+            LOG.info(() -> "Market/Strategy config or cluster market assignment has changed - applying it before next "
+                    + "trade cycle...");
+            latestStrategyDescriptions = toStrategyDescriptions(strategyConfigService.getAllStrategyConfig());
+            final List<MarketConfig> markets = marketConfigService.getAllMarketConfig();
+            LOG.info(() -> "Fetched Markets config from repository: " + markets);
+            latestMarketBindings = bindMarkets(markets, latestStrategyDescriptions);
+
+        } catch (IllegalArgumentException e) {
+            final String errorMsg = "Rejected Market/Strategy config change - carrying on trading with current config.";
+            LOG.error(errorMsg, e);
+            sendConfigChangeAlert(errorMsg + DETAILS_ERROR_MSG_LABEL + e.getMessage(), "The bot is still running, "
+                    + "trading with its current config. Fix the config and save it again.", e);
+            loadedMarketConfigVersion = marketConfigVersion;
+            loadedStrategyConfigVersion = strategyConfigVersion;
+            loadedAssignmentVersion = assignmentVersion;
+            marketHandoverPending = false;
+            return;
+
+        } catch (RuntimeException e) {
+            LOG.error("Failed to fetch Market/Strategy config - will try again at next trade cycle.", e);
+            return;
+        }
+
+        strategyDescriptions.clear();
+        strategyDescriptions.putAll(latestStrategyDescriptions);
+
+        boolean changesDeferred = false;
+        marketHandoverPending = false;
+
+        // Stop the markets that have been removed, disabled, or moved to another node, and restart the ones that have
+        // changed
+        for (final MarketBinding runningBinding : new ArrayList<>(marketBindings.values())) {
+
+            final MarketBinding latestBinding = latestMarketBindings.get(runningBinding.getMarketKey());
+            final boolean movedAway = latestBinding != null
+                    && !marketShardAssigner.isAssigned(latestBinding.getMarketKey());
+            if (latestBinding != null && !movedAway && latestBinding.hasSameConfigAs(runningBinding)) {
+                continue;
+            }
+            if (!exchangeLanes.get(runningBinding.getExchangeId()).isIdle()) {
+                changesDeferred = true;
+                continue;
+            }
+
+            final Map<String, String> carriedOverState = stopTradingMarket(runningBinding);
+            if (movedAway) {
+                // The node taking the market over restores the strategy from the checkpoint just saved
+                marketShardAssigner.release(runningBinding.getMarketKey());
+            } else if (latestBinding == null) {
+                deleteCheckpoint(runningBinding);
+                marketShardAssigner.release(runningBinding.getMarketKey());
+            } else if (latestBinding.getStrategyId().equals(runningBinding.getStrategyId())) {
+                startTradingMarketOnConfigChange(latestBinding, carriedOverState);
             } else {
+                // A different strategy starts from its own checkpoint
+                deleteCheckpoint(runningBinding);
+                startTradingMarketOnConfigChange(latestBinding, null);
+            }
+        }
 
-                // Game over. Config integrity blown - we can't find strat.
-                final String errorMsg = "Failed to find matching Strategy for Market " + market
-                        + " - The Strategy " + "[" + strategyToUse + "] cannot be found in the "
-                        + " Strategy Descriptions map: " + strategyDescriptions;
-                LOG.error(errorMsg);
-                throw new IllegalArgumentException(errorMsg);
+        // Start the markets that have been added, enabled, or moved to this node
+        for (final MarketBinding latestBinding : latestMarketBindings.values()) {
+            if (marketBindings.containsKey(latestBinding.getMarketKey()) || !isAssignedToThisNode(latestBinding)) {
+                continue;
+            }
+            if (!exchangeLanes.get(latestBinding.getExchangeId()).isIdle()) {
+                changesDeferred = true;
+                continue;
+            }
+            if (!claimMarket(latestBinding)) {
+                continue;
             }
+            startTradingMarketOnConfigChange(latestBinding, null);
         }
 
-        LOG.info(() -> "Loaded and set Market configuration successfully!");
+        if (changesDeferred) {
+            LOG.warn(() -> "Some exchanges are still busy with previous trade cycle - remaining config changes will "
+                    + "be applied at next trade cycle.");
+        } else {
+            loadedMarketConfigVersion = marketConfigVersion;
+            loadedStrategyConfigVersion = strategyConfigVersion;
+            loadedAssignmentVersion = assignmentVersion;
+            LOG.info(() -> "Applied Market/Strategy config change successfully! Markets now trading: "
+                    + marketBindings.keySet());
+        }
+    }
+
+    /*
+     * Deletes the checkpoint of a strategy that has stopped trading its market because the market was removed from
+     * or disabled in the config, or given a different strategy - so its stale state, e.g. an order that is long gone,
+     * is not restored if it trades the market again later.
+     */
+    private void deleteCheckpoint(MarketBinding marketBinding) {
+        if (marketBinding.getTradingStrategy() instanceof CheckpointableStrategy) {
+            checkpointStore.delete(marketBinding.getExchangeId(), marketBinding.getMarket().getId(),
+                    marketBinding.getStrategyId());
+        }
+    }
+
+    /*
+     * A market that fails to start after a config change is left stopped - the other markets keep trading.
+     */
+    private void startTradingMarketOnConfigChange(MarketBinding marketBinding, Map<String, String> carriedOverState) {
+        try {
+            startTradingMarket(marketBinding, carriedOverState);
+        } catch (RuntimeException e) {
+            final String errorMsg = "Failed to start trading Market " + marketBinding.getMarketKey()
+                    + " after config change - it will NOT be traded until its config is fixed.";
+            LOG.error(errorMsg, e);
+            sendConfigChangeAlert(errorMsg + DETAILS_ERROR_MSG_LABEL + e.getMessage(), "The bot is still running, "
+                    + "trading its other markets. Fix the market's config and save it again.", e);
+        }
+    }
+
+    /*
+     * A strategy that cannot be put back the way it was is not safe to trade with, so the bot does not start - or,
+     * after a config change, the market is not restarted. The carried over state, if any, wins over the checkpoint.
+     */
+    private void restoreCheckpoint(CheckpointableStrategy strategyImpl, String exchangeId, Market market,
+                                   String strategyId, Map<String, String> carriedOverState) {
+
+        final Map<String, String> checkpoint = carriedOverState != null
+                ? carriedOverState : checkpointStore.load(exchangeId, market.getId(), strategyId);
+        if (checkpoint == null) {
+            LOG.info(() -> "No checkpoint found for Trading Strategy " + strategyId + " - starting afresh.");
+            return;
+        }
+        try {
+            strategyImpl.restore(checkpoint);
+            LOG.info(() -> "Restored Trading Strategy " + strategyId + " from checkpoint: " + checkpoint);
+        } catch (StrategyException e) {
+            final String errorMsg = "Failed to restore Trading Strategy " + strategyId + " on exchange " + exchangeId
+                    + " from checkpoint: " + checkpoint;
+            LOG.error(errorMsg, e);
+            throw new IllegalStateException(errorMsg, e);
+        }
     }
 }
\ No newline at end of file
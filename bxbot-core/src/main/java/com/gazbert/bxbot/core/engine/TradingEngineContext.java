@@ -0,0 +1,126 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.gazbert.bxbot.core.engine;
+
+import com.gazbert.bxbot.core.accounting.PositionLedger;
+import com.gazbert.bxbot.core.alerts.AlertDispatcher;
+import com.gazbert.bxbot.core.breaker.CircuitBreakerRegistry;
+import com.gazbert.bxbot.core.checkpoint.CheckpointStore;
+import com.gazbert.bxbot.core.cluster.MarketShardAssigner;
+import com.gazbert.bxbot.core.failover.FailoverManager;
+import com.gazbert.bxbot.core.journal.TradeJournal;
+import com.gazbert.bxbot.core.metrics.ExchangeMetricsRegistry;
+import com.gazbert.bxbot.core.ratelimit.RateLimiterRegistry;
+import com.gazbert.bxbot.core.startup.StartupProfiler;
+import com.gazbert.bxbot.core.trace.TraceRecorder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * The runtime services a {@link TradingEngine} trades with, kept together in one bean so the engine is not built from
+ * a long list of collaborators.
+ *
+ * @author gazbert
+ */
+@Component
+public class TradingEngineContext {
+
+    private final AlertDispatcher alertDispatcher;
+    private final ExchangeMetricsRegistry exchangeMetricsRegistry;
+    private final TraceRecorder traceRecorder;
+    private final TradeJournal tradeJournal;
+    private final PositionLedger positionLedger;
+    private final CheckpointStore checkpointStore;
+    private final StartupProfiler startupProfiler;
+    private final MarketShardAssigner marketShardAssigner;
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final FailoverManager failoverManager;
+    private final RateLimiterRegistry rateLimiterRegistry;
+
+
+    @Autowired
+    public TradingEngineContext(AlertDispatcher alertDispatcher, ExchangeMetricsRegistry exchangeMetricsRegistry,
+                                TraceRecorder traceRecorder, TradeJournal tradeJournal, PositionLedger positionLedger,
+                                CheckpointStore checkpointStore, StartupProfiler startupProfiler,
+                                MarketShardAssigner marketShardAssigner, CircuitBreakerRegistry circuitBreakerRegistry,
+                                FailoverManager failoverManager, RateLimiterRegistry rateLimiterRegistry) {
+
+        this.alertDispatcher = alertDispatcher;
+        this.exchangeMetricsRegistry = exchangeMetricsRegistry;
+        this.traceRecorder = traceRecorder;
+        this.tradeJournal = tradeJournal;
+        this.positionLedger = positionLedger;
+        this.checkpointStore = checkpointStore;
+        this.startupProfiler = startupProfiler;
+        this.marketShardAssigner = marketShardAssigner;
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.failoverManager = failoverManager;
+        this.rateLimiterRegistry = rateLimiterRegistry;
+    }
+
+    public AlertDispatcher getAlertDispatcher() {
+        return alertDispatcher;
+    }
+
+    public ExchangeMetricsRegistry getExchangeMetricsRegistry() {
+        return exchangeMetricsRegistry;
+    }
+
+    public TraceRecorder getTraceRecorder() {
+        return traceRecorder;
+    }
+
+    public TradeJournal getTradeJournal() {
+        return tradeJournal;
+    }
+
+    public PositionLedger getPositionLedger() {
+        return positionLedger;
+    }
+
+    public CheckpointStore getCheckpointStore() {
+        return checkpointStore;
+    }
+
+    public StartupProfiler getStartupProfiler() {
+        return startupProfiler;
+    }
+
+    public MarketShardAssigner getMarketShardAssigner() {
+        return marketShardAssigner;
+    }
+
+    public CircuitBreakerRegistry getCircuitBreakerRegistry() {
+        return circuitBreakerRegistry;
+    }
+
+    public FailoverManager getFailoverManager() {
+        return failoverManager;
+    }
+
+    public RateLimiterRegistry getRateLimiterRegistry() {
+        return rateLimiterRegistry;
+    }
+}
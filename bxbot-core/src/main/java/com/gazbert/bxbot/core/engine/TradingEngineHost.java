@@ -0,0 +1,413 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.engine;
+
+import com.gazbert.bxbot.core.accounting.PositionLedger;
+import com.gazbert.bxbot.core.breaker.CircuitBreakerRegistry;
+import com.gazbert.bxbot.core.checkpoint.CheckpointStore;
+import com.gazbert.bxbot.core.cluster.MarketShardAssigner;
+import com.gazbert.bxbot.core.journal.TradeJournal;
+import com.gazbert.bxbot.core.startup.StartupProfiler;
+import com.gazbert.bxbot.datastore.FileLocations;
+import com.gazbert.bxbot.domain.accounting.MarketPosition;
+import com.gazbert.bxbot.domain.bot.BotStatus;
+import com.gazbert.bxbot.domain.breaker.CircuitBreakerStatus;
+import com.gazbert.bxbot.domain.engine.EngineConfig;
+import com.gazbert.bxbot.repository.EngineConfigRepository;
+import com.gazbert.bxbot.repository.impl.EmbeddedConfigStore;
+import com.gazbert.bxbot.repository.impl.EngineConfigRepositoryEmbeddedStore;
+import com.gazbert.bxbot.repository.impl.EngineConfigRepositoryXmlDatastore;
+import com.gazbert.bxbot.repository.impl.ExchangeConfigRepositoryEmbeddedStore;
+import com.gazbert.bxbot.repository.impl.ExchangeConfigRepositoryXmlDatastore;
+import com.gazbert.bxbot.repository.impl.MarketConfigRepositoryEmbeddedStore;
+import com.gazbert.bxbot.repository.impl.MarketConfigRepositoryXmlDatastore;
+import com.gazbert.bxbot.repository.impl.StrategyConfigRepositoryEmbeddedStore;
+import com.gazbert.bxbot.repository.impl.StrategyConfigRepositoryXmlDatastore;
+import com.gazbert.bxbot.services.impl.EngineConfigServiceImpl;
+import com.gazbert.bxbot.services.impl.ExchangeConfigServiceImpl;
+import com.gazbert.bxbot.services.impl.MarketConfigServiceImpl;
+import com.gazbert.bxbot.services.impl.StrategyConfigServiceImpl;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Hosts extra, independent Trading Engines in the same JVM as the main bot, so a fleet of bots shares one heap, JIT,
+ * and Spring context instead of running a JVM each.
+ * </p>
+ * <p>
+ * Each sub-directory of the bxbot.host.bots-dir directory that holds an engine.xml file is run as a separate bot: it
+ * has its own botId, exchanges, markets, and strategies, read from the XML config files in that directory. The botId
+ * in each engine.xml must be unique. No bots are hosted if the property is not set. When the bot is run with the
+ * embedded-store profile, each hosted bot's config is read from its own embedded store instead, kept in the store
+ * sub-directory of its config directory and migrated from its XML files the first time.
+ * </p>
+ * <p>
+ * The hosted engines run on the host's shared engine thread pool, and share the alert dispatcher, exchange metrics,
+ * and trace recorder with the main bot - the JVM's HTTP keep-alive connection cache is shared too. Each bot gets its
+ * own Trade Journal, positions, strategy checkpoints, and circuit breakers; the journal and checkpoints are kept in a
+ * sub-directory named after the bot.
+ * </p>
+ * <p>
+ * Hosted bots are started with the main bot, and can be stopped and started again by botId. Their config is not
+ * served by the REST config API, but their positions, journals, and circuit breakers are served by botId. Market and
+ * strategy config changes are picked up between trade cycles, as for the main bot. In cluster mode, their markets are
+ * shared out between the nodes along with the main bot's, each bot's claims kept apart by its botId. In failover mode,
+ * they trade under the main bot's lease, and their state is replicated to the standby along with the main bot's.
+ * </p>
+ *
+ * @author gazbert
+ */
+@Component
+public class TradingEngineHost {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    static final String RUNNING_STATUS = "running";
+    static final String STOPPED_STATUS = "stopped";
+    private static final long STOP_TIMEOUT_MILLIS = 5000;
+
+    private final Path botsDirectory;
+    private final TradingEngineContext engineContext;
+    private final boolean useEmbeddedConfigStore;
+
+    /*
+     * The hosted bots, keyed on botId, in the order they were found. Guarded by this.
+     */
+    private final Map<String, HostedBot> hostedBots = new LinkedHashMap<>();
+
+    /*
+     * Runs the main control loop of each hosted engine.
+     */
+    private final ExecutorService engineExecutor;
+
+
+    @Autowired
+    public TradingEngineHost(@Value("${bxbot.host.bots-dir:}") String botsDirectory,
+                             TradingEngineContext engineContext, Environment environment) {
+
+        this.botsDirectory = botsDirectory == null || botsDirectory.trim().isEmpty()
+                ? null : Paths.get(botsDirectory.trim());
+        this.engineContext = engineContext;
+        this.useEmbeddedConfigStore = environment.acceptsProfiles(EmbeddedConfigStore.PROFILE);
+
+        final AtomicInteger engineThreadCount = new AtomicInteger();
+        this.engineExecutor = Executors.newCachedThreadPool(runnable -> {
+            final Thread engineThread =
+                    new Thread(runnable, "bxbot-host-engine-" + engineThreadCount.incrementAndGet());
+            engineThread.setDaemon(true);
+            return engineThread;
+        });
+        LOG.info(() -> "Trading Engine host bots directory: " + (this.botsDirectory == null
+                ? "not set - no extra bots will be hosted" : this.botsDirectory));
+    }
+
+    /**
+     * Finds the bots in the bots directory and starts them.
+     *
+     * @throws IllegalArgumentException if a bot's engine config has no botId, or the botId is already in use.
+     * @throws IllegalStateException    if the bots directory cannot be read.
+     */
+    public synchronized void startAll() {
+
+        if (botsDirectory == null) {
+            return;
+        }
+
+        for (final Path configDirectory : findBotConfigDirectories()) {
+            final EmbeddedConfigStore embeddedConfigStore = useEmbeddedConfigStore
+                    ? EmbeddedConfigStore.forConfigDirectory(configDirectory.toString()) : null;
+            final EngineConfigRepository engineConfigRepository = embeddedConfigStore == null
+                    ? new EngineConfigRepositoryXmlDatastore(configDirectory.toString())
+                    : new EngineConfigRepositoryEmbeddedStore(embeddedConfigStore);
+            final EngineConfig engineConfig = new EngineConfigServiceImpl(engineConfigRepository).getEngineConfig();
+            final String botId = engineConfig.getBotId();
+            if (botId == null || botId.trim().isEmpty() || hostedBots.containsKey(botId)) {
+                if (embeddedConfigStore != null) {
+                    embeddedConfigStore.close();
+                }
+                final String errorMsg = "Hosted bot in " + configDirectory + " must have a unique botId - found: "
+                        + botId + " Bots already hosted: " + hostedBots.keySet();
+                LOG.fatal(errorMsg);
+                throw new IllegalArgumentException(errorMsg);
+            }
+            hostedBots.put(botId, new HostedBot(botId, engineConfig.getBotName(), configDirectory,
+                    embeddedConfigStore));
+            LOG.info(() -> "Hosting bot " + botId + " - config directory: " + configDirectory);
+        }
+
+        hostedBots.keySet().forEach(this::startBot);
+    }
+
+    /**
+     * Returns the status of each hosted bot.
+     *
+     * @return the hosted bot statuses, in the order the bots were found.
+     */
+    public synchronized List<BotStatus> getBotStatuses() {
+        final List<BotStatus> botStatuses = new ArrayList<>();
+        hostedBots.values().forEach(hostedBot -> botStatuses.add(hostedBot.toBotStatus()));
+        return botStatuses;
+    }
+
+    /**
+     * Returns the status of a hosted bot.
+     *
+     * @param botId the botId.
+     * @return the bot status, or null if no bot is hosted with the botId.
+     */
+    public synchronized BotStatus getBotStatus(String botId) {
+        final HostedBot hostedBot = hostedBots.get(botId);
+        return hostedBot == null ? null : hostedBot.toBotStatus();
+    }
+
+    /**
+     * Returns a hosted bot's position and P&amp;L in each market, ordered by exchange then market.
+     *
+     * @param botId the botId.
+     * @return the positions, or null if no bot is hosted with the botId.
+     */
+    public List<MarketPosition> getPositions(String botId) {
+        final HostedBot hostedBot = findHostedBot(botId);
+        return hostedBot == null ? null : hostedBot.positionLedger.getPositions();
+    }
+
+    /**
+     * Returns a hosted bot's Trade Journal, for querying.
+     *
+     * @param botId the botId.
+     * @return the Trade Journal, or null if no bot is hosted with the botId.
+     */
+    public TradeJournal getTradeJournal(String botId) {
+        final HostedBot hostedBot = findHostedBot(botId);
+        return hostedBot == null ? null : hostedBot.tradeJournal;
+    }
+
+    /**
+     * Returns the state of a hosted bot's circuit breakers, sorted by exchange and endpoint.
+     *
+     * @param botId the botId.
+     * @return the breaker states, or null if no bot is hosted with the botId.
+     */
+    public List<CircuitBreakerStatus> getCircuitBreakerStatuses(String botId) {
+        final HostedBot hostedBot = findHostedBot(botId);
+        return hostedBot == null ? null : hostedBot.circuitBreakerRegistry.getCircuitBreakerStatuses();
+    }
+
+    /**
+     * Starts a hosted bot with a fresh Trading Engine. The bot's config is re-read from its config directory, or its
+     * embedded store.
+     *
+     * @param botId the botId.
+     * @return the bot status, or null if no bot is hosted with the botId.
+     * @throws IllegalStateException if the bot is already running.
+     */
+    public synchronized BotStatus startBot(String botId) {
+
+        final HostedBot hostedBot = hostedBots.get(botId);
+        if (hostedBot == null) {
+            return null;
+        }
+        if (hostedBot.isRunning()) {
+            final String errorMsg = "Cannot start hosted bot " + botId + " because it is already running!";
+            LOG.error(errorMsg);
+            throw new IllegalStateException(errorMsg);
+        }
+
+        final TradingEngine tradingEngine = hostedBot.newTradingEngine();
+
+        hostedBot.tradingEngine = tradingEngine;
+        hostedBot.engineRun = engineExecutor.submit(() -> {
+            try {
+                tradingEngine.start();
+            } catch (RuntimeException e) {
+                LOG.fatal("Hosted bot " + botId + " failed to start!", e);
+            }
+        });
+        LOG.info(() -> "Started hosted bot " + botId);
+        return hostedBot.toBotStatus();
+    }
+
+    /**
+     * Stops a hosted bot, waiting a few seconds for its engine to shut down.
+     *
+     * @param botId the botId.
+     * @return the bot status, or null if no bot is hosted with the botId.
+     */
+    public synchronized BotStatus stopBot(String botId) {
+
+        final HostedBot hostedBot = hostedBots.get(botId);
+        if (hostedBot == null) {
+            return null;
+        }
+        if (hostedBot.isRunning()) {
+            hostedBot.tradingEngine.shutdown();
+            try {
+                hostedBot.engineRun.get(STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                LOG.warn(() -> "Hosted bot " + botId + " did not stop within " + STOP_TIMEOUT_MILLIS + "ms");
+            } catch (ExecutionException e) {
+                LOG.error("Hosted bot " + botId + " failed while stopping", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            LOG.info(() -> "Stopped hosted bot " + botId);
+        }
+        return hostedBot.toBotStatus();
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        for (final HostedBot hostedBot : hostedBots.values()) {
+            if (hostedBot.isRunning()) {
+                hostedBot.tradingEngine.shutdown();
+            }
+        }
+        engineExecutor.shutdownNow();
+        for (final HostedBot hostedBot : hostedBots.values()) {
+            if (hostedBot.embeddedConfigStore != null) {
+                hostedBot.embeddedConfigStore.close();
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Private utils
+    // ------------------------------------------------------------------------------------------------
+
+    private synchronized HostedBot findHostedBot(String botId) {
+        return hostedBots.get(botId);
+    }
+
+    private List<Path> findBotConfigDirectories() {
+
+        final List<Path> configDirectories = new ArrayList<>();
+        try (DirectoryStream<Path> directories = Files.newDirectoryStream(botsDirectory, Files::isDirectory)) {
+            for (final Path directory : directories) {
+                if (Files.exists(Paths.get(FileLocations.inConfigDirectory(directory.toString(),
+                        FileLocations.ENGINE_CONFIG_XML_FILENAME)))) {
+                    configDirectories.add(directory);
+                }
+            }
+        } catch (IOException e) {
+            final String errorMsg = "Failed to read the hosted bots directory: " + botsDirectory;
+            LOG.fatal(errorMsg, e);
+            throw new IllegalStateException(errorMsg, e);
+        }
+        Collections.sort(configDirectories);
+        return configDirectories;
+    }
+
+    /*
+     * A bot's Trade Journal, positions, checkpoints, and circuit breakers outlive its engine, so they carry on across a
+     * stop and start. The journal and checkpoints are shut down with the main bot's.
+     */
+    private final class HostedBot {
+
+        private final String botId;
+        private final String displayName;
+        private final Path configDirectory;
+        private final EmbeddedConfigStore embeddedConfigStore;
+        private final TradeJournal tradeJournal;
+        private final PositionLedger positionLedger;
+        private final CheckpointStore checkpointStore;
+        private final MarketShardAssigner marketShardAssigner;
+        private final CircuitBreakerRegistry circuitBreakerRegistry;
+
+        private TradingEngine tradingEngine;
+        private Future<?> engineRun;
+
+        private HostedBot(String botId, String displayName, Path configDirectory,
+                          EmbeddedConfigStore embeddedConfigStore) {
+            this.botId = botId;
+            this.displayName = displayName;
+            this.configDirectory = configDirectory;
+            this.embeddedConfigStore = embeddedConfigStore;
+            this.tradeJournal = engineContext.getTradeJournal().forBot(botId);
+            this.positionLedger = new PositionLedger(this.tradeJournal);
+            this.checkpointStore = engineContext.getCheckpointStore().forBot(botId);
+            this.marketShardAssigner = engineContext.getMarketShardAssigner().forBot(botId);
+            this.circuitBreakerRegistry = engineContext.getCircuitBreakerRegistry().forBot(botId);
+            engineContext.getFailoverManager().replicateBot(botId);
+        }
+
+        private TradingEngine newTradingEngine() {
+            if (embeddedConfigStore == null) {
+                final String directory = configDirectory.toString();
+                return new TradingEngine(
+                        new ExchangeConfigServiceImpl(new ExchangeConfigRepositoryXmlDatastore(directory)),
+                        new EngineConfigServiceImpl(new EngineConfigRepositoryXmlDatastore(directory)),
+                        new StrategyConfigServiceImpl(new StrategyConfigRepositoryXmlDatastore(directory)),
+                        new MarketConfigServiceImpl(new MarketConfigRepositoryXmlDatastore(directory)),
+                        newEngineContext());
+            }
+            return new TradingEngine(
+                    new ExchangeConfigServiceImpl(new ExchangeConfigRepositoryEmbeddedStore(embeddedConfigStore)),
+                    new EngineConfigServiceImpl(new EngineConfigRepositoryEmbeddedStore(embeddedConfigStore)),
+                    new StrategyConfigServiceImpl(new StrategyConfigRepositoryEmbeddedStore(embeddedConfigStore)),
+                    new MarketConfigServiceImpl(new MarketConfigRepositoryEmbeddedStore(embeddedConfigStore)),
+                    newEngineContext());
+        }
+
+        /*
+         * Each engine run gets its own startup timings. The bot trades under the main bot's failover lease.
+         */
+        private TradingEngineContext newEngineContext() {
+            final StartupProfiler startupProfiler = engineContext.getStartupProfiler();
+            return new TradingEngineContext(engineContext.getAlertDispatcher(),
+                    engineContext.getExchangeMetricsRegistry(), engineContext.getTraceRecorder(), tradeJournal,
+                    positionLedger, checkpointStore, new StartupProfiler(startupProfiler.isPrewarmConnections(),
+                    startupProfiler.getWarmUpIterations(), startupProfiler.getWarmUpSteadyStatePercentage()),
+                    marketShardAssigner, circuitBreakerRegistry, engineContext.getFailoverManager(),
+                    engineContext.getRateLimiterRegistry());
+        }
+
+        private boolean isRunning() {
+            return engineRun != null && !engineRun.isDone();
+        }
+
+        private BotStatus toBotStatus() {
+            return new BotStatus(botId, displayName, isRunning() ? RUNNING_STATUS : STOPPED_STATUS);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.engine;
+
+import com.gazbert.bxbot.exchange.api.ExchangeAdapter;
+import com.gazbert.bxbot.trading.api.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The Trading API given to the Trading Strategies run in the JIT warm-up phase. Market data and account calls go to
+ * an Exchange Adapter replaying recorded responses; orders are never placed or cancelled - they just succeed.
+ *
+ * @author gazbert
+ */
+final class WarmUpTradingApi implements TradingApi {
+
+    private final ExchangeAdapter replayingExchangeAdapter;
+    private final AtomicLong orderIds = new AtomicLong();
+
+
+    WarmUpTradingApi(ExchangeAdapter replayingExchangeAdapter) {
+        this.replayingExchangeAdapter = replayingExchangeAdapter;
+    }
+
+    @Override
+    public String getImplName() {
+        return "JIT warm-up - " + replayingExchangeAdapter.getImplName();
+    }
+
+    @Override
+    public MarketOrderBook getMarketOrders(String marketId) throws ExchangeNetworkException, TradingApiException {
+        return replayingExchangeAdapter.getMarketOrders(marketId);
+    }
+
+    @Override
+    public List<OpenOrder> getYourOpenOrders(String marketId) throws ExchangeNetworkException, TradingApiException {
+        return replayingExchangeAdapter.getYourOpenOrders(marketId);
+    }
+
+    @Override
+    public String createOrder(String marketId, OrderType orderType, BigDecimal quantity, BigDecimal price) {
+        return "warm-up-" + orderIds.incrementAndGet();
+    }
+
+    @Override
+    public boolean cancelOrder(String orderId, String marketId) {
+        return true;
+    }
+
+    @Override
+    public BigDecimal getLatestMarketPrice(String marketId) throws ExchangeNetworkException, TradingApiException {
+        return replayingExchangeAdapter.getLatestMarketPrice(marketId);
+    }
+
+    @Override
+    public BalanceInfo getBalanceInfo() throws ExchangeNetworkException, TradingApiException {
+        return replayingExchangeAdapter.getBalanceInfo();
+    }
+
+    @Override
+    public BigDecimal getPercentageOfBuyOrderTakenForExchangeFee(String marketId)
+            throws TradingApiException, ExchangeNetworkException {
+        return replayingExchangeAdapter.getPercentageOfBuyOrderTakenForExchangeFee(marketId);
+    }
+
+    @Override
+    public BigDecimal getPercentageOfSellOrderTakenForExchangeFee(String marketId)
+            throws TradingApiException, ExchangeNetworkException {
+        return replayingExchangeAdapter.getPercentageOfSellOrderTakenForExchangeFee(marketId);
+    }
+}
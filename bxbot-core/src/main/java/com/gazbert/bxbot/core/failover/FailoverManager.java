@@ -0,0 +1,524 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.failover;
+
+import com.gazbert.bxbot.core.checkpoint.CheckpointListener;
+import com.gazbert.bxbot.core.checkpoint.CheckpointStore;
+import com.gazbert.bxbot.core.journal.OpenOrderListener;
+import com.gazbert.bxbot.core.journal.TradeJournal;
+import com.gazbert.bxbot.trading.api.OrderType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Runs the bot as one half of an active-passive pair, set by the bxbot.failover.role property:
+ * </p>
+ * <ul>
+ * <li>primary - trades, and replicates its strategy checkpoints, open orders, and Exchange Adapter nonces to the
+ * standby through the {@link ReplicationTransport}. It renews its lease with the standby every third of the
+ * bxbot.failover.lease-secs property, and the standby acknowledges each renewal. The primary only trades while it
+ * holds an acknowledged lease: once a lease has passed since it sent the last renewal the standby acknowledged, it
+ * stops placing orders and skips its trade cycles - before the standby, which counts its lease from when it received
+ * that renewal, can take over. So a primary that is cut off from the standby, or paused past its lease, never trades
+ * alongside it.</li>
+ * <li>standby - does not trade. It tails the primary's state into its own Checkpoint Store and Trade Journal, and
+ * takes over once the primary's lease has expired: the Trading Engine then starts from the primary's last state, so
+ * the strategies know about the orders the primary placed and do not place them again.</li>
+ * <li>none - the default. The bot trades on its own.</li>
+ * </ul>
+ * <p>
+ * The bots hosted by the {@link com.gazbert.bxbot.core.engine.TradingEngineHost} fail over with the main bot: they
+ * trade under the same lease, and their state is replicated too - see {@link #replicateBot(String)}.
+ * </p>
+ * <p>
+ * Keep the lease shorter than the trade cycle interval, so the standby takes over within a cycle. The standby needs
+ * checkpointing enabled, and should use its own checkpoint and journal directories. The primary does not trade until
+ * a standby has connected. After a takeover, the old primary must be restarted as the standby.
+ * </p>
+ *
+ * @author gazbert
+ */
+@Component
+public class FailoverManager {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    private static final long RECONNECT_DELAY_MILLIS = 500;
+    private static final long FLUSH_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * The part the bot plays in an active-passive pair.
+     */
+    public enum Role {
+        NONE, PRIMARY, STANDBY
+    }
+
+    private final Role role;
+    private final long leaseMillis;
+    private final ReplicationTransport replicationTransport;
+    private final CheckpointStore checkpointStore;
+    private final TradeJournal tradeJournal;
+
+    private final ReplicatedStateLog stateLog = new ReplicatedStateLog();
+
+    /*
+     * The hosted bots whose state is being replicated: on a primary, those registered; on a standby, those the
+     * primary has sent state for.
+     */
+    private final Set<String> replicatedBotIds = ConcurrentHashMap.newKeySet();
+
+    /*
+     * Standby only. Guards the lease and the applying of the primary's state, so no state is applied after the
+     * takeover.
+     */
+    private final Object monitor = new Object();
+    private long leaseExpiry;
+    private boolean takenOver;
+
+    /*
+     * Standby only. Entry key -> sequence number of the last entry applied, so an older entry never overwrites a
+     * newer one. Reset on each new connection. Only used on the tail thread.
+     */
+    private final Map<String, Long> appliedSequences = new HashMap<>();
+
+    /*
+     * Standby only. Entry key -> the replicated open orders being tracked in the Trade Journal.
+     */
+    private final Map<String, List<String>> replicatedOrders = new HashMap<>();
+
+    /*
+     * Primary only. The time the primary sent the last lease renewal the standby acknowledged. Set on the transport's
+     * threads, read on the trading threads.
+     */
+    private final AtomicLong lastAckedRenewal = new AtomicLong();
+    private volatile boolean fenced = true;
+
+    private ScheduledExecutorService leaseExecutor;
+
+
+    @Autowired
+    public FailoverManager(@Value("${bxbot.failover.role:none}") String role,
+                           @Value("${bxbot.failover.lease-secs:10}") int leaseInSecs,
+                           ReplicationTransport replicationTransport, CheckpointStore checkpointStore,
+                           TradeJournal tradeJournal) {
+
+        this(parseRole(role), TimeUnit.SECONDS.toMillis(leaseInSecs), replicationTransport, checkpointStore,
+                tradeJournal);
+    }
+
+    FailoverManager(Role role, long leaseMillis, ReplicationTransport replicationTransport,
+                    CheckpointStore checkpointStore, TradeJournal tradeJournal) {
+
+        this.role = role;
+        this.leaseMillis = leaseMillis;
+        this.replicationTransport = replicationTransport;
+        this.checkpointStore = checkpointStore;
+        this.tradeJournal = tradeJournal;
+
+        if (role != Role.NONE && leaseMillis < 1) {
+            final String errorMsg = "Failover lease must be at least 1 sec - found: " + leaseMillis + " millis";
+            LOG.fatal(errorMsg);
+            throw new IllegalArgumentException(errorMsg);
+        }
+        if (role == Role.STANDBY && !checkpointStore.isEnabled()) {
+            final String errorMsg = "Checkpointing must be enabled on a standby - it restores the primary's strategy "
+                    + "state from its checkpoints.";
+            LOG.fatal(errorMsg);
+            throw new IllegalStateException(errorMsg);
+        }
+        LOG.info(() -> "Failover role: " + role + (role != Role.NONE ? " - lease: " + leaseMillis
+                + "ms - transport: " + replicationTransport.getName() : ""));
+    }
+
+    public Role getRole() {
+        return role;
+    }
+
+    /**
+     * Called before the Trading Engine is started. A primary starts replicating its state and returns straight away.
+     * A standby tails the primary's state, and only returns once the primary's lease has expired and it is time to
+     * take over.
+     *
+     * @throws ReplicationException if a primary could not start replicating.
+     * @throws InterruptedException if a standby is interrupted while waiting.
+     */
+    public void awaitActive() throws ReplicationException, InterruptedException {
+        if (role == Role.PRIMARY) {
+            startReplicating();
+        } else if (role == Role.STANDBY) {
+            awaitTakeover();
+        }
+    }
+
+    /**
+     * Replicates a hosted bot's strategy checkpoints, open orders, and nonces along with the main bot's. The bot's
+     * state is kept in its own Checkpoint Store and Trade Journal - see {@link CheckpointStore#forBot(String)} and
+     * {@link TradeJournal#forBot(String)} - on both the primary and the standby. Does nothing unless this is the
+     * primary.
+     *
+     * @param botId the id of the hosted bot.
+     */
+    public void replicateBot(String botId) {
+        if (role == Role.PRIMARY && replicatedBotIds.add(botId)) {
+            addReplicationListeners(checkpointStore.forBot(botId), tradeJournal.forBot(botId), botId);
+            LOG.info(() -> "Replicating the state of hosted bot " + botId + " to the standby.");
+        }
+    }
+
+    /**
+     * Returns true if the bot may trade. A primary may only trade while it holds a lease the standby has acknowledged -
+     * checked before each trade cycle, and before each order is placed. A standby that has taken over, or a bot
+     * running on its own, may always trade.
+     *
+     * @return true if the bot may trade, false otherwise.
+     */
+    public boolean isTradingAllowed() {
+        return role != Role.PRIMARY || System.currentTimeMillis() - lastAckedRenewal.get() < leaseMillis;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (leaseExecutor != null) {
+            leaseExecutor.shutdownNow();
+            leaseExecutor = null;
+        }
+        if (role != Role.NONE) {
+            replicationTransport.shutdown();
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Primary
+    // ------------------------------------------------------------------------------------------------
+
+    private synchronized void startReplicating() throws ReplicationException {
+
+        if (leaseExecutor != null) {
+            return;
+        }
+        addReplicationListeners(checkpointStore, tradeJournal, null);
+
+        replicationTransport.startPublishing(stateLog::entries,
+                sentAt -> lastAckedRenewal.accumulateAndGet(sentAt, Math::max));
+
+        leaseExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread leaseThread = new Thread(runnable, "bxbot-failover-lease");
+            leaseThread.setDaemon(true);
+            return leaseThread;
+        });
+        final long renewalInterval = Math.max(1, leaseMillis / 3);
+        leaseExecutor.scheduleAtFixedRate(this::renewLeaseWithStandby, 0, renewalInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * Runs on the lease thread. The renewal carries the time it was sent, so the lease the standby acknowledges is
+     * counted from before the standby received it.
+     */
+    private void renewLeaseWithStandby() {
+        replicationTransport.publish(new StateLogEntry(StateLogEntry.Type.LEASE, Collections.emptyList(),
+                Collections.singletonMap(StateLogEntry.SENT_AT, String.valueOf(System.currentTimeMillis())), 0));
+
+        final boolean wasFenced = fenced;
+        fenced = !isTradingAllowed();
+        if (fenced && !wasFenced) {
+            LOG.error(() -> "No lease acknowledged by the standby for " + leaseMillis + "ms - the standby may be "
+                    + "taking over. Primary has stopped trading.");
+        } else if (!fenced && wasFenced) {
+            LOG.info(() -> "Lease acknowledged by the standby - primary is trading.");
+        }
+    }
+
+    /*
+     * A hosted bot's entries carry its botId after the ids of the state.
+     */
+    private void addReplicationListeners(CheckpointStore botCheckpointStore, TradeJournal botTradeJournal,
+                                         String botId) {
+        botCheckpointStore.addCheckpointListener(new CheckpointListener() {
+            @Override
+            public void onSnapshotSaved(String exchangeId, String marketId, String strategyId,
+                                        Map<String, String> snapshot) {
+                append(StateLogEntry.Type.SNAPSHOT, ids(botId, exchangeId, marketId, strategyId), snapshot);
+            }
+
+            @Override
+            public void onSnapshotDeleted(String exchangeId, String marketId, String strategyId) {
+                append(StateLogEntry.Type.SNAPSHOT, ids(botId, exchangeId, marketId, strategyId), null);
+            }
+
+            @Override
+            public void onNonceSaved(String exchangeId, long nonce) {
+                append(StateLogEntry.Type.NONCE, ids(botId, exchangeId),
+                        Collections.singletonMap(StateLogEntry.NONCE, String.valueOf(nonce)));
+            }
+        });
+        botTradeJournal.addOpenOrderListener(new OpenOrderListener() {
+            @Override
+            public void onOrderOpen(String exchangeId, String marketId, String orderId, OrderType orderType,
+                                    BigDecimal price, BigDecimal remainingQuantity) {
+                final Map<String, String> order = new LinkedHashMap<>();
+                order.put(StateLogEntry.ORDER_TYPE, orderType.name());
+                order.put(StateLogEntry.PRICE, price == null ? null : price.toPlainString());
+                order.put(StateLogEntry.QUANTITY, remainingQuantity == null ? null : remainingQuantity.toPlainString());
+                append(StateLogEntry.Type.OPEN_ORDER, ids(botId, exchangeId, marketId, orderId), order);
+            }
+
+            @Override
+            public void onOrderClosed(String exchangeId, String marketId, String orderId) {
+                append(StateLogEntry.Type.OPEN_ORDER, ids(botId, exchangeId, marketId, orderId), null);
+            }
+        });
+    }
+
+    private void append(StateLogEntry.Type type, List<String> ids, Map<String, String> values) {
+        final StateLogEntry entry = stateLog.append(type, ids, values);
+        if (entry != null) {
+            replicationTransport.publish(entry);
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Standby
+    // ------------------------------------------------------------------------------------------------
+
+    private void awaitTakeover() throws InterruptedException {
+
+        synchronized (monitor) {
+            leaseExpiry = System.currentTimeMillis() + leaseMillis;
+        }
+        final Thread tailThread = new Thread(this::tailPrimary, "bxbot-failover-tail");
+        tailThread.setDaemon(true);
+        tailThread.start();
+        LOG.info(() -> "Standing by - tailing the primary's state through " + replicationTransport.getName());
+
+        synchronized (monitor) {
+            long remaining;
+            while ((remaining = leaseExpiry - System.currentTimeMillis()) > 0) {
+                monitor.wait(remaining);
+            }
+            takenOver = true;
+        }
+        replicationTransport.shutdown();
+        tailThread.join(FLUSH_TIMEOUT_MILLIS);
+
+        boolean flushed = checkpointStore.flush(FLUSH_TIMEOUT_MILLIS);
+        for (final String botId : replicatedBotIds) {
+            flushed &= checkpointStore.forBot(botId).flush(FLUSH_TIMEOUT_MILLIS);
+        }
+        if (!flushed) {
+            LOG.warn("Timed out writing the primary's replicated checkpoints - some strategies may start from "
+                    + "older state.");
+        }
+        LOG.warn(() -> "Primary's lease has expired - taking over trading.");
+    }
+
+    /*
+     * Runs on the tail thread until the takeover.
+     */
+    private void tailPrimary() {
+        while (!isTakenOver()) {
+            try {
+                replicationTransport.tail(new ReplicationListener() {
+                    @Override
+                    public void onSnapshot(List<StateLogEntry> entries) {
+                        applySnapshot(entries);
+                    }
+
+                    @Override
+                    public void onEntry(StateLogEntry entry) {
+                        apply(entry);
+                    }
+                });
+            } catch (ReplicationException | RuntimeException e) {
+                if (!isTakenOver()) {
+                    LOG.warn(() -> "Not connected to primary: " + e.getMessage() + " - retrying...");
+                }
+            }
+            try {
+                Thread.sleep(RECONNECT_DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private boolean isTakenOver() {
+        synchronized (monitor) {
+            return takenOver;
+        }
+    }
+
+    /*
+     * The snapshot replaces everything replicated so far, e.g. orders that closed while the standby was not
+     * connected are dropped.
+     */
+    private void applySnapshot(List<StateLogEntry> entries) {
+        synchronized (monitor) {
+            if (takenOver) {
+                return;
+            }
+            appliedSequences.clear();
+            final Set<String> openOrderKeys = new HashSet<>();
+            for (final StateLogEntry entry : entries) {
+                if (entry.getType() == StateLogEntry.Type.OPEN_ORDER) {
+                    openOrderKeys.add(entry.getKey());
+                }
+            }
+            for (final Map.Entry<String, List<String>> replicatedOrder : new ArrayList<>(replicatedOrders.entrySet())) {
+                if (!openOrderKeys.contains(replicatedOrder.getKey())) {
+                    untrackOrder(replicatedOrder.getValue());
+                }
+            }
+            entries.forEach(this::apply);
+            renewLease();
+        }
+        LOG.info(() -> "Received primary's state - " + entries.size() + " entries.");
+    }
+
+    private void apply(StateLogEntry entry) {
+        synchronized (monitor) {
+            if (takenOver) {
+                return;
+            }
+            renewLease();
+            if (entry.getType() == StateLogEntry.Type.LEASE) {
+                return;
+            }
+            final Long appliedSequence = appliedSequences.get(entry.getKey());
+            if (appliedSequence != null && appliedSequence >= entry.getSequence()) {
+                return;
+            }
+            appliedSequences.put(entry.getKey(), entry.getSequence());
+
+            try {
+                applyState(entry);
+            } catch (RuntimeException e) {
+                LOG.error("Failed to apply primary's state: " + entry, e);
+            }
+        }
+    }
+
+    private void applyState(StateLogEntry entry) {
+        final List<String> ids = entry.getIds();
+        final Map<String, String> values = entry.getValues();
+        switch (entry.getType()) {
+            case SNAPSHOT:
+                if (values == null) {
+                    checkpointStoreFor(ids, 3).delete(ids.get(0), ids.get(1), ids.get(2));
+                } else {
+                    checkpointStoreFor(ids, 3).save(ids.get(0), ids.get(1), ids.get(2), values);
+                }
+                break;
+            case NONCE:
+                checkpointStoreFor(ids, 1).saveNonce(ids.get(0), Long.parseLong(values.get(StateLogEntry.NONCE)));
+                break;
+            case OPEN_ORDER:
+                if (values == null) {
+                    untrackOrder(ids);
+                } else {
+                    tradeJournalFor(ids, 3).trackOrder(ids.get(0), ids.get(1), ids.get(2),
+                            OrderType.valueOf(values.get(StateLogEntry.ORDER_TYPE)),
+                            toBigDecimal(values.get(StateLogEntry.PRICE)),
+                            toBigDecimal(values.get(StateLogEntry.QUANTITY)));
+                    replicatedOrders.put(entry.getKey(), ids);
+                }
+                break;
+            default:
+                LOG.warn(() -> "Ignoring unknown state log entry: " + entry);
+        }
+    }
+
+    private void untrackOrder(List<String> ids) {
+        tradeJournalFor(ids, 3).untrackOrder(ids.get(0), ids.get(1), ids.get(2));
+        replicatedOrders.remove(StateLogEntry.Type.OPEN_ORDER + ids.toString());
+    }
+
+    /*
+     * Caller must hold the monitor.
+     */
+    private void renewLease() {
+        leaseExpiry = Math.max(leaseExpiry, System.currentTimeMillis() + leaseMillis);
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Util methods
+    // ------------------------------------------------------------------------------------------------
+
+    /*
+     * The main bot's store, or the hosted bot's if the entry carries a botId after the ids of the state.
+     */
+    private CheckpointStore checkpointStoreFor(List<String> ids, int stateIdCount) {
+        final String botId = botIdOf(ids, stateIdCount);
+        return botId == null ? checkpointStore : checkpointStore.forBot(botId);
+    }
+
+    private TradeJournal tradeJournalFor(List<String> ids, int stateIdCount) {
+        final String botId = botIdOf(ids, stateIdCount);
+        return botId == null ? tradeJournal : tradeJournal.forBot(botId);
+    }
+
+    private String botIdOf(List<String> ids, int stateIdCount) {
+        if (ids.size() <= stateIdCount) {
+            return null;
+        }
+        final String botId = ids.get(stateIdCount);
+        replicatedBotIds.add(botId);
+        return botId;
+    }
+
+    private static List<String> ids(String botId, String... stateIds) {
+        final List<String> ids = new ArrayList<>(Arrays.asList(stateIds));
+        if (botId != null) {
+            ids.add(botId);
+        }
+        return ids;
+    }
+
+    private static Role parseRole(String role) {
+        try {
+            return Role.valueOf(role.trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException | NullPointerException e) {
+            final String errorMsg = "Invalid failover role: " + role + " - must be one of: none, primary, standby";
+            LOG.fatal(errorMsg);
+            throw new IllegalArgumentException(errorMsg, e);
+        }
+    }
+
+    private static BigDecimal toBigDecimal(String value) {
+        return value == null ? null : new BigDecimal(value);
+    }
+}
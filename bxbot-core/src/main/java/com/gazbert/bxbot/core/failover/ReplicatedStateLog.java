@@ -0,0 +1,77 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.failover;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The primary bot's replicated state, kept as a compacted log: only the latest entry for each piece of state is
+ * kept, and state that has gone is dropped. A standby that connects is sent the whole log, then each entry as it is
+ * appended.
+ * <p>
+ * It is thread safe.
+ *
+ * @author gazbert
+ */
+final class ReplicatedStateLog {
+
+    /*
+     * Entry key -> latest entry. Guarded by this.
+     */
+    private final Map<String, StateLogEntry> entries = new LinkedHashMap<>();
+    private long lastSequence;
+
+    /**
+     * Appends the latest value of a piece of state.
+     *
+     * @param type   the type of state.
+     * @param ids    the ids of the state.
+     * @param values the values, or null if the state has gone.
+     * @return the entry to publish, or null if the state has not changed.
+     */
+    synchronized StateLogEntry append(StateLogEntry.Type type, List<String> ids, Map<String, String> values) {
+
+        final StateLogEntry entry = new StateLogEntry(type, ids, values, lastSequence + 1);
+        final StateLogEntry previous = entries.get(entry.getKey());
+        if (values == null ? previous == null : previous != null && Objects.equals(previous.getValues(), values)) {
+            return null;
+        }
+
+        lastSequence++;
+        if (values == null) {
+            entries.remove(entry.getKey());
+        } else {
+            entries.put(entry.getKey(), entry);
+        }
+        return entry;
+    }
+
+    synchronized List<StateLogEntry> entries() {
+        return new ArrayList<>(entries.values());
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.failover;
+
+import java.util.List;
+
+/**
+ * Receives the primary bot's replicated state on the standby. Called on the thread tailing the
+ * {@link ReplicationTransport}.
+ *
+ * @author gazbert
+ */
+public interface ReplicationListener {
+
+    /**
+     * Called once each time the standby connects to the primary, with the whole of the primary's state log.
+     *
+     * @param entries the latest entry for each piece of state.
+     */
+    void onSnapshot(List<StateLogEntry> entries);
+
+    /**
+     * Called for each entry appended to the primary's state log after the snapshot was taken. An entry can be
+     * delivered more than once, and entries for different pieces of state can arrive out of order.
+     *
+     * @param entry the entry.
+     */
+    void onEntry(StateLogEntry entry);
+}
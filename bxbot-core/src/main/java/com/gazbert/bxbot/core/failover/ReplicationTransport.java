@@ -0,0 +1,81 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.failover;
+
+import java.util.List;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Carries the primary bot's replicated state log to the standby, e.g. over a local socket, a message broker.
+ * <p>
+ * The primary's lease renewals go over it too, so a standby that cannot hear the primary will take over. The standby
+ * acknowledges each renewal back over it, and a primary that has not heard from the standby for a lease stops trading
+ * - so the 2 never trade at once, even if the link breaks or the primary is paused. Run the primary and standby where
+ * the link between them shares their fate, so a broken link means a dead primary.
+ *
+ * @author gazbert
+ */
+public interface ReplicationTransport {
+
+    /**
+     * Returns the name of the transport. Used for logging.
+     *
+     * @return the transport name.
+     */
+    String getName();
+
+    /**
+     * Called on the primary. Starts accepting standbys. Each standby is sent the entries returned by the supplier
+     * when it connects, then each entry published after that.
+     *
+     * @param snapshotSupplier supplies the whole state log.
+     * @param leaseAckListener called with the sent-at time of each lease renewal a standby acknowledges.
+     * @throws ReplicationException if the transport could not be started.
+     */
+    void startPublishing(Supplier<List<StateLogEntry>> snapshotSupplier, LongConsumer leaseAckListener)
+            throws ReplicationException;
+
+    /**
+     * Called on the primary. Sends an entry to the connected standbys. It must not block: the trade cycle calls it.
+     *
+     * @param entry the entry.
+     */
+    void publish(StateLogEntry entry);
+
+    /**
+     * Called on the standby. Connects to the primary and feeds its state to the listener until the connection is
+     * lost or the transport is shut down. Each lease renewal is acknowledged back to the primary once the listener
+     * has been given it.
+     *
+     * @param replicationListener the listener.
+     * @throws ReplicationException when the connection could not be made, or was lost.
+     */
+    void tail(ReplicationListener replicationListener) throws ReplicationException;
+
+    /**
+     * Stops publishing or tailing, and closes any connections.
+     */
+    void shutdown();
+}
@@ -0,0 +1,309 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.failover;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * Replicates the state log over a TCP socket. The primary listens on the bxbot.failover.host and bxbot.failover.port
+ * properties, and the standby connects to them. Meant for a primary and standby on the same machine, or the same
+ * rack, where the link between them shares their fate.
+ * </p>
+ * <p>
+ * Each standby gets its own writer thread and a bounded queue, so a slow standby never holds up the trade cycle. A
+ * standby that falls too far behind is disconnected; it reconnects and is sent a fresh snapshot.
+ * </p>
+ * <p>
+ * The standby acknowledges each lease renewal by writing its sent-at time back on the same socket, where a reader
+ * thread for the standby passes it on to the primary.
+ * </p>
+ *
+ * @author gazbert
+ */
+@Component
+public class SocketReplicationTransport implements ReplicationTransport {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    private static final int MAGIC = 0x42585246; // "BXRF"
+    private static final int PROTOCOL_VERSION = 2;
+    private static final int SUBSCRIBER_QUEUE_CAPACITY = 10000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+
+    private final String host;
+    private final int port;
+
+    /*
+     * Guards the snapshot + registration of a new standby against concurrent publishes, so a standby never misses
+     * an entry.
+     */
+    private final List<Subscriber> subscribers = new ArrayList<>();
+
+    private volatile LongConsumer leaseAckListener;
+    private volatile ServerSocket serverSocket;
+    private volatile Socket tailSocket;
+    private volatile boolean running = true;
+
+
+    @Autowired
+    public SocketReplicationTransport(@Value("${bxbot.failover.host:localhost}") String host,
+                                      @Value("${bxbot.failover.port:7180}") int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    @Override
+    public String getName() {
+        return "socket:" + host + ":" + port;
+    }
+
+    @Override
+    public void startPublishing(Supplier<List<StateLogEntry>> snapshotSupplier, LongConsumer leaseAckListener)
+            throws ReplicationException {
+        this.leaseAckListener = leaseAckListener;
+        try {
+            serverSocket = new ServerSocket(port, 50, InetAddress.getByName(host));
+        } catch (IOException e) {
+            throw new ReplicationException("Failed to listen for standbys on " + host + ":" + port, e);
+        }
+        final Thread acceptThread = new Thread(() -> acceptStandbys(snapshotSupplier), "bxbot-failover-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        LOG.info(() -> "Listening for standbys on " + serverSocket.getLocalSocketAddress());
+    }
+
+    @Override
+    public void publish(StateLogEntry entry) {
+        synchronized (subscribers) {
+            subscribers.removeIf(subscriber -> {
+                if (subscriber.queue.offer(entry)) {
+                    return false;
+                }
+                LOG.warn(() -> "Standby " + subscriber.socket.getRemoteSocketAddress()
+                        + " has fallen too far behind - disconnecting it.");
+                subscriber.close();
+                return true;
+            });
+        }
+    }
+
+    @Override
+    public void tail(ReplicationListener replicationListener) throws ReplicationException {
+
+        final Socket socket = new Socket();
+        tailSocket = socket;
+        try {
+            if (!running) {
+                throw new ReplicationException("Transport has been shut down.");
+            }
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            if (in.readInt() != MAGIC || in.readInt() != PROTOCOL_VERSION) {
+                throw new ReplicationException("Primary at " + host + ":" + port + " is not a compatible bot.");
+            }
+
+            final int entryCount = in.readInt();
+            final List<StateLogEntry> snapshot = new ArrayList<>(entryCount);
+            for (int i = 0; i < entryCount; i++) {
+                snapshot.add(StateLogEntry.readFrom(in));
+            }
+            replicationListener.onSnapshot(snapshot);
+
+            while (running) {
+                final StateLogEntry entry = StateLogEntry.readFrom(in);
+                replicationListener.onEntry(entry);
+                if (entry.getType() == StateLogEntry.Type.LEASE && entry.getValues() != null
+                        && entry.getValues().get(StateLogEntry.SENT_AT) != null) {
+                    out.writeLong(Long.parseLong(entry.getValues().get(StateLogEntry.SENT_AT)));
+                    out.flush();
+                }
+            }
+            throw new ReplicationException("Transport has been shut down.");
+
+        } catch (IOException e) {
+            throw new ReplicationException("Lost connection to primary at " + host + ":" + port, e);
+        } finally {
+            closeQuietly(socket);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        running = false;
+        closeQuietly(serverSocket);
+        closeQuietly(tailSocket);
+        synchronized (subscribers) {
+            subscribers.forEach(Subscriber::close);
+            subscribers.clear();
+        }
+    }
+
+    /*
+     * Only used by the tests - they listen on port 0.
+     */
+    int getLocalPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Primary side
+    // ------------------------------------------------------------------------------------------------
+
+    private void acceptStandbys(Supplier<List<StateLogEntry>> snapshotSupplier) {
+        while (running) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (running) {
+                    LOG.error("Failed to accept standby connection - no longer replicating.", e);
+                }
+                return;
+            }
+            synchronized (subscribers) {
+                final Subscriber subscriber = new Subscriber(socket, snapshotSupplier.get());
+                subscribers.add(subscriber);
+                subscriber.start();
+            }
+            LOG.info(() -> "Standby connected from " + socket.getRemoteSocketAddress());
+        }
+    }
+
+    private void removeSubscriber(Subscriber subscriber) {
+        synchronized (subscribers) {
+            subscribers.remove(subscriber);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                LOG.debug(() -> "Failed to close replication socket", e);
+            }
+        }
+    }
+
+    /*
+     * A connected standby, and the threads that write to it and read its lease acks.
+     */
+    private final class Subscriber {
+
+        private final Socket socket;
+        private final List<StateLogEntry> snapshot;
+        private final BlockingQueue<StateLogEntry> queue = new LinkedBlockingQueue<>(SUBSCRIBER_QUEUE_CAPACITY);
+        private final Thread writerThread;
+        private final Thread ackReaderThread;
+
+        Subscriber(Socket socket, List<StateLogEntry> snapshot) {
+            this.socket = socket;
+            this.snapshot = snapshot;
+            this.writerThread = new Thread(this::write, "bxbot-failover-writer-" + socket.getPort());
+            this.writerThread.setDaemon(true);
+            this.ackReaderThread = new Thread(this::readAcks, "bxbot-failover-ack-reader-" + socket.getPort());
+            this.ackReaderThread.setDaemon(true);
+        }
+
+        void start() {
+            writerThread.start();
+            ackReaderThread.start();
+        }
+
+        void close() {
+            writerThread.interrupt();
+            closeQuietly(socket);
+        }
+
+        private void write() {
+            try {
+                final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                out.writeInt(MAGIC);
+                out.writeInt(PROTOCOL_VERSION);
+                out.writeInt(snapshot.size());
+                for (final StateLogEntry entry : snapshot) {
+                    entry.writeTo(out);
+                }
+                out.flush();
+
+                while (running) {
+                    queue.take().writeTo(out);
+                    StateLogEntry next;
+                    while ((next = queue.poll()) != null) {
+                        next.writeTo(out);
+                    }
+                    out.flush();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (SocketException e) {
+                LOG.info(() -> "Standby " + socket.getRemoteSocketAddress() + " disconnected.");
+            } catch (IOException e) {
+                LOG.warn("Failed to replicate to standby " + socket.getRemoteSocketAddress(), e);
+            } finally {
+                removeSubscriber(this);
+                closeQuietly(socket);
+            }
+        }
+
+        /*
+         * Ends when the socket is closed - by the writer thread, or by the standby.
+         */
+        private void readAcks() {
+            try {
+                final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                while (running) {
+                    final long sentAt = in.readLong();
+                    final LongConsumer listener = leaseAckListener;
+                    if (listener != null) {
+                        listener.accept(sentAt);
+                    }
+                }
+            } catch (IOException e) {
+                LOG.debug(() -> "Stopped reading lease acks from standby " + socket.getRemoteSocketAddress(), e);
+            } finally {
+                close();
+            }
+        }
+    }
+}
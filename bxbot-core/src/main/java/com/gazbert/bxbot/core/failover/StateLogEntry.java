@@ -0,0 +1,197 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.failover;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An entry in the {@link ReplicatedStateLog}: the latest value of a piece of the primary bot's state.
+ * <p>
+ * The ids say which piece of state it is, e.g. exchange, market and strategy id for a strategy snapshot. The state
+ * of a bot hosted alongside the primary has its botId after those ids. The values
+ * are null if the state has gone, e.g. an order that has been filled. The sequence number goes up with each entry
+ * appended to the log, so a standby can tell an old value from a new one.
+ *
+ * @author gazbert
+ */
+public final class StateLogEntry {
+
+    /**
+     * The kinds of state replicated.
+     */
+    public enum Type {
+
+        /**
+         * A strategy's checkpoint snapshot. Ids: exchange id, market id, strategy id. Values: the snapshot, or none if
+         * it has been deleted.
+         */
+        SNAPSHOT,
+
+        /**
+         * An Exchange Adapter's nonce counter. Ids: exchange id. Values: nonce.
+         */
+        NONCE,
+
+        /**
+         * An order the primary believes is still open. Ids: exchange id, market id, order id.
+         * Values: type, price, quantity.
+         */
+        OPEN_ORDER,
+
+        /**
+         * The primary's lease renewal. It is not kept in the log. Values: the time the primary sent it, which the
+         * standby echoes back to acknowledge it.
+         */
+        LEASE
+    }
+
+    static final String NONCE = "nonce";
+    static final String ORDER_TYPE = "type";
+    static final String PRICE = "price";
+    static final String QUANTITY = "quantity";
+    static final String SENT_AT = "sent-at";
+
+    private static final int MAX_STRING_BYTES = 1024 * 1024;
+
+    private final Type type;
+    private final List<String> ids;
+    private final Map<String, String> values;
+    private final long sequence;
+
+
+    StateLogEntry(Type type, List<String> ids, Map<String, String> values, long sequence) {
+        this.type = type;
+        this.ids = Collections.unmodifiableList(new ArrayList<>(ids));
+        this.values = values == null ? null : Collections.unmodifiableMap(new LinkedHashMap<>(values));
+        this.sequence = sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public List<String> getIds() {
+        return ids;
+    }
+
+    public Map<String, String> getValues() {
+        return values;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the key the log is compacted on: entries with the same key are values of the same piece of state.
+     *
+     * @return the key.
+     */
+    public String getKey() {
+        return type + ids.toString();
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Encoding
+    // ------------------------------------------------------------------------------------------------
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeByte(type.ordinal());
+        out.writeLong(sequence);
+        out.writeInt(ids.size());
+        for (final String id : ids) {
+            writeString(out, id);
+        }
+        if (values == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(values.size());
+            for (final Map.Entry<String, String> entry : values.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+        }
+    }
+
+    static StateLogEntry readFrom(DataInput in) throws IOException {
+        final int typeOrdinal = in.readByte();
+        if (typeOrdinal < 0 || typeOrdinal >= Type.values().length) {
+            throw new IOException("Unknown state log entry type: " + typeOrdinal);
+        }
+        final long sequence = in.readLong();
+        final int idCount = in.readInt();
+        final List<String> ids = new ArrayList<>(idCount);
+        for (int i = 0; i < idCount; i++) {
+            ids.add(readString(in));
+        }
+        final int valueCount = in.readInt();
+        Map<String, String> values = null;
+        if (valueCount >= 0) {
+            values = new LinkedHashMap<>();
+            for (int i = 0; i < valueCount; i++) {
+                values.put(readString(in), readString(in));
+            }
+        }
+        return new StateLogEntry(Type.values()[typeOrdinal], ids, values, sequence);
+    }
+
+    /*
+     * Null is written as length -1.
+     */
+    private static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            final byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(utf8.length);
+            out.write(utf8);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > MAX_STRING_BYTES) {
+            throw new IOException("State log entry string too long: " + length);
+        }
+        final byte[] utf8 = new byte[length];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + ids + " #" + sequence;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.jfr;
+
+import com.gazbert.bxbot.exchange.api.jfr.FlightRecorderSupport;
+import jdk.jfr.*;
+
+/**
+ * JFR event for an Emergency Stop balance check across the exchanges.
+ * <p>
+ * Only create this event if {@link FlightRecorderSupport#isAvailable()} returns true.
+ *
+ * @author gazbert
+ */
+@Name("com.gazbert.bxbot.EmergencyStopCheck")
+@Label("Emergency Stop Check")
+@Description("An Emergency Stop balance check run by the watchdog")
+@Category({FlightRecorderSupport.CATEGORY, "Engine"})
+@StackTrace(false)
+public final class EmergencyStopCheckEvent extends Event {
+
+    @Label("Currency")
+    public String currency;
+
+    @Label("Balance")
+    @Description("Balance available across the exchanges, or NaN if it could not be fetched")
+    public double balance = Double.NaN;
+
+    @Label("Emergency Stop Balance")
+    public double emergencyStopBalance;
+
+    @Label("Outcome")
+    @Description("PASSED, BREACHED, NETWORK_ERROR, or FAILED")
+    public String outcome;
+}
@@ -0,0 +1,56 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.jfr;
+
+import com.gazbert.bxbot.exchange.api.jfr.FlightRecorderSupport;
+import jdk.jfr.*;
+
+/**
+ * JFR event for a trade cycle. The event start and end times are the start and end of the cycle.
+ * <p>
+ * Only create this event if {@link FlightRecorderSupport#isAvailable()} returns true.
+ *
+ * @author gazbert
+ */
+@Name("com.gazbert.bxbot.TradeCycle")
+@Label("Trade Cycle")
+@Description("A trade cycle run by the Trading Engine across the exchange lanes")
+@Category({FlightRecorderSupport.CATEGORY, "Engine"})
+@StackTrace(false)
+public final class TradeCycleEvent extends Event {
+
+    @Label("Bot Id")
+    public String botId;
+
+    @Label("Lanes Dispatched")
+    public int lanesDispatched;
+
+    @Label("Lanes Skipped")
+    @Description("Lanes still busy with the previous trade cycle")
+    public int lanesSkipped;
+
+    @Label("Lanes Overrun")
+    @Description("Lanes that did not complete within the trade cycle interval")
+    public int lanesOverrun;
+}
@@ -0,0 +1,53 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.journal;
+
+import com.gazbert.bxbot.trading.api.OrderType;
+
+import java.math.BigDecimal;
+
+/**
+ * Told about each fill the {@link TradeJournal} detects.
+ * <p>
+ * It is called on the thread that fetched the open orders, i.e. from within the trade cycle, so it must be quick.
+ *
+ * @author gazbert
+ */
+@FunctionalInterface
+public interface FillListener {
+
+    /**
+     * Called when an order, or part of it, has been filled.
+     *
+     * @param exchangeId the exchange id.
+     * @param marketId   the market id.
+     * @param orderType  BUY or SELL.
+     * @param price      the order's price.
+     * @param quantity   the quantity filled since the last fill for the order.
+     * @param inferred   true if the fill is a guess: the order has gone from the open orders, and the Trade Journal
+     *                   has been told to treat that as filled. See {@link TradeJournal.EventType#INFERRED_FILL}.
+     */
+    void onFill(String exchangeId, String marketId, OrderType orderType, BigDecimal price, BigDecimal quantity,
+                boolean inferred);
+}
@@ -0,0 +1,564 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.journal;
+
+import com.gazbert.bxbot.domain.journal.TradeJournalEvent;
+import com.gazbert.bxbot.domain.journal.TradeJournalPage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * The trade journal for a single market.
+ * </p>
+ * <p>
+ * Order events are appended to a data file as checksummed records: [length][crc32][payload]. Alongside it is an index
+ * file holding a fixed size [timestamp][data file offset][order id hash] entry per record, in the order the records
+ * were written. The index is memory-mapped, so finding where a time range starts is a binary search over the mapped
+ * entries, and the entries for an order id are found through an in-memory map built from the index - a query never
+ * reads data records it is not going to return.
+ * </p>
+ * <p>
+ * Events are only ever appended, by the trade journal's writer thread. The data file is fsync'ed once per batch of
+ * events; the index is not, as it can always be rebuilt from the data file. On open, any records missing from the index
+ * are re-indexed, and a torn record at the end of the data file - from the bot dying part way through a write - is
+ * dropped.
+ * </p>
+ *
+ * @author gazbert
+ */
+final class MarketJournal implements Closeable {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    static final String DATA_FILENAME = "orders.journal";
+    static final String INDEX_FILENAME = "orders.idx";
+
+    private static final int DATA_MAGIC = 0x42585444; // "BXTD"
+    private static final int INDEX_MAGIC = 0x42585449; // "BXTI"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int DATA_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 64 * 1024;
+
+    private static final int INDEX_HEADER_SIZE = 16;
+    private static final int INDEX_ENTRY_COUNT_POSITION = 8;
+    private static final int INDEX_ENTRY_SIZE = 24;
+    private static final int INITIAL_INDEX_CAPACITY = 4096;
+
+    private static final String NONE = "";
+
+    private final String exchangeId;
+    private final String marketId;
+    private final Path dataFile;
+    private final FileChannel dataChannel;
+    private final FileChannel indexChannel;
+
+    /*
+     * The current index mapping and entry count. Replaced by the writer after each batch; readers take a copy of the
+     * reference and use it for the whole query.
+     */
+    private volatile IndexView indexView;
+
+    /*
+     * Order id hash -> index entry numbers, in ascending order. Guarded by itself.
+     */
+    private final Map<Long, List<Integer>> orderIdEntries = new HashMap<>();
+
+    // Only used by the writer thread after open
+    private long dataSize;
+    private long nextSequence = 1;
+    private long lastTimestamp = Long.MIN_VALUE;
+
+
+    private MarketJournal(Path directory, String exchangeId, String marketId) throws IOException {
+
+        this.exchangeId = exchangeId;
+        this.marketId = marketId;
+        this.dataFile = directory.resolve(DATA_FILENAME);
+
+        Files.createDirectories(directory);
+        dataChannel = FileChannel.open(dataFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            indexChannel = FileChannel.open(directory.resolve(INDEX_FILENAME), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            dataChannel.close();
+            throw e;
+        }
+    }
+
+    static MarketJournal open(Path directory, String exchangeId, String marketId) throws IOException {
+        final MarketJournal journal = new MarketJournal(directory, exchangeId, marketId);
+        try {
+            journal.recover();
+            return journal;
+        } catch (IOException | RuntimeException e) {
+            journal.close();
+            throw e;
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Writes - writer thread only
+    // ------------------------------------------------------------------------------------------------
+
+    /*
+     * Assigns the events their sequence numbers, appends them to the data file in a single write, fsyncs it, then
+     * indexes them.
+     */
+    void append(List<TradeJournalEvent> events) throws IOException {
+
+        final ByteArrayOutputStream records = new ByteArrayOutputStream();
+        final long[] offsets = new long[events.size()];
+        final long firstSequence = nextSequence;
+        final long firstTimestamp = lastTimestamp;
+
+        long offset = dataSize;
+        for (int i = 0; i < events.size(); i++) {
+            final TradeJournalEvent event = events.get(i);
+            event.setSequence(nextSequence++);
+            // keep timestamps in order so the index can be binary searched, even if the clock steps back
+            lastTimestamp = Math.max(lastTimestamp, event.getTimestamp());
+            event.setTimestamp(lastTimestamp);
+
+            final byte[] record = toRecord(encode(event));
+            offsets[i] = offset;
+            offset += record.length;
+            records.write(record);
+        }
+
+        try {
+            writeFully(dataChannel, records.toByteArray(), dataSize);
+            dataChannel.force(false);
+        } catch (IOException e) {
+            nextSequence = firstSequence;
+            lastTimestamp = firstTimestamp;
+            try {
+                dataChannel.truncate(dataSize);
+            } catch (IOException truncateException) {
+                e.addSuppressed(truncateException);
+            }
+            throw e;
+        }
+        dataSize = offset;
+
+        final IndexView view = ensureIndexCapacity(indexView.count + events.size());
+        int entry = view.count;
+        for (int i = 0; i < events.size(); i++, entry++) {
+            putIndexEntry(view.buffer, entry, events.get(i).getTimestamp(), offsets[i], events.get(i).getOrderId());
+        }
+        publishIndex(view.buffer, view.capacity, entry);
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Queries
+    // ------------------------------------------------------------------------------------------------
+
+    /*
+     * Returns up to limit events with timestamps in [fromTime, toTime], starting at index entry number cursor.
+     * If orderId is not null, only the events for that order are returned.
+     */
+    TradeJournalPage page(String orderId, long fromTime, long toTime, long cursor, int limit) throws IOException {
+
+        final IndexView view = indexView;
+        final List<TradeJournalEvent> events = new ArrayList<>();
+
+        if (orderId != null) {
+            final List<Integer> entries;
+            synchronized (orderIdEntries) {
+                entries = new ArrayList<>(orderIdEntries.getOrDefault(hash(orderId), Collections.emptyList()));
+            }
+            for (final int entry : entries) {
+                if (entry < cursor || entry >= view.count) {
+                    continue;
+                }
+                final long timestamp = view.timestamp(entry);
+                if (timestamp < fromTime || timestamp > toTime) {
+                    continue;
+                }
+                final TradeJournalEvent event = readEvent(view.offset(entry));
+                if (orderId.equals(event.getOrderId())) {
+                    if (events.size() == limit) {
+                        return new TradeJournalPage(events, (long) entry);
+                    }
+                    events.add(event);
+                }
+            }
+            return new TradeJournalPage(events, null);
+        }
+
+        for (int entry = (int) Math.max(cursor, view.firstEntryAtOrAfter(fromTime));
+             entry < view.count && view.timestamp(entry) <= toTime; entry++) {
+            if (events.size() == limit) {
+                return new TradeJournalPage(events, (long) entry);
+            }
+            events.add(readEvent(view.offset(entry)));
+        }
+        return new TradeJournalPage(events, null);
+    }
+
+    int size() {
+        return indexView.count;
+    }
+
+    @Override
+    public void close() {
+        try {
+            dataChannel.close();
+            indexChannel.close();
+        } catch (IOException e) {
+            LOG.warn(() -> "Failed to close trade journal " + dataFile, e);
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Recovery
+    // ------------------------------------------------------------------------------------------------
+
+    private void recover() throws IOException {
+
+        if (dataChannel.size() == 0) {
+            writeFully(dataChannel, ByteBuffer.allocate(DATA_HEADER_SIZE).putInt(DATA_MAGIC).putInt(FORMAT_VERSION)
+                    .array(), 0);
+            dataChannel.force(true);
+        } else {
+            final ByteBuffer header = ByteBuffer.allocate(DATA_HEADER_SIZE);
+            dataChannel.read(header, 0);
+            header.flip();
+            if (header.remaining() < DATA_HEADER_SIZE || header.getInt() != DATA_MAGIC
+                    || header.getInt() != FORMAT_VERSION) {
+                throw new IllegalStateException(dataFile + " is not a trade journal, or is from an unsupported "
+                        + "version of the bot.");
+            }
+        }
+        dataSize = dataChannel.size();
+
+        // Map the index; it's derived data, so if it's not valid just rebuild it
+        int entryCount = 0;
+        int capacity = INITIAL_INDEX_CAPACITY;
+        if (indexChannel.size() >= INDEX_HEADER_SIZE) {
+            capacity = (int) Math.max(INITIAL_INDEX_CAPACITY,
+                    (indexChannel.size() - INDEX_HEADER_SIZE) / INDEX_ENTRY_SIZE);
+        }
+        MappedByteBuffer buffer = mapIndex(capacity);
+        if (buffer.getInt(0) == INDEX_MAGIC && buffer.getInt(4) == FORMAT_VERSION) {
+            entryCount = (int) Math.min(capacity, Math.max(0, buffer.getLong(INDEX_ENTRY_COUNT_POSITION)));
+        } else {
+            buffer.putInt(0, INDEX_MAGIC).putInt(4, FORMAT_VERSION);
+        }
+
+        // Drop index entries for records that are not in the data file, e.g. it was restored from a backup
+        TradeJournalEvent lastEvent = null;
+        long scanFrom = DATA_HEADER_SIZE;
+        while (entryCount > 0) {
+            final long offset = buffer.getLong(indexEntryPosition(entryCount - 1) + 8);
+            final Record record = offset < dataSize ? readRecord(offset) : null;
+            if (record != null) {
+                lastEvent = decode(record.payload);
+                scanFrom = offset + record.length;
+                break;
+            }
+            entryCount--;
+        }
+
+        // Index any records written after the last index entry, and drop a torn record at the end
+        int reindexedCount = 0;
+        long offset = scanFrom;
+        Record record;
+        while (offset < dataSize && (record = readRecord(offset)) != null) {
+            final TradeJournalEvent event = decode(record.payload);
+            if (entryCount == capacity) {
+                capacity *= 2;
+                buffer = mapIndex(capacity);
+            }
+            putIndexEntry(buffer, entryCount++, event.getTimestamp(), offset, event.getOrderId());
+            lastEvent = event;
+            offset += record.length;
+            reindexedCount++;
+        }
+        if (offset < dataSize) {
+            final long tornBytes = dataSize - offset;
+            LOG.warn(() -> "Dropping " + tornBytes + " bytes of incomplete record at the end of trade journal "
+                    + dataFile + " - the bot probably stopped while writing to it.");
+            dataChannel.truncate(offset);
+            dataChannel.force(true);
+            dataSize = offset;
+        }
+
+        if (lastEvent != null) {
+            nextSequence = lastEvent.getSequence() + 1;
+            lastTimestamp = lastEvent.getTimestamp();
+        }
+
+        publishIndex(buffer, capacity, entryCount);
+        rebuildOrderIdEntries();
+
+        final int recoveredCount = reindexedCount;
+        if (recoveredCount > 0) {
+            LOG.info(() -> "Re-indexed " + recoveredCount + " records in trade journal " + dataFile);
+        }
+    }
+
+    private void rebuildOrderIdEntries() {
+        final IndexView view = indexView;
+        synchronized (orderIdEntries) {
+            orderIdEntries.clear();
+            for (int entry = 0; entry < view.count; entry++) {
+                final long orderIdHash = view.buffer.getLong(indexEntryPosition(entry) + 16);
+                if (orderIdHash != 0) {
+                    orderIdEntries.computeIfAbsent(orderIdHash, hash -> new ArrayList<>()).add(entry);
+                }
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Index
+    // ------------------------------------------------------------------------------------------------
+
+    /*
+     * Mapping the file READ_WRITE past its end grows it. The old mapping is released when it is garbage collected.
+     */
+    private MappedByteBuffer mapIndex(int capacity) throws IOException {
+        return indexChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+                INDEX_HEADER_SIZE + (long) capacity * INDEX_ENTRY_SIZE);
+    }
+
+    private IndexView ensureIndexCapacity(int requiredCapacity) throws IOException {
+        final IndexView view = indexView;
+        if (requiredCapacity <= view.capacity) {
+            return view;
+        }
+        int capacity = view.capacity;
+        while (capacity < requiredCapacity) {
+            capacity *= 2;
+        }
+        return new IndexView(mapIndex(capacity), capacity, view.count);
+    }
+
+    private void putIndexEntry(MappedByteBuffer buffer, int entry, long timestamp, long offset, String orderId) {
+        final int position = indexEntryPosition(entry);
+        final long orderIdHash = hash(orderId);
+        buffer.putLong(position, timestamp);
+        buffer.putLong(position + 8, offset);
+        buffer.putLong(position + 16, orderIdHash);
+        if (orderIdHash != 0) {
+            synchronized (orderIdEntries) {
+                orderIdEntries.computeIfAbsent(orderIdHash, hash -> new ArrayList<>()).add(entry);
+            }
+        }
+    }
+
+    private void publishIndex(MappedByteBuffer buffer, int capacity, int count) {
+        buffer.putLong(INDEX_ENTRY_COUNT_POSITION, count);
+        indexView = new IndexView(buffer, capacity, count);
+    }
+
+    private static int indexEntryPosition(int entry) {
+        return INDEX_HEADER_SIZE + entry * INDEX_ENTRY_SIZE;
+    }
+
+    /*
+     * 64 bit FNV-1a hash of the order id; 0 means no order id.
+     */
+    private static long hash(String orderId) {
+        if (orderId == null || orderId.isEmpty()) {
+            return 0;
+        }
+        long hash = 0xcbf29ce484222325L;
+        for (final byte b : orderId.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static final class IndexView {
+
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private final int count;
+
+        IndexView(MappedByteBuffer buffer, int capacity, int count) {
+            this.buffer = buffer;
+            this.capacity = capacity;
+            this.count = count;
+        }
+
+        long timestamp(int entry) {
+            return buffer.getLong(indexEntryPosition(entry));
+        }
+
+        long offset(int entry) {
+            return buffer.getLong(indexEntryPosition(entry) + 8);
+        }
+
+        int firstEntryAtOrAfter(long time) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (timestamp(mid) < time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Records
+    // ------------------------------------------------------------------------------------------------
+
+    private static final class Record {
+
+        private final byte[] payload;
+        private final int length;
+
+        Record(byte[] payload) {
+            this.payload = payload;
+            this.length = RECORD_HEADER_SIZE + payload.length;
+        }
+    }
+
+    /*
+     * Returns null if there is no complete, valid record at the offset.
+     */
+    private Record readRecord(long offset) throws IOException {
+
+        final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        if (!readFully(header, offset)) {
+            return null;
+        }
+        final int length = header.getInt(0);
+        final int checksum = header.getInt(4);
+        if (length < 0 || length > MAX_RECORD_SIZE) {
+            return null;
+        }
+        final ByteBuffer payload = ByteBuffer.allocate(length);
+        if (!readFully(payload, offset + RECORD_HEADER_SIZE) || checksum(payload.array()) != checksum) {
+            return null;
+        }
+        return new Record(payload.array());
+    }
+
+    private TradeJournalEvent readEvent(long offset) throws IOException {
+        final Record record = readRecord(offset);
+        if (record == null) {
+            throw new IllegalStateException("Trade journal " + dataFile + " has a corrupt record at offset " + offset);
+        }
+        return decode(record.payload);
+    }
+
+    private boolean readFully(ByteBuffer buffer, long position) throws IOException {
+        long readPosition = position;
+        while (buffer.hasRemaining()) {
+            final int read = dataChannel.read(buffer, readPosition);
+            if (read < 0) {
+                return false;
+            }
+            readPosition += read;
+        }
+        return true;
+    }
+
+    private static void writeFully(FileChannel channel, byte[] bytes, long position) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long writePosition = position;
+        while (buffer.hasRemaining()) {
+            writePosition += channel.write(buffer, writePosition);
+        }
+    }
+
+    private static byte[] toRecord(byte[] payload) {
+        return ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length)
+                .putInt(payload.length)
+                .putInt(checksum(payload))
+                .put(payload)
+                .array();
+    }
+
+    private static int checksum(byte[] payload) {
+        final CRC32 crc32 = new CRC32();
+        crc32.update(payload);
+        return (int) crc32.getValue();
+    }
+
+    /*
+     * Payload: sequence, timestamp, event type, order id, order type, price, quantity. Missing values are empty.
+     */
+    private static byte[] encode(TradeJournalEvent event) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(event.getSequence());
+            out.writeLong(event.getTimestamp());
+            out.writeUTF(event.getEventType());
+            out.writeUTF(orNone(event.getOrderId()));
+            out.writeUTF(orNone(event.getOrderType()));
+            out.writeUTF(event.getPrice() == null ? NONE : event.getPrice().toPlainString());
+            out.writeUTF(event.getQuantity() == null ? NONE : event.getQuantity().toPlainString());
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to encode trade journal event: " + event, e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private TradeJournalEvent decode(byte[] payload) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        final long sequence = in.readLong();
+        final long timestamp = in.readLong();
+        final String eventType = in.readUTF();
+        final String orderId = orNull(in.readUTF());
+        final String orderType = orNull(in.readUTF());
+        final String price = orNull(in.readUTF());
+        final String quantity = orNull(in.readUTF());
+        return new TradeJournalEvent(sequence, timestamp, eventType, exchangeId, marketId, orderId, orderType,
+                price == null ? null : new BigDecimal(price), quantity == null ? null : new BigDecimal(quantity));
+    }
+
+    private static String orNone(String value) {
+        return value == null ? NONE : value;
+    }
+
+    private static String orNull(String value) {
+        return NONE.equals(value) ? null : value;
+    }
+}
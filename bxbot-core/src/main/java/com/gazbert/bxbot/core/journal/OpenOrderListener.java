@@ -0,0 +1,62 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.journal;
+
+import com.gazbert.bxbot.trading.api.OrderType;
+
+import java.math.BigDecimal;
+
+/**
+ * Told about the changes to the orders the {@link TradeJournal} believes are still open, e.g. to replicate them to a
+ * standby bot.
+ * <p>
+ * It is called on the thread that placed, cancelled, or fetched the orders, i.e. from within the trade cycle, so it
+ * must be quick.
+ *
+ * @author gazbert
+ */
+public interface OpenOrderListener {
+
+    /**
+     * Called when an order is acknowledged by the exchange, or is partly filled.
+     *
+     * @param exchangeId        the exchange id.
+     * @param marketId          the market id.
+     * @param orderId           the order id.
+     * @param orderType         BUY or SELL.
+     * @param price             the order's price.
+     * @param remainingQuantity the quantity still to be filled.
+     */
+    void onOrderOpen(String exchangeId, String marketId, String orderId, OrderType orderType, BigDecimal price,
+                     BigDecimal remainingQuantity);
+
+    /**
+     * Called when an order is cancelled or filled.
+     *
+     * @param exchangeId the exchange id.
+     * @param marketId   the market id.
+     * @param orderId    the order id.
+     */
+    void onOrderClosed(String exchangeId, String marketId, String orderId);
+}
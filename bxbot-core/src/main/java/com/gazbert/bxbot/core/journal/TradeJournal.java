@@ -0,0 +1,586 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.journal;
+
+import com.gazbert.bxbot.core.util.Filenames;
+import com.gazbert.bxbot.domain.journal.TradeJournalEvent;
+import com.gazbert.bxbot.domain.journal.TradeJournalPage;
+import com.gazbert.bxbot.trading.api.OpenOrder;
+import com.gazbert.bxbot.trading.api.OrderType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * A durable, append-only journal of the orders the bot places: when each order is created, acknowledged by the
+ * exchange, cancelled, and filled. There is a journal per market - see {@link MarketJournal} for the file format.
+ * </p>
+ * <p>
+ * The order calls made through the Exchange Adapters are recorded here by the
+ * {@link com.gazbert.bxbot.core.metrics.InstrumentedExchangeAdapter}. Recording an event just puts it on a queue, so
+ * the trade cycle never waits on the disk. A single writer thread drains the queue and appends each batch of events
+ * with 1 sequential write and 1 fsync per market - many events share the cost of a single fsync when the bot is busy.
+ * If the queue is full, events are dropped and counted rather than holding up trading.
+ * </p>
+ * <p>
+ * Fills are detected, not reported: the exchanges' APIs only tell the bot which of its orders are still open. When
+ * the open orders for a market are fetched, an order whose remaining quantity has dropped is journalled as partly
+ * filled. An order the bot placed that has gone, without the bot cancelling it, is journalled as closed - it may have
+ * been filled, but it may just as well have been cancelled on the exchange's website, or expired. Only orders placed
+ * since the bot started are tracked.
+ * </p>
+ * <p>
+ * Setting the bxbot.journal.infer-fills property treats the orders that have gone as filled: they are journalled as
+ * inferred fills, and the {@link FillListener}s are told about them, flagged as inferred. It is off by default.
+ * </p>
+ * <p>
+ * Other components can register a {@link FillListener} to be told about the fills as they are detected, and an
+ * {@link OpenOrderListener} to be told about the changes to the orders being tracked.
+ * </p>
+ * <p>
+ * Journalling can be switched off with the bxbot.journal.enabled property; fills are still detected. The journals
+ * are kept under the bxbot.journal.dir directory, ./journal by default.
+ * </p>
+ *
+ * @author gazbert
+ */
+@Component
+public class TradeJournal {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    /**
+     * The order events that are journalled.
+     */
+    public enum EventType {
+
+        /** The bot is about to send an order to the exchange. */
+        CREATE,
+
+        /** The exchange has accepted the order and given it an id. */
+        ACK,
+
+        /** The bot has cancelled the order. */
+        CANCEL,
+
+        /** Part of the order has been filled: it is still open, with less left to fill than before. */
+        FILL,
+
+        /**
+         * The order is no longer open, and the bot did not cancel it. Nothing is known about how it closed - it is
+         * not treated as a fill. The quantity is what was left to fill.
+         */
+        CLOSED,
+
+        /**
+         * The order is no longer open, the bot did not cancel it, and bxbot.journal.infer-fills is set, so what was
+         * left to fill is assumed to have been filled. It is a guess: the order may have been cancelled or expired.
+         */
+        INFERRED_FILL
+    }
+
+    /**
+     * The largest page of events a query can return.
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private static final int QUEUE_CAPACITY = 10000;
+    private static final int MAX_BATCH_SIZE = 512;
+    private static final long WRITER_POLL_INTERVAL_MILLIS = 100;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+    private final boolean enabled;
+    private final Path journalDirectory;
+    private final boolean inferFills;
+
+    private final BlockingQueue<TradeJournalEvent> eventQueue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+
+    /*
+     * Journal key -> the market's journal. Opened on first use.
+     */
+    private final Map<String, MarketJournal> marketJournals = new ConcurrentHashMap<>();
+
+    /*
+     * Journal key -> order id -> orders the bot has placed that it believes are still open. Each market's map is
+     * guarded by itself.
+     */
+    private final Map<String, Map<String, TrackedOrder>> trackedOrders = new ConcurrentHashMap<>();
+
+    /*
+     * BotId -> the Trade Journal of a hosted bot. Created on first use.
+     */
+    private final Map<String, TradeJournal> botTradeJournals = new ConcurrentHashMap<>();
+
+    private final List<FillListener> fillListeners = new CopyOnWriteArrayList<>();
+    private final List<OpenOrderListener> openOrderListeners = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong enqueuedEventCount = new AtomicLong();
+    private final AtomicLong droppedEventCount = new AtomicLong();
+
+    /*
+     * Events taken off the queue by the writer, whether or not they could be written. Guarded by the monitor.
+     */
+    private final Object processedMonitor = new Object();
+    private long processedEventCount;
+
+    private volatile boolean accepting = true;
+    private Thread writerThread;
+
+
+    public TradeJournal(boolean enabled, String journalDirectory) {
+        this(enabled, journalDirectory, false);
+    }
+
+    @Autowired
+    public TradeJournal(@Value("${bxbot.journal.enabled:true}") boolean enabled,
+                        @Value("${bxbot.journal.dir:./journal}") String journalDirectory,
+                        @Value("${bxbot.journal.infer-fills:false}") boolean inferFills) {
+        this.enabled = enabled;
+        this.journalDirectory = Paths.get(journalDirectory);
+        this.inferFills = inferFills;
+        LOG.info(() -> "Trade journal enabled: " + enabled + " - journal directory: " + this.journalDirectory
+                + " - infer fills: " + inferFills);
+    }
+
+    /**
+     * Returns the Trade Journal for a bot hosted by the {@link com.gazbert.bxbot.core.engine.TradingEngineHost},
+     * creating it on first use. Its journal files are kept apart from the other bots' in a sub-directory named after
+     * the bot. It is shut down along with this one.
+     *
+     * @param botId the id of the hosted bot.
+     * @return the bot's Trade Journal.
+     */
+    public TradeJournal forBot(String botId) {
+        return botTradeJournals.computeIfAbsent(botId, key -> new TradeJournal(enabled,
+                journalDirectory.resolve(Filenames.toFilename(botId)).toString(), inferFills));
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Recording
+    // ------------------------------------------------------------------------------------------------
+
+    public void orderCreated(String exchangeId, String marketId, OrderType orderType, BigDecimal quantity,
+                             BigDecimal price) {
+        record(EventType.CREATE, exchangeId, marketId, null, orderType, price, quantity);
+    }
+
+    public void orderAcknowledged(String exchangeId, String marketId, String orderId, OrderType orderType,
+                                  BigDecimal quantity, BigDecimal price) {
+        final Map<String, TrackedOrder> orders = trackedOrdersFor(exchangeId, marketId);
+        synchronized (orders) {
+            orders.put(orderId, new TrackedOrder(orderType, price, quantity));
+            notifyOrderOpen(exchangeId, marketId, orderId, orderType, price, quantity);
+        }
+        record(EventType.ACK, exchangeId, marketId, orderId, orderType, price, quantity);
+    }
+
+    public void orderCancelled(String exchangeId, String marketId, String orderId) {
+        final Map<String, TrackedOrder> orders = trackedOrdersFor(exchangeId, marketId);
+        final TrackedOrder order;
+        synchronized (orders) {
+            order = orders.remove(orderId);
+            if (order != null) {
+                notifyOrderClosed(exchangeId, marketId, orderId);
+            }
+        }
+        if (order == null) {
+            record(EventType.CANCEL, exchangeId, marketId, orderId, null, null, null);
+        } else {
+            record(EventType.CANCEL, exchangeId, marketId, orderId, order.orderType, order.price,
+                    order.remainingQuantity);
+        }
+    }
+
+    /*
+     * Journals fills for the tracked orders that have less left to fill than last time, and closes the ones that are
+     * no longer open.
+     */
+    public void openOrdersFetched(String exchangeId, String marketId, List<OpenOrder> openOrders) {
+        if (openOrders == null) {
+            return;
+        }
+        final Map<String, TrackedOrder> orders = trackedOrdersFor(exchangeId, marketId);
+        synchronized (orders) {
+            if (orders.isEmpty()) {
+                return;
+            }
+
+            final Map<String, OpenOrder> openOrdersById = new HashMap<>();
+            openOrders.forEach(openOrder -> openOrdersById.put(openOrder.getId(), openOrder));
+
+            final Iterator<Map.Entry<String, TrackedOrder>> iterator = orders.entrySet().iterator();
+            while (iterator.hasNext()) {
+                final Map.Entry<String, TrackedOrder> tracked = iterator.next();
+                final TrackedOrder order = tracked.getValue();
+                final OpenOrder openOrder = openOrdersById.get(tracked.getKey());
+
+                if (openOrder == null) {
+                    iterator.remove();
+                    notifyOrderClosed(exchangeId, marketId, tracked.getKey());
+                    if (inferFills) {
+                        recordFill(EventType.INFERRED_FILL, exchangeId, marketId, tracked.getKey(), order,
+                                order.remainingQuantity);
+                    } else {
+                        record(EventType.CLOSED, exchangeId, marketId, tracked.getKey(), order.orderType,
+                                order.price, order.remainingQuantity);
+                    }
+
+                } else if (openOrder.getQuantity() != null && order.remainingQuantity != null
+                        && openOrder.getQuantity().compareTo(order.remainingQuantity) < 0) {
+                    recordFill(EventType.FILL, exchangeId, marketId, tracked.getKey(), order,
+                            order.remainingQuantity.subtract(openOrder.getQuantity()));
+                    order.remainingQuantity = openOrder.getQuantity();
+                    notifyOrderOpen(exchangeId, marketId, tracked.getKey(), order.orderType, order.price,
+                            order.remainingQuantity);
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers a listener to be told about the fills as they are detected, whether or not journalling is enabled.
+     * Orders that have gone from the open orders are only passed on, as inferred fills, if bxbot.journal.infer-fills
+     * is set.
+     *
+     * @param fillListener the listener.
+     */
+    public void addFillListener(FillListener fillListener) {
+        fillListeners.add(fillListener);
+    }
+
+    /**
+     * Registers a listener to be told about the changes to the orders being tracked.
+     *
+     * @param openOrderListener the listener.
+     */
+    public void addOpenOrderListener(OpenOrderListener openOrderListener) {
+        openOrderListeners.add(openOrderListener);
+    }
+
+    /**
+     * Starts tracking an order placed by another instance of the bot, e.g. the primary a standby bot is replicating,
+     * so its fills are detected once this bot is trading. Nothing is journalled, and the listeners are not told.
+     *
+     * @param exchangeId        the exchange id.
+     * @param marketId          the market id.
+     * @param orderId           the order id.
+     * @param orderType         BUY or SELL.
+     * @param price             the order's price.
+     * @param remainingQuantity the quantity still to be filled.
+     */
+    public void trackOrder(String exchangeId, String marketId, String orderId, OrderType orderType,
+                           BigDecimal price, BigDecimal remainingQuantity) {
+        final Map<String, TrackedOrder> orders = trackedOrdersFor(exchangeId, marketId);
+        synchronized (orders) {
+            orders.put(orderId, new TrackedOrder(orderType, price, remainingQuantity));
+        }
+    }
+
+    /**
+     * Stops tracking an order, e.g. one the primary a standby bot is replicating has seen cancelled or filled.
+     * Nothing is journalled, and the listeners are not told.
+     *
+     * @param exchangeId the exchange id.
+     * @param marketId   the market id.
+     * @param orderId    the order id.
+     */
+    public void untrackOrder(String exchangeId, String marketId, String orderId) {
+        final Map<String, TrackedOrder> orders = trackedOrdersFor(exchangeId, marketId);
+        synchronized (orders) {
+            orders.remove(orderId);
+        }
+    }
+
+    public long getDroppedEventCount() {
+        return droppedEventCount.get();
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Queries
+    // ------------------------------------------------------------------------------------------------
+
+    /**
+     * Fetches a page of a market's journal, oldest event first.
+     *
+     * @param exchangeId the exchange id.
+     * @param marketId   the market id.
+     * @param orderId    optional order id - only events for this order are returned if set.
+     * @param fromTime   optional start time in millis since the epoch, inclusive.
+     * @param toTime     optional end time in millis since the epoch, inclusive.
+     * @param cursor     where to start; 0 for the first page, else the next cursor from the previous page.
+     * @param limit      the maximum number of events to return, up to {@link #MAX_PAGE_SIZE}.
+     * @return the page of events. It is empty if nothing has been journalled for the market.
+     * @throws IllegalArgumentException if the limit or cursor is out of range.
+     */
+    public TradeJournalPage query(String exchangeId, String marketId, String orderId, Long fromTime, Long toTime,
+                                  long cursor, int limit) {
+
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Trade journal page limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        if (cursor < 0) {
+            throw new IllegalArgumentException("Trade journal cursor must not be negative");
+        }
+
+        final MarketJournal marketJournal = existingJournalFor(exchangeId, marketId);
+        if (marketJournal == null) {
+            return new TradeJournalPage(new ArrayList<>(), null);
+        }
+        try {
+            return marketJournal.page(orderId, fromTime == null ? Long.MIN_VALUE : fromTime,
+                    toTime == null ? Long.MAX_VALUE : toTime, cursor, limit);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read trade journal for market " + marketId + " on exchange "
+                    + exchangeId, e);
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Lifecycle
+    // ------------------------------------------------------------------------------------------------
+
+    /**
+     * Waits for the events recorded so far to be written.
+     *
+     * @param timeoutInMillis how long to wait.
+     * @return true if they were written in time.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean flush(long timeoutInMillis) throws InterruptedException {
+        final long target = enqueuedEventCount.get();
+        final long deadline = System.currentTimeMillis() + timeoutInMillis;
+        synchronized (processedMonitor) {
+            while (processedEventCount < target) {
+                final long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                processedMonitor.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops journalling, for the hosted bots too: the events already recorded are written, then the journals are
+     * closed.
+     */
+    @PreDestroy
+    public void shutdown() {
+        botTradeJournals.values().forEach(TradeJournal::shutdown);
+        accepting = false;
+        final Thread writer;
+        synchronized (this) {
+            writer = writerThread;
+        }
+        if (writer != null) {
+            try {
+                writer.join(SHUTDOWN_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        marketJournals.values().forEach(MarketJournal::close);
+        marketJournals.clear();
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Writer
+    // ------------------------------------------------------------------------------------------------
+
+    private void recordFill(EventType eventType, String exchangeId, String marketId, String orderId,
+                            TrackedOrder order, BigDecimal filledQuantity) {
+        record(eventType, exchangeId, marketId, orderId, order.orderType, order.price, filledQuantity);
+        final boolean inferred = eventType == EventType.INFERRED_FILL;
+        for (final FillListener fillListener : fillListeners) {
+            try {
+                fillListener.onFill(exchangeId, marketId, order.orderType, order.price, filledQuantity, inferred);
+            } catch (RuntimeException e) {
+                LOG.error("Fill listener failed for order " + orderId + " on exchange " + exchangeId, e);
+            }
+        }
+    }
+
+    private void notifyOrderOpen(String exchangeId, String marketId, String orderId, OrderType orderType,
+                                 BigDecimal price, BigDecimal remainingQuantity) {
+        for (final OpenOrderListener openOrderListener : openOrderListeners) {
+            try {
+                openOrderListener.onOrderOpen(exchangeId, marketId, orderId, orderType, price, remainingQuantity);
+            } catch (RuntimeException e) {
+                LOG.error("Open order listener failed for order " + orderId + " on exchange " + exchangeId, e);
+            }
+        }
+    }
+
+    private void notifyOrderClosed(String exchangeId, String marketId, String orderId) {
+        for (final OpenOrderListener openOrderListener : openOrderListeners) {
+            try {
+                openOrderListener.onOrderClosed(exchangeId, marketId, orderId);
+            } catch (RuntimeException e) {
+                LOG.error("Open order listener failed for order " + orderId + " on exchange " + exchangeId, e);
+            }
+        }
+    }
+
+    private void record(EventType eventType, String exchangeId, String marketId, String orderId,
+                        OrderType orderType, BigDecimal price, BigDecimal quantity) {
+
+        if (!enabled || !accepting) {
+            return;
+        }
+        startWriterIfRequired();
+
+        final TradeJournalEvent event = new TradeJournalEvent(0, System.currentTimeMillis(), eventType.name(),
+                exchangeId, marketId, orderId, orderType == null ? null : orderType.name(), price, quantity);
+        if (eventQueue.offer(event)) {
+            enqueuedEventCount.incrementAndGet();
+        } else {
+            final long dropped = droppedEventCount.incrementAndGet();
+            LOG.warn(() -> "Trade journal queue is full. Dropping event: " + event + " - dropped so far: " + dropped);
+        }
+    }
+
+    private synchronized void startWriterIfRequired() {
+        if (writerThread == null) {
+            writerThread = new Thread(this::runWriter, "bxbot-trade-journal");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+    }
+
+    private void runWriter() {
+
+        final List<TradeJournalEvent> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (accepting || !eventQueue.isEmpty()) {
+            try {
+                final TradeJournalEvent first = eventQueue.poll(WRITER_POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                eventQueue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                writeBatch(batch);
+
+            } catch (InterruptedException e) {
+                LOG.warn("Trade journal writer interrupted - " + eventQueue.size() + " events not written.");
+                Thread.currentThread().interrupt();
+                return;
+
+            } finally {
+                synchronized (processedMonitor) {
+                    processedEventCount += batch.size();
+                    processedMonitor.notifyAll();
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<TradeJournalEvent> batch) {
+
+        final Map<String, List<TradeJournalEvent>> eventsByJournal = new LinkedHashMap<>();
+        batch.forEach(event -> eventsByJournal.computeIfAbsent(journalKey(event.getExchangeId(), event.getMarketId()),
+                key -> new ArrayList<>()).add(event));
+
+        eventsByJournal.values().forEach(events -> {
+            final String exchangeId = events.get(0).getExchangeId();
+            final String marketId = events.get(0).getMarketId();
+            try {
+                journalFor(exchangeId, marketId).append(events);
+            } catch (IOException | RuntimeException e) {
+                LOG.error("Failed to write " + events.size() + " events to the trade journal for market " + marketId
+                        + " on exchange " + exchangeId, e);
+            }
+        });
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Util methods
+    // ------------------------------------------------------------------------------------------------
+
+    private MarketJournal journalFor(String exchangeId, String marketId) {
+        return marketJournals.computeIfAbsent(journalKey(exchangeId, marketId), key -> {
+            try {
+                return MarketJournal.open(journalDirectoryFor(exchangeId, marketId), exchangeId, marketId);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to open trade journal for market " + marketId
+                        + " on exchange " + exchangeId, e);
+            }
+        });
+    }
+
+    /*
+     * Returns null if nothing has been journalled for the market.
+     */
+    private MarketJournal existingJournalFor(String exchangeId, String marketId) {
+        final MarketJournal marketJournal = marketJournals.get(journalKey(exchangeId, marketId));
+        if (marketJournal != null) {
+            return marketJournal;
+        }
+        return Files.exists(journalDirectoryFor(exchangeId, marketId).resolve(MarketJournal.DATA_FILENAME))
+                ? journalFor(exchangeId, marketId) : null;
+    }
+
+    private Map<String, TrackedOrder> trackedOrdersFor(String exchangeId, String marketId) {
+        return trackedOrders.computeIfAbsent(journalKey(exchangeId, marketId), key -> new HashMap<>());
+    }
+
+    private Path journalDirectoryFor(String exchangeId, String marketId) {
+        return journalDirectory.resolve(Filenames.toFilename(exchangeId)).resolve(Filenames.toFilename(marketId));
+    }
+
+    private static String journalKey(String exchangeId, String marketId) {
+        return exchangeId + '\u0000' + marketId;
+    }
+
+    private static final class TrackedOrder {
+
+        private final OrderType orderType;
+        private final BigDecimal price;
+        private BigDecimal remainingQuantity;
+
+        TrackedOrder(OrderType orderType, BigDecimal price, BigDecimal quantity) {
+            this.orderType = orderType;
+            this.price = price;
+            this.remainingQuantity = quantity;
+        }
+    }
+}
@@ -23,6 +23,9 @@
 
 package com.gazbert.bxbot.core.mail;
 
+import com.gazbert.bxbot.core.alerts.AlertChannel;
+import com.gazbert.bxbot.core.alerts.AlertChannelException;
+import com.gazbert.bxbot.core.alerts.AlertDispatcher;
 import com.gazbert.bxbot.domain.emailalerts.EmailAlertsConfig;
 import com.gazbert.bxbot.domain.emailalerts.SmtpConfig;
 import com.gazbert.bxbot.services.EmailAlertsConfigService;
@@ -40,17 +43,26 @@ import java.util.Properties;
 
 /**
  * A simple mail sender using SMTP and TLS. It sends plain/text email only.
+ * <p>
+ * It is the email {@link AlertChannel} for the {@link AlertDispatcher} - the Trading Engine raises alerts through the
+ * dispatcher so it is never held up by a slow mail server.
  *
  * @author gazbert
  */
 @Component
 @ComponentScan(basePackages = {"com.gazbert.bxbot.repository"})
-public class EmailAlerter {
+public class EmailAlerter implements AlertChannel {
 
     private static final Logger LOG = LogManager.getLogger();
 
+    /*
+     * SMTP connect, read, and write timeout in millis. Without these, JavaMail waits forever on a hung mail server.
+     */
+    private static final String SMTP_TIMEOUT_IN_MILLIS = "30000";
+
     private SmtpConfig smtpConfig;
     private Properties smtpProps;
+    private Session session;
     private boolean sendEmailAlertsEnabled;
 
     private final EmailAlertsConfigService emailAlertsConfigService;
@@ -62,27 +74,15 @@ public class EmailAlerter {
         initialise();
     }
 
+    /*
+     * Sends the message in the calling thread. Use the AlertDispatcher if you don't want to wait on the mail server.
+     */
     public void sendMessage(String subject, String msgContent) {
 
         if (sendEmailAlertsEnabled) {
-
-            final Session session = Session.getInstance(smtpProps, new Authenticator() {
-                protected PasswordAuthentication getPasswordAuthentication() {
-                    return new PasswordAuthentication(smtpConfig.getAccountUsername(), smtpConfig.getAccountPassword());
-                }
-            });
-
             try {
-                final Message message = new MimeMessage(session);
-                message.setFrom(new InternetAddress(smtpConfig.getFromAddress()));
-                message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(smtpConfig.getToAddress()));
-                message.setSubject(subject);
-                message.setText(msgContent);
-
-                LOG.info(() -> "About to send following Email Alert with message content: " + msgContent);
-                Transport.send(message);
-
-            } catch (MessagingException e) {
+                send(subject, msgContent);
+            } catch (AlertChannelException e) {
                 // not much we can do here, especially if the alert was critical - the bot is shutting down; just log it.
                 LOG.error("Failed to send Email Alert. Details: " + e.getMessage(), e);
             }
@@ -92,6 +92,38 @@ public class EmailAlerter {
         }
     }
 
+    @Override
+    public String getChannelName() {
+        return "Email";
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return sendEmailAlertsEnabled;
+    }
+
+    @Override
+    public void send(String subject, String msgContent) throws AlertChannelException {
+
+        if (!sendEmailAlertsEnabled) {
+            throw new AlertChannelException("Email Alerts are disabled.");
+        }
+
+        try {
+            final Message message = new MimeMessage(session);
+            message.setFrom(new InternetAddress(smtpConfig.getFromAddress()));
+            message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(smtpConfig.getToAddress()));
+            message.setSubject(subject);
+            message.setText(msgContent);
+
+            LOG.info(() -> "About to send following Email Alert with message content: " + msgContent);
+            Transport.send(message);
+
+        } catch (MessagingException e) {
+            throw new AlertChannelException("Failed to send Email Alert: " + e.getMessage(), e);
+        }
+    }
+
     // ------------------------------------------------------------------------
     // Private utils
     // ------------------------------------------------------------------------
@@ -128,6 +160,16 @@ public class EmailAlerter {
                 smtpProps.put("mail.smtp.starttls.enable", "true");
                 smtpProps.put("mail.smtp.host", smtpConfig.getHost());
                 smtpProps.put("mail.smtp.port", smtpConfig.getTlsPort());
+                smtpProps.put("mail.smtp.connectiontimeout", SMTP_TIMEOUT_IN_MILLIS);
+                smtpProps.put("mail.smtp.timeout", SMTP_TIMEOUT_IN_MILLIS);
+                smtpProps.put("mail.smtp.writetimeout", SMTP_TIMEOUT_IN_MILLIS);
+
+                // Session is thread-safe - create it once and reuse it for every alert
+                session = Session.getInstance(smtpProps, new Authenticator() {
+                    protected PasswordAuthentication getPasswordAuthentication() {
+                        return new PasswordAuthentication(smtpConfig.getAccountUsername(), smtpConfig.getAccountPassword());
+                    }
+                });
 
             } else {
                 LOG.warn("Email Alerts are disabled. Are you sure you want to configure this?");
@@ -0,0 +1,402 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.marketdata;
+
+import com.gazbert.bxbot.exchange.api.ExchangeAdapter;
+import com.gazbert.bxbot.trading.api.ConsolidatedMarketOrder;
+import com.gazbert.bxbot.trading.api.ConsolidatedOrderBook;
+import com.gazbert.bxbot.trading.api.ConsolidatedOrderBookProvider;
+import com.gazbert.bxbot.trading.api.ExchangeNetworkException;
+import com.gazbert.bxbot.trading.api.Market;
+import com.gazbert.bxbot.trading.api.MarketOrder;
+import com.gazbert.bxbot.trading.api.MarketOrderBook;
+import com.gazbert.bxbot.trading.api.TradingApiException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Maintains a {@link ConsolidatedOrderBook} for each currency pair the bot trades on more than 1 exchange.
+ * </p>
+ * <p>
+ * The service owns its own Exchange Adapter instances - it never calls the adapters the Trading Strategies are using, so
+ * it does not break the 'only 1 thread through an Exchange Adapter at a time' contract. It refreshes the books in its own
+ * thread. Markets are matched across exchanges on their base/counter currency, not their market id, because each exchange
+ * names its markets differently.
+ * </p>
+ * <p>
+ * Each market tracked for a pair has its own slice of the pair's book. When a market's order book comes back, its slice
+ * is replaced wholesale - the levels are not diffed - and the pair's consolidated book is re-published using a k-way
+ * merge of the slices. An exchange can list more than 1 market for a pair, so the slices are keyed on exchange and
+ * market id. The merge needs each slice in price order; a slice that comes back out of order is sorted first.
+ * Strategies read the published immutable books without any network calls.
+ * </p>
+ * <p>
+ * The exchange fees hardly ever change, so they are cached for an hour rather than fetched with every order book - the
+ * fee calls would otherwise eat up as much of the exchanges' rate limits as the order books themselves.
+ * </p>
+ *
+ * @author gazbert
+ */
+public class ConsolidatedOrderBookService implements ConsolidatedOrderBookProvider {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    private static final Comparator<ConsolidatedMarketOrder> ASK_ORDERING =
+            Comparator.comparing(ConsolidatedMarketOrder::getEffectivePrice);
+    private static final Comparator<ConsolidatedMarketOrder> BID_ORDERING = ASK_ORDERING.reversed();
+
+    /*
+     * How long the fees for a market are used before they are fetched again.
+     */
+    private static final long FEE_CACHE_TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /*
+     * The service's own Exchange Adapters, keyed on exchange id.
+     */
+    private final Map<String, ExchangeAdapter> exchangeAdapters;
+
+    /*
+     * The markets to fetch order books for, keyed on exchange id. Can be changed while the service is running.
+     */
+    private final Map<String, CopyOnWriteArrayList<Market>> trackedMarkets = new ConcurrentHashMap<>();
+
+    /*
+     * The latest per-market slices for each pair: pair -> exchange id + market id -> slice.
+     */
+    private final Map<String, Map<String, ExchangeOrderBookSlice>> exchangeSlices = new ConcurrentHashMap<>();
+
+    /*
+     * The fees for each tracked market, keyed on exchange id + market id. Only accessed by the refresh thread, apart
+     * from being evicted when a market is untracked.
+     */
+    private final Map<String, MarketFees> marketFees = new ConcurrentHashMap<>();
+
+    /*
+     * The published consolidated books, keyed on pair.
+     */
+    private final Map<String, ConsolidatedOrderBook> consolidatedOrderBooks = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService refreshExecutor;
+
+
+    public ConsolidatedOrderBookService(Map<String, ExchangeAdapter> exchangeAdapters) {
+        this.exchangeAdapters = exchangeAdapters;
+    }
+
+    /*
+     * Registers a market on an exchange to be included in the consolidated book for its currency pair.
+     * Can be called while the service is running; tracking a market twice has no effect.
+     */
+    public void trackMarket(String exchangeId, Market market) {
+
+        if (!exchangeAdapters.containsKey(exchangeId)) {
+            final String errorMsg = "Cannot track Market " + market + " - no Exchange Adapter for exchange: " + exchangeId;
+            LOG.error(errorMsg);
+            throw new IllegalArgumentException(errorMsg);
+        }
+        if (trackedMarkets.computeIfAbsent(exchangeId, id -> new CopyOnWriteArrayList<>()).addIfAbsent(market)) {
+            LOG.info(() -> "Consolidated Order Book will track Market " + market.getId() + " on exchange "
+                    + exchangeId);
+        }
+    }
+
+    /*
+     * Stops tracking a market on an exchange and drops its orders from the consolidated book for its currency pair.
+     */
+    public void untrackMarket(String exchangeId, Market market) {
+
+        final List<Market> markets = trackedMarkets.get(exchangeId);
+        if (markets != null && markets.remove(market)) {
+            marketFees.remove(toMarketKey(exchangeId, market));
+            removeExchangeOrderBook(exchangeId, market);
+            LOG.info(() -> "Consolidated Order Book stopped tracking Market " + market.getId() + " on exchange "
+                    + exchangeId);
+        }
+    }
+
+    public void start(int refreshIntervalInSecs) {
+
+        refreshExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread refreshThread = new Thread(runnable, "bxbot-consolidated-book");
+            refreshThread.setDaemon(true);
+            return refreshThread;
+        });
+        refreshExecutor.scheduleWithFixedDelay(this::refresh, 0, refreshIntervalInSecs, TimeUnit.SECONDS);
+        LOG.info(() -> "Consolidated Order Book service started. Refresh interval: " + refreshIntervalInSecs + "s");
+    }
+
+    public void shutdown() {
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdownNow();
+        }
+    }
+
+    @Override
+    public ConsolidatedOrderBook getConsolidatedOrderBook(String baseCurrency, String counterCurrency) {
+        return consolidatedOrderBooks.get(toPairKey(baseCurrency, counterCurrency));
+    }
+
+    /*
+     * Fetches the latest order book for every tracked market, and its fees if the cached ones have expired. An exchange
+     * that fails is dropped from the consolidated book until it recovers - we never serve stale prices.
+     */
+    void refresh() {
+
+        for (final Map.Entry<String, CopyOnWriteArrayList<Market>> exchangeMarkets : trackedMarkets.entrySet()) {
+
+            final String exchangeId = exchangeMarkets.getKey();
+            final ExchangeAdapter exchangeAdapter = exchangeAdapters.get(exchangeId);
+
+            for (final Market market : exchangeMarkets.getValue()) {
+                try {
+                    final MarketOrderBook marketOrderBook = exchangeAdapter.getMarketOrders(market.getId());
+                    final MarketFees fees = getMarketFees(exchangeId, exchangeAdapter, market);
+                    updateExchangeOrderBook(exchangeId, market, marketOrderBook, fees.buyFee, fees.sellFee);
+
+                } catch (ExchangeNetworkException | TradingApiException | RuntimeException e) {
+                    LOG.warn("Failed to fetch order book for Market " + market.getId() + " on exchange " + exchangeId
+                            + " - dropping it from the Consolidated Order Book until next refresh", e);
+                    removeExchangeOrderBook(exchangeId, market);
+                }
+            }
+        }
+    }
+
+    /*
+     * Returns the market's cached fees, fetching them from the exchange if they have expired.
+     */
+    private MarketFees getMarketFees(String exchangeId, ExchangeAdapter exchangeAdapter, Market market)
+            throws ExchangeNetworkException, TradingApiException {
+
+        final String feesKey = toMarketKey(exchangeId, market);
+        final long now = System.currentTimeMillis();
+        final MarketFees cachedFees = marketFees.get(feesKey);
+        if (cachedFees != null && now - cachedFees.fetchedTime < FEE_CACHE_TTL_MILLIS) {
+            return cachedFees;
+        }
+
+        final MarketFees fees = new MarketFees(
+                exchangeAdapter.getPercentageOfBuyOrderTakenForExchangeFee(market.getId()),
+                exchangeAdapter.getPercentageOfSellOrderTakenForExchangeFee(market.getId()), now);
+        marketFees.put(feesKey, fees);
+        return fees;
+    }
+
+    /*
+     * Replaces the market's slice of the pair with its latest order book and re-publishes the pair's consolidated book.
+     * The book is ignored if the market was untracked while it was being fetched.
+     *
+     * The slices are updated and the books published under the service's lock: the refresh thread and the engine
+     * thread (when untracking a market) both do it, and a publish must never overwrite a later one.
+     */
+    synchronized void updateExchangeOrderBook(String exchangeId, Market market, MarketOrderBook marketOrderBook,
+                                              BigDecimal buyFee, BigDecimal sellFee) {
+
+        final List<Market> markets = trackedMarkets.get(exchangeId);
+        if (markets == null || !markets.contains(market)) {
+            return;
+        }
+
+        if (marketOrderBook == null) {
+            removeExchangeOrderBook(exchangeId, market);
+            return;
+        }
+
+        final BigDecimal buyFeeToApply = buyFee == null ? BigDecimal.ZERO : buyFee;
+        final BigDecimal sellFeeToApply = sellFee == null ? BigDecimal.ZERO : sellFee;
+
+        // Asks are what we'd pay if we bought, so add the buy fee. Bids are what we'd receive if we sold, so take off the sell fee.
+        final List<ConsolidatedMarketOrder> sellOrders = inPriceOrder(exchangeId, market, adaptOrders(exchangeId,
+                market, marketOrderBook.getSellOrders(), BigDecimal.ONE.add(buyFeeToApply)), ASK_ORDERING);
+        final List<ConsolidatedMarketOrder> buyOrders = inPriceOrder(exchangeId, market, adaptOrders(exchangeId,
+                market, marketOrderBook.getBuyOrders(), BigDecimal.ONE.subtract(sellFeeToApply)), BID_ORDERING);
+
+        final String pairKey = toPairKey(market.getBaseCurrency(), market.getCounterCurrency());
+        exchangeSlices.computeIfAbsent(pairKey, key -> new ConcurrentHashMap<>())
+                .put(toMarketKey(exchangeId, market), new ExchangeOrderBookSlice(sellOrders, buyOrders));
+        publish(pairKey, market);
+    }
+
+    private synchronized void removeExchangeOrderBook(String exchangeId, Market market) {
+
+        final String pairKey = toPairKey(market.getBaseCurrency(), market.getCounterCurrency());
+        final Map<String, ExchangeOrderBookSlice> slices = exchangeSlices.get(pairKey);
+        if (slices != null && slices.remove(toMarketKey(exchangeId, market)) != null) {
+            publish(pairKey, market);
+        }
+    }
+
+    /*
+     * Caller must hold the service's lock.
+     */
+    private void publish(String pairKey, Market market) {
+
+        final Collection<ExchangeOrderBookSlice> slices = exchangeSlices.get(pairKey).values();
+
+        final List<List<ConsolidatedMarketOrder>> sellSlices = new ArrayList<>();
+        final List<List<ConsolidatedMarketOrder>> buySlices = new ArrayList<>();
+        for (final ExchangeOrderBookSlice slice : slices) {
+            sellSlices.add(slice.sellOrders);
+            buySlices.add(slice.buyOrders);
+        }
+
+        final ConsolidatedOrderBook consolidatedOrderBook = new ConsolidatedOrderBook(
+                market.getBaseCurrency(), market.getCounterCurrency(),
+                merge(sellSlices, ASK_ORDERING), merge(buySlices, BID_ORDERING), System.currentTimeMillis());
+        consolidatedOrderBooks.put(pairKey, consolidatedOrderBook);
+
+        LOG.debug(() -> "Published Consolidated Order Book for " + pairKey + " - best ask: "
+                + consolidatedOrderBook.getBestAsk() + " best bid: " + consolidatedOrderBook.getBestBid());
+    }
+
+    /*
+     * k-way merge of already sorted lists. O(n log k) where k is the number of slices.
+     */
+    static List<ConsolidatedMarketOrder> merge(List<List<ConsolidatedMarketOrder>> sortedLists,
+                                               Comparator<ConsolidatedMarketOrder> ordering) {
+
+        int totalSize = 0;
+        final PriorityQueue<ListCursor> heads = new PriorityQueue<>(Math.max(1, sortedLists.size()),
+                (cursor1, cursor2) -> ordering.compare(cursor1.current(), cursor2.current()));
+        for (final List<ConsolidatedMarketOrder> sortedList : sortedLists) {
+            totalSize += sortedList.size();
+            if (!sortedList.isEmpty()) {
+                heads.add(new ListCursor(sortedList));
+            }
+        }
+
+        final List<ConsolidatedMarketOrder> merged = new ArrayList<>(totalSize);
+        while (!heads.isEmpty()) {
+            final ListCursor cursor = heads.poll();
+            merged.add(cursor.current());
+            if (cursor.advance()) {
+                heads.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    /*
+     * The merge relies on each slice being in price order. Exchanges should return their books that way, but we check
+     * rather than trust them: the check is O(n), and the O(n log n) sort is only paid for a book that is out of order.
+     */
+    private static List<ConsolidatedMarketOrder> inPriceOrder(String exchangeId, Market market,
+                                                              List<ConsolidatedMarketOrder> orders,
+                                                              Comparator<ConsolidatedMarketOrder> ordering) {
+        for (int i = 1; i < orders.size(); i++) {
+            if (ordering.compare(orders.get(i - 1), orders.get(i)) > 0) {
+                LOG.debug(() -> "Order book for Market " + market.getId() + " on exchange " + exchangeId
+                        + " is not in price order - sorting it");
+                final List<ConsolidatedMarketOrder> sortedOrders = new ArrayList<>(orders);
+                sortedOrders.sort(ordering);
+                return sortedOrders;
+            }
+        }
+        return orders;
+    }
+
+    private static List<ConsolidatedMarketOrder> adaptOrders(String exchangeId, Market market,
+                                                             List<MarketOrder> marketOrders, BigDecimal feeMultiplier) {
+        if (marketOrders == null) {
+            return Collections.emptyList();
+        }
+
+        final List<ConsolidatedMarketOrder> orders = new ArrayList<>(marketOrders.size());
+        for (final MarketOrder marketOrder : marketOrders) {
+            orders.add(new ConsolidatedMarketOrder(exchangeId, market.getId(), marketOrder.getType(),
+                    marketOrder.getPrice(), marketOrder.getQuantity(), marketOrder.getTotal(),
+                    marketOrder.getPrice().multiply(feeMultiplier)));
+        }
+        return orders;
+    }
+
+    private static String toMarketKey(String exchangeId, Market market) {
+        return exchangeId + "/" + market.getId();
+    }
+
+    private static String toPairKey(String baseCurrency, String counterCurrency) {
+        return baseCurrency.toUpperCase(Locale.ENGLISH) + "/" + counterCurrency.toUpperCase(Locale.ENGLISH);
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Internal types
+    // ------------------------------------------------------------------------------------------------
+
+    /*
+     * A market's fee adjusted orders for a pair, in price order - asks ascending, bids descending.
+     */
+    private static final class ExchangeOrderBookSlice {
+
+        private final List<ConsolidatedMarketOrder> sellOrders;
+        private final List<ConsolidatedMarketOrder> buyOrders;
+
+        ExchangeOrderBookSlice(List<ConsolidatedMarketOrder> sellOrders, List<ConsolidatedMarketOrder> buyOrders) {
+            this.sellOrders = sellOrders;
+            this.buyOrders = buyOrders;
+        }
+    }
+
+    /*
+     * A market's exchange fees and when they were fetched.
+     */
+    private static final class MarketFees {
+
+        private final BigDecimal buyFee;
+        private final BigDecimal sellFee;
+        private final long fetchedTime;
+
+        MarketFees(BigDecimal buyFee, BigDecimal sellFee, long fetchedTime) {
+            this.buyFee = buyFee;
+            this.sellFee = sellFee;
+            this.fetchedTime = fetchedTime;
+        }
+    }
+
+    private static final class ListCursor {
+
+        private final List<ConsolidatedMarketOrder> list;
+        private int position;
+
+        ListCursor(List<ConsolidatedMarketOrder> list) {
+            this.list = list;
+        }
+
+        ConsolidatedMarketOrder current() {
+            return list.get(position);
+        }
+
+        boolean advance() {
+            return ++position < list.size();
+        }
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.metrics;
+
+import com.gazbert.bxbot.domain.metrics.ExchangeCallMetrics;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Holds the call metrics for every Exchange Adapter endpoint, per exchange and market.
+ * <p>
+ * Metrics are recorded by {@link InstrumentedExchangeAdapter}s and can be fetched as domain objects for the REST API,
+ * or in the Prometheus text exposition format for scraping.
+ * <p>
+ * Recording is lock free - it is called on every adapter call from the exchange lane threads.
+ *
+ * @author gazbert
+ */
+@Component
+public class ExchangeMetricsRegistry {
+
+    private static final String METRIC_PREFIX = "bxbot_exchange_call";
+
+    private final ConcurrentMap<MetricKey, CallMetrics> callMetrics = new ConcurrentHashMap<>();
+
+
+    /**
+     * Records an Exchange Adapter call.
+     *
+     * @param exchange         the exchange id.
+     * @param endpoint         the Exchange Adapter method called.
+     * @param market           the market id, or empty if the call is not for a market.
+     * @param latencyInNanos   how long the call took.
+     * @param payloadItems     the number of items in the response, or -1 if not applicable.
+     * @param error            the exception thrown by the call, or null if it succeeded.
+     */
+    public void record(String exchange, String endpoint, String market, long latencyInNanos, int payloadItems,
+                       Throwable error) {
+
+        final CallMetrics metrics = callMetrics.computeIfAbsent(
+                new MetricKey(exchange, endpoint, market == null ? "" : market), key -> new CallMetrics());
+
+        metrics.latency.record(latencyInNanos);
+        if (error != null) {
+            metrics.errorCounts.computeIfAbsent(error.getClass().getSimpleName(), type -> new LongAdder())
+                    .increment();
+        }
+        if (payloadItems >= 0) {
+            metrics.payloadItemsTotal.add(payloadItems);
+            metrics.payloadItemsMax.accumulate(payloadItems);
+        }
+    }
+
+    /**
+     * Records the HTTP traffic for an Exchange Adapter call.
+     *
+     * @param exchange          the exchange id.
+     * @param endpoint          the Exchange Adapter method called.
+     * @param market            the market id, or empty if the call is not for a market.
+     * @param networkRequests   the HTTP requests sent to the exchange.
+     * @param coalescedRequests the HTTP requests that shared an identical request in flight instead of being sent.
+     * @param wireBytes         the response bytes read off the wire, i.e. before decompression.
+     * @param decodedBytes      the response bytes after decompression.
+     */
+    public void recordTransfer(String exchange, String endpoint, String market, long networkRequests,
+                               long coalescedRequests, long wireBytes, long decodedBytes) {
+
+        final CallMetrics metrics = callMetrics.computeIfAbsent(
+                new MetricKey(exchange, endpoint, market == null ? "" : market), key -> new CallMetrics());
+
+        metrics.networkRequestsTotal.add(networkRequests);
+        metrics.coalescedRequestsTotal.add(coalescedRequests);
+        metrics.responseWireBytesTotal.add(wireBytes);
+        metrics.responseDecodedBytesTotal.add(decodedBytes);
+    }
+
+    /**
+     * Records the retries and hedged requests made by an Exchange Adapter call.
+     *
+     * @param exchange       the exchange id.
+     * @param endpoint       the Exchange Adapter method called.
+     * @param market         the market id, or empty if the call is not for a market.
+     * @param retries        the requests retried after a network error.
+     * @param hedgedRequests the duplicate requests sent because the first was slow to respond.
+     */
+    public void recordRetriesAndHedges(String exchange, String endpoint, String market, long retries,
+                                       long hedgedRequests) {
+
+        final CallMetrics metrics = callMetrics.computeIfAbsent(
+                new MetricKey(exchange, endpoint, market == null ? "" : market), key -> new CallMetrics());
+
+        metrics.retriesTotal.add(retries);
+        metrics.hedgedRequestsTotal.add(hedgedRequests);
+    }
+
+    /**
+     * Returns a snapshot of the call metrics, sorted by exchange, endpoint, and market.
+     *
+     * @return the call metrics.
+     */
+    public List<ExchangeCallMetrics> getCallMetrics() {
+
+        final List<ExchangeCallMetrics> snapshot = new ArrayList<>();
+        for (final Map.Entry<MetricKey, CallMetrics> entry : sortedEntries()) {
+
+            final MetricKey key = entry.getKey();
+            final CallMetrics metrics = entry.getValue();
+
+            final ExchangeCallMetrics exchangeCallMetrics =
+                    new ExchangeCallMetrics(key.exchange, key.endpoint, key.market);
+            exchangeCallMetrics.setCallCount(metrics.latency.getCount());
+
+            final Map<String, Long> errorCountsByType = metrics.getErrorCountsByType();
+            exchangeCallMetrics.setErrorCountsByType(errorCountsByType);
+            exchangeCallMetrics.setErrorCount(errorCountsByType.values().stream().mapToLong(Long::longValue).sum());
+
+            exchangeCallMetrics.setMeanLatency(metrics.latency.getMeanInMillis());
+            exchangeCallMetrics.setMaxLatency(metrics.latency.getMaxInMillis());
+            exchangeCallMetrics.setP50Latency(metrics.latency.getPercentileInMillis(50));
+            exchangeCallMetrics.setP90Latency(metrics.latency.getPercentileInMillis(90));
+            exchangeCallMetrics.setP99Latency(metrics.latency.getPercentileInMillis(99));
+            exchangeCallMetrics.setLatencyBuckets(metrics.latency.getCumulativeBuckets());
+
+            exchangeCallMetrics.setPayloadItemsTotal(metrics.payloadItemsTotal.sum());
+            exchangeCallMetrics.setPayloadItemsMax(metrics.payloadItemsMax.get());
+            exchangeCallMetrics.setNetworkRequestCount(metrics.networkRequestsTotal.sum());
+            exchangeCallMetrics.setCoalescedRequestCount(metrics.coalescedRequestsTotal.sum());
+            exchangeCallMetrics.setRetryCount(metrics.retriesTotal.sum());
+            exchangeCallMetrics.setHedgedRequestCount(metrics.hedgedRequestsTotal.sum());
+            exchangeCallMetrics.setResponseWireBytesTotal(metrics.responseWireBytesTotal.sum());
+            exchangeCallMetrics.setResponseDecodedBytesTotal(metrics.responseDecodedBytesTotal.sum());
+            snapshot.add(exchangeCallMetrics);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns the call metrics in the Prometheus text exposition format (version 0.0.4).
+     *
+     * @return the call metrics as Prometheus text.
+     */
+    public String toPrometheusText() {
+
+        final List<Map.Entry<MetricKey, CallMetrics>> entries = sortedEntries();
+        final StringBuilder text = new StringBuilder();
+
+        text.append("# HELP ").append(METRIC_PREFIX).append("_duration_seconds Exchange Adapter call latency.\n");
+        text.append("# TYPE ").append(METRIC_PREFIX).append("_duration_seconds histogram\n");
+        for (final Map.Entry<MetricKey, CallMetrics> entry : entries) {
+            final String labels = entry.getKey().toLabels();
+            final LatencyHistogram latency = entry.getValue().latency;
+            for (final Map.Entry<String, Long> bucket : latency.getCumulativeBuckets().entrySet()) {
+                final String upperBound = LatencyHistogram.INFINITY_BUCKET.equals(bucket.getKey())
+                        ? bucket.getKey()
+                        : formatDouble(Long.parseLong(bucket.getKey()) / 1000d);
+                text.append(METRIC_PREFIX).append("_duration_seconds_bucket{").append(labels)
+                        .append(",le=\"").append(upperBound).append("\"} ").append(bucket.getValue()).append('\n');
+            }
+            text.append(METRIC_PREFIX).append("_duration_seconds_sum{").append(labels).append("} ")
+                    .append(formatDouble(latency.getSumInMillis() / 1000d)).append('\n');
+            text.append(METRIC_PREFIX).append("_duration_seconds_count{").append(labels).append("} ")
+                    .append(latency.getCount()).append('\n');
+        }
+
+        text.append("# HELP ").append(METRIC_PREFIX).append("_errors_total Exchange Adapter call errors by exception type.\n");
+        text.append("# TYPE ").append(METRIC_PREFIX).append("_errors_total counter\n");
+        for (final Map.Entry<MetricKey, CallMetrics> entry : entries) {
+            final String labels = entry.getKey().toLabels();
+            for (final Map.Entry<String, Long> errorCount : entry.getValue().getErrorCountsByType().entrySet()) {
+                text.append(METRIC_PREFIX).append("_errors_total{").append(labels)
+                        .append(",exception=\"").append(escapeLabelValue(errorCount.getKey())).append("\"} ")
+                        .append(errorCount.getValue()).append('\n');
+            }
+        }
+
+        text.append("# HELP ").append(METRIC_PREFIX).append("_payload_items_total Items (orders, balances) returned by Exchange Adapter calls.\n");
+        text.append("# TYPE ").append(METRIC_PREFIX).append("_payload_items_total counter\n");
+        for (final Map.Entry<MetricKey, CallMetrics> entry : entries) {
+            text.append(METRIC_PREFIX).append("_payload_items_total{").append(entry.getKey().toLabels()).append("} ")
+                    .append(entry.getValue().payloadItemsTotal.sum()).append('\n');
+        }
+
+        text.append("# HELP ").append(METRIC_PREFIX).append("_network_requests_total HTTP requests sent to the exchange by Exchange Adapter calls.\n");
+        text.append("# TYPE ").append(METRIC_PREFIX).append("_network_requests_total counter\n");
+        for (final Map.Entry<MetricKey, CallMetrics> entry : entries) {
+            text.append(METRIC_PREFIX).append("_network_requests_total{").append(entry.getKey().toLabels())
+                    .append("} ").append(entry.getValue().networkRequestsTotal.sum()).append('\n');
+        }
+
+        text.append("# HELP ").append(METRIC_PREFIX).append("_coalesced_requests_total HTTP requests that shared an identical request in flight instead of being sent.\n");
+        text.append("# TYPE ").append(METRIC_PREFIX).append("_coalesced_requests_total counter\n");
+        for (final Map.Entry<MetricKey, CallMetrics> entry : entries) {
+            text.append(METRIC_PREFIX).append("_coalesced_requests_total{").append(entry.getKey().toLabels())
+                    .append("} ").append(entry.getValue().coalescedRequestsTotal.sum()).append('\n');
+        }
+
+        text.append("# HELP ").append(METRIC_PREFIX).append("_retries_total HTTP requests retried after a network error.\n");
+        text.append("# TYPE ").append(METRIC_PREFIX).append("_retries_total counter\n");
+        for (final Map.Entry<MetricKey, CallMetrics> entry : entries) {
+            text.append(METRIC_PREFIX).append("_retries_total{").append(entry.getKey().toLabels())
+                    .append("} ").append(entry.getValue().retriesTotal.sum()).append('\n');
+        }
+
+        text.append("# HELP ").append(METRIC_PREFIX).append("_hedged_requests_total Duplicate HTTP requests sent because the first was slow to respond.\n");
+        text.append("# TYPE ").append(METRIC_PREFIX).append("_hedged_requests_total counter\n");
+        for (final Map.Entry<MetricKey, CallMetrics> entry : entries) {
+            text.append(METRIC_PREFIX).append("_hedged_requests_total{").append(entry.getKey().toLabels())
+                    .append("} ").append(entry.getValue().hedgedRequestsTotal.sum()).append('\n');
+        }
+
+        text.append("# HELP ").append(METRIC_PREFIX).append("_response_wire_bytes_total HTTP response bytes read off the wire by Exchange Adapter calls.\n");
+        text.append("# TYPE ").append(METRIC_PREFIX).append("_response_wire_bytes_total counter\n");
+        for (final Map.Entry<MetricKey, CallMetrics> entry : entries) {
+            text.append(METRIC_PREFIX).append("_response_wire_bytes_total{").append(entry.getKey().toLabels())
+                    .append("} ").append(entry.getValue().responseWireBytesTotal.sum()).append('\n');
+        }
+
+        text.append("# HELP ").append(METRIC_PREFIX).append("_response_decoded_bytes_total HTTP response bytes after decompression.\n");
+        text.append("# TYPE ").append(METRIC_PREFIX).append("_response_decoded_bytes_total counter\n");
+        for (final Map.Entry<MetricKey, CallMetrics> entry : entries) {
+            text.append(METRIC_PREFIX).append("_response_decoded_bytes_total{").append(entry.getKey().toLabels())
+                    .append("} ").append(entry.getValue().responseDecodedBytesTotal.sum()).append('\n');
+        }
+        return text.toString();
+    }
+
+    // ------------------------------------------------------------------------
+    // Private utils
+    // ------------------------------------------------------------------------
+
+    private List<Map.Entry<MetricKey, CallMetrics>> sortedEntries() {
+        final List<Map.Entry<MetricKey, CallMetrics>> entries = new ArrayList<>(callMetrics.entrySet());
+        entries.sort(Comparator.comparing((Map.Entry<MetricKey, CallMetrics> entry) -> entry.getKey().exchange)
+                .thenComparing(entry -> entry.getKey().endpoint)
+                .thenComparing(entry -> entry.getKey().market));
+        return entries;
+    }
+
+    private static String formatDouble(double value) {
+        return Double.toString(value);
+    }
+
+    private static String escapeLabelValue(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static final class MetricKey {
+
+        private final String exchange;
+        private final String endpoint;
+        private final String market;
+
+        private MetricKey(String exchange, String endpoint, String market) {
+            this.exchange = exchange;
+            this.endpoint = endpoint;
+            this.market = market;
+        }
+
+        private String toLabels() {
+            return "exchange=\"" + escapeLabelValue(exchange) + "\",endpoint=\"" + escapeLabelValue(endpoint)
+                    + "\",market=\"" + escapeLabelValue(market) + "\"";
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final MetricKey that = (MetricKey) o;
+            return Objects.equals(exchange, that.exchange)
+                    && Objects.equals(endpoint, that.endpoint)
+                    && Objects.equals(market, that.market);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(exchange, endpoint, market);
+        }
+    }
+
+    private static final class CallMetrics {
+
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final ConcurrentMap<String, LongAdder> errorCounts = new ConcurrentHashMap<>();
+        private final LongAdder payloadItemsTotal = new LongAdder();
+        private final LongAccumulator payloadItemsMax = new LongAccumulator(Long::max, 0);
+        private final LongAdder networkRequestsTotal = new LongAdder();
+        private final LongAdder coalescedRequestsTotal = new LongAdder();
+        private final LongAdder retriesTotal = new LongAdder();
+        private final LongAdder hedgedRequestsTotal = new LongAdder();
+        private final LongAdder responseWireBytesTotal = new LongAdder();
+        private final LongAdder responseDecodedBytesTotal = new LongAdder();
+
+        private Map<String, Long> getErrorCountsByType() {
+            final Map<String, Long> errorCountsByType = new TreeMap<>();
+            errorCounts.forEach((type, errorCount) -> errorCountsByType.put(type, errorCount.sum()));
+            return errorCountsByType;
+        }
+    }
+}
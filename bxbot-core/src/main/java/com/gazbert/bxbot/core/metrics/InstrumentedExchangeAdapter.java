@@ -0,0 +1,400 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.metrics;
+
+import com.gazbert.bxbot.core.accounting.PositionLedger;
+import com.gazbert.bxbot.core.breaker.CircuitBreaker;
+import com.gazbert.bxbot.core.breaker.CircuitBreakerRegistry;
+import com.gazbert.bxbot.core.failover.FailoverManager;
+import com.gazbert.bxbot.core.jfr.OrderEvent;
+import com.gazbert.bxbot.core.journal.TradeJournal;
+import com.gazbert.bxbot.core.ratelimit.ExchangeRateLimiter;
+import com.gazbert.bxbot.exchange.api.ExchangeAdapter;
+import com.gazbert.bxbot.exchange.api.ExchangeConfig;
+import com.gazbert.bxbot.exchange.api.jfr.FlightRecorderSupport;
+import com.gazbert.bxbot.exchange.api.trace.TraceSpan;
+import com.gazbert.bxbot.exchange.api.trace.Tracer;
+import com.gazbert.bxbot.exchange.api.transfer.TransferMeter;
+import com.gazbert.bxbot.trading.api.*;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * Wraps an Exchange Adapter and records latency, error, and payload size metrics for every Trading API call in the
+ * {@link ExchangeMetricsRegistry}. Payload size is recorded for the calls that return orders. The HTTP requests sent,
+ * coalesced, retried, and hedged, and the response bytes read off the wire and after decompression, are recorded for
+ * every call that goes to the exchange. Each call is also recorded as a span in the current trace timeline, if there
+ * is one. Orders placed and cancelled are also emitted as JFR events, and journalled in the {@link TradeJournal} along
+ * with the fills spotted when open orders are fetched. The prices and fee rates fetched are passed on to the
+ * {@link PositionLedger}, for marking positions and charging fees.
+ * <p>
+ * If a {@link CircuitBreakerRegistry} is given, each call goes through the {@link CircuitBreaker} for its endpoint on
+ * the exchange: while the breaker is open, the call fails fast with an {@link ExchangeNetworkException} instead of
+ * going to the exchange.
+ * <p>
+ * If an {@link ExchangeRateLimiter} is given, each call takes a token from it before it goes to the exchange: a call
+ * that cannot get one within the limiter's max wait fails with an {@link ExchangeNetworkException} instead.
+ * <p>
+ * If a {@link FailoverManager} is given, an order is only placed while the bot is allowed to trade: a failover primary
+ * that has lost its lease fails the call with an {@link ExchangeNetworkException} instead of placing the order.
+ * <p>
+ * It adds no locking of its own - the 'only 1 thread through the Exchange Adapter at a time' contract is left to the
+ * caller as before.
+ *
+ * @author gazbert
+ */
+public final class InstrumentedExchangeAdapter implements ExchangeAdapter {
+
+    private static final String NO_MARKET = "";
+    private static final int NO_PAYLOAD = -1;
+
+    private final String exchangeId;
+    private final ExchangeAdapter delegate;
+    private final ExchangeMetricsRegistry metricsRegistry;
+    private final TradeJournal tradeJournal;
+    private final PositionLedger positionLedger;
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final FailoverManager failoverManager;
+    private final ExchangeRateLimiter rateLimiter;
+    private final String adapterName;
+
+
+    public InstrumentedExchangeAdapter(String exchangeId, ExchangeAdapter delegate,
+                                       ExchangeMetricsRegistry metricsRegistry) {
+        this(exchangeId, delegate, metricsRegistry, null, null, null);
+    }
+
+    public InstrumentedExchangeAdapter(String exchangeId, ExchangeAdapter delegate,
+                                       ExchangeMetricsRegistry metricsRegistry, TradeJournal tradeJournal,
+                                       PositionLedger positionLedger, CircuitBreakerRegistry circuitBreakerRegistry) {
+        this(exchangeId, delegate, metricsRegistry, tradeJournal, positionLedger, circuitBreakerRegistry, null);
+    }
+
+    public InstrumentedExchangeAdapter(String exchangeId, ExchangeAdapter delegate,
+                                       ExchangeMetricsRegistry metricsRegistry, TradeJournal tradeJournal,
+                                       PositionLedger positionLedger, CircuitBreakerRegistry circuitBreakerRegistry,
+                                       FailoverManager failoverManager) {
+        this(exchangeId, delegate, metricsRegistry, tradeJournal, positionLedger, circuitBreakerRegistry,
+                failoverManager, null);
+    }
+
+    /*
+     * The trade journal, position ledger, circuit breaker registry, failover manager, and rate limiter are optional -
+     * orders are not journalled if the journal is null, prices and fee rates are not passed on if the ledger is null,
+     * calls are not guarded by circuit breakers if the registry is null, orders are not fenced if the failover manager
+     * is null, and calls are not rate limited if the limiter is null.
+     */
+    public InstrumentedExchangeAdapter(String exchangeId, ExchangeAdapter delegate,
+                                       ExchangeMetricsRegistry metricsRegistry, TradeJournal tradeJournal,
+                                       PositionLedger positionLedger, CircuitBreakerRegistry circuitBreakerRegistry,
+                                       FailoverManager failoverManager, ExchangeRateLimiter rateLimiter) {
+        this.exchangeId = exchangeId;
+        this.delegate = delegate;
+        this.metricsRegistry = metricsRegistry;
+        this.tradeJournal = tradeJournal;
+        this.positionLedger = positionLedger;
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.failoverManager = failoverManager;
+        this.rateLimiter = rateLimiter;
+        this.adapterName = delegate.getClass().getSimpleName();
+    }
+
+    /**
+     * Returns the wrapped Exchange Adapter.
+     *
+     * @return the wrapped Exchange Adapter.
+     */
+    public ExchangeAdapter getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void init(ExchangeConfig config) {
+        delegate.init(config);
+    }
+
+    @Override
+    public String getVersion() {
+        return delegate.getVersion();
+    }
+
+    @Override
+    public String getImplName() {
+        return delegate.getImplName();
+    }
+
+    @Override
+    public MarketOrderBook getMarketOrders(String marketId) throws ExchangeNetworkException, TradingApiException {
+        final MarketOrderBook orderBook = timed("getMarketOrders", marketId, () -> delegate.getMarketOrders(marketId),
+                book -> sizeOf(book.getSellOrders()) + sizeOf(book.getBuyOrders()));
+        if (positionLedger != null && orderBook != null) {
+            positionLedger.priceObserved(exchangeId, marketId, midPriceOf(orderBook));
+        }
+        return orderBook;
+    }
+
+    @Override
+    public List<OpenOrder> getYourOpenOrders(String marketId) throws ExchangeNetworkException, TradingApiException {
+        final List<OpenOrder> openOrders =
+                timed("getYourOpenOrders", marketId, () -> delegate.getYourOpenOrders(marketId), List::size);
+        if (tradeJournal != null) {
+            tradeJournal.openOrdersFetched(exchangeId, marketId, openOrders);
+        }
+        return openOrders;
+    }
+
+    @Override
+    public String createOrder(String marketId, OrderType orderType, BigDecimal quantity, BigDecimal price)
+            throws ExchangeNetworkException, TradingApiException {
+
+        if (failoverManager != null && !failoverManager.isTradingAllowed()) {
+            throw new ExchangeNetworkException("Failover primary has lost its lease - not placing order on exchange "
+                    + exchangeId + ", the standby may have taken over.");
+        }
+
+        final OrderEvent orderEvent = beginOrderEvent("createOrder", marketId);
+        if (orderEvent != null) {
+            orderEvent.orderType = orderType == null ? null : orderType.getStringValue();
+            orderEvent.quantity = quantity == null ? Double.NaN : quantity.doubleValue();
+            orderEvent.price = price == null ? Double.NaN : price.doubleValue();
+        }
+        if (tradeJournal != null) {
+            tradeJournal.orderCreated(exchangeId, marketId, orderType, quantity, price);
+        }
+        String orderId = null;
+        try {
+            orderId = timed("createOrder", marketId, () -> delegate.createOrder(marketId, orderType, quantity, price),
+                    null);
+            if (tradeJournal != null && orderId != null) {
+                tradeJournal.orderAcknowledged(exchangeId, marketId, orderId, orderType, quantity, price);
+            }
+            return orderId;
+        } catch (ExchangeNetworkException | TradingApiException | RuntimeException e) {
+            failOrderEvent(orderEvent, e);
+            throw e;
+        } finally {
+            commitOrderEvent(orderEvent, orderId);
+        }
+    }
+
+    @Override
+    public boolean cancelOrder(String orderId, String marketId) throws ExchangeNetworkException, TradingApiException {
+
+        final OrderEvent orderEvent = beginOrderEvent("cancelOrder", marketId);
+        try {
+            final boolean cancelled = timed("cancelOrder", marketId, () -> delegate.cancelOrder(orderId, marketId),
+                    null);
+            if (tradeJournal != null && cancelled) {
+                tradeJournal.orderCancelled(exchangeId, marketId, orderId);
+            }
+            return cancelled;
+        } catch (ExchangeNetworkException | TradingApiException | RuntimeException e) {
+            failOrderEvent(orderEvent, e);
+            throw e;
+        } finally {
+            commitOrderEvent(orderEvent, orderId);
+        }
+    }
+
+    @Override
+    public BigDecimal getLatestMarketPrice(String marketId) throws ExchangeNetworkException, TradingApiException {
+        final BigDecimal latestPrice =
+                timed("getLatestMarketPrice", marketId, () -> delegate.getLatestMarketPrice(marketId), null);
+        if (positionLedger != null) {
+            positionLedger.priceObserved(exchangeId, marketId, latestPrice);
+        }
+        return latestPrice;
+    }
+
+    @Override
+    public BalanceInfo getBalanceInfo() throws ExchangeNetworkException, TradingApiException {
+        return timed("getBalanceInfo", NO_MARKET, delegate::getBalanceInfo, null);
+    }
+
+    @Override
+    public BigDecimal getPercentageOfBuyOrderTakenForExchangeFee(String marketId)
+            throws TradingApiException, ExchangeNetworkException {
+        final BigDecimal feeRate = timed("getPercentageOfBuyOrderTakenForExchangeFee", marketId,
+                () -> delegate.getPercentageOfBuyOrderTakenForExchangeFee(marketId), null);
+        if (positionLedger != null) {
+            positionLedger.feeRateObserved(exchangeId, marketId, OrderType.BUY, feeRate);
+        }
+        return feeRate;
+    }
+
+    @Override
+    public BigDecimal getPercentageOfSellOrderTakenForExchangeFee(String marketId)
+            throws TradingApiException, ExchangeNetworkException {
+        final BigDecimal feeRate = timed("getPercentageOfSellOrderTakenForExchangeFee", marketId,
+                () -> delegate.getPercentageOfSellOrderTakenForExchangeFee(marketId), null);
+        if (positionLedger != null) {
+            positionLedger.feeRateObserved(exchangeId, marketId, OrderType.SELL, feeRate);
+        }
+        return feeRate;
+    }
+
+    // ------------------------------------------------------------------------
+    // Private utils
+    // ------------------------------------------------------------------------
+
+    @FunctionalInterface
+    private interface TradingApiCall<T> {
+        T call() throws ExchangeNetworkException, TradingApiException;
+    }
+
+    private <T> T timed(String endpoint, String marketId, TradingApiCall<T> tradingApiCall,
+                        ToIntFunction<T> payloadItemCounter) throws ExchangeNetworkException, TradingApiException {
+
+        acquireRateLimit(endpoint);
+
+        final CircuitBreaker circuitBreaker = circuitBreakerRegistry == null
+                ? null : circuitBreakerRegistry.getCircuitBreaker(exchangeId, endpoint);
+        if (circuitBreaker != null && !circuitBreaker.tryAcquirePermission(System.currentTimeMillis())) {
+            throw new ExchangeNetworkException("Circuit breaker is open for " + endpoint + " on exchange "
+                    + exchangeId + " - failing fast without calling the exchange.");
+        }
+
+        FlightRecorderSupport.setCurrentMarketId(NO_MARKET.equals(marketId) ? null : marketId);
+        TransferMeter.reset();
+        final long startTime = System.nanoTime();
+        final String spanDetail = NO_MARKET.equals(marketId)
+                ? exchangeId + " " + endpoint : exchangeId + " " + endpoint + " " + marketId;
+        try (TraceSpan apiCallSpan = Tracer.span(Tracer.API_CALL, spanDetail)) {
+            try {
+                final T result = tradingApiCall.call();
+                final long latencyInNanos = System.nanoTime() - startTime;
+                final int payloadItems = payloadItemCounter == null || result == null
+                        ? NO_PAYLOAD : payloadItemCounter.applyAsInt(result);
+                metricsRegistry.record(exchangeId, endpoint, marketId, latencyInNanos, payloadItems, null);
+                recordCall(circuitBreaker, latencyInNanos, false);
+                return result;
+
+            } catch (ExchangeNetworkException | TradingApiException | RuntimeException e) {
+                final long latencyInNanos = System.nanoTime() - startTime;
+                apiCallSpan.failed(e);
+                metricsRegistry.record(exchangeId, endpoint, marketId, latencyInNanos, NO_PAYLOAD, e);
+                recordCall(circuitBreaker, latencyInNanos, e instanceof ExchangeNetworkException);
+                throw e;
+            }
+        } finally {
+            FlightRecorderSupport.setCurrentMarketId(null);
+            recordTransfer(endpoint, marketId);
+        }
+    }
+
+    private void acquireRateLimit(String endpoint) throws ExchangeNetworkException {
+        if (rateLimiter == null) {
+            return;
+        }
+        try {
+            if (!rateLimiter.tryAcquire()) {
+                throw new ExchangeNetworkException("Rate limit of " + rateLimiter.getCallsPerSecond() + " calls per "
+                        + "second reached for " + endpoint + " on exchange " + exchangeId
+                        + " - not calling the exchange.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExchangeNetworkException("Interrupted waiting on rate limit for " + endpoint + " on exchange "
+                    + exchangeId, e);
+        }
+    }
+
+    /*
+     * Only network errors count against the breaker - a TradingApiException means the exchange answered.
+     */
+    private static void recordCall(CircuitBreaker circuitBreaker, long latencyInNanos, boolean networkFailure) {
+        if (circuitBreaker != null) {
+            circuitBreaker.recordCall(latencyInNanos, networkFailure, System.currentTimeMillis());
+        }
+    }
+
+    /*
+     * Nothing is recorded if the call did not go to the exchange, e.g. it was replayed.
+     */
+    private void recordTransfer(String endpoint, String marketId) {
+        final long networkRequests = TransferMeter.getNetworkRequests();
+        final long coalescedRequests = TransferMeter.getCoalescedRequests();
+        if (networkRequests > 0 || coalescedRequests > 0) {
+            metricsRegistry.recordTransfer(exchangeId, endpoint, marketId, networkRequests, coalescedRequests,
+                    TransferMeter.getWireBytes(), TransferMeter.getDecodedBytes());
+        }
+        final long retries = TransferMeter.getRetries();
+        final long hedgedRequests = TransferMeter.getHedgedRequests();
+        if (retries > 0 || hedgedRequests > 0) {
+            metricsRegistry.recordRetriesAndHedges(exchangeId, endpoint, marketId, retries, hedgedRequests);
+        }
+    }
+
+    /*
+     * Returns null if the JVM does not support JFR events, or the event is not enabled in the current recording.
+     */
+    private OrderEvent beginOrderEvent(String operation, String marketId) {
+        if (!FlightRecorderSupport.isAvailable()) {
+            return null;
+        }
+        final OrderEvent orderEvent = new OrderEvent();
+        if (!orderEvent.isEnabled()) {
+            return null;
+        }
+        orderEvent.begin();
+        orderEvent.operation = operation;
+        orderEvent.exchange = exchangeId;
+        orderEvent.adapter = adapterName;
+        orderEvent.marketId = marketId;
+        return orderEvent;
+    }
+
+    private static void failOrderEvent(OrderEvent orderEvent, Exception cause) {
+        if (orderEvent != null) {
+            orderEvent.error = cause.getClass().getSimpleName();
+        }
+    }
+
+    private static void commitOrderEvent(OrderEvent orderEvent, String orderId) {
+        if (orderEvent != null) {
+            orderEvent.orderId = orderId;
+            orderEvent.commit();
+        }
+    }
+
+    /*
+     * Returns null unless the book has both bids and asks. The adapters return the best bid and ask first.
+     */
+    private static BigDecimal midPriceOf(MarketOrderBook orderBook) {
+        final List<MarketOrder> bids = orderBook.getBuyOrders();
+        final List<MarketOrder> asks = orderBook.getSellOrders();
+        if (bids == null || bids.isEmpty() || asks == null || asks.isEmpty()
+                || bids.get(0).getPrice() == null || asks.get(0).getPrice() == null) {
+            return null;
+        }
+        return bids.get(0).getPrice().add(asks.get(0).getPrice()).divide(BigDecimal.valueOf(2));
+    }
+
+    private static int sizeOf(Collection<?> collection) {
+        return collection == null ? 0 : collection.size();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed bucket latency histogram. Lock free - safe to record from any number of threads.
+ * <p>
+ * Bucket bounds are chosen for exchange API round trips: from 1ms up to 10s.
+ *
+ * @author gazbert
+ */
+final class LatencyHistogram {
+
+    /*
+     * Upper bounds of the buckets in millis. Anything slower goes in the overflow (+Inf) bucket.
+     */
+    static final long[] BUCKET_BOUNDS_IN_MILLIS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    static final String INFINITY_BUCKET = "+Inf";
+
+    private final AtomicLongArray bucketCounts = new AtomicLongArray(BUCKET_BOUNDS_IN_MILLIS.length + 1);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumInNanos = new LongAdder();
+    private final LongAccumulator maxInNanos = new LongAccumulator(Long::max, 0);
+
+
+    void record(long latencyInNanos) {
+        bucketCounts.incrementAndGet(bucketIndex(latencyInNanos));
+        count.increment();
+        sumInNanos.add(latencyInNanos);
+        maxInNanos.accumulate(latencyInNanos);
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    double getSumInMillis() {
+        return sumInNanos.sum() / 1_000_000d;
+    }
+
+    double getMeanInMillis() {
+        final long calls = count.sum();
+        return calls == 0 ? 0 : getSumInMillis() / calls;
+    }
+
+    double getMaxInMillis() {
+        return maxInNanos.get() / 1_000_000d;
+    }
+
+    /*
+     * Estimates the given percentile (0-100) as the upper bound of the bucket it falls in, capped at the max latency.
+     */
+    double getPercentileInMillis(double percentile) {
+
+        final long[] counts = snapshotBucketCounts();
+        long total = 0;
+        for (final long bucketCount : counts) {
+            total += bucketCount;
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        final long rank = (long) Math.ceil(percentile / 100 * total);
+        long cumulative = 0;
+        for (int i = 0; i < BUCKET_BOUNDS_IN_MILLIS.length; i++) {
+            cumulative += counts[i];
+            if (cumulative >= rank) {
+                return Math.min(BUCKET_BOUNDS_IN_MILLIS[i], getMaxInMillis());
+            }
+        }
+        return getMaxInMillis();
+    }
+
+    /*
+     * Returns the cumulative bucket counts keyed on upper bound in millis, ending with the +Inf bucket.
+     */
+    Map<String, Long> getCumulativeBuckets() {
+
+        final long[] counts = snapshotBucketCounts();
+        final Map<String, Long> buckets = new LinkedHashMap<>();
+        long cumulative = 0;
+        for (int i = 0; i < BUCKET_BOUNDS_IN_MILLIS.length; i++) {
+            cumulative += counts[i];
+            buckets.put(String.valueOf(BUCKET_BOUNDS_IN_MILLIS[i]), cumulative);
+        }
+        cumulative += counts[BUCKET_BOUNDS_IN_MILLIS.length];
+        buckets.put(INFINITY_BUCKET, cumulative);
+        return buckets;
+    }
+
+    private long[] snapshotBucketCounts() {
+        final long[] counts = new long[bucketCounts.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = bucketCounts.get(i);
+        }
+        return counts;
+    }
+
+    private static int bucketIndex(long latencyInNanos) {
+        for (int i = 0; i < BUCKET_BOUNDS_IN_MILLIS.length; i++) {
+            if (latencyInNanos <= BUCKET_BOUNDS_IN_MILLIS[i] * 1_000_000L) {
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS_IN_MILLIS.length;
+    }
+}
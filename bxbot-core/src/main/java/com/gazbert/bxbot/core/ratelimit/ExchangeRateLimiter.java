@@ -0,0 +1,138 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gazbert.bxbot.core.ratelimit;
+
+import com.gazbert.bxbot.exchange.api.resilience.CallBudget;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * The rate limiter for an exchange API key.
+ * </p>
+ * <p>
+ * A token bucket: it fills at the allowed calls per second, up to 1 second's worth of calls, and each call to the
+ * exchange takes a token. A call that finds the bucket empty waits for the next token, as long as it can get one within
+ * the max wait - or what is left of the trade cycle, if that is less. Otherwise it is rejected without waiting. Tokens are reserved in the order the calls arrive,
+ * so the waiting calls are spread out at the allowed rate rather than all let through at once.
+ * </p>
+ * <p>
+ * Thread safe - the limiter is shared by every Exchange Adapter instance that signs with the API key: the exchange
+ * lane's, the Emergency Stop watchdog's, the consolidated order book's, and the order router's, each calling on its
+ * own thread.
+ * </p>
+ *
+ * @author gazbert
+ */
+public final class ExchangeRateLimiter {
+
+    private final String exchange;
+    private final double callsPerSecond;
+    private final double capacity;
+    private final long maxWaitMillis;
+
+    /*
+     * Guarded by this. Goes negative while calls are waiting on tokens they have reserved.
+     */
+    private double tokens;
+    private long lastRefillNanos;
+    private long throttledCallCount;
+    private long rejectedCallCount;
+
+
+    ExchangeRateLimiter(String exchange, double callsPerSecond, long maxWaitMillis, long nowNanos) {
+        this.exchange = exchange;
+        this.callsPerSecond = callsPerSecond;
+        this.capacity = Math.max(1, callsPerSecond);
+        this.maxWaitMillis = maxWaitMillis;
+        this.tokens = capacity;
+        this.lastRefillNanos = nowNanos;
+    }
+
+    /**
+     * Takes a token for a call to the exchange, waiting for one if need be.
+     *
+     * @return true if the call can go ahead, false if no token could be had within the wait.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public boolean tryAcquire() throws InterruptedException {
+        final long waitMillis = Math.min(maxWaitMillis, CallBudget.getRemainingMillis());
+        final long waitNanos = reserve(System.nanoTime(), TimeUnit.MILLISECONDS.toNanos(waitMillis));
+        if (waitNanos < 0) {
+            return false;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+        return true;
+    }
+
+    /*
+     * Reserves a token, returning how long the caller must wait for it, or -1 if it would have to wait longer than
+     * allowed - nothing is reserved then.
+     */
+    synchronized long reserve(long nowNanos, long maxWaitNanos) {
+
+        tokens = Math.min(capacity, tokens + (nowNanos - lastRefillNanos) * callsPerSecond / TimeUnit.SECONDS.toNanos(1));
+        lastRefillNanos = nowNanos;
+        if (tokens >= 1) {
+            tokens--;
+            return 0;
+        }
+
+        final long waitNanos = (long) Math.ceil((1 - tokens) * TimeUnit.SECONDS.toNanos(1) / callsPerSecond);
+        if (waitNanos > maxWaitNanos) {
+            rejectedCallCount++;
+            return -1;
+        }
+        tokens--;
+        throttledCallCount++;
+        return waitNanos;
+    }
+
+    public String getExchange() {
+        return exchange;
+    }
+
+    public double getCallsPerSecond() {
+        return callsPerSecond;
+    }
+
+    /**
+     * Returns the number of calls that had to wait for a token.
+     *
+     * @return the throttled call count.
+     */
+    public synchronized long getThrottledCallCount() {
+        return throttledCallCount;
+    }
+
+    /**
+     * Returns the number of calls rejected because no token could be had within their wait.
+     *
+     * @return the rejected call count.
+     */
+    public synchronized long getRejectedCallCount() {
+        return rejectedCallCount;
+    }
+}
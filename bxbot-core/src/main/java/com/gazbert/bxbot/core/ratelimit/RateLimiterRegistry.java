@@ -0,0 +1,143 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gazbert.bxbot.core.ratelimit;
+
+import com.google.common.hash.Hashing;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>
+ * Holds the {@link ExchangeRateLimiter} for every exchange API key. The limiters are created on first use and are
+ * shared by every Exchange Adapter instance that signs with the key - across the exchange lane, Emergency Stop
+ * watchdog, consolidated order book service, and order router of every bot in the JVM - as the exchanges count the
+ * calls per key, not per instance. Calls made without an API key share a limiter per Exchange Adapter.
+ * </p>
+ * <p>
+ * Every exchange gets the calls per second from the application config, unless it has its own limit set with
+ * <code>bxbot.rate-limit.exchange.&lt;exchange id&gt;.calls-per-second</code>. The limiters are applied by the
+ * {@link com.gazbert.bxbot.core.metrics.InstrumentedExchangeAdapter}s.
+ * </p>
+ *
+ * @author gazbert
+ */
+@Component
+public class RateLimiterRegistry {
+
+    private static final Logger LOG = LogManager.getLogger();
+    private static final String EXCHANGE_CALLS_PER_SECOND_PROPERTY = "bxbot.rate-limit.exchange.%s.calls-per-second";
+
+    private final boolean enabled;
+    private final double callsPerSecond;
+    private final long maxWaitMillis;
+    private final Environment environment;
+
+    /*
+     * Keyed on Exchange Adapter and a hash of the API credentials.
+     */
+    private final ConcurrentMap<String, ExchangeRateLimiter> rateLimiters = new ConcurrentHashMap<>();
+
+
+    /*
+     * The environment is optional - if it is null, every exchange gets the default calls per second.
+     */
+    @Autowired
+    public RateLimiterRegistry(@Value("${bxbot.rate-limit.enabled:true}") boolean enabled,
+                               @Value("${bxbot.rate-limit.calls-per-second:10}") double callsPerSecond,
+                               @Value("${bxbot.rate-limit.max-wait-millis:5000}") long maxWaitMillis,
+                               Environment environment) {
+
+        this.enabled = enabled;
+        this.callsPerSecond = callsPerSecond;
+        this.maxWaitMillis = maxWaitMillis;
+        this.environment = environment;
+
+        if (enabled && (callsPerSecond <= 0 || maxWaitMillis < 0)) {
+            final String errorMsg = "Invalid rate limit config - calls per second must be above 0, and max wait millis "
+                    + "at least 0. Found: calls per second: " + callsPerSecond + " max wait millis: " + maxWaitMillis;
+            LOG.fatal(errorMsg);
+            throw new IllegalArgumentException(errorMsg);
+        }
+        LOG.info(() -> "Exchange rate limits enabled: " + enabled + (enabled ? " - calls per second: "
+                + callsPerSecond + " max wait millis: " + maxWaitMillis : ""));
+    }
+
+    /**
+     * Returns the rate limiter for an exchange API key, creating it if need be.
+     *
+     * @param exchange            the exchange id.
+     * @param exchangeAdapterName the Exchange Adapter class name.
+     * @param authenticationItems the Exchange Adapter's authentication config items - may be null.
+     * @return the limiter, or null if rate limits are disabled.
+     */
+    public ExchangeRateLimiter getRateLimiter(String exchange, String exchangeAdapterName,
+                                              Map<String, String> authenticationItems) {
+        if (!enabled) {
+            return null;
+        }
+        return rateLimiters.computeIfAbsent(toCredentialKey(exchangeAdapterName, authenticationItems), key -> {
+            final double exchangeCallsPerSecond = getCallsPerSecond(exchange);
+            LOG.info(() -> "Rate limiting calls to exchange " + exchange + " to " + exchangeCallsPerSecond
+                    + " per second");
+            return new ExchangeRateLimiter(exchange, exchangeCallsPerSecond, maxWaitMillis, System.nanoTime());
+        });
+    }
+
+    private double getCallsPerSecond(String exchange) {
+        if (environment == null) {
+            return callsPerSecond;
+        }
+        final Double exchangeCallsPerSecond = environment.getProperty(
+                String.format(EXCHANGE_CALLS_PER_SECOND_PROPERTY, exchange), Double.class);
+        if (exchangeCallsPerSecond == null) {
+            return callsPerSecond;
+        }
+        if (exchangeCallsPerSecond <= 0) {
+            final String errorMsg = "Invalid rate limit config for exchange " + exchange + " - calls per second "
+                    + "must be above 0. Found: " + exchangeCallsPerSecond;
+            LOG.fatal(errorMsg);
+            throw new IllegalArgumentException(errorMsg);
+        }
+        return exchangeCallsPerSecond;
+    }
+
+    /*
+     * The credentials are hashed so the registry does not hold on to them.
+     */
+    private static String toCredentialKey(String exchangeAdapterName, Map<String, String> authenticationItems) {
+        final String credentials = new TreeMap<>(authenticationItems == null
+                ? Collections.emptyMap() : authenticationItems).toString();
+        return exchangeAdapterName + "/" + Hashing.sha256().hashString(credentials, StandardCharsets.UTF_8);
+    }
+}
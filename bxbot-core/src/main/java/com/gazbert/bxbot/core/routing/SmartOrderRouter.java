@@ -0,0 +1,741 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.routing;
+
+import com.gazbert.bxbot.exchange.api.ExchangeAdapter;
+import com.gazbert.bxbot.trading.api.BalanceInfo;
+import com.gazbert.bxbot.trading.api.ConsolidatedMarketOrder;
+import com.gazbert.bxbot.trading.api.ConsolidatedOrderBook;
+import com.gazbert.bxbot.trading.api.ConsolidatedOrderBookProvider;
+import com.gazbert.bxbot.trading.api.ExchangeNetworkException;
+import com.gazbert.bxbot.trading.api.Market;
+import com.gazbert.bxbot.trading.api.MarketOrderBook;
+import com.gazbert.bxbot.trading.api.OpenOrder;
+import com.gazbert.bxbot.trading.api.OrderType;
+import com.gazbert.bxbot.trading.api.TradingApi;
+import com.gazbert.bxbot.trading.api.TradingApiException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * A {@link TradingApi} that routes orders across all the exchanges a currency pair is traded on.
+ * </p>
+ * <p>
+ * {@link #createOrder(String, OrderType, BigDecimal, BigDecimal)} picks the venue with the best effective price once the
+ * exchange fee is applied, penalised by the venue's measured round-trip latency, and limited by the balance available on
+ * the venue. If the best venue's book cannot fill the whole order within the limit price, the order is split across the
+ * next best venues. Any quantity the books cannot fill is left as a resting limit order on the best venue that can fund it.
+ * </p>
+ * <p>
+ * The returned order id is a composite of the venue order ids, e.g. <code>bitstamp:1234,gdax:abc-567</code>. Pass it
+ * back to {@link #cancelOrder(String, String)} to cancel every part. {@link #getYourOpenOrders(String)} puts the open
+ * parts of a split order back together as 1 open order with the same composite id, so a strategy can look its order up
+ * there; other open orders get a single part id, e.g. <code>bitstamp:1234</code>.
+ * </p>
+ * <p>
+ * The router owns its own Exchange Adapter instances. It may be called from more than 1 exchange lane, so calls to each
+ * venue's adapter are serialised. Venue fees and balances are fetched at most once per trade cycle - see
+ * {@link #startTradeCycle()} - and a venue's balances are fetched again after an order is placed or cancelled on it.
+ * </p>
+ * <p>
+ * If placing a part of an order fails with an {@link ExchangeNetworkException}, the part may still have reached the
+ * exchange. The router looks for it in the venue's open orders and cancels it, along with the parts already placed,
+ * before re-throwing the exception.
+ * </p>
+ *
+ * @author gazbert
+ */
+public class SmartOrderRouter implements TradingApi {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    private static final String IMPL_NAME = "Smart Order Router";
+    private static final String VENUE_ORDER_ID_SEPARATOR = ":";
+    private static final String ORDER_PART_SEPARATOR = ",";
+
+    /*
+     * Weight for the latest latency sample in the moving average.
+     */
+    private static final double LATENCY_SMOOTHING_FACTOR = 0.2;
+
+    private static final int BALANCE_SCALE = 8;
+
+    /**
+     * Default latency penalty: 1 basis point of price per 100ms of round-trip latency.
+     */
+    public static final BigDecimal DEFAULT_LATENCY_PENALTY_PER_100_MILLIS = new BigDecimal("0.0001");
+
+    /*
+     * Venue adapters keyed on exchange id.
+     */
+    private final Map<String, ExchangeAdapter> exchangeAdapters;
+
+    private final ConsolidatedOrderBookProvider consolidatedOrderBookProvider;
+
+    /*
+     * How much an extra 100ms of round-trip latency costs a venue, as a fraction of price, e.g. 0.0001 is 1 basis point.
+     */
+    private final BigDecimal latencyPenaltyPer100Millis;
+
+    /*
+     * The venues for each pair: pair -> exchange id -> the exchange's market for the pair.
+     */
+    private final Map<String, Map<String, Market>> venuesByPair = new ConcurrentHashMap<>();
+
+    /*
+     * Market id (as the strategy knows it) -> pair.
+     */
+    private final Map<String, String> pairsByMarketId = new ConcurrentHashMap<>();
+
+    /*
+     * The orders that were split across venues, keyed on the composite order id returned by createOrder. An order is
+     * dropped once none of its parts are open any more, or it is cancelled.
+     */
+    private final Map<String, RoutedOrder> splitOrders = new ConcurrentHashMap<>();
+
+    /*
+     * Smoothed round-trip latency in millis for each venue.
+     */
+    private final Map<String, Double> venueLatencies = new ConcurrentHashMap<>();
+
+    /*
+     * Venue fees fetched this trade cycle, keyed on exchange id, venue market id, and order type.
+     */
+    private final Map<String, BigDecimal> venueFees = new ConcurrentHashMap<>();
+
+    /*
+     * Venue balances fetched this trade cycle, keyed on exchange id.
+     */
+    private final Map<String, BalanceInfo> venueBalances = new ConcurrentHashMap<>();
+
+
+    public SmartOrderRouter(Map<String, ExchangeAdapter> exchangeAdapters,
+                            ConsolidatedOrderBookProvider consolidatedOrderBookProvider,
+                            BigDecimal latencyPenaltyPer100Millis) {
+        this.exchangeAdapters = exchangeAdapters;
+        this.consolidatedOrderBookProvider = consolidatedOrderBookProvider;
+        this.latencyPenaltyPer100Millis = latencyPenaltyPer100Millis;
+    }
+
+    /*
+     * Registers a market on an exchange as a venue for its currency pair. Can be called while orders are being routed.
+     */
+    public void trackMarket(String exchangeId, Market market) {
+
+        if (!exchangeAdapters.containsKey(exchangeId)) {
+            final String errorMsg = "Cannot route Market " + market + " - no Exchange Adapter for exchange: " + exchangeId;
+            LOG.error(errorMsg);
+            throw new IllegalArgumentException(errorMsg);
+        }
+
+        final String pairKey = toPairKey(market);
+        venuesByPair.computeIfAbsent(pairKey, key -> Collections.synchronizedMap(new LinkedHashMap<>()))
+                .put(exchangeId, market);
+        pairsByMarketId.putIfAbsent(market.getId(), pairKey);
+        LOG.info(() -> "Smart Order Router will route " + pairKey + " orders to exchange " + exchangeId
+                + " market " + market.getId());
+    }
+
+    /*
+     * Stops routing orders for the market to the exchange.
+     */
+    public void untrackMarket(String exchangeId, Market market) {
+
+        final String pairKey = toPairKey(market);
+        final Map<String, Market> venues = venuesByPair.get(pairKey);
+        if (venues == null) {
+            return;
+        }
+        synchronized (venues) {
+            if (!venues.remove(exchangeId, market)) {
+                return;
+            }
+            // Forget the market id unless another venue for the pair still goes by it
+            if (venues.values().stream().noneMatch(venue -> venue.getId().equals(market.getId()))) {
+                pairsByMarketId.remove(market.getId(), pairKey);
+            }
+        }
+        LOG.info(() -> "Smart Order Router stopped routing " + pairKey + " orders to exchange " + exchangeId
+                + " market " + market.getId());
+    }
+
+    /*
+     * Drops the venue fees and balances fetched in the last trade cycle. Called by the Trading Engine at the start of
+     * each trade cycle.
+     */
+    public void startTradeCycle() {
+        venueFees.clear();
+        venueBalances.clear();
+    }
+
+    /*
+     * Returns the smoothed round-trip latency for a venue in millis, or null if it has not been measured yet.
+     */
+    public Double getVenueLatency(String exchangeId) {
+        return venueLatencies.get(exchangeId);
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Trading API
+    // ------------------------------------------------------------------------------------------------
+
+    @Override
+    public String getImplName() {
+        return IMPL_NAME;
+    }
+
+    /*
+     * Returns the book from the first venue registered for the pair - use the ConsolidatedOrderBookProvider for the
+     * book across all venues.
+     */
+    @Override
+    public MarketOrderBook getMarketOrders(String marketId) throws ExchangeNetworkException, TradingApiException {
+        final Map.Entry<String, Market> venue = getPrimaryVenue(marketId);
+        final ExchangeAdapter exchangeAdapter = exchangeAdapters.get(venue.getKey());
+        synchronized (exchangeAdapter) {
+            return exchangeAdapter.getMarketOrders(venue.getValue().getId());
+        }
+    }
+
+    @Override
+    public List<OpenOrder> getYourOpenOrders(String marketId) throws ExchangeNetworkException, TradingApiException {
+
+        final Map<String, OpenOrder> venueOpenOrders = new LinkedHashMap<>();
+        for (final Map.Entry<String, Market> venue : getVenues(marketId).entrySet()) {
+
+            final ExchangeAdapter exchangeAdapter = exchangeAdapters.get(venue.getKey());
+            final List<OpenOrder> openOrdersOnVenue;
+            synchronized (exchangeAdapter) {
+                openOrdersOnVenue = exchangeAdapter.getYourOpenOrders(venue.getValue().getId());
+            }
+            // Copied rather than re-labelled in place - the adapter may hand out the same objects again
+            for (final OpenOrder venueOpenOrder : openOrdersOnVenue) {
+                final String orderId = venue.getKey() + VENUE_ORDER_ID_SEPARATOR + venueOpenOrder.getId();
+                venueOpenOrders.put(orderId, new OpenOrder(orderId, venueOpenOrder.getCreationDate(),
+                        venueOpenOrder.getMarketId(), venueOpenOrder.getType(), venueOpenOrder.getPrice(),
+                        venueOpenOrder.getQuantity(), venueOpenOrder.getOriginalQuantity(),
+                        venueOpenOrder.getTotal()));
+            }
+        }
+
+        // Put the open parts of each split order back together under the id createOrder returned for it
+        final List<OpenOrder> openOrders = new ArrayList<>();
+        for (final Map.Entry<String, RoutedOrder> splitOrder : splitOrders.entrySet()) {
+
+            final RoutedOrder routedOrder = splitOrder.getValue();
+            if (!routedOrder.marketId.equals(marketId)) {
+                continue;
+            }
+
+            final List<OpenOrder> openParts = new ArrayList<>();
+            for (final String orderPart : routedOrder.orderParts) {
+                final OpenOrder openPart = venueOpenOrders.remove(orderPart);
+                if (openPart != null) {
+                    openParts.add(openPart);
+                }
+            }
+            if (openParts.isEmpty()) {
+                splitOrders.remove(splitOrder.getKey()); // every part has been filled or cancelled
+            } else {
+                openOrders.add(mergeOpenParts(splitOrder.getKey(), routedOrder, openParts));
+            }
+        }
+        openOrders.addAll(venueOpenOrders.values());
+        return openOrders;
+    }
+
+    @Override
+    public String createOrder(String marketId, OrderType orderType, BigDecimal quantity, BigDecimal price)
+            throws ExchangeNetworkException, TradingApiException {
+
+        final Map<String, Market> venues = getVenues(marketId);
+        final Map<String, VenueQuote> quotes = fetchVenueQuotes(venues, orderType, price);
+        final Map<String, BigDecimal> allocations = allocate(marketId, orderType, quantity, price, quotes);
+
+        LOG.info(() -> "Smart Order Router allocation for " + orderType + " " + quantity + " @ " + price + " on "
+                + marketId + ": " + allocations);
+
+        final List<String> placedOrderIds = new ArrayList<>();
+        try {
+            for (final Map.Entry<String, BigDecimal> allocation : allocations.entrySet()) {
+                final String exchangeId = allocation.getKey();
+                final ExchangeAdapter exchangeAdapter = exchangeAdapters.get(exchangeId);
+                final String venueOrderId;
+                try {
+                    synchronized (exchangeAdapter) {
+                        final long startTime = System.nanoTime();
+                        venueOrderId = exchangeAdapter.createOrder(venues.get(exchangeId).getId(), orderType,
+                                allocation.getValue(), price);
+                        recordLatency(exchangeId, startTime);
+                    }
+                } finally {
+                    venueBalances.remove(exchangeId);
+                }
+                placedOrderIds.add(exchangeId + VENUE_ORDER_ID_SEPARATOR + venueOrderId);
+            }
+        } catch (ExchangeNetworkException e) {
+            LOG.error("Failed to place all parts of routed order - cancelling parts already placed: " + placedOrderIds
+                    + " and looking for the failed part on the exchange", e);
+            cancelPlacedOrders(placedOrderIds, venues);
+            cancelOrphanedPart(allocations, placedOrderIds.size(), venues, orderType, price, placedOrderIds);
+            throw e;
+        } catch (TradingApiException e) {
+            LOG.error("Failed to place all parts of routed order - cancelling parts already placed: " + placedOrderIds, e);
+            cancelPlacedOrders(placedOrderIds, venues);
+            throw e;
+        }
+
+        final String orderId = String.join(ORDER_PART_SEPARATOR, placedOrderIds);
+        if (placedOrderIds.size() > 1) {
+            splitOrders.put(orderId, new RoutedOrder(marketId, placedOrderIds, quantity));
+        }
+        return orderId;
+    }
+
+    @Override
+    public boolean cancelOrder(String orderId, String marketId) throws ExchangeNetworkException, TradingApiException {
+
+        final Map<String, Market> venues = getVenues(marketId);
+        boolean allCancelled = true;
+        for (final String orderPart : orderId.split(ORDER_PART_SEPARATOR)) {
+
+            final int separatorIndex = orderPart.indexOf(VENUE_ORDER_ID_SEPARATOR);
+            final String exchangeId = separatorIndex > 0 ? orderPart.substring(0, separatorIndex) : null;
+            if (exchangeId == null || !venues.containsKey(exchangeId)) {
+                final String errorMsg = "Cannot cancel order - [" + orderPart + "] is not a routed order id for market "
+                        + marketId;
+                LOG.error(errorMsg);
+                throw new TradingApiException(errorMsg);
+            }
+
+            final ExchangeAdapter exchangeAdapter = exchangeAdapters.get(exchangeId);
+            try {
+                synchronized (exchangeAdapter) {
+                    allCancelled &= exchangeAdapter.cancelOrder(orderPart.substring(separatorIndex + 1),
+                            venues.get(exchangeId).getId());
+                }
+            } finally {
+                venueBalances.remove(exchangeId);
+            }
+        }
+        splitOrders.remove(orderId);
+        return allCancelled;
+    }
+
+    @Override
+    public BigDecimal getLatestMarketPrice(String marketId) throws ExchangeNetworkException, TradingApiException {
+        final Map.Entry<String, Market> venue = getPrimaryVenue(marketId);
+        final ExchangeAdapter exchangeAdapter = exchangeAdapters.get(venue.getKey());
+        synchronized (exchangeAdapter) {
+            return exchangeAdapter.getLatestMarketPrice(venue.getValue().getId());
+        }
+    }
+
+    /*
+     * Returns the balances summed across all venues.
+     */
+    @Override
+    public BalanceInfo getBalanceInfo() throws ExchangeNetworkException, TradingApiException {
+
+        final Map<String, BigDecimal> balancesAvailable = new HashMap<>();
+        final Map<String, BigDecimal> balancesOnHold = new HashMap<>();
+        for (final Map.Entry<String, ExchangeAdapter> venue : exchangeAdapters.entrySet()) {
+            final BalanceInfo balanceInfo = getVenueBalanceInfo(venue.getKey());
+            balanceInfo.getBalancesAvailable().forEach((currency, balance) ->
+                    balancesAvailable.merge(currency, balance, BigDecimal::add));
+            balanceInfo.getBalancesOnHold().forEach((currency, balance) ->
+                    balancesOnHold.merge(currency, balance, BigDecimal::add));
+        }
+        return new BalanceInfo(balancesAvailable, balancesOnHold);
+    }
+
+    @Override
+    public BigDecimal getPercentageOfBuyOrderTakenForExchangeFee(String marketId)
+            throws TradingApiException, ExchangeNetworkException {
+        final Map.Entry<String, Market> venue = getPrimaryVenue(marketId);
+        return getVenueFee(venue.getKey(), venue.getValue(), OrderType.BUY);
+    }
+
+    @Override
+    public BigDecimal getPercentageOfSellOrderTakenForExchangeFee(String marketId)
+            throws TradingApiException, ExchangeNetworkException {
+        final Map.Entry<String, Market> venue = getPrimaryVenue(marketId);
+        return getVenueFee(venue.getKey(), venue.getValue(), OrderType.SELL);
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Routing
+    // ------------------------------------------------------------------------------------------------
+
+    /*
+     * Fetches the fee and fundable quantity for each venue.
+     */
+    private Map<String, VenueQuote> fetchVenueQuotes(Map<String, Market> venues, OrderType orderType, BigDecimal price)
+            throws ExchangeNetworkException, TradingApiException {
+
+        final Map<String, VenueQuote> quotes = new LinkedHashMap<>();
+        for (final Map.Entry<String, Market> venue : venues.entrySet()) {
+
+            final String exchangeId = venue.getKey();
+            final Market market = venue.getValue();
+
+            final BigDecimal venueFee = getVenueFee(exchangeId, market, orderType);
+            final BigDecimal fee = venueFee == null ? BigDecimal.ZERO : venueFee;
+
+            // BUY orders are funded in the counter currency, SELL orders in the base currency
+            final Map<String, BigDecimal> balances = getVenueBalanceInfo(exchangeId).getBalancesAvailable();
+            final BigDecimal fundableQuantity;
+            if (orderType == OrderType.BUY) {
+                final BigDecimal counterBalance = balances.getOrDefault(market.getCounterCurrency(), BigDecimal.ZERO);
+                final BigDecimal costPerUnit = price.multiply(BigDecimal.ONE.add(fee));
+                fundableQuantity = costPerUnit.signum() > 0
+                        ? counterBalance.divide(costPerUnit, BALANCE_SCALE, RoundingMode.DOWN) : BigDecimal.ZERO;
+            } else {
+                fundableQuantity = balances.getOrDefault(market.getBaseCurrency(), BigDecimal.ZERO);
+            }
+
+            quotes.put(exchangeId, new VenueQuote(fee, fundableQuantity));
+        }
+        return quotes;
+    }
+
+    /*
+     * Splits the order quantity across the venues. Walks the consolidated book levels that are within the limit price
+     * in order of latency penalised effective price, filling from each venue until its balance runs out. Anything left
+     * rests on the best venue that can still fund it.
+     */
+    private Map<String, BigDecimal> allocate(String marketId, OrderType orderType, BigDecimal quantity,
+                                             BigDecimal price, Map<String, VenueQuote> quotes)
+            throws TradingApiException {
+
+        final boolean isBuy = orderType == OrderType.BUY;
+        final Map<String, BigDecimal> allocations = new LinkedHashMap<>();
+        BigDecimal remaining = quantity;
+
+        final List<RankedLevel> levels = new ArrayList<>();
+        final ConsolidatedOrderBook book = consolidatedOrderBookProvider == null ? null
+                : consolidatedOrderBookProvider.getConsolidatedOrderBook(
+                getPairMarket(marketId).getBaseCurrency(), getPairMarket(marketId).getCounterCurrency());
+        if (book != null) {
+            final List<ConsolidatedMarketOrder> bookSide = isBuy ? book.getSellOrders() : book.getBuyOrders();
+            for (final ConsolidatedMarketOrder order : bookSide) {
+                final boolean withinLimit = isBuy ? order.getPrice().compareTo(price) <= 0
+                        : order.getPrice().compareTo(price) >= 0;
+                if (withinLimit && quotes.containsKey(order.getExchangeId())) {
+                    levels.add(new RankedLevel(order.getExchangeId(), order.getQuantity(),
+                            applyLatencyPenalty(order.getExchangeId(), order.getEffectivePrice(), isBuy)));
+                }
+            }
+        }
+
+        // Best score first: lowest cost when buying, highest proceeds when selling. Sort is stable.
+        final Comparator<RankedLevel> byScore = Comparator.comparing(level -> level.score);
+        levels.sort(isBuy ? byScore : byScore.reversed());
+
+        for (final RankedLevel level : levels) {
+            if (remaining.signum() <= 0) {
+                break;
+            }
+            final BigDecimal venueCapacity = quotes.get(level.exchangeId).fundableQuantity
+                    .subtract(allocations.getOrDefault(level.exchangeId, BigDecimal.ZERO));
+            final BigDecimal fill = remaining.min(level.quantity).min(venueCapacity);
+            if (fill.signum() > 0) {
+                allocations.merge(level.exchangeId, fill, BigDecimal::add);
+                remaining = remaining.subtract(fill);
+            }
+        }
+
+        // Rest the remainder on the venues in order of fee adjusted limit price, penalised by latency
+        if (remaining.signum() > 0) {
+            final List<RankedLevel> restingVenues = new ArrayList<>();
+            for (final Map.Entry<String, VenueQuote> quote : quotes.entrySet()) {
+                final BigDecimal feeMultiplier = isBuy ? BigDecimal.ONE.add(quote.getValue().fee)
+                        : BigDecimal.ONE.subtract(quote.getValue().fee);
+                restingVenues.add(new RankedLevel(quote.getKey(), null,
+                        applyLatencyPenalty(quote.getKey(), price.multiply(feeMultiplier), isBuy)));
+            }
+            restingVenues.sort(isBuy ? byScore : byScore.reversed());
+
+            for (final RankedLevel restingVenue : restingVenues) {
+                if (remaining.signum() <= 0) {
+                    break;
+                }
+                final BigDecimal venueCapacity = quotes.get(restingVenue.exchangeId).fundableQuantity
+                        .subtract(allocations.getOrDefault(restingVenue.exchangeId, BigDecimal.ZERO));
+                final BigDecimal fill = remaining.min(venueCapacity);
+                if (fill.signum() > 0) {
+                    allocations.merge(restingVenue.exchangeId, fill, BigDecimal::add);
+                    remaining = remaining.subtract(fill);
+                }
+            }
+        }
+
+        if (remaining.signum() > 0) {
+            final String errorMsg = "Smart Order Router cannot route " + orderType + " order for " + quantity
+                    + " on market " + marketId + " - insufficient balance across all venues. Short by: " + remaining;
+            LOG.error(errorMsg);
+            throw new TradingApiException(errorMsg);
+        }
+        return allocations;
+    }
+
+    private BigDecimal applyLatencyPenalty(String exchangeId, BigDecimal effectivePrice, boolean isBuy) {
+        final Double latency = venueLatencies.get(exchangeId);
+        if (latency == null || latencyPenaltyPer100Millis.signum() == 0) {
+            return effectivePrice;
+        }
+        final BigDecimal penalty = latencyPenaltyPer100Millis.multiply(BigDecimal.valueOf(latency / 100));
+        // Slow venues look more expensive to buy from and less rewarding to sell to
+        return effectivePrice.multiply(isBuy ? BigDecimal.ONE.add(penalty) : BigDecimal.ONE.subtract(penalty));
+    }
+
+    /*
+     * Builds the open order for a split order from its parts that are still open. The quantity is what is left across
+     * the open parts; the original quantity is the quantity of the whole order.
+     */
+    private static OpenOrder mergeOpenParts(String orderId, RoutedOrder routedOrder, List<OpenOrder> openParts) {
+
+        final OpenOrder firstPart = openParts.get(0);
+        Date creationDate = firstPart.getCreationDate();
+        BigDecimal quantity = BigDecimal.ZERO;
+        BigDecimal total = BigDecimal.ZERO;
+        for (final OpenOrder openPart : openParts) {
+            if (creationDate == null || (openPart.getCreationDate() != null
+                    && openPart.getCreationDate().before(creationDate))) {
+                creationDate = openPart.getCreationDate();
+            }
+            if (openPart.getQuantity() != null) {
+                quantity = quantity.add(openPart.getQuantity());
+            }
+            if (openPart.getTotal() != null) {
+                total = total.add(openPart.getTotal());
+            }
+        }
+        return new OpenOrder(orderId, creationDate, routedOrder.marketId, firstPart.getType(), firstPart.getPrice(),
+                quantity, routedOrder.quantity, total);
+    }
+
+    private void cancelPlacedOrders(List<String> placedOrderIds, Map<String, Market> venues) {
+        for (final String placedOrderId : placedOrderIds) {
+            final int separatorIndex = placedOrderId.indexOf(VENUE_ORDER_ID_SEPARATOR);
+            final String exchangeId = placedOrderId.substring(0, separatorIndex);
+            final ExchangeAdapter exchangeAdapter = exchangeAdapters.get(exchangeId);
+            try {
+                synchronized (exchangeAdapter) {
+                    exchangeAdapter.cancelOrder(placedOrderId.substring(separatorIndex + 1), venues.get(exchangeId).getId());
+                }
+            } catch (ExchangeNetworkException | TradingApiException e) {
+                LOG.error("Failed to cancel part of routed order: " + placedOrderId + " - manual intervention required!", e);
+            } finally {
+                venueBalances.remove(exchangeId);
+            }
+        }
+    }
+
+    /*
+     * Looks for the part that failed with a network error in the venue's open orders, and cancels it if it made it
+     * there. The part is matched on type, price, and quantity; if more than 1 open order matches, the newest is taken.
+     * Orders the router already knows about are never matched.
+     */
+    private void cancelOrphanedPart(Map<String, BigDecimal> allocations, int failedPartIndex,
+                                    Map<String, Market> venues, OrderType orderType, BigDecimal price,
+                                    List<String> placedOrderIds) {
+
+        final Map.Entry<String, BigDecimal> failedPart = new ArrayList<>(allocations.entrySet()).get(failedPartIndex);
+        final String exchangeId = failedPart.getKey();
+        final String venueMarketId = venues.get(exchangeId).getId();
+        final ExchangeAdapter exchangeAdapter = exchangeAdapters.get(exchangeId);
+
+        final Set<String> knownOrderIds = new HashSet<>(placedOrderIds);
+        splitOrders.values().forEach(routedOrder -> knownOrderIds.addAll(routedOrder.orderParts));
+
+        try {
+            final List<OpenOrder> openOrdersOnVenue;
+            synchronized (exchangeAdapter) {
+                openOrdersOnVenue = exchangeAdapter.getYourOpenOrders(venueMarketId);
+            }
+
+            OpenOrder orphanedPart = null;
+            for (final OpenOrder openOrder : openOrdersOnVenue) {
+                final boolean matches = openOrder.getType() == orderType
+                        && openOrder.getPrice() != null && openOrder.getPrice().compareTo(price) == 0
+                        && openOrder.getOriginalQuantity() != null
+                        && openOrder.getOriginalQuantity().compareTo(failedPart.getValue()) == 0
+                        && !knownOrderIds.contains(exchangeId + VENUE_ORDER_ID_SEPARATOR + openOrder.getId());
+                if (matches && (orphanedPart == null || (openOrder.getCreationDate() != null
+                        && (orphanedPart.getCreationDate() == null
+                        || openOrder.getCreationDate().after(orphanedPart.getCreationDate()))))) {
+                    orphanedPart = openOrder;
+                }
+            }
+
+            if (orphanedPart == null) {
+                LOG.info(() -> "Failed part of routed order not found on exchange " + exchangeId + " - it was not placed.");
+                return;
+            }
+
+            final String orphanedOrderId = orphanedPart.getId();
+            LOG.warn(() -> "Failed part of routed order was placed on exchange " + exchangeId + " as order "
+                    + orphanedOrderId + " - cancelling it.");
+            synchronized (exchangeAdapter) {
+                exchangeAdapter.cancelOrder(orphanedOrderId, venueMarketId);
+            }
+
+        } catch (ExchangeNetworkException | TradingApiException e) {
+            LOG.error("Failed to check whether the failed part of routed order was placed on exchange " + exchangeId
+                    + " - " + orderType + " " + failedPart.getValue() + " @ " + price + " on market " + venueMarketId
+                    + " - manual intervention required!", e);
+        } finally {
+            venueBalances.remove(exchangeId);
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Util methods
+    // ------------------------------------------------------------------------------------------------
+
+    private BigDecimal getVenueFee(String exchangeId, Market market, OrderType orderType)
+            throws ExchangeNetworkException, TradingApiException {
+
+        final String feeKey = exchangeId + VENUE_ORDER_ID_SEPARATOR + market.getId() + VENUE_ORDER_ID_SEPARATOR
+                + orderType;
+        final BigDecimal cachedFee = venueFees.get(feeKey);
+        if (cachedFee != null) {
+            return cachedFee;
+        }
+
+        final ExchangeAdapter exchangeAdapter = exchangeAdapters.get(exchangeId);
+        final BigDecimal fee;
+        synchronized (exchangeAdapter) {
+            fee = orderType == OrderType.BUY
+                    ? exchangeAdapter.getPercentageOfBuyOrderTakenForExchangeFee(market.getId())
+                    : exchangeAdapter.getPercentageOfSellOrderTakenForExchangeFee(market.getId());
+        }
+        if (fee != null) {
+            venueFees.put(feeKey, fee);
+        }
+        return fee;
+    }
+
+    private BalanceInfo getVenueBalanceInfo(String exchangeId) throws ExchangeNetworkException, TradingApiException {
+
+        final BalanceInfo cachedBalanceInfo = venueBalances.get(exchangeId);
+        if (cachedBalanceInfo != null) {
+            return cachedBalanceInfo;
+        }
+
+        final ExchangeAdapter exchangeAdapter = exchangeAdapters.get(exchangeId);
+        synchronized (exchangeAdapter) {
+            final long startTime = System.nanoTime();
+            final BalanceInfo balanceInfo = exchangeAdapter.getBalanceInfo();
+            recordLatency(exchangeId, startTime);
+            venueBalances.put(exchangeId, balanceInfo);
+            return balanceInfo;
+        }
+    }
+
+    private void recordLatency(String exchangeId, long startTimeInNanos) {
+        final double sample = (System.nanoTime() - startTimeInNanos) / 1_000_000.0;
+        venueLatencies.merge(exchangeId, sample, (average, latest) ->
+                average + LATENCY_SMOOTHING_FACTOR * (latest - average));
+    }
+
+    private Map<String, Market> getVenues(String marketId) throws TradingApiException {
+        final String pairKey = pairsByMarketId.get(marketId);
+        if (pairKey == null) {
+            final String errorMsg = "Smart Order Router has no venues for market: " + marketId;
+            LOG.error(errorMsg);
+            throw new TradingApiException(errorMsg);
+        }
+        final Map<String, Market> venues = venuesByPair.get(pairKey);
+        synchronized (venues) {
+            if (venues.isEmpty()) {
+                final String errorMsg = "Smart Order Router has no venues for market: " + marketId;
+                LOG.error(errorMsg);
+                throw new TradingApiException(errorMsg);
+            }
+            return new LinkedHashMap<>(venues);
+        }
+    }
+
+    private Map.Entry<String, Market> getPrimaryVenue(String marketId) throws TradingApiException {
+        return getVenues(marketId).entrySet().iterator().next();
+    }
+
+    private Market getPairMarket(String marketId) throws TradingApiException {
+        return getPrimaryVenue(marketId).getValue();
+    }
+
+    private static String toPairKey(Market market) {
+        return market.getBaseCurrency().toUpperCase(Locale.ENGLISH) + "/"
+                + market.getCounterCurrency().toUpperCase(Locale.ENGLISH);
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Internal types
+    // ------------------------------------------------------------------------------------------------
+
+    private static final class VenueQuote {
+
+        private final BigDecimal fee;
+        private final BigDecimal fundableQuantity;
+
+        VenueQuote(BigDecimal fee, BigDecimal fundableQuantity) {
+            this.fee = fee;
+            this.fundableQuantity = fundableQuantity;
+        }
+    }
+
+    private static final class RoutedOrder {
+
+        private final String marketId;
+        private final List<String> orderParts;
+        private final BigDecimal quantity;
+
+        RoutedOrder(String marketId, List<String> orderParts, BigDecimal quantity) {
+            this.marketId = marketId;
+            this.orderParts = orderParts;
+            this.quantity = quantity;
+        }
+    }
+
+    private static final class RankedLevel {
+
+        private final String exchangeId;
+        private final BigDecimal quantity;
+        private final BigDecimal score;
+
+        RankedLevel(String exchangeId, BigDecimal quantity, BigDecimal score) {
+            this.exchangeId = exchangeId;
+            this.quantity = quantity;
+            this.score = score;
+        }
+    }
+}
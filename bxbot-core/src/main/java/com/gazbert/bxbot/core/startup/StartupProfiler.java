@@ -0,0 +1,156 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.startup;
+
+import com.gazbert.bxbot.domain.startup.StartupPhase;
+import com.gazbert.bxbot.domain.startup.StartupReport;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * Times the phases of the bot's startup, from JVM start to the first trade cycle, so slow restarts can be tracked down.
+ * Phases can be recorded from any thread, and can overlap - the engine loads config, initialises strategies, and
+ * warms up exchange connections concurrently. The report is logged once the bot starts trading.
+ * </p>
+ * <p>
+ * Warming up the exchange connections at startup can be switched off with the bxbot.startup.prewarm-connections
+ * property.
+ * </p>
+ * <p>
+ * The JIT warm-up phase is run before trading starts if the bxbot.startup.warmup-iterations property is above 0. It
+ * runs up to that many iterations, stopping early once an iteration takes within
+ * bxbot.startup.warmup-steady-state-pct percent of the ones before it.
+ * </p>
+ *
+ * @author gazbert
+ */
+@Component
+public class StartupProfiler {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    /**
+     * The JVM and Spring context startup phase - everything before the engine starts.
+     */
+    public static final String CONTEXT_PHASE = "jvm-and-spring-context";
+
+    private final boolean prewarmConnections;
+    private final int warmUpIterations;
+    private final int warmUpSteadyStatePercentage;
+    private final long jvmStartTime;
+    private final List<StartupPhase> phases = new ArrayList<>();
+    private Long timeToTrading;
+
+
+    @Autowired
+    public StartupProfiler(@Value("${bxbot.startup.prewarm-connections:true}") boolean prewarmConnections,
+                           @Value("${bxbot.startup.warmup-iterations:0}") int warmUpIterations,
+                           @Value("${bxbot.startup.warmup-steady-state-pct:5}") int warmUpSteadyStatePercentage) {
+        this(prewarmConnections, warmUpIterations, warmUpSteadyStatePercentage,
+                ManagementFactory.getRuntimeMXBean().getStartTime());
+    }
+
+    StartupProfiler(boolean prewarmConnections, int warmUpIterations, int warmUpSteadyStatePercentage,
+                    long jvmStartTime) {
+        this.prewarmConnections = prewarmConnections;
+        this.warmUpIterations = Math.max(0, warmUpIterations);
+        this.warmUpSteadyStatePercentage = warmUpSteadyStatePercentage;
+        this.jvmStartTime = jvmStartTime;
+    }
+
+    public boolean isPrewarmConnections() {
+        return prewarmConnections;
+    }
+
+    /**
+     * Returns the most iterations of the JIT warm-up phase to run.
+     *
+     * @return the iterations, or 0 if the warm-up phase is switched off.
+     */
+    public int getWarmUpIterations() {
+        return warmUpIterations;
+    }
+
+    /**
+     * Returns how close, as a percentage, an iteration of the JIT warm-up phase must be to the ones before it for the
+     * warm-up to have reached a steady state.
+     *
+     * @return the percentage.
+     */
+    public int getWarmUpSteadyStatePercentage() {
+        return warmUpSteadyStatePercentage;
+    }
+
+    /**
+     * Records the JVM and Spring context startup phase. Call it when the engine starts.
+     */
+    public void contextStarted() {
+        record(CONTEXT_PHASE, jvmStartTime);
+    }
+
+    /**
+     * Records a startup phase that has just ended.
+     *
+     * @param phase     the name of the phase.
+     * @param startTime when the phase started, in millis since the epoch.
+     */
+    public void record(String phase, long startTime) {
+        final long now = System.currentTimeMillis();
+        synchronized (phases) {
+            phases.add(new StartupPhase(phase, startTime - jvmStartTime, now - startTime));
+        }
+        LOG.info(() -> "Startup phase " + phase + " took " + (now - startTime) + "ms");
+    }
+
+    /**
+     * Marks the bot as trading and logs the startup report.
+     */
+    public void tradingStarted() {
+        synchronized (phases) {
+            timeToTrading = System.currentTimeMillis() - jvmStartTime;
+        }
+        final StartupReport startupReport = getStartupReport();
+        LOG.info(() -> "BX-bot started trading " + startupReport.getTimeToTrading() + "ms after JVM start. Startup "
+                + "phases: " + startupReport.getPhases());
+    }
+
+    /**
+     * Returns a copy of the startup report.
+     *
+     * @return the startup report.
+     */
+    public StartupReport getStartupReport() {
+        synchronized (phases) {
+            return new StartupReport(jvmStartTime, timeToTrading, new ArrayList<>(phases));
+        }
+    }
+}
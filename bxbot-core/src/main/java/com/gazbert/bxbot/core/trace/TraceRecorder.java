@@ -0,0 +1,191 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.trace;
+
+import com.gazbert.bxbot.domain.trace.CycleTimeline;
+import com.gazbert.bxbot.domain.trace.TimelineSpan;
+import com.gazbert.bxbot.exchange.api.trace.SpanRecord;
+import com.gazbert.bxbot.exchange.api.trace.TraceTimeline;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Keeps the trace timelines of the last N trade cycles (and Emergency Stop checks) in a ring buffer.
+ * </p>
+ * <p>
+ * The hot path cost is kept low: spans are only recorded while a timeline is attached to the thread, the raw
+ * timelines are stored as-is, and conversion to domain objects is only done when the timelines are read.
+ * Tracing can be switched off with the bxbot.trace.enabled property - {@link #begin(String)} then returns null and
+ * every span is a no-op.
+ * </p>
+ *
+ * @author gazbert
+ */
+@Component
+public class TraceRecorder {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    /**
+     * Timeline name for a trade cycle.
+     */
+    public static final String TRADE_CYCLE = "trade-cycle";
+
+    /**
+     * Timeline name for an Emergency Stop check.
+     */
+    public static final String EMERGENCY_STOP_CHECK = "emergency-stop-check";
+
+    private final boolean enabled;
+    private final int maxSpansPerTimeline;
+    private final AtomicLong nextTimelineId = new AtomicLong(1);
+
+    /*
+     * The ring buffer. Guarded by this.
+     */
+    private final TraceTimeline[] timelines;
+    private int nextSlot;
+
+
+    @Autowired
+    public TraceRecorder(@Value("${bxbot.trace.enabled:true}") boolean enabled,
+                         @Value("${bxbot.trace.timelines-retained:100}") int timelinesRetained,
+                         @Value("${bxbot.trace.max-spans-per-timeline:1000}") int maxSpansPerTimeline) {
+
+        if (timelinesRetained < 1 || maxSpansPerTimeline < 1) {
+            throw new IllegalArgumentException("Trace timelines retained and max spans per timeline must be > 0");
+        }
+        this.enabled = enabled;
+        this.maxSpansPerTimeline = maxSpansPerTimeline;
+        this.timelines = new TraceTimeline[timelinesRetained];
+
+        LOG.info(() -> "Trace recorder enabled: " + enabled + " - keeping last " + timelinesRetained + " timelines");
+    }
+
+    /**
+     * Starts a new timeline. The caller attaches it to the threads doing the work, and passes it to
+     * {@link #record(TraceTimeline)} when done.
+     *
+     * @param name the timeline name, e.g. {@link #TRADE_CYCLE}.
+     * @return the new timeline, or null if tracing is disabled.
+     */
+    public TraceTimeline begin(String name) {
+        return enabled ? new TraceTimeline(nextTimelineId.getAndIncrement(), name, maxSpansPerTimeline) : null;
+    }
+
+    /**
+     * Completes the timeline and adds it to the ring buffer, evicting the oldest one if the buffer is full.
+     *
+     * @param timeline the timeline. Ignored if null.
+     */
+    public void record(TraceTimeline timeline) {
+        if (timeline == null) {
+            return;
+        }
+        timeline.complete();
+        synchronized (this) {
+            timelines[nextSlot] = timeline;
+            nextSlot = (nextSlot + 1) % timelines.length;
+        }
+    }
+
+    /**
+     * Returns the most recent timelines, newest first.
+     *
+     * @param name  only return timelines with this name. If null, all timelines are returned.
+     * @param limit the maximum number of timelines to return.
+     * @return the timelines.
+     */
+    public List<CycleTimeline> getTimelines(String name, int limit) {
+        final List<CycleTimeline> recentTimelines = new ArrayList<>();
+        for (final TraceTimeline timeline : snapshot()) {
+            if (recentTimelines.size() >= limit) {
+                break;
+            }
+            if (name == null || name.equals(timeline.getName())) {
+                recentTimelines.add(toDomainTimeline(timeline));
+            }
+        }
+        return recentTimelines;
+    }
+
+    /**
+     * Returns the timeline for the given id.
+     *
+     * @param id the timeline id.
+     * @return the timeline, or null if it is not in the ring buffer.
+     */
+    public CycleTimeline getTimeline(long id) {
+        for (final TraceTimeline timeline : snapshot()) {
+            if (timeline.getId() == id) {
+                return toDomainTimeline(timeline);
+            }
+        }
+        return null;
+    }
+
+    // ------------------------------------------------------------------------
+    // Private utils
+    // ------------------------------------------------------------------------
+
+    /*
+     * Returns the timelines in the ring buffer, newest first.
+     */
+    private synchronized List<TraceTimeline> snapshot() {
+        final List<TraceTimeline> snapshot = new ArrayList<>(timelines.length);
+        for (int i = 1; i <= timelines.length; i++) {
+            final TraceTimeline timeline = timelines[(nextSlot - i + timelines.length) % timelines.length];
+            if (timeline == null) {
+                break;
+            }
+            snapshot.add(timeline);
+        }
+        return snapshot;
+    }
+
+    private static CycleTimeline toDomainTimeline(TraceTimeline timeline) {
+        final CycleTimeline cycleTimeline = new CycleTimeline(timeline.getId(), timeline.getName(),
+                timeline.getStartTimeMillis(), toMicros(timeline.getDurationNanos()));
+        cycleTimeline.setDroppedSpanCount(timeline.getDroppedSpanCount());
+        for (final SpanRecord span : timeline.getSpans()) {
+            cycleTimeline.getSpans().add(new TimelineSpan(span.getName(), span.getDetail(), span.getThreadName(),
+                    span.getDepth(), toMicros(span.getStartOffsetNanos()), toMicros(span.getDurationNanos()),
+                    span.getError()));
+        }
+        return cycleTimeline;
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
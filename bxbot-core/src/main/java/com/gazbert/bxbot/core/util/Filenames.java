@@ -0,0 +1,48 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.util;
+
+/**
+ * Turns ids from the bot config, e.g. exchange, market, and strategy ids, into names that are safe to use for the
+ * files and directories the bot keeps its runtime data in.
+ *
+ * @author gazbert
+ */
+public abstract class Filenames {
+
+    private Filenames() {
+    }
+
+    /*
+     * Market ids can contain characters that are not allowed in filenames, e.g. btc/usd, and ids passed in through the
+     * REST API must not be able to climb out of the data directory.
+     */
+    public static String toFilename(String id) {
+        if (id == null || id.isEmpty()) {
+            return "_";
+        }
+        final String filename = id.replaceAll("[^A-Za-z0-9._-]", "_");
+        return filename.matches("\\.+") ? filename.replace('.', '_') : filename;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.accounting;
+
+import com.gazbert.bxbot.core.journal.TradeJournal;
+import com.gazbert.bxbot.domain.accounting.MarketPosition;
+import com.gazbert.bxbot.trading.api.OpenOrder;
+import com.gazbert.bxbot.trading.api.OrderType;
+import com.gazbert.bxbot.trading.api.Position;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the Position Ledger behaves as expected.
+ *
+ * @author gazbert
+ */
+public class TestPositionLedger {
+
+    private static final String EXCHANGE = "bitstamp";
+    private static final String EXCHANGE_2 = "gdax";
+    private static final String MARKET = "btcusd";
+    private static final String ORDER_ID = "8675309";
+
+    private TradeJournal tradeJournal;
+    private PositionLedger positionLedger;
+
+    @Before
+    public void setUpBeforeEachTest() {
+        tradeJournal = new TradeJournal(false, "./journal");
+        positionLedger = new PositionLedger(tradeJournal);
+    }
+
+    @After
+    public void tearDownAfterEachTest() {
+        tradeJournal.shutdown();
+    }
+
+    @Test
+    public void testLongPositionIsAveragedAndRealisedOnSell() {
+
+        fill(OrderType.BUY, "100", "1");
+        fill(OrderType.BUY, "200", "1");
+
+        Position position = positionLedger.getPosition(EXCHANGE, MARKET);
+        assertAmount("2", position.getQuantity());
+        assertAmount("150", position.getAverageCost());
+        assertAmount("0", position.getRealisedPnl());
+
+        fill(OrderType.SELL, "180", "0.5");
+        positionLedger.priceObserved(EXCHANGE, MARKET, new BigDecimal("160"));
+
+        position = positionLedger.getPosition(EXCHANGE, MARKET);
+        assertAmount("1.5", position.getQuantity());
+        assertAmount("150", position.getAverageCost());
+        assertAmount("15", position.getRealisedPnl());
+        assertAmount("160", position.getMarkPrice());
+        assertAmount("15", position.getUnrealisedPnl());
+        assertAmount("30", position.getNetPnl());
+        assertEquals(3, position.getFillCount());
+    }
+
+    @Test
+    public void testShortPositionFlipsToLongOnLargerBuy() {
+
+        fill(OrderType.SELL, "100", "2");
+
+        Position position = positionLedger.getPosition(EXCHANGE, MARKET);
+        assertAmount("-2", position.getQuantity());
+        assertAmount("100", position.getAverageCost());
+
+        // marked to the fill price until a market price is seen
+        assertAmount("0", position.getUnrealisedPnl());
+        positionLedger.priceObserved(EXCHANGE, MARKET, new BigDecimal("95"));
+        assertAmount("10", positionLedger.getPosition(EXCHANGE, MARKET).getUnrealisedPnl());
+
+        fill(OrderType.BUY, "90", "3");
+
+        position = positionLedger.getPosition(EXCHANGE, MARKET);
+        assertAmount("1", position.getQuantity());
+        assertAmount("90", position.getAverageCost());
+        assertAmount("20", position.getRealisedPnl());
+        assertAmount("5", position.getUnrealisedPnl());
+    }
+
+    @Test
+    public void testFeesAreChargedAtTheLatestObservedRates() {
+
+        // no rate seen yet
+        fill(OrderType.BUY, "100", "1");
+        assertAmount("0", positionLedger.getPosition(EXCHANGE, MARKET).getFees());
+
+        positionLedger.feeRateObserved(EXCHANGE, MARKET, OrderType.BUY, new BigDecimal("0.0025"));
+        positionLedger.feeRateObserved(EXCHANGE, MARKET, OrderType.SELL, new BigDecimal("0.001"));
+        fill(OrderType.BUY, "100", "1");
+        fill(OrderType.SELL, "110", "2");
+
+        final Position position = positionLedger.getPosition(EXCHANGE, MARKET);
+        assertAmount("0", position.getQuantity());
+        assertAmount("0", position.getAverageCost());
+        assertAmount("20", position.getRealisedPnl());
+        assertAmount("0.47", position.getFees());
+        assertAmount("19.53", position.getNetPnl());
+    }
+
+    @Test
+    public void testFillsDetectedByTradeJournalAreBooked() {
+
+        final BigDecimal price = new BigDecimal("6000");
+        tradeJournal.orderAcknowledged(EXCHANGE, MARKET, ORDER_ID, OrderType.BUY, new BigDecimal("2"), price);
+        tradeJournal.openOrdersFetched(EXCHANGE, MARKET, Collections.singletonList(new OpenOrder(ORDER_ID, null,
+                MARKET, OrderType.BUY, price, new BigDecimal("0.5"), new BigDecimal("2"), price)));
+
+        // gone from the open orders - not known to be filled, so not booked
+        tradeJournal.openOrdersFetched(EXCHANGE, MARKET, Collections.emptyList());
+
+        final Position position = positionLedger.providerFor(EXCHANGE).getPosition(MARKET);
+        assertEquals(MARKET, position.getMarketId());
+        assertAmount("1.5", position.getQuantity());
+        assertAmount("6000", position.getAverageCost());
+        assertEquals(1, position.getFillCount());
+        assertTrue(position.isConfirmed());
+
+        // other exchange is untouched
+        final Position otherPosition = positionLedger.providerFor(EXCHANGE_2).getPosition(MARKET);
+        assertAmount("0", otherPosition.getQuantity());
+        assertNull(otherPosition.getMarkPrice());
+        assertEquals(0, otherPosition.getFillCount());
+    }
+
+    @Test
+    public void testInferredFillsAreBookedButFlagPositionAsUnconfirmed() {
+
+        final TradeJournal inferringJournal = new TradeJournal(false, "./journal", true);
+        try {
+            positionLedger = new PositionLedger(inferringJournal);
+            inferringJournal.orderAcknowledged(EXCHANGE, MARKET, ORDER_ID, OrderType.BUY, new BigDecimal("2"),
+                    new BigDecimal("6000"));
+            inferringJournal.openOrdersFetched(EXCHANGE, MARKET, Collections.emptyList());
+
+            final Position position = positionLedger.getPosition(EXCHANGE, MARKET);
+            assertAmount("2", position.getQuantity());
+            assertEquals(1, position.getFillCount());
+            assertEquals(1, position.getInferredFillCount());
+            assertFalse(position.isConfirmed());
+
+            final MarketPosition marketPosition = positionLedger.getPositions().get(0);
+            assertEquals(1, marketPosition.getInferredFillCount());
+            assertFalse(marketPosition.isConfirmed());
+        } finally {
+            inferringJournal.shutdown();
+        }
+    }
+
+    @Test
+    public void testPositionsAreListedByExchangeThenMarket() {
+
+        positionLedger.onFill(EXCHANGE_2, MARKET, OrderType.BUY, new BigDecimal("100"), BigDecimal.ONE);
+        positionLedger.onFill(EXCHANGE, "ltcusd", OrderType.BUY, new BigDecimal("50"), BigDecimal.ONE);
+        positionLedger.priceObserved(EXCHANGE, MARKET, new BigDecimal("6000"));
+
+        final List<MarketPosition> positions = positionLedger.getPositions();
+        assertEquals(3, positions.size());
+        assertEquals(EXCHANGE, positions.get(0).getExchange());
+        assertEquals(MARKET, positions.get(0).getMarket());
+        assertEquals(0, positions.get(0).getFillCount());
+        assertTrue(positions.get(0).isConfirmed());
+        assertEquals("ltcusd", positions.get(1).getMarket());
+        assertEquals(EXCHANGE_2, positions.get(2).getExchange());
+        assertAmount("1", positions.get(2).getQuantity());
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Private utils
+    // ------------------------------------------------------------------------------------------------
+
+    private void fill(OrderType orderType, String price, String quantity) {
+        positionLedger.onFill(EXCHANGE, MARKET, orderType, new BigDecimal(price), new BigDecimal(quantity));
+    }
+
+    private static void assertAmount(String expected, BigDecimal actual) {
+        assertEquals("expected " + expected + " but was " + actual, 0, new BigDecimal(expected).compareTo(actual));
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.alerts;
+
+import com.gazbert.bxbot.core.mail.EmailAlerter;
+import com.gazbert.bxbot.domain.emailalerts.EmailAlertsConfig;
+import com.gazbert.bxbot.domain.emailalerts.SmtpConfig;
+import com.gazbert.bxbot.services.EmailAlertsConfigService;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the Alert Dispatcher behaves as expected.
+ *
+ * @author gazbert
+ */
+public class TestAlertDispatcher {
+
+    private static final String ALERT_SUBJECT = "CRITICAL Alert message from BX-bot";
+    private static final String ALERT_MSG = "The exchange has blown up!";
+    private static final String ALERT_2_MSG = "The exchange has blown up again!";
+    private static final String ALERT_3_MSG = "The exchange has really blown up this time!";
+
+    private static final long NO_DEDUP_WINDOW = 0;
+    private static final long NO_MIN_SEND_INTERVAL = 0;
+    private static final long TEST_TIMEOUT_SECS = 5;
+
+    private AlertDispatcher alertDispatcher;
+
+
+    @After
+    public void tearDown() {
+        if (alertDispatcher != null) {
+            alertDispatcher.shutdown();
+        }
+    }
+
+    @Test
+    public void testDispatchDoesNotWaitForSlowChannel() throws Exception {
+
+        final CountDownLatch channelReleased = new CountDownLatch(1);
+        final RecordingAlertChannel alertChannel = new RecordingAlertChannel(channelReleased);
+        alertDispatcher = new AlertDispatcher(Collections.singletonList(alertChannel), 10, NO_DEDUP_WINDOW,
+                NO_MIN_SEND_INTERVAL);
+        alertDispatcher.start();
+
+        final long startTime = System.currentTimeMillis();
+        assertTrue(alertDispatcher.dispatch(ALERT_SUBJECT, ALERT_MSG));
+        assertTrue(System.currentTimeMillis() - startTime < 1000);
+
+        channelReleased.countDown();
+        final SentAlert sentAlert = alertChannel.sentAlerts.poll(TEST_TIMEOUT_SECS, TimeUnit.SECONDS);
+        assertNotNull(sentAlert);
+        assertEquals(ALERT_SUBJECT, sentAlert.subject);
+        assertEquals(ALERT_MSG, sentAlert.msgContent);
+    }
+
+    @Test
+    public void testRepeatAlertsWithinDedupWindowAreSuppressed() throws Exception {
+
+        final RecordingAlertChannel alertChannel = new RecordingAlertChannel(null);
+        alertDispatcher = new AlertDispatcher(Collections.singletonList(alertChannel), 10,
+                TimeUnit.MINUTES.toMillis(1), NO_MIN_SEND_INTERVAL);
+        alertDispatcher.start();
+
+        alertDispatcher.dispatch(ALERT_SUBJECT, ALERT_MSG + " at time 1", ALERT_MSG);
+        assertNotNull(alertChannel.sentAlerts.poll(TEST_TIMEOUT_SECS, TimeUnit.SECONDS));
+
+        alertDispatcher.dispatch(ALERT_SUBJECT, ALERT_MSG + " at time 2", ALERT_MSG);
+        alertDispatcher.dispatch(ALERT_SUBJECT, ALERT_2_MSG);
+
+        // only the new alert gets through
+        final SentAlert sentAlert = alertChannel.sentAlerts.poll(TEST_TIMEOUT_SECS, TimeUnit.SECONDS);
+        assertNotNull(sentAlert);
+        assertEquals(ALERT_2_MSG, sentAlert.msgContent);
+        assertNull(alertChannel.sentAlerts.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testAlertsRaisedWhileRateLimitedAreSentAsDigest() throws Exception {
+
+        final RecordingAlertChannel alertChannel = new RecordingAlertChannel(null);
+        alertDispatcher = new AlertDispatcher(Collections.singletonList(alertChannel), 10, NO_DEDUP_WINDOW, 1000);
+        alertDispatcher.start();
+
+        // 1st alert goes straight out
+        alertDispatcher.dispatch(ALERT_SUBJECT, ALERT_MSG);
+        assertEquals(ALERT_MSG, alertChannel.sentAlerts.poll(TEST_TIMEOUT_SECS, TimeUnit.SECONDS).msgContent);
+
+        // the rest get batched up until the min send interval is up
+        alertDispatcher.dispatch(ALERT_SUBJECT, ALERT_2_MSG);
+        alertDispatcher.dispatch(ALERT_SUBJECT, ALERT_3_MSG);
+        alertDispatcher.dispatch(ALERT_SUBJECT, ALERT_3_MSG);
+
+        final SentAlert digest = alertChannel.sentAlerts.poll(TEST_TIMEOUT_SECS, TimeUnit.SECONDS);
+        assertNotNull(digest);
+        assertTrue(digest.subject.contains("2 alerts"));
+        assertTrue(digest.msgContent.contains(ALERT_2_MSG));
+        assertTrue(digest.msgContent.contains(ALERT_3_MSG));
+        assertTrue(digest.msgContent.contains("This alert was raised 2 times."));
+        assertNull(alertChannel.sentAlerts.poll(500, TimeUnit.MILLISECONDS));
+        assertEquals(2, alertDispatcher.getSentMessageCount());
+    }
+
+    @Test
+    public void testAlertIsDroppedWhenQueueIsFull() throws Exception {
+
+        final CountDownLatch channelReleased = new CountDownLatch(1);
+        final RecordingAlertChannel alertChannel = new RecordingAlertChannel(channelReleased);
+        alertDispatcher = new AlertDispatcher(Collections.singletonList(alertChannel), 1, NO_DEDUP_WINDOW,
+                NO_MIN_SEND_INTERVAL);
+        alertDispatcher.start();
+
+        // 1st alert is taken off the queue and the sender gets stuck on the channel
+        assertTrue(alertDispatcher.dispatch(ALERT_SUBJECT, ALERT_MSG));
+        assertTrue(alertChannel.sendStarted.await(TEST_TIMEOUT_SECS, TimeUnit.SECONDS));
+
+        assertTrue(alertDispatcher.dispatch(ALERT_SUBJECT, ALERT_2_MSG));
+        assertFalse(alertDispatcher.dispatch(ALERT_SUBJECT, ALERT_3_MSG));
+        assertEquals(1, alertDispatcher.getDroppedAlertCount());
+
+        channelReleased.countDown();
+    }
+
+    @Test
+    public void testQueuedAlertsAreSentOnShutdown() throws Exception {
+
+        final RecordingAlertChannel alertChannel = new RecordingAlertChannel(null);
+        alertDispatcher = new AlertDispatcher(Collections.singletonList(alertChannel), 10, NO_DEDUP_WINDOW,
+                TimeUnit.MINUTES.toMillis(1));
+        alertDispatcher.start();
+
+        alertDispatcher.dispatch(ALERT_SUBJECT, ALERT_MSG);
+        assertNotNull(alertChannel.sentAlerts.poll(TEST_TIMEOUT_SECS, TimeUnit.SECONDS));
+
+        // rate limited - would not normally be sent for another minute
+        alertDispatcher.dispatch(ALERT_SUBJECT, ALERT_2_MSG);
+        alertDispatcher.shutdown();
+
+        final SentAlert sentAlert = alertChannel.sentAlerts.poll(0, TimeUnit.SECONDS);
+        assertNotNull(sentAlert);
+        assertEquals(ALERT_2_MSG, sentAlert.msgContent);
+        assertFalse(alertDispatcher.dispatch(ALERT_SUBJECT, ALERT_3_MSG));
+    }
+
+    @Test
+    public void testFailingChannelDoesNotStopOtherChannels() throws Exception {
+
+        final AlertChannel failingChannel = EasyMock.createMock(AlertChannel.class);
+        expect(failingChannel.getChannelName()).andReturn("Failing").anyTimes();
+        expect(failingChannel.isEnabled()).andReturn(true).anyTimes();
+        failingChannel.send(ALERT_SUBJECT, ALERT_MSG);
+        EasyMock.expectLastCall().andThrow(new AlertChannelException("Connection refused"));
+        EasyMock.replay(failingChannel);
+
+        final RecordingAlertChannel alertChannel = new RecordingAlertChannel(null);
+        alertDispatcher = new AlertDispatcher(Arrays.asList(failingChannel, alertChannel), 10,
+                NO_DEDUP_WINDOW, NO_MIN_SEND_INTERVAL);
+        alertDispatcher.start();
+
+        alertDispatcher.dispatch(ALERT_SUBJECT, ALERT_MSG);
+        assertNotNull(alertChannel.sentAlerts.poll(TEST_TIMEOUT_SECS, TimeUnit.SECONDS));
+
+        EasyMock.verify(failingChannel);
+    }
+
+    /*
+     * Sends a real email through the Email Alerter to an SMTP stub listening on localhost.
+     */
+    @Test
+    public void testEmailAlertIsDeliveredToLocalSmtpServer() throws Exception {
+
+        try (SmtpStub smtpStub = new SmtpStub()) {
+
+            final EmailAlertsConfigService emailAlertsConfigService = EasyMock.createMock(EmailAlertsConfigService.class);
+            expect(emailAlertsConfigService.getEmailAlertsConfig()).andReturn(
+                    someEmailAlertsConfig(smtpStub.getPort()));
+            EasyMock.replay(emailAlertsConfigService);
+
+            alertDispatcher = new AlertDispatcher(
+                    Collections.singletonList(new EmailAlerter(emailAlertsConfigService)), 10, NO_DEDUP_WINDOW,
+                    NO_MIN_SEND_INTERVAL);
+            alertDispatcher.start();
+            alertDispatcher.dispatch(ALERT_SUBJECT, ALERT_MSG);
+
+            final String receivedMail = smtpStub.receivedMails.poll(TEST_TIMEOUT_SECS * 2, TimeUnit.SECONDS);
+            assertNotNull(receivedMail);
+            assertTrue(receivedMail.contains("Subject: " + ALERT_SUBJECT));
+            assertTrue(receivedMail.contains(ALERT_MSG));
+
+            EasyMock.verify(emailAlertsConfigService);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Private utils
+    // ------------------------------------------------------------------------
+
+    private static EmailAlertsConfig someEmailAlertsConfig(int smtpPort) {
+        final EmailAlertsConfig emailAlertsConfig = new EmailAlertsConfig();
+        emailAlertsConfig.setEnabled(true);
+        emailAlertsConfig.setSmtpConfig(new SmtpConfig("localhost", smtpPort, "bxbot", "le-password",
+                "bxbot.alerts@localhost", "some-destination@localhost"));
+        return emailAlertsConfig;
+    }
+
+    private static final class SentAlert {
+
+        private final String subject;
+        private final String msgContent;
+
+        private SentAlert(String subject, String msgContent) {
+            this.subject = subject;
+            this.msgContent = msgContent;
+        }
+    }
+
+    /*
+     * Records the alerts it is sent. Optionally blocks in send until released.
+     */
+    private static final class RecordingAlertChannel implements AlertChannel {
+
+        private final BlockingQueue<SentAlert> sentAlerts = new LinkedBlockingQueue<>();
+        private final CountDownLatch sendStarted = new CountDownLatch(1);
+        private final CountDownLatch released;
+
+        private RecordingAlertChannel(CountDownLatch released) {
+            this.released = released;
+        }
+
+        @Override
+        public String getChannelName() {
+            return "Recording";
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return true;
+        }
+
+        @Override
+        public void send(String subject, String msgContent) throws AlertChannelException {
+            sendStarted.countDown();
+            if (released != null) {
+                try {
+                    released.await(TEST_TIMEOUT_SECS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            sentAlerts.add(new SentAlert(subject, msgContent));
+        }
+    }
+
+    /*
+     * Bare bones SMTP server. Accepts every mail it is sent - no TLS, no auth.
+     */
+    private static final class SmtpStub implements Closeable {
+
+        private final ServerSocket serverSocket;
+        private final BlockingQueue<String> receivedMails = new LinkedBlockingQueue<>();
+
+        private SmtpStub() throws IOException {
+            serverSocket = new ServerSocket(0);
+            final Thread acceptThread = new Thread(this::acceptConnections, "smtp-stub");
+            acceptThread.setDaemon(true);
+            acceptThread.start();
+        }
+
+        private int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        private void acceptConnections() {
+            while (!serverSocket.isClosed()) {
+                try (Socket socket = serverSocket.accept()) {
+                    handleSession(socket);
+                } catch (IOException e) {
+                    // closed
+                }
+            }
+        }
+
+        private void handleSession(Socket socket) throws IOException {
+
+            final BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            final Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII);
+            reply(writer, "220 localhost SMTP stub");
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String command = line.toUpperCase();
+                if (command.startsWith("EHLO") || command.startsWith("HELO")) {
+                    reply(writer, "250 localhost");
+                } else if (command.startsWith("DATA")) {
+                    reply(writer, "354 End data with <CR><LF>.<CR><LF>");
+                    final StringBuilder mail = new StringBuilder();
+                    while ((line = reader.readLine()) != null && !line.equals(".")) {
+                        mail.append(line).append("\n");
+                    }
+                    receivedMails.add(mail.toString());
+                    reply(writer, "250 OK");
+                } else if (command.startsWith("QUIT")) {
+                    reply(writer, "221 Bye");
+                    return;
+                } else {
+                    reply(writer, "250 OK");
+                }
+            }
+        }
+
+        private static void reply(Writer writer, String reply) throws IOException {
+            writer.write(reply + "\r\n");
+            writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.breaker;
+
+import com.gazbert.bxbot.domain.breaker.CircuitBreakerStatus;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the circuit breakers open, fail fast, and probe as expected.
+ *
+ * @author gazbert
+ */
+public class TestCircuitBreaker {
+
+    private static final String EXCHANGE = "kraken";
+    private static final String ENDPOINT = "getMarketOrders";
+    private static final long SLOW_CALL_MILLIS = 5000;
+    private static final long OPEN_MILLIS = 60000;
+    private static final long FAST_CALL = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long SLOW_CALL = TimeUnit.MILLISECONDS.toNanos(SLOW_CALL_MILLIS + 1);
+
+    @Test
+    public void testBreakerOpensAtFailureRateOnceMinimumCallsMade() {
+
+        final CircuitBreaker circuitBreaker = createCircuitBreaker();
+        long now = 1000;
+
+        // 2 failures out of 3 - but the minimum is 4 calls
+        makeCall(circuitBreaker, FAST_CALL, true, now);
+        makeCall(circuitBreaker, FAST_CALL, false, now);
+        makeCall(circuitBreaker, FAST_CALL, true, now);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+
+        makeCall(circuitBreaker, FAST_CALL, false, ++now);
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        final CircuitBreakerStatus status = circuitBreaker.getStatus();
+        assertEquals("OPEN", status.getState());
+        assertEquals(50.0, status.getFailureRate(), 0.001);
+        assertEquals(4, status.getCallsInWindow());
+        assertEquals(1, status.getOpenCount());
+        assertEquals(now, status.getLastOpenedTime());
+        assertEquals(now + OPEN_MILLIS, status.getNextProbeTime());
+    }
+
+    @Test
+    public void testSlowCallsCountAsFailures() {
+
+        final CircuitBreaker circuitBreaker = createCircuitBreaker();
+        for (int i = 0; i < 4; i++) {
+            makeCall(circuitBreaker, i % 2 == 0 ? SLOW_CALL : FAST_CALL, false, 1000);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void testOldOutcomesDropOutOfWindow() {
+
+        final CircuitBreaker circuitBreaker = createCircuitBreaker();
+        makeCall(circuitBreaker, FAST_CALL, true, 1000);
+        for (int i = 0; i < 20; i++) {
+            makeCall(circuitBreaker, FAST_CALL, false, 1000);
+        }
+        makeCall(circuitBreaker, FAST_CALL, true, 1000);
+        makeCall(circuitBreaker, FAST_CALL, true, 1000);
+        makeCall(circuitBreaker, FAST_CALL, true, 1000);
+
+        // window of 10 holds 3 failures
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals(30.0, circuitBreaker.getStatus().getFailureRate(), 0.001);
+    }
+
+    @Test
+    public void testOpenBreakerRejectsCallsThenLetsOneProbeThrough() {
+
+        final CircuitBreaker circuitBreaker = createCircuitBreaker();
+        tripBreaker(circuitBreaker, 1000);
+
+        assertFalse(circuitBreaker.tryAcquirePermission(1000 + OPEN_MILLIS - 1));
+        assertEquals(1, circuitBreaker.getStatus().getRejectedCallCount());
+
+        // probe - the other callers are rejected while it is in flight
+        assertTrue(circuitBreaker.tryAcquirePermission(1000 + OPEN_MILLIS));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquirePermission(1000 + OPEN_MILLIS));
+        assertEquals(2, circuitBreaker.getStatus().getRejectedCallCount());
+
+        circuitBreaker.recordCall(FAST_CALL, false, 1000 + OPEN_MILLIS);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals(0, circuitBreaker.getStatus().getCallsInWindow());
+        assertTrue(circuitBreaker.tryAcquirePermission(1000 + OPEN_MILLIS));
+    }
+
+    @Test
+    public void testFailedProbeReopensBreaker() {
+
+        final CircuitBreaker circuitBreaker = createCircuitBreaker();
+        tripBreaker(circuitBreaker, 1000);
+
+        final long probeTime = 1000 + OPEN_MILLIS;
+        assertTrue(circuitBreaker.tryAcquirePermission(probeTime));
+        circuitBreaker.recordCall(SLOW_CALL, false, probeTime);
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertEquals(2, circuitBreaker.getStatus().getOpenCount());
+        assertEquals(probeTime + OPEN_MILLIS, circuitBreaker.getStatus().getNextProbeTime());
+        assertFalse(circuitBreaker.tryAcquirePermission(probeTime + 1));
+    }
+
+    @Test
+    public void testRegistrySharesBreakerPerExchangeAndEndpoint() {
+
+        final CircuitBreakerRegistry circuitBreakerRegistry = new CircuitBreakerRegistry(true, 50, 5000, 10, 4, 60);
+        final CircuitBreaker circuitBreaker = circuitBreakerRegistry.getCircuitBreaker(EXCHANGE, ENDPOINT);
+        assertSame(circuitBreaker, circuitBreakerRegistry.getCircuitBreaker(EXCHANGE, ENDPOINT));
+        circuitBreakerRegistry.getCircuitBreaker(EXCHANGE, "getBalanceInfo");
+        circuitBreakerRegistry.getCircuitBreaker("bitstamp", ENDPOINT);
+
+        final List<CircuitBreakerStatus> statuses = circuitBreakerRegistry.getCircuitBreakerStatuses();
+        assertEquals(3, statuses.size());
+        assertEquals("bitstamp", statuses.get(0).getExchange());
+        assertEquals("getBalanceInfo", statuses.get(1).getEndpoint());
+        assertEquals(ENDPOINT, statuses.get(2).getEndpoint());
+        assertEquals("CLOSED", statuses.get(2).getState());
+
+        assertNull(new CircuitBreakerRegistry(false, 50, 5000, 10, 4, 60).getCircuitBreaker(EXCHANGE, ENDPOINT));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMinimumCallsMustFitInWindow() {
+        new CircuitBreakerRegistry(true, 50, 5000, 10, 11, 60);
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    //  Private utils
+    // ------------------------------------------------------------------------------------------------
+
+    private static CircuitBreaker createCircuitBreaker() {
+        return new CircuitBreaker(EXCHANGE, ENDPOINT, 50, SLOW_CALL_MILLIS, 10, 4, OPEN_MILLIS);
+    }
+
+    private static void makeCall(CircuitBreaker circuitBreaker, long latencyInNanos, boolean networkFailure,
+                                 long nowMillis) {
+        assertTrue(circuitBreaker.tryAcquirePermission(nowMillis));
+        circuitBreaker.recordCall(latencyInNanos, networkFailure, nowMillis);
+    }
+
+    private static void tripBreaker(CircuitBreaker circuitBreaker, long nowMillis) {
+        for (int i = 0; i < 4; i++) {
+            makeCall(circuitBreaker, FAST_CALL, true, nowMillis);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+}
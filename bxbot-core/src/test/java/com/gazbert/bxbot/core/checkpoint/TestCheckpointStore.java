@@ -0,0 +1,228 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.checkpoint;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the Checkpoint Store behaves as expected.
+ *
+ * @author gazbert
+ */
+public class TestCheckpointStore {
+
+    private static final String EXCHANGE_ID = "bitstamp";
+    private static final String MARKET_ID = "btc/usd";
+    private static final String STRATEGY_ID = "scalping-strategy";
+    private static final long FLUSH_TIMEOUT = 5000;
+
+    @Rule
+    public TemporaryFolder checkpointFolder = new TemporaryFolder();
+
+    private CheckpointStore checkpointStore;
+
+    @Before
+    public void setUpBeforeEachTest() {
+        checkpointStore = openStore();
+    }
+
+    @After
+    public void tearDownAfterEachTest() {
+        checkpointStore.shutdown();
+    }
+
+    @Test
+    public void testSnapshotIsRestoredAfterRestart() throws Exception {
+
+        assertNull(checkpointStore.load(EXCHANGE_ID, MARKET_ID, STRATEGY_ID));
+
+        checkpointStore.save(EXCHANGE_ID, MARKET_ID, STRATEGY_ID, snapshot("45345346", "BUY"));
+        assertTrue(checkpointStore.flush(FLUSH_TIMEOUT));
+        restartStore();
+
+        final Map<String, String> restored = checkpointStore.load(EXCHANGE_ID, MARKET_ID, STRATEGY_ID);
+        assertEquals(snapshot("45345346", "BUY"), restored);
+        assertTrue(restored.containsKey("note"));
+        assertNull(restored.get("note"));
+
+        // other strategies on the market have their own snapshot
+        assertNull(checkpointStore.load(EXCHANGE_ID, MARKET_ID, "macd-strategy"));
+    }
+
+    @Test
+    public void testLatestSnapshotWins() throws Exception {
+
+        checkpointStore.save(EXCHANGE_ID, MARKET_ID, STRATEGY_ID, snapshot("1", "BUY"));
+        checkpointStore.save(EXCHANGE_ID, MARKET_ID, STRATEGY_ID, snapshot("2", "SELL"));
+        assertTrue(checkpointStore.flush(FLUSH_TIMEOUT));
+        checkpointStore.save(EXCHANGE_ID, MARKET_ID, STRATEGY_ID, snapshot("3", "BUY"));
+
+        // pending snapshot is written on shutdown
+        restartStore();
+        assertEquals(snapshot("3", "BUY"), checkpointStore.load(EXCHANGE_ID, MARKET_ID, STRATEGY_ID));
+    }
+
+    @Test
+    public void testUnchangedSnapshotIsNotRewritten() throws Exception {
+
+        checkpointStore.save(EXCHANGE_ID, MARKET_ID, STRATEGY_ID, snapshot("1", "BUY"));
+        assertTrue(checkpointStore.flush(FLUSH_TIMEOUT));
+        final Path checkpointFile = checkpointFile();
+        Files.delete(checkpointFile);
+
+        checkpointStore.save(EXCHANGE_ID, MARKET_ID, STRATEGY_ID, snapshot("1", "BUY"));
+        assertTrue(checkpointStore.flush(FLUSH_TIMEOUT));
+        assertFalse(Files.exists(checkpointFile));
+
+        checkpointStore.save(EXCHANGE_ID, MARKET_ID, STRATEGY_ID, snapshot("2", "BUY"));
+        assertTrue(checkpointStore.flush(FLUSH_TIMEOUT));
+        assertTrue(Files.exists(checkpointFile));
+    }
+
+    @Test
+    public void testDeletedSnapshotIsNotRestored() throws Exception {
+
+        checkpointStore.save(EXCHANGE_ID, MARKET_ID, STRATEGY_ID, snapshot("45345346", "BUY"));
+        assertTrue(checkpointStore.flush(FLUSH_TIMEOUT));
+        final Path checkpointFile = checkpointFile();
+
+        // the delete is seen straight away, before it has been written
+        checkpointStore.delete(EXCHANGE_ID, MARKET_ID, STRATEGY_ID);
+        assertNull(checkpointStore.load(EXCHANGE_ID, MARKET_ID, STRATEGY_ID));
+        assertTrue(checkpointStore.flush(FLUSH_TIMEOUT));
+        assertFalse(Files.exists(checkpointFile));
+
+        // the same snapshot saved again after the delete is written again
+        checkpointStore.save(EXCHANGE_ID, MARKET_ID, STRATEGY_ID, snapshot("45345346", "BUY"));
+        assertTrue(checkpointStore.flush(FLUSH_TIMEOUT));
+        assertTrue(Files.exists(checkpointFile));
+    }
+
+    @Test
+    public void testCorruptSnapshotIsIgnored() throws Exception {
+
+        checkpointStore.save(EXCHANGE_ID, MARKET_ID, STRATEGY_ID, snapshot("45345346", "BUY"));
+        assertTrue(checkpointStore.flush(FLUSH_TIMEOUT));
+        restartStore();
+
+        final Path checkpointFile = checkpointFile();
+        final byte[] bytes = Files.readAllBytes(checkpointFile);
+        bytes[bytes.length - 1] ^= 0x7f;
+        Files.write(checkpointFile, bytes);
+
+        assertNull(checkpointStore.load(EXCHANGE_ID, MARKET_ID, STRATEGY_ID));
+    }
+
+    @Test
+    public void testNothingIsCheckpointedWhenDisabled() throws Exception {
+
+        checkpointStore.shutdown();
+        checkpointStore = new CheckpointStore(false, checkpointFolder.getRoot().getPath());
+
+        checkpointStore.save(EXCHANGE_ID, MARKET_ID, STRATEGY_ID, snapshot("45345346", "BUY"));
+        assertTrue(checkpointStore.flush(FLUSH_TIMEOUT));
+        assertEquals(0, checkpointFolder.getRoot().list().length);
+        assertNull(checkpointStore.load(EXCHANGE_ID, MARKET_ID, STRATEGY_ID));
+    }
+
+    @Test
+    public void testNonceIsRestoredAfterRestartAndListenersAreTold() throws Exception {
+
+        final List<String> heard = new ArrayList<>();
+        checkpointStore.addCheckpointListener(new CheckpointListener() {
+            @Override
+            public void onSnapshotSaved(String exchangeId, String marketId, String strategyId,
+                                        Map<String, String> snapshot) {
+                heard.add(strategyId + "=" + snapshot.get("last-order-id"));
+            }
+
+            @Override
+            public void onSnapshotDeleted(String exchangeId, String marketId, String strategyId) {
+                heard.add(strategyId + " deleted");
+            }
+
+            @Override
+            public void onNonceSaved(String exchangeId, long nonce) {
+                heard.add(exchangeId + "=" + nonce);
+            }
+        });
+
+        assertNull(checkpointStore.loadNonce(EXCHANGE_ID));
+        checkpointStore.save(EXCHANGE_ID, MARKET_ID, STRATEGY_ID, snapshot("45345346", "BUY"));
+        checkpointStore.saveNonce(EXCHANGE_ID, 1234567890L);
+        checkpointStore.delete(EXCHANGE_ID, MARKET_ID, STRATEGY_ID);
+        assertEquals(Arrays.asList(STRATEGY_ID + "=45345346", EXCHANGE_ID + "=1234567890", STRATEGY_ID + " deleted"),
+                heard);
+
+        assertTrue(checkpointStore.flush(FLUSH_TIMEOUT));
+        assertTrue(new File(checkpointFolder.getRoot(), EXCHANGE_ID + "/" + CheckpointStore.NONCE_FILENAME).exists());
+        restartStore();
+        assertEquals(Long.valueOf(1234567890L), checkpointStore.loadNonce(EXCHANGE_ID));
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Private utils
+    // ------------------------------------------------------------------------------------------------
+
+    private CheckpointStore openStore() {
+        return new CheckpointStore(true, checkpointFolder.getRoot().getPath());
+    }
+
+    private void restartStore() {
+        checkpointStore.shutdown();
+        checkpointStore = openStore();
+    }
+
+    private Path checkpointFile() {
+        // market id is made safe for the filesystem
+        final File file = new File(checkpointFolder.getRoot(),
+                EXCHANGE_ID + "/btc_usd/" + STRATEGY_ID + CheckpointStore.FILE_EXTENSION);
+        assertTrue(file.exists());
+        return file.toPath();
+    }
+
+    private static Map<String, String> snapshot(String orderId, String orderType) {
+        final Map<String, String> snapshot = new LinkedHashMap<>();
+        snapshot.put("last-order-id", orderId);
+        snapshot.put("last-order-type", orderType);
+        snapshot.put("last-order-price", "1454.018");
+        snapshot.put("note", null);
+        return snapshot;
+    }
+}
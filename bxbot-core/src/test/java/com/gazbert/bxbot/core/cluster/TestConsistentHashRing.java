@@ -0,0 +1,99 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.cluster;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the consistent hash ring shares keys out between the nodes as expected.
+ *
+ * @author gazbert
+ */
+public class TestConsistentHashRing {
+
+    private static final int VIRTUAL_NODES = 100;
+    private static final int KEY_COUNT = 1000;
+
+    @Test
+    public void testEveryNodeBuildsTheSameRing() {
+
+        final ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("node-a", "node-b", "node-c"),
+                VIRTUAL_NODES);
+        final ConsistentHashRing sameRing = new ConsistentHashRing(Arrays.asList("node-c", "node-a", "node-b"),
+                VIRTUAL_NODES);
+
+        for (int i = 0; i < KEY_COUNT; i++) {
+            assertEquals(ring.nodeFor("market-" + i), sameRing.nodeFor("market-" + i));
+        }
+    }
+
+    @Test
+    public void testKeysAreSpreadOverTheNodes() {
+
+        final ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("node-a", "node-b", "node-c"),
+                VIRTUAL_NODES);
+
+        final Map<String, Integer> keysPerNode = new HashMap<>();
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keysPerNode.merge(ring.nodeFor("market-" + i), 1, Integer::sum);
+        }
+
+        assertEquals(ring.getNodeIds(), keysPerNode.keySet());
+        // a fair share is 333 - allow for the hashing not being perfectly even
+        keysPerNode.values().forEach(keyCount -> assertTrue("Keys on node: " + keyCount, keyCount > 200));
+    }
+
+    @Test
+    public void testOnlyTheLeavingNodesKeysMove() {
+
+        final ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("node-a", "node-b", "node-c"),
+                VIRTUAL_NODES);
+        final ConsistentHashRing ringAfterLeave = new ConsistentHashRing(Arrays.asList("node-a", "node-b"),
+                VIRTUAL_NODES);
+
+        for (int i = 0; i < KEY_COUNT; i++) {
+            final String owner = ring.nodeFor("market-" + i);
+            if (!owner.equals("node-c")) {
+                assertEquals(owner, ringAfterLeave.nodeFor("market-" + i));
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyRingHasNoOwners() {
+        assertNull(new ConsistentHashRing(Collections.emptyList(), VIRTUAL_NODES).nodeFor("market-1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testVirtualNodesMustBePositive() {
+        new ConsistentHashRing(Collections.singletonList("node-a"), 0);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.cluster;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the File Cluster Coordinator tracks the live nodes and market claims as expected.
+ *
+ * @author gazbert
+ */
+public class TestFileClusterCoordinator {
+
+    private static final long NODE_TTL = 60 * 1000L;
+
+    @Rule
+    public TemporaryFolder clusterFolder = new TemporaryFolder();
+
+    @Test
+    public void testNodesSeeEachOther() throws Exception {
+
+        final FileClusterCoordinator nodeA = new FileClusterCoordinator(clusterFolder.getRoot().toPath(), NODE_TTL);
+        final FileClusterCoordinator nodeB = new FileClusterCoordinator(clusterFolder.getRoot().toPath(), NODE_TTL);
+
+        assertEquals(Collections.singleton("node-a"), nodeA.heartbeat("node-a"));
+        assertEquals(new HashSet<>(Arrays.asList("node-a", "node/b")), nodeB.heartbeat("node/b"));
+        assertEquals(new HashSet<>(Arrays.asList("node-a", "node/b")), nodeA.heartbeat("node-a"));
+    }
+
+    @Test
+    public void testNodeThatLeavesIsDropped() throws Exception {
+
+        final FileClusterCoordinator coordinator =
+                new FileClusterCoordinator(clusterFolder.getRoot().toPath(), NODE_TTL);
+        coordinator.heartbeat("node-a");
+        coordinator.heartbeat("node-b");
+
+        coordinator.leave("node-b");
+
+        assertEquals(Collections.singleton("node-a"), coordinator.heartbeat("node-a"));
+    }
+
+    @Test
+    public void testNodeThatStopsHeartbeatingIsDropped() throws Exception {
+
+        final FileClusterCoordinator coordinator = new FileClusterCoordinator(clusterFolder.getRoot().toPath(), 200);
+        coordinator.heartbeat("node-b");
+
+        Thread.sleep(400);
+
+        assertEquals(Collections.singleton("node-a"), coordinator.heartbeat("node-a"));
+    }
+
+    @Test
+    public void testMarketClaimIsHeldUntilReleased() throws Exception {
+
+        final FileClusterCoordinator nodeA = new FileClusterCoordinator(clusterFolder.getRoot().toPath(), NODE_TTL);
+        final FileClusterCoordinator nodeB = new FileClusterCoordinator(clusterFolder.getRoot().toPath(), NODE_TTL);
+        nodeA.heartbeat("node-a");
+        nodeB.heartbeat("node-b");
+
+        assertTrue(nodeA.claimMarket("node-a", "btc_usd"));
+        assertTrue(nodeA.claimMarket("node-a", "btc_usd"));
+        assertFalse(nodeB.claimMarket("node-b", "btc_usd"));
+
+        // only the holder can release it
+        nodeB.releaseMarket("node-b", "btc_usd");
+        assertFalse(nodeB.claimMarket("node-b", "btc_usd"));
+
+        nodeA.releaseMarket("node-a", "btc_usd");
+        assertTrue(nodeB.claimMarket("node-b", "btc_usd"));
+        assertFalse(nodeA.claimMarket("node-a", "btc_usd"));
+    }
+
+    @Test
+    public void testMarketClaimOfNodeThatStopsHeartbeatingCanBeTaken() throws Exception {
+
+        final FileClusterCoordinator coordinator = new FileClusterCoordinator(clusterFolder.getRoot().toPath(), 200);
+        coordinator.heartbeat("node-a");
+        coordinator.heartbeat("node-b");
+        assertTrue(coordinator.claimMarket("node-a", "btc_usd"));
+        assertFalse(coordinator.claimMarket("node-b", "btc_usd"));
+
+        Thread.sleep(400);
+
+        coordinator.heartbeat("node-b");
+        assertTrue(coordinator.claimMarket("node-b", "btc_usd"));
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.cluster;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the Market Shard Assigner shares the markets out between the nodes as expected.
+ *
+ * @author gazbert
+ */
+public class TestMarketShardAssigner {
+
+    private static final int VIRTUAL_NODES = 100;
+    private static final int HEARTBEAT_INTERVAL_SECS = 60;
+    private static final int NODE_TTL_SECS = 300;
+    private static final int MARKET_COUNT = 100;
+
+    @Rule
+    public TemporaryFolder clusterFolder = new TemporaryFolder();
+
+    private MarketShardAssigner nodeA;
+    private MarketShardAssigner nodeB;
+
+    @After
+    public void tearDownAfterEachTest() {
+        if (nodeA != null) {
+            nodeA.shutdown();
+        }
+        if (nodeB != null) {
+            nodeB.shutdown();
+        }
+    }
+
+    @Test
+    public void testEveryMarketIsAssignedWhenClusterModeIsOff() {
+
+        nodeA = new MarketShardAssigner(false, "node-a", VIRTUAL_NODES, HEARTBEAT_INTERVAL_SECS, NODE_TTL_SECS,
+                null);
+        nodeA.start();
+
+        assertFalse(nodeA.isEnabled());
+        assertTrue(nodeA.isAssigned("btc_usd"));
+        assertTrue(nodeA.claim("btc_usd"));
+        assertEquals(0, nodeA.getAssignmentVersion());
+    }
+
+    @Test
+    public void testEachMarketIsAssignedToOneNode() {
+
+        nodeA = createNode("node-a");
+        nodeB = createNode("node-b");
+        nodeA.heartbeat(); // picks up node-b
+
+        int marketsOnNodeA = 0;
+        for (int i = 0; i < MARKET_COUNT; i++) {
+            final String marketId = "market-" + i;
+            assertTrue(nodeA.isAssigned(marketId) ^ nodeB.isAssigned(marketId));
+            if (nodeA.isAssigned(marketId)) {
+                marketsOnNodeA++;
+            }
+        }
+        assertTrue(marketsOnNodeA > 0 && marketsOnNodeA < MARKET_COUNT);
+    }
+
+    @Test
+    public void testMarketsAreRebalancedWhenNodeJoinsAndLeaves() {
+
+        nodeA = createNode("node-a");
+        final long versionBeforeJoin = nodeA.getAssignmentVersion();
+        for (int i = 0; i < MARKET_COUNT; i++) {
+            assertTrue(nodeA.isAssigned("market-" + i));
+        }
+
+        nodeB = createNode("node-b");
+        nodeA.heartbeat();
+        assertTrue(nodeA.getAssignmentVersion() > versionBeforeJoin);
+
+        // no change in membership, no rebalance
+        final long versionAfterJoin = nodeA.getAssignmentVersion();
+        nodeA.heartbeat();
+        assertEquals(versionAfterJoin, nodeA.getAssignmentVersion());
+
+        nodeB.shutdown();
+        nodeB = null;
+        nodeA.heartbeat();
+        assertTrue(nodeA.getAssignmentVersion() > versionAfterJoin);
+        for (int i = 0; i < MARKET_COUNT; i++) {
+            assertTrue(nodeA.isAssigned("market-" + i));
+        }
+    }
+
+    @Test
+    public void testMovedMarketIsOnlyHandedOverOnceReleased() {
+
+        nodeA = createNode("node-a");
+        for (int i = 0; i < MARKET_COUNT; i++) {
+            assertTrue(nodeA.claim("market-" + i));
+        }
+
+        // node-b joins, and node-a has not seen it yet - both think the moved markets are theirs
+        nodeB = createNode("node-b");
+        String movedMarketId = null;
+        for (int i = 0; i < MARKET_COUNT && movedMarketId == null; i++) {
+            if (nodeB.isAssigned("market-" + i)) {
+                movedMarketId = "market-" + i;
+            }
+        }
+        assertNotNull(movedMarketId);
+        assertTrue(nodeA.isAssigned(movedMarketId));
+        assertFalse(nodeB.claim(movedMarketId));
+
+        // node-a sees node-b, stops trading the market, and releases it after its final checkpoint
+        nodeA.heartbeat();
+        assertFalse(nodeA.isAssigned(movedMarketId));
+        assertFalse(nodeB.claim(movedMarketId));
+        nodeA.release(movedMarketId);
+        assertTrue(nodeB.claim(movedMarketId));
+    }
+
+    @Test
+    public void testHostedBotsClaimTheirMarketsApartFromTheMainBot() {
+
+        final String marketKey = "bitstamp/btc_usd";
+        nodeA = createNode("node-a");
+        nodeB = createNode("node-b");
+        final MarketShardAssigner hostedBotOnNodeA = nodeA.forBot("bot-2");
+        final MarketShardAssigner hostedBotOnNodeB = nodeB.forBot("bot-2");
+
+        // the main bot's claim does not block the hosted bot's claim on the same market...
+        assertTrue(nodeA.claim(marketKey));
+        assertTrue(hostedBotOnNodeA.claim(marketKey));
+
+        // ...but the same hosted bot on another node is kept off it until it is released
+        assertFalse(hostedBotOnNodeB.claim(marketKey));
+        hostedBotOnNodeA.release(marketKey);
+        assertTrue(hostedBotOnNodeB.claim(marketKey));
+        assertFalse(nodeB.claim(marketKey));
+
+        assertEquals(nodeA.getAssignmentVersion(), hostedBotOnNodeA.getAssignmentVersion());
+        assertEquals(nodeB.isAssigned("bot-2/" + marketKey), hostedBotOnNodeB.isAssigned(marketKey));
+    }
+
+    @Test
+    public void testNodeGivesUpMarketsWhenItCannotHeartbeat() throws Exception {
+
+        final FailingClusterCoordinator coordinator = new FailingClusterCoordinator(
+                new FileClusterCoordinator(clusterFolder.getRoot().getPath(), 3));
+        nodeA = new MarketShardAssigner(true, "node-a", VIRTUAL_NODES, 1, 3, coordinator);
+        nodeA.start();
+        assertTrue(nodeA.isAssigned("btc_usd"));
+        final long versionBeforeFailure = nodeA.getAssignmentVersion();
+
+        // carries on with its markets for a missed heartbeat...
+        coordinator.failing = true;
+        nodeA.heartbeat();
+        assertTrue(nodeA.isAssigned("btc_usd"));
+
+        // ...but gives them up before the other nodes could drop it and take them over
+        Thread.sleep(1600);
+        nodeA.heartbeat();
+        assertFalse(nodeA.isAssigned("btc_usd"));
+        assertTrue(nodeA.getAssignmentVersion() > versionBeforeFailure);
+
+        coordinator.failing = false;
+        nodeA.heartbeat();
+        assertTrue(nodeA.isAssigned("btc_usd"));
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Private utils
+    // ------------------------------------------------------------------------------------------------
+
+    private MarketShardAssigner createNode(String nodeId) {
+        final MarketShardAssigner node = new MarketShardAssigner(true, nodeId, VIRTUAL_NODES,
+                HEARTBEAT_INTERVAL_SECS, NODE_TTL_SECS,
+                new FileClusterCoordinator(clusterFolder.getRoot().getPath(), NODE_TTL_SECS));
+        node.start();
+        return node;
+    }
+
+    /*
+     * Fails the heartbeats while failing is set, as if the coordinator could not be reached.
+     */
+    private static class FailingClusterCoordinator implements ClusterCoordinator {
+
+        private final ClusterCoordinator delegate;
+        private volatile boolean failing;
+
+        FailingClusterCoordinator(ClusterCoordinator delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String getName() {
+            return delegate.getName();
+        }
+
+        @Override
+        public Set<String> heartbeat(String nodeId) throws ClusterCoordinatorException {
+            if (failing) {
+                throw new ClusterCoordinatorException("Coordinator unreachable");
+            }
+            return delegate.heartbeat(nodeId);
+        }
+
+        @Override
+        public void leave(String nodeId) throws ClusterCoordinatorException {
+            delegate.leave(nodeId);
+        }
+
+        @Override
+        public boolean claimMarket(String nodeId, String marketId) throws ClusterCoordinatorException {
+            return delegate.claimMarket(nodeId, marketId);
+        }
+
+        @Override
+        public void releaseMarket(String nodeId, String marketId) throws ClusterCoordinatorException {
+            delegate.releaseMarket(nodeId, marketId);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.engine;
+
+import com.gazbert.bxbot.domain.strategy.StrategyConfig;
+import com.gazbert.bxbot.exchange.api.ExchangeAdapter;
+import com.gazbert.bxbot.exchange.api.ExchangeConfig;
+import com.gazbert.bxbot.exchange.api.replay.ResponseReplay;
+import com.gazbert.bxbot.strategy.api.StrategyException;
+import com.gazbert.bxbot.strategy.api.TradingStrategy;
+import com.gazbert.bxbot.trading.api.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the JIT warm-up phase behaves as expected.
+ *
+ * @author gazbert
+ */
+public class TestExchangeWarmUp {
+
+    private static final String EXCHANGE_ID = "bitstamp";
+    private static final String MARKET_ID = "btc_usd";
+    private static final BigDecimal LATEST_PRICE = new BigDecimal("1454.018");
+
+    private StubExchangeAdapter liveExchangeAdapter;
+    private StubExchangeAdapter replayingExchangeAdapter;
+    private List<MarketBinding> marketBindings;
+
+
+    @Before
+    public void setUpBeforeEachTest() {
+        liveExchangeAdapter = new StubExchangeAdapter(true);
+        replayingExchangeAdapter = new StubExchangeAdapter(true);
+        CountingStrategy.executions.set(0);
+        marketBindings = Collections.singletonList(new MarketBinding(EXCHANGE_ID,
+                new Market("BTC/USD", MARKET_ID, "BTC", "USD"), new StrategyConfig("counting-strategy",
+                "Counting Strategy", null, CountingStrategy.class.getName(), null)));
+    }
+
+    @Test
+    public void testLiveResponsesAreRecordedOnceThenReplayedToAdapterAndStrategies() {
+
+        final int iterations = new ExchangeWarmUp(EXCHANGE_ID, liveExchangeAdapter, replayingExchangeAdapter,
+                marketBindings, 7, 0).call();
+
+        assertEquals(7, iterations);
+        assertEquals(1, liveExchangeAdapter.liveCalls);
+        assertEquals(0, liveExchangeAdapter.replayedCalls);
+
+        // once by the warm-up itself, once by the strategy, each iteration - and no orders hit the adapter
+        assertEquals(0, replayingExchangeAdapter.liveCalls);
+        assertEquals(14, replayingExchangeAdapter.replayedCalls);
+        assertEquals(7, CountingStrategy.executions.get());
+        assertEquals(0, replayingExchangeAdapter.ordersPlaced);
+        assertNull(ResponseReplay.current());
+    }
+
+    @Test
+    public void testWarmUpIsSkippedWhenNothingIsRecorded() {
+
+        liveExchangeAdapter = new StubExchangeAdapter(false);
+        final int iterations = new ExchangeWarmUp(EXCHANGE_ID, liveExchangeAdapter, replayingExchangeAdapter,
+                marketBindings, 7, 0).call();
+
+        assertEquals(0, iterations);
+        assertEquals(0, replayingExchangeAdapter.replayedCalls);
+        assertEquals(0, CountingStrategy.executions.get());
+    }
+
+    @Test
+    public void testSteadyStateIsReachedWhenIterationTimesSettle() {
+
+        final List<Long> settled = Arrays.asList(900L, 400L, 250L, 200L, 200L, 100L, 100L, 100L, 100L, 100L,
+                100L, 101L, 99L, 100L, 102L);
+        assertFalse(ExchangeWarmUp.isSteadyState(settled.subList(0, 9), 5));
+        assertFalse(ExchangeWarmUp.isSteadyState(settled.subList(0, 10), 5));
+        assertTrue(ExchangeWarmUp.isSteadyState(settled, 5));
+        assertFalse(ExchangeWarmUp.isSteadyState(settled, 0));
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Test doubles
+    // ------------------------------------------------------------------------------------------------
+
+    /*
+     * Pretends to go to the exchange for the latest market price, recording and replaying through the session on
+     * the current thread like the real adapters do. Everything else fails.
+     */
+    private static final class StubExchangeAdapter implements ExchangeAdapter {
+
+        private final boolean respond;
+        private int liveCalls;
+        private int replayedCalls;
+        private int ordersPlaced;
+
+        StubExchangeAdapter(boolean respond) {
+            this.respond = respond;
+        }
+
+        @Override
+        public BigDecimal getLatestMarketPrice(String marketId) throws ExchangeNetworkException {
+            final ResponseReplay responseReplay = ResponseReplay.current();
+            final URL url = tickerUrl(marketId);
+            if (responseReplay != null && responseReplay.isReplaying()) {
+                final ResponseReplay.RecordedResponse recordedResponse = responseReplay.replay("GET", url);
+                if (recordedResponse == null) {
+                    throw new ExchangeNetworkException("Nothing recorded");
+                }
+                replayedCalls++;
+                return new BigDecimal(recordedResponse.getPayload());
+            }
+            if (!respond) {
+                throw new ExchangeNetworkException("Exchange is down");
+            }
+            liveCalls++;
+            if (responseReplay != null) {
+                responseReplay.record("GET", url, 200, "OK", LATEST_PRICE.toPlainString());
+            }
+            return LATEST_PRICE;
+        }
+
+        @Override
+        public String createOrder(String marketId, OrderType orderType, BigDecimal quantity, BigDecimal price) {
+            ordersPlaced++;
+            return "1";
+        }
+
+        @Override
+        public void init(ExchangeConfig config) {
+        }
+
+        @Override
+        public String getImplName() {
+            return "Stub";
+        }
+
+        @Override
+        public MarketOrderBook getMarketOrders(String marketId) throws TradingApiException {
+            throw new TradingApiException("Not supported");
+        }
+
+        @Override
+        public List<OpenOrder> getYourOpenOrders(String marketId) throws TradingApiException {
+            throw new TradingApiException("Not supported");
+        }
+
+        @Override
+        public boolean cancelOrder(String orderId, String marketId) throws TradingApiException {
+            throw new TradingApiException("Not supported");
+        }
+
+        @Override
+        public BalanceInfo getBalanceInfo() throws TradingApiException {
+            throw new TradingApiException("Not supported");
+        }
+
+        @Override
+        public BigDecimal getPercentageOfBuyOrderTakenForExchangeFee(String marketId) throws TradingApiException {
+            throw new TradingApiException("Not supported");
+        }
+
+        @Override
+        public BigDecimal getPercentageOfSellOrderTakenForExchangeFee(String marketId) throws TradingApiException {
+            throw new TradingApiException("Not supported");
+        }
+
+        private static URL tickerUrl(String marketId) {
+            try {
+                return new URL("https://exchange.test/ticker/" + marketId);
+            } catch (MalformedURLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Buys at the latest price every time it is executed.
+     */
+    public static final class CountingStrategy implements TradingStrategy {
+
+        static final AtomicInteger executions = new AtomicInteger();
+
+        private TradingApi tradingApi;
+        private Market market;
+
+        @Override
+        public void init(TradingApi tradingApi, Market market, com.gazbert.bxbot.strategy.api.StrategyConfig config) {
+            this.tradingApi = tradingApi;
+            this.market = market;
+        }
+
+        @Override
+        public void execute() throws StrategyException {
+            try {
+                final BigDecimal price = tradingApi.getLatestMarketPrice(market.getId());
+                tradingApi.createOrder(market.getId(), OrderType.BUY, BigDecimal.ONE, price);
+                executions.incrementAndGet();
+            } catch (ExchangeNetworkException | TradingApiException e) {
+                throw new StrategyException(e);
+            }
+        }
+    }
+}
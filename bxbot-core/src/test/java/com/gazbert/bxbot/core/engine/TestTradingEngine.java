@@ -23,26 +23,42 @@
 
 package com.gazbert.bxbot.core.engine;
 
-import com.gazbert.bxbot.core.mail.EmailAlerter;
+import com.gazbert.bxbot.core.accounting.PositionLedger;
+import com.gazbert.bxbot.core.alerts.AlertDispatcher;
+import com.gazbert.bxbot.core.breaker.CircuitBreakerRegistry;
+import com.gazbert.bxbot.core.checkpoint.CheckpointStore;
+import com.gazbert.bxbot.core.cluster.MarketShardAssigner;
+import com.gazbert.bxbot.core.failover.FailoverManager;
+import com.gazbert.bxbot.core.failover.ReplicationTransport;
+import com.gazbert.bxbot.core.journal.TradeJournal;
+import com.gazbert.bxbot.core.metrics.ExchangeMetricsRegistry;
+import com.gazbert.bxbot.core.metrics.InstrumentedExchangeAdapter;
+import com.gazbert.bxbot.core.ratelimit.RateLimiterRegistry;
+import com.gazbert.bxbot.core.startup.StartupProfiler;
+import com.gazbert.bxbot.core.trace.TraceRecorder;
 import com.gazbert.bxbot.core.util.ConfigurableComponentFactory;
 import com.gazbert.bxbot.domain.engine.EngineConfig;
 import com.gazbert.bxbot.domain.exchange.AuthenticationConfig;
 import com.gazbert.bxbot.domain.exchange.NetworkConfig;
 import com.gazbert.bxbot.domain.exchange.OptionalConfig;
 import com.gazbert.bxbot.domain.market.MarketConfig;
+import com.gazbert.bxbot.domain.startup.StartupReport;
 import com.gazbert.bxbot.domain.strategy.StrategyConfig;
 import com.gazbert.bxbot.exchange.api.ExchangeAdapter;
 import com.gazbert.bxbot.exchange.api.ExchangeConfig;
+import com.gazbert.bxbot.exchange.api.trace.Tracer;
 import com.gazbert.bxbot.services.EngineConfigService;
 import com.gazbert.bxbot.services.ExchangeConfigService;
 import com.gazbert.bxbot.services.MarketConfigService;
 import com.gazbert.bxbot.services.StrategyConfigService;
+import com.gazbert.bxbot.strategy.api.CheckpointableStrategy;
 import com.gazbert.bxbot.strategy.api.StrategyException;
 import com.gazbert.bxbot.strategy.api.TradingStrategy;
 import com.gazbert.bxbot.trading.api.BalanceInfo;
 import com.gazbert.bxbot.trading.api.ExchangeNetworkException;
 import com.gazbert.bxbot.trading.api.Market;
 import com.gazbert.bxbot.trading.api.TradingApiException;
+import org.easymock.IArgumentMatcher;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -57,7 +73,9 @@ import java.util.concurrent.Executors;
 
 import static junit.framework.TestCase.assertTrue;
 import static org.easymock.EasyMock.*;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 
 /**
  * Tests the behaviour of the Trading Engine is as expected.
@@ -76,6 +94,7 @@ public class TestTradingEngine {
 
     // for email alerts
     private static final String CRITICAL_EMAIL_ALERT_SUBJECT = "CRITICAL Alert message from BX-bot";
+    private static final String CONFIG_CHANGE_EMAIL_ALERT_SUBJECT = "WARNING Alert message from BX-bot";
 
     // Exchange Adapter config
     private static final String EXCHANGE_ADAPTER_IMPL_CLASS = "com.my.adapters.DummyBitstampExchangeAdapter";
@@ -91,6 +110,11 @@ public class TestTradingEngine {
     private static final String EXCHANGE_ADAPTER_OTHER_CONFIG_ITEM_NAME = "sell-fee";
     private static final String EXCHANGE_ADAPTER_OTHER_CONFIG_ITEM_VALUE = "0.25";
 
+    // 2nd Exchange Adapter config
+    private static final String EXCHANGE_2_ID = "gdax-main";
+    private static final String EXCHANGE_2_ADAPTER_IMPL_CLASS = "com.my.adapters.DummyGdaxExchangeAdapter";
+    private static final String EXCHANGE_2_NAME = "GDAX";
+
     // Engine config
     private static final String ENGINE_EMERGENCY_STOP_CURRENCY = "BTC";
     private static final BigDecimal ENGINE_EMERGENCY_STOP_BALANCE = new BigDecimal("0.5");
@@ -110,16 +134,34 @@ public class TestTradingEngine {
     private static final String MARKET_BASE_CURRENCY = "BTC";
     private static final String MARKET_COUNTER_CURRENCY = "USD";
     private static final boolean MARKET_IS_ENABLED = true;
+    private static final String MARKET_2_NAME = "LTC/BTC";
+    private static final String MARKET_2_ID = "ltc_btc";
+    private static final String MARKET_2_BASE_CURRENCY = "LTC";
+    private static final String MARKET_2_COUNTER_CURRENCY = "BTC";
 
     // Mocks used by all tests
     private ExchangeAdapter exchangeAdapter;
+    private ExchangeAdapter emergencyStopExchangeAdapter;
     private TradingStrategy tradingStrategy;
-    private EmailAlerter emailAlerter;
+    private AlertDispatcher alertDispatcher;
+    private ExchangeMetricsRegistry exchangeMetricsRegistry;
+    private TraceRecorder traceRecorder;
+    private TradeJournal tradeJournal;
+    private PositionLedger positionLedger;
+    private CheckpointStore checkpointStore;
+    private StartupProfiler startupProfiler;
+    private MarketShardAssigner marketShardAssigner;
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+    private FailoverManager failoverManager;
     private ExchangeConfigService exchangeConfigService;
     private EngineConfigService engineConfigService;
     private StrategyConfigService strategyConfigService;
     private MarketConfigService marketConfigService;
 
+    // The tests change these to simulate config being updated while the engine is running
+    private volatile String marketConfigVersion = "1";
+    private volatile String strategyConfigVersion = "1";
+
     /*
      * Mock out Config subsystem; we're not testing it here - has its own unit tests.
      *
@@ -130,14 +172,28 @@ public class TestTradingEngine {
     public void setupForEachTest() throws Exception {
 
         exchangeAdapter = PowerMock.createMock(ExchangeAdapter.class);
+        emergencyStopExchangeAdapter = PowerMock.createMock(ExchangeAdapter.class);
         tradingStrategy = PowerMock.createMock(TradingStrategy.class);
-        emailAlerter = PowerMock.createMock(EmailAlerter.class);
+        alertDispatcher = PowerMock.createMock(AlertDispatcher.class);
+        exchangeMetricsRegistry = new ExchangeMetricsRegistry();
+        traceRecorder = new TraceRecorder(true, 10, 100);
+        tradeJournal = new TradeJournal(false, "./journal");
+        positionLedger = new PositionLedger(tradeJournal);
+        checkpointStore = new CheckpointStore(false, "./checkpoints");
+        startupProfiler = new StartupProfiler(false, 0, 5);
+        marketShardAssigner = new MarketShardAssigner(false, "", 100, 10, 30, null);
+        circuitBreakerRegistry = new CircuitBreakerRegistry(true, 50, 10000, 20, 10, 60);
+        failoverManager = new FailoverManager("none", 10, null, null, null);
 
         exchangeConfigService = PowerMock.createMock(ExchangeConfigService.class);
         engineConfigService = PowerMock.createMock(EngineConfigService.class);
         strategyConfigService = PowerMock.createMock(StrategyConfigService.class);
         marketConfigService = PowerMock.createMock(MarketConfigService.class);
 
+        // the engine checks the config versions before every trade cycle
+        expect(marketConfigService.getMarketConfigVersion()).andStubAnswer(() -> marketConfigVersion);
+        expect(strategyConfigService.getStrategyConfigVersion()).andStubAnswer(() -> strategyConfigVersion);
+
         PowerMock.mockStatic(ConfigurableComponentFactory.class);
     }
 
@@ -146,8 +202,7 @@ public class TestTradingEngine {
 
         PowerMock.replayAll();
 
-        final TradingEngine tradingEngine = new TradingEngine(exchangeConfigService, engineConfigService,
-                strategyConfigService, marketConfigService, emailAlerter);
+        final TradingEngine tradingEngine = newTradingEngine();
 
         assertFalse(tradingEngine.isRunning());
 
@@ -163,20 +218,19 @@ public class TestTradingEngine {
         // balance limit has been breached for BTC
         balancesAvailable.put(ENGINE_EMERGENCY_STOP_CURRENCY, new BigDecimal("0.49999999"));
 
-        // expect BalanceInfo to be fetched using Trading API
+        // expect BalanceInfo to be fetched by the Emergency Stop watchdog before the 1st trade cycle
         final BalanceInfo balanceInfo = PowerMock.createMock(BalanceInfo.class);
-        expect(exchangeAdapter.getBalanceInfo()).andReturn(balanceInfo);
+        expect(emergencyStopExchangeAdapter.getBalanceInfo()).andReturn(balanceInfo);
         expect(balanceInfo.getBalancesAvailable()).andReturn(balancesAvailable);
 
-        // expect Email Alert to be sent
-        emailAlerter.sendMessage(eq(CRITICAL_EMAIL_ALERT_SUBJECT),
+        // expect Email Alert to be dispatched
+        expect(alertDispatcher.dispatch(eq(CRITICAL_EMAIL_ALERT_SUBJECT),
                 contains("EMERGENCY STOP triggered! - Current Emergency Stop Currency [BTC] wallet balance [0.49999999]" +
-                        " on exchange is lower than configured Emergency Stop balance [0.5] BTC"));
+                        " on exchange is lower than configured Emergency Stop balance [0.5] BTC"), anyString())).andReturn(true);
 
         PowerMock.replayAll();
 
-        final TradingEngine tradingEngine = new TradingEngine(exchangeConfigService, engineConfigService,
-                strategyConfigService, marketConfigService, emailAlerter);
+        final TradingEngine tradingEngine = newTradingEngine();
         tradingEngine.start();
 
         // sleep for bit then and check if shutdown ok
@@ -199,8 +253,7 @@ public class TestTradingEngine {
 
         PowerMock.replayAll();
 
-        final TradingEngine tradingEngine = new TradingEngine(exchangeConfigService, engineConfigService,
-                strategyConfigService, marketConfigService, emailAlerter);
+        final TradingEngine tradingEngine = newTradingEngine();
 
         final Executor executor = Executors.newSingleThreadExecutor();
         executor.execute(tradingEngine::start);
@@ -233,19 +286,22 @@ public class TestTradingEngine {
         // balance limit NOT breached for BTC
         balancesAvailable.put(ENGINE_EMERGENCY_STOP_CURRENCY, new BigDecimal("0.5"));
 
-        // expect BalanceInfo to be fetched using Trading API
+        // expect BalanceInfo to be fetched by the Emergency Stop watchdog before the 1st trade cycle and then every 1s.
+        // The watchdog runs on its own schedule, so it might get in 1 more check before shutdown.
         final BalanceInfo balanceInfo = PowerMock.createMock(BalanceInfo.class);
-        expect(exchangeAdapter.getBalanceInfo()).andReturn(balanceInfo).times(numberOfTradeCycles);
-        expect(balanceInfo.getBalancesAvailable()).andReturn(balancesAvailable).times(numberOfTradeCycles);
+        expect(emergencyStopExchangeAdapter.getBalanceInfo()).andReturn(balanceInfo)
+                .times(numberOfTradeCycles, numberOfTradeCycles + 1);
+        expect(balanceInfo.getBalancesAvailable()).andReturn(balancesAvailable)
+                .times(numberOfTradeCycles, numberOfTradeCycles + 1);
 
-        // expect Trading Strategy to be invoked 2 times, once every 1s
+        // expect Trading Strategy to be invoked 2 times, once every 1s.
+        // The 3rd cycle is due just as we shutdown, so it might get in before the engine stops.
         tradingStrategy.execute();
-        expectLastCall().times(numberOfTradeCycles);
+        expectLastCall().times(numberOfTradeCycles, numberOfTradeCycles + 1);
 
         PowerMock.replayAll();
 
-        final TradingEngine tradingEngine = new TradingEngine(exchangeConfigService, engineConfigService,
-                strategyConfigService, marketConfigService, emailAlerter);
+        final TradingEngine tradingEngine = newTradingEngine();
 
         final Executor executor = Executors.newSingleThreadExecutor();
         executor.execute(tradingEngine::start);
@@ -255,6 +311,21 @@ public class TestTradingEngine {
         Thread.sleep(numberOfTradeCycles * 1000);
         assertTrue(tradingEngine.isRunning());
 
+        // expect the Emergency Stop balance checks to have been timed
+        assertTrue(exchangeMetricsRegistry.getCallMetrics().stream().anyMatch(callMetrics ->
+                "getBalanceInfo".equals(callMetrics.getEndpoint()) && callMetrics.getCallCount() >= numberOfTradeCycles));
+
+        // expect the trade cycles and Emergency Stop checks to have been traced
+        assertTrue(traceRecorder.getTimelines(TraceRecorder.TRADE_CYCLE, 10).stream().anyMatch(timeline ->
+                timeline.getSpans().stream().anyMatch(span -> Tracer.STRATEGY.equals(span.getName()))));
+        assertTrue(traceRecorder.getTimelines(TraceRecorder.EMERGENCY_STOP_CHECK, 10).stream().anyMatch(timeline ->
+                timeline.getSpans().stream().anyMatch(span -> Tracer.API_CALL.equals(span.getName()))));
+
+        // expect the startup phases to have been timed
+        final StartupReport startupReport = startupProfiler.getStartupReport();
+        assertNotNull(startupReport.getTimeToTrading());
+        assertTrue(startupReport.getPhases().stream().anyMatch(phase -> "init-strategies".equals(phase.getName())));
+
         tradingEngine.shutdown();
 
         // sleep for 1s and check if shutdown ok
@@ -280,24 +351,23 @@ public class TestTradingEngine {
         final BalanceInfo balanceInfo = PowerMock.createMock(BalanceInfo.class);
 
         // expect 1st trade cycle to be successful
-        expect(exchangeAdapter.getBalanceInfo()).andReturn(balanceInfo);
+        expect(emergencyStopExchangeAdapter.getBalanceInfo()).andReturn(balanceInfo);
         expect(balanceInfo.getBalancesAvailable()).andReturn(balancesAvailable);
         tradingStrategy.execute();
 
-        // expect StrategyException in 2nd trade cycle
-        expect(exchangeAdapter.getBalanceInfo()).andReturn(balanceInfo);
-        expect(balanceInfo.getBalancesAvailable()).andReturn(balancesAvailable);
+        // expect StrategyException in 2nd trade cycle - the watchdog might get in its next check before the engine shuts down
+        expect(emergencyStopExchangeAdapter.getBalanceInfo()).andReturn(balanceInfo).times(0, 1);
+        expect(balanceInfo.getBalancesAvailable()).andReturn(balancesAvailable).times(0, 1);
         tradingStrategy.execute();
         expectLastCall().andThrow(new StrategyException(exceptionErrorMsg));
 
-        // expect Email Alert to be sent
-        emailAlerter.sendMessage(eq(CRITICAL_EMAIL_ALERT_SUBJECT), contains("A FATAL error has occurred in Trading" +
-                " Strategy! Details: " + exceptionErrorMsg));
+        // expect Email Alert to be dispatched
+        expect(alertDispatcher.dispatch(eq(CRITICAL_EMAIL_ALERT_SUBJECT), contains("A FATAL error has occurred in Trading" +
+                " Strategy! Details: " + exceptionErrorMsg), anyString())).andReturn(true);
 
         PowerMock.replayAll();
 
-        final TradingEngine tradingEngine = new TradingEngine(exchangeConfigService, engineConfigService,
-                strategyConfigService, marketConfigService, emailAlerter);
+        final TradingEngine tradingEngine = newTradingEngine();
 
         tradingEngine.start();
 
@@ -324,24 +394,23 @@ public class TestTradingEngine {
         final BalanceInfo balanceInfo = PowerMock.createMock(BalanceInfo.class);
 
         // expect 1st trade cycle to be successful
-        expect(exchangeAdapter.getBalanceInfo()).andReturn(balanceInfo);
+        expect(emergencyStopExchangeAdapter.getBalanceInfo()).andReturn(balanceInfo);
         expect(balanceInfo.getBalancesAvailable()).andReturn(balancesAvailable);
         tradingStrategy.execute();
 
-        // expect unexpected Exception in 2nd trade cycle
-        expect(exchangeAdapter.getBalanceInfo()).andReturn(balanceInfo);
-        expect(balanceInfo.getBalancesAvailable()).andReturn(balancesAvailable);
+        // expect unexpected Exception in 2nd trade cycle - the watchdog might get in its next check before the engine shuts down
+        expect(emergencyStopExchangeAdapter.getBalanceInfo()).andReturn(balanceInfo).times(0, 1);
+        expect(balanceInfo.getBalancesAvailable()).andReturn(balancesAvailable).times(0, 1);
         tradingStrategy.execute();
         expectLastCall().andThrow(new IllegalArgumentException(exceptionErrorMsg));
 
-        // expect Email Alert to be sent
-        emailAlerter.sendMessage(eq(CRITICAL_EMAIL_ALERT_SUBJECT), contains("An unexpected FATAL error has occurred in" +
-                " Exchange Adapter or Trading Strategy! Details: " + exceptionErrorMsg));
+        // expect Email Alert to be dispatched
+        expect(alertDispatcher.dispatch(eq(CRITICAL_EMAIL_ALERT_SUBJECT), contains("An unexpected FATAL error has occurred in" +
+                " Exchange Adapter or Trading Strategy! Details: " + exceptionErrorMsg), anyString())).andReturn(true);
 
         PowerMock.replayAll();
 
-        final TradingEngine tradingEngine = new TradingEngine(exchangeConfigService, engineConfigService,
-                strategyConfigService, marketConfigService, emailAlerter);
+        final TradingEngine tradingEngine = newTradingEngine();
 
         tradingEngine.start();
 
@@ -367,22 +436,22 @@ public class TestTradingEngine {
         balancesAvailable.put(ENGINE_EMERGENCY_STOP_CURRENCY, new BigDecimal("0.5"));
         final BalanceInfo balanceInfo = PowerMock.createMock(BalanceInfo.class);
 
-        // expect 1st trade cycle to be successful
-        expect(exchangeAdapter.getBalanceInfo()).andReturn(balanceInfo);
+        // expect 1st trade cycle to be successful - the 2nd cycle might start before the watchdog's next check
+        expect(emergencyStopExchangeAdapter.getBalanceInfo()).andReturn(balanceInfo);
         expect(balanceInfo.getBalancesAvailable()).andReturn(balancesAvailable);
         tradingStrategy.execute();
+        expectLastCall().times(1, 2);
 
-        // expect unexpected Exception in 2nd trade cycle
-        expect(exchangeAdapter.getBalanceInfo()).andThrow(new IllegalStateException(exceptionErrorMsg));
+        // expect unexpected Exception at the watchdog's next check
+        expect(emergencyStopExchangeAdapter.getBalanceInfo()).andThrow(new IllegalStateException(exceptionErrorMsg));
 
-        // expect Email Alert to be sent
-        emailAlerter.sendMessage(eq(CRITICAL_EMAIL_ALERT_SUBJECT), contains("An unexpected FATAL error has occurred in" +
-                " Exchange Adapter or Trading Strategy! Details: " + exceptionErrorMsg));
+        // expect Email Alert to be dispatched
+        expect(alertDispatcher.dispatch(eq(CRITICAL_EMAIL_ALERT_SUBJECT), contains("An unexpected FATAL error has occurred in" +
+                " Exchange Adapter or Trading Strategy! Details: " + exceptionErrorMsg), anyString())).andReturn(true);
 
         PowerMock.replayAll();
 
-        final TradingEngine tradingEngine = new TradingEngine(exchangeConfigService, engineConfigService,
-                strategyConfigService, marketConfigService, emailAlerter);
+        final TradingEngine tradingEngine = newTradingEngine();
 
         tradingEngine.start();
 
@@ -408,22 +477,22 @@ public class TestTradingEngine {
         balancesAvailable.put(ENGINE_EMERGENCY_STOP_CURRENCY, new BigDecimal("0.5"));
         final BalanceInfo balanceInfo = PowerMock.createMock(BalanceInfo.class);
 
-        // expect 1st trade cycle to be successful
-        expect(exchangeAdapter.getBalanceInfo()).andReturn(balanceInfo);
+        // expect 1st trade cycle to be successful - the 2nd cycle might start before the watchdog's next check
+        expect(emergencyStopExchangeAdapter.getBalanceInfo()).andReturn(balanceInfo);
         expect(balanceInfo.getBalancesAvailable()).andReturn(balancesAvailable);
         tradingStrategy.execute();
+        expectLastCall().times(1, 2);
 
-        // expect TradingApiException in 2nd trade cycle
-        expect(exchangeAdapter.getBalanceInfo()).andThrow(new TradingApiException(exceptionErrorMsg));
+        // expect TradingApiException at the watchdog's next check
+        expect(emergencyStopExchangeAdapter.getBalanceInfo()).andThrow(new TradingApiException(exceptionErrorMsg));
 
-        // expect Email Alert to be sent
-        emailAlerter.sendMessage(eq(CRITICAL_EMAIL_ALERT_SUBJECT), contains("A FATAL error has occurred in Exchange" +
-                " Adapter! Details: " + exceptionErrorMsg));
+        // expect Email Alert to be dispatched
+        expect(alertDispatcher.dispatch(eq(CRITICAL_EMAIL_ALERT_SUBJECT), contains("A FATAL error has occurred in Exchange" +
+                " Adapter! Details: " + exceptionErrorMsg), anyString())).andReturn(true);
 
         PowerMock.replayAll();
 
-        final TradingEngine tradingEngine = new TradingEngine(exchangeConfigService, engineConfigService,
-                strategyConfigService, marketConfigService, emailAlerter);
+        final TradingEngine tradingEngine = newTradingEngine();
 
         tradingEngine.start();
 
@@ -436,8 +505,8 @@ public class TestTradingEngine {
 
     /*
      * Tests the engine continues to execute next trade cycle if it receives a ExchangeNetworkException.
-     * Scenario is 1 successful trade cycle, 2nd cycle Exchange Adapter throws ExchangeNetworkException, engine stays alive and
-     * successfully executes 3rd trade cycle.
+     * Scenario is 1 successful trade cycle, Emergency Stop watchdog's next check gets ExchangeNetworkException from
+     * Exchange Adapter, engine stays alive and carries on trading once the next check passes.
      */
     @Test
     public void testEngineExecutesNextTradeCyclesAfterReceivingExchangeNetworkException() throws Exception {
@@ -452,22 +521,23 @@ public class TestTradingEngine {
         balancesAvailable.put(ENGINE_EMERGENCY_STOP_CURRENCY, new BigDecimal("0.5"));
 
         // expect 1st trade cycle to be successful
-        expect(exchangeAdapter.getBalanceInfo()).andReturn(balanceInfo);
+        expect(emergencyStopExchangeAdapter.getBalanceInfo()).andReturn(balanceInfo);
         expect(balanceInfo.getBalancesAvailable()).andReturn(balancesAvailable);
         tradingStrategy.execute();
 
-        // expect BalanceInfo fetch to fail with ExchangeNetworkException on 2nd cycle
-        expect(exchangeAdapter.getBalanceInfo()).andThrow(new ExchangeNetworkException(exceptionErrorMsg));
+        // expect watchdog's next BalanceInfo fetch to fail with ExchangeNetworkException
+        expect(emergencyStopExchangeAdapter.getBalanceInfo()).andThrow(new ExchangeNetworkException(exceptionErrorMsg));
 
-        // expect 3rd trade cycle to be successful
-        expect(exchangeAdapter.getBalanceInfo()).andReturn(balanceInfo);
-        expect(balanceInfo.getBalancesAvailable()).andReturn(balancesAvailable);
+        // expect watchdog's following checks to be successful and trading to carry on. The watchdog runs on its own
+        // schedule, so we can't say exactly which trade cycles get skipped while the balance is unverified.
+        expect(emergencyStopExchangeAdapter.getBalanceInfo()).andReturn(balanceInfo).atLeastOnce();
+        expect(balanceInfo.getBalancesAvailable()).andReturn(balancesAvailable).atLeastOnce();
         tradingStrategy.execute();
+        expectLastCall().anyTimes();
 
         PowerMock.replayAll();
 
-        final TradingEngine tradingEngine = new TradingEngine(exchangeConfigService, engineConfigService,
-                strategyConfigService, marketConfigService, emailAlerter);
+        final TradingEngine tradingEngine = newTradingEngine();
         final Executor executor = Executors.newSingleThreadExecutor();
         executor.execute(tradingEngine::start);
 
@@ -484,6 +554,476 @@ public class TestTradingEngine {
         PowerMock.verifyAll();
     }
 
+    /*
+     * Tests the engine routes each market to its configured exchange and runs the Trading Strategies for each
+     * exchange. Emergency Stop balance is totalled across the exchanges: neither exchange on its own holds enough BTC
+     * to pass the check, but together they do.
+     */
+    @Test
+    public void testEngineExecutesTradeCyclesAcrossMultipleExchanges() throws Exception {
+
+        final ExchangeAdapter exchangeAdapter2 = PowerMock.createMock(ExchangeAdapter.class);
+        final TradingStrategy tradingStrategy2 = PowerMock.createMock(TradingStrategy.class);
+
+        final com.gazbert.bxbot.domain.exchange.ExchangeConfig exchangeConfig2 =
+                new com.gazbert.bxbot.domain.exchange.ExchangeConfig();
+        exchangeConfig2.setId(EXCHANGE_2_ID);
+        exchangeConfig2.setExchangeName(EXCHANGE_2_NAME);
+        exchangeConfig2.setExchangeAdapter(EXCHANGE_2_ADAPTER_IMPL_CLASS);
+
+        expect(exchangeConfigService.getAllExchangeConfig()).andReturn(
+                Arrays.asList(someExchangeConfig(), exchangeConfig2));
+        expect(ConfigurableComponentFactory.createComponent(EXCHANGE_ADAPTER_IMPL_CLASS)).andReturn(exchangeAdapter);
+        expect(exchangeAdapter.getImplName()).andReturn(EXCHANGE_NAME);
+        exchangeAdapter.init(anyObject(ExchangeConfig.class));
+        expect(ConfigurableComponentFactory.createComponent(EXCHANGE_2_ADAPTER_IMPL_CLASS)).andReturn(exchangeAdapter2);
+        expect(exchangeAdapter2.getImplName()).andReturn(EXCHANGE_2_NAME).anyTimes();
+        exchangeAdapter2.init(anyObject(ExchangeConfig.class));
+
+        // expect the Consolidated Order Book service and Smart Order Router to get their own adapters - they have
+        // their own tests
+        for (int i = 0; i < 2; i++) {
+            expect(ConfigurableComponentFactory.createComponent(EXCHANGE_ADAPTER_IMPL_CLASS))
+                    .andReturn(PowerMock.createNiceMock(ExchangeAdapter.class));
+            expect(ConfigurableComponentFactory.createComponent(EXCHANGE_2_ADAPTER_IMPL_CLASS))
+                    .andReturn(PowerMock.createNiceMock(ExchangeAdapter.class));
+        }
+
+        setupEngineConfigExpectations();
+
+        // expect the Emergency Stop watchdog to get its own adapters too
+        final ExchangeAdapter emergencyStopExchangeAdapter2 = PowerMock.createMock(ExchangeAdapter.class);
+        expect(ConfigurableComponentFactory.createComponent(EXCHANGE_ADAPTER_IMPL_CLASS))
+                .andReturn(emergencyStopExchangeAdapter);
+        expect(emergencyStopExchangeAdapter.getImplName()).andReturn(EXCHANGE_NAME).anyTimes();
+        emergencyStopExchangeAdapter.init(anyObject(ExchangeConfig.class));
+        expect(ConfigurableComponentFactory.createComponent(EXCHANGE_2_ADAPTER_IMPL_CLASS))
+                .andReturn(emergencyStopExchangeAdapter2);
+        expect(emergencyStopExchangeAdapter2.getImplName()).andReturn(EXCHANGE_2_NAME).anyTimes();
+        emergencyStopExchangeAdapter2.init(anyObject(ExchangeConfig.class));
+
+        // 1st market has no exchange id so goes to default (1st) exchange, 2nd market goes to 2nd exchange
+        final List<MarketConfig> markets = new ArrayList<>(allTheMarketsConfig());
+        markets.add(new MarketConfig(MARKET_2_ID, MARKET_2_NAME, MARKET_2_BASE_CURRENCY, MARKET_2_COUNTER_CURRENCY,
+                MARKET_IS_ENABLED, STRATEGY_ID, EXCHANGE_2_ID));
+        expect(strategyConfigService.getAllStrategyConfig()).andReturn(allTheStrategiesConfig());
+        expect(marketConfigService.getAllMarketConfig()).andReturn(markets);
+        expect(ConfigurableComponentFactory.createComponent(STRATEGY_IMPL_CLASS)).andReturn(tradingStrategy);
+        tradingStrategy.init(instrumented(exchangeAdapter), anyObject(Market.class), anyObject(com.gazbert.bxbot.strategy.api.StrategyConfig.class));
+        expect(ConfigurableComponentFactory.createComponent(STRATEGY_IMPL_CLASS)).andReturn(tradingStrategy2);
+        tradingStrategy2.init(instrumented(exchangeAdapter2), anyObject(Market.class), anyObject(com.gazbert.bxbot.strategy.api.StrategyConfig.class));
+
+        final Map<String, BigDecimal> balancesAvailable = new HashMap<>();
+        balancesAvailable.put(ENGINE_EMERGENCY_STOP_CURRENCY, new BigDecimal("0.3"));
+        final BalanceInfo balanceInfo = PowerMock.createMock(BalanceInfo.class);
+        expect(emergencyStopExchangeAdapter.getBalanceInfo()).andReturn(balanceInfo).atLeastOnce();
+        expect(emergencyStopExchangeAdapter2.getBalanceInfo()).andReturn(balanceInfo).atLeastOnce();
+        expect(balanceInfo.getBalancesAvailable()).andReturn(balancesAvailable).atLeastOnce();
+
+        // expect each Trading Strategy to be invoked at least 1 time
+        tradingStrategy.execute();
+        expectLastCall().atLeastOnce();
+        tradingStrategy2.execute();
+        expectLastCall().atLeastOnce();
+
+        PowerMock.replayAll();
+
+        final TradingEngine tradingEngine = newTradingEngine();
+        final Executor executor = Executors.newSingleThreadExecutor();
+        executor.execute(tradingEngine::start);
+
+        // sleep for 1s to let 1 trade cycles occur
+        Thread.sleep(1000);
+        assertTrue(tradingEngine.isRunning());
+
+        tradingEngine.shutdown();
+
+        // sleep for 1s and check if shutdown ok
+        Thread.sleep(1000);
+        assertFalse(tradingEngine.isRunning());
+
+        PowerMock.verifyAll();
+    }
+
+    /*
+     * Tests a market id can be traded on 2 exchanges at once - each exchange gets its own Trading Strategy for it.
+     */
+    @Test
+    public void testEngineTradesSameMarketIdOnMoreThanOneExchange() throws Exception {
+
+        final ExchangeAdapter exchangeAdapter2 = PowerMock.createMock(ExchangeAdapter.class);
+        final TradingStrategy tradingStrategy2 = PowerMock.createMock(TradingStrategy.class);
+
+        final com.gazbert.bxbot.domain.exchange.ExchangeConfig exchangeConfig2 =
+                new com.gazbert.bxbot.domain.exchange.ExchangeConfig();
+        exchangeConfig2.setId(EXCHANGE_2_ID);
+        exchangeConfig2.setExchangeName(EXCHANGE_2_NAME);
+        exchangeConfig2.setExchangeAdapter(EXCHANGE_2_ADAPTER_IMPL_CLASS);
+
+        expect(exchangeConfigService.getAllExchangeConfig()).andReturn(
+                Arrays.asList(someExchangeConfig(), exchangeConfig2));
+        expect(ConfigurableComponentFactory.createComponent(EXCHANGE_ADAPTER_IMPL_CLASS)).andReturn(exchangeAdapter);
+        expect(exchangeAdapter.getImplName()).andReturn(EXCHANGE_NAME);
+        exchangeAdapter.init(anyObject(ExchangeConfig.class));
+        expect(ConfigurableComponentFactory.createComponent(EXCHANGE_2_ADAPTER_IMPL_CLASS)).andReturn(exchangeAdapter2);
+        expect(exchangeAdapter2.getImplName()).andReturn(EXCHANGE_2_NAME).anyTimes();
+        exchangeAdapter2.init(anyObject(ExchangeConfig.class));
+        for (int i = 0; i < 2; i++) {
+            expect(ConfigurableComponentFactory.createComponent(EXCHANGE_ADAPTER_IMPL_CLASS))
+                    .andReturn(PowerMock.createNiceMock(ExchangeAdapter.class));
+            expect(ConfigurableComponentFactory.createComponent(EXCHANGE_2_ADAPTER_IMPL_CLASS))
+                    .andReturn(PowerMock.createNiceMock(ExchangeAdapter.class));
+        }
+        setupEngineConfigForNoEmergencyStopCheckExpectations();
+
+        // the same market on both exchanges
+        final List<MarketConfig> markets = new ArrayList<>(allTheMarketsConfig());
+        markets.add(new MarketConfig(MARKET_ID, MARKET_NAME, MARKET_BASE_CURRENCY, MARKET_COUNTER_CURRENCY,
+                MARKET_IS_ENABLED, STRATEGY_ID, EXCHANGE_2_ID));
+        expect(strategyConfigService.getAllStrategyConfig()).andReturn(allTheStrategiesConfig());
+        expect(marketConfigService.getAllMarketConfig()).andReturn(markets);
+        expect(ConfigurableComponentFactory.createComponent(STRATEGY_IMPL_CLASS)).andReturn(tradingStrategy);
+        tradingStrategy.init(instrumented(exchangeAdapter), anyObject(Market.class),
+                anyObject(com.gazbert.bxbot.strategy.api.StrategyConfig.class));
+        expect(ConfigurableComponentFactory.createComponent(STRATEGY_IMPL_CLASS)).andReturn(tradingStrategy2);
+        tradingStrategy2.init(instrumented(exchangeAdapter2), anyObject(Market.class),
+                anyObject(com.gazbert.bxbot.strategy.api.StrategyConfig.class));
+
+        // expect both Trading Strategies to be invoked - neither market has replaced the other
+        tradingStrategy.execute();
+        expectLastCall().atLeastOnce();
+        tradingStrategy2.execute();
+        expectLastCall().atLeastOnce();
+
+        PowerMock.replayAll();
+
+        final TradingEngine tradingEngine = newTradingEngine();
+        final Executor executor = Executors.newSingleThreadExecutor();
+        executor.execute(tradingEngine::start);
+
+        // sleep for 1s to let 1 trade cycles occur
+        Thread.sleep(1000);
+        assertTrue(tradingEngine.isRunning());
+
+        tradingEngine.shutdown();
+
+        // sleep for 1s and check if shutdown ok
+        Thread.sleep(1000);
+        assertFalse(tradingEngine.isRunning());
+
+        PowerMock.verifyAll();
+    }
+
+    /*
+     * Tests the engine warms up the exchange connection at startup by fetching the latest price for the market.
+     */
+    @Test
+    public void testEngineWarmsUpExchangeConnectionsAtStartup() throws Exception {
+
+        startupProfiler = new StartupProfiler(true, 0, 5);
+        setupConfigLoadingExpectationsForNoEmergencyStopCheck();
+
+        expect(exchangeAdapter.getLatestMarketPrice(MARKET_ID)).andReturn(new BigDecimal("6000"));
+        tradingStrategy.execute();
+        expectLastCall().atLeastOnce();
+
+        PowerMock.replayAll();
+
+        final TradingEngine tradingEngine = newTradingEngine();
+        final Executor executor = Executors.newSingleThreadExecutor();
+        executor.execute(tradingEngine::start);
+
+        // sleep for 1s to let 1 trade cycle occur
+        Thread.sleep(1000);
+        assertTrue(tradingEngine.isRunning());
+        assertTrue(startupProfiler.getStartupReport().getPhases().stream().anyMatch(phase ->
+                ("prewarm-connection-" + EXCHANGE_NAME).equals(phase.getName())));
+
+        tradingEngine.shutdown();
+
+        // sleep for 1s and check if shutdown ok
+        Thread.sleep(1000);
+        assertFalse(tradingEngine.isRunning());
+
+        PowerMock.verifyAll();
+    }
+
+    /*
+     * Tests the engine picks up Market config changes without a restart: the 1st market is disabled and the 2nd market
+     * is added mid-run. We expect the 1st market's strategy to stop being executed, and the 2nd market's strategy to
+     * be started.
+     */
+    @Test
+    public void testEngineAppliesMarketConfigChangesBetweenTradeCycles() throws Exception {
+
+        final TradingStrategy tradingStrategy2 = PowerMock.createMock(TradingStrategy.class);
+
+        setupExchangeAdapterConfigExpectations();
+        setupEngineConfigForNoEmergencyStopCheckExpectations();
+        setupStrategyAndMarketConfigExpectations();
+
+        // expect the config to be re-fetched once the versions change
+        final List<MarketConfig> changedMarkets = new ArrayList<>();
+        changedMarkets.add(new MarketConfig(MARKET_ID, MARKET_NAME, MARKET_BASE_CURRENCY, MARKET_COUNTER_CURRENCY,
+                false, STRATEGY_ID));
+        changedMarkets.add(new MarketConfig(MARKET_2_ID, MARKET_2_NAME, MARKET_2_BASE_CURRENCY,
+                MARKET_2_COUNTER_CURRENCY, MARKET_IS_ENABLED, STRATEGY_ID));
+        expect(strategyConfigService.getAllStrategyConfig()).andReturn(allTheStrategiesConfig());
+        expect(marketConfigService.getAllMarketConfig()).andReturn(changedMarkets);
+        expect(ConfigurableComponentFactory.createComponent(STRATEGY_IMPL_CLASS)).andReturn(tradingStrategy2);
+        tradingStrategy2.init(instrumented(exchangeAdapter), anyObject(Market.class),
+                anyObject(com.gazbert.bxbot.strategy.api.StrategyConfig.class));
+        final String[] initThreadName = new String[1];
+        expectLastCall().andAnswer(() -> {
+            initThreadName[0] = Thread.currentThread().getName();
+            return null;
+        });
+
+        final int[] strategyExecutions = new int[1];
+        tradingStrategy.execute();
+        expectLastCall().andAnswer(() -> {
+            strategyExecutions[0]++;
+            return null;
+        }).atLeastOnce();
+        tradingStrategy2.execute();
+        expectLastCall().atLeastOnce();
+
+        PowerMock.replayAll();
+
+        final TradingEngine tradingEngine = newTradingEngine();
+        final Executor executor = Executors.newSingleThreadExecutor();
+        executor.execute(tradingEngine::start);
+
+        // sleep for 1.5s to let 1st market trade, then change the config and give it a cycle to be picked up
+        Thread.sleep(1500);
+        marketConfigVersion = "2";
+        Thread.sleep(1500);
+        final int strategyExecutionsAfterChange = strategyExecutions[0];
+
+        // sleep for another 1.5s - the 1st market's strategy should no longer be executed
+        Thread.sleep(1500);
+        assertTrue(tradingEngine.isRunning());
+        assertEquals(strategyExecutionsAfterChange, strategyExecutions[0]);
+
+        // the new strategy is initialised on the exchange lane's thread, never the engine's
+        assertTrue(initThreadName[0].startsWith("bxbot-lane-"));
+
+        tradingEngine.shutdown();
+
+        // sleep for 1s and check if shutdown ok
+        Thread.sleep(1000);
+        assertFalse(tradingEngine.isRunning());
+
+        PowerMock.verifyAll();
+    }
+
+    /*
+     * Tests a Market config change that is rejected is alerted as a warning - not as a shutdown - and the bot carries
+     * on trading with its current config.
+     */
+    @Test
+    public void testEngineCarriesOnTradingAndAlertsWhenConfigChangeIsRejected() throws Exception {
+
+        setupExchangeAdapterConfigExpectations();
+        setupEngineConfigForNoEmergencyStopCheckExpectations();
+        setupStrategyAndMarketConfigExpectations();
+
+        // the changed market refers to a strategy that does not exist
+        expect(strategyConfigService.getAllStrategyConfig()).andReturn(allTheStrategiesConfig());
+        expect(marketConfigService.getAllMarketConfig()).andReturn(Collections.singletonList(new MarketConfig(
+                MARKET_ID, MARKET_NAME, MARKET_BASE_CURRENCY, MARKET_COUNTER_CURRENCY, MARKET_IS_ENABLED,
+                "unknown-strategy")));
+        expect(alertDispatcher.dispatch(eq(CONFIG_CHANGE_EMAIL_ALERT_SUBJECT),
+                and(contains("Rejected Market/Strategy config change"), contains("The bot is still running")),
+                anyString())).andReturn(true);
+
+        final int[] strategyExecutions = new int[1];
+        tradingStrategy.execute();
+        expectLastCall().andAnswer(() -> {
+            strategyExecutions[0]++;
+            return null;
+        }).atLeastOnce();
+
+        PowerMock.replayAll();
+
+        final TradingEngine tradingEngine = newTradingEngine();
+        final Executor executor = Executors.newSingleThreadExecutor();
+        executor.execute(tradingEngine::start);
+
+        // sleep for 1.5s to let the market trade, then change the config and give it a cycle to be rejected
+        Thread.sleep(1500);
+        marketConfigVersion = "2";
+        Thread.sleep(1500);
+        final int strategyExecutionsAfterChange = strategyExecutions[0];
+
+        // sleep for another 1.5s - the market should still be traded
+        Thread.sleep(1500);
+        assertTrue(tradingEngine.isRunning());
+        assertTrue(strategyExecutions[0] > strategyExecutionsAfterChange);
+
+        tradingEngine.shutdown();
+
+        // sleep for 1s and check if shutdown ok
+        Thread.sleep(1000);
+        assertFalse(tradingEngine.isRunning());
+
+        PowerMock.verifyAll();
+    }
+
+    /*
+     * Tests the checkpoint of a market removed from the config is deleted, so its stale state is not restored if the
+     * market is added back later.
+     */
+    @Test
+    public void testEngineDeletesCheckpointOfMarketRemovedFromConfig() throws Exception {
+
+        tradingStrategy = PowerMock.createMock(CheckpointableTradingStrategy.class);
+        checkpointStore = PowerMock.createNiceMock(CheckpointStore.class);
+
+        setupExchangeAdapterConfigExpectations();
+        setupEngineConfigForNoEmergencyStopCheckExpectations();
+        setupStrategyAndMarketConfigExpectations();
+
+        // expect the market to be removed once the version changes, and its final checkpoint to be deleted
+        expect(strategyConfigService.getAllStrategyConfig()).andReturn(allTheStrategiesConfig());
+        expect(marketConfigService.getAllMarketConfig()).andReturn(Collections.emptyList());
+        checkpointStore.delete(EXCHANGE_NAME, MARKET_ID, STRATEGY_ID);
+
+        tradingStrategy.execute();
+        expectLastCall().atLeastOnce();
+        expect(((CheckpointableStrategy) tradingStrategy).checkpoint())
+                .andStubReturn(Collections.singletonMap("last-order-id", "45345346"));
+
+        PowerMock.replayAll();
+
+        final TradingEngine tradingEngine = newTradingEngine();
+        final Executor executor = Executors.newSingleThreadExecutor();
+        executor.execute(tradingEngine::start);
+
+        // sleep for 1.5s to let the market trade, then remove it and give it a cycle to be picked up
+        Thread.sleep(1500);
+        marketConfigVersion = "2";
+        Thread.sleep(1500);
+        assertTrue(tradingEngine.isRunning());
+
+        tradingEngine.shutdown();
+
+        // sleep for 1s and check if shutdown ok
+        Thread.sleep(1000);
+        assertFalse(tradingEngine.isRunning());
+
+        PowerMock.verifyAll();
+    }
+
+    /*
+     * Tests that, in cluster mode, a market that has moved to this node is not started until the node that traded it
+     * before has released it - and is then started without waiting for another config or membership change.
+     */
+    @Test
+    public void testEngineOnlyStartsMovedMarketOnceItHasBeenReleased() throws Exception {
+
+        setupExchangeAdapterConfigExpectations();
+        setupEngineConfigForNoEmergencyStopCheckExpectations();
+
+        // the market is assigned to this node, but the old owner holds on to it for the 1st trade cycle
+        marketShardAssigner = PowerMock.createMock(MarketShardAssigner.class);
+        expect(marketShardAssigner.getAssignmentVersion()).andStubReturn(1L);
+        expect(marketShardAssigner.isAssigned(EXCHANGE_NAME + "/" + MARKET_ID)).andStubReturn(true);
+        final int[] claims = new int[1];
+        expect(marketShardAssigner.claim(EXCHANGE_NAME + "/" + MARKET_ID)).andAnswer(() -> ++claims[0] > 1).times(2);
+
+        // expect the config to be fetched at startup, and again to retry the handover
+        expect(strategyConfigService.getAllStrategyConfig()).andReturn(allTheStrategiesConfig()).times(2);
+        expect(marketConfigService.getAllMarketConfig()).andReturn(allTheMarketsConfig()).times(2);
+
+        // the strategy is only created and initialised once the market has been released to this node
+        final int[] claimsBeforeInit = new int[1];
+        expect(ConfigurableComponentFactory.createComponent(STRATEGY_IMPL_CLASS)).andReturn(tradingStrategy);
+        tradingStrategy.init(instrumented(exchangeAdapter), anyObject(Market.class),
+                anyObject(com.gazbert.bxbot.strategy.api.StrategyConfig.class));
+        expectLastCall().andAnswer(() -> {
+            claimsBeforeInit[0] = claims[0];
+            return null;
+        });
+        tradingStrategy.execute();
+        expectLastCall().atLeastOnce();
+
+        PowerMock.replayAll();
+
+        final TradingEngine tradingEngine = newTradingEngine();
+        final Executor executor = Executors.newSingleThreadExecutor();
+        executor.execute(tradingEngine::start);
+
+        // sleep for 2.5s to let the handover be retried and the market trade
+        Thread.sleep(2500);
+        assertTrue(tradingEngine.isRunning());
+        assertEquals(2, claimsBeforeInit[0]);
+
+        tradingEngine.shutdown();
+
+        // sleep for 1s and check if shutdown ok
+        Thread.sleep(1000);
+        assertFalse(tradingEngine.isRunning());
+
+        PowerMock.verifyAll();
+    }
+
+    /*
+     * Tests a failover primary does not trade until the standby has acknowledged its lease.
+     */
+    @Test
+    public void testFailoverPrimaryDoesNotTradeWithoutLeaseAcknowledgedByStandby() throws Exception {
+
+        setupConfigLoadingExpectationsForNoEmergencyStopCheck();
+
+        final ReplicationTransport replicationTransport = PowerMock.createNiceMock(ReplicationTransport.class);
+
+        PowerMock.replayAll();
+
+        // no standby has connected, so no lease has been acknowledged - expect the strategy never to be executed
+        failoverManager = new FailoverManager("primary", 10, replicationTransport, checkpointStore, tradeJournal);
+
+        final TradingEngine tradingEngine = newTradingEngine();
+        final Executor executor = Executors.newSingleThreadExecutor();
+        executor.execute(tradingEngine::start);
+
+        // sleep for 2s to let 2 trade cycles be skipped
+        Thread.sleep(2000);
+        assertTrue(tradingEngine.isRunning());
+
+        tradingEngine.shutdown();
+
+        // sleep for 1s and check if shutdown ok
+        Thread.sleep(1000);
+        assertFalse(tradingEngine.isRunning());
+
+        PowerMock.verifyAll();
+    }
+
+    /*
+     * Tests the engine will not start if a market is configured to trade on an exchange that does not exist.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testEngineWillNotStartIfMarketExchangeIsUnknown() throws Exception {
+
+        setupExchangeAdapterConfigExpectations();
+        setupEngineConfigExpectations();
+        setupEmergencyStopWatchdogExpectations();
+
+        final List<MarketConfig> markets = new ArrayList<>();
+        markets.add(new MarketConfig(MARKET_2_ID, MARKET_2_NAME, MARKET_2_BASE_CURRENCY, MARKET_2_COUNTER_CURRENCY,
+                MARKET_IS_ENABLED, STRATEGY_ID, "unknown-exchange"));
+        expect(strategyConfigService.getAllStrategyConfig()).andReturn(allTheStrategiesConfig());
+        expect(marketConfigService.getAllMarketConfig()).andReturn(markets);
+
+        PowerMock.replayAll();
+
+        final TradingEngine tradingEngine = newTradingEngine();
+        tradingEngine.start();
+
+        PowerMock.verifyAll();
+    }
+
     /*
      * Tests the engine cannot be started more than once.
      */
@@ -499,7 +1039,7 @@ public class TestTradingEngine {
 
         // expect BalanceInfo to be fetched using Trading API
         final BalanceInfo balanceInfo = PowerMock.createMock(BalanceInfo.class);
-        expect(exchangeAdapter.getBalanceInfo()).andReturn(balanceInfo).atLeastOnce();
+        expect(emergencyStopExchangeAdapter.getBalanceInfo()).andReturn(balanceInfo).atLeastOnce();
         expect(balanceInfo.getBalancesAvailable()).andReturn(balancesAvailable).atLeastOnce();
 
         // expect Trading Strategy to be invoked 1 time
@@ -508,8 +1048,7 @@ public class TestTradingEngine {
 
         PowerMock.replayAll();
 
-        final TradingEngine tradingEngine = new TradingEngine(exchangeConfigService, engineConfigService,
-                strategyConfigService, marketConfigService, emailAlerter);
+        final TradingEngine tradingEngine = newTradingEngine();
         final Executor executor = Executors.newSingleThreadExecutor();
         executor.execute(tradingEngine::start);
 
@@ -527,8 +1066,21 @@ public class TestTradingEngine {
     //  private utils
     // ------------------------------------------------------------------------------------------------
 
+    interface CheckpointableTradingStrategy extends TradingStrategy, CheckpointableStrategy {
+    }
+
+    /*
+     * Builds the engine from the mocks and collaborators as they are when it is called - some tests swap them out.
+     */
+    private TradingEngine newTradingEngine() {
+        return new TradingEngine(exchangeConfigService, engineConfigService, strategyConfigService,
+                marketConfigService, new TradingEngineContext(alertDispatcher, exchangeMetricsRegistry, traceRecorder,
+                tradeJournal, positionLedger, checkpointStore, startupProfiler, marketShardAssigner,
+                circuitBreakerRegistry, failoverManager, new RateLimiterRegistry(true, 10, 5000, null)));
+    }
+
     private void setupExchangeAdapterConfigExpectations() {
-        expect(exchangeConfigService.getExchangeConfig()).andReturn(someExchangeConfig());
+        expect(exchangeConfigService.getAllExchangeConfig()).andReturn(Collections.singletonList(someExchangeConfig()));
         expect(ConfigurableComponentFactory.createComponent(EXCHANGE_ADAPTER_IMPL_CLASS)).andReturn(exchangeAdapter);
         expect(exchangeAdapter.getImplName()).andReturn(EXCHANGE_NAME);
         exchangeAdapter.init(anyObject(ExchangeConfig.class));
@@ -538,6 +1090,13 @@ public class TestTradingEngine {
         expect(engineConfigService.getEngineConfig()).andReturn(someEngineConfig());
     }
 
+    private void setupEmergencyStopWatchdogExpectations() {
+        expect(ConfigurableComponentFactory.createComponent(EXCHANGE_ADAPTER_IMPL_CLASS))
+                .andReturn(emergencyStopExchangeAdapter);
+        expect(emergencyStopExchangeAdapter.getImplName()).andReturn(EXCHANGE_NAME).anyTimes();
+        emergencyStopExchangeAdapter.init(anyObject(ExchangeConfig.class));
+    }
+
     private void setupEngineConfigForNoEmergencyStopCheckExpectations() {
         expect(engineConfigService.getEngineConfig()).andReturn(someEngineConfigForNoEmergencyStopCheck());
     }
@@ -546,12 +1105,13 @@ public class TestTradingEngine {
         expect(strategyConfigService.getAllStrategyConfig()).andReturn(allTheStrategiesConfig());
         expect(marketConfigService.getAllMarketConfig()).andReturn(allTheMarketsConfig());
         expect(ConfigurableComponentFactory.createComponent(STRATEGY_IMPL_CLASS)).andReturn(tradingStrategy);
-        tradingStrategy.init(eq(exchangeAdapter), anyObject(Market.class), anyObject(com.gazbert.bxbot.strategy.api.StrategyConfig.class));
+        tradingStrategy.init(instrumented(exchangeAdapter), anyObject(Market.class), anyObject(com.gazbert.bxbot.strategy.api.StrategyConfig.class));
     }
 
     private void setupConfigLoadingExpectations() {
         setupExchangeAdapterConfigExpectations();
         setupEngineConfigExpectations();
+        setupEmergencyStopWatchdogExpectations();
         setupStrategyAndMarketConfigExpectations();
     }
 
@@ -561,6 +1121,25 @@ public class TestTradingEngine {
         setupStrategyAndMarketConfigExpectations();
     }
 
+    /*
+     * Matches an Exchange Adapter that has been wrapped for metrics collection.
+     */
+    private static ExchangeAdapter instrumented(ExchangeAdapter expectedDelegate) {
+        reportMatcher(new IArgumentMatcher() {
+            @Override
+            public boolean matches(Object argument) {
+                return argument instanceof InstrumentedExchangeAdapter
+                        && ((InstrumentedExchangeAdapter) argument).getDelegate() == expectedDelegate;
+            }
+
+            @Override
+            public void appendTo(StringBuffer buffer) {
+                buffer.append("instrumented(").append(expectedDelegate).append(")");
+            }
+        });
+        return null;
+    }
+
     private static com.gazbert.bxbot.domain.exchange.ExchangeConfig someExchangeConfig() {
 
         final AuthenticationConfig authenticationConfig = new AuthenticationConfig();
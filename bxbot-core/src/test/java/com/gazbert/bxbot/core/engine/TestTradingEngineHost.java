@@ -0,0 +1,259 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.engine;
+
+import com.gazbert.bxbot.core.accounting.PositionLedger;
+import com.gazbert.bxbot.core.alerts.AlertDispatcher;
+import com.gazbert.bxbot.core.breaker.CircuitBreakerRegistry;
+import com.gazbert.bxbot.core.checkpoint.CheckpointStore;
+import com.gazbert.bxbot.core.cluster.MarketShardAssigner;
+import com.gazbert.bxbot.core.failover.FailoverManager;
+import com.gazbert.bxbot.core.journal.TradeJournal;
+import com.gazbert.bxbot.core.metrics.ExchangeMetricsRegistry;
+import com.gazbert.bxbot.core.ratelimit.RateLimiterRegistry;
+import com.gazbert.bxbot.core.startup.StartupProfiler;
+import com.gazbert.bxbot.core.trace.TraceRecorder;
+import com.gazbert.bxbot.domain.bot.BotStatus;
+import com.gazbert.bxbot.repository.impl.EmbeddedConfigStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the Trading Engine Host finds and manages the hosted bots as expected.
+ * <p>
+ * The test bots have no exchange config, so their engines stop as soon as they are started.
+ *
+ * @author gazbert
+ */
+public class TestTradingEngineHost {
+
+    private static final String BOT_ID = "gdax-bot";
+    private static final String BOT_NAME = "GDAX Bot";
+    private static final String OTHER_BOT_ID = "bitstamp-bot";
+    private static final long STOP_TIMEOUT = 5000;
+
+    @Rule
+    public TemporaryFolder hostFolder = new TemporaryFolder();
+
+    private File botsDirectory;
+    private TradeJournal tradeJournal;
+    private CheckpointStore checkpointStore;
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+    private StandardEnvironment environment;
+    private TradingEngineHost tradingEngineHost;
+
+    @Before
+    public void setUpBeforeEachTest() throws Exception {
+        botsDirectory = hostFolder.newFolder("bots");
+        tradeJournal = new TradeJournal(false, hostFolder.newFolder("journal").getPath());
+        checkpointStore = new CheckpointStore(false, hostFolder.newFolder("checkpoints").getPath());
+        circuitBreakerRegistry = new CircuitBreakerRegistry(true, 50, 10000, 20, 10, 60);
+        environment = new StandardEnvironment();
+    }
+
+    @After
+    public void tearDownAfterEachTest() {
+        if (tradingEngineHost != null) {
+            tradingEngineHost.shutdown();
+        }
+        tradeJournal.shutdown();
+        checkpointStore.shutdown();
+    }
+
+    @Test
+    public void testBotsAreFoundAndStartedFromBotsDirectory() throws Exception {
+
+        writeEngineConfig("bot-1", BOT_ID, BOT_NAME);
+        writeEngineConfig("bot-2", OTHER_BOT_ID, "Bitstamp Bot");
+        assertTrue(new File(botsDirectory, "not-a-bot").mkdir());
+
+        tradingEngineHost = createHost(botsDirectory.getPath());
+        tradingEngineHost.startAll();
+
+        final List<BotStatus> botStatuses = tradingEngineHost.getBotStatuses();
+        assertEquals(2, botStatuses.size());
+        assertEquals(BOT_ID, botStatuses.get(0).getBotId());
+        assertEquals(BOT_NAME, botStatuses.get(0).getDisplayName());
+        assertEquals(OTHER_BOT_ID, botStatuses.get(1).getBotId());
+
+        // no exchange config, so the engine gives up and the bot can be started again
+        assertEquals(TradingEngineHost.STOPPED_STATUS, awaitStopped(BOT_ID).getStatus());
+        assertNotNull(tradingEngineHost.startBot(BOT_ID));
+        assertEquals(TradingEngineHost.STOPPED_STATUS, tradingEngineHost.stopBot(BOT_ID).getStatus());
+    }
+
+    @Test
+    public void testUnknownBotIsNotFound() throws Exception {
+
+        writeEngineConfig("bot-1", BOT_ID, BOT_NAME);
+        tradingEngineHost = createHost(botsDirectory.getPath());
+        tradingEngineHost.startAll();
+
+        assertNull(tradingEngineHost.getBotStatus("unknown-bot"));
+        assertNull(tradingEngineHost.startBot("unknown-bot"));
+        assertNull(tradingEngineHost.stopBot("unknown-bot"));
+        assertNull(tradingEngineHost.getPositions("unknown-bot"));
+        assertNull(tradingEngineHost.getTradeJournal("unknown-bot"));
+        assertNull(tradingEngineHost.getCircuitBreakerStatuses("unknown-bot"));
+    }
+
+    @Test
+    public void testEachBotHasItsOwnJournalPositionsAndCircuitBreakers() throws Exception {
+
+        writeEngineConfig("bot-1", BOT_ID, BOT_NAME);
+        writeEngineConfig("bot-2", OTHER_BOT_ID, "Bitstamp Bot");
+        tradingEngineHost = createHost(botsDirectory.getPath());
+        tradingEngineHost.startAll();
+
+        assertSame(tradeJournal.forBot(BOT_ID), tradingEngineHost.getTradeJournal(BOT_ID));
+        assertNotSame(tradingEngineHost.getTradeJournal(BOT_ID), tradingEngineHost.getTradeJournal(OTHER_BOT_ID));
+        assertTrue(tradingEngineHost.getPositions(BOT_ID).isEmpty());
+
+        // a breaker tripping for one bot's API key does not stop the others trading the exchange
+        circuitBreakerRegistry.forBot(BOT_ID).getCircuitBreaker("gdax", "getBalanceInfo");
+        assertEquals(1, tradingEngineHost.getCircuitBreakerStatuses(BOT_ID).size());
+        assertTrue(tradingEngineHost.getCircuitBreakerStatuses(OTHER_BOT_ID).isEmpty());
+        assertTrue(circuitBreakerRegistry.getCircuitBreakerStatuses().isEmpty());
+    }
+
+    @Test
+    public void testBotConfigIsMigratedToItsOwnEmbeddedStoreWhenProfileIsActive() throws Exception {
+
+        environment.setActiveProfiles(EmbeddedConfigStore.PROFILE);
+        writeEngineConfig("bot-1", BOT_ID, BOT_NAME);
+        writeOtherConfig("bot-1");
+        tradingEngineHost = createHost(botsDirectory.getPath());
+        tradingEngineHost.startAll();
+        assertEquals(BOT_NAME, tradingEngineHost.getBotStatus(BOT_ID).getDisplayName());
+        assertTrue(new File(new File(botsDirectory, "bot-1"), EmbeddedConfigStore.HOSTED_BOT_STORE_DIRECTORY)
+                .isDirectory());
+        awaitStopped(BOT_ID);
+        tradingEngineHost.shutdown();
+
+        // the XML files are no longer read once migrated
+        Files.delete(new File(new File(botsDirectory, "bot-1"), "engine.xml").toPath());
+        writeEngineConfig("bot-1", BOT_ID, "Renamed Bot");
+        tradingEngineHost = createHost(botsDirectory.getPath());
+        tradingEngineHost.startAll();
+        assertEquals(BOT_NAME, tradingEngineHost.getBotStatus(BOT_ID).getDisplayName());
+    }
+
+    @Test
+    public void testNoBotsAreHostedWhenBotsDirectoryIsNotSet() {
+
+        tradingEngineHost = createHost("");
+        tradingEngineHost.startAll();
+
+        assertTrue(tradingEngineHost.getBotStatuses().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateBotIdIsRejected() throws Exception {
+
+        writeEngineConfig("bot-1", BOT_ID, BOT_NAME);
+        writeEngineConfig("bot-2", BOT_ID, "Another GDAX Bot");
+
+        tradingEngineHost = createHost(botsDirectory.getPath());
+        tradingEngineHost.startAll();
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Private utils
+    // ------------------------------------------------------------------------------------------------
+
+    private TradingEngineHost createHost(String botsDirectory) {
+        return new TradingEngineHost(botsDirectory, new TradingEngineContext(createNiceMock(AlertDispatcher.class),
+                new ExchangeMetricsRegistry(), new TraceRecorder(false, 1, 1), tradeJournal,
+                new PositionLedger(tradeJournal), checkpointStore, new StartupProfiler(false, 0, 5),
+                new MarketShardAssigner(false, "", 100, 10, 30, null), circuitBreakerRegistry,
+                new FailoverManager("none", 10, null, null, null), new RateLimiterRegistry(true, 10, 5000, null)),
+                environment);
+    }
+
+    private void writeEngineConfig(String directoryName, String botId, String botName) throws Exception {
+        final File configDirectory = new File(botsDirectory, directoryName);
+        assertTrue(configDirectory.isDirectory() || configDirectory.mkdir());
+        final String engineXml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<engine>"
+                + "<bot-id>" + botId + "</bot-id>"
+                + "<bot-name>" + botName + "</bot-name>"
+                + "<emergency-stop-currency>BTC</emergency-stop-currency>"
+                + "<emergency-stop-balance>1.0</emergency-stop-balance>"
+                + "<trade-cycle-interval>20</trade-cycle-interval>"
+                + "</engine>";
+        Files.write(new File(configDirectory, "engine.xml").toPath(), engineXml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /*
+     * The exchange adapter does not exist, so the engine still stops as soon as it is started.
+     */
+    private void writeOtherConfig(String directoryName) throws Exception {
+        final File configDirectory = new File(botsDirectory, directoryName);
+        writeConfigFile(configDirectory, "exchange.xml", "<exchanges><exchange><id>gdax</id><name>GDAX</name>"
+                + "<adapter>com.gazbert.bxbot.exchanges.NoSuchExchangeAdapter</adapter>"
+                + "<authentication-config><config-item><name>key</name><value>your-api-key</value></config-item>"
+                + "</authentication-config><network-config><connection-timeout>30</connection-timeout>"
+                + "<non-fatal-error-codes><code>502</code></non-fatal-error-codes>"
+                + "<non-fatal-error-messages><message>Connection reset</message></non-fatal-error-messages>"
+                + "</network-config></exchange></exchanges>");
+        writeConfigFile(configDirectory, "markets.xml", "<markets><market><id>btc_usd</id><name>BTC/USD</name>"
+                + "<base-currency>BTC</base-currency><counter-currency>USD</counter-currency><enabled>true</enabled>"
+                + "<trading-strategy-id>scalping-strategy</trading-strategy-id><exchange-id>gdax</exchange-id>"
+                + "</market></markets>");
+        writeConfigFile(configDirectory, "strategies.xml", "<trading-strategies><strategy>"
+                + "<id>scalping-strategy</id><name>Scalping Strategy</name>"
+                + "<class-name>com.gazbert.bxbot.strategies.ExampleScalpingStrategy</class-name>"
+                + "<optional-config><config-item><name>counter-currency-buy-order-amount</name><value>20</value>"
+                + "</config-item></optional-config>"
+                + "</strategy></trading-strategies>");
+    }
+
+    private static void writeConfigFile(File configDirectory, String filename, String xml) throws Exception {
+        Files.write(new File(configDirectory, filename).toPath(),
+                ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + xml).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private BotStatus awaitStopped(String botId) throws InterruptedException {
+        final long giveUpTime = System.currentTimeMillis() + STOP_TIMEOUT;
+        BotStatus botStatus = tradingEngineHost.getBotStatus(botId);
+        while (TradingEngineHost.RUNNING_STATUS.equals(botStatus.getStatus())
+                && System.currentTimeMillis() < giveUpTime) {
+            Thread.sleep(20);
+            botStatus = tradingEngineHost.getBotStatus(botId);
+        }
+        return botStatus;
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.failover;
+
+import com.gazbert.bxbot.core.checkpoint.CheckpointStore;
+import com.gazbert.bxbot.core.journal.TradeJournal;
+import com.gazbert.bxbot.trading.api.OrderType;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the Failover Manager behaves as expected.
+ *
+ * @author gazbert
+ */
+public class TestFailoverManager {
+
+    private static final String EXCHANGE_ID = "bitstamp";
+    private static final String MARKET_ID = "btc_usd";
+    private static final String STRATEGY_ID = "scalping-strategy";
+    private static final String ORDER_ID = "45345346";
+    private static final String HOSTED_BOT_ID = "hosted-bot";
+    private static final long LEASE_MILLIS = 600;
+    private static final long TIMEOUT_SECS = 5;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private CheckpointStore primaryCheckpointStore;
+    private CheckpointStore standbyCheckpointStore;
+    private TradeJournal primaryTradeJournal;
+    private TradeJournal standbyTradeJournal;
+    private PausableTransport primaryTransport;
+    private FailoverManager primary;
+    private FailoverManager standby;
+    private ExecutorService standbyExecutor;
+
+
+    @Before
+    public void setUpBeforeEachTest() throws Exception {
+        primaryCheckpointStore = new CheckpointStore(true, tempFolder.newFolder("primary").getPath());
+        standbyCheckpointStore = new CheckpointStore(true, tempFolder.newFolder("standby").getPath());
+        primaryTradeJournal = new TradeJournal(false, tempFolder.getRoot().getPath());
+        standbyTradeJournal = EasyMock.createMock(TradeJournal.class);
+        primaryTransport = new PausableTransport();
+        primary = new FailoverManager(FailoverManager.Role.PRIMARY, LEASE_MILLIS, primaryTransport,
+                primaryCheckpointStore, primaryTradeJournal);
+        standbyExecutor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDownAfterEachTest() {
+        primary.shutdown();
+        if (standby != null) {
+            standby.shutdown();
+        }
+        standbyExecutor.shutdownNow();
+        primaryCheckpointStore.shutdown();
+        standbyCheckpointStore.shutdown();
+        primaryTradeJournal.shutdown();
+    }
+
+    @Test
+    public void testStandbyTakesOverWithPrimaryStateWhenLeaseExpires() throws Exception {
+
+        standbyTradeJournal.trackOrder(EXCHANGE_ID, MARKET_ID, ORDER_ID, OrderType.BUY, new BigDecimal("1454.018"),
+                new BigDecimal("0.5"));
+        EasyMock.replay(standbyTradeJournal);
+
+        primary.awaitActive();
+        primaryCheckpointStore.save(EXCHANGE_ID, MARKET_ID, STRATEGY_ID,
+                Collections.singletonMap("last-order-id", ORDER_ID));
+        primaryCheckpointStore.saveNonce(EXCHANGE_ID, 1001);
+        primaryTradeJournal.orderAcknowledged(EXCHANGE_ID, MARKET_ID, ORDER_ID, OrderType.BUY,
+                new BigDecimal("0.5"), new BigDecimal("1454.018"));
+
+        standby = new FailoverManager(FailoverManager.Role.STANDBY, LEASE_MILLIS,
+                new SocketReplicationTransport("localhost", primaryTransport.getLocalPort()),
+                standbyCheckpointStore, standbyTradeJournal);
+        final Future<?> takeover = standbyExecutor.submit(() -> {
+            standby.awaitActive();
+            return null;
+        });
+
+        // primary keeps renewing its lease, so the standby waits - and acknowledges it, so the primary trades
+        try {
+            takeover.get(LEASE_MILLIS * 3, TimeUnit.MILLISECONDS);
+            fail("Standby should not take over while the primary is alive.");
+        } catch (TimeoutException e) {
+            // expected
+        }
+        assertTrue(primary.isTradingAllowed());
+
+        primary.shutdown();
+        takeover.get(TIMEOUT_SECS, TimeUnit.SECONDS);
+
+        final Map<String, String> snapshot = standbyCheckpointStore.load(EXCHANGE_ID, MARKET_ID, STRATEGY_ID);
+        assertEquals(Collections.singletonMap("last-order-id", ORDER_ID), snapshot);
+        assertEquals(Long.valueOf(1001), standbyCheckpointStore.loadNonce(EXCHANGE_ID));
+        EasyMock.verify(standbyTradeJournal);
+    }
+
+    @Test
+    public void testHostedBotStateIsReplicatedIntoItsOwnStores() throws Exception {
+
+        EasyMock.replay(standbyTradeJournal);
+
+        primary.awaitActive();
+        primary.replicateBot(HOSTED_BOT_ID);
+        primaryCheckpointStore.forBot(HOSTED_BOT_ID).save(EXCHANGE_ID, MARKET_ID, STRATEGY_ID,
+                Collections.singletonMap("last-order-id", ORDER_ID));
+        primaryCheckpointStore.forBot(HOSTED_BOT_ID).saveNonce(EXCHANGE_ID, 2002);
+        primaryCheckpointStore.saveNonce(EXCHANGE_ID, 1001);
+
+        standby = new FailoverManager(FailoverManager.Role.STANDBY, LEASE_MILLIS,
+                new SocketReplicationTransport("localhost", primaryTransport.getLocalPort()),
+                standbyCheckpointStore, standbyTradeJournal);
+        final Future<?> takeover = standbyExecutor.submit(() -> {
+            standby.awaitActive();
+            return null;
+        });
+        Thread.sleep(LEASE_MILLIS);
+        assertTrue(primary.isTradingAllowed());
+
+        primary.shutdown();
+        takeover.get(TIMEOUT_SECS, TimeUnit.SECONDS);
+
+        final CheckpointStore hostedBotCheckpointStore = standbyCheckpointStore.forBot(HOSTED_BOT_ID);
+        assertEquals(Collections.singletonMap("last-order-id", ORDER_ID),
+                hostedBotCheckpointStore.load(EXCHANGE_ID, MARKET_ID, STRATEGY_ID));
+        assertEquals(Long.valueOf(2002), hostedBotCheckpointStore.loadNonce(EXCHANGE_ID));
+        assertNull(standbyCheckpointStore.load(EXCHANGE_ID, MARKET_ID, STRATEGY_ID));
+        assertEquals(Long.valueOf(1001), standbyCheckpointStore.loadNonce(EXCHANGE_ID));
+        EasyMock.verify(standbyTradeJournal);
+    }
+
+    @Test
+    public void testPrimaryStopsTradingBeforeStandbyTakesOverWhenPausedPastItsLease() throws Exception {
+
+        EasyMock.replay(standbyTradeJournal);
+
+        // no standby has acknowledged the lease yet
+        primary.awaitActive();
+        assertFalse(primary.isTradingAllowed());
+
+        standby = new FailoverManager(FailoverManager.Role.STANDBY, LEASE_MILLIS,
+                new SocketReplicationTransport("localhost", primaryTransport.getLocalPort()),
+                standbyCheckpointStore, standbyTradeJournal);
+        final Future<?> takeover = standbyExecutor.submit(() -> {
+            standby.awaitActive();
+            return null;
+        });
+        Thread.sleep(LEASE_MILLIS);
+        assertTrue(primary.isTradingAllowed());
+
+        // the primary is paused - the standby hears nothing from it, but the primary is still running
+        primaryTransport.paused = true;
+        takeover.get(TIMEOUT_SECS, TimeUnit.SECONDS);
+
+        // the primary has stopped trading by the time the standby takes over...
+        assertFalse(primary.isTradingAllowed());
+
+        // ...and does not start again when it wakes up, as the standby no longer acknowledges its lease
+        primaryTransport.paused = false;
+        Thread.sleep(LEASE_MILLIS);
+        assertFalse(primary.isTradingAllowed());
+        EasyMock.verify(standbyTradeJournal);
+    }
+
+    @Test
+    public void testStandbyTakesOverWhenNoPrimary() throws Exception {
+        EasyMock.replay(standbyTradeJournal);
+        standby = new FailoverManager(FailoverManager.Role.STANDBY, LEASE_MILLIS,
+                new SocketReplicationTransport("localhost", 1), standbyCheckpointStore, standbyTradeJournal);
+
+        final long start = System.currentTimeMillis();
+        standby.awaitActive();
+        assertTrue(System.currentTimeMillis() - start >= LEASE_MILLIS);
+        EasyMock.verify(standbyTradeJournal);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testStandbyNeedsCheckpointing() {
+        new FailoverManager(FailoverManager.Role.STANDBY, LEASE_MILLIS, primaryTransport,
+                new CheckpointStore(false, tempFolder.getRoot().getPath()), standbyTradeJournal);
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Private utils
+    // ------------------------------------------------------------------------------------------------
+
+    /*
+     * Drops the primary's entries while paused, as if the primary had stopped mid GC pause.
+     */
+    private static class PausableTransport extends SocketReplicationTransport {
+
+        private volatile boolean paused;
+
+        PausableTransport() {
+            super("localhost", 0);
+        }
+
+        @Override
+        public void publish(StateLogEntry entry) {
+            if (!paused) {
+                super.publish(entry);
+            }
+        }
+    }
+}
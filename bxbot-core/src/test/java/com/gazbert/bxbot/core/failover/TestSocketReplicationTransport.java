@@ -0,0 +1,143 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.failover;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the Socket Replication Transport behaves as expected.
+ *
+ * @author gazbert
+ */
+public class TestSocketReplicationTransport {
+
+    private static final long TIMEOUT_SECS = 5;
+
+    private SocketReplicationTransport primaryTransport;
+    private SocketReplicationTransport standbyTransport;
+    private ExecutorService tailExecutor;
+
+
+    @Before
+    public void setUpBeforeEachTest() {
+        primaryTransport = new SocketReplicationTransport("localhost", 0);
+        tailExecutor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDownAfterEachTest() {
+        primaryTransport.shutdown();
+        if (standbyTransport != null) {
+            standbyTransport.shutdown();
+        }
+        tailExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testStandbyIsSentSnapshotThenPublishedEntriesAndAcksLeaseRenewals() throws Exception {
+
+        final ReplicatedStateLog stateLog = new ReplicatedStateLog();
+        stateLog.append(StateLogEntry.Type.NONCE, Collections.singletonList("bitstamp"),
+                Collections.singletonMap(StateLogEntry.NONCE, "1001"));
+        final BlockingQueue<Long> leaseAcks = new LinkedBlockingQueue<>();
+        primaryTransport.startPublishing(stateLog::entries, leaseAcks::add);
+
+        final CountDownLatch snapshotReceived = new CountDownLatch(1);
+        final BlockingQueue<StateLogEntry> received = new LinkedBlockingQueue<>();
+        final List<StateLogEntry> snapshot = new ArrayList<>();
+        standbyTransport = new SocketReplicationTransport("localhost", primaryTransport.getLocalPort());
+        final Future<?> tail = tailExecutor.submit(() -> {
+            standbyTransport.tail(new ReplicationListener() {
+                @Override
+                public void onSnapshot(List<StateLogEntry> entries) {
+                    snapshot.addAll(entries);
+                    snapshotReceived.countDown();
+                }
+
+                @Override
+                public void onEntry(StateLogEntry entry) {
+                    received.add(entry);
+                }
+            });
+            return null;
+        });
+
+        assertTrue(snapshotReceived.await(TIMEOUT_SECS, TimeUnit.SECONDS));
+        assertEquals(1, snapshot.size());
+        assertEquals(Arrays.asList("bitstamp"), snapshot.get(0).getIds());
+        assertEquals("1001", snapshot.get(0).getValues().get(StateLogEntry.NONCE));
+
+        final StateLogEntry openOrder = stateLog.append(StateLogEntry.Type.OPEN_ORDER,
+                Arrays.asList("bitstamp", "btc_usd", "45345346"),
+                Collections.singletonMap(StateLogEntry.PRICE, "1454.018"));
+        primaryTransport.publish(openOrder);
+
+        final StateLogEntry entry = received.poll(TIMEOUT_SECS, TimeUnit.SECONDS);
+        assertNotNull(entry);
+        assertEquals(openOrder.getKey(), entry.getKey());
+        assertEquals(2, entry.getSequence());
+        assertEquals("1454.018", entry.getValues().get(StateLogEntry.PRICE));
+
+        // only lease renewals are acknowledged, with the time the primary sent them
+        primaryTransport.publish(new StateLogEntry(StateLogEntry.Type.LEASE, Collections.emptyList(),
+                Collections.singletonMap(StateLogEntry.SENT_AT, "1536503423000"), 0));
+        assertEquals(StateLogEntry.Type.LEASE, received.poll(TIMEOUT_SECS, TimeUnit.SECONDS).getType());
+        assertEquals(Long.valueOf(1536503423000L), leaseAcks.poll(TIMEOUT_SECS, TimeUnit.SECONDS));
+        assertTrue(leaseAcks.isEmpty());
+
+        primaryTransport.shutdown();
+        try {
+            tail.get(TIMEOUT_SECS, TimeUnit.SECONDS);
+            fail("Tail should fail when the primary goes away.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ReplicationException);
+        }
+    }
+
+    @Test(expected = ReplicationException.class)
+    public void testTailFailsWhenNoPrimary() throws Exception {
+        primaryTransport.startPublishing(Collections::emptyList, sentAt -> {
+        });
+        final int port = primaryTransport.getLocalPort();
+        primaryTransport.shutdown();
+
+        standbyTransport = new SocketReplicationTransport("localhost", port);
+        standbyTransport.tail(new ReplicationListener() {
+            @Override
+            public void onSnapshot(List<StateLogEntry> entries) {
+            }
+
+            @Override
+            public void onEntry(StateLogEntry entry) {
+            }
+        });
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.journal;
+
+import com.gazbert.bxbot.domain.journal.TradeJournalEvent;
+import com.gazbert.bxbot.domain.journal.TradeJournalPage;
+import com.gazbert.bxbot.trading.api.OpenOrder;
+import com.gazbert.bxbot.trading.api.OrderType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the Trade Journal behaves as expected.
+ *
+ * @author gazbert
+ */
+public class TestTradeJournal {
+
+    private static final String EXCHANGE_ID = "bitstamp";
+    private static final String MARKET_ID = "btc/usd";
+    private static final String OTHER_MARKET_ID = "ltc/btc";
+
+    private static final String ORDER_1_ID = "order-1";
+    private static final String ORDER_2_ID = "order-2";
+
+    private static final BigDecimal PRICE = new BigDecimal("1234.56");
+    private static final BigDecimal QUANTITY = new BigDecimal("2.5");
+
+    private static final long FLUSH_TIMEOUT = 5000;
+
+    @Rule
+    public TemporaryFolder journalFolder = new TemporaryFolder();
+
+    private TradeJournal tradeJournal;
+
+
+    @Before
+    public void setupBeforeEachTest() {
+        tradeJournal = openJournal();
+    }
+
+    @After
+    public void tearDownAfterEachTest() {
+        tradeJournal.shutdown();
+    }
+
+    @Test
+    public void testOrderEventsAreJournalledAndSurviveRestart() throws Exception {
+
+        tradeJournal.orderCreated(EXCHANGE_ID, MARKET_ID, OrderType.BUY, QUANTITY, PRICE);
+        tradeJournal.orderAcknowledged(EXCHANGE_ID, MARKET_ID, ORDER_1_ID, OrderType.BUY, QUANTITY, PRICE);
+        tradeJournal.orderCancelled(EXCHANGE_ID, MARKET_ID, ORDER_1_ID);
+        tradeJournal.orderCreated(EXCHANGE_ID, OTHER_MARKET_ID, OrderType.SELL, QUANTITY, PRICE);
+        assertTrue(tradeJournal.flush(FLUSH_TIMEOUT));
+
+        restartJournal();
+
+        final TradeJournalPage page = query(null, null, null, 0, 10);
+        assertNull(page.getNextCursor());
+        assertEquals(Arrays.asList("CREATE", "ACK", "CANCEL"), eventTypes(page.getEvents()));
+        assertEquals(Arrays.asList(1L, 2L, 3L),
+                page.getEvents().stream().map(TradeJournalEvent::getSequence).collect(Collectors.toList()));
+
+        final TradeJournalEvent ack = page.getEvents().get(1);
+        assertEquals(EXCHANGE_ID, ack.getExchangeId());
+        assertEquals(MARKET_ID, ack.getMarketId());
+        assertEquals(ORDER_1_ID, ack.getOrderId());
+        assertEquals("BUY", ack.getOrderType());
+        assertEquals(0, PRICE.compareTo(ack.getPrice()));
+        assertEquals(0, QUANTITY.compareTo(ack.getQuantity()));
+        assertNull(page.getEvents().get(0).getOrderId());
+
+        assertEquals(1, tradeJournal.query(EXCHANGE_ID, OTHER_MARKET_ID, null, null, null, 0, 10)
+                .getEvents().size());
+        assertTrue(tradeJournal.query(EXCHANGE_ID, "unknown-market", null, null, null, 0, 10)
+                .getEvents().isEmpty());
+    }
+
+    @Test
+    public void testPartFillsAreDetectedAndGoneOrdersAreClosed() throws Exception {
+
+        final List<BigDecimal> fills = new ArrayList<>();
+        tradeJournal.addFillListener((exchangeId, marketId, orderType, price, quantity, inferred) ->
+                fills.add(quantity));
+        tradeJournal.orderAcknowledged(EXCHANGE_ID, MARKET_ID, ORDER_1_ID, OrderType.BUY, QUANTITY, PRICE);
+        tradeJournal.orderAcknowledged(EXCHANGE_ID, MARKET_ID, ORDER_2_ID, OrderType.SELL, QUANTITY, PRICE);
+
+        // order 1 part filled, order 2 untouched
+        tradeJournal.openOrdersFetched(EXCHANGE_ID, MARKET_ID, Arrays.asList(
+                someOpenOrder(ORDER_1_ID, new BigDecimal("1.0")), someOpenOrder(ORDER_2_ID, QUANTITY)));
+
+        // order 1 gone - not known to be filled, order 2 still open
+        tradeJournal.openOrdersFetched(EXCHANGE_ID, MARKET_ID,
+                Collections.singletonList(someOpenOrder(ORDER_2_ID, QUANTITY)));
+
+        // order 2 cancelled by the bot - not a fill
+        tradeJournal.orderCancelled(EXCHANGE_ID, MARKET_ID, ORDER_2_ID);
+        tradeJournal.openOrdersFetched(EXCHANGE_ID, MARKET_ID, Collections.emptyList());
+        assertTrue(tradeJournal.flush(FLUSH_TIMEOUT));
+
+        final List<TradeJournalEvent> order1Events = query(ORDER_1_ID, null, null, 0, 10).getEvents();
+        assertEquals(Arrays.asList("ACK", "FILL", "CLOSED"), eventTypes(order1Events));
+        assertEquals(0, new BigDecimal("1.5").compareTo(order1Events.get(1).getQuantity()));
+        assertEquals(0, new BigDecimal("1.0").compareTo(order1Events.get(2).getQuantity()));
+        assertEquals(Collections.singletonList(new BigDecimal("1.5")), fills);
+
+        assertEquals(Arrays.asList("ACK", "CANCEL"), eventTypes(query(ORDER_2_ID, null, null, 0, 10).getEvents()));
+    }
+
+    @Test
+    public void testGoneOrdersAreInferredAsFilledWhenOptedIn() throws Exception {
+
+        tradeJournal.shutdown();
+        tradeJournal = new TradeJournal(true, journalFolder.getRoot().getPath(), true);
+        final List<Boolean> inferred = new ArrayList<>();
+        tradeJournal.addFillListener((exchangeId, marketId, orderType, price, quantity, isInferred) ->
+                inferred.add(isInferred));
+
+        tradeJournal.orderAcknowledged(EXCHANGE_ID, MARKET_ID, ORDER_1_ID, OrderType.BUY, QUANTITY, PRICE);
+        tradeJournal.openOrdersFetched(EXCHANGE_ID, MARKET_ID,
+                Collections.singletonList(someOpenOrder(ORDER_1_ID, new BigDecimal("1.0"))));
+        tradeJournal.openOrdersFetched(EXCHANGE_ID, MARKET_ID, Collections.emptyList());
+        assertTrue(tradeJournal.flush(FLUSH_TIMEOUT));
+
+        assertEquals(Arrays.asList("ACK", "FILL", "INFERRED_FILL"),
+                eventTypes(query(ORDER_1_ID, null, null, 0, 10).getEvents()));
+        assertEquals(Arrays.asList(false, true), inferred);
+    }
+
+    @Test
+    public void testQueriesArePagedAndFilteredByTime() throws Exception {
+
+        for (int i = 0; i < 25; i++) {
+            tradeJournal.orderAcknowledged(EXCHANGE_ID, MARKET_ID, "order-" + i, OrderType.BUY, QUANTITY, PRICE);
+        }
+        assertTrue(tradeJournal.flush(FLUSH_TIMEOUT));
+
+        final TradeJournalPage firstPage = query(null, null, null, 0, 10);
+        assertEquals(10, firstPage.getEvents().size());
+        assertEquals(Long.valueOf(10), firstPage.getNextCursor());
+
+        final TradeJournalPage lastPage = query(null, null, null, 20, 10);
+        assertEquals(5, lastPage.getEvents().size());
+        assertEquals("order-24", lastPage.getEvents().get(4).getOrderId());
+        assertNull(lastPage.getNextCursor());
+
+        final List<TradeJournalEvent> allEvents = query(null, null, null, 0, 100).getEvents();
+        final long fromTime = allEvents.get(12).getTimestamp();
+        final long toTime = allEvents.get(14).getTimestamp();
+        final List<TradeJournalEvent> inRange = query(null, fromTime, toTime, 0, 100).getEvents();
+        assertFalse(inRange.isEmpty());
+        inRange.forEach(event -> assertTrue(event.getTimestamp() >= fromTime && event.getTimestamp() <= toTime));
+        assertTrue(inRange.stream().anyMatch(event -> "order-13".equals(event.getOrderId())));
+
+        final TradeJournalPage orderPage = query("order-7", null, null, 0, 10);
+        assertEquals(1, orderPage.getEvents().size());
+        assertEquals("order-7", orderPage.getEvents().get(0).getOrderId());
+    }
+
+    @Test
+    public void testTornRecordIsDroppedAndMissingIndexIsRebuilt() throws Exception {
+
+        tradeJournal.orderAcknowledged(EXCHANGE_ID, MARKET_ID, ORDER_1_ID, OrderType.BUY, QUANTITY, PRICE);
+        assertTrue(tradeJournal.flush(FLUSH_TIMEOUT));
+        tradeJournal.orderAcknowledged(EXCHANGE_ID, MARKET_ID, ORDER_2_ID, OrderType.BUY, QUANTITY, PRICE);
+        assertTrue(tradeJournal.flush(FLUSH_TIMEOUT));
+        tradeJournal.shutdown();
+
+        // Chop the end off the last record, as if the bot died while writing it, and lose the index
+        final Path marketDirectory = journalFolder.getRoot().toPath().resolve(EXCHANGE_ID).resolve("btc_usd");
+        final Path dataFile = marketDirectory.resolve(MarketJournal.DATA_FILENAME);
+        final byte[] data = Files.readAllBytes(dataFile);
+        Files.write(dataFile, Arrays.copyOf(data, data.length - 3));
+        Files.delete(marketDirectory.resolve(MarketJournal.INDEX_FILENAME));
+
+        tradeJournal = openJournal();
+        assertEquals(Collections.singletonList(ORDER_1_ID), query(null, null, null, 0, 10).getEvents().stream()
+                .map(TradeJournalEvent::getOrderId).collect(Collectors.toList()));
+
+        tradeJournal.orderCancelled(EXCHANGE_ID, MARKET_ID, ORDER_1_ID);
+        assertTrue(tradeJournal.flush(FLUSH_TIMEOUT));
+
+        final List<TradeJournalEvent> events = query(ORDER_1_ID, null, null, 0, 10).getEvents();
+        assertEquals(Arrays.asList("ACK", "CANCEL"), eventTypes(events));
+        assertEquals(2, events.get(1).getSequence());
+    }
+
+    @Test
+    public void testNothingIsJournalledWhenDisabled() throws Exception {
+
+        tradeJournal.shutdown();
+        tradeJournal = new TradeJournal(false, journalFolder.getRoot().getPath());
+
+        tradeJournal.orderCreated(EXCHANGE_ID, MARKET_ID, OrderType.BUY, QUANTITY, PRICE);
+        assertTrue(tradeJournal.flush(FLUSH_TIMEOUT));
+        assertEquals(0, journalFolder.getRoot().list().length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPageLimitIsEnforced() {
+        query(null, null, null, 0, TradeJournal.MAX_PAGE_SIZE + 1);
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Private utils
+    // ------------------------------------------------------------------------------------------------
+
+    private TradeJournal openJournal() {
+        return new TradeJournal(true, journalFolder.getRoot().getPath());
+    }
+
+    private void restartJournal() {
+        tradeJournal.shutdown();
+        tradeJournal = openJournal();
+    }
+
+    private TradeJournalPage query(String orderId, Long fromTime, Long toTime, long cursor, int limit) {
+        return tradeJournal.query(EXCHANGE_ID, MARKET_ID, orderId, fromTime, toTime, cursor, limit);
+    }
+
+    private static OpenOrder someOpenOrder(String orderId, BigDecimal remainingQuantity) {
+        return new OpenOrder(orderId, null, MARKET_ID, OrderType.BUY, PRICE, remainingQuantity, QUANTITY,
+                PRICE.multiply(remainingQuantity));
+    }
+
+    private static List<String> eventTypes(List<TradeJournalEvent> events) {
+        return events.stream().map(TradeJournalEvent::getEventType).collect(Collectors.toList());
+    }
+}
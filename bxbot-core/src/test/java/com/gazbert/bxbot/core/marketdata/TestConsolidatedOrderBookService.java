@@ -0,0 +1,248 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.marketdata;
+
+import com.gazbert.bxbot.exchange.api.ExchangeAdapter;
+import com.gazbert.bxbot.trading.api.ConsolidatedOrderBook;
+import com.gazbert.bxbot.trading.api.ExchangeNetworkException;
+import com.gazbert.bxbot.trading.api.Market;
+import com.gazbert.bxbot.trading.api.MarketOrder;
+import com.gazbert.bxbot.trading.api.MarketOrderBook;
+import com.gazbert.bxbot.trading.api.OrderType;
+import org.junit.Before;
+import org.junit.Test;
+import org.powermock.api.easymock.PowerMock;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.easymock.EasyMock.expect;
+
+/**
+ * Tests the Consolidated Order Book service merges the exchange order books as expected.
+ *
+ * @author gazbert
+ */
+public class TestConsolidatedOrderBookService {
+
+    private static final String BITSTAMP_ID = "bitstamp";
+    private static final String GDAX_ID = "gdax";
+
+    // Each exchange names the same pair differently
+    private static final Market BITSTAMP_MARKET = new Market("BTC/USD", "btcusd", "BTC", "USD");
+    private static final Market GDAX_MARKET = new Market("BTC/USD", "BTC-USD", "btc", "usd");
+
+    // A 2nd market for the same pair on the same exchange
+    private static final Market BITSTAMP_OTHER_MARKET = new Market("BTC/USD", "btcusd-otc", "BTC", "USD");
+
+    private static final BigDecimal BITSTAMP_FEE = new BigDecimal("0.01");
+    private static final BigDecimal GDAX_FEE = BigDecimal.ZERO;
+
+    private ExchangeAdapter bitstampAdapter;
+    private ExchangeAdapter gdaxAdapter;
+    private ConsolidatedOrderBookService consolidatedOrderBookService;
+
+
+    @Before
+    public void setupForEachTest() throws Exception {
+
+        bitstampAdapter = PowerMock.createMock(ExchangeAdapter.class);
+        gdaxAdapter = PowerMock.createMock(ExchangeAdapter.class);
+
+        final Map<String, ExchangeAdapter> exchangeAdapters = new LinkedHashMap<>();
+        exchangeAdapters.put(BITSTAMP_ID, bitstampAdapter);
+        exchangeAdapters.put(GDAX_ID, gdaxAdapter);
+        consolidatedOrderBookService = new ConsolidatedOrderBookService(exchangeAdapters);
+        consolidatedOrderBookService.trackMarket(BITSTAMP_ID, BITSTAMP_MARKET);
+        consolidatedOrderBookService.trackMarket(GDAX_ID, GDAX_MARKET);
+    }
+
+    @Test
+    public void testOrderBooksAreMergedOnFeeAdjustedPrice() throws Exception {
+
+        consolidatedOrderBookService.updateExchangeOrderBook(BITSTAMP_ID, BITSTAMP_MARKET,
+                someOrderBook("btcusd", "100", "102", "99", "98"), BITSTAMP_FEE, BITSTAMP_FEE);
+        consolidatedOrderBookService.updateExchangeOrderBook(GDAX_ID, GDAX_MARKET,
+                someOrderBook("BTC-USD", "100.5", "103", "98.5", "97"), GDAX_FEE, GDAX_FEE);
+
+        final ConsolidatedOrderBook book = consolidatedOrderBookService.getConsolidatedOrderBook("BTC", "USD");
+        assertThat(book.getSellOrders().size()).isEqualTo(4);
+        assertThat(book.getBuyOrders().size()).isEqualTo(4);
+
+        // Bitstamp ask of 100 is 101 after fees, so GDAX's 100.5 is the best ask
+        assertThat(book.getBestAsk().getExchangeId()).isEqualTo(GDAX_ID);
+        assertThat(book.getBestAsk().getMarketId()).isEqualTo("BTC-USD");
+        assertThat(book.getSellOrders().get(1).getExchangeId()).isEqualTo(BITSTAMP_ID);
+        assertThat(book.getSellOrders().get(1).getPrice()).isEqualByComparingTo("100");
+        assertThat(book.getSellOrders().get(1).getEffectivePrice()).isEqualByComparingTo("101");
+
+        // Bitstamp bid of 99 is 98.01 after fees, so GDAX's 98.5 is the best bid
+        assertThat(book.getBestBid().getExchangeId()).isEqualTo(GDAX_ID);
+        assertThat(book.getBuyOrders().get(1).getEffectivePrice()).isEqualByComparingTo("98.01");
+
+        // check merged ordering holds all the way down
+        for (int i = 1; i < book.getSellOrders().size(); i++) {
+            assertThat(book.getSellOrders().get(i).getEffectivePrice())
+                    .isGreaterThanOrEqualTo(book.getSellOrders().get(i - 1).getEffectivePrice());
+            assertThat(book.getBuyOrders().get(i).getEffectivePrice())
+                    .isLessThanOrEqualTo(book.getBuyOrders().get(i - 1).getEffectivePrice());
+        }
+    }
+
+    @Test
+    public void testUpdateFromOneExchangeOnlyReplacesThatExchangesOrders() throws Exception {
+
+        consolidatedOrderBookService.updateExchangeOrderBook(BITSTAMP_ID, BITSTAMP_MARKET,
+                someOrderBook("btcusd", "100", "102", "99", "98"), BITSTAMP_FEE, BITSTAMP_FEE);
+        consolidatedOrderBookService.updateExchangeOrderBook(GDAX_ID, GDAX_MARKET,
+                someOrderBook("BTC-USD", "100.5", "103", "98.5", "97"), GDAX_FEE, GDAX_FEE);
+
+        // GDAX moves up - Bitstamp orders should be untouched
+        consolidatedOrderBookService.updateExchangeOrderBook(GDAX_ID, GDAX_MARKET,
+                someOrderBook("BTC-USD", "105", "106", "104", "103"), GDAX_FEE, GDAX_FEE);
+
+        final ConsolidatedOrderBook book = consolidatedOrderBookService.getConsolidatedOrderBook("btc", "usd");
+        assertThat(book.getSellOrders().size()).isEqualTo(4);
+        assertThat(book.getBestAsk().getExchangeId()).isEqualTo(BITSTAMP_ID);
+        assertThat(book.getBestAsk().getEffectivePrice()).isEqualByComparingTo("101");
+        assertThat(book.getBestBid().getExchangeId()).isEqualTo(GDAX_ID);
+        assertThat(book.getBestBid().getPrice()).isEqualByComparingTo("104");
+    }
+
+    @Test
+    public void testExchangeIsDroppedFromBookWhenRefreshFails() throws Exception {
+
+        expect(bitstampAdapter.getMarketOrders("btcusd")).andReturn(someOrderBook("btcusd", "100", "102", "99", "98"));
+        expect(bitstampAdapter.getPercentageOfBuyOrderTakenForExchangeFee("btcusd")).andReturn(BITSTAMP_FEE);
+        expect(bitstampAdapter.getPercentageOfSellOrderTakenForExchangeFee("btcusd")).andReturn(BITSTAMP_FEE);
+        expect(gdaxAdapter.getMarketOrders("BTC-USD")).andReturn(someOrderBook("BTC-USD", "100.5", "103", "98.5", "97"));
+        expect(gdaxAdapter.getPercentageOfBuyOrderTakenForExchangeFee("BTC-USD")).andReturn(GDAX_FEE);
+        expect(gdaxAdapter.getPercentageOfSellOrderTakenForExchangeFee("BTC-USD")).andReturn(GDAX_FEE);
+
+        // 2nd refresh - GDAX is down. The fees are cached, so they are not fetched again.
+        expect(bitstampAdapter.getMarketOrders("btcusd")).andReturn(someOrderBook("btcusd", "100", "102", "99", "98"));
+        expect(gdaxAdapter.getMarketOrders("BTC-USD")).andThrow(new ExchangeNetworkException("Connection reset"));
+
+        PowerMock.replayAll();
+
+        consolidatedOrderBookService.refresh();
+        assertThat(consolidatedOrderBookService.getConsolidatedOrderBook("BTC", "USD").getSellOrders().size()).isEqualTo(4);
+
+        consolidatedOrderBookService.refresh();
+        final ConsolidatedOrderBook book = consolidatedOrderBookService.getConsolidatedOrderBook("BTC", "USD");
+        assertThat(book.getSellOrders().size()).isEqualTo(2);
+        assertThat(book.getSellOrders().stream().allMatch(order -> BITSTAMP_ID.equals(order.getExchangeId()))).isTrue();
+
+        PowerMock.verifyAll();
+    }
+
+    @Test
+    public void testUntrackedMarketIsNotPutBackByRefreshInFlight() throws Exception {
+
+        consolidatedOrderBookService.updateExchangeOrderBook(BITSTAMP_ID, BITSTAMP_MARKET,
+                someOrderBook("btcusd", "100", "102", "99", "98"), BITSTAMP_FEE, BITSTAMP_FEE);
+        consolidatedOrderBookService.updateExchangeOrderBook(GDAX_ID, GDAX_MARKET,
+                someOrderBook("BTC-USD", "100.5", "103", "98.5", "97"), GDAX_FEE, GDAX_FEE);
+
+        // GDAX market is untracked while the refresh thread is fetching its book
+        consolidatedOrderBookService.untrackMarket(GDAX_ID, GDAX_MARKET);
+        consolidatedOrderBookService.updateExchangeOrderBook(GDAX_ID, GDAX_MARKET,
+                someOrderBook("BTC-USD", "90", "91", "89", "88"), GDAX_FEE, GDAX_FEE);
+
+        final ConsolidatedOrderBook book = consolidatedOrderBookService.getConsolidatedOrderBook("BTC", "USD");
+        assertThat(book.getSellOrders().size()).isEqualTo(2);
+        assertThat(book.getBestAsk().getExchangeId()).isEqualTo(BITSTAMP_ID);
+    }
+
+    @Test
+    public void testMarketsForSamePairOnSameExchangeKeepTheirOwnOrders() throws Exception {
+
+        consolidatedOrderBookService.trackMarket(BITSTAMP_ID, BITSTAMP_OTHER_MARKET);
+
+        consolidatedOrderBookService.updateExchangeOrderBook(BITSTAMP_ID, BITSTAMP_MARKET,
+                someOrderBook("btcusd", "100", "102", "99", "98"), BITSTAMP_FEE, BITSTAMP_FEE);
+        consolidatedOrderBookService.updateExchangeOrderBook(BITSTAMP_ID, BITSTAMP_OTHER_MARKET,
+                someOrderBook("btcusd-otc", "99", "101", "97", "96"), BITSTAMP_FEE, BITSTAMP_FEE);
+
+        ConsolidatedOrderBook book = consolidatedOrderBookService.getConsolidatedOrderBook("BTC", "USD");
+        assertThat(book.getSellOrders().size()).isEqualTo(4);
+        assertThat(book.getBestAsk().getMarketId()).isEqualTo("btcusd-otc");
+        assertThat(book.getBestBid().getMarketId()).isEqualTo("btcusd");
+
+        consolidatedOrderBookService.untrackMarket(BITSTAMP_ID, BITSTAMP_OTHER_MARKET);
+
+        book = consolidatedOrderBookService.getConsolidatedOrderBook("BTC", "USD");
+        assertThat(book.getSellOrders().size()).isEqualTo(2);
+        assertThat(book.getSellOrders().stream().allMatch(order -> "btcusd".equals(order.getMarketId()))).isTrue();
+    }
+
+    @Test
+    public void testOrderBookNotInPriceOrderIsSortedBeforeMerge() throws Exception {
+
+        // asks and bids both come back worst price first
+        consolidatedOrderBookService.updateExchangeOrderBook(BITSTAMP_ID, BITSTAMP_MARKET,
+                someOrderBook("btcusd", "102", "100", "98", "99"), BITSTAMP_FEE, BITSTAMP_FEE);
+        consolidatedOrderBookService.updateExchangeOrderBook(GDAX_ID, GDAX_MARKET,
+                someOrderBook("BTC-USD", "101.5", "103", "98.5", "97"), GDAX_FEE, GDAX_FEE);
+
+        final ConsolidatedOrderBook book = consolidatedOrderBookService.getConsolidatedOrderBook("BTC", "USD");
+        assertThat(book.getBestAsk().getExchangeId()).isEqualTo(BITSTAMP_ID);
+        assertThat(book.getBestAsk().getPrice()).isEqualByComparingTo("100");
+        assertThat(book.getBestBid().getExchangeId()).isEqualTo(GDAX_ID);
+        for (int i = 1; i < book.getSellOrders().size(); i++) {
+            assertThat(book.getSellOrders().get(i).getEffectivePrice())
+                    .isGreaterThanOrEqualTo(book.getSellOrders().get(i - 1).getEffectivePrice());
+            assertThat(book.getBuyOrders().get(i).getEffectivePrice())
+                    .isLessThanOrEqualTo(book.getBuyOrders().get(i - 1).getEffectivePrice());
+        }
+    }
+
+    @Test
+    public void testUnknownPairReturnsNull() {
+        assertThat(consolidatedOrderBookService.getConsolidatedOrderBook("LTC", "BTC")).isNull();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTrackingMarketOnUnknownExchangeThrowsException() {
+        consolidatedOrderBookService.trackMarket("unknown-exchange", BITSTAMP_MARKET);
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    //  private utils
+    // ------------------------------------------------------------------------------------------------
+
+    private static MarketOrderBook someOrderBook(String marketId, String ask1, String ask2, String bid1, String bid2) {
+        return new MarketOrderBook(marketId,
+                Arrays.asList(someOrder(OrderType.SELL, ask1), someOrder(OrderType.SELL, ask2)),
+                Arrays.asList(someOrder(OrderType.BUY, bid1), someOrder(OrderType.BUY, bid2)));
+    }
+
+    private static MarketOrder someOrder(OrderType type, String price) {
+        final BigDecimal quantity = new BigDecimal("1.5");
+        return new MarketOrder(type, new BigDecimal(price), quantity, new BigDecimal(price).multiply(quantity));
+    }
+}
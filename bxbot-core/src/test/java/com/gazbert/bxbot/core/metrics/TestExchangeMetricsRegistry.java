@@ -0,0 +1,180 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.metrics;
+
+import com.gazbert.bxbot.domain.metrics.ExchangeCallMetrics;
+import com.gazbert.bxbot.trading.api.ExchangeNetworkException;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the Exchange Metrics Registry behaves as expected.
+ *
+ * @author gazbert
+ */
+public class TestExchangeMetricsRegistry {
+
+    private static final String EXCHANGE = "bitstamp";
+    private static final String EXCHANGE_2 = "gdax";
+    private static final String ENDPOINT = "getMarketOrders";
+    private static final String MARKET = "btcusd";
+
+    @Test
+    public void testCallMetricsAreRecordedPerExchangeEndpointAndMarket() {
+
+        final ExchangeMetricsRegistry metricsRegistry = new ExchangeMetricsRegistry();
+        metricsRegistry.record(EXCHANGE_2, ENDPOINT, MARKET, millis(30), 10, null);
+        metricsRegistry.record(EXCHANGE, ENDPOINT, MARKET, millis(3), 100, null);
+        metricsRegistry.record(EXCHANGE, ENDPOINT, MARKET, millis(80), 300, null);
+        metricsRegistry.record(EXCHANGE, ENDPOINT, MARKET, millis(4000), -1,
+                new ExchangeNetworkException("Connection timed out"));
+
+        final List<ExchangeCallMetrics> callMetrics = metricsRegistry.getCallMetrics();
+        assertEquals(2, callMetrics.size());
+
+        // sorted by exchange
+        final ExchangeCallMetrics bitstampMetrics = callMetrics.get(0);
+        assertEquals(EXCHANGE, bitstampMetrics.getExchange());
+        assertEquals(ENDPOINT, bitstampMetrics.getEndpoint());
+        assertEquals(MARKET, bitstampMetrics.getMarket());
+        assertEquals(3, bitstampMetrics.getCallCount());
+        assertEquals(1, bitstampMetrics.getErrorCount());
+        assertEquals(Long.valueOf(1), bitstampMetrics.getErrorCountsByType().get("ExchangeNetworkException"));
+        assertEquals(4000, bitstampMetrics.getMaxLatency(), 0.001);
+        assertEquals((3 + 80 + 4000) / 3d, bitstampMetrics.getMeanLatency(), 0.001);
+        assertEquals(100, bitstampMetrics.getP50Latency(), 0.001);
+        assertEquals(4000, bitstampMetrics.getP99Latency(), 0.001);
+        assertEquals(400, bitstampMetrics.getPayloadItemsTotal());
+        assertEquals(300, bitstampMetrics.getPayloadItemsMax());
+
+        assertEquals(Long.valueOf(0), bitstampMetrics.getLatencyBuckets().get("2"));
+        assertEquals(Long.valueOf(1), bitstampMetrics.getLatencyBuckets().get("5"));
+        assertEquals(Long.valueOf(2), bitstampMetrics.getLatencyBuckets().get("100"));
+        assertEquals(Long.valueOf(3), bitstampMetrics.getLatencyBuckets().get("5000"));
+        assertEquals(Long.valueOf(3), bitstampMetrics.getLatencyBuckets().get(LatencyHistogram.INFINITY_BUCKET));
+
+        assertEquals(EXCHANGE_2, callMetrics.get(1).getExchange());
+        assertEquals(1, callMetrics.get(1).getCallCount());
+        assertEquals(0, callMetrics.get(1).getErrorCount());
+    }
+
+    @Test
+    public void testSlowCallsGoInInfinityBucket() {
+
+        final ExchangeMetricsRegistry metricsRegistry = new ExchangeMetricsRegistry();
+        metricsRegistry.record(EXCHANGE, ENDPOINT, MARKET, millis(60000), -1, null);
+
+        final ExchangeCallMetrics callMetrics = metricsRegistry.getCallMetrics().get(0);
+        assertEquals(Long.valueOf(0), callMetrics.getLatencyBuckets().get("10000"));
+        assertEquals(Long.valueOf(1), callMetrics.getLatencyBuckets().get(LatencyHistogram.INFINITY_BUCKET));
+        assertEquals(60000, callMetrics.getP50Latency(), 0.001);
+    }
+
+    @Test
+    public void testPrometheusTextFormat() {
+
+        final ExchangeMetricsRegistry metricsRegistry = new ExchangeMetricsRegistry();
+        metricsRegistry.record(EXCHANGE, ENDPOINT, MARKET, millis(80), 300, null);
+        metricsRegistry.record(EXCHANGE, ENDPOINT, MARKET, millis(120), -1,
+                new ExchangeNetworkException("Connection reset"));
+        metricsRegistry.record(EXCHANGE, "getBalanceInfo", "", millis(40), 4, null);
+
+        final String labels = "exchange=\"bitstamp\",endpoint=\"getMarketOrders\",market=\"btcusd\"";
+        final String prometheusText = metricsRegistry.toPrometheusText();
+
+        assertTrue(prometheusText.contains("# TYPE bxbot_exchange_call_duration_seconds histogram\n"));
+        assertTrue(prometheusText.contains("bxbot_exchange_call_duration_seconds_bucket{" + labels + ",le=\"0.1\"} 1\n"));
+        assertTrue(prometheusText.contains("bxbot_exchange_call_duration_seconds_bucket{" + labels + ",le=\"0.25\"} 2\n"));
+        assertTrue(prometheusText.contains("bxbot_exchange_call_duration_seconds_bucket{" + labels + ",le=\"+Inf\"} 2\n"));
+        assertTrue(prometheusText.contains("bxbot_exchange_call_duration_seconds_sum{" + labels + "} 0.2\n"));
+        assertTrue(prometheusText.contains("bxbot_exchange_call_duration_seconds_count{" + labels + "} 2\n"));
+        assertTrue(prometheusText.contains("# TYPE bxbot_exchange_call_errors_total counter\n"));
+        assertTrue(prometheusText.contains(
+                "bxbot_exchange_call_errors_total{" + labels + ",exception=\"ExchangeNetworkException\"} 1\n"));
+        assertTrue(prometheusText.contains("bxbot_exchange_call_payload_items_total{" + labels + "} 300\n"));
+        assertTrue(prometheusText.contains(
+                "bxbot_exchange_call_payload_items_total{exchange=\"bitstamp\",endpoint=\"getBalanceInfo\",market=\"\"} 4\n"));
+    }
+
+    @Test
+    public void testResponseTransferIsRecorded() {
+
+        final ExchangeMetricsRegistry metricsRegistry = new ExchangeMetricsRegistry();
+        metricsRegistry.record(EXCHANGE, ENDPOINT, MARKET, millis(80), 300, null);
+        metricsRegistry.recordTransfer(EXCHANGE, ENDPOINT, MARKET, 1, 0, 4000, 36000);
+        metricsRegistry.recordTransfer(EXCHANGE, ENDPOINT, MARKET, 1, 0, 1000, 9000);
+        metricsRegistry.recordTransfer(EXCHANGE, ENDPOINT, MARKET, 0, 1, 0, 0);
+
+        final ExchangeCallMetrics callMetrics = metricsRegistry.getCallMetrics().get(0);
+        assertEquals(2, callMetrics.getNetworkRequestCount());
+        assertEquals(1, callMetrics.getCoalescedRequestCount());
+        assertEquals(5000, callMetrics.getResponseWireBytesTotal());
+        assertEquals(45000, callMetrics.getResponseDecodedBytesTotal());
+
+        final String labels = "exchange=\"bitstamp\",endpoint=\"getMarketOrders\",market=\"btcusd\"";
+        final String prometheusText = metricsRegistry.toPrometheusText();
+        assertTrue(prometheusText.contains("# TYPE bxbot_exchange_call_response_wire_bytes_total counter\n"));
+        assertTrue(prometheusText.contains("bxbot_exchange_call_response_wire_bytes_total{" + labels + "} 5000\n"));
+        assertTrue(prometheusText.contains("bxbot_exchange_call_response_decoded_bytes_total{" + labels + "} 45000\n"));
+        assertTrue(prometheusText.contains("bxbot_exchange_call_network_requests_total{" + labels + "} 2\n"));
+        assertTrue(prometheusText.contains("bxbot_exchange_call_coalesced_requests_total{" + labels + "} 1\n"));
+    }
+
+    @Test
+    public void testRetriesAndHedgedRequestsAreRecorded() {
+
+        final ExchangeMetricsRegistry metricsRegistry = new ExchangeMetricsRegistry();
+        metricsRegistry.record(EXCHANGE, ENDPOINT, MARKET, millis(80), 300, null);
+        metricsRegistry.recordRetriesAndHedges(EXCHANGE, ENDPOINT, MARKET, 2, 0);
+        metricsRegistry.recordRetriesAndHedges(EXCHANGE, ENDPOINT, MARKET, 0, 1);
+
+        final ExchangeCallMetrics callMetrics = metricsRegistry.getCallMetrics().get(0);
+        assertEquals(2, callMetrics.getRetryCount());
+        assertEquals(1, callMetrics.getHedgedRequestCount());
+
+        final String labels = "exchange=\"bitstamp\",endpoint=\"getMarketOrders\",market=\"btcusd\"";
+        final String prometheusText = metricsRegistry.toPrometheusText();
+        assertTrue(prometheusText.contains("# TYPE bxbot_exchange_call_retries_total counter\n"));
+        assertTrue(prometheusText.contains("bxbot_exchange_call_retries_total{" + labels + "} 2\n"));
+        assertTrue(prometheusText.contains("bxbot_exchange_call_hedged_requests_total{" + labels + "} 1\n"));
+    }
+
+    @Test
+    public void testPrometheusLabelValuesAreEscaped() {
+
+        final ExchangeMetricsRegistry metricsRegistry = new ExchangeMetricsRegistry();
+        metricsRegistry.record("my \"exchange\"", ENDPOINT, "a\\b", millis(1), -1, null);
+
+        assertTrue(metricsRegistry.toPrometheusText().contains(
+                "exchange=\"my \\\"exchange\\\"\",endpoint=\"getMarketOrders\",market=\"a\\\\b\""));
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
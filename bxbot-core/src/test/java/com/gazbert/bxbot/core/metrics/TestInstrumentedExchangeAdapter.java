@@ -0,0 +1,286 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.metrics;
+
+import com.gazbert.bxbot.core.breaker.CircuitBreakerRegistry;
+import com.gazbert.bxbot.core.failover.FailoverManager;
+import com.gazbert.bxbot.core.failover.ReplicationTransport;
+import com.gazbert.bxbot.core.jfr.OrderEvent;
+import com.gazbert.bxbot.core.ratelimit.ExchangeRateLimiter;
+import com.gazbert.bxbot.core.ratelimit.RateLimiterRegistry;
+import com.gazbert.bxbot.domain.breaker.CircuitBreakerStatus;
+import com.gazbert.bxbot.domain.metrics.ExchangeCallMetrics;
+import com.gazbert.bxbot.exchange.api.ExchangeAdapter;
+import com.gazbert.bxbot.exchange.api.jfr.FlightRecorderSupport;
+import com.gazbert.bxbot.trading.api.*;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests the Instrumented Exchange Adapter records metrics as expected.
+ *
+ * @author gazbert
+ */
+public class TestInstrumentedExchangeAdapter {
+
+    private static final String EXCHANGE = "bitstamp";
+    private static final String MARKET = "btcusd";
+
+    private ExchangeAdapter exchangeAdapter;
+    private ExchangeMetricsRegistry metricsRegistry;
+    private InstrumentedExchangeAdapter instrumentedExchangeAdapter;
+
+
+    @Before
+    public void setupForEachTest() {
+        exchangeAdapter = EasyMock.createMock(ExchangeAdapter.class);
+        metricsRegistry = new ExchangeMetricsRegistry();
+        instrumentedExchangeAdapter = new InstrumentedExchangeAdapter(EXCHANGE, exchangeAdapter, metricsRegistry);
+    }
+
+    @Test
+    public void testSuccessfulCallIsRecordedWithPayloadSize() throws Exception {
+
+        final MarketOrder order = new MarketOrder(OrderType.BUY, new BigDecimal("100"), new BigDecimal("1"),
+                new BigDecimal("100"));
+        final MarketOrderBook orderBook = new MarketOrderBook(MARKET, Arrays.asList(order, order),
+                Collections.singletonList(order));
+        expect(exchangeAdapter.getMarketOrders(MARKET)).andReturn(orderBook);
+        EasyMock.replay(exchangeAdapter);
+
+        assertSame(orderBook, instrumentedExchangeAdapter.getMarketOrders(MARKET));
+
+        final List<ExchangeCallMetrics> callMetrics = metricsRegistry.getCallMetrics();
+        assertEquals(1, callMetrics.size());
+        assertEquals(EXCHANGE, callMetrics.get(0).getExchange());
+        assertEquals("getMarketOrders", callMetrics.get(0).getEndpoint());
+        assertEquals(MARKET, callMetrics.get(0).getMarket());
+        assertEquals(1, callMetrics.get(0).getCallCount());
+        assertEquals(0, callMetrics.get(0).getErrorCount());
+        assertEquals(3, callMetrics.get(0).getPayloadItemsTotal());
+
+        EasyMock.verify(exchangeAdapter);
+    }
+
+    @Test
+    public void testBalanceInfoCallIsRecordedWithNoMarket() throws Exception {
+
+        final Map<String, BigDecimal> balancesAvailable = new HashMap<>();
+        balancesAvailable.put("BTC", new BigDecimal("1.5"));
+        balancesAvailable.put("USD", new BigDecimal("200"));
+        expect(exchangeAdapter.getBalanceInfo()).andReturn(new BalanceInfo(balancesAvailable, new HashMap<>()));
+        EasyMock.replay(exchangeAdapter);
+
+        instrumentedExchangeAdapter.getBalanceInfo();
+
+        final ExchangeCallMetrics callMetrics = metricsRegistry.getCallMetrics().get(0);
+        assertEquals("getBalanceInfo", callMetrics.getEndpoint());
+        assertEquals("", callMetrics.getMarket());
+        assertEquals(1, callMetrics.getCallCount());
+
+        EasyMock.verify(exchangeAdapter);
+    }
+
+    @Test
+    public void testFailedCallIsRecordedAndExceptionRethrown() throws Exception {
+
+        final ExchangeNetworkException networkException = new ExchangeNetworkException("Connection reset");
+        expect(exchangeAdapter.createOrder(MARKET, OrderType.SELL, BigDecimal.ONE, BigDecimal.TEN))
+                .andThrow(networkException);
+        expect(exchangeAdapter.cancelOrder("1234", MARKET)).andThrow(new TradingApiException("Unknown order"));
+        EasyMock.replay(exchangeAdapter);
+
+        try {
+            instrumentedExchangeAdapter.createOrder(MARKET, OrderType.SELL, BigDecimal.ONE, BigDecimal.TEN);
+            fail("Expected ExchangeNetworkException");
+        } catch (ExchangeNetworkException e) {
+            assertSame(networkException, e);
+        }
+
+        try {
+            instrumentedExchangeAdapter.cancelOrder("1234", MARKET);
+            fail("Expected TradingApiException");
+        } catch (TradingApiException e) {
+            // expected
+        }
+
+        final List<ExchangeCallMetrics> callMetrics = metricsRegistry.getCallMetrics();
+        assertEquals("cancelOrder", callMetrics.get(0).getEndpoint());
+        assertEquals(Long.valueOf(1), callMetrics.get(0).getErrorCountsByType().get("TradingApiException"));
+        assertEquals("createOrder", callMetrics.get(1).getEndpoint());
+        assertEquals(Long.valueOf(1), callMetrics.get(1).getErrorCountsByType().get("ExchangeNetworkException"));
+
+        EasyMock.verify(exchangeAdapter);
+    }
+
+    @Test
+    public void testCallsFailFastWhileCircuitBreakerIsOpen() throws Exception {
+
+        final CircuitBreakerRegistry circuitBreakerRegistry = new CircuitBreakerRegistry(true, 50, 0, 4, 2, 60);
+        final InstrumentedExchangeAdapter guardedExchangeAdapter = new InstrumentedExchangeAdapter(EXCHANGE,
+                exchangeAdapter, metricsRegistry, null, null, circuitBreakerRegistry);
+
+        expect(exchangeAdapter.getLatestMarketPrice(MARKET))
+                .andThrow(new ExchangeNetworkException("Kraken is undergoing maintenance")).times(2);
+        expect(exchangeAdapter.getBalanceInfo()).andReturn(new BalanceInfo(new HashMap<>(), new HashMap<>()));
+        EasyMock.replay(exchangeAdapter);
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                guardedExchangeAdapter.getLatestMarketPrice(MARKET);
+                fail("Expected ExchangeNetworkException");
+            } catch (ExchangeNetworkException e) {
+                // 3rd call is rejected by the breaker, without going to the exchange
+                assertEquals(i == 2, e.getMessage().startsWith("Circuit breaker is open"));
+            }
+        }
+        assertEquals(2, metricsRegistry.getCallMetrics().get(0).getCallCount());
+
+        // the other endpoints have their own breakers
+        guardedExchangeAdapter.getBalanceInfo();
+
+        final CircuitBreakerStatus breakerStatus = circuitBreakerRegistry.getCircuitBreakerStatuses().get(1);
+        assertEquals("getLatestMarketPrice", breakerStatus.getEndpoint());
+        assertEquals("OPEN", breakerStatus.getState());
+        assertEquals(1, breakerStatus.getRejectedCallCount());
+
+        EasyMock.verify(exchangeAdapter);
+    }
+
+    @Test
+    public void testAdapterInstancesForSameApiKeyShareRateLimit() throws Exception {
+
+        final ExchangeRateLimiter rateLimiter = new RateLimiterRegistry(true, 1, 0, null)
+                .getRateLimiter(EXCHANGE, "BitstampExchangeAdapter", Collections.singletonMap("key", "api-key"));
+        final InstrumentedExchangeAdapter laneExchangeAdapter = new InstrumentedExchangeAdapter(EXCHANGE,
+                exchangeAdapter, metricsRegistry, null, null, null, null, rateLimiter);
+        final ExchangeAdapter otherExchangeAdapter = EasyMock.createMock(ExchangeAdapter.class);
+        final InstrumentedExchangeAdapter watchdogExchangeAdapter = new InstrumentedExchangeAdapter(EXCHANGE,
+                otherExchangeAdapter, metricsRegistry, null, null, null, null, rateLimiter);
+
+        expect(exchangeAdapter.getBalanceInfo()).andReturn(new BalanceInfo(new HashMap<>(), new HashMap<>()));
+        EasyMock.replay(exchangeAdapter, otherExchangeAdapter);
+
+        laneExchangeAdapter.getBalanceInfo();
+        try {
+            watchdogExchangeAdapter.getBalanceInfo();
+            fail("Expected ExchangeNetworkException");
+        } catch (ExchangeNetworkException e) {
+            // rejected without going to the exchange
+            assertTrue(e.getMessage().startsWith("Rate limit of 1.0 calls per second reached"));
+        }
+        assertEquals(1, rateLimiter.getRejectedCallCount());
+
+        EasyMock.verify(exchangeAdapter, otherExchangeAdapter);
+    }
+
+    @Test
+    public void testOrdersAreNotPlacedWhileFailoverPrimaryHasNoLease() throws Exception {
+
+        // no standby has acknowledged the primary's lease
+        final FailoverManager failoverManager = new FailoverManager("primary", 10,
+                EasyMock.createNiceMock(ReplicationTransport.class), null, null);
+        final InstrumentedExchangeAdapter fencedExchangeAdapter = new InstrumentedExchangeAdapter(EXCHANGE,
+                exchangeAdapter, metricsRegistry, null, null, null, failoverManager);
+
+        expect(exchangeAdapter.getLatestMarketPrice(MARKET)).andReturn(new BigDecimal("1454.018"));
+        EasyMock.replay(exchangeAdapter);
+
+        try {
+            fencedExchangeAdapter.createOrder(MARKET, OrderType.BUY, new BigDecimal("0.5"), new BigDecimal("1454.018"));
+            fail("Expected ExchangeNetworkException");
+        } catch (ExchangeNetworkException e) {
+            assertTrue(e.getMessage().startsWith("Failover primary has lost its lease"));
+        }
+
+        // the other calls still go to the exchange
+        assertEquals(new BigDecimal("1454.018"), fencedExchangeAdapter.getLatestMarketPrice(MARKET));
+
+        EasyMock.verify(exchangeAdapter);
+    }
+
+    @Test
+    public void testOrdersAreEmittedAsFlightRecorderEvents() throws Exception {
+
+        assumeTrue(FlightRecorderSupport.isAvailable());
+
+        expect(exchangeAdapter.createOrder(MARKET, OrderType.BUY, BigDecimal.ONE, BigDecimal.TEN)).andReturn("4321");
+        expect(exchangeAdapter.cancelOrder("4321", MARKET)).andThrow(new TradingApiException("Unknown order"));
+        EasyMock.replay(exchangeAdapter);
+
+        final Path recordingFile = Files.createTempFile("bxbot-test", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(OrderEvent.class);
+            recording.start();
+
+            instrumentedExchangeAdapter.createOrder(MARKET, OrderType.BUY, BigDecimal.ONE, BigDecimal.TEN);
+            try {
+                instrumentedExchangeAdapter.cancelOrder("4321", MARKET);
+                fail("Expected TradingApiException");
+            } catch (TradingApiException e) {
+                // expected
+            }
+
+            recording.stop();
+            recording.dump(recordingFile);
+
+            final List<RecordedEvent> orderEvents = RecordingFile.readAllEvents(recordingFile);
+            assertEquals(2, orderEvents.size());
+
+            final RecordedEvent createOrderEvent = orderEvents.get(0);
+            assertEquals("createOrder", createOrderEvent.getString("operation"));
+            assertEquals(EXCHANGE, createOrderEvent.getString("exchange"));
+            assertEquals(MARKET, createOrderEvent.getString("marketId"));
+            assertEquals("Buy", createOrderEvent.getString("orderType"));
+            assertEquals(10.0, createOrderEvent.getDouble("price"), 0.0);
+            assertEquals("4321", createOrderEvent.getString("orderId"));
+            assertNull(createOrderEvent.getString("error"));
+
+            final RecordedEvent cancelOrderEvent = orderEvents.get(1);
+            assertEquals("cancelOrder", cancelOrderEvent.getString("operation"));
+            assertEquals("TradingApiException", cancelOrderEvent.getString("error"));
+        } finally {
+            Files.deleteIfExists(recordingFile);
+        }
+
+        EasyMock.verify(exchangeAdapter);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gazbert.bxbot.core.ratelimit;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the exchange rate limiters throttle and share as expected.
+ *
+ * @author gazbert
+ */
+public class TestExchangeRateLimiter {
+
+    private static final String EXCHANGE = "kraken";
+    private static final String ADAPTER = "com.gazbert.bxbot.exchanges.KrakenExchangeAdapter";
+    private static final long ONE_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long MAX_WAIT = TimeUnit.MILLISECONDS.toNanos(500);
+
+    @Test
+    public void testCallsAreThrottledOnceBurstIsUsedUp() {
+
+        final ExchangeRateLimiter rateLimiter = new ExchangeRateLimiter(EXCHANGE, 2, 500, 0);
+
+        // 1 second's worth of calls go straight through
+        assertEquals(0, rateLimiter.reserve(0, MAX_WAIT));
+        assertEquals(0, rateLimiter.reserve(0, MAX_WAIT));
+
+        // the next waits for the next token, and the one after it queues up behind
+        assertEquals(ONE_SECOND / 2, rateLimiter.reserve(0, MAX_WAIT));
+        assertEquals(-1, rateLimiter.reserve(0, MAX_WAIT));
+        assertEquals(ONE_SECOND / 2, rateLimiter.reserve(ONE_SECOND / 2, MAX_WAIT));
+        assertEquals(2, rateLimiter.getThrottledCallCount());
+        assertEquals(1, rateLimiter.getRejectedCallCount());
+
+        // tokens build back up while idle, but never beyond 1 second's worth
+        assertEquals(0, rateLimiter.reserve(10 * ONE_SECOND, MAX_WAIT));
+        assertEquals(0, rateLimiter.reserve(10 * ONE_SECOND, MAX_WAIT));
+        assertEquals(ONE_SECOND / 2, rateLimiter.reserve(10 * ONE_SECOND, MAX_WAIT));
+    }
+
+    @Test
+    public void testSlowLimitStillAllowsOneCall() {
+
+        final ExchangeRateLimiter rateLimiter = new ExchangeRateLimiter(EXCHANGE, 0.5, 500, 0);
+        assertEquals(0, rateLimiter.reserve(0, MAX_WAIT));
+        assertEquals(-1, rateLimiter.reserve(ONE_SECOND, MAX_WAIT));
+        assertEquals(0, rateLimiter.reserve(2 * ONE_SECOND, MAX_WAIT));
+    }
+
+    @Test
+    public void testLimiterIsSharedPerApiKey() {
+
+        final RateLimiterRegistry registry = new RateLimiterRegistry(true, 10, 5000, null);
+        final ExchangeRateLimiter rateLimiter = registry.getRateLimiter(EXCHANGE, ADAPTER,
+                Collections.singletonMap("key", "key-1"));
+
+        assertSame(rateLimiter, registry.getRateLimiter(EXCHANGE, ADAPTER, Collections.singletonMap("key", "key-1")));
+        assertSame(rateLimiter, registry.getRateLimiter("kraken-2", ADAPTER, Collections.singletonMap("key", "key-1")));
+        assertNotSame(rateLimiter, registry.getRateLimiter(EXCHANGE, ADAPTER,
+                Collections.singletonMap("key", "key-2")));
+        assertEquals(10, rateLimiter.getCallsPerSecond(), 0.001);
+    }
+
+    @Test
+    public void testNoLimiterWhenDisabled() {
+        assertNull(new RateLimiterRegistry(false, 10, 5000, null).getRateLimiter(EXCHANGE, ADAPTER, null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidConfigIsRejected() {
+        new RateLimiterRegistry(true, 0, 5000, null);
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.routing;
+
+import com.gazbert.bxbot.exchange.api.ExchangeAdapter;
+import com.gazbert.bxbot.trading.api.BalanceInfo;
+import com.gazbert.bxbot.trading.api.ConsolidatedMarketOrder;
+import com.gazbert.bxbot.trading.api.ConsolidatedOrderBook;
+import com.gazbert.bxbot.trading.api.ExchangeNetworkException;
+import com.gazbert.bxbot.trading.api.Market;
+import com.gazbert.bxbot.trading.api.OpenOrder;
+import com.gazbert.bxbot.trading.api.OrderType;
+import com.gazbert.bxbot.trading.api.TradingApiException;
+import org.junit.Before;
+import org.junit.Test;
+import org.powermock.api.easymock.PowerMock;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.assertj.core.api.Java6Assertions.fail;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+
+/**
+ * Tests the Smart Order Router picks and splits venues as expected.
+ *
+ * @author gazbert
+ */
+public class TestSmartOrderRouter {
+
+    private static final String BITSTAMP_ID = "bitstamp";
+    private static final String GDAX_ID = "gdax";
+
+    // Each exchange names the same pair differently
+    private static final Market BITSTAMP_MARKET = new Market("BTC/USD", "btcusd", "BTC", "USD");
+    private static final Market GDAX_MARKET = new Market("BTC/USD", "BTC-USD", "BTC", "USD");
+
+    private static final BigDecimal BITSTAMP_FEE = new BigDecimal("0.01");
+    private static final BigDecimal GDAX_FEE = BigDecimal.ZERO;
+    private static final BigDecimal LIMIT_PRICE = new BigDecimal("102");
+
+    private ExchangeAdapter bitstampAdapter;
+    private ExchangeAdapter gdaxAdapter;
+    private ConsolidatedOrderBook consolidatedOrderBook;
+    private SmartOrderRouter smartOrderRouter;
+
+
+    @Before
+    public void setupForEachTest() throws Exception {
+
+        bitstampAdapter = PowerMock.createMock(ExchangeAdapter.class);
+        gdaxAdapter = PowerMock.createMock(ExchangeAdapter.class);
+
+        final Map<String, ExchangeAdapter> exchangeAdapters = new LinkedHashMap<>();
+        exchangeAdapters.put(BITSTAMP_ID, bitstampAdapter);
+        exchangeAdapters.put(GDAX_ID, gdaxAdapter);
+
+        // Bitstamp ask of 100 is 101 after fees, so GDAX's 100.5 is the best ask - but GDAX only has 1 BTC at that price
+        consolidatedOrderBook = new ConsolidatedOrderBook("BTC", "USD",
+                Arrays.asList(
+                        someAsk(GDAX_ID, "BTC-USD", "100.5", "1", "100.5"),
+                        someAsk(BITSTAMP_ID, "btcusd", "100", "5", "101"),
+                        someAsk(GDAX_ID, "BTC-USD", "103", "5", "103")),
+                Collections.emptyList(), System.currentTimeMillis());
+
+        smartOrderRouter = new SmartOrderRouter(exchangeAdapters,
+                (baseCurrency, counterCurrency) -> consolidatedOrderBook, BigDecimal.ZERO);
+        smartOrderRouter.trackMarket(BITSTAMP_ID, BITSTAMP_MARKET);
+        smartOrderRouter.trackMarket(GDAX_ID, GDAX_MARKET);
+    }
+
+    @Test
+    public void testBuyOrderIsRoutedToVenueWithBestFeeAdjustedPrice() throws Exception {
+
+        expectBuyQuotes("10000", "10000");
+        expect(gdaxAdapter.createOrder(eq("BTC-USD"), eq(OrderType.BUY), eq(new BigDecimal("1")), eq(LIMIT_PRICE)))
+                .andReturn("G1");
+
+        PowerMock.replayAll();
+
+        final String orderId = smartOrderRouter.createOrder("btcusd", OrderType.BUY, new BigDecimal("1"), LIMIT_PRICE);
+        assertThat(orderId).isEqualTo("gdax:G1");
+        assertThat(smartOrderRouter.getVenueLatency(GDAX_ID)).isNotNull();
+
+        PowerMock.verifyAll();
+    }
+
+    @Test
+    public void testLargeBuyOrderIsSplitAcrossVenues() throws Exception {
+
+        expectBuyQuotes("10000", "10000");
+        expect(gdaxAdapter.createOrder(eq("BTC-USD"), eq(OrderType.BUY), eq(new BigDecimal("1")), eq(LIMIT_PRICE)))
+                .andReturn("G1");
+        expect(bitstampAdapter.createOrder(eq("btcusd"), eq(OrderType.BUY), eq(new BigDecimal("2")), eq(LIMIT_PRICE)))
+                .andReturn("B1");
+
+        PowerMock.replayAll();
+
+        final String orderId = smartOrderRouter.createOrder("btcusd", OrderType.BUY, new BigDecimal("3"), LIMIT_PRICE);
+        assertThat(orderId).isEqualTo("gdax:G1,bitstamp:B1");
+
+        PowerMock.verifyAll();
+    }
+
+    @Test
+    public void testSplitOrderIsReturnedInOpenOrdersUnderItsRoutedOrderId() throws Exception {
+
+        expectBuyQuotes("10000", "10000");
+        expect(gdaxAdapter.createOrder(eq("BTC-USD"), eq(OrderType.BUY), eq(new BigDecimal("1")), eq(LIMIT_PRICE)))
+                .andReturn("G1");
+        expect(bitstampAdapter.createOrder(eq("btcusd"), eq(OrderType.BUY), eq(new BigDecimal("2")), eq(LIMIT_PRICE)))
+                .andReturn("B1");
+
+        // both parts open, Bitstamp part partially filled; plus an order that was not routed
+        expect(bitstampAdapter.getYourOpenOrders("btcusd")).andReturn(new ArrayList<>(Arrays.asList(
+                someOpenOrder("B1", "btcusd", "1.5", "2"), someOpenOrder("B9", "btcusd", "4", "4"))));
+        expect(gdaxAdapter.getYourOpenOrders("BTC-USD")).andReturn(new ArrayList<>(Collections.singletonList(
+                someOpenOrder("G1", "BTC-USD", "1", "1"))));
+
+        // then the GDAX part fills
+        expect(bitstampAdapter.getYourOpenOrders("btcusd")).andReturn(new ArrayList<>(Collections.singletonList(
+                someOpenOrder("B1", "btcusd", "1.5", "2"))));
+        expect(gdaxAdapter.getYourOpenOrders("BTC-USD")).andReturn(new ArrayList<>());
+
+        // then the Bitstamp part fills too
+        expect(bitstampAdapter.getYourOpenOrders("btcusd")).andReturn(new ArrayList<>());
+        expect(gdaxAdapter.getYourOpenOrders("BTC-USD")).andReturn(new ArrayList<>());
+
+        PowerMock.replayAll();
+
+        final String orderId = smartOrderRouter.createOrder("btcusd", OrderType.BUY, new BigDecimal("3"), LIMIT_PRICE);
+
+        List<OpenOrder> openOrders = smartOrderRouter.getYourOpenOrders("btcusd");
+        assertThat(openOrders.size()).isEqualTo(2);
+        final OpenOrder routedOpenOrder = openOrders.get(0);
+        assertThat(routedOpenOrder.getId()).isEqualTo(orderId);
+        assertThat(routedOpenOrder.getMarketId()).isEqualTo("btcusd");
+        assertThat(routedOpenOrder.getQuantity()).isEqualByComparingTo("2.5");
+        assertThat(routedOpenOrder.getOriginalQuantity()).isEqualByComparingTo("3");
+        assertThat(openOrders.get(1).getId()).isEqualTo("bitstamp:B9");
+
+        openOrders = smartOrderRouter.getYourOpenOrders("btcusd");
+        assertThat(openOrders.size()).isEqualTo(1);
+        assertThat(openOrders.get(0).getId()).isEqualTo(orderId);
+        assertThat(openOrders.get(0).getQuantity()).isEqualByComparingTo("1.5");
+
+        assertThat(smartOrderRouter.getYourOpenOrders("btcusd")).isEmpty();
+
+        PowerMock.verifyAll();
+    }
+
+    @Test
+    public void testOpenOrdersFromAdaptersAreCopiedNotRelabelled() throws Exception {
+
+        final OpenOrder bitstampOpenOrder = someOpenOrder("B9", "btcusd", "4", "4");
+        expect(bitstampAdapter.getYourOpenOrders("btcusd")).andReturn(
+                new ArrayList<>(Collections.singletonList(bitstampOpenOrder)));
+        expect(gdaxAdapter.getYourOpenOrders("BTC-USD")).andReturn(new ArrayList<>());
+
+        PowerMock.replayAll();
+
+        final List<OpenOrder> openOrders = smartOrderRouter.getYourOpenOrders("btcusd");
+        assertThat(openOrders.get(0).getId()).isEqualTo("bitstamp:B9");
+        assertThat(bitstampOpenOrder.getId()).isEqualTo("B9");
+
+        PowerMock.verifyAll();
+    }
+
+    @Test
+    public void testPartPlacedDespiteNetworkErrorIsFoundAndCancelled() throws Exception {
+
+        expectBuyQuotes("10000", "10000");
+        expect(gdaxAdapter.createOrder(eq("BTC-USD"), eq(OrderType.BUY), eq(new BigDecimal("1")), eq(LIMIT_PRICE)))
+                .andReturn("G1");
+        expect(bitstampAdapter.createOrder(eq("btcusd"), eq(OrderType.BUY), eq(new BigDecimal("2")), eq(LIMIT_PRICE)))
+                .andThrow(new ExchangeNetworkException("Read timed out"));
+        expect(gdaxAdapter.cancelOrder("G1", "BTC-USD")).andReturn(true);
+
+        // the Bitstamp part made it to the exchange; B9 was already there and must be left alone
+        expect(bitstampAdapter.getYourOpenOrders("btcusd")).andReturn(new ArrayList<>(Arrays.asList(
+                someOpenOrder("B9", "btcusd", "4", "4"), someOpenOrder("B1", "btcusd", "2", "2"))));
+        expect(bitstampAdapter.cancelOrder("B1", "btcusd")).andReturn(true);
+
+        PowerMock.replayAll();
+
+        try {
+            smartOrderRouter.createOrder("btcusd", OrderType.BUY, new BigDecimal("3"), LIMIT_PRICE);
+            fail("Expected ExchangeNetworkException");
+        } catch (ExchangeNetworkException e) {
+            assertThat(e.getMessage()).isEqualTo("Read timed out");
+        }
+
+        PowerMock.verifyAll();
+    }
+
+    @Test
+    public void testFeesAndBalancesAreFetchedOncePerTradeCycle() throws Exception {
+
+        expect(bitstampAdapter.getPercentageOfBuyOrderTakenForExchangeFee("btcusd")).andReturn(BITSTAMP_FEE).times(2);
+        expect(bitstampAdapter.getBalanceInfo()).andReturn(someBalanceInfo("BTC", "1.5")).times(2);
+        expect(gdaxAdapter.getBalanceInfo()).andReturn(someBalanceInfo("BTC", "2.5")).times(2);
+
+        PowerMock.replayAll();
+
+        assertThat(smartOrderRouter.getPercentageOfBuyOrderTakenForExchangeFee("btcusd")).isEqualTo(BITSTAMP_FEE);
+        assertThat(smartOrderRouter.getPercentageOfBuyOrderTakenForExchangeFee("btcusd")).isEqualTo(BITSTAMP_FEE);
+        smartOrderRouter.getBalanceInfo();
+        smartOrderRouter.getBalanceInfo();
+
+        smartOrderRouter.startTradeCycle();
+        assertThat(smartOrderRouter.getPercentageOfBuyOrderTakenForExchangeFee("btcusd")).isEqualTo(BITSTAMP_FEE);
+        smartOrderRouter.getBalanceInfo();
+
+        PowerMock.verifyAll();
+    }
+
+    @Test
+    public void testUntrackedMarketIdIsForgotten() throws Exception {
+
+        expect(gdaxAdapter.getYourOpenOrders("BTC-USD")).andReturn(new ArrayList<>());
+
+        PowerMock.replayAll();
+
+        smartOrderRouter.untrackMarket(BITSTAMP_ID, BITSTAMP_MARKET);
+        try {
+            smartOrderRouter.getYourOpenOrders("btcusd");
+            fail("Expected TradingApiException");
+        } catch (TradingApiException e) {
+            assertThat(e.getMessage()).contains("btcusd");
+        }
+        assertThat(smartOrderRouter.getYourOpenOrders("BTC-USD")).isEmpty();
+
+        PowerMock.verifyAll();
+    }
+
+    @Test
+    public void testBuyOrderSkipsVenueWithoutEnoughBalance() throws Exception {
+
+        expectBuyQuotes("10000", "0");
+        expect(bitstampAdapter.createOrder(eq("btcusd"), eq(OrderType.BUY), eq(new BigDecimal("1")), eq(LIMIT_PRICE)))
+                .andReturn("B1");
+
+        PowerMock.replayAll();
+
+        final String orderId = smartOrderRouter.createOrder("btcusd", OrderType.BUY, new BigDecimal("1"), LIMIT_PRICE);
+        assertThat(orderId).isEqualTo("bitstamp:B1");
+
+        PowerMock.verifyAll();
+    }
+
+    @Test(expected = TradingApiException.class)
+    public void testBuyOrderFailsWhenNoVenueHasEnoughBalance() throws Exception {
+
+        expectBuyQuotes("50", "50");
+
+        PowerMock.replayAll();
+
+        smartOrderRouter.createOrder("btcusd", OrderType.BUY, new BigDecimal("1"), LIMIT_PRICE);
+
+        PowerMock.verifyAll();
+    }
+
+    @Test
+    public void testRoutedOrderIsCancelledOnEveryVenue() throws Exception {
+
+        expect(gdaxAdapter.cancelOrder("G1", "BTC-USD")).andReturn(true);
+        expect(bitstampAdapter.cancelOrder("B1", "btcusd")).andReturn(true);
+
+        PowerMock.replayAll();
+
+        assertThat(smartOrderRouter.cancelOrder("gdax:G1,bitstamp:B1", "btcusd")).isTrue();
+
+        PowerMock.verifyAll();
+    }
+
+    @Test(expected = TradingApiException.class)
+    public void testCancellingNonRoutedOrderIdThrowsException() throws Exception {
+
+        PowerMock.replayAll();
+
+        smartOrderRouter.cancelOrder("B1", "btcusd");
+    }
+
+    @Test
+    public void testBalancesAreSummedAcrossVenues() throws Exception {
+
+        expect(bitstampAdapter.getBalanceInfo()).andReturn(someBalanceInfo("BTC", "1.5"));
+        expect(gdaxAdapter.getBalanceInfo()).andReturn(someBalanceInfo("BTC", "2.5"));
+
+        PowerMock.replayAll();
+
+        final BalanceInfo balanceInfo = smartOrderRouter.getBalanceInfo();
+        assertThat(balanceInfo.getBalancesAvailable().get("BTC")).isEqualByComparingTo("4");
+
+        PowerMock.verifyAll();
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    //  private utils
+    // ------------------------------------------------------------------------------------------------
+
+    private void expectBuyQuotes(String bitstampUsdBalance, String gdaxUsdBalance) throws Exception {
+        expect(bitstampAdapter.getPercentageOfBuyOrderTakenForExchangeFee("btcusd")).andReturn(BITSTAMP_FEE);
+        expect(bitstampAdapter.getBalanceInfo()).andReturn(someBalanceInfo("USD", bitstampUsdBalance));
+        expect(gdaxAdapter.getPercentageOfBuyOrderTakenForExchangeFee("BTC-USD")).andReturn(GDAX_FEE);
+        expect(gdaxAdapter.getBalanceInfo()).andReturn(someBalanceInfo("USD", gdaxUsdBalance));
+    }
+
+    private static OpenOrder someOpenOrder(String id, String marketId, String quantity, String originalQuantity) {
+        return new OpenOrder(id, new Date(), marketId, OrderType.BUY, LIMIT_PRICE, new BigDecimal(quantity),
+                new BigDecimal(originalQuantity), LIMIT_PRICE.multiply(new BigDecimal(quantity)));
+    }
+
+    private static BalanceInfo someBalanceInfo(String currency, String balance) {
+        final Map<String, BigDecimal> balancesAvailable = new HashMap<>();
+        balancesAvailable.put(currency, new BigDecimal(balance));
+        return new BalanceInfo(balancesAvailable, new HashMap<>());
+    }
+
+    private static ConsolidatedMarketOrder someAsk(String exchangeId, String marketId, String price, String quantity,
+                                                   String effectivePrice) {
+        return new ConsolidatedMarketOrder(exchangeId, marketId, OrderType.SELL, new BigDecimal(price),
+                new BigDecimal(quantity), new BigDecimal(price).multiply(new BigDecimal(quantity)),
+                new BigDecimal(effectivePrice));
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.startup;
+
+import com.gazbert.bxbot.domain.startup.StartupPhase;
+import com.gazbert.bxbot.domain.startup.StartupReport;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the Startup Profiler behaves as expected.
+ *
+ * @author gazbert
+ */
+public class TestStartupProfiler {
+
+    private static final long JVM_START_TIME = System.currentTimeMillis() - 5000;
+
+    @Test
+    public void testPhasesAreRecordedRelativeToJvmStart() {
+
+        final StartupProfiler startupProfiler = new StartupProfiler(true, 0, 5, JVM_START_TIME);
+        assertTrue(startupProfiler.isPrewarmConnections());
+
+        startupProfiler.contextStarted();
+        startupProfiler.record("fetch-config", JVM_START_TIME + 4000);
+
+        final StartupReport startupReport = startupProfiler.getStartupReport();
+        assertEquals(JVM_START_TIME, startupReport.getJvmStartTime());
+        assertNull(startupReport.getTimeToTrading());
+        assertEquals(2, startupReport.getPhases().size());
+
+        final StartupPhase contextPhase = startupReport.getPhases().get(0);
+        assertEquals(StartupProfiler.CONTEXT_PHASE, contextPhase.getName());
+        assertEquals(0, contextPhase.getStart());
+        assertTrue(contextPhase.getDuration() >= 5000);
+
+        final StartupPhase configPhase = startupReport.getPhases().get(1);
+        assertEquals("fetch-config", configPhase.getName());
+        assertEquals(4000, configPhase.getStart());
+        assertTrue(configPhase.getDuration() >= 1000);
+    }
+
+    @Test
+    public void testTimeToTradingIsRecordedWhenTradingStarts() {
+
+        final StartupProfiler startupProfiler = new StartupProfiler(false, 0, 5, JVM_START_TIME);
+        assertFalse(startupProfiler.isPrewarmConnections());
+
+        startupProfiler.tradingStarted();
+
+        final Long timeToTrading = startupProfiler.getStartupReport().getTimeToTrading();
+        assertNotNull(timeToTrading);
+        assertTrue(timeToTrading >= 5000);
+    }
+
+    @Test
+    public void testReportIsACopy() {
+
+        final StartupProfiler startupProfiler = new StartupProfiler(true, 0, 5, JVM_START_TIME);
+        final StartupReport startupReport = startupProfiler.getStartupReport();
+
+        startupProfiler.record("init-strategies", JVM_START_TIME + 4500);
+
+        assertTrue(startupReport.getPhases().isEmpty());
+        assertEquals(1, startupProfiler.getStartupReport().getPhases().size());
+    }
+}
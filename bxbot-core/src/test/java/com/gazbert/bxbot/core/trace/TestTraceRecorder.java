@@ -0,0 +1,119 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.core.trace;
+
+import com.gazbert.bxbot.domain.trace.CycleTimeline;
+import com.gazbert.bxbot.domain.trace.TimelineSpan;
+import com.gazbert.bxbot.exchange.api.trace.TraceSpan;
+import com.gazbert.bxbot.exchange.api.trace.TraceTimeline;
+import com.gazbert.bxbot.exchange.api.trace.Tracer;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the Trace Recorder ring buffer behaves as expected.
+ *
+ * @author gazbert
+ */
+public class TestTraceRecorder {
+
+    private static final int TIMELINES_RETAINED = 3;
+    private static final int MAX_SPANS_PER_TIMELINE = 10;
+
+    @After
+    public void tearDown() {
+        Tracer.detach();
+    }
+
+    @Test
+    public void testTimelineIsConvertedToDomainObject() {
+
+        final TraceRecorder traceRecorder = new TraceRecorder(true, TIMELINES_RETAINED, MAX_SPANS_PER_TIMELINE);
+        final TraceTimeline timeline = traceRecorder.begin(TraceRecorder.TRADE_CYCLE);
+        Tracer.attach(timeline);
+        try (TraceSpan ignored = Tracer.span(Tracer.CYCLE)) {
+            Tracer.span(Tracer.STRATEGY, "ExampleScalpingStrategy").close();
+        }
+        Tracer.detach();
+        traceRecorder.record(timeline);
+
+        final CycleTimeline cycleTimeline = traceRecorder.getTimeline(timeline.getId());
+        assertNotNull(cycleTimeline);
+        assertEquals(TraceRecorder.TRADE_CYCLE, cycleTimeline.getName());
+        assertEquals(timeline.getStartTimeMillis(), cycleTimeline.getStartTime());
+        assertTrue(cycleTimeline.getDuration() >= 0);
+        assertEquals(0, cycleTimeline.getDroppedSpanCount());
+        assertEquals(2, cycleTimeline.getSpans().size());
+
+        final TimelineSpan strategySpan = cycleTimeline.getSpans().get(0);
+        assertEquals(Tracer.STRATEGY, strategySpan.getName());
+        assertEquals("ExampleScalpingStrategy", strategySpan.getDetail());
+        assertEquals(1, strategySpan.getDepth());
+        assertEquals(Tracer.CYCLE, cycleTimeline.getSpans().get(1).getName());
+    }
+
+    @Test
+    public void testRingBufferKeepsNewestTimelinesOnly() {
+
+        final TraceRecorder traceRecorder = new TraceRecorder(true, TIMELINES_RETAINED, MAX_SPANS_PER_TIMELINE);
+        for (int i = 0; i < 5; i++) {
+            traceRecorder.record(traceRecorder.begin(
+                    i % 2 == 0 ? TraceRecorder.TRADE_CYCLE : TraceRecorder.EMERGENCY_STOP_CHECK));
+        }
+
+        final List<CycleTimeline> timelines = traceRecorder.getTimelines(null, 10);
+        assertEquals(TIMELINES_RETAINED, timelines.size());
+        assertEquals(5, timelines.get(0).getId());
+        assertEquals(4, timelines.get(1).getId());
+        assertEquals(3, timelines.get(2).getId());
+        assertNull(traceRecorder.getTimeline(1));
+
+        final List<CycleTimeline> tradeCycles = traceRecorder.getTimelines(TraceRecorder.TRADE_CYCLE, 10);
+        assertEquals(2, tradeCycles.size());
+        assertEquals(5, tradeCycles.get(0).getId());
+        assertEquals(3, tradeCycles.get(1).getId());
+
+        assertEquals(1, traceRecorder.getTimelines(null, 1).size());
+    }
+
+    @Test
+    public void testNothingIsRecordedWhenTracingIsDisabled() {
+
+        final TraceRecorder traceRecorder = new TraceRecorder(false, TIMELINES_RETAINED, MAX_SPANS_PER_TIMELINE);
+        final TraceTimeline timeline = traceRecorder.begin(TraceRecorder.TRADE_CYCLE);
+        assertNull(timeline);
+
+        traceRecorder.record(timeline);
+        assertTrue(traceRecorder.getTimelines(null, 10).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRingBufferMustHoldAtLeastOneTimeline() {
+        new TraceRecorder(true, 0, MAX_SPANS_PER_TIMELINE);
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.domain.accounting;
+
+import com.google.common.base.MoreObjects;
+
+import java.math.BigDecimal;
+
+/**
+ * Domain object representing the bot's position and P&amp;L in a market on a given exchange.
+ * <p>
+ * The quantity is in the base currency and is negative if the position is short. Costs, prices, fees and P&amp;L are
+ * in the counter currency. Realised and unrealised P&amp;L are before fees; net P&amp;L is after them. The mark price is
+ * the latest price seen for the market, and is null if none has been seen yet. The position is not confirmed if any of
+ * its fills were inferred from an order going from the open orders - its figures may be wrong.
+ *
+ * @author gazbert
+ */
+public class MarketPosition {
+    private String exchange;
+    private String market;
+    private BigDecimal quantity;
+    private BigDecimal averageCost;
+    private BigDecimal realisedPnl;
+    private BigDecimal fees;
+    private BigDecimal markPrice;
+    private BigDecimal unrealisedPnl;
+    private BigDecimal netPnl;
+    private long fillCount;
+    private long inferredFillCount;
+    private boolean confirmed = true;
+
+    // required for jackson
+    public MarketPosition() {
+    }
+
+    public MarketPosition(String exchange, String market) {
+        this.exchange = exchange;
+        this.market = market;
+    }
+
+    public String getExchange() {
+        return exchange;
+    }
+
+    public void setExchange(String exchange) {
+        this.exchange = exchange;
+    }
+
+    public String getMarket() {
+        return market;
+    }
+
+    public void setMarket(String market) {
+        this.market = market;
+    }
+
+    public BigDecimal getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(BigDecimal quantity) {
+        this.quantity = quantity;
+    }
+
+    public BigDecimal getAverageCost() {
+        return averageCost;
+    }
+
+    public void setAverageCost(BigDecimal averageCost) {
+        this.averageCost = averageCost;
+    }
+
+    public BigDecimal getRealisedPnl() {
+        return realisedPnl;
+    }
+
+    public void setRealisedPnl(BigDecimal realisedPnl) {
+        this.realisedPnl = realisedPnl;
+    }
+
+    public BigDecimal getFees() {
+        return fees;
+    }
+
+    public void setFees(BigDecimal fees) {
+        this.fees = fees;
+    }
+
+    public BigDecimal getMarkPrice() {
+        return markPrice;
+    }
+
+    public void setMarkPrice(BigDecimal markPrice) {
+        this.markPrice = markPrice;
+    }
+
+    public BigDecimal getUnrealisedPnl() {
+        return unrealisedPnl;
+    }
+
+    public void setUnrealisedPnl(BigDecimal unrealisedPnl) {
+        this.unrealisedPnl = unrealisedPnl;
+    }
+
+    public BigDecimal getNetPnl() {
+        return netPnl;
+    }
+
+    public void setNetPnl(BigDecimal netPnl) {
+        this.netPnl = netPnl;
+    }
+
+    public long getFillCount() {
+        return fillCount;
+    }
+
+    public void setFillCount(long fillCount) {
+        this.fillCount = fillCount;
+    }
+
+    public long getInferredFillCount() {
+        return inferredFillCount;
+    }
+
+    public void setInferredFillCount(long inferredFillCount) {
+        this.inferredFillCount = inferredFillCount;
+    }
+
+    public boolean isConfirmed() {
+        return confirmed;
+    }
+
+    public void setConfirmed(boolean confirmed) {
+        this.confirmed = confirmed;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("exchange", exchange)
+                .add("market", market)
+                .add("quantity", quantity)
+                .add("averageCost", averageCost)
+                .add("realisedPnl", realisedPnl)
+                .add("fees", fees)
+                .add("markPrice", markPrice)
+                .add("unrealisedPnl", unrealisedPnl)
+                .add("netPnl", netPnl)
+                .add("fillCount", fillCount)
+                .add("inferredFillCount", inferredFillCount)
+                .add("confirmed", confirmed)
+                .toString();
+    }
+}
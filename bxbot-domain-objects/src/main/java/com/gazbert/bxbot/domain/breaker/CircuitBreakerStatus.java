@@ -0,0 +1,146 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.domain.breaker;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Domain object representing the state of the circuit breaker for an Exchange Adapter endpoint on a given exchange.
+ * <p>
+ * The state is one of CLOSED (calls go to the exchange), OPEN (calls fail fast without going to the exchange), or
+ * HALF_OPEN (a probe call has been let through to see if the exchange has recovered). The failure rate is a
+ * percentage of the calls in the breaker's window; slow calls count as failures. Times are epoch millis, and are 0 if
+ * the breaker has never opened.
+ *
+ * @author gazbert
+ */
+public class CircuitBreakerStatus {
+
+    private String exchange;
+    private String endpoint;
+    private String state;
+    private double failureRate;
+    private int callsInWindow;
+    private long openCount;
+    private long rejectedCallCount;
+    private long lastOpenedTime;
+    private long nextProbeTime;
+
+    // required for jackson
+    public CircuitBreakerStatus() {
+    }
+
+    public CircuitBreakerStatus(String exchange, String endpoint, String state) {
+        this.exchange = exchange;
+        this.endpoint = endpoint;
+        this.state = state;
+    }
+
+    public String getExchange() {
+        return exchange;
+    }
+
+    public void setExchange(String exchange) {
+        this.exchange = exchange;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    public double getFailureRate() {
+        return failureRate;
+    }
+
+    public void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    public int getCallsInWindow() {
+        return callsInWindow;
+    }
+
+    public void setCallsInWindow(int callsInWindow) {
+        this.callsInWindow = callsInWindow;
+    }
+
+    public long getOpenCount() {
+        return openCount;
+    }
+
+    public void setOpenCount(long openCount) {
+        this.openCount = openCount;
+    }
+
+    public long getRejectedCallCount() {
+        return rejectedCallCount;
+    }
+
+    public void setRejectedCallCount(long rejectedCallCount) {
+        this.rejectedCallCount = rejectedCallCount;
+    }
+
+    public long getLastOpenedTime() {
+        return lastOpenedTime;
+    }
+
+    public void setLastOpenedTime(long lastOpenedTime) {
+        this.lastOpenedTime = lastOpenedTime;
+    }
+
+    public long getNextProbeTime() {
+        return nextProbeTime;
+    }
+
+    public void setNextProbeTime(long nextProbeTime) {
+        this.nextProbeTime = nextProbeTime;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("exchange", exchange)
+                .add("endpoint", endpoint)
+                .add("state", state)
+                .add("failureRate", failureRate)
+                .add("callsInWindow", callsInWindow)
+                .add("openCount", openCount)
+                .add("rejectedCallCount", rejectedCallCount)
+                .add("lastOpenedTime", lastOpenedTime)
+                .add("nextProbeTime", nextProbeTime)
+                .toString();
+    }
+}
@@ -38,6 +38,10 @@ public class NetworkConfig {
     private Integer connectionTimeout;
     private List<Integer> nonFatalErrorCodes;
     private List<String> nonFatalErrorMessages;
+    private String acceptEncoding;
+    private Integer maxRetries;
+    private Integer retryBackoffMillis;
+    private Integer hedgePercentile;
 
 
     public NetworkConfig() {
@@ -69,12 +73,48 @@ public class NetworkConfig {
         this.nonFatalErrorMessages = nonFatalErrorMessages;
     }
 
+    public String getAcceptEncoding() {
+        return acceptEncoding;
+    }
+
+    public void setAcceptEncoding(String acceptEncoding) {
+        this.acceptEncoding = acceptEncoding;
+    }
+
+    public Integer getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(Integer maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public Integer getRetryBackoffMillis() {
+        return retryBackoffMillis;
+    }
+
+    public void setRetryBackoffMillis(Integer retryBackoffMillis) {
+        this.retryBackoffMillis = retryBackoffMillis;
+    }
+
+    public Integer getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    public void setHedgePercentile(Integer hedgePercentile) {
+        this.hedgePercentile = hedgePercentile;
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
                 .add("connectionTimeout", connectionTimeout)
                 .add("nonFatalErrorCodes", nonFatalErrorCodes)
                 .add("nonFatalErrorMessages", nonFatalErrorMessages)
+                .add("acceptEncoding", acceptEncoding)
+                .add("maxRetries", maxRetries)
+                .add("retryBackoffMillis", retryBackoffMillis)
+                .add("hedgePercentile", hedgePercentile)
                 .toString();
     }
 }
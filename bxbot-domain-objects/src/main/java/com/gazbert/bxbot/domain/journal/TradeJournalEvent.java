@@ -0,0 +1,155 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.domain.journal;
+
+import com.google.common.base.MoreObjects;
+
+import java.math.BigDecimal;
+
+/**
+ * Domain object representing an order event in the trade journal: an order being created, acknowledged by the
+ * exchange, cancelled, (partly) filled, or closed without the bot knowing how.
+ * <p>
+ * The sequence number is unique and increasing within a market's journal. The timestamp is in millis since the
+ * epoch. The order id is null for create events - the exchange has not assigned one yet. For fill events, the
+ * quantity is the amount filled since the last event for the order; for closed events, it is what was left to fill.
+ *
+ * @author gazbert
+ */
+public class TradeJournalEvent {
+
+    private long sequence;
+    private long timestamp;
+    private String eventType;
+    private String exchangeId;
+    private String marketId;
+    private String orderId;
+    private String orderType;
+    private BigDecimal price;
+    private BigDecimal quantity;
+
+    // required for jackson
+    public TradeJournalEvent() {
+    }
+
+    public TradeJournalEvent(long sequence, long timestamp, String eventType, String exchangeId, String marketId,
+                             String orderId, String orderType, BigDecimal price, BigDecimal quantity) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.eventType = eventType;
+        this.exchangeId = exchangeId;
+        this.marketId = marketId;
+        this.orderId = orderId;
+        this.orderType = orderType;
+        this.price = price;
+        this.quantity = quantity;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    public void setEventType(String eventType) {
+        this.eventType = eventType;
+    }
+
+    public String getExchangeId() {
+        return exchangeId;
+    }
+
+    public void setExchangeId(String exchangeId) {
+        this.exchangeId = exchangeId;
+    }
+
+    public String getMarketId() {
+        return marketId;
+    }
+
+    public void setMarketId(String marketId) {
+        this.marketId = marketId;
+    }
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(String orderId) {
+        this.orderId = orderId;
+    }
+
+    public String getOrderType() {
+        return orderType;
+    }
+
+    public void setOrderType(String orderType) {
+        this.orderType = orderType;
+    }
+
+    public BigDecimal getPrice() {
+        return price;
+    }
+
+    public void setPrice(BigDecimal price) {
+        this.price = price;
+    }
+
+    public BigDecimal getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(BigDecimal quantity) {
+        this.quantity = quantity;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("sequence", sequence)
+                .add("timestamp", timestamp)
+                .add("eventType", eventType)
+                .add("exchangeId", exchangeId)
+                .add("marketId", marketId)
+                .add("orderId", orderId)
+                .add("orderType", orderType)
+                .add("price", price)
+                .add("quantity", quantity)
+                .toString();
+    }
+}
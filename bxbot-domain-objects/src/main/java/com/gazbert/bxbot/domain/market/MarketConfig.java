@@ -39,6 +39,7 @@ public class MarketConfig {
     private String counterCurrency;
     private boolean enabled;
     private String tradingStrategyId; // TODO might change this to ref to StrategyConfig ...
+    private String exchangeId;
 
 
     // required for Jackson
@@ -52,6 +53,7 @@ public class MarketConfig {
         this.counterCurrency = other.counterCurrency;
         this.enabled = other.enabled;
         this.tradingStrategyId = other.tradingStrategyId;
+        this.exchangeId = other.exchangeId;
     }
 
     public MarketConfig(String id, String name, String baseCurrency, String counterCurrency, boolean enabled, String tradingStrategyId) {
@@ -63,6 +65,12 @@ public class MarketConfig {
         this.tradingStrategyId = tradingStrategyId;
     }
 
+    public MarketConfig(String id, String name, String baseCurrency, String counterCurrency, boolean enabled,
+                        String tradingStrategyId, String exchangeId) {
+        this(id, name, baseCurrency, counterCurrency, enabled, tradingStrategyId);
+        this.exchangeId = exchangeId;
+    }
+
     public String getId() {
         return id;
     }
@@ -111,6 +119,14 @@ public class MarketConfig {
         this.tradingStrategyId = tradingStrategyId;
     }
 
+    public String getExchangeId() {
+        return exchangeId;
+    }
+
+    public void setExchangeId(String exchangeId) {
+        this.exchangeId = exchangeId;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -133,6 +149,7 @@ public class MarketConfig {
                 .add("counterCurrency", counterCurrency)
                 .add("enabled", enabled)
                 .add("tradingStrategyId", tradingStrategyId)
+                .add("exchangeId", exchangeId)
                 .toString();
     }
 }
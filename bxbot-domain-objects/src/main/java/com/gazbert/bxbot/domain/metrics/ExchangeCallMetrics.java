@@ -0,0 +1,261 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.domain.metrics;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Domain object representing the call metrics for an Exchange Adapter endpoint on a given exchange and market.
+ * <p>
+ * Latencies are in millis. The latency buckets are cumulative: each bucket holds the number of calls that took less
+ * than or equal to the bucket's upper bound in millis; the "+Inf" bucket holds all calls.
+ * <p>
+ * Payload size is the number of items (orders, balances) in the response - the Exchange Adapter API does not expose
+ * the raw bytes.
+ *
+ * @author gazbert
+ */
+public class ExchangeCallMetrics {
+
+    private String exchange;
+    private String endpoint;
+    private String market;
+    private long callCount;
+    private long errorCount;
+    private Map<String, Long> errorCountsByType = new HashMap<>();
+    private double meanLatency;
+    private double maxLatency;
+    private double p50Latency;
+    private double p90Latency;
+    private double p99Latency;
+    private Map<String, Long> latencyBuckets = new LinkedHashMap<>();
+    private long payloadItemsTotal;
+    private long payloadItemsMax;
+    private long networkRequestCount;
+    private long coalescedRequestCount;
+    private long retryCount;
+    private long hedgedRequestCount;
+    private long responseWireBytesTotal;
+    private long responseDecodedBytesTotal;
+
+    // required for jackson
+    public ExchangeCallMetrics() {
+    }
+
+    public ExchangeCallMetrics(String exchange, String endpoint, String market) {
+        this.exchange = exchange;
+        this.endpoint = endpoint;
+        this.market = market;
+    }
+
+    public String getExchange() {
+        return exchange;
+    }
+
+    public void setExchange(String exchange) {
+        this.exchange = exchange;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public String getMarket() {
+        return market;
+    }
+
+    public void setMarket(String market) {
+        this.market = market;
+    }
+
+    public long getCallCount() {
+        return callCount;
+    }
+
+    public void setCallCount(long callCount) {
+        this.callCount = callCount;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    public void setErrorCount(long errorCount) {
+        this.errorCount = errorCount;
+    }
+
+    public Map<String, Long> getErrorCountsByType() {
+        return errorCountsByType;
+    }
+
+    public void setErrorCountsByType(Map<String, Long> errorCountsByType) {
+        this.errorCountsByType = errorCountsByType;
+    }
+
+    public double getMeanLatency() {
+        return meanLatency;
+    }
+
+    public void setMeanLatency(double meanLatency) {
+        this.meanLatency = meanLatency;
+    }
+
+    public double getMaxLatency() {
+        return maxLatency;
+    }
+
+    public void setMaxLatency(double maxLatency) {
+        this.maxLatency = maxLatency;
+    }
+
+    public double getP50Latency() {
+        return p50Latency;
+    }
+
+    public void setP50Latency(double p50Latency) {
+        this.p50Latency = p50Latency;
+    }
+
+    public double getP90Latency() {
+        return p90Latency;
+    }
+
+    public void setP90Latency(double p90Latency) {
+        this.p90Latency = p90Latency;
+    }
+
+    public double getP99Latency() {
+        return p99Latency;
+    }
+
+    public void setP99Latency(double p99Latency) {
+        this.p99Latency = p99Latency;
+    }
+
+    public Map<String, Long> getLatencyBuckets() {
+        return latencyBuckets;
+    }
+
+    public void setLatencyBuckets(Map<String, Long> latencyBuckets) {
+        this.latencyBuckets = latencyBuckets;
+    }
+
+    public long getPayloadItemsTotal() {
+        return payloadItemsTotal;
+    }
+
+    public void setPayloadItemsTotal(long payloadItemsTotal) {
+        this.payloadItemsTotal = payloadItemsTotal;
+    }
+
+    public long getPayloadItemsMax() {
+        return payloadItemsMax;
+    }
+
+    public void setPayloadItemsMax(long payloadItemsMax) {
+        this.payloadItemsMax = payloadItemsMax;
+    }
+
+    public long getNetworkRequestCount() {
+        return networkRequestCount;
+    }
+
+    public void setNetworkRequestCount(long networkRequestCount) {
+        this.networkRequestCount = networkRequestCount;
+    }
+
+    public long getCoalescedRequestCount() {
+        return coalescedRequestCount;
+    }
+
+    public void setCoalescedRequestCount(long coalescedRequestCount) {
+        this.coalescedRequestCount = coalescedRequestCount;
+    }
+
+    public long getRetryCount() {
+        return retryCount;
+    }
+
+    public void setRetryCount(long retryCount) {
+        this.retryCount = retryCount;
+    }
+
+    public long getHedgedRequestCount() {
+        return hedgedRequestCount;
+    }
+
+    public void setHedgedRequestCount(long hedgedRequestCount) {
+        this.hedgedRequestCount = hedgedRequestCount;
+    }
+
+    public long getResponseWireBytesTotal() {
+        return responseWireBytesTotal;
+    }
+
+    public void setResponseWireBytesTotal(long responseWireBytesTotal) {
+        this.responseWireBytesTotal = responseWireBytesTotal;
+    }
+
+    public long getResponseDecodedBytesTotal() {
+        return responseDecodedBytesTotal;
+    }
+
+    public void setResponseDecodedBytesTotal(long responseDecodedBytesTotal) {
+        this.responseDecodedBytesTotal = responseDecodedBytesTotal;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("exchange", exchange)
+                .add("endpoint", endpoint)
+                .add("market", market)
+                .add("callCount", callCount)
+                .add("errorCount", errorCount)
+                .add("errorCountsByType", errorCountsByType)
+                .add("meanLatency", meanLatency)
+                .add("maxLatency", maxLatency)
+                .add("p50Latency", p50Latency)
+                .add("p90Latency", p90Latency)
+                .add("p99Latency", p99Latency)
+                .add("latencyBuckets", latencyBuckets)
+                .add("payloadItemsTotal", payloadItemsTotal)
+                .add("payloadItemsMax", payloadItemsMax)
+                .add("networkRequestCount", networkRequestCount)
+                .add("coalescedRequestCount", coalescedRequestCount)
+                .add("retryCount", retryCount)
+                .add("hedgedRequestCount", hedgedRequestCount)
+                .add("responseWireBytesTotal", responseWireBytesTotal)
+                .add("responseDecodedBytesTotal", responseDecodedBytesTotal)
+                .toString();
+    }
+}
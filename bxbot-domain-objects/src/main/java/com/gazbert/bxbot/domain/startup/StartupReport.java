@@ -0,0 +1,87 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.domain.startup;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Domain object representing how long the bot took to get from JVM start to trading, broken down into phases.
+ * <p>
+ * The JVM start time is in millis since the epoch. The time to trading is in millis since the JVM was started, and is
+ * null if the bot has not started trading yet.
+ *
+ * @author gazbert
+ */
+public class StartupReport {
+
+    private long jvmStartTime;
+    private Long timeToTrading;
+    private List<StartupPhase> phases = new ArrayList<>();
+
+    // required for jackson
+    public StartupReport() {
+    }
+
+    public StartupReport(long jvmStartTime, Long timeToTrading, List<StartupPhase> phases) {
+        this.jvmStartTime = jvmStartTime;
+        this.timeToTrading = timeToTrading;
+        this.phases = phases;
+    }
+
+    public long getJvmStartTime() {
+        return jvmStartTime;
+    }
+
+    public void setJvmStartTime(long jvmStartTime) {
+        this.jvmStartTime = jvmStartTime;
+    }
+
+    public Long getTimeToTrading() {
+        return timeToTrading;
+    }
+
+    public void setTimeToTrading(Long timeToTrading) {
+        this.timeToTrading = timeToTrading;
+    }
+
+    public List<StartupPhase> getPhases() {
+        return phases;
+    }
+
+    public void setPhases(List<StartupPhase> phases) {
+        this.phases = phases;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("jvmStartTime", jvmStartTime)
+                .add("timeToTrading", timeToTrading)
+                .add("phases", phases)
+                .toString();
+    }
+}
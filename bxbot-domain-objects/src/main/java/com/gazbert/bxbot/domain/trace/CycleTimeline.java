@@ -0,0 +1,119 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.domain.trace;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Domain object representing the trace timeline of a single trade cycle, or other unit of work such as an
+ * Emergency Stop check.
+ * <p>
+ * The start time is in millis since the epoch. The duration is in micros. Spans are listed in the order they
+ * completed - nested spans complete before the span that contains them.
+ *
+ * @author gazbert
+ */
+public class CycleTimeline {
+
+    private long id;
+    private String name;
+    private long startTime;
+    private long duration;
+    private int droppedSpanCount;
+    private List<TimelineSpan> spans = new ArrayList<>();
+
+    // required for jackson
+    public CycleTimeline() {
+    }
+
+    public CycleTimeline(long id, String name, long startTime, long duration) {
+        this.id = id;
+        this.name = name;
+        this.startTime = startTime;
+        this.duration = duration;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(long startTime) {
+        this.startTime = startTime;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    public int getDroppedSpanCount() {
+        return droppedSpanCount;
+    }
+
+    public void setDroppedSpanCount(int droppedSpanCount) {
+        this.droppedSpanCount = droppedSpanCount;
+    }
+
+    public List<TimelineSpan> getSpans() {
+        return spans;
+    }
+
+    public void setSpans(List<TimelineSpan> spans) {
+        this.spans = spans;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("id", id)
+                .add("name", name)
+                .add("startTime", startTime)
+                .add("duration", duration)
+                .add("droppedSpanCount", droppedSpanCount)
+                .add("spans", spans)
+                .toString();
+    }
+}
@@ -34,6 +34,7 @@ import static org.junit.Assert.assertEquals;
  */
 public class TestExchangeConfig {
 
+    private static final String EXCHANGE_ID = "bitstamp";
     private static final String EXCHANGE_NAME = "Bitstamp";
     private static final String EXCHANGE_ADAPTER = "com.gazbert.bxbot.exchanges.TestExchangeAdapter";
     private static final AuthenticationConfig AUTHENTICATION_CONFIG = new AuthenticationConfig();
@@ -45,6 +46,7 @@ public class TestExchangeConfig {
     public void testInitialisationWorksAsExpected() {
 
         final ExchangeConfig exchangeConfig = new ExchangeConfig();
+        assertEquals(null, exchangeConfig.getId());
         assertEquals(null, exchangeConfig.getExchangeName());
         assertEquals(null, exchangeConfig.getExchangeAdapter());
         assertEquals(null, exchangeConfig.getAuthenticationConfig());
@@ -57,6 +59,9 @@ public class TestExchangeConfig {
 
         final ExchangeConfig exchangeConfig = new ExchangeConfig();
 
+        exchangeConfig.setId(EXCHANGE_ID);
+        assertEquals(EXCHANGE_ID, exchangeConfig.getId());
+
         exchangeConfig.setExchangeName(EXCHANGE_NAME);
         assertEquals(EXCHANGE_NAME, exchangeConfig.getExchangeName());
 
@@ -40,6 +40,7 @@ public class TestMarketConfig {
     private static final String COUNTER_CURRENCY = "USD";
     private static final boolean IS_ENABLED = true;
     private static final String TRADING_STRATEGY = "macd_trend_follower";
+    private static final String EXCHANGE_ID = "gemini";
 
 
     @Test
@@ -52,6 +53,21 @@ public class TestMarketConfig {
         assertEquals(COUNTER_CURRENCY, marketConfig.getCounterCurrency());
         assertEquals(IS_ENABLED, marketConfig.isEnabled());
         assertEquals(TRADING_STRATEGY, marketConfig.getTradingStrategyId());
+        assertEquals(null, marketConfig.getExchangeId());
+    }
+
+    @Test
+    public void testInitialisationWithExchangeIdWorksAsExpected() {
+
+        final MarketConfig marketConfig = new MarketConfig(ID, NAME, BASE_CURRENCY, COUNTER_CURRENCY, IS_ENABLED,
+                TRADING_STRATEGY, EXCHANGE_ID);
+        assertEquals(NAME, marketConfig.getName());
+        assertEquals(ID, marketConfig.getId());
+        assertEquals(BASE_CURRENCY, marketConfig.getBaseCurrency());
+        assertEquals(COUNTER_CURRENCY, marketConfig.getCounterCurrency());
+        assertEquals(IS_ENABLED, marketConfig.isEnabled());
+        assertEquals(TRADING_STRATEGY, marketConfig.getTradingStrategyId());
+        assertEquals(EXCHANGE_ID, marketConfig.getExchangeId());
     }
 
     @Test
@@ -64,6 +80,7 @@ public class TestMarketConfig {
         assertEquals(null, marketConfig.getCounterCurrency());
         assertEquals(false, marketConfig.isEnabled());
         assertEquals(null, marketConfig.getTradingStrategyId());
+        assertEquals(null, marketConfig.getExchangeId());
 
         marketConfig.setId(ID);
         assertEquals(ID, marketConfig.getId());
@@ -82,13 +99,17 @@ public class TestMarketConfig {
 
         marketConfig.setTradingStrategyId(TRADING_STRATEGY);
         assertEquals(TRADING_STRATEGY, marketConfig.getTradingStrategyId());
+
+        marketConfig.setExchangeId(EXCHANGE_ID);
+        assertEquals(EXCHANGE_ID, marketConfig.getExchangeId());
     }
 
     @Test
     public void testCloningWorksAsExpected() {
         final MarketConfig marketConfig = new MarketConfig(
-                ID, NAME, BASE_CURRENCY, COUNTER_CURRENCY, IS_ENABLED, TRADING_STRATEGY);
+                ID, NAME, BASE_CURRENCY, COUNTER_CURRENCY, IS_ENABLED, TRADING_STRATEGY, EXCHANGE_ID);
         final MarketConfig clonedMarketConfig = new MarketConfig(marketConfig);
         assertEquals(clonedMarketConfig, marketConfig);
+        assertEquals(EXCHANGE_ID, clonedMarketConfig.getExchangeId());
     }
 }
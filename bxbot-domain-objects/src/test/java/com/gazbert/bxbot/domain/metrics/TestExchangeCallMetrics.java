@@ -0,0 +1,124 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.domain.metrics;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests an ExchangeCallMetrics domain object behaves as expected.
+ *
+ * @author gazbert
+ */
+public class TestExchangeCallMetrics {
+
+    private static final String EXCHANGE = "bitstamp";
+    private static final String ENDPOINT = "getMarketOrders";
+    private static final String MARKET = "btcusd";
+    private static final long CALL_COUNT = 42;
+    private static final long ERROR_COUNT = 2;
+    private static final double MEAN_LATENCY = 120.5;
+    private static final double MAX_LATENCY = 2400.0;
+    private static final double P50_LATENCY = 100.0;
+    private static final double P90_LATENCY = 250.0;
+    private static final double P99_LATENCY = 2500.0;
+    private static final long PAYLOAD_ITEMS_TOTAL = 8400;
+    private static final long PAYLOAD_ITEMS_MAX = 200;
+
+    @Test
+    public void testInitialisationWorksAsExpected() {
+
+        final ExchangeCallMetrics callMetrics = new ExchangeCallMetrics(EXCHANGE, ENDPOINT, MARKET);
+
+        assertEquals(EXCHANGE, callMetrics.getExchange());
+        assertEquals(ENDPOINT, callMetrics.getEndpoint());
+        assertEquals(MARKET, callMetrics.getMarket());
+        assertEquals(0, callMetrics.getCallCount());
+        assertTrue(callMetrics.getErrorCountsByType().isEmpty());
+        assertTrue(callMetrics.getLatencyBuckets().isEmpty());
+    }
+
+    @Test
+    public void testSettersWorkAsExpected() {
+
+        final ExchangeCallMetrics callMetrics = new ExchangeCallMetrics();
+        assertNull(callMetrics.getExchange());
+        assertNull(callMetrics.getEndpoint());
+        assertNull(callMetrics.getMarket());
+
+        callMetrics.setExchange(EXCHANGE);
+        assertEquals(EXCHANGE, callMetrics.getExchange());
+
+        callMetrics.setEndpoint(ENDPOINT);
+        assertEquals(ENDPOINT, callMetrics.getEndpoint());
+
+        callMetrics.setMarket(MARKET);
+        assertEquals(MARKET, callMetrics.getMarket());
+
+        callMetrics.setCallCount(CALL_COUNT);
+        assertEquals(CALL_COUNT, callMetrics.getCallCount());
+
+        callMetrics.setErrorCount(ERROR_COUNT);
+        assertEquals(ERROR_COUNT, callMetrics.getErrorCount());
+
+        final Map<String, Long> errorCountsByType = new HashMap<>();
+        errorCountsByType.put("ExchangeNetworkException", ERROR_COUNT);
+        callMetrics.setErrorCountsByType(errorCountsByType);
+        assertEquals(errorCountsByType, callMetrics.getErrorCountsByType());
+
+        callMetrics.setMeanLatency(MEAN_LATENCY);
+        assertEquals(MEAN_LATENCY, callMetrics.getMeanLatency(), 0);
+
+        callMetrics.setMaxLatency(MAX_LATENCY);
+        assertEquals(MAX_LATENCY, callMetrics.getMaxLatency(), 0);
+
+        callMetrics.setP50Latency(P50_LATENCY);
+        assertEquals(P50_LATENCY, callMetrics.getP50Latency(), 0);
+
+        callMetrics.setP90Latency(P90_LATENCY);
+        assertEquals(P90_LATENCY, callMetrics.getP90Latency(), 0);
+
+        callMetrics.setP99Latency(P99_LATENCY);
+        assertEquals(P99_LATENCY, callMetrics.getP99Latency(), 0);
+
+        final Map<String, Long> latencyBuckets = new LinkedHashMap<>();
+        latencyBuckets.put("100", 20L);
+        latencyBuckets.put("+Inf", CALL_COUNT);
+        callMetrics.setLatencyBuckets(latencyBuckets);
+        assertEquals(latencyBuckets, callMetrics.getLatencyBuckets());
+
+        callMetrics.setPayloadItemsTotal(PAYLOAD_ITEMS_TOTAL);
+        assertEquals(PAYLOAD_ITEMS_TOTAL, callMetrics.getPayloadItemsTotal());
+
+        callMetrics.setPayloadItemsMax(PAYLOAD_ITEMS_MAX);
+        assertEquals(PAYLOAD_ITEMS_MAX, callMetrics.getPayloadItemsMax());
+    }
+}
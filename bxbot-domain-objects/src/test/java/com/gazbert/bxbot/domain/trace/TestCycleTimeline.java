@@ -0,0 +1,87 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.domain.trace;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests a CycleTimeline domain object behaves as expected.
+ *
+ * @author gazbert
+ */
+public class TestCycleTimeline {
+
+    private static final long ID = 42;
+    private static final String NAME = "trade-cycle";
+    private static final long START_TIME = 1508600000000L;
+    private static final long DURATION = 1250;
+    private static final int DROPPED_SPAN_COUNT = 3;
+    private static final List<TimelineSpan> SPANS = Collections.singletonList(
+            new TimelineSpan("network-io", "GET /api/order_book/", "bxbot-lane-bitstamp", 2, 20, 1100, null));
+
+    @Test
+    public void testInitialisationWorksAsExpected() {
+
+        final CycleTimeline timeline = new CycleTimeline(ID, NAME, START_TIME, DURATION);
+        assertEquals(ID, timeline.getId());
+        assertEquals(NAME, timeline.getName());
+        assertEquals(START_TIME, timeline.getStartTime());
+        assertEquals(DURATION, timeline.getDuration());
+        assertEquals(0, timeline.getDroppedSpanCount());
+        assertTrue(timeline.getSpans().isEmpty());
+    }
+
+    @Test
+    public void testSettersWorkAsExpected() {
+
+        final CycleTimeline timeline = new CycleTimeline();
+        assertNull(timeline.getName());
+
+        timeline.setId(ID);
+        assertEquals(ID, timeline.getId());
+
+        timeline.setName(NAME);
+        assertEquals(NAME, timeline.getName());
+
+        timeline.setStartTime(START_TIME);
+        assertEquals(START_TIME, timeline.getStartTime());
+
+        timeline.setDuration(DURATION);
+        assertEquals(DURATION, timeline.getDuration());
+
+        timeline.setDroppedSpanCount(DROPPED_SPAN_COUNT);
+        assertEquals(DROPPED_SPAN_COUNT, timeline.getDroppedSpanCount());
+
+        timeline.setSpans(SPANS);
+        assertEquals(SPANS, timeline.getSpans());
+        assertEquals("bxbot-lane-bitstamp", timeline.getSpans().get(0).getThread());
+    }
+}
@@ -53,4 +53,36 @@ public interface NetworkConfig {
      * @return the connection timeout value if present, null otherwise.
      */
     Integer getConnectionTimeout();
+
+    /**
+     * Fetches (optional) Accept-Encoding header value to send to the exchange, e.g. "gzip, deflate".
+     *
+     * @return the Accept-Encoding value if present, null otherwise.
+     * @since 1.1
+     */
+    String getAcceptEncoding();
+
+    /**
+     * Fetches (optional) maximum number of times a failed idempotent call is retried.
+     *
+     * @return the max retries if present, null otherwise.
+     * @since 1.1
+     */
+    Integer getMaxRetries();
+
+    /**
+     * Fetches (optional) base backoff in millis before retrying a failed idempotent call. It doubles on each retry.
+     *
+     * @return the retry backoff if present, null otherwise.
+     * @since 1.1
+     */
+    Integer getRetryBackoffMillis();
+
+    /**
+     * Fetches (optional) latency percentile of a public call after which a hedged duplicate request is sent.
+     *
+     * @return the hedge percentile if present, null otherwise.
+     * @since 1.1
+     */
+    Integer getHedgePercentile();
 }
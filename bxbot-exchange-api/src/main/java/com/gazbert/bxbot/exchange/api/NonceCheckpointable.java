@@ -0,0 +1,59 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.exchange.api;
+
+/**
+ * <p>
+ * Exchange Adapters that sign their requests with an ever increasing nonce can implement this interface, so the
+ * Trading Engine can save the last nonce used and carry on from it - after a restart, or when a standby bot takes
+ * over from the primary - instead of guessing a starting nonce from the clock.
+ * </p>
+ * <p>
+ * The adapter takes its nonces from the {@link NonceSource} for its API key, shared with every other adapter instance
+ * for the same key, so the counter covers the nonces they have used too.
+ * </p>
+ * <p>
+ * Like the rest of the adapter, it is only called by 1 thread at a time.
+ * </p>
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+public interface NonceCheckpointable {
+
+    /**
+     * Returns the adapter's nonce counter. None of the nonces used so far with the adapter's API key are above it.
+     *
+     * @return the nonce counter.
+     */
+    long getNonce();
+
+    /**
+     * Moves the adapter's nonce counter on, so every nonce it uses from now on is above the given one. Called after
+     * {@link ExchangeAdapter#init}; the counter must never be moved back.
+     *
+     * @param nonce the nonce to carry on from.
+     */
+    void restoreNonce(long nonce);
+}
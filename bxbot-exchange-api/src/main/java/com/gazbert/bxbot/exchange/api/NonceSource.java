@@ -0,0 +1,127 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.exchange.api;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * The nonce counter for an exchange API key.
+ * </p>
+ * <p>
+ * The exchanges reject a request signed with a nonce that is not above the last one they accepted for the API key.
+ * The bot can have more than 1 Exchange Adapter instance for the same API key - the exchange lane's, the Emergency Stop
+ * watchdog's, the consolidated order book's, the order router's, or another engine's in the same JVM - each called on
+ * its own thread. So the nonce is not kept per adapter instance: every instance for the same adapter and API key is
+ * handed the same source by {@link #forCredential(String, String)}, and takes its nonces from it.
+ * </p>
+ * <p>
+ * It is also what gets checkpointed by a {@link NonceCheckpointable} adapter, so the nonces used by every instance are
+ * covered when the bot is restored.
+ * </p>
+ * <p>
+ * A unique nonce is not enough on its own: the exchange also rejects a nonce that reaches it after a higher one. So an
+ * adapter holds the {@link #getSendLock()} from taking its nonce until the signed request has been sent, and the
+ * requests for the API key reach the exchange in nonce order.
+ * </p>
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+public final class NonceSource {
+
+    private static final ConcurrentMap<String, NonceSource> SOURCES = new ConcurrentHashMap<>();
+
+    private final AtomicLong lastNonce = new AtomicLong();
+
+    private final Lock sendLock = new ReentrantLock(true);
+
+
+    NonceSource() {
+    }
+
+    /**
+     * Returns the nonce source for the given adapter and API key.
+     *
+     * @param exchangeAdapterName the Exchange Adapter class name.
+     * @param apiKey              the API key the adapter signs requests for.
+     * @return the nonce source.
+     */
+    public static NonceSource forCredential(String exchangeAdapterName, String apiKey) {
+        return SOURCES.computeIfAbsent(exchangeAdapterName + "/" + apiKey, credential -> new NonceSource());
+    }
+
+    /**
+     * Returns the next nonce - 1 above the last one handed out. Safe to call from any thread.
+     *
+     * @return the nonce to sign the request with.
+     */
+    public long next() {
+        return lastNonce.incrementAndGet();
+    }
+
+    /**
+     * Returns the next nonce - 1 above the last one handed out, or the floor if that is higher. The 2 are compared and
+     * the counter moved on in 1 atomic step, so no 2 callers get the same nonce, and a caller whose floor is behind
+     * the nonces already handed out still gets one above them. Safe to call from any thread.
+     *
+     * @param floor the lowest nonce wanted, e.g. the exchange time in millis.
+     * @return the nonce to sign the request with.
+     */
+    public long next(long floor) {
+        return lastNonce.updateAndGet(last -> Math.max(last + 1, floor));
+    }
+
+    /**
+     * Moves the counter on, so every nonce handed out from now on is above the given one. It is never moved back.
+     *
+     * @param nonce the nonce to carry on from.
+     */
+    public void advanceTo(long nonce) {
+        lastNonce.accumulateAndGet(nonce, Math::max);
+    }
+
+    /**
+     * Returns the lock held from taking a nonce until the request signed with it has been sent. It is fair, so the
+     * adapter instances for the API key take turns.
+     *
+     * @return the send lock.
+     */
+    public Lock getSendLock() {
+        return sendLock;
+    }
+
+    /**
+     * Returns the last nonce handed out, or the one the counter was last advanced to if that is higher.
+     *
+     * @return the last nonce.
+     */
+    public long getLastNonce() {
+        return lastNonce.get();
+    }
+}
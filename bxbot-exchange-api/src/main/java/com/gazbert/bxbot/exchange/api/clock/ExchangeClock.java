@@ -0,0 +1,182 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.exchange.api.clock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>
+ * Estimates the offset between our clock and an exchange's clock.
+ * </p>
+ * <p>
+ * Exchanges reject requests signed with a timestamp too far from their own time, or with a nonce lower than one
+ * already used. If the host clock drifts, or is stepped back, the Exchange Adapters end up retrying requests that
+ * can never succeed. So they sign with {@link #currentTimeMillis()} instead of {@link System#currentTimeMillis()}.
+ * </p>
+ * <p>
+ * Each server time sample - a response Date header, or a server time API call - bounds the offset: the exchange read
+ * its clock somewhere between us sending the request and getting the response. The bounds from successive samples
+ * are intersected, so the estimate tightens as more responses come in. They are widened to allow for clock drift
+ * between samples; if a sample does not fit the bounds at all, one of the clocks has been stepped and the estimate
+ * starts again from that sample.
+ * </p>
+ * <p>
+ * There is one clock per exchange host, shared by all the adapters and threads calling it. Until the first sample is
+ * recorded, the offset is 0.
+ * </p>
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+public final class ExchangeClock {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    /*
+     * How far apart 2 clocks can drift, in millis per million millis. Generous - cheap crystals manage 100ppm.
+     */
+    private static final long MAX_DRIFT_PPM = 500;
+
+    /*
+     * The resolution of an HTTP Date header.
+     */
+    private static final long DATE_HEADER_RESOLUTION_MILLIS = 1000;
+
+    private static final ConcurrentMap<String, ExchangeClock> CLOCKS = new ConcurrentHashMap<>();
+
+    private final String host;
+
+    // Offset bounds, as (exchange time - local time), and the local time they were last narrowed.
+    private long minOffsetMillis;
+    private long maxOffsetMillis;
+    private long boundsTimeMillis;
+    private boolean synchronised;
+
+    private volatile long offsetMillis;
+
+
+    ExchangeClock(String host) {
+        this.host = host;
+    }
+
+    /**
+     * Returns the clock for the given exchange host.
+     *
+     * @param host the exchange host, e.g. api.gdax.com
+     * @return the clock.
+     */
+    public static ExchangeClock forHost(String host) {
+        return CLOCKS.computeIfAbsent(host, ExchangeClock::new);
+    }
+
+    /**
+     * Records the Date header from an exchange response.
+     *
+     * @param dateMillis             the Date header value.
+     * @param requestSentMillis      the local time the request was sent - or earlier.
+     * @param responseReceivedMillis the local time the response was received - or later.
+     */
+    public void recordDateHeader(long dateMillis, long requestSentMillis, long responseReceivedMillis) {
+        recordServerTime(dateMillis, DATE_HEADER_RESOLUTION_MILLIS, requestSentMillis, responseReceivedMillis);
+    }
+
+    /**
+     * Records a server time sample from the exchange.
+     *
+     * @param serverTimeMillis       the exchange time, truncated to its resolution.
+     * @param resolutionMillis       the resolution of the exchange time, e.g. 1000 for a time in secs.
+     * @param requestSentMillis      the local time the request was sent - or earlier.
+     * @param responseReceivedMillis the local time the response was received - or later.
+     */
+    public synchronized void recordServerTime(long serverTimeMillis, long resolutionMillis, long requestSentMillis,
+                                              long responseReceivedMillis) {
+
+        if (responseReceivedMillis < requestSentMillis) {
+            // local clock was stepped back mid request - the sample tells us nothing
+            return;
+        }
+
+        final long sampleMinOffset = serverTimeMillis - responseReceivedMillis;
+        final long sampleMaxOffset = serverTimeMillis + Math.max(0, resolutionMillis) - requestSentMillis;
+
+        if (synchronised) {
+            final long drift = Math.max(0, responseReceivedMillis - boundsTimeMillis) * MAX_DRIFT_PPM / 1000000;
+            final long newMinOffset = Math.max(minOffsetMillis - drift, sampleMinOffset);
+            final long newMaxOffset = Math.min(maxOffsetMillis + drift, sampleMaxOffset);
+
+            if (newMinOffset <= newMaxOffset) {
+                minOffsetMillis = newMinOffset;
+                maxOffsetMillis = newMaxOffset;
+            } else {
+                LOG.warn(() -> "Clock stepped for exchange " + host + " - offset no longer within "
+                        + minOffsetMillis + ".." + maxOffsetMillis + " ms. Resynchronising.");
+                minOffsetMillis = sampleMinOffset;
+                maxOffsetMillis = sampleMaxOffset;
+            }
+        } else {
+            minOffsetMillis = sampleMinOffset;
+            maxOffsetMillis = sampleMaxOffset;
+            synchronised = true;
+        }
+        boundsTimeMillis = responseReceivedMillis;
+
+        final long previousOffsetMillis = offsetMillis;
+        offsetMillis = minOffsetMillis + (maxOffsetMillis - minOffsetMillis) / 2;
+        if (Math.abs(offsetMillis - previousOffsetMillis) >= DATE_HEADER_RESOLUTION_MILLIS) {
+            LOG.info(() -> "Clock offset for exchange " + host + " is now " + offsetMillis + " ms (+/- "
+                    + (maxOffsetMillis - minOffsetMillis) / 2 + " ms)");
+        }
+    }
+
+    /**
+     * Returns true once a server time sample has been recorded.
+     *
+     * @return true if the clock has been synchronised with the exchange.
+     */
+    public synchronized boolean isSynchronised() {
+        return synchronised;
+    }
+
+    /**
+     * Returns the estimated offset of the exchange's clock from ours.
+     *
+     * @return the exchange time minus the local time, in millis.
+     */
+    public long getOffsetMillis() {
+        return offsetMillis;
+    }
+
+    /**
+     * Returns the estimated current time on the exchange.
+     *
+     * @return the exchange time, in the same format as {@link System#currentTimeMillis()}.
+     */
+    public long currentTimeMillis() {
+        return System.currentTimeMillis() + offsetMillis;
+    }
+}
@@ -0,0 +1,11 @@
+/**
+ * Exchange clock synchronisation.
+ * <p>
+ * The Exchange Adapters feed the server time from each response into a
+ * {@link com.gazbert.bxbot.exchange.api.clock.ExchangeClock} per exchange host, and sign their timestamps and nonces
+ * with its estimate of the exchange's time.
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+package com.gazbert.bxbot.exchange.api.clock;
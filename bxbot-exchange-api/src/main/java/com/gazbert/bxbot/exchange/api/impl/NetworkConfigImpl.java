@@ -39,6 +39,10 @@ public class NetworkConfigImpl implements NetworkConfig {
     private Integer connectionTimeout;
     private List<Integer> nonFatalErrorCodes;
     private List<String> nonFatalErrorMessages;
+    private String acceptEncoding;
+    private Integer maxRetries;
+    private Integer retryBackoffMillis;
+    private Integer hedgePercentile;
 
     public NetworkConfigImpl() {
         nonFatalErrorCodes = new ArrayList<>();
@@ -72,12 +76,52 @@ public class NetworkConfigImpl implements NetworkConfig {
         this.nonFatalErrorMessages = nonFatalErrorMessages;
     }
 
+    @Override
+    public String getAcceptEncoding() {
+        return acceptEncoding;
+    }
+
+    public void setAcceptEncoding(String acceptEncoding) {
+        this.acceptEncoding = acceptEncoding;
+    }
+
+    @Override
+    public Integer getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(Integer maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    @Override
+    public Integer getRetryBackoffMillis() {
+        return retryBackoffMillis;
+    }
+
+    public void setRetryBackoffMillis(Integer retryBackoffMillis) {
+        this.retryBackoffMillis = retryBackoffMillis;
+    }
+
+    @Override
+    public Integer getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    public void setHedgePercentile(Integer hedgePercentile) {
+        this.hedgePercentile = hedgePercentile;
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
                 .add("connectionTimeout", connectionTimeout)
                 .add("nonFatalErrorCodes", nonFatalErrorCodes)
                 .add("nonFatalErrorMessages", nonFatalErrorMessages)
+                .add("acceptEncoding", acceptEncoding)
+                .add("maxRetries", maxRetries)
+                .add("retryBackoffMillis", retryBackoffMillis)
+                .add("hedgePercentile", hedgePercentile)
                 .toString();
     }
 }
@@ -0,0 +1,76 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.exchange.api.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * JFR event for an HTTP request to an exchange, from connect through to reading the whole response.
+ * <p>
+ * Only create this event if {@link FlightRecorderSupport#isAvailable()} returns true.
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+@Name("com.gazbert.bxbot.ExchangeHttpRequest")
+@Label("Exchange HTTP Request")
+@Description("HTTP request/response between an Exchange Adapter and the exchange")
+@Category({FlightRecorderSupport.CATEGORY, "Exchange"})
+@StackTrace(false)
+public final class ExchangeHttpEvent extends Event {
+
+    @Label("Adapter")
+    public String adapter;
+
+    @Label("Market Id")
+    public String marketId;
+
+    @Label("HTTP Method")
+    public String method;
+
+    @Label("URL Path")
+    public String path;
+
+    @Label("Status Code")
+    public int statusCode;
+
+    @Label("Request Size")
+    @DataAmount
+    public long requestBytes;
+
+    @Label("Response Size")
+    @Description("Bytes read off the wire - still compressed if the exchange compressed the response")
+    @DataAmount
+    public long responseBytes;
+
+    @Label("Decoded Response Size")
+    @DataAmount
+    public long decodedResponseBytes;
+
+    @Label("Content Encoding")
+    public String contentEncoding;
+
+    @Label("Error")
+    public String error;
+}
@@ -0,0 +1,101 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.exchange.api.jfr;
+
+/**
+ * <p>
+ * Guards creation of the BX-bot JDK Flight Recorder events.
+ * </p>
+ * <p>
+ * Callers must check {@link #isAvailable()} before creating an event, e.g.
+ * </p>
+ * <pre>
+ * final ExchangeHttpEvent httpEvent = FlightRecorderSupport.isAvailable() ? new ExchangeHttpEvent() : null;
+ * </pre>
+ * <p>
+ * That way the event classes are only loaded on JVMs that have the jdk.jfr API. JFR events are cheap when no
+ * recording is running: commit() returns straight away.
+ * </p>
+ * <p>
+ * It also holds the market id of the Trading API call in progress on the current thread, so that events recorded
+ * deeper down - like the HTTP request - can be tagged with it.
+ * </p>
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+public final class FlightRecorderSupport {
+
+    /**
+     * Category all BX-bot events are listed under in JDK Mission Control.
+     */
+    public static final String CATEGORY = "BX-bot";
+
+    private static final boolean AVAILABLE = isJfrApiPresent();
+
+    private static final ThreadLocal<String> CURRENT_MARKET_ID = new ThreadLocal<>();
+
+    private FlightRecorderSupport() {
+    }
+
+    /**
+     * Returns true if the JVM supports JFR events.
+     *
+     * @return true if events can be created, false otherwise.
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * Sets the market id of the Trading API call in progress on the current thread.
+     *
+     * @param marketId the market id, or null when the call has completed.
+     */
+    public static void setCurrentMarketId(String marketId) {
+        if (marketId == null) {
+            CURRENT_MARKET_ID.remove();
+        } else {
+            CURRENT_MARKET_ID.set(marketId);
+        }
+    }
+
+    /**
+     * Returns the market id of the Trading API call in progress on the current thread.
+     *
+     * @return the market id, or null if there is none or the call is not for a market.
+     */
+    public static String getCurrentMarketId() {
+        return CURRENT_MARKET_ID.get();
+    }
+
+    private static boolean isJfrApiPresent() {
+        try {
+            Class.forName("jdk.jfr.Event", false, FlightRecorderSupport.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+/**
+ * JDK Flight Recorder events for the Exchange Adapters.
+ * <p>
+ * The events are only created if the JVM supports JFR (OpenJDK 8u262+, or Java 11+) - see
+ * {@link com.gazbert.bxbot.exchange.api.jfr.FlightRecorderSupport}. On older JVMs the calls are skipped and the event
+ * classes are never loaded.
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+package com.gazbert.bxbot.exchange.api.jfr;
@@ -0,0 +1,156 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.exchange.api.replay;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * Records the exchange HTTP responses on the current thread, then replays them.
+ * </p>
+ * <p>
+ * When a session is attached to a thread using {@link #attach(ResponseReplay)}, the Exchange Adapters record each
+ * response they get from the exchange in it. Once {@link #startReplaying()} is called, they stop going to the exchange
+ * and are handed the last response recorded for the same HTTP method and URL path instead. When no session is
+ * attached, {@link #current()} returns null and the adapters carry on as usual - the cost is a single ThreadLocal
+ * lookup.
+ * </p>
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+public final class ResponseReplay {
+
+    private static final ThreadLocal<ResponseReplay> CURRENT_SESSION = new ThreadLocal<>();
+
+    /*
+     * HTTP method + URL path -> last response recorded.
+     */
+    private final Map<String, RecordedResponse> responses = new ConcurrentHashMap<>();
+    private volatile boolean replaying;
+
+    /**
+     * Attaches the session to the current thread until {@link #detach()} is called.
+     *
+     * @param session the session. If null, any session is detached.
+     */
+    public static void attach(ResponseReplay session) {
+        if (session == null) {
+            CURRENT_SESSION.remove();
+        } else {
+            CURRENT_SESSION.set(session);
+        }
+    }
+
+    /**
+     * Detaches any session from the current thread.
+     */
+    public static void detach() {
+        CURRENT_SESSION.remove();
+    }
+
+    /**
+     * Returns the session attached to the current thread.
+     *
+     * @return the session, or null if there is none.
+     */
+    public static ResponseReplay current() {
+        return CURRENT_SESSION.get();
+    }
+
+    /**
+     * Stops recording: from now on, responses are replayed.
+     */
+    public void startReplaying() {
+        replaying = true;
+    }
+
+    public boolean isReplaying() {
+        return replaying;
+    }
+
+    /**
+     * Records a response from the exchange. Ignored once replaying.
+     *
+     * @param httpMethod   the HTTP method, e.g. GET, POST.
+     * @param url          the URL called.
+     * @param statusCode   the HTTP status code.
+     * @param reasonPhrase the HTTP reason phrase.
+     * @param payload      the response body.
+     */
+    public void record(String httpMethod, URL url, int statusCode, String reasonPhrase, String payload) {
+        if (!replaying) {
+            responses.put(keyFor(httpMethod, url), new RecordedResponse(statusCode, reasonPhrase, payload));
+        }
+    }
+
+    /**
+     * Returns the response recorded for a request.
+     *
+     * @param httpMethod the HTTP method, e.g. GET, POST.
+     * @param url        the URL called. The query string is ignored.
+     * @return the response, or null if none was recorded.
+     */
+    public RecordedResponse replay(String httpMethod, URL url) {
+        return responses.get(keyFor(httpMethod, url));
+    }
+
+    public int getRecordedResponseCount() {
+        return responses.size();
+    }
+
+    private static String keyFor(String httpMethod, URL url) {
+        return httpMethod.toUpperCase() + " " + url.getHost() + url.getPath();
+    }
+
+    /**
+     * A recorded exchange HTTP response.
+     */
+    public static final class RecordedResponse {
+
+        private final int statusCode;
+        private final String reasonPhrase;
+        private final String payload;
+
+        RecordedResponse(int statusCode, String reasonPhrase, String payload) {
+            this.statusCode = statusCode;
+            this.reasonPhrase = reasonPhrase;
+            this.payload = payload;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public String getReasonPhrase() {
+            return reasonPhrase;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+    }
+}
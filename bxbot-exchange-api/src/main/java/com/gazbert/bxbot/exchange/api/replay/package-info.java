@@ -0,0 +1,12 @@
+/**
+ * Recording and replaying of exchange HTTP responses.
+ * <p>
+ * The Trading Engine attaches a {@link com.gazbert.bxbot.exchange.api.replay.ResponseReplay} to a thread to record the
+ * responses to the Exchange Adapter calls made on it, then switches it to replay them. While replaying, the adapters
+ * build and sign their requests and parse the responses as usual, but nothing is sent to the exchange - used to warm
+ * up the JIT compiler before the bot starts trading.
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+package com.gazbert.bxbot.exchange.api.replay;
@@ -0,0 +1,75 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.exchange.api.resilience;
+
+/**
+ * <p>
+ * The deadline for the exchange calls made on the current thread.
+ * </p>
+ * <p>
+ * The Trading Engine sets it to the end of the trade cycle before it runs the Trading Strategies, and clears it
+ * afterwards. A retry that could not start before the deadline would only push the strategy into the next cycle, so
+ * the Exchange Adapters give up instead. Threads with no deadline set, e.g. the consolidated order book service, are
+ * only bound by the adapter's retry limit.
+ * </p>
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+public final class CallBudget {
+
+    private static final ThreadLocal<Long> DEADLINE = new ThreadLocal<>();
+
+    private CallBudget() {
+    }
+
+    /**
+     * Sets the deadline for the current thread.
+     *
+     * @param deadlineMillis the deadline, as a {@link System#currentTimeMillis()} time.
+     */
+    public static void setDeadline(long deadlineMillis) {
+        DEADLINE.set(deadlineMillis);
+    }
+
+    /**
+     * Clears the deadline for the current thread.
+     */
+    public static void clear() {
+        DEADLINE.remove();
+    }
+
+    /**
+     * Returns the time left before the deadline for the current thread.
+     *
+     * @return the millis left - 0 if the deadline has passed, or Long.MAX_VALUE if there is no deadline.
+     */
+    public static long getRemainingMillis() {
+        final Long deadlineMillis = DEADLINE.get();
+        if (deadlineMillis == null) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, deadlineMillis - System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,11 @@
+/**
+ * Time budget for retrying exchange calls.
+ * <p>
+ * The Trading Engine sets a {@link com.gazbert.bxbot.exchange.api.resilience.CallBudget} deadline on each exchange
+ * lane thread for the duration of a trade cycle. The Exchange Adapters only retry a failed idempotent call if the
+ * backoff still fits in what is left of it.
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+package com.gazbert.bxbot.exchange.api.resilience;
@@ -0,0 +1,111 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.exchange.api.trace;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * A completed span in a {@link TraceTimeline}. Immutable.
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+public final class SpanRecord {
+
+    private final String name;
+    private final String detail;
+    private final String threadName;
+    private final int depth;
+    private final long startOffsetNanos;
+    private final long durationNanos;
+    private final String error;
+
+
+    SpanRecord(String name, String detail, String threadName, int depth, long startOffsetNanos, long durationNanos,
+               String error) {
+        this.name = name;
+        this.detail = detail;
+        this.threadName = threadName;
+        this.depth = depth;
+        this.startOffsetNanos = startOffsetNanos;
+        this.durationNanos = durationNanos;
+        this.error = error;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDetail() {
+        return detail;
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+
+    /**
+     * Returns the nesting depth of the span on its thread; 0 is the outermost span.
+     *
+     * @return the nesting depth.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns when the span started, relative to the start of the timeline.
+     *
+     * @return the start offset in nanos.
+     */
+    public long getStartOffsetNanos() {
+        return startOffsetNanos;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * Returns the simple class name of the exception the span failed with.
+     *
+     * @return the error, or null if the span did not fail.
+     */
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("name", name)
+                .add("detail", detail)
+                .add("threadName", threadName)
+                .add("depth", depth)
+                .add("startOffsetNanos", startOffsetNanos)
+                .add("durationNanos", durationNanos)
+                .add("error", error)
+                .toString();
+    }
+}
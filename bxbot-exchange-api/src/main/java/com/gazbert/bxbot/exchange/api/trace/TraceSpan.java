@@ -0,0 +1,89 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.exchange.api.trace;
+
+/**
+ * An open span. Closing it records the span in its {@link TraceTimeline}.
+ * <p>
+ * Spans are not thread safe - they must be opened and closed on the same thread.
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+public final class TraceSpan implements AutoCloseable {
+
+    /*
+     * Returned when there is no timeline attached to the thread.
+     */
+    static final TraceSpan NOOP = new TraceSpan();
+
+    private final Tracer.ThreadScope scope;
+    private final String name;
+    private final String detail;
+    private final int depth;
+    private final long startNanos;
+    private String error;
+    private boolean closed;
+
+
+    TraceSpan(Tracer.ThreadScope scope, String name, String detail) {
+        this.scope = scope;
+        this.name = name;
+        this.detail = detail;
+        this.depth = scope.depth++;
+        this.startNanos = System.nanoTime();
+    }
+
+    private TraceSpan() {
+        this.scope = null;
+        this.name = null;
+        this.detail = null;
+        this.depth = 0;
+        this.startNanos = 0;
+        this.closed = true;
+    }
+
+    /**
+     * Marks the span as failed.
+     *
+     * @param cause what the span failed with.
+     */
+    public void failed(Throwable cause) {
+        if (scope != null) {
+            error = cause.getClass().getSimpleName();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        final long endNanos = System.nanoTime();
+        scope.depth--;
+        scope.timeline.record(new SpanRecord(name, detail, scope.threadName, depth,
+                startNanos - scope.timeline.getStartNanos(), endNanos - startNanos, error));
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.exchange.api.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * The spans recorded for a single unit of work, e.g. a trade cycle.
+ * </p>
+ * <p>
+ * A timeline can be attached to several threads at once - the exchange lanes all record into the trade cycle's
+ * timeline. Once {@link #complete()} has been called, any further spans are dropped; this happens if a lane is still
+ * busy when the engine moves on. The number of spans is capped so a runaway strategy cannot eat the heap.
+ * </p>
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+public final class TraceTimeline {
+
+    private final long id;
+    private final String name;
+    private final long startTimeMillis;
+    private final long startNanos;
+    private final int maxSpans;
+
+    private final List<SpanRecord> spans = new ArrayList<>();
+    private int droppedSpanCount;
+    private long durationNanos = -1;
+
+
+    /**
+     * Creates a new timeline, starting now.
+     *
+     * @param id       the timeline id.
+     * @param name     the timeline name, e.g. trade-cycle.
+     * @param maxSpans the maximum number of spans to record.
+     */
+    public TraceTimeline(long id, String name, int maxSpans) {
+        this.id = id;
+        this.name = name;
+        this.maxSpans = maxSpans;
+        this.startTimeMillis = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * Marks the timeline as complete. Spans closed after this are dropped.
+     */
+    public synchronized void complete() {
+        if (durationNanos < 0) {
+            durationNanos = System.nanoTime() - startNanos;
+        }
+    }
+
+    /**
+     * Returns the duration of the timeline.
+     *
+     * @return the duration in nanos, or -1 if the timeline has not been completed.
+     */
+    public synchronized long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * Returns the spans recorded, in the order they were closed.
+     *
+     * @return a copy of the spans.
+     */
+    public synchronized List<SpanRecord> getSpans() {
+        return new ArrayList<>(spans);
+    }
+
+    /**
+     * Returns the number of spans dropped because the timeline was full or already complete.
+     *
+     * @return the dropped span count.
+     */
+    public synchronized int getDroppedSpanCount() {
+        return droppedSpanCount;
+    }
+
+    synchronized void record(SpanRecord span) {
+        if (durationNanos >= 0 || spans.size() >= maxSpans) {
+            droppedSpanCount++;
+        } else {
+            spans.add(span);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.exchange.api.trace;
+
+/**
+ * <p>
+ * Records trace spans on the current thread.
+ * </p>
+ * <p>
+ * A {@link TraceTimeline} is attached to a thread using {@link #attach(TraceTimeline)}, and spans are then opened with
+ * {@link #span(String)} and closed using try-with-resources:
+ * </p>
+ * <pre>
+ * try (TraceSpan ignored = Tracer.span(Tracer.NETWORK_IO)) {
+ *     ...
+ * }
+ * </pre>
+ * <p>
+ * When no timeline is attached to the thread, {@link #span(String)} returns a shared no-op span - the cost is a single
+ * ThreadLocal lookup, so it is safe to leave the calls in the hot path.
+ * </p>
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+public final class Tracer {
+
+    /**
+     * The whole trade cycle.
+     */
+    public static final String CYCLE = "cycle";
+
+    /**
+     * An exchange lane running its Trading Strategies.
+     */
+    public static final String LANE = "lane";
+
+    /**
+     * A single Trading Strategy execution.
+     */
+    public static final String STRATEGY = "strategy";
+
+    /**
+     * A Trading API call on an Exchange Adapter.
+     */
+    public static final String API_CALL = "api-call";
+
+    /**
+     * The HTTP request/response with the exchange.
+     */
+    public static final String NETWORK_IO = "network-io";
+
+    /**
+     * Unmarshalling of the exchange response.
+     */
+    public static final String PARSE = "parse";
+
+    /**
+     * Signing of an authenticated request.
+     */
+    public static final String SIGN = "sign";
+
+    private static final ThreadLocal<ThreadScope> CURRENT_SCOPE = new ThreadLocal<>();
+
+    private Tracer() {
+    }
+
+    /**
+     * Attaches the timeline to the current thread. Spans opened on this thread are recorded in it until
+     * {@link #detach()} is called.
+     *
+     * @param timeline the timeline to record spans in. If null, nothing is recorded.
+     */
+    public static void attach(TraceTimeline timeline) {
+        if (timeline == null) {
+            CURRENT_SCOPE.remove();
+        } else {
+            CURRENT_SCOPE.set(new ThreadScope(timeline));
+        }
+    }
+
+    /**
+     * Detaches any timeline from the current thread.
+     */
+    public static void detach() {
+        CURRENT_SCOPE.remove();
+    }
+
+    /**
+     * Returns the timeline attached to the current thread.
+     *
+     * @return the timeline, or null if there is none.
+     */
+    public static TraceTimeline currentTimeline() {
+        final ThreadScope scope = CURRENT_SCOPE.get();
+        return scope == null ? null : scope.timeline;
+    }
+
+    /**
+     * Opens a span in the timeline attached to the current thread.
+     *
+     * @param name the span name, e.g. {@link #NETWORK_IO}.
+     * @return the span - it must be closed on the same thread.
+     */
+    public static TraceSpan span(String name) {
+        return span(name, null);
+    }
+
+    /**
+     * Opens a span in the timeline attached to the current thread.
+     *
+     * @param name   the span name, e.g. {@link #API_CALL}.
+     * @param detail optional detail, e.g. the API method and market. Can be null.
+     * @return the span - it must be closed on the same thread.
+     */
+    public static TraceSpan span(String name, String detail) {
+        final ThreadScope scope = CURRENT_SCOPE.get();
+        if (scope == null) {
+            return TraceSpan.NOOP;
+        }
+        return new TraceSpan(scope, name, detail);
+    }
+
+    /*
+     * Per-thread trace state. Tracks span nesting depth so the timeline can be rendered as a tree.
+     */
+    static final class ThreadScope {
+
+        final TraceTimeline timeline;
+        final String threadName;
+        int depth;
+
+        ThreadScope(TraceTimeline timeline) {
+            this.timeline = timeline;
+            this.threadName = Thread.currentThread().getName();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+/**
+ * Lightweight tracing of the trade cycle hot path.
+ * <p>
+ * The Trading Engine opens a {@link com.gazbert.bxbot.exchange.api.trace.TraceTimeline} for each trade cycle and
+ * attaches it to the threads doing the work. Code on those threads - the engine, the Exchange Adapter instrumentation,
+ * and the Exchange Adapters themselves - then records spans using
+ * {@link com.gazbert.bxbot.exchange.api.trace.Tracer#span(String)}. If no timeline is attached, spans are no-ops.
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+package com.gazbert.bxbot.exchange.api.trace;
@@ -0,0 +1,176 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.exchange.api.transfer;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Totals the exchange HTTP traffic on the current thread.
+ * </p>
+ * <p>
+ * A Trading API call can make more than one HTTP request, e.g. to fetch a nonce or page through open orders. The
+ * Exchange Adapters call {@link #recordNetworkRequest()} for each request sent to the exchange, and
+ * {@link #recordCoalescedRequest()} for each request that shared an identical request already in flight instead. They
+ * call {@link #record(long, long)} once per response with the number of bytes read off the wire and the number left
+ * once the Content-Encoding has been decoded - the gap between the two is what compression saved. Retries of failed
+ * requests and hedged duplicate requests are counted too. The caller of the Trading API resets the meter with
+ * {@link #reset()} before the call and reads the totals afterwards.
+ * </p>
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+public final class TransferMeter {
+
+    private static final int WIRE_BYTES = 0;
+    private static final int DECODED_BYTES = 1;
+    private static final int NETWORK_REQUESTS = 2;
+    private static final int COALESCED_REQUESTS = 3;
+    private static final int RETRIES = 4;
+    private static final int HEDGED_REQUESTS = 5;
+
+    private static final ThreadLocal<long[]> TOTALS = ThreadLocal.withInitial(() -> new long[6]);
+
+    private TransferMeter() {
+    }
+
+    /**
+     * Zeroes the totals for the current thread.
+     */
+    public static void reset() {
+        Arrays.fill(TOTALS.get(), 0);
+    }
+
+    /**
+     * Counts a request sent to the exchange on the current thread.
+     */
+    public static void recordNetworkRequest() {
+        TOTALS.get()[NETWORK_REQUESTS]++;
+    }
+
+    /**
+     * Counts a request on the current thread that was not sent to the exchange, because it shared the response of an
+     * identical request already in flight.
+     */
+    public static void recordCoalescedRequest() {
+        TOTALS.get()[COALESCED_REQUESTS]++;
+    }
+
+    /**
+     * Counts a retry of a failed request on the current thread.
+     */
+    public static void recordRetry() {
+        TOTALS.get()[RETRIES]++;
+    }
+
+    /**
+     * Counts a hedged request on the current thread - a duplicate sent because the first was slow to respond.
+     */
+    public static void recordHedgedRequest() {
+        TOTALS.get()[HEDGED_REQUESTS]++;
+    }
+
+    /**
+     * Adds the traffic of a request made on another thread on behalf of the current thread, e.g. a hedged request.
+     *
+     * @param networkRequests   the requests sent to the exchange.
+     * @param coalescedRequests the requests coalesced into identical requests in flight.
+     * @param wireBytes         the bytes read off the wire.
+     * @param decodedBytes      the bytes left once the responses were decoded.
+     */
+    public static void add(long networkRequests, long coalescedRequests, long wireBytes, long decodedBytes) {
+        final long[] totals = TOTALS.get();
+        totals[NETWORK_REQUESTS] += networkRequests;
+        totals[COALESCED_REQUESTS] += coalescedRequests;
+        totals[WIRE_BYTES] += wireBytes;
+        totals[DECODED_BYTES] += decodedBytes;
+    }
+
+    /**
+     * Adds a response to the totals for the current thread.
+     *
+     * @param wireBytes    the bytes read off the wire, i.e. still compressed if the exchange compressed them.
+     * @param decodedBytes the bytes left once the response was decoded.
+     */
+    public static void record(long wireBytes, long decodedBytes) {
+        final long[] totals = TOTALS.get();
+        totals[WIRE_BYTES] += wireBytes;
+        totals[DECODED_BYTES] += decodedBytes;
+    }
+
+    /**
+     * Returns the bytes read off the wire on the current thread since the last reset.
+     *
+     * @return the wire bytes.
+     */
+    public static long getWireBytes() {
+        return TOTALS.get()[WIRE_BYTES];
+    }
+
+    /**
+     * Returns the decoded response bytes on the current thread since the last reset.
+     *
+     * @return the decoded bytes.
+     */
+    public static long getDecodedBytes() {
+        return TOTALS.get()[DECODED_BYTES];
+    }
+
+    /**
+     * Returns the requests sent to the exchange on the current thread since the last reset.
+     *
+     * @return the network requests.
+     */
+    public static long getNetworkRequests() {
+        return TOTALS.get()[NETWORK_REQUESTS];
+    }
+
+    /**
+     * Returns the requests coalesced into an identical in-flight request on the current thread since the last reset.
+     *
+     * @return the coalesced requests.
+     */
+    public static long getCoalescedRequests() {
+        return TOTALS.get()[COALESCED_REQUESTS];
+    }
+
+    /**
+     * Returns the retries on the current thread since the last reset.
+     *
+     * @return the retries.
+     */
+    public static long getRetries() {
+        return TOTALS.get()[RETRIES];
+    }
+
+    /**
+     * Returns the hedged requests sent on the current thread since the last reset.
+     *
+     * @return the hedged requests.
+     */
+    public static long getHedgedRequests() {
+        return TOTALS.get()[HEDGED_REQUESTS];
+    }
+}
@@ -0,0 +1,12 @@
+/**
+ * Response transfer accounting for the exchange HTTP calls.
+ * <p>
+ * The Exchange Adapters add the requests they send, the requests they coalesce into identical requests already in
+ * flight, and the response bytes before and after decompression, to the
+ * {@link com.gazbert.bxbot.exchange.api.transfer.TransferMeter} for the current thread. The Trading Engine resets it
+ * before each Trading API call and reports what was added afterwards.
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+package com.gazbert.bxbot.exchange.api.transfer;
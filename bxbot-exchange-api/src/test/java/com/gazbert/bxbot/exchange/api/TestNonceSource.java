@@ -0,0 +1,136 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.exchange.api;
+
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the Nonce Source hands out unique, increasing nonces as expected.
+ *
+ * @author gazbert
+ */
+public class TestNonceSource {
+
+    private static final String ADAPTER_NAME = "com.gazbert.bxbot.exchanges.KrakenExchangeAdapter";
+
+    @Test
+    public void testAdaptersWithSameApiKeyShareSource() {
+
+        final NonceSource nonceSource = NonceSource.forCredential(ADAPTER_NAME, "key-1");
+        assertSame(nonceSource, NonceSource.forCredential(ADAPTER_NAME, "key-1"));
+        assertNotSame(nonceSource, NonceSource.forCredential(ADAPTER_NAME, "key-2"));
+        assertNotSame(nonceSource, NonceSource.forCredential("com.gazbert.bxbot.exchanges.GeminiExchangeAdapter",
+                "key-1"));
+    }
+
+    @Test
+    public void testCounterIsNeverMovedBack() {
+
+        final NonceSource nonceSource = new NonceSource();
+        nonceSource.advanceTo(1000);
+        assertEquals(1001, nonceSource.next());
+
+        nonceSource.advanceTo(500);
+        assertEquals(1001, nonceSource.getLastNonce());
+        assertEquals(1002, nonceSource.next());
+
+        nonceSource.advanceTo(2000);
+        assertEquals(2001, nonceSource.next());
+    }
+
+    @Test
+    public void testNonceIsKeptUpWithTheClock() {
+
+        final NonceSource nonceSource = new NonceSource();
+        assertEquals(1000, nonceSource.next(1000));
+        assertEquals(1001, nonceSource.next(1000));
+        assertEquals(5000, nonceSource.next(5000));
+    }
+
+    @Test
+    public void testInstanceAheadOfClockKeepsOtherInstancesAboveIt() {
+
+        // the lane's instance has burned through nonces ahead of the clock...
+        final NonceSource laneNonces = NonceSource.forCredential(ADAPTER_NAME, "key-ahead");
+        laneNonces.advanceTo(1000);
+        for (int i = 0; i < 50; i++) {
+            laneNonces.next(1000);
+        }
+        final long lastAccepted = laneNonces.getLastNonce();
+        assertEquals(1050, lastAccepted);
+
+        // ...so the watchdog's instance, asking at the same clock reading, must still get one above the lane's last
+        final NonceSource watchdogNonces = NonceSource.forCredential(ADAPTER_NAME, "key-ahead");
+        assertTrue(watchdogNonces.next(1001) > lastAccepted);
+    }
+
+    @Test
+    public void testNoncesAtSameClockReadingAreUniqueAcrossThreads() throws Exception {
+
+        final NonceSource nonceSource = new NonceSource();
+        final Set<Long> nonces = ConcurrentHashMap.newKeySet();
+        final int threads = 4;
+        final int noncesPerThread = 10000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread(() -> {
+                for (int j = 0; j < noncesPerThread; j++) {
+                    nonces.add(nonceSource.next(1000));
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+
+        assertEquals(threads * noncesPerThread, nonces.size());
+    }
+
+    @Test
+    public void testNoncesAreUniqueAcrossThreads() throws Exception {
+
+        final NonceSource nonceSource = new NonceSource();
+        final Set<Long> nonces = ConcurrentHashMap.newKeySet();
+        final int threads = 4;
+        final int noncesPerThread = 10000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread(() -> {
+                for (int j = 0; j < noncesPerThread; j++) {
+                    nonces.add(nonceSource.next());
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+
+        assertEquals(threads * noncesPerThread, nonces.size());
+        assertEquals(threads * noncesPerThread, nonceSource.getLastNonce());
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.exchange.api.clock;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the Exchange Clock estimates the offset from the server time samples as expected.
+ *
+ * @author gazbert
+ */
+public class TestExchangeClock {
+
+    private static final String HOST = "api.gdax.com";
+    private static final long LOCAL_TIME = 1500000000000L;
+
+    @Test
+    public void testOffsetIsZeroUntilFirstSample() {
+
+        final ExchangeClock exchangeClock = new ExchangeClock(HOST);
+        assertFalse(exchangeClock.isSynchronised());
+        assertEquals(0, exchangeClock.getOffsetMillis());
+    }
+
+    @Test
+    public void testOffsetIsEstimatedFromDateHeader() {
+
+        final ExchangeClock exchangeClock = new ExchangeClock(HOST);
+
+        // exchange is 5 secs ahead: Date header is truncated to the sec; 200ms round trip
+        exchangeClock.recordDateHeader(LOCAL_TIME + 5000, LOCAL_TIME, LOCAL_TIME + 200);
+
+        assertTrue(exchangeClock.isSynchronised());
+        // offset bounds are 4800..6000
+        assertEquals(5400, exchangeClock.getOffsetMillis());
+    }
+
+    @Test
+    public void testSuccessiveSamplesNarrowTheEstimate() {
+
+        final ExchangeClock exchangeClock = new ExchangeClock(HOST);
+        exchangeClock.recordDateHeader(LOCAL_TIME + 5000, LOCAL_TIME, LOCAL_TIME + 200); // 4800..6000
+
+        // 1 sec later, a millisecond server time: 5100..5151
+        exchangeClock.recordServerTime(LOCAL_TIME + 6150, 1, LOCAL_TIME + 1000, LOCAL_TIME + 1050);
+        assertEquals(5125, exchangeClock.getOffsetMillis());
+
+        // another Date header that only just overlaps: 5140..6800
+        exchangeClock.recordDateHeader(LOCAL_TIME + 7000, LOCAL_TIME + 2200, LOCAL_TIME + 1860);
+        assertEquals(5125, exchangeClock.getOffsetMillis()); // sent after received - ignored
+        exchangeClock.recordDateHeader(LOCAL_TIME + 7000, LOCAL_TIME + 1200, LOCAL_TIME + 1860);
+        assertEquals(5145, exchangeClock.getOffsetMillis());
+    }
+
+    @Test
+    public void testEstimateStartsAgainWhenClockIsStepped() {
+
+        final ExchangeClock exchangeClock = new ExchangeClock(HOST);
+        exchangeClock.recordServerTime(LOCAL_TIME + 5000, 1, LOCAL_TIME, LOCAL_TIME + 100); // 4900..5001
+
+        // local clock stepped forward 30 secs by NTP
+        exchangeClock.recordServerTime(LOCAL_TIME + 6000, 1, LOCAL_TIME + 31000, LOCAL_TIME + 31100);
+        assertEquals(-25050, exchangeClock.getOffsetMillis());
+    }
+
+    @Test
+    public void testCurrentTimeIncludesOffset() {
+
+        final ExchangeClock exchangeClock = ExchangeClock.forHost("test.clock.offset");
+        assertSame(exchangeClock, ExchangeClock.forHost("test.clock.offset"));
+
+        final long now = System.currentTimeMillis();
+        exchangeClock.recordServerTime(now - 60000, 1, now, now);
+        assertEquals(-60000, exchangeClock.getOffsetMillis());
+
+        final long exchangeTime = exchangeClock.currentTimeMillis();
+        assertTrue(exchangeTime >= now - 60000 && exchangeTime <= System.currentTimeMillis() - 60000);
+    }
+}
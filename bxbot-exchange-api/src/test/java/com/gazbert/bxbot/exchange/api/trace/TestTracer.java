@@ -0,0 +1,119 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.exchange.api.trace;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the Tracer records spans in the attached timeline as expected.
+ *
+ * @author gazbert
+ */
+public class TestTracer {
+
+    private static final String API_CALL_DETAIL = "getMarketOrders btcusd";
+
+    @After
+    public void tearDown() {
+        Tracer.detach();
+    }
+
+    @Test
+    public void testSpansAreNoOpsWhenNoTimelineIsAttached() {
+
+        assertNull(Tracer.currentTimeline());
+        final TraceSpan span = Tracer.span(Tracer.NETWORK_IO);
+        assertSame(TraceSpan.NOOP, span);
+        span.failed(new IllegalStateException());
+        span.close();
+    }
+
+    @Test
+    public void testNestedSpansAreRecordedWithDepthAndDetail() {
+
+        final TraceTimeline timeline = new TraceTimeline(1, "trade-cycle", 10);
+        Tracer.attach(timeline);
+        assertSame(timeline, Tracer.currentTimeline());
+
+        try (TraceSpan apiSpan = Tracer.span(Tracer.API_CALL, API_CALL_DETAIL)) {
+            try (TraceSpan ignored = Tracer.span(Tracer.NETWORK_IO)) {
+                assertNotNull(ignored);
+            }
+            apiSpan.failed(new IllegalStateException("boom"));
+        }
+        timeline.complete();
+
+        final List<SpanRecord> spans = timeline.getSpans();
+        assertEquals(2, spans.size());
+
+        final SpanRecord networkSpan = spans.get(0);
+        assertEquals(Tracer.NETWORK_IO, networkSpan.getName());
+        assertEquals(1, networkSpan.getDepth());
+        assertNull(networkSpan.getError());
+        assertEquals(Thread.currentThread().getName(), networkSpan.getThreadName());
+
+        final SpanRecord apiSpan = spans.get(1);
+        assertEquals(Tracer.API_CALL, apiSpan.getName());
+        assertEquals(API_CALL_DETAIL, apiSpan.getDetail());
+        assertEquals(0, apiSpan.getDepth());
+        assertEquals("IllegalStateException", apiSpan.getError());
+        assertTrue(apiSpan.getStartOffsetNanos() <= networkSpan.getStartOffsetNanos());
+        assertTrue(apiSpan.getDurationNanos() >= networkSpan.getDurationNanos());
+        assertTrue(timeline.getDurationNanos() >= apiSpan.getDurationNanos());
+    }
+
+    @Test
+    public void testSpansAreDroppedWhenTimelineIsFullOrComplete() {
+
+        final TraceTimeline timeline = new TraceTimeline(2, "trade-cycle", 1);
+        Tracer.attach(timeline);
+
+        Tracer.span(Tracer.PARSE).close();
+        Tracer.span(Tracer.PARSE).close();
+        assertEquals(1, timeline.getSpans().size());
+        assertEquals(1, timeline.getDroppedSpanCount());
+
+        timeline.complete();
+        Tracer.span(Tracer.SIGN).close();
+        assertEquals(1, timeline.getSpans().size());
+        assertEquals(2, timeline.getDroppedSpanCount());
+    }
+
+    @Test
+    public void testDetachStopsRecording() {
+
+        final TraceTimeline timeline = new TraceTimeline(3, "trade-cycle", 10);
+        Tracer.attach(timeline);
+        Tracer.detach();
+
+        assertNull(Tracer.currentTimeline());
+        Tracer.span(Tracer.STRATEGY).close();
+        assertTrue(timeline.getSpans().isEmpty());
+    }
+}
@@ -25,17 +25,38 @@ package com.gazbert.bxbot.exchanges;
 import com.gazbert.bxbot.exchange.api.AuthenticationConfig;
 import com.gazbert.bxbot.exchange.api.ExchangeConfig;
 import com.gazbert.bxbot.exchange.api.NetworkConfig;
+import com.gazbert.bxbot.exchange.api.NonceSource;
 import com.gazbert.bxbot.exchange.api.OptionalConfig;
+import com.gazbert.bxbot.exchange.api.clock.ExchangeClock;
+import com.gazbert.bxbot.exchange.api.jfr.ExchangeHttpEvent;
+import com.gazbert.bxbot.exchange.api.jfr.FlightRecorderSupport;
+import com.gazbert.bxbot.exchange.api.replay.ResponseReplay;
+import com.gazbert.bxbot.exchange.api.resilience.CallBudget;
+import com.gazbert.bxbot.exchange.api.trace.TraceSpan;
+import com.gazbert.bxbot.exchange.api.trace.TraceTimeline;
+import com.gazbert.bxbot.exchange.api.trace.Tracer;
+import com.gazbert.bxbot.exchange.api.transfer.TransferMeter;
 import com.gazbert.bxbot.trading.api.ExchangeNetworkException;
 import com.gazbert.bxbot.trading.api.TradingApiException;
 import com.google.common.base.MoreObjects;
+import com.google.common.io.CountingInputStream;
+import com.google.gson.Gson;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import javax.crypto.Mac;
 import java.io.*;
+import java.lang.reflect.Type;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.text.DecimalFormatSymbols;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.Lock;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
  * Base class for shared Exchange Adapter functionality.
@@ -97,6 +118,82 @@ abstract class AbstractExchangeAdapter {
      */
     private static final String NON_FATAL_ERROR_MESSAGES_PROPERTY_NAME = "non-fatal-error-messages";
 
+    /**
+     * Name of accept-encoding property in config file.
+     */
+    private static final String ACCEPT_ENCODING_PROPERTY_NAME = "accept-encoding";
+
+    /**
+     * Name of max-retries property in config file.
+     */
+    private static final String MAX_RETRIES_PROPERTY_NAME = "max-retries";
+
+    /**
+     * Name of retry-backoff-millis property in config file.
+     */
+    private static final String RETRY_BACKOFF_MILLIS_PROPERTY_NAME = "retry-backoff-millis";
+
+    /**
+     * Name of hedge-percentile property in config file.
+     */
+    private static final String HEDGE_PERCENTILE_PROPERTY_NAME = "hedge-percentile";
+
+    /**
+     * Cap on the backoff before a retry, however many retries have been made.
+     */
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 10000;
+
+    /**
+     * Number of recent latencies kept per API method for working out when to hedge a request.
+     */
+    private static final int HEDGE_LATENCY_WINDOW_SIZE = 100;
+
+    /**
+     * Latencies needed before a request is hedged - the percentile means little until then.
+     */
+    private static final int MIN_HEDGE_LATENCY_SAMPLES = 20;
+
+    /**
+     * Sends the attempts of hedged requests. Shared by all the Exchange Adapter instances in the JVM.
+     */
+    private static final ExecutorService HEDGE_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        final Thread hedgeThread = new Thread(runnable, "bxbot-hedged-request");
+        hedgeThread.setDaemon(true);
+        return hedgeThread;
+    });
+
+    /**
+     * Set on the thread sending a hedge, so it goes to the exchange instead of coalescing into the request it hedges.
+     */
+    private static final ThreadLocal<Boolean> SENDING_HEDGE = new ThreadLocal<>();
+
+    /**
+     * Brotli decoder from the (optional) org.brotli:dec library. We only ask for "br" if it is on the classpath.
+     */
+    private static final String BROTLI_INPUT_STREAM_CLASS = "org.brotli.dec.BrotliInputStream";
+
+    /**
+     * Accept-Encoding sent if none is set in the config file.
+     */
+    private static final String DEFAULT_ACCEPT_ENCODING = isBrotliAvailable() ? "gzip, deflate, br" : "gzip, deflate";
+
+    /**
+     * Buffer size for the decompressing streams.
+     */
+    private static final int DECODE_BUFFER_SIZE = 8192;
+
+    /**
+     * Identical GET requests currently in flight, across all the Exchange Adapter instances in the JVM - keyed on the
+     * method, URL, body, and headers of the request. The lanes, the consolidated order book service, and every engine
+     * in the host own their own adapter instances, so they end up fetching the same ticker or book at the same moment.
+     */
+    private static final ConcurrentMap<String, InFlightRequest> IN_FLIGHT_REQUESTS = new ConcurrentHashMap<>();
+
+    /**
+     * The coalesced request whose response was last returned on this thread, so its parsed payload can be shared too.
+     */
+    private static final ThreadLocal<InFlightRequest> COALESCED_REQUEST = new ThreadLocal<>();
+
     /**
      * Exchange Adapter config file location.
      */
@@ -119,6 +216,31 @@ abstract class AbstractExchangeAdapter {
      */
     private final Set<String> nonFatalNetworkErrorMessages;
 
+    /**
+     * The Accept-Encoding header value sent to the exchange. Empty if no header is sent.
+     */
+    private String acceptEncoding;
+
+    /**
+     * Max number of times an idempotent request is retried after a network error. 0 means no retries.
+     */
+    private int maxRetries;
+
+    /**
+     * The backoff in MILLIS before the first retry - it doubles for each retry after that, and is jittered.
+     */
+    private int retryBackoffMillis;
+
+    /**
+     * The latency percentile at which a duplicate of a slow public request is sent. 0 means requests are not hedged.
+     */
+    private int hedgePercentile;
+
+    /**
+     * Recent latencies of the hedgeable requests, keyed on API method.
+     */
+    private final ConcurrentMap<String, LatencyWindow> hedgeLatencies;
+
     /**
      * Enforce specific format setting of decimal numbers.
      */
@@ -133,6 +255,9 @@ abstract class AbstractExchangeAdapter {
         connectionTimeout = 30;
         nonFatalNetworkErrorCodes = new HashSet<>();
         nonFatalNetworkErrorMessages = new HashSet<>();
+        acceptEncoding = DEFAULT_ACCEPT_ENCODING;
+        retryBackoffMillis = 250;
+        hedgeLatencies = new ConcurrentHashMap<>();
 
         // Some locales (e.g. Czech Republic) default to ',' instead of '.' for decimal point. Exchanges always require a '.'
         decimalFormatSymbols = new DecimalFormatSymbols(Locale.getDefault());
@@ -141,6 +266,19 @@ abstract class AbstractExchangeAdapter {
 
     /**
      * Makes a request to the Exchange.
+     * <p>
+     * If a {@link ResponseReplay} session is attached to the current thread, the response is recorded in it - or, once
+     * it is replaying, the recorded response is returned and nothing is sent to the Exchange.
+     * <p>
+     * The configured Accept-Encoding is sent with the request, and the response is decoded as it is read off the
+     * socket. The bytes read off the wire and the decoded bytes are added to the {@link TransferMeter}.
+     * <p>
+     * GET requests are coalesced: if an identical request (same URL, body, and headers) is already in flight on another
+     * thread, this call waits for its response instead of sending another request. The response payload, and the
+     * result of parsing it with {@link #parseJson(Gson, String, Type)}, are shared by all the callers - so the parsed
+     * objects must be treated as read-only. Signed requests carry a nonce or timestamp, so they only ever coalesce with
+     * a request signed with the same credentials at the same moment. The duplicate sent to hedge a slow request is never
+     * coalesced - see {@link #sendIdempotentRequest(String, boolean, IdempotentRequest)}.
      *
      * @param url            the URL to invoke.
      * @param postData       optional post data to send. This can be null.
@@ -155,8 +293,144 @@ abstract class AbstractExchangeAdapter {
     ExchangeHttpResponse sendNetworkRequest(URL url, String httpMethod, String postData, Map<String, String> requestHeaders)
             throws TradingApiException, ExchangeNetworkException {
 
+        final ResponseReplay responseReplay = ResponseReplay.current();
+        if (responseReplay != null && responseReplay.isReplaying()) {
+            return replayResponse(responseReplay, url, httpMethod);
+        }
+
+        COALESCED_REQUEST.remove();
+
+        // Responses are recorded per thread when a replay session is attached, so they are never shared
+        if (responseReplay != null || !"GET".equalsIgnoreCase(httpMethod) || SENDING_HEDGE.get() != null) {
+            return executeNetworkRequest(url, httpMethod, postData, requestHeaders, responseReplay);
+        }
+
+        final String requestKey = createRequestKey(url, httpMethod, postData, requestHeaders);
+        final InFlightRequest inFlightRequest = new InFlightRequest();
+        final InFlightRequest identicalRequest = IN_FLIGHT_REQUESTS.putIfAbsent(requestKey, inFlightRequest);
+        if (identicalRequest != null) {
+            return awaitCoalescedResponse(identicalRequest, url, httpMethod);
+        }
+
+        try {
+            final ExchangeHttpResponse httpResponse =
+                    executeNetworkRequest(url, httpMethod, postData, requestHeaders, null);
+            inFlightRequest.response.complete(httpResponse);
+            COALESCED_REQUEST.set(inFlightRequest);
+            return httpResponse;
+
+        } catch (TradingApiException | ExchangeNetworkException | RuntimeException e) {
+            inFlightRequest.response.completeExceptionally(e);
+            throw e;
+
+        } finally {
+            IN_FLIGHT_REQUESTS.remove(requestKey, inFlightRequest);
+        }
+    }
+
+    /**
+     * Sends a request that is safe to send more than once - a public request, or a private one that only reads account
+     * state. Requests that change state, like placing or cancelling an order, must never be sent through here: if the
+     * response is lost, the exchange may still have acted on the request.
+     * <p>
+     * If the request fails with an {@link ExchangeNetworkException}, it is retried up to the configured max-retries.
+     * The backoff before each retry is exponential with full jitter, so lanes that failed together do not retry
+     * together. A retry is only made if its backoff fits in what is left of the trade cycle's {@link CallBudget};
+     * otherwise the failure is thrown straight away.
+     * <p>
+     * If the request is hedgeable and a hedge-percentile is configured, a duplicate request is sent when the first has
+     * not come back within that percentile of the recent latencies of the API method, and whichever responds first
+     * wins. Only unsigned public requests should be hedgeable - 2 signed requests in flight at once race each
+     * other's nonce.
+     *
+     * @param apiMethod the API method being called - retries and hedges are logged, and latencies tracked, against it.
+     * @param hedgeable true if a duplicate can be sent while the first request is still in flight.
+     * @param request   sends the request. It is called again for each retry or hedge, so a signed request gets a new
+     *                  nonce each time.
+     * @return the response from the Exchange.
+     * @throws ExchangeNetworkException if the request, and all its retries, failed with a network error.
+     * @throws TradingApiException      if the request failed for any reason other than a network error.
+     */
+    ExchangeHttpResponse sendIdempotentRequest(String apiMethod, boolean hedgeable, IdempotentRequest request)
+            throws TradingApiException, ExchangeNetworkException {
+
+        int retries = 0;
+        while (true) {
+            try {
+                return hedgeable && hedgePercentile > 0 ? sendHedgedRequest(apiMethod, request) : request.send();
+
+            } catch (ExchangeNetworkException e) {
+                if (retries >= maxRetries) {
+                    throw e;
+                }
+
+                final long backoffMillis = computeRetryBackoff(retryBackoffMillis, retries);
+                if (backoffMillis >= CallBudget.getRemainingMillis()) {
+                    LOG.warn(() -> "Not retrying " + apiMethod + " - a backoff of " + backoffMillis
+                            + "ms would overrun the trade cycle.");
+                    throw e;
+                }
+
+                final int retry = ++retries;
+                LOG.warn(() -> "Retrying " + apiMethod + " in " + backoffMillis + "ms (retry " + retry + " of "
+                        + maxRetries + ") after network error: " + e.getMessage());
+                TransferMeter.recordRetry();
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Signs a request with the next nonce for its API key, and sends it.
+     * <p>
+     * The nonce is taken from the {@link NonceSource} shared by every adapter instance for the API key. It is 1 above
+     * the last nonce handed out to any of them, or the exchange time in millis if that is higher - so it is unique, and
+     * still above the last one the exchange accepted after a restart, whichever instance used it. The source's send
+     * lock is held until the request has been sent, so the requests for the API key reach the exchange in nonce
+     * order. A slow signed request holds up the others for the API key, but they would only have been rejected if they
+     * had overtaken it.
+     *
+     * @param nonceSource the nonce source for the API key the request is signed with.
+     * @param apiUrl      the exchange API URL - the nonce is kept up with the clock of its host.
+     * @param request     signs the request with the nonce it is given, and sends it.
+     * @return the response from the Exchange.
+     * @throws ExchangeNetworkException if a network error occurred trying to connect to the exchange.
+     * @throws TradingApiException      if the request failed for any reason other than a network error.
+     */
+    ExchangeHttpResponse sendSignedRequest(NonceSource nonceSource, String apiUrl, SignedRequest request)
+            throws TradingApiException, ExchangeNetworkException {
+
+        final long exchangeTimeMillis = getExchangeTimeMillis(apiUrl);
+        final Lock sendLock = nonceSource.getSendLock();
+        sendLock.lock();
+        try {
+            return request.send(nonceSource.next(exchangeTimeMillis));
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /*
+     * Sends the request to the exchange and reads the response.
+     */
+    private ExchangeHttpResponse executeNetworkRequest(URL url, String httpMethod, String postData,
+                                                       Map<String, String> requestHeaders,
+                                                       ResponseReplay responseReplay)
+            throws TradingApiException, ExchangeNetworkException {
+
+        TransferMeter.recordNetworkRequest();
+
         HttpURLConnection exchangeConnection = null;
+        final long requestStartMillis = System.currentTimeMillis();
         final StringBuilder exchangeResponse = new StringBuilder();
+        final TraceSpan networkSpan = Tracer.span(Tracer.NETWORK_IO, httpMethod + " " + url.getPath());
+        final ExchangeHttpEvent httpEvent = beginHttpEvent(url, httpMethod, postData);
+        IOException requestFailure = null;
 
         try {
 
@@ -171,6 +445,11 @@ abstract class AbstractExchangeAdapter {
             exchangeConnection.setRequestProperty("User-Agent",
                     "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/60.0.3112.78 Safari/537.36");
 
+            // Set before the adapter's headers, so an adapter can override it for an endpoint if it has to
+            if (!acceptEncoding.isEmpty()) {
+                exchangeConnection.setRequestProperty("Accept-Encoding", acceptEncoding);
+            }
+
             if (requestHeaders != null) {
                 for (final Map.Entry<String, String> requestHeader : requestHeaders.entrySet()) {
                     exchangeConnection.setRequestProperty(requestHeader.getKey(), requestHeader.getValue());
@@ -191,8 +470,13 @@ abstract class AbstractExchangeAdapter {
             }
 
             // Grab the response - we just block here as per Connection API
+            final CountingInputStream rawResponseStream = new CountingInputStream(exchangeConnection.getInputStream());
+            sampleExchangeClock(exchangeConnection, requestStartMillis);
+            final String contentEncoding = exchangeConnection.getContentEncoding();
+            final CountingInputStream decodedResponseStream = new CountingInputStream(
+                    decodeContentEncoding(rawResponseStream, contentEncoding));
             final BufferedReader responseInputStream = new BufferedReader(new InputStreamReader(
-                    exchangeConnection.getInputStream(), "UTF-8"));
+                    decodedResponseStream, "UTF-8"));
 
             // Read the JSON response lines into our response buffer
             String responseLine;
@@ -201,20 +485,36 @@ abstract class AbstractExchangeAdapter {
             }
             responseInputStream.close();
 
-            return new ExchangeHttpResponse(exchangeConnection.getResponseCode(), exchangeConnection.getResponseMessage(),
-                    exchangeResponse.toString());
+            TransferMeter.record(rawResponseStream.getCount(), decodedResponseStream.getCount());
+            if (httpEvent != null) {
+                httpEvent.statusCode = exchangeConnection.getResponseCode();
+                httpEvent.responseBytes = rawResponseStream.getCount();
+                httpEvent.decodedResponseBytes = decodedResponseStream.getCount();
+                httpEvent.contentEncoding = contentEncoding;
+            }
+
+            final ExchangeHttpResponse httpResponse = new ExchangeHttpResponse(exchangeConnection.getResponseCode(),
+                    exchangeConnection.getResponseMessage(), exchangeResponse.toString());
+            if (responseReplay != null) {
+                responseReplay.record(httpMethod, url, httpResponse.getStatusCode(), httpResponse.getReasonPhrase(),
+                        httpResponse.getPayload());
+            }
+            return httpResponse;
 
         } catch (MalformedURLException e) {
+            requestFailure = e;
             final String errorMsg = UNEXPECTED_IO_ERROR_MSG;
             LOG.error(errorMsg, e);
             throw new TradingApiException(errorMsg, e);
 
         } catch (SocketTimeoutException e) {
+            requestFailure = e;
             final String errorMsg = IO_SOCKET_TIMEOUT_ERROR_MSG;
             LOG.error(errorMsg, e);
             throw new ExchangeNetworkException(errorMsg, e);
 
         } catch (FileNotFoundException | UnknownHostException e) {
+            requestFailure = e;
             // Huobi started throwing FileNotFoundException as of 8 Nov 2015 :-/
             // EC2 started throwing UnknownHostException for BTC-e, GDAX, as of 14 July 2016 :-/
             final String errorMsg = "Failed to connect to Exchange. It's dead Jim!";
@@ -223,6 +523,8 @@ abstract class AbstractExchangeAdapter {
 
         } catch (IOException e) {
 
+            requestFailure = e;
+
             // Check if this is a non-fatal network error
             try {
 
@@ -243,9 +545,13 @@ abstract class AbstractExchangeAdapter {
 
                     // Check for any clue in the response...
                     if (exchangeConnection != null) {
+                        // a rejected timestamp or nonce is the response we most need the exchange's time from
+                        sampleExchangeClock(exchangeConnection, requestStartMillis);
                         final InputStream rawErrorStream = exchangeConnection.getErrorStream();
                         if (rawErrorStream != null) {
-                            final BufferedReader errorInputStream = new BufferedReader(new InputStreamReader(rawErrorStream, "UTF-8"));
+                            final BufferedReader errorInputStream = new BufferedReader(new InputStreamReader(
+                                    decodeContentEncoding(rawErrorStream, exchangeConnection.getContentEncoding()),
+                                    "UTF-8"));
                             final StringBuilder errorResponse = new StringBuilder();
                             String errorLine;
                             while ((errorLine = errorInputStream.readLine()) != null) {
@@ -268,6 +574,92 @@ abstract class AbstractExchangeAdapter {
             if (exchangeConnection != null) {
                 exchangeConnection.disconnect();
             }
+            if (requestFailure != null) {
+                networkSpan.failed(requestFailure);
+            }
+            networkSpan.close();
+            if (httpEvent != null) {
+                commitHttpEvent(httpEvent, requestFailure);
+            }
+        }
+    }
+
+    /*
+     * Feeds the response's Date header to the exchange host's clock.
+     */
+    private static void sampleExchangeClock(HttpURLConnection exchangeConnection, long requestSentMillis) {
+        final long responseReceivedMillis = System.currentTimeMillis();
+        final long dateMillis = exchangeConnection.getHeaderFieldDate("Date", 0);
+        if (dateMillis > 0) {
+            ExchangeClock.forHost(exchangeConnection.getURL().getHost())
+                    .recordDateHeader(dateMillis, requestSentMillis, responseReceivedMillis);
+        }
+    }
+
+    /**
+     * Returns the current time on the exchange, as estimated from the server times in its responses. Use it instead of
+     * {@link System#currentTimeMillis()} for the timestamps and nonces requests are signed with; it is the local time
+     * until the exchange has sent a response.
+     *
+     * @param apiUrl the base URL of the exchange API.
+     * @return the exchange time, in millis.
+     */
+    long getExchangeTimeMillis(String apiUrl) {
+        return getExchangeClock(apiUrl).currentTimeMillis();
+    }
+
+    /**
+     * Returns the clock for the exchange API host.
+     *
+     * @param apiUrl the base URL of the exchange API.
+     * @return the exchange clock.
+     */
+    ExchangeClock getExchangeClock(String apiUrl) {
+        return ExchangeClock.forHost(URI.create(apiUrl).getHost());
+    }
+
+    /**
+     * Unmarshals the JSON response from the exchange, recording a parse span in the current trace.
+     *
+     * @param gson    the Gson instance to use.
+     * @param json    the JSON response.
+     * @param typeOfT the type to unmarshal to - a Class, or a Type for generic types.
+     * @param <T>     the type to unmarshal to.
+     * @return the unmarshalled response.
+     * @throws com.google.gson.JsonSyntaxException if the JSON is not a valid representation of the type.
+     */
+    @SuppressWarnings("unchecked")
+    <T> T parseJson(Gson gson, String json, Type typeOfT) {
+        try (TraceSpan ignored = Tracer.span(Tracer.PARSE)) {
+            final InFlightRequest coalescedRequest = COALESCED_REQUEST.get();
+            if (coalescedRequest != null && coalescedRequest.isPayloadOf(json)) {
+                return (T) coalescedRequest.parsedPayloads.computeIfAbsent(typeOfT, type -> gson.fromJson(json, type));
+            }
+            return gson.fromJson(json, typeOfT);
+        }
+    }
+
+    /**
+     * Completes the MAC computation for signing a request, recording a sign span in the current trace.
+     *
+     * @param mac the initialised MAC with the request data already added.
+     * @return the MAC result.
+     */
+    byte[] computeSignature(Mac mac) {
+        try (TraceSpan ignored = Tracer.span(Tracer.SIGN)) {
+            return mac.doFinal();
+        }
+    }
+
+    /**
+     * Completes the digest computation for signing a request, recording a sign span in the current trace.
+     *
+     * @param messageDigest the message digest with the request data already added.
+     * @return the digest result.
+     */
+    byte[] computeSignature(MessageDigest messageDigest) {
+        try (TraceSpan ignored = Tracer.span(Tracer.SIGN)) {
+            return messageDigest.digest();
         }
     }
 
@@ -305,6 +697,45 @@ abstract class AbstractExchangeAdapter {
             nonFatalNetworkErrorMessages.addAll(nonFatalErrorMessagesFromConfig);
         }
         LOG.info(() -> NON_FATAL_ERROR_MESSAGES_PROPERTY_NAME + ": " + nonFatalNetworkErrorMessages);
+
+        final String acceptEncodingFromConfig = networkConfig.getAcceptEncoding();
+        if (acceptEncodingFromConfig != null) {
+            acceptEncoding = acceptEncodingFromConfig.trim();
+        }
+        LOG.info(() -> ACCEPT_ENCODING_PROPERTY_NAME + ": " + acceptEncoding);
+
+        final Integer maxRetriesFromConfig = networkConfig.getMaxRetries();
+        if (maxRetriesFromConfig != null) {
+            if (maxRetriesFromConfig < 0) {
+                final String errorMsg = MAX_RETRIES_PROPERTY_NAME + " cannot be negative." + exchangeConfig;
+                LOG.error(errorMsg);
+                throw new IllegalArgumentException(errorMsg);
+            }
+            maxRetries = maxRetriesFromConfig;
+        }
+        LOG.info(() -> MAX_RETRIES_PROPERTY_NAME + ": " + maxRetries);
+
+        final Integer retryBackoffMillisFromConfig = networkConfig.getRetryBackoffMillis();
+        if (retryBackoffMillisFromConfig != null) {
+            if (retryBackoffMillisFromConfig < 1) {
+                final String errorMsg = RETRY_BACKOFF_MILLIS_PROPERTY_NAME + " must be at least 1." + exchangeConfig;
+                LOG.error(errorMsg);
+                throw new IllegalArgumentException(errorMsg);
+            }
+            retryBackoffMillis = retryBackoffMillisFromConfig;
+        }
+        LOG.info(() -> RETRY_BACKOFF_MILLIS_PROPERTY_NAME + ": " + retryBackoffMillis);
+
+        final Integer hedgePercentileFromConfig = networkConfig.getHedgePercentile();
+        if (hedgePercentileFromConfig != null) {
+            if (hedgePercentileFromConfig < 0 || hedgePercentileFromConfig > 99) {
+                final String errorMsg = HEDGE_PERCENTILE_PROPERTY_NAME + " must be between 0 and 99." + exchangeConfig;
+                LOG.error(errorMsg);
+                throw new IllegalArgumentException(errorMsg);
+            }
+            hedgePercentile = hedgePercentileFromConfig;
+        }
+        LOG.info(() -> HEDGE_PERCENTILE_PROPERTY_NAME + ": " + hedgePercentile);
     }
 
     /**
@@ -444,10 +875,410 @@ abstract class AbstractExchangeAdapter {
         }
     }
 
+    /**
+     * An identical GET request in flight. The callers that coalesce into it wait on its response, and share its
+     * parsed payload - parsed once per type.
+     */
+    private static final class InFlightRequest {
+
+        private final CompletableFuture<ExchangeHttpResponse> response = new CompletableFuture<>();
+        private final ConcurrentMap<Type, Object> parsedPayloads = new ConcurrentHashMap<>();
+
+        /*
+         * Identity check - the adapters parse the payload they were handed, so only that exact String is shared.
+         */
+        private boolean isPayloadOf(String json) {
+            final ExchangeHttpResponse httpResponse = response.getNow(null);
+            return httpResponse != null && httpResponse.getPayload() == json;
+        }
+    }
+
+    /**
+     * A request that can safely be sent more than once - see
+     * {@link #sendIdempotentRequest(String, boolean, IdempotentRequest)}.
+     */
+    @FunctionalInterface
+    interface IdempotentRequest {
+
+        /**
+         * Sends the request. A signed request must be signed afresh each time this is called.
+         *
+         * @return the response from the Exchange.
+         * @throws ExchangeNetworkException if a network error occurred trying to connect to the exchange.
+         * @throws TradingApiException      if the request failed for any reason other than a network error.
+         */
+        ExchangeHttpResponse send() throws TradingApiException, ExchangeNetworkException;
+    }
+
+    /**
+     * A request signed with a nonce - see {@link #sendSignedRequest(NonceSource, String, SignedRequest)}.
+     */
+    @FunctionalInterface
+    interface SignedRequest {
+
+        /**
+         * Signs the request with the given nonce, and sends it.
+         *
+         * @param nonce the nonce to sign the request with.
+         * @return the response from the Exchange.
+         * @throws ExchangeNetworkException if a network error occurred trying to connect to the exchange.
+         * @throws TradingApiException      if the request failed for any reason other than a network error.
+         */
+        ExchangeHttpResponse send(long nonce) throws TradingApiException, ExchangeNetworkException;
+    }
+
+    /**
+     * The most recent latencies of an API method, in a ring buffer.
+     */
+    private static final class LatencyWindow {
+
+        private final long[] latencies = new long[HEDGE_LATENCY_WINDOW_SIZE];
+        private int count;
+        private int next;
+
+        private synchronized void record(long latencyInNanos) {
+            latencies[next] = latencyInNanos;
+            next = (next + 1) % latencies.length;
+            if (count < latencies.length) {
+                count++;
+            }
+        }
+
+        /*
+         * Returns -1 if fewer than MIN_HEDGE_LATENCY_SAMPLES latencies have been recorded.
+         */
+        private synchronized long getPercentile(int percentile) {
+            if (count < MIN_HEDGE_LATENCY_SAMPLES) {
+                return -1;
+            }
+            // Until the window is full, the latencies are all at the start of it
+            final long[] sortedLatencies = Arrays.copyOf(latencies, count);
+            Arrays.sort(sortedLatencies);
+            final int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+            return sortedLatencies[Math.max(0, index)];
+        }
+    }
+
+    /**
+     * The outcome of one of the attempts of a hedged request, and what it transferred - the attempts run on the hedge
+     * threads, so their {@link TransferMeter} counts are handed back to the caller's thread.
+     */
+    private static final class HedgeAttempt {
+
+        private final ExchangeHttpResponse response;
+        private final Exception failure;
+        private final long latencyInNanos;
+        private final long networkRequests;
+        private final long coalescedRequests;
+        private final long wireBytes;
+        private final long decodedBytes;
+
+        /*
+         * Must be created on the thread that sent the attempt.
+         */
+        private HedgeAttempt(ExchangeHttpResponse response, Exception failure, long latencyInNanos) {
+            this.response = response;
+            this.failure = failure;
+            this.latencyInNanos = latencyInNanos;
+            this.networkRequests = TransferMeter.getNetworkRequests();
+            this.coalescedRequests = TransferMeter.getCoalescedRequests();
+            this.wireBytes = TransferMeter.getWireBytes();
+            this.decodedBytes = TransferMeter.getDecodedBytes();
+        }
+    }
+
     // ------------------------------------------------------------------------------------------------
     //  Util methods
     // ------------------------------------------------------------------------------------------------
 
+    /*
+     * Returns the backoff before the given retry (0 for the first): a random time up to the base backoff doubled for
+     * each retry already made, capped at MAX_RETRY_BACKOFF_MILLIS. Full jitter - see the AWS Architecture Blog post
+     * "Exponential Backoff And Jitter".
+     */
+    static long computeRetryBackoff(int retryBackoffMillis, int retriesMade) {
+        final long backoffCeiling = Math.min(MAX_RETRY_BACKOFF_MILLIS,
+                (long) retryBackoffMillis << Math.min(retriesMade, 20));
+        return 1 + ThreadLocalRandom.current().nextLong(backoffCeiling);
+    }
+
+    /*
+     * Sends the request on a hedge thread and, if it has not responded by the hedge-percentile latency of the API
+     * method, sends a duplicate. The first successful response wins; the losing attempt is left to finish, and its
+     * response is dropped. Until enough latencies have been recorded, or if a replay session is attached, the request
+     * is just sent on the caller's thread.
+     */
+    private ExchangeHttpResponse sendHedgedRequest(String apiMethod, IdempotentRequest request)
+            throws TradingApiException, ExchangeNetworkException {
+
+        final LatencyWindow latencyWindow = hedgeLatencies.computeIfAbsent(apiMethod, method -> new LatencyWindow());
+        final long hedgeDelayInNanos = latencyWindow.getPercentile(hedgePercentile);
+        if (hedgeDelayInNanos < 0 || ResponseReplay.current() != null) {
+            final long startTime = System.nanoTime();
+            final ExchangeHttpResponse httpResponse = request.send();
+            latencyWindow.record(System.nanoTime() - startTime);
+            return httpResponse;
+        }
+
+        final TraceTimeline timeline = Tracer.currentTimeline();
+        final CompletionService<HedgeAttempt> attempts = new ExecutorCompletionService<>(HEDGE_EXECUTOR);
+        final List<Future<HedgeAttempt>> attemptsSent = new ArrayList<>(2);
+        attemptsSent.add(attempts.submit(() -> sendHedgeAttempt(request, timeline, false)));
+        try {
+            Future<HedgeAttempt> completedAttempt = attempts.poll(hedgeDelayInNanos, TimeUnit.NANOSECONDS);
+            if (completedAttempt == null) {
+                LOG.debug(() -> "Hedging " + apiMethod + " - no response after "
+                        + TimeUnit.NANOSECONDS.toMillis(hedgeDelayInNanos) + "ms");
+                TransferMeter.recordHedgedRequest();
+                attemptsSent.add(attempts.submit(() -> sendHedgeAttempt(request, timeline, true)));
+            }
+
+            Exception failure = null;
+            for (int attemptsPending = attemptsSent.size(); attemptsPending > 0; attemptsPending--) {
+                final HedgeAttempt attempt = (completedAttempt != null ? completedAttempt : attempts.take()).get();
+                completedAttempt = null;
+                TransferMeter.add(attempt.networkRequests, attempt.coalescedRequests, attempt.wireBytes,
+                        attempt.decodedBytes);
+                if (attempt.failure == null) {
+                    latencyWindow.record(attempt.latencyInNanos);
+                    return attempt.response;
+                }
+                failure = attempt.failure;
+            }
+            throw rethrowHedgeFailure(failure);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExchangeNetworkException("Interrupted waiting for response to " + apiMethod, e);
+
+        } catch (ExecutionException e) {
+            // sendHedgeAttempt hands back its failures, so only an Error gets here
+            throw new IllegalStateException("Hedged request failed: " + apiMethod, e.getCause());
+
+        } finally {
+            attemptsSent.forEach(attempt -> attempt.cancel(false));
+        }
+    }
+
+    /*
+     * Runs on a hedge thread. The caller's trace timeline is attached, so the attempt's spans show up in the cycle.
+     */
+    private static HedgeAttempt sendHedgeAttempt(IdempotentRequest request, TraceTimeline timeline, boolean hedge) {
+
+        Tracer.attach(timeline);
+        if (hedge) {
+            SENDING_HEDGE.set(Boolean.TRUE);
+        }
+        TransferMeter.reset();
+        final long startTime = System.nanoTime();
+        try {
+            return new HedgeAttempt(request.send(), null, System.nanoTime() - startTime);
+        } catch (TradingApiException | ExchangeNetworkException | RuntimeException e) {
+            return new HedgeAttempt(null, e, System.nanoTime() - startTime);
+        } finally {
+            SENDING_HEDGE.remove();
+            Tracer.detach();
+        }
+    }
+
+    /*
+     * Re-throws the failure of a hedged request as a new exception of the same type, so the stack trace shows the
+     * caller too.
+     */
+    private static ExchangeNetworkException rethrowHedgeFailure(Exception failure) throws TradingApiException {
+        if (failure instanceof TradingApiException) {
+            throw new TradingApiException(failure.getMessage(), failure);
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        return new ExchangeNetworkException(failure.getMessage(), failure);
+    }
+
+    /*
+     * Waits for an identical request already in flight on another thread. Its response is returned as is; any failure
+     * is re-thrown as a new exception of the same type, so the stack trace shows this caller too.
+     */
+    private ExchangeHttpResponse awaitCoalescedResponse(InFlightRequest identicalRequest, URL url, String httpMethod)
+            throws TradingApiException, ExchangeNetworkException {
+
+        LOG.debug(() -> "Coalescing API call into identical request in flight: " + httpMethod + " " + url);
+        TransferMeter.recordCoalescedRequest();
+
+        final TraceSpan networkSpan = Tracer.span(Tracer.NETWORK_IO, httpMethod + " " + url.getPath() + " (coalesced)");
+        try {
+            // The request in flight times out on connect and read, so it can take up to twice the timeout
+            final ExchangeHttpResponse httpResponse =
+                    identicalRequest.response.get(connectionTimeout * 2L, TimeUnit.SECONDS);
+            COALESCED_REQUEST.set(identicalRequest);
+            return httpResponse;
+
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            networkSpan.failed(cause);
+            if (cause instanceof ExchangeNetworkException) {
+                throw new ExchangeNetworkException(cause.getMessage(), cause);
+            } else if (cause instanceof TradingApiException) {
+                throw new TradingApiException(cause.getMessage(), cause);
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+
+        } catch (TimeoutException e) {
+            networkSpan.failed(e);
+            LOG.error(IO_SOCKET_TIMEOUT_ERROR_MSG, e);
+            throw new ExchangeNetworkException(IO_SOCKET_TIMEOUT_ERROR_MSG, e);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            networkSpan.failed(e);
+            throw new ExchangeNetworkException("Interrupted waiting for coalesced request: " + url.getPath(), e);
+
+        } finally {
+            networkSpan.close();
+        }
+    }
+
+    private static String createRequestKey(URL url, String httpMethod, String postData,
+                                           Map<String, String> requestHeaders) {
+        final StringBuilder requestKey = new StringBuilder(httpMethod.toUpperCase(Locale.ROOT))
+                .append(' ').append(url.toExternalForm());
+        if (postData != null) {
+            requestKey.append('\n').append(postData);
+        }
+        if (requestHeaders != null) {
+            requestKey.append('\n').append(new TreeMap<>(requestHeaders));
+        }
+        return requestKey.toString();
+    }
+
+    /*
+     * Returns null if the JVM does not support JFR events.
+     */
+    private ExchangeHttpEvent beginHttpEvent(URL url, String httpMethod, String postData) {
+        if (!FlightRecorderSupport.isAvailable()) {
+            return null;
+        }
+        final ExchangeHttpEvent httpEvent = new ExchangeHttpEvent();
+        if (!httpEvent.isEnabled()) {
+            return null;
+        }
+        httpEvent.begin();
+        httpEvent.adapter = getClass().getSimpleName();
+        httpEvent.marketId = FlightRecorderSupport.getCurrentMarketId();
+        httpEvent.method = httpMethod;
+        httpEvent.path = url.getPath();
+        httpEvent.statusCode = -1;
+        if (postData != null) {
+            httpEvent.requestBytes = postData.getBytes(StandardCharsets.UTF_8).length;
+        }
+        return httpEvent;
+    }
+
+    private static void commitHttpEvent(ExchangeHttpEvent httpEvent, IOException requestFailure) {
+        httpEvent.end();
+        if (httpEvent.shouldCommit()) {
+            if (requestFailure != null) {
+                httpEvent.error = requestFailure.getClass().getSimpleName();
+            }
+            httpEvent.commit();
+        }
+    }
+
+    private static ExchangeHttpResponse replayResponse(ResponseReplay responseReplay, URL url, String httpMethod)
+            throws ExchangeNetworkException {
+        final ResponseReplay.RecordedResponse recordedResponse = responseReplay.replay(httpMethod, url);
+        if (recordedResponse == null) {
+            throw new ExchangeNetworkException("No recorded response to replay for: " + httpMethod + " " + url.getPath());
+        }
+        return new ExchangeHttpResponse(recordedResponse.getStatusCode(), recordedResponse.getReasonPhrase(),
+                recordedResponse.getPayload());
+    }
+
+    /*
+     * Wraps the response stream in a decoder for each coding in the Content-Encoding header. The codings are listed in
+     * the order they were applied, so they are undone in reverse. Nothing is buffered up front - the response is
+     * decompressed as it is read.
+     */
+    static InputStream decodeContentEncoding(InputStream responseStream, String contentEncoding) throws IOException {
+
+        if (contentEncoding == null || contentEncoding.trim().isEmpty()) {
+            return responseStream;
+        }
+
+        final String[] codings = contentEncoding.split(",");
+        InputStream decodedStream = responseStream;
+        for (int i = codings.length - 1; i >= 0; i--) {
+            final String coding = codings[i].trim().toLowerCase(Locale.ROOT);
+            switch (coding) {
+                case "identity":
+                case "":
+                    break;
+                case "gzip":
+                case "x-gzip":
+                    decodedStream = new GZIPInputStream(decodedStream, DECODE_BUFFER_SIZE);
+                    break;
+                case "deflate":
+                    decodedStream = inflate(decodedStream);
+                    break;
+                case "br":
+                    decodedStream = brotliDecode(decodedStream);
+                    break;
+                default:
+                    throw new IOException("Unsupported Content-Encoding from Exchange: " + contentEncoding);
+            }
+        }
+        return decodedStream;
+    }
+
+    /*
+     * 'deflate' should be zlib wrapped, but some servers send raw deflate data - peek at the header to tell them apart.
+     */
+    private static InputStream inflate(InputStream responseStream) throws IOException {
+        final PushbackInputStream peekableStream = new PushbackInputStream(responseStream, 2);
+        final int firstByte = peekableStream.read();
+        final int secondByte = firstByte == -1 ? -1 : peekableStream.read();
+        if (secondByte != -1) {
+            peekableStream.unread(secondByte);
+        }
+        if (firstByte != -1) {
+            peekableStream.unread(firstByte);
+        }
+        final boolean zlibWrapped = secondByte != -1
+                && (firstByte & 0x0F) == 8
+                && ((firstByte << 8) | secondByte) % 31 == 0;
+        final Inflater inflater = new Inflater(!zlibWrapped);
+        return new InflaterInputStream(peekableStream, inflater, DECODE_BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end(); // only the default Inflater is ended by InflaterInputStream
+                }
+            }
+        };
+    }
+
+    private static InputStream brotliDecode(InputStream responseStream) throws IOException {
+        try {
+            return (InputStream) Class.forName(BROTLI_INPUT_STREAM_CLASS)
+                    .getConstructor(InputStream.class)
+                    .newInstance(responseStream);
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Exchange sent a Brotli encoded response but no Brotli decoder is available", e);
+        }
+    }
+
+    private static boolean isBrotliAvailable() {
+        try {
+            Class.forName(BROTLI_INPUT_STREAM_CLASS);
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
     private static String assertItemExists(String itemName, String itemValue) {
         if (itemValue == null || itemValue.length() == 0) {
             final String errorMsg = itemName + CONFIG_IS_NULL_OR_ZERO_LENGTH + EXCHANGE_CONFIG_FILE + " ?";
@@ -26,6 +26,8 @@ package com.gazbert.bxbot.exchanges;
 import com.gazbert.bxbot.exchange.api.AuthenticationConfig;
 import com.gazbert.bxbot.exchange.api.ExchangeAdapter;
 import com.gazbert.bxbot.exchange.api.ExchangeConfig;
+import com.gazbert.bxbot.exchange.api.NonceCheckpointable;
+import com.gazbert.bxbot.exchange.api.NonceSource;
 import com.gazbert.bxbot.trading.api.*;
 import com.google.common.base.MoreObjects;
 import com.google.gson.Gson;
@@ -83,7 +85,8 @@ import java.util.*;
  * @author gazbert
  * @since 1.0
  */
-public final class BitfinexExchangeAdapter extends AbstractExchangeAdapter implements ExchangeAdapter {
+public final class BitfinexExchangeAdapter extends AbstractExchangeAdapter implements ExchangeAdapter,
+        NonceCheckpointable {
 
     private static final Logger LOG = LogManager.getLogger();
 
@@ -123,9 +126,10 @@ public final class BitfinexExchangeAdapter extends AbstractExchangeAdapter imple
     private static final String SECRET_PROPERTY_NAME = "secret";
 
     /**
-     * Nonce used for sending authenticated messages to the exchange.
+     * Source of the nonces used for sending authenticated messages to the exchange - shared with every other adapter
+     * instance for the same API key.
      */
-    private long nonce = 0;
+    private NonceSource nonceSource;
 
     /**
      * Used to indicate if we have initialised the MAC authentication protocol.
@@ -161,11 +165,23 @@ public final class BitfinexExchangeAdapter extends AbstractExchangeAdapter imple
         setAuthenticationConfig(config);
         setNetworkConfig(config);
 
-        nonce = System.currentTimeMillis() / 1000; // set the initial nonce used in the secure messaging.
+        // set the initial nonce used in the secure messaging - the exchange time in millis.
+        nonceSource = NonceSource.forCredential(BitfinexExchangeAdapter.class.getName(), key);
+        nonceSource.advanceTo(getExchangeTimeMillis(AUTHENTICATED_API_URL));
         initSecureMessageLayer();
         initGson();
     }
 
+    @Override
+    public long getNonce() {
+        return nonceSource == null ? 0 : nonceSource.getLastNonce();
+    }
+
+    @Override
+    public void restoreNonce(long nonce) {
+        nonceSource.advanceTo(nonce);
+    }
+
     // ------------------------------------------------------------------------------------------------
     // Bitfinex API Calls adapted to the Trading API.
     // See https://www.bitfinex.com/pages/api
@@ -178,7 +194,7 @@ public final class BitfinexExchangeAdapter extends AbstractExchangeAdapter imple
             final ExchangeHttpResponse response = sendPublicRequestToExchange("book/" + marketId);
             LOG.debug(() -> "Market Orders response: " + response);
 
-            final BitfinexOrderBook orderBook = gson.fromJson(response.getPayload(), BitfinexOrderBook.class);
+            final BitfinexOrderBook orderBook = parseJson(gson, response.getPayload(), BitfinexOrderBook.class);
 
             final List<MarketOrder> buyOrders = new ArrayList<>();
             for (BitfinexMarketOrder bitfinexBuyOrder : orderBook.bids) {
@@ -214,10 +230,11 @@ public final class BitfinexExchangeAdapter extends AbstractExchangeAdapter imple
     public List<OpenOrder> getYourOpenOrders(String marketId) throws TradingApiException, ExchangeNetworkException {
 
         try {
-            final ExchangeHttpResponse response = sendAuthenticatedRequestToExchange("orders", null);
+            final ExchangeHttpResponse response = sendIdempotentRequest("orders", false,
+                    () -> sendAuthenticatedRequestToExchange("orders", null));
             LOG.debug(() -> "Open Orders response: " + response);
 
-            final BitfinexOpenOrders bitfinexOpenOrders = gson.fromJson(response.getPayload(), BitfinexOpenOrders.class);
+            final BitfinexOpenOrders bitfinexOpenOrders = parseJson(gson, response.getPayload(), BitfinexOpenOrders.class);
 
             final List<OpenOrder> ordersToReturn = new ArrayList<>();
             for (final BitfinexOpenOrder bitfinexOpenOrder : bitfinexOpenOrders) {
@@ -306,7 +323,7 @@ public final class BitfinexExchangeAdapter extends AbstractExchangeAdapter imple
             final ExchangeHttpResponse response = sendAuthenticatedRequestToExchange("order/new", params);
             LOG.debug(() -> "Create Order response: " + response);
 
-            final BitfinexNewOrderResponse createOrderResponse = gson.fromJson(response.getPayload(), BitfinexNewOrderResponse.class);
+            final BitfinexNewOrderResponse createOrderResponse = parseJson(gson, response.getPayload(), BitfinexNewOrderResponse.class);
             final long id = createOrderResponse.order_id;
             if (id == 0) {
                 final String errorMsg = "Failed to place order on exchange. Error response: " + response;
@@ -338,7 +355,7 @@ public final class BitfinexExchangeAdapter extends AbstractExchangeAdapter imple
             LOG.debug(() -> "Cancel Order response: " + response);
 
             // Exchange returns order id and other details if successful, a 400 HTTP Status if the order id was not recognised.
-            gson.fromJson(response.getPayload(), BitfinexCancelOrderResponse.class);
+            parseJson(gson, response.getPayload(), BitfinexCancelOrderResponse.class);
             return true;
 
         } catch (ExchangeNetworkException | TradingApiException e) {
@@ -362,7 +379,7 @@ public final class BitfinexExchangeAdapter extends AbstractExchangeAdapter imple
             final ExchangeHttpResponse response = sendPublicRequestToExchange("pubticker/" + marketId);
             LOG.debug(() -> "Latest Market Price response: " + response);
 
-            final BitfinexTicker ticker = gson.fromJson(response.getPayload(), BitfinexTicker.class);
+            final BitfinexTicker ticker = parseJson(gson, response.getPayload(), BitfinexTicker.class);
             return ticker.last_price;
 
         } catch (ExchangeNetworkException | TradingApiException e) {
@@ -377,10 +394,11 @@ public final class BitfinexExchangeAdapter extends AbstractExchangeAdapter imple
     public BalanceInfo getBalanceInfo() throws TradingApiException, ExchangeNetworkException {
 
         try {
-            final ExchangeHttpResponse response = sendAuthenticatedRequestToExchange("balances", null);
+            final ExchangeHttpResponse response = sendIdempotentRequest("balances", false,
+                    () -> sendAuthenticatedRequestToExchange("balances", null));
             LOG.debug(() -> "Balance Info response: " + response);
 
-            final BitfinexBalances allAccountBalances = gson.fromJson(response.getPayload(), BitfinexBalances.class);
+            final BitfinexBalances allAccountBalances = parseJson(gson, response.getPayload(), BitfinexBalances.class);
             final HashMap<String, BigDecimal> balancesAvailable = new HashMap<>();
 
             /*
@@ -416,11 +434,12 @@ public final class BitfinexExchangeAdapter extends AbstractExchangeAdapter imple
             ExchangeNetworkException {
 
         try {
-            final ExchangeHttpResponse response = sendAuthenticatedRequestToExchange("account_infos", null);
+            final ExchangeHttpResponse response = sendIdempotentRequest("account_infos", false,
+                    () -> sendAuthenticatedRequestToExchange("account_infos", null));
             LOG.debug(() -> "Buy Fee response: " + response);
 
             // Nightmare to adapt! Just take the top-level taker fees.
-            final BitfinexAccountInfos bitfinexAccountInfos = gson.fromJson(response.getPayload(), BitfinexAccountInfos.class);
+            final BitfinexAccountInfos bitfinexAccountInfos = parseJson(gson, response.getPayload(), BitfinexAccountInfos.class);
             final BigDecimal fee = bitfinexAccountInfos.get(0).taker_fees;
 
             // adapt the % into BigDecimal format
@@ -439,11 +458,12 @@ public final class BitfinexExchangeAdapter extends AbstractExchangeAdapter imple
             ExchangeNetworkException {
 
         try {
-            final ExchangeHttpResponse response = sendAuthenticatedRequestToExchange("account_infos", null);
+            final ExchangeHttpResponse response = sendIdempotentRequest("account_infos", false,
+                    () -> sendAuthenticatedRequestToExchange("account_infos", null));
             LOG.debug(() -> "Sell Fee response: " + response);
 
             // Nightmare to adapt! Just take the top-level taker fees.
-            final BitfinexAccountInfos bitfinexAccountInfos = gson.fromJson(response.getPayload(), BitfinexAccountInfos.class);
+            final BitfinexAccountInfos bitfinexAccountInfos = parseJson(gson, response.getPayload(), BitfinexAccountInfos.class);
             final BigDecimal fee = bitfinexAccountInfos.get(0).taker_fees;
 
             // adapt the % into BigDecimal format
@@ -830,7 +850,7 @@ public final class BitfinexExchangeAdapter extends AbstractExchangeAdapter imple
         try {
 
             final URL url = new URL(PUBLIC_API_BASE_URL + apiMethod);
-            return sendNetworkRequest(url, "GET", null, requestHeaders);
+            return sendIdempotentRequest(apiMethod, true, () -> sendNetworkRequest(url, "GET", null, requestHeaders));
 
         } catch (MalformedURLException e) {
             final String errorMsg = UNEXPECTED_IO_ERROR_MSG;
@@ -885,6 +905,16 @@ public final class BitfinexExchangeAdapter extends AbstractExchangeAdapter imple
             throw new IllegalStateException(errorMsg);
         }
 
+        return sendSignedRequest(nonceSource, AUTHENTICATED_API_URL,
+                nonce -> signAndSendRequestToExchange(apiMethod, params, nonce));
+    }
+
+    /*
+     * Signs the request with the given nonce and sends it - called with the nonce source's send lock held.
+     */
+    private ExchangeHttpResponse signAndSendRequestToExchange(String apiMethod, Map<String, Object> params, long nonce)
+            throws ExchangeNetworkException, TradingApiException {
+
         try {
 
             if (params == null) {
@@ -894,7 +924,6 @@ public final class BitfinexExchangeAdapter extends AbstractExchangeAdapter imple
 
             // nonce is required by Bitfinex in every request
             params.put("nonce", Long.toString(nonce));
-            nonce++; // increment ready for next call.
 
             // must include the method in request param too
             params.put("request", "/" + BITFINEX_API_VERSION + "/" + apiMethod);
@@ -921,7 +950,7 @@ public final class BitfinexExchangeAdapter extends AbstractExchangeAdapter imple
              * signature = HMAC-SHA384(payload, api-secret) as hexadecimal - MUST be in LOWERCASE else signature fails.
              * See: http://bitcoin.stackexchange.com/questions/25835/bitfinex-api-call-returns-400-bad-request
              */
-            final String signature = toHex(mac.doFinal()).toLowerCase();
+            final String signature = toHex(computeSignature(mac)).toLowerCase();
             requestHeaders.put("X-BFX-SIGNATURE", signature);
 
             // payload is JSON for this exchange
@@ -26,6 +26,8 @@ package com.gazbert.bxbot.exchanges;
 import com.gazbert.bxbot.exchange.api.AuthenticationConfig;
 import com.gazbert.bxbot.exchange.api.ExchangeAdapter;
 import com.gazbert.bxbot.exchange.api.ExchangeConfig;
+import com.gazbert.bxbot.exchange.api.NonceCheckpointable;
+import com.gazbert.bxbot.exchange.api.NonceSource;
 import com.gazbert.bxbot.trading.api.*;
 import com.google.common.base.MoreObjects;
 import com.google.gson.*;
@@ -87,7 +89,8 @@ import java.util.*;
  * @author gazbert
  * @since 1.0
  */
-public final class BitstampExchangeAdapter extends AbstractExchangeAdapter implements ExchangeAdapter {
+public final class BitstampExchangeAdapter extends AbstractExchangeAdapter implements ExchangeAdapter,
+        NonceCheckpointable {
 
     private static final Logger LOG = LogManager.getLogger();
 
@@ -122,9 +125,10 @@ public final class BitstampExchangeAdapter extends AbstractExchangeAdapter imple
     private static final String SECRET_PROPERTY_NAME = "secret";
 
     /**
-     * Nonce used for sending authenticated messages to the exchange.
+     * Source of the nonces used for sending authenticated messages to the exchange - shared with every other adapter
+     * instance for the same API key.
      */
-    private long nonce = 0;
+    private NonceSource nonceSource;
 
     /**
      * Used to indicate if we have initialised the MAC authentication protocol.
@@ -165,11 +169,23 @@ public final class BitstampExchangeAdapter extends AbstractExchangeAdapter imple
         setAuthenticationConfig(config);
         setNetworkConfig(config);
 
-        nonce = System.currentTimeMillis() / 1000; // set the initial nonce used in the secure messaging.
+        // set the initial nonce used in the secure messaging - the exchange time in millis.
+        nonceSource = NonceSource.forCredential(BitstampExchangeAdapter.class.getName(), key);
+        nonceSource.advanceTo(getExchangeTimeMillis(API_BASE_URL));
         initSecureMessageLayer();
         initGson();
     }
 
+    @Override
+    public long getNonce() {
+        return nonceSource == null ? 0 : nonceSource.getLastNonce();
+    }
+
+    @Override
+    public void restoreNonce(long nonce) {
+        nonceSource.advanceTo(nonce);
+    }
+
     // ------------------------------------------------------------------------------------------------
     // Bitstamp API Calls adapted to the Trading API.
     // See https://www.bitstamp.net/api/
@@ -182,7 +198,7 @@ public final class BitstampExchangeAdapter extends AbstractExchangeAdapter imple
             final ExchangeHttpResponse response = sendPublicRequestToExchange("order_book/" + marketId);
             LOG.debug(() -> "Market Orders response: " + response);
 
-            final BitstampOrderBook bitstampOrderBook = gson.fromJson(response.getPayload(), BitstampOrderBook.class);
+            final BitstampOrderBook bitstampOrderBook = parseJson(gson, response.getPayload(), BitstampOrderBook.class);
 
             final List<MarketOrder> buyOrders = new ArrayList<>();
             final List<List<BigDecimal>> bitstampBuyOrders = bitstampOrderBook.bids;
@@ -220,10 +236,11 @@ public final class BitstampExchangeAdapter extends AbstractExchangeAdapter imple
     public List<OpenOrder> getYourOpenOrders(String marketId) throws TradingApiException, ExchangeNetworkException {
 
         try {
-            final ExchangeHttpResponse response = sendAuthenticatedRequestToExchange("open_orders/" + marketId, null);
+            final ExchangeHttpResponse response = sendIdempotentRequest("open_orders", false,
+                    () -> sendAuthenticatedRequestToExchange("open_orders/" + marketId, null));
             LOG.debug(() -> "Open Orders response: " + response);
 
-            final BitstampOrderResponse[] myOpenOrders = gson.fromJson(response.getPayload(), BitstampOrderResponse[].class);
+            final BitstampOrderResponse[] myOpenOrders = parseJson(gson, response.getPayload(), BitstampOrderResponse[].class);
 
             // No need to filter on marketId; exchange does this for us.
             final List<OpenOrder> ordersToReturn = new ArrayList<>();
@@ -292,7 +309,7 @@ public final class BitstampExchangeAdapter extends AbstractExchangeAdapter imple
 
             LOG.debug(() -> "Create Order response: " + response);
 
-            final BitstampOrderResponse createOrderResponse = gson.fromJson(response.getPayload(), BitstampOrderResponse.class);
+            final BitstampOrderResponse createOrderResponse = parseJson(gson, response.getPayload(), BitstampOrderResponse.class);
             final long id = createOrderResponse.id;
             if (id == 0) {
                 final String errorMsg = "Failed to place order on exchange. Error response: " + response;
@@ -323,7 +340,7 @@ public final class BitstampExchangeAdapter extends AbstractExchangeAdapter imple
             final ExchangeHttpResponse response = sendAuthenticatedRequestToExchange("cancel_order", params);
             LOG.debug(() -> "Cancel Order response: " + response);
 
-            final BitstampCancelOrderResponse cancelOrderResponse = gson.fromJson(response.getPayload(), BitstampCancelOrderResponse.class);
+            final BitstampCancelOrderResponse cancelOrderResponse = parseJson(gson, response.getPayload(), BitstampCancelOrderResponse.class);
             if (!orderId.equals(String.valueOf(cancelOrderResponse.id))) {
                 final String errorMsg = "Failed to cancel order on exchange. Error response: " + response;
                 LOG.error(errorMsg);
@@ -347,7 +364,7 @@ public final class BitstampExchangeAdapter extends AbstractExchangeAdapter imple
             final ExchangeHttpResponse response = sendPublicRequestToExchange("ticker/" + marketId);
             LOG.debug(() -> "Latest Market Price response: " + response);
 
-            final BitstampTicker bitstampTicker = gson.fromJson(response.getPayload(), BitstampTicker.class);
+            final BitstampTicker bitstampTicker = parseJson(gson, response.getPayload(), BitstampTicker.class);
             return bitstampTicker.last;
 
         } catch (ExchangeNetworkException | TradingApiException e) {
@@ -362,10 +379,11 @@ public final class BitstampExchangeAdapter extends AbstractExchangeAdapter imple
     public BalanceInfo getBalanceInfo() throws TradingApiException, ExchangeNetworkException {
 
         try {
-            final ExchangeHttpResponse response = sendAuthenticatedRequestToExchange("balance", null);
+            final ExchangeHttpResponse response = sendIdempotentRequest("balance", false,
+                    () -> sendAuthenticatedRequestToExchange("balance", null));
             LOG.debug(() -> "Balance Info response: " + response);
 
-            final BitstampBalance balances = gson.fromJson(response.getPayload(), BitstampBalance.class);
+            final BitstampBalance balances = parseJson(gson, response.getPayload(), BitstampBalance.class);
 
             final Map<String, BigDecimal> balancesAvailable = new HashMap<>();
             balancesAvailable.put("BTC", balances.btc_available);
@@ -396,10 +414,11 @@ public final class BitstampExchangeAdapter extends AbstractExchangeAdapter imple
             ExchangeNetworkException {
 
         try {
-            final ExchangeHttpResponse response = sendAuthenticatedRequestToExchange("balance", null);
+            final ExchangeHttpResponse response = sendIdempotentRequest("balance", false,
+                    () -> sendAuthenticatedRequestToExchange("balance", null));
             LOG.debug(() -> "Buy Fee response: " + response);
 
-            final BitstampBalance balances = gson.fromJson(response.getPayload(), BitstampBalance.class);
+            final BitstampBalance balances = parseJson(gson, response.getPayload(), BitstampBalance.class);
 
             // Ouch!
             final Class<?> clazz = balances.getClass();
@@ -430,10 +449,11 @@ public final class BitstampExchangeAdapter extends AbstractExchangeAdapter imple
             ExchangeNetworkException {
 
         try {
-            final ExchangeHttpResponse response = sendAuthenticatedRequestToExchange("balance", null);
+            final ExchangeHttpResponse response = sendIdempotentRequest("balance", false,
+                    () -> sendAuthenticatedRequestToExchange("balance", null));
             LOG.debug(() -> "Sell Fee response: " + response);
 
-            final BitstampBalance balances = gson.fromJson(response.getPayload(), BitstampBalance.class);
+            final BitstampBalance balances = parseJson(gson, response.getPayload(), BitstampBalance.class);
 
             // Ouch!
             final Class<?> clazz = balances.getClass();
@@ -695,7 +715,7 @@ public final class BitstampExchangeAdapter extends AbstractExchangeAdapter imple
 
             // MUST have the trailing slash even if no params... else exchange barfs!
             final URL url = new URL(API_BASE_URL + apiMethod + "/");
-            return sendNetworkRequest(url, "GET", null, requestHeaders);
+            return sendIdempotentRequest(apiMethod, true, () -> sendNetworkRequest(url, "GET", null, requestHeaders));
 
         } catch (MalformedURLException e) {
             final String errorMsg = UNEXPECTED_IO_ERROR_MSG;
@@ -722,6 +742,16 @@ public final class BitstampExchangeAdapter extends AbstractExchangeAdapter imple
             throw new IllegalStateException(errorMsg);
         }
 
+        return sendSignedRequest(nonceSource, API_BASE_URL,
+                nonce -> signAndSendRequestToExchange(apiMethod, params, nonce));
+    }
+
+    /*
+     * Signs the request with the given nonce and sends it - called with the nonce source's send lock held.
+     */
+    private ExchangeHttpResponse signAndSendRequestToExchange(String apiMethod, Map<String, String> params, long nonce)
+            throws ExchangeNetworkException, TradingApiException {
+
         try {
 
             // Setup common params for the API call
@@ -746,12 +776,9 @@ public final class BitstampExchangeAdapter extends AbstractExchangeAdapter imple
              *
              * signature = hmac.new(API_SECRET, msg=message, digestmod=hashlib.sha256).hexdigest().upper()
              */
-            final String signature = toHex(mac.doFinal()).toUpperCase();
+            final String signature = toHex(computeSignature(mac)).toUpperCase();
             params.put("signature", signature);
 
-            // increment ready for next call...
-            nonce++;
-
             // Build the URL with query param args in it
             final StringBuilder postData = new StringBuilder("");
             for (final Map.Entry<String, String> param : params.entrySet()) {
@@ -27,10 +27,12 @@ import com.gazbert.bxbot.exchange.api.AuthenticationConfig;
 import com.gazbert.bxbot.exchange.api.ExchangeAdapter;
 import com.gazbert.bxbot.exchange.api.ExchangeConfig;
 import com.gazbert.bxbot.exchange.api.OptionalConfig;
+import com.gazbert.bxbot.exchange.api.clock.ExchangeClock;
 import com.gazbert.bxbot.trading.api.*;
 import com.google.common.base.MoreObjects;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -239,7 +241,7 @@ public final class GdaxExchangeAdapter extends AbstractExchangeAdapter implement
             LOG.debug(() -> "Create Order response: " + response);
 
             if (response.getStatusCode() == HttpURLConnection.HTTP_OK) {
-                final GdaxOrder createOrderResponse = gson.fromJson(response.getPayload(), GdaxOrder.class);
+                final GdaxOrder createOrderResponse = parseJson(gson, response.getPayload(), GdaxOrder.class);
                 if (createOrderResponse != null && (createOrderResponse.id != null && !createOrderResponse.id.isEmpty())) {
                     return createOrderResponse.id;
                 } else {
@@ -297,12 +299,13 @@ public final class GdaxExchangeAdapter extends AbstractExchangeAdapter implement
 
             // we use default request no-param call - only open or un-settled orders are returned.
             // As soon as an order is no longer open and settled, it will no longer appear in the default request.
-            final ExchangeHttpResponse response = sendAuthenticatedRequestToExchange("GET", "orders", null);
+            final ExchangeHttpResponse response = sendIdempotentRequest("orders", false,
+                    () -> sendAuthenticatedRequestToExchange("GET", "orders", null));
             LOG.debug(() -> "Open Orders response: " + response);
 
             if (response.getStatusCode() == HttpURLConnection.HTTP_OK) {
 
-                final GdaxOrder[] gdaxOpenOrders = gson.fromJson(response.getPayload(), GdaxOrder[].class);
+                final GdaxOrder[] gdaxOpenOrders = parseJson(gson, response.getPayload(), GdaxOrder[].class);
 
                 final List<OpenOrder> ordersToReturn = new ArrayList<>();
                 for (final GdaxOrder openOrder : gdaxOpenOrders) {
@@ -365,7 +368,7 @@ public final class GdaxExchangeAdapter extends AbstractExchangeAdapter implement
 
             if (response.getStatusCode() == HttpURLConnection.HTTP_OK) {
 
-                final GdaxBookWrapper orderBook = gson.fromJson(response.getPayload(), GdaxBookWrapper.class);
+                final GdaxBookWrapper orderBook = parseJson(gson, response.getPayload(), GdaxBookWrapper.class);
 
                 final List<MarketOrder> buyOrders = new ArrayList<>();
                 for (GdaxMarketOrder gdaxBuyOrder : orderBook.bids) {
@@ -407,12 +410,13 @@ public final class GdaxExchangeAdapter extends AbstractExchangeAdapter implement
     public BalanceInfo getBalanceInfo() throws TradingApiException, ExchangeNetworkException {
 
         try {
-            final ExchangeHttpResponse response = sendAuthenticatedRequestToExchange("GET", "accounts", null);
+            final ExchangeHttpResponse response = sendIdempotentRequest("accounts", false,
+                    () -> sendAuthenticatedRequestToExchange("GET", "accounts", null));
             LOG.debug(() -> "Balance Info response: " + response);
 
             if (response.getStatusCode() == HttpURLConnection.HTTP_OK) {
 
-                final GdaxAccount[] gdaxAccounts = gson.fromJson(response.getPayload(), GdaxAccount[].class);
+                final GdaxAccount[] gdaxAccounts = parseJson(gson, response.getPayload(), GdaxAccount[].class);
 
                 final HashMap<String, BigDecimal> balancesAvailable = new HashMap<>();
                 final HashMap<String, BigDecimal> balancesOnHold = new HashMap<>();
@@ -446,7 +450,7 @@ public final class GdaxExchangeAdapter extends AbstractExchangeAdapter implement
             LOG.debug(() -> "Latest Market Price response: " + response);
 
             if (response.getStatusCode() == HttpURLConnection.HTTP_OK) {
-                final GdaxTicker gdaxTicker = gson.fromJson(response.getPayload(), GdaxTicker.class);
+                final GdaxTicker gdaxTicker = parseJson(gson, response.getPayload(), GdaxTicker.class);
                 return gdaxTicker.price;
             } else {
                 final String errorMsg = "Failed to get market ticker from exchange. Details: " + response;
@@ -606,6 +610,23 @@ public final class GdaxExchangeAdapter extends AbstractExchangeAdapter implement
         }
     }
 
+    /**
+     * GSON class for GDAX '/time' API call response.
+     */
+    private static class GdaxTime {
+
+        public String iso; // e.g. "2015-01-07T23:47:25.201Z"
+        public BigDecimal epoch; // e.g. 1420674445.201
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("iso", iso)
+                    .add("epoch", epoch)
+                    .toString();
+        }
+    }
+
     // ------------------------------------------------------------------------------------------------
     //  Transport layer methods
     // ------------------------------------------------------------------------------------------------
@@ -645,7 +666,7 @@ public final class GdaxExchangeAdapter extends AbstractExchangeAdapter implement
             requestHeaders.put("Content-Type", "application/x-www-form-urlencoded");
 
             final URL url = new URL(PUBLIC_API_BASE_URL + apiMethod + queryString);
-            return sendNetworkRequest(url, "GET", null, requestHeaders);
+            return sendIdempotentRequest(apiMethod, true, () -> sendNetworkRequest(url, "GET", null, requestHeaders));
 
         } catch (MalformedURLException | UnsupportedEncodingException e) {
             final String errorMsg = UNEXPECTED_IO_ERROR_MSG;
@@ -716,8 +737,12 @@ public final class GdaxExchangeAdapter extends AbstractExchangeAdapter implement
                 params = new HashMap<>();
             }
 
-            // Get UNIX time in secs
-            final String timestamp = Long.toString(System.currentTimeMillis() / 1000);
+            // Get the exchange's UNIX time in secs
+            final ExchangeClock exchangeClock = getExchangeClock(AUTHENTICATED_API_URL);
+            if (!exchangeClock.isSynchronised()) {
+                synchroniseExchangeClock(exchangeClock);
+            }
+            final String timestamp = Long.toString(exchangeClock.currentTimeMillis() / 1000);
 
             // Build the request
             final String invocationUrl;
@@ -772,7 +797,7 @@ public final class GdaxExchangeAdapter extends AbstractExchangeAdapter implement
             // Sign the signature string and Base64 encode it
             mac.reset();
             mac.update(signatureBuilder.getBytes("UTF-8"));
-            final String signature = DatatypeConverter.printBase64Binary(mac.doFinal());
+            final String signature = DatatypeConverter.printBase64Binary(computeSignature(mac));
 
             // Request headers required by Exchange
             final Map<String, String> requestHeaders = new HashMap<>();
@@ -792,6 +817,27 @@ public final class GdaxExchangeAdapter extends AbstractExchangeAdapter implement
         }
     }
 
+    /*
+     * Calls the GDAX time endpoint, as their docs recommend, before the first authenticated request goes out. Its epoch
+     * is in millis, so it pins the offset down tighter than a Date header. If the call fails, the timestamp comes from
+     * our own clock until the next response is in.
+     */
+    private void synchroniseExchangeClock(ExchangeClock exchangeClock) {
+        try {
+            final long requestSentMillis = System.currentTimeMillis();
+            final ExchangeHttpResponse response = sendPublicRequestToExchange("time", null);
+            final long responseReceivedMillis = System.currentTimeMillis();
+
+            final GdaxTime gdaxTime = parseJson(gson, response.getPayload(), GdaxTime.class);
+            if (gdaxTime != null && gdaxTime.epoch != null) {
+                final long serverTimeMillis = gdaxTime.epoch.movePointRight(3).longValue();
+                exchangeClock.recordServerTime(serverTimeMillis, 1, requestSentMillis, responseReceivedMillis);
+            }
+        } catch (ExchangeNetworkException | TradingApiException | JsonParseException e) {
+            LOG.warn("Failed to get GDAX server time - signing with local time for now.", e);
+        }
+    }
+
     /**
      * Initialises the secure messaging layer
      * Sets up the MAC to safeguard the data we send to the exchange.
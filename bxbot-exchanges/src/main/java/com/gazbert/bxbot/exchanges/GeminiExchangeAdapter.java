@@ -26,6 +26,8 @@ package com.gazbert.bxbot.exchanges;
 import com.gazbert.bxbot.exchange.api.AuthenticationConfig;
 import com.gazbert.bxbot.exchange.api.ExchangeAdapter;
 import com.gazbert.bxbot.exchange.api.ExchangeConfig;
+import com.gazbert.bxbot.exchange.api.NonceCheckpointable;
+import com.gazbert.bxbot.exchange.api.NonceSource;
 import com.gazbert.bxbot.exchange.api.OptionalConfig;
 import com.gazbert.bxbot.trading.api.*;
 import com.google.common.base.MoreObjects;
@@ -96,7 +98,8 @@ import java.util.*;
  * @author gazbert
  * @since 1.0
  */
-public final class GeminiExchangeAdapter extends AbstractExchangeAdapter implements ExchangeAdapter {
+public final class GeminiExchangeAdapter extends AbstractExchangeAdapter implements ExchangeAdapter,
+        NonceCheckpointable {
 
     private static final Logger LOG = LogManager.getLogger();
 
@@ -146,9 +149,10 @@ public final class GeminiExchangeAdapter extends AbstractExchangeAdapter impleme
     private static final String SELL_FEE_PROPERTY_NAME = "sell-fee";
 
     /**
-     * Nonce used for sending authenticated messages to the exchange.
+     * Source of the nonces used for sending authenticated messages to the exchange - shared with every other adapter
+     * instance for the same API key.
      */
-    private long nonce = 0;
+    private NonceSource nonceSource;
 
     /**
      * Markets on the exchange. Used for determining order price truncation/rounding policy.
@@ -214,11 +218,23 @@ public final class GeminiExchangeAdapter extends AbstractExchangeAdapter impleme
         setNetworkConfig(config);
         setOptionalConfig(config);
 
-        nonce = System.currentTimeMillis() / 1000; // set the initial nonce used in the secure messaging.
+        // set the initial nonce used in the secure messaging - the exchange time in millis.
+        nonceSource = NonceSource.forCredential(GeminiExchangeAdapter.class.getName(), key);
+        nonceSource.advanceTo(getExchangeTimeMillis(AUTHENTICATED_API_URL));
         initSecureMessageLayer();
         initGson();
     }
 
+    @Override
+    public long getNonce() {
+        return nonceSource == null ? 0 : nonceSource.getLastNonce();
+    }
+
+    @Override
+    public void restoreNonce(long nonce) {
+        nonceSource.advanceTo(nonce);
+    }
+
     // ------------------------------------------------------------------------------------------------
     // Gemini REST Trade API Calls adapted to the Trading API.
     // See https://docs.gemini.com/rest-api/
@@ -274,7 +290,7 @@ public final class GeminiExchangeAdapter extends AbstractExchangeAdapter impleme
             final ExchangeHttpResponse response = sendAuthenticatedRequestToExchange("order/new", params);
             LOG.debug(() -> "Create Order response: " + response);
 
-            final GeminiOpenOrder createOrderResponse = gson.fromJson(response.getPayload(), GeminiOpenOrder.class);
+            final GeminiOpenOrder createOrderResponse = parseJson(gson, response.getPayload(), GeminiOpenOrder.class);
             final long id = createOrderResponse.order_id;
             if (id == 0) {
                 final String errorMsg = "Failed to place order on exchange. Error response: " + response;
@@ -304,7 +320,7 @@ public final class GeminiExchangeAdapter extends AbstractExchangeAdapter impleme
             LOG.debug(() -> "Cancel Order response: " + response);
 
             // Exchange returns order id and other details if successful, a 400 HTTP Status if the order id was not recognised.
-            gson.fromJson(response.getPayload(), GeminiOpenOrder.class);
+            parseJson(gson, response.getPayload(), GeminiOpenOrder.class);
             return true;
 
         } catch (ExchangeNetworkException | TradingApiException e) {
@@ -326,10 +342,11 @@ public final class GeminiExchangeAdapter extends AbstractExchangeAdapter impleme
 
         try {
 
-            final ExchangeHttpResponse response = sendAuthenticatedRequestToExchange("orders", null);
+            final ExchangeHttpResponse response = sendIdempotentRequest("orders", false,
+                    () -> sendAuthenticatedRequestToExchange("orders", null));
             LOG.debug(() -> "Open Orders response: " + response);
 
-            final GeminiOpenOrders geminiOpenOrders = gson.fromJson(response.getPayload(), GeminiOpenOrders.class);
+            final GeminiOpenOrders geminiOpenOrders = parseJson(gson, response.getPayload(), GeminiOpenOrders.class);
 
             final List<OpenOrder> ordersToReturn = new ArrayList<>();
             for (final GeminiOpenOrder geminiOpenOrder : geminiOpenOrders) {
@@ -382,7 +399,7 @@ public final class GeminiExchangeAdapter extends AbstractExchangeAdapter impleme
             final ExchangeHttpResponse response = sendPublicRequestToExchange("book/" + marketId);
             LOG.debug(() -> "Market Orders response: " + response);
 
-            final GeminiOrderBook orderBook = gson.fromJson(response.getPayload(), GeminiOrderBook.class);
+            final GeminiOrderBook orderBook = parseJson(gson, response.getPayload(), GeminiOrderBook.class);
 
             final List<MarketOrder> buyOrders = new ArrayList<>();
             for (GeminiMarketOrder geminiBuyOrder : orderBook.bids) {
@@ -422,7 +439,7 @@ public final class GeminiExchangeAdapter extends AbstractExchangeAdapter impleme
             final ExchangeHttpResponse response = sendPublicRequestToExchange("pubticker/" + marketId);
             LOG.debug(() -> "Latest Market Price response: " + response);
 
-            final GeminiTicker ticker = gson.fromJson(response.getPayload(), GeminiTicker.class);
+            final GeminiTicker ticker = parseJson(gson, response.getPayload(), GeminiTicker.class);
             return ticker.last;
 
         } catch (ExchangeNetworkException | TradingApiException e) {
@@ -438,10 +455,11 @@ public final class GeminiExchangeAdapter extends AbstractExchangeAdapter impleme
 
         try {
 
-            final ExchangeHttpResponse response = sendAuthenticatedRequestToExchange("balances", null);
+            final ExchangeHttpResponse response = sendIdempotentRequest("balances", false,
+                    () -> sendAuthenticatedRequestToExchange("balances", null));
             LOG.debug(() -> "Balance Info response: " + response);
 
-            final GeminiBalances allAccountBalances = gson.fromJson(response.getPayload(), GeminiBalances.class);
+            final GeminiBalances allAccountBalances = parseJson(gson, response.getPayload(), GeminiBalances.class);
             final HashMap<String, BigDecimal> balancesAvailable = new HashMap<>();
 
             // This adapter only supports 'exchange' account type.
@@ -673,7 +691,7 @@ public final class GeminiExchangeAdapter extends AbstractExchangeAdapter impleme
         try {
 
             final URL url = new URL(PUBLIC_API_BASE_URL + apiMethod);
-            return sendNetworkRequest(url, "GET", null, requestHeaders);
+            return sendIdempotentRequest(apiMethod, true, () -> sendNetworkRequest(url, "GET", null, requestHeaders));
 
         } catch (MalformedURLException e) {
             final String errorMsg = UNEXPECTED_IO_ERROR_MSG;
@@ -745,6 +763,16 @@ public final class GeminiExchangeAdapter extends AbstractExchangeAdapter impleme
             throw new IllegalStateException(errorMsg);
         }
 
+        return sendSignedRequest(nonceSource, AUTHENTICATED_API_URL,
+                nonce -> signAndSendRequestToExchange(apiMethod, params, nonce));
+    }
+
+    /*
+     * Signs the request with the given nonce and sends it - called with the nonce source's send lock held.
+     */
+    private ExchangeHttpResponse signAndSendRequestToExchange(String apiMethod, Map<String, String> params, long nonce)
+            throws ExchangeNetworkException, TradingApiException {
+
         try {
 
             if (params == null) {
@@ -757,7 +785,6 @@ public final class GeminiExchangeAdapter extends AbstractExchangeAdapter impleme
 
             // nonce is required by Gemini in every request
             params.put("nonce", Long.toString(nonce));
-            nonce++;
 
             // JSON-ify the param dictionary
             final String paramsInJson = gson.toJson(params);
@@ -768,7 +795,7 @@ public final class GeminiExchangeAdapter extends AbstractExchangeAdapter impleme
             // Create the signature
             mac.reset(); // force reset
             mac.update(base64payload.getBytes("UTF-8"));
-            final String signature = toHex(mac.doFinal()).toLowerCase();
+            final String signature = toHex(computeSignature(mac)).toLowerCase();
 
             // Request headers required by Exchange
             final Map<String, String> requestHeaders = new HashMap<>();
@@ -293,7 +293,7 @@ public final class HuobiExchangeAdapter extends AbstractExchangeAdapter implemen
             final ExchangeHttpResponse response = sendAuthenticatedRequestToExchange(apiCall, marketIdForAuthenticatedRequest, params);
             LOG.debug(() -> "Create Order response: " + response);
 
-            final HuobiOrderResponse createOrderResponse = gson.fromJson(response.getPayload(), HuobiOrderResponse.class);
+            final HuobiOrderResponse createOrderResponse = parseJson(gson, response.getPayload(), HuobiOrderResponse.class);
             if (createOrderResponse.result != null && createOrderResponse.result.equalsIgnoreCase("success")) {
                 return Long.toString(createOrderResponse.id);
             } else {
@@ -324,7 +324,7 @@ public final class HuobiExchangeAdapter extends AbstractExchangeAdapter implemen
                     marketIdForAuthenticatedRequest, params);
             LOG.debug(() -> "Cancel Order response: " + response);
 
-            final HuobiCancelOrderResponse cancelOrderResponse = gson.fromJson(response.getPayload(), HuobiCancelOrderResponse.class);
+            final HuobiCancelOrderResponse cancelOrderResponse = parseJson(gson, response.getPayload(), HuobiCancelOrderResponse.class);
             if (cancelOrderResponse.result != null && cancelOrderResponse.result.equalsIgnoreCase("success")) {
                 return true;
             } else {
@@ -350,12 +350,12 @@ public final class HuobiExchangeAdapter extends AbstractExchangeAdapter implemen
             final Map<String, String> params = getRequestParamMap();
             params.put("coin_type", "1"); // "1" = BTC
 
-            final ExchangeHttpResponse response = sendAuthenticatedRequestToExchange("get_orders",
-                    marketIdForAuthenticatedRequest, params);
+            final ExchangeHttpResponse response = sendIdempotentRequest("get_orders", false,
+                    () -> sendAuthenticatedRequestToExchange("get_orders", marketIdForAuthenticatedRequest, params));
             LOG.debug(() -> "Open Orders response: " + response);
 
             final HuobiOpenOrderResponseWrapper huobiOpenOrdersWrapper
-                    = gson.fromJson(response.getPayload(), HuobiOpenOrderResponseWrapper.class);
+                    = parseJson(gson, response.getPayload(), HuobiOpenOrderResponseWrapper.class);
 
             if (huobiOpenOrdersWrapper.code == 0) {
 
@@ -431,7 +431,7 @@ public final class HuobiExchangeAdapter extends AbstractExchangeAdapter implemen
             final ExchangeHttpResponse response = sendPublicRequestToExchange(apiCall);
             LOG.debug(() -> "Market Orders response: " + response);
 
-            final HuobiOrderBookWrapper orderBook = gson.fromJson(response.getPayload(), HuobiOrderBookWrapper.class);
+            final HuobiOrderBookWrapper orderBook = parseJson(gson, response.getPayload(), HuobiOrderBookWrapper.class);
 
             // adapt BUYs
             final List<MarketOrder> buyOrders = new ArrayList<>();
@@ -470,10 +470,11 @@ public final class HuobiExchangeAdapter extends AbstractExchangeAdapter implemen
 
         try {
 
-            final ExchangeHttpResponse response = sendAuthenticatedRequestToExchange("get_account_info", accountInfoMarket, null);
+            final ExchangeHttpResponse response = sendIdempotentRequest("get_account_info", false,
+                    () -> sendAuthenticatedRequestToExchange("get_account_info", accountInfoMarket, null));
             LOG.debug(() -> "Balance Info response: " + response);
 
-            final HuobiAccountInfo huobiAccountInfo = gson.fromJson(response.getPayload(), HuobiAccountInfo.class);
+            final HuobiAccountInfo huobiAccountInfo = parseJson(gson, response.getPayload(), HuobiAccountInfo.class);
             if (huobiAccountInfo.code == 0) {
 
                 // adapt
@@ -530,7 +531,7 @@ public final class HuobiExchangeAdapter extends AbstractExchangeAdapter implemen
             final ExchangeHttpResponse response = sendPublicRequestToExchange(apiCall);
             LOG.debug(() -> "Latest Market Price response: " + response);
 
-            final HuobiTickerWrapper tickerWrapper = gson.fromJson(response.getPayload(), HuobiTickerWrapper.class);
+            final HuobiTickerWrapper tickerWrapper = parseJson(gson, response.getPayload(), HuobiTickerWrapper.class);
             return tickerWrapper.ticker.last;
 
         } catch (ExchangeNetworkException | TradingApiException e) {
@@ -938,7 +939,7 @@ public final class HuobiExchangeAdapter extends AbstractExchangeAdapter implemen
         try {
 
             final URL url = new URL(PUBLIC_API_BASE_URL + apiMethod);
-            return sendNetworkRequest(url, "GET", null, requestHeaders);
+            return sendIdempotentRequest(apiMethod, true, () -> sendNetworkRequest(url, "GET", null, requestHeaders));
 
         } catch (MalformedURLException e) {
             final String errorMsg = UNEXPECTED_IO_ERROR_MSG;
@@ -999,7 +1000,8 @@ public final class HuobiExchangeAdapter extends AbstractExchangeAdapter implemen
             final Map<String, String> signatureParams = new HashMap<>(params);
             signatureParams.put("method", apiMethod);
             signatureParams.put("access_key", key);
-            signatureParams.put("created", Long.toString(System.currentTimeMillis() / 1000)); // unix time in secs
+            // unix time in secs, from the exchange clock
+            signatureParams.put("created", Long.toString(getExchangeTimeMillis(AUTHENTICATED_API_URL) / 1000));
             signatureParams.put("secret_key", secret);
 
             final String sortedQueryString = createAlphabeticallySortedQueryString(signatureParams);
@@ -1067,7 +1069,7 @@ public final class HuobiExchangeAdapter extends AbstractExchangeAdapter implemen
         }
 
         messageDigest.update(stringToHash.getBytes("UTF-8"));
-        final byte[] md5HashInBytes = messageDigest.digest();
+        final byte[] md5HashInBytes = computeSignature(messageDigest);
 
         final StringBuilder md5HashAsLowerCaseString = new StringBuilder();
         for (final byte md5HashByte : md5HashInBytes) {
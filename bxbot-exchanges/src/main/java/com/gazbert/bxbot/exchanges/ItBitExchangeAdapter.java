@@ -26,6 +26,8 @@ package com.gazbert.bxbot.exchanges;
 import com.gazbert.bxbot.exchange.api.AuthenticationConfig;
 import com.gazbert.bxbot.exchange.api.ExchangeAdapter;
 import com.gazbert.bxbot.exchange.api.ExchangeConfig;
+import com.gazbert.bxbot.exchange.api.NonceCheckpointable;
+import com.gazbert.bxbot.exchange.api.NonceSource;
 import com.gazbert.bxbot.exchange.api.OptionalConfig;
 import com.gazbert.bxbot.trading.api.*;
 import com.google.common.base.MoreObjects;
@@ -104,7 +106,8 @@ import java.util.*;
  * @author gazbert
  * @since 1.0
  */
-public final class ItBitExchangeAdapter extends AbstractExchangeAdapter implements ExchangeAdapter {
+public final class ItBitExchangeAdapter extends AbstractExchangeAdapter implements ExchangeAdapter,
+        NonceCheckpointable {
 
     private static final Logger LOG = LogManager.getLogger();
 
@@ -175,9 +178,10 @@ public final class ItBitExchangeAdapter extends AbstractExchangeAdapter implemen
     private static final String EXCHANGE_UNDERGOING_MAINTENANCE_RESPONSE = "The itBit API is currently undergoing maintenance";
 
     /**
-     * Nonce used for sending authenticated messages to the exchange.
+     * Source of the nonces used for sending authenticated messages to the exchange - shared with every other adapter
+     * instance for the same API key.
      */
-    private long nonce = 0;
+    private NonceSource nonceSource;
 
     /**
      * The UUID of the wallet in use on the exchange.
@@ -239,11 +243,23 @@ public final class ItBitExchangeAdapter extends AbstractExchangeAdapter implemen
         setNetworkConfig(config);
         setOptionalConfig(config);
 
-        nonce = System.currentTimeMillis() / 1000; // set the initial nonce used in the secure messaging.
+        // set the initial nonce used in the secure messaging - the exchange time in millis.
+        nonceSource = NonceSource.forCredential(ItBitExchangeAdapter.class.getName(), key);
+        nonceSource.advanceTo(getExchangeTimeMillis(AUTHENTICATED_API_URL));
         initSecureMessageLayer();
         initGson();
     }
 
+    @Override
+    public long getNonce() {
+        return nonceSource == null ? 0 : nonceSource.getLastNonce();
+    }
+
+    @Override
+    public void restoreNonce(long nonce) {
+        nonceSource.advanceTo(nonce);
+    }
+
     // ------------------------------------------------------------------------------------------------
     // itBit REST Trade API Calls adapted to the Trading API.
     // See https://api.itbit.com/docs
@@ -305,7 +321,7 @@ public final class ItBitExchangeAdapter extends AbstractExchangeAdapter implemen
             }
 
             if (response.getStatusCode() == HttpURLConnection.HTTP_CREATED) {
-                final ItBitNewOrderResponse itBitNewOrderResponse = gson.fromJson(response.getPayload(),
+                final ItBitNewOrderResponse itBitNewOrderResponse = parseJson(gson, response.getPayload(),
                         ItBitNewOrderResponse.class);
                 return itBitNewOrderResponse.id;
             } else {
@@ -351,7 +367,7 @@ public final class ItBitExchangeAdapter extends AbstractExchangeAdapter implemen
             }
 
             if (response.getStatusCode() == HttpURLConnection.HTTP_ACCEPTED) {
-                gson.fromJson(response.getPayload(), ItBitCancelOrderResponse.class);
+                parseJson(gson, response.getPayload(), ItBitCancelOrderResponse.class);
                 return true;
             } else {
                 final String errorMsg = "Failed to cancel order on exchange. Details: " + response;
@@ -390,15 +406,15 @@ public final class ItBitExchangeAdapter extends AbstractExchangeAdapter implemen
             final Map<String, String> params = getRequestParamMap();
             params.put("status", "open"); // we only want open orders
 
-            response = sendAuthenticatedRequestToExchange(
-                    "GET", "wallets/" + walletId + "/orders", params);
+            response = sendIdempotentRequest("orders", false, () -> sendAuthenticatedRequestToExchange(
+                    "GET", "wallets/" + walletId + "/orders", params));
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Open Orders response: " + response);
             }
 
             if (response.getStatusCode() == HttpURLConnection.HTTP_OK) {
 
-                final ItBitYourOrder[] itBitOpenOrders = gson.fromJson(response.getPayload(), ItBitYourOrder[].class);
+                final ItBitYourOrder[] itBitOpenOrders = parseJson(gson, response.getPayload(), ItBitYourOrder[].class);
 
                 // adapt
                 final List<OpenOrder> ordersToReturn = new ArrayList<>();
@@ -468,7 +484,7 @@ public final class ItBitExchangeAdapter extends AbstractExchangeAdapter implemen
 
             if (response.getStatusCode() == HttpURLConnection.HTTP_OK) {
 
-                final ItBitOrderBookWrapper orderBook = gson.fromJson(response.getPayload(), ItBitOrderBookWrapper.class);
+                final ItBitOrderBookWrapper orderBook = parseJson(gson, response.getPayload(), ItBitOrderBookWrapper.class);
 
                 final List<MarketOrder> buyOrders = new ArrayList<>();
                 for (ItBitMarketOrder itBitBuyOrder : orderBook.bids) {
@@ -526,7 +542,7 @@ public final class ItBitExchangeAdapter extends AbstractExchangeAdapter implemen
 
             if (response.getStatusCode() == HttpURLConnection.HTTP_OK) {
 
-                final ItBitTicker itBitTicker = gson.fromJson(response.getPayload(), ItBitTicker.class);
+                final ItBitTicker itBitTicker = parseJson(gson, response.getPayload(), ItBitTicker.class);
                 return itBitTicker.lastPrice;
             } else {
                 final String errorMsg = "Failed to get market ticker from exchange. Details: " + response;
@@ -559,14 +575,15 @@ public final class ItBitExchangeAdapter extends AbstractExchangeAdapter implemen
             final Map<String, String> params = getRequestParamMap();
             params.put("userId", userId);
 
-            response = sendAuthenticatedRequestToExchange("GET", "wallets", params);
+            response = sendIdempotentRequest("wallets", false,
+                    () -> sendAuthenticatedRequestToExchange("GET", "wallets", params));
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Balance Info response: " + response);
             }
 
             if (response.getStatusCode() == HttpURLConnection.HTTP_OK) {
 
-                final ItBitWallet[] itBitWallets = gson.fromJson(response.getPayload(), ItBitWallet[].class);
+                final ItBitWallet[] itBitWallets = parseJson(gson, response.getPayload(), ItBitWallet[].class);
 
                 // assume only 1 trading account wallet being used on exchange
                 final ItBitWallet exchangeWallet = itBitWallets[0];
@@ -850,7 +867,7 @@ public final class ItBitExchangeAdapter extends AbstractExchangeAdapter implemen
         try {
 
             final URL url = new URL(PUBLIC_API_BASE_URL + apiMethod);
-            return sendNetworkRequest(url, "GET", null, requestHeaders);
+            return sendIdempotentRequest(apiMethod, true, () -> sendNetworkRequest(url, "GET", null, requestHeaders));
 
         } catch (MalformedURLException e) {
             final String errorMsg = UNEXPECTED_IO_ERROR_MSG;
@@ -885,13 +902,22 @@ public final class ItBitExchangeAdapter extends AbstractExchangeAdapter implemen
             throw new IllegalStateException(errorMsg);
         }
 
-        try {
+        return sendSignedRequest(nonceSource, AUTHENTICATED_API_URL,
+                nonce -> signAndSendRequestToExchange(httpMethod, apiMethod, params, nonce));
+    }
 
-            // Generate new UNIX time in secs
-            final String unixTime = Long.toString(System.currentTimeMillis());
+    /*
+     * Signs the request with the given nonce and sends it - called with the nonce source's send lock held.
+     */
+    private ExchangeHttpResponse signAndSendRequestToExchange(String httpMethod, String apiMethod,
+                                                              Map<String, String> params, long nonce)
+            throws ExchangeNetworkException, TradingApiException {
+
+        try {
 
-            // increment nonce for use in this call
-            nonce++;
+            // Get the exchange's UNIX time in millis
+            final long exchangeTimeMillis = getExchangeTimeMillis(AUTHENTICATED_API_URL);
+            final String unixTime = Long.toString(exchangeTimeMillis);
 
             if (params == null) {
                 // create empty map for non-param API calls
@@ -992,7 +1018,7 @@ public final class ItBitExchangeAdapter extends AbstractExchangeAdapter implemen
             mac.update(invocationUrl.getBytes("UTF-8"));
             mac.update(messageHash);
 
-            final String signature = DatatypeConverter.printBase64Binary(mac.doFinal());
+            final String signature = DatatypeConverter.printBase64Binary(computeSignature(mac));
 
             // Request headers required by Exchange
             final Map<String, String> requestHeaders = new HashMap<>();
@@ -26,6 +26,8 @@ package com.gazbert.bxbot.exchanges;
 import com.gazbert.bxbot.exchange.api.AuthenticationConfig;
 import com.gazbert.bxbot.exchange.api.ExchangeAdapter;
 import com.gazbert.bxbot.exchange.api.ExchangeConfig;
+import com.gazbert.bxbot.exchange.api.NonceCheckpointable;
+import com.gazbert.bxbot.exchange.api.NonceSource;
 import com.gazbert.bxbot.exchange.api.OptionalConfig;
 import com.gazbert.bxbot.trading.api.*;
 import com.google.common.base.MoreObjects;
@@ -100,7 +102,8 @@ import java.util.*;
  * @author gazbert
  * @since 1.0
  */
-public final class KrakenExchangeAdapter extends AbstractExchangeAdapter implements ExchangeAdapter {
+public final class KrakenExchangeAdapter extends AbstractExchangeAdapter implements ExchangeAdapter,
+        NonceCheckpointable {
 
     private static final Logger LOG = LogManager.getLogger();
 
@@ -210,9 +213,10 @@ public final class KrakenExchangeAdapter extends AbstractExchangeAdapter impleme
     private static final String EXCHANGE_UNDERGOING_MAINTENANCE_RESPONSE = "EService:Unavailable";
 
     /**
-     * Nonce used for sending authenticated messages to the exchange.
+     * Source of the nonces used for sending authenticated messages to the exchange - shared with every other adapter
+     * instance for the same API key.
      */
-    private long nonce = 0;
+    private NonceSource nonceSource;
 
     /**
      * Exchange buy fees in % in {@link BigDecimal} format.
@@ -264,11 +268,23 @@ public final class KrakenExchangeAdapter extends AbstractExchangeAdapter impleme
         setNetworkConfig(config);
         setOptionalConfig(config);
 
-        nonce = System.currentTimeMillis() / 1000; // set the initial nonce used in the secure messaging.
+        // set the initial nonce used in the secure messaging - the exchange time in millis.
+        nonceSource = NonceSource.forCredential(KrakenExchangeAdapter.class.getName(), key);
+        nonceSource.advanceTo(getExchangeTimeMillis(AUTHENTICATED_API_URL));
         initSecureMessageLayer();
         initGson();
     }
 
+    @Override
+    public long getNonce() {
+        return nonceSource == null ? 0 : nonceSource.getLastNonce();
+    }
+
+    @Override
+    public void restoreNonce(long nonce) {
+        nonceSource.advanceTo(nonce);
+    }
+
     // ------------------------------------------------------------------------------------------------
     // Kraken API Calls adapted to the Trading API.
     // See https://www.kraken.com/en-gb/help/api
@@ -294,7 +310,7 @@ public final class KrakenExchangeAdapter extends AbstractExchangeAdapter impleme
 
                 final Type resultType = new TypeToken<KrakenResponse<KrakenMarketOrderBookResult>>() {
                 }.getType();
-                final KrakenResponse krakenResponse = gson.fromJson(response.getPayload(), resultType);
+                final KrakenResponse krakenResponse = parseJson(gson, response.getPayload(), resultType);
 
                 final List<String> errors = krakenResponse.error;
                 if (errors == null || errors.isEmpty()) {
@@ -359,7 +375,8 @@ public final class KrakenExchangeAdapter extends AbstractExchangeAdapter impleme
 
         try {
 
-            response = sendAuthenticatedRequestToExchange("OpenOrders", null);
+            response = sendIdempotentRequest("OpenOrders", false,
+                    () -> sendAuthenticatedRequestToExchange("OpenOrders", null));
 
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Open Orders response: " + response);
@@ -369,7 +386,7 @@ public final class KrakenExchangeAdapter extends AbstractExchangeAdapter impleme
 
                 final Type resultType = new TypeToken<KrakenResponse<KrakenOpenOrderResult>>() {
                 }.getType();
-                final KrakenResponse krakenResponse = gson.fromJson(response.getPayload(), resultType);
+                final KrakenResponse krakenResponse = parseJson(gson, response.getPayload(), resultType);
 
                 final List<String> errors = krakenResponse.error;
                 if (errors == null || errors.isEmpty()) {
@@ -486,7 +503,7 @@ public final class KrakenExchangeAdapter extends AbstractExchangeAdapter impleme
 
                 final Type resultType = new TypeToken<KrakenResponse<KrakenAddOrderResult>>() {
                 }.getType();
-                final KrakenResponse krakenResponse = gson.fromJson(response.getPayload(), resultType);
+                final KrakenResponse krakenResponse = parseJson(gson, response.getPayload(), resultType);
 
                 final List<String> errors = krakenResponse.error;
                 if (errors == null || errors.isEmpty()) {
@@ -542,7 +559,7 @@ public final class KrakenExchangeAdapter extends AbstractExchangeAdapter impleme
 
                 final Type resultType = new TypeToken<KrakenResponse<KrakenCancelOrderResult>>() {
                 }.getType();
-                final KrakenResponse krakenResponse = gson.fromJson(response.getPayload(), resultType);
+                final KrakenResponse krakenResponse = parseJson(gson, response.getPayload(), resultType);
 
                 final List<String> errors = krakenResponse.error;
                 if (errors == null || errors.isEmpty()) {
@@ -609,7 +626,7 @@ public final class KrakenExchangeAdapter extends AbstractExchangeAdapter impleme
 
                 final Type resultType = new TypeToken<KrakenResponse<KrakenTickerResult>>() {
                 }.getType();
-                final KrakenResponse krakenResponse = gson.fromJson(response.getPayload(), resultType);
+                final KrakenResponse krakenResponse = parseJson(gson, response.getPayload(), resultType);
 
                 final List<String> errors = krakenResponse.error;
                 if (errors == null || errors.isEmpty()) {
@@ -656,7 +673,8 @@ public final class KrakenExchangeAdapter extends AbstractExchangeAdapter impleme
 
         try {
 
-            response = sendAuthenticatedRequestToExchange("Balance", null);
+            response = sendIdempotentRequest("Balance", false,
+                    () -> sendAuthenticatedRequestToExchange("Balance", null));
 
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Balance Info response: " + response);
@@ -666,7 +684,7 @@ public final class KrakenExchangeAdapter extends AbstractExchangeAdapter impleme
 
                 final Type resultType = new TypeToken<KrakenResponse<KrakenBalanceResult>>() {
                 }.getType();
-                final KrakenResponse krakenResponse = gson.fromJson(response.getPayload(), resultType);
+                final KrakenResponse krakenResponse = parseJson(gson, response.getPayload(), resultType);
 
                 if (krakenResponse != null) {
                     final List<String> errors = krakenResponse.error;
@@ -1028,7 +1046,7 @@ public final class KrakenExchangeAdapter extends AbstractExchangeAdapter impleme
             requestHeaders.put("Content-Type", "application/x-www-form-urlencoded");
 
             final URL url = new URL(PUBLIC_API_BASE_URL + apiMethod + queryString);
-            return sendNetworkRequest(url, "GET", null, requestHeaders);
+            return sendIdempotentRequest(apiMethod, true, () -> sendNetworkRequest(url, "GET", null, requestHeaders));
 
         } catch (MalformedURLException | UnsupportedEncodingException e) {
             final String errorMsg = UNEXPECTED_IO_ERROR_MSG;
@@ -1072,6 +1090,16 @@ public final class KrakenExchangeAdapter extends AbstractExchangeAdapter impleme
             throw new IllegalStateException(errorMsg);
         }
 
+        return sendSignedRequest(nonceSource, AUTHENTICATED_API_URL,
+                nonce -> signAndSendRequestToExchange(apiMethod, params, nonce));
+    }
+
+    /*
+     * Signs the request with the given nonce and sends it - called with the nonce source's send lock held.
+     */
+    private ExchangeHttpResponse signAndSendRequestToExchange(String apiMethod, Map<String, String> params, long nonce)
+            throws ExchangeNetworkException, TradingApiException {
+
         try {
 
             if (params == null) {
@@ -1081,7 +1109,6 @@ public final class KrakenExchangeAdapter extends AbstractExchangeAdapter impleme
 
             // The nonce is required by Kraken in every request.
             // It MUST be incremented each time and the nonce param MUST match the value used in signature.
-            nonce++;
             params.put("nonce", Long.toString(nonce));
 
             // Current adapter does not support optional 2FA
@@ -1114,7 +1141,7 @@ public final class KrakenExchangeAdapter extends AbstractExchangeAdapter impleme
             mac.update(messageHash);
 
             // Signature in Base64
-            final String signature = Base64.getEncoder().encodeToString(mac.doFinal());
+            final String signature = Base64.getEncoder().encodeToString(computeSignature(mac));
 
             // Request headers required by Exchange
             final Map<String, String> requestHeaders = new HashMap<>();
@@ -215,7 +215,7 @@ public final class OkCoinExchangeAdapter extends AbstractExchangeAdapter impleme
             final ExchangeHttpResponse response = sendAuthenticatedRequestToExchange("trade.do", params);
             LOG.debug(() -> "Create Order response: " + response);
 
-            final OKCoinTradeResponse createOrderResponse = gson.fromJson(response.getPayload(), OKCoinTradeResponse.class);
+            final OKCoinTradeResponse createOrderResponse = parseJson(gson, response.getPayload(), OKCoinTradeResponse.class);
             if (createOrderResponse.result) {
                 return Long.toString(createOrderResponse.order_id);
             } else {
@@ -243,7 +243,7 @@ public final class OkCoinExchangeAdapter extends AbstractExchangeAdapter impleme
             final ExchangeHttpResponse response = sendAuthenticatedRequestToExchange("cancel_order.do", params);
             LOG.debug(() -> "Cancel Order response: " + response);
 
-            final OKCoinCancelOrderResponse cancelOrderResponse = gson.fromJson(response.getPayload(), OKCoinCancelOrderResponse.class);
+            final OKCoinCancelOrderResponse cancelOrderResponse = parseJson(gson, response.getPayload(), OKCoinCancelOrderResponse.class);
             if (cancelOrderResponse.result) {
                 return true;
             } else {
@@ -265,14 +265,16 @@ public final class OkCoinExchangeAdapter extends AbstractExchangeAdapter impleme
 
         try {
 
-            final Map<String, String> params = getRequestParamMap();
-            params.put("symbol", marketId);
-            params.put("order_id", "-1"); // -1 means bring back all the orders
-
-            final ExchangeHttpResponse response = sendAuthenticatedRequestToExchange("order_info.do", params);
+            final ExchangeHttpResponse response = sendIdempotentRequest("order_info.do", false, () -> {
+                // the params are signed in place, so each retry needs its own
+                final Map<String, String> params = getRequestParamMap();
+                params.put("symbol", marketId);
+                params.put("order_id", "-1"); // -1 means bring back all the orders
+                return sendAuthenticatedRequestToExchange("order_info.do", params);
+            });
             LOG.debug(() -> "Open Orders response: " + response);
 
-            final OKCoinOrderInfoWrapper orderInfoWrapper = gson.fromJson(response.getPayload(), OKCoinOrderInfoWrapper.class);
+            final OKCoinOrderInfoWrapper orderInfoWrapper = parseJson(gson, response.getPayload(), OKCoinOrderInfoWrapper.class);
             if (orderInfoWrapper.result) {
 
                 final List<OpenOrder> ordersToReturn = new ArrayList<>();
@@ -330,7 +332,7 @@ public final class OkCoinExchangeAdapter extends AbstractExchangeAdapter impleme
             final ExchangeHttpResponse response = sendPublicRequestToExchange("depth.do", params);
             LOG.debug(() -> "Market Orders response: " + response);
 
-            final OKCoinDepthWrapper orderBook = gson.fromJson(response.getPayload(), OKCoinDepthWrapper.class);
+            final OKCoinDepthWrapper orderBook = parseJson(gson, response.getPayload(), OKCoinDepthWrapper.class);
 
             final List<MarketOrder> buyOrders = new ArrayList<>();
             for (OKCoinMarketOrder okCoinBuyOrder : orderBook.bids) {
@@ -384,7 +386,7 @@ public final class OkCoinExchangeAdapter extends AbstractExchangeAdapter impleme
             final ExchangeHttpResponse response = sendPublicRequestToExchange("ticker.do", params);
             LOG.debug(() -> "Latest Market Price response: " + response);
 
-            final OKCoinTickerWrapper tickerWrapper = gson.fromJson(response.getPayload(), OKCoinTickerWrapper.class);
+            final OKCoinTickerWrapper tickerWrapper = parseJson(gson, response.getPayload(), OKCoinTickerWrapper.class);
             return tickerWrapper.ticker.last;
 
         } catch (ExchangeNetworkException | TradingApiException e) {
@@ -399,10 +401,11 @@ public final class OkCoinExchangeAdapter extends AbstractExchangeAdapter impleme
     public BalanceInfo getBalanceInfo() throws TradingApiException, ExchangeNetworkException {
 
         try {
-            final ExchangeHttpResponse response = sendAuthenticatedRequestToExchange("userinfo.do", null);
+            final ExchangeHttpResponse response = sendIdempotentRequest("userinfo.do", false,
+                    () -> sendAuthenticatedRequestToExchange("userinfo.do", null));
             LOG.debug(() -> "Balance Info response: " + response);
 
-            final OKCoinUserInfoWrapper userInfoWrapper = gson.fromJson(response.getPayload(), OKCoinUserInfoWrapper.class);
+            final OKCoinUserInfoWrapper userInfoWrapper = parseJson(gson, response.getPayload(), OKCoinUserInfoWrapper.class);
             if (userInfoWrapper.result) {
 
                 final Map<String, BigDecimal> balancesAvailable = new HashMap<>();
@@ -735,7 +738,7 @@ public final class OkCoinExchangeAdapter extends AbstractExchangeAdapter impleme
             requestHeaders.put("Content-Type", "application/x-www-form-urlencoded");
 
             final URL url = new URL(PUBLIC_API_BASE_URL + apiMethod + queryString);
-            return sendNetworkRequest(url, "GET", null, requestHeaders);
+            return sendIdempotentRequest(apiMethod, true, () -> sendNetworkRequest(url, "GET", null, requestHeaders));
 
         } catch (MalformedURLException | UnsupportedEncodingException e) {
             final String errorMsg = UNEXPECTED_IO_ERROR_MSG;
@@ -856,7 +859,7 @@ public final class OkCoinExchangeAdapter extends AbstractExchangeAdapter impleme
         }
 
         messageDigest.update(stringToHash.getBytes("UTF-8"));
-        final byte[] md5HashInBytes = messageDigest.digest();
+        final byte[] md5HashInBytes = computeSignature(messageDigest);
 
         final StringBuilder md5HashAsUpperCaseString = new StringBuilder();
         for (final byte md5HashByte : md5HashInBytes) {
@@ -94,7 +94,7 @@ public final class TestExchangeAdapter extends AbstractExchangeAdapter implement
             final ExchangeHttpResponse response = sendPublicRequestToExchange("order_book/" + marketId);
             LOG.debug(() -> "Market Orders response: " + response);
 
-            final BitstampOrderBook bitstampOrderBook = gson.fromJson(response.getPayload(), BitstampOrderBook.class);
+            final BitstampOrderBook bitstampOrderBook = parseJson(gson, response.getPayload(), BitstampOrderBook.class);
 
             final List<MarketOrder> buyOrders = new ArrayList<>();
             final List<List<BigDecimal>> bitstampBuyOrders = bitstampOrderBook.bids;
@@ -154,7 +154,7 @@ public final class TestExchangeAdapter extends AbstractExchangeAdapter implement
             final ExchangeHttpResponse response = sendPublicRequestToExchange("ticker/" + marketId);
             LOG.debug(() -> "Latest Market Price response: " + response);
 
-            final BitstampTicker bitstampTicker = gson.fromJson(response.getPayload(), BitstampTicker.class);
+            final BitstampTicker bitstampTicker = parseJson(gson, response.getPayload(), BitstampTicker.class);
             return bitstampTicker.last;
 
         } catch (ExchangeNetworkException | TradingApiException e) {
@@ -321,7 +321,7 @@ public final class TestExchangeAdapter extends AbstractExchangeAdapter implement
 
             // MUST have the trailing slash even if no params... else exchange barfs!
             final URL url = new URL(API_BASE_URL + apiMethod + "/");
-            return sendNetworkRequest(url, "GET", null, requestHeaders);
+            return sendIdempotentRequest(apiMethod, true, () -> sendNetworkRequest(url, "GET", null, requestHeaders));
 
         } catch (MalformedURLException e) {
             final String errorMsg = UNEXPECTED_IO_ERROR_MSG;
@@ -126,6 +126,10 @@ public class TestBitfinexExchangeAdapter {
         expect(networkConfig.getConnectionTimeout()).andReturn(30);
         expect(networkConfig.getNonFatalErrorCodes()).andReturn(nonFatalNetworkErrorCodes);
         expect(networkConfig.getNonFatalErrorMessages()).andReturn(nonFatalNetworkErrorMessages);
+        expect(networkConfig.getAcceptEncoding()).andReturn(null);
+        expect(networkConfig.getMaxRetries()).andReturn(null);
+        expect(networkConfig.getRetryBackoffMillis()).andReturn(null);
+        expect(networkConfig.getHedgePercentile()).andReturn(null);
 
         exchangeConfig = PowerMock.createMock(ExchangeConfig.class);
         expect(exchangeConfig.getAuthenticationConfig()).andReturn(authenticationConfig);
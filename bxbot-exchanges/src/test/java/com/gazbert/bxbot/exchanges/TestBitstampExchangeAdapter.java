@@ -27,7 +27,12 @@ import com.gazbert.bxbot.exchange.api.AuthenticationConfig;
 import com.gazbert.bxbot.exchange.api.ExchangeAdapter;
 import com.gazbert.bxbot.exchange.api.ExchangeConfig;
 import com.gazbert.bxbot.exchange.api.NetworkConfig;
+import com.gazbert.bxbot.exchange.api.replay.ResponseReplay;
+import com.gazbert.bxbot.exchange.api.resilience.CallBudget;
+import com.gazbert.bxbot.exchange.api.transfer.TransferMeter;
 import com.gazbert.bxbot.trading.api.*;
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpServer;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -36,7 +41,14 @@ import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -45,6 +57,15 @@ import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.easymock.EasyMock.*;
 import static org.junit.Assert.*;
@@ -66,7 +87,7 @@ import static org.junit.Assert.*;
  * @author gazbert
  */
 @RunWith(PowerMockRunner.class)
-@PowerMockIgnore({"javax.crypto.*"})
+@PowerMockIgnore({"javax.crypto.*", "com.sun.net.httpserver.*", "sun.net.httpserver.*"})
 @PrepareForTest(BitstampExchangeAdapter.class)
 public class TestBitstampExchangeAdapter {
 
@@ -134,6 +155,10 @@ public class TestBitstampExchangeAdapter {
         expect(networkConfig.getConnectionTimeout()).andReturn(30);
         expect(networkConfig.getNonFatalErrorCodes()).andReturn(nonFatalNetworkErrorCodes);
         expect(networkConfig.getNonFatalErrorMessages()).andReturn(nonFatalNetworkErrorMessages);
+        expect(networkConfig.getAcceptEncoding()).andReturn(null);
+        expect(networkConfig.getMaxRetries()).andReturn(null);
+        expect(networkConfig.getRetryBackoffMillis()).andReturn(null);
+        expect(networkConfig.getHedgePercentile()).andReturn(null);
 
         exchangeConfig = PowerMock.createMock(ExchangeConfig.class);
         expect(exchangeConfig.getAuthenticationConfig()).andReturn(authenticationConfig);
@@ -730,6 +755,260 @@ public class TestBitstampExchangeAdapter {
         PowerMock.verifyAll();
     }
 
+    // ------------------------------------------------------------------------------------------------
+    //  Response replay tests
+    // ------------------------------------------------------------------------------------------------
+
+    @Test
+    public void testRecordedResponseIsReplayedWithoutGoingToExchange() throws Exception {
+
+        final byte[] encoded = Files.readAllBytes(Paths.get(BALANCE_JSON_RESPONSE));
+        final ResponseReplay responseReplay = new ResponseReplay();
+        responseReplay.record("POST", new URL("https://www.bitstamp.net/api/v2/" + BALANCE + "/"), 200, "OK",
+                new String(encoded, StandardCharsets.UTF_8));
+        responseReplay.startReplaying();
+
+        PowerMock.replayAll();
+        final BitstampExchangeAdapter exchangeAdapter = new BitstampExchangeAdapter();
+        exchangeAdapter.init(exchangeConfig);
+
+        ResponseReplay.attach(responseReplay);
+        try {
+            // request is still built and signed, but the recorded response is parsed
+            final BalanceInfo balanceInfo = exchangeAdapter.getBalanceInfo();
+            assertTrue(balanceInfo.getBalancesAvailable().get("BTC").compareTo(new BigDecimal("0.00760854")) == 0);
+
+            // nothing recorded for the ticker, so it fails rather than going to the exchange
+            try {
+                exchangeAdapter.getLatestMarketPrice(MARKET_ID);
+                fail("Should have failed - no response recorded for ticker.");
+            } catch (ExchangeNetworkException e) {
+                assertTrue(e.getMessage().contains("ticker"));
+            }
+        } finally {
+            ResponseReplay.detach();
+        }
+        PowerMock.verifyAll();
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    //  Request coalescing tests
+    // ------------------------------------------------------------------------------------------------
+
+    @Test
+    public void testIdenticalGetRequestsInFlightShareOneNetworkCallAndParsedResult() throws Exception {
+
+        final byte[] tickerJson = Files.readAllBytes(Paths.get(TICKER_JSON_RESPONSE));
+        final AtomicInteger requestsReceived = new AtomicInteger();
+        final CountDownLatch releaseResponse = new CountDownLatch(1);
+
+        final HttpServer exchange = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        exchange.createContext("/", httpExchange -> {
+            requestsReceived.incrementAndGet();
+            try {
+                releaseResponse.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            httpExchange.sendResponseHeaders(200, tickerJson.length);
+            try (OutputStream responseBody = httpExchange.getResponseBody()) {
+                responseBody.write(tickerJson);
+            }
+        });
+        exchange.start();
+
+        PowerMock.replayAll();
+        final BitstampExchangeAdapter exchangeAdapter = new BitstampExchangeAdapter();
+        exchangeAdapter.init(exchangeConfig);
+
+        // in the bot, each caller has its own adapter instance - requests are coalesced across all of them
+        final URL tickerUrl = new URL("http://localhost:" + exchange.getAddress().getPort() + "/api/v2/ticker/btcusd/");
+        final Gson gson = new Gson();
+        try {
+            final FutureTask<Object[]> firstCall = new FutureTask<>(() -> fetchAndParse(exchangeAdapter, gson, tickerUrl));
+            final Thread firstCaller = new Thread(firstCall);
+            firstCaller.start();
+            while (requestsReceived.get() == 0) {
+                Thread.sleep(10);
+            }
+
+            final FutureTask<Object[]> secondCall = new FutureTask<>(() -> fetchAndParse(exchangeAdapter, gson, tickerUrl));
+            final Thread secondCaller = new Thread(secondCall);
+            secondCaller.start();
+            while (secondCaller.getState() != Thread.State.TIMED_WAITING) {
+                Thread.sleep(10);
+            }
+            releaseResponse.countDown();
+
+            final Object[] firstResult = firstCall.get(10, TimeUnit.SECONDS);
+            final Object[] secondResult = secondCall.get(10, TimeUnit.SECONDS);
+            assertEquals(1, requestsReceived.get());
+            assertSame(firstResult[0], secondResult[0]);
+            assertSame(firstResult[1], secondResult[1]);
+            assertEquals(1L, firstResult[2]);
+            assertEquals(0L, firstResult[3]);
+            assertEquals(0L, secondResult[2]);
+            assertEquals(1L, secondResult[3]);
+
+            // nothing is cached once the request has completed
+            exchangeAdapter.sendNetworkRequest(tickerUrl, "GET", null, null);
+            assertEquals(2, requestsReceived.get());
+        } finally {
+            exchange.stop(0);
+        }
+        PowerMock.verifyAll();
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    //  Retry and hedging tests
+    // ------------------------------------------------------------------------------------------------
+
+    @Test
+    public void testIdempotentRequestIsRetriedAfterNetworkErrorWithinCycleBudget() throws Exception {
+
+        final byte[] tickerJson = Files.readAllBytes(Paths.get(TICKER_JSON_RESPONSE));
+        final AtomicInteger requestsReceived = new AtomicInteger();
+
+        // every other request fails with a 503
+        final HttpServer exchange = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        exchange.createContext("/", httpExchange -> {
+            if (requestsReceived.incrementAndGet() % 2 == 1) {
+                httpExchange.sendResponseHeaders(503, -1);
+                httpExchange.close();
+                return;
+            }
+            httpExchange.sendResponseHeaders(200, tickerJson.length);
+            try (OutputStream responseBody = httpExchange.getResponseBody()) {
+                responseBody.write(tickerJson);
+            }
+        });
+        exchange.start();
+
+        expectResilienceConfig(2, null);
+        PowerMock.replayAll();
+        final BitstampExchangeAdapter exchangeAdapter = new BitstampExchangeAdapter();
+        exchangeAdapter.init(exchangeConfig);
+
+        final URL tickerUrl = new URL("http://localhost:" + exchange.getAddress().getPort() + "/api/v2/ticker/btcusd/");
+        try {
+            TransferMeter.reset();
+            final AbstractExchangeAdapter.ExchangeHttpResponse response = exchangeAdapter.sendIdempotentRequest(
+                    TICKER, false, () -> exchangeAdapter.sendNetworkRequest(tickerUrl, "GET", null, null));
+            assertEquals(200, response.getStatusCode());
+            assertEquals(2, requestsReceived.get());
+            assertEquals(2L, TransferMeter.getNetworkRequests());
+            assertEquals(1L, TransferMeter.getRetries());
+
+            // no retry if the backoff would overrun the trade cycle
+            CallBudget.setDeadline(System.currentTimeMillis());
+            try {
+                exchangeAdapter.sendIdempotentRequest(
+                        TICKER, false, () -> exchangeAdapter.sendNetworkRequest(tickerUrl, "GET", null, null));
+                fail("Expected ExchangeNetworkException");
+            } catch (ExchangeNetworkException e) {
+                assertEquals(3, requestsReceived.get());
+                assertEquals(1L, TransferMeter.getRetries());
+            } finally {
+                CallBudget.clear();
+            }
+        } finally {
+            exchange.stop(0);
+        }
+        PowerMock.verifyAll();
+    }
+
+    @Test
+    public void testSlowPublicRequestIsHedgedAndFirstResponseWins() throws Exception {
+
+        final byte[] tickerJson = Files.readAllBytes(Paths.get(TICKER_JSON_RESPONSE));
+        final AtomicInteger requestsReceived = new AtomicInteger();
+        final CountDownLatch releaseSlowResponse = new CountDownLatch(1);
+        final int slowRequest = 21; // once 20 latencies have been recorded
+
+        final HttpServer exchange = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        final ExecutorService requestHandlers = Executors.newCachedThreadPool();
+        exchange.setExecutor(requestHandlers);
+        exchange.createContext("/", httpExchange -> {
+            if (requestsReceived.incrementAndGet() == slowRequest) {
+                try {
+                    releaseSlowResponse.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            httpExchange.sendResponseHeaders(200, tickerJson.length);
+            try (OutputStream responseBody = httpExchange.getResponseBody()) {
+                responseBody.write(tickerJson);
+            }
+        });
+        exchange.start();
+
+        expectResilienceConfig(null, 90);
+        PowerMock.replayAll();
+        final BitstampExchangeAdapter exchangeAdapter = new BitstampExchangeAdapter();
+        exchangeAdapter.init(exchangeConfig);
+
+        final URL tickerUrl = new URL("http://localhost:" + exchange.getAddress().getPort() + "/api/v2/ticker/btcusd/");
+        try {
+            for (int i = 1; i < slowRequest; i++) {
+                exchangeAdapter.sendIdempotentRequest(
+                        TICKER, true, () -> exchangeAdapter.sendNetworkRequest(tickerUrl, "GET", null, null));
+            }
+
+            TransferMeter.reset();
+            final AbstractExchangeAdapter.ExchangeHttpResponse response = exchangeAdapter.sendIdempotentRequest(
+                    TICKER, true, () -> exchangeAdapter.sendNetworkRequest(tickerUrl, "GET", null, null));
+            assertEquals(200, response.getStatusCode());
+            assertEquals(slowRequest + 1, requestsReceived.get());
+            assertEquals(1L, TransferMeter.getHedgedRequests());
+            assertEquals(1L, TransferMeter.getNetworkRequests());
+        } finally {
+            releaseSlowResponse.countDown();
+            exchange.stop(0);
+            requestHandlers.shutdownNow();
+        }
+        PowerMock.verifyAll();
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    //  Response decoding tests
+    // ------------------------------------------------------------------------------------------------
+
+    @Test
+    public void testCompressedResponsesAreDecoded() throws Exception {
+
+        final byte[] json = Files.readAllBytes(Paths.get(BALANCE_JSON_RESPONSE));
+
+        final ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (OutputStream gzipStream = new GZIPOutputStream(gzipped)) {
+            gzipStream.write(json);
+        }
+        assertArrayEquals(json, decode(gzipped.toByteArray(), "gzip"));
+        assertArrayEquals(json, decode(gzipped.toByteArray(), "x-gzip"));
+
+        final ByteArrayOutputStream zlibDeflated = new ByteArrayOutputStream();
+        try (OutputStream deflateStream = new DeflaterOutputStream(zlibDeflated)) {
+            deflateStream.write(json);
+        }
+        assertArrayEquals(json, decode(zlibDeflated.toByteArray(), "deflate"));
+
+        // some servers send raw deflate data without the zlib wrapper
+        final ByteArrayOutputStream rawDeflated = new ByteArrayOutputStream();
+        try (OutputStream deflateStream = new DeflaterOutputStream(rawDeflated,
+                new Deflater(Deflater.DEFAULT_COMPRESSION, true))) {
+            deflateStream.write(json);
+        }
+        assertArrayEquals(json, decode(rawDeflated.toByteArray(), "Deflate"));
+
+        assertArrayEquals(json, decode(json, null));
+        assertArrayEquals(json, decode(json, "identity"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnsupportedContentEncodingIsRejected() throws Exception {
+        decode("{}".getBytes(StandardCharsets.UTF_8), "compress");
+    }
+
     // ------------------------------------------------------------------------------------------------
     //  Non Exchange visiting tests
     // ------------------------------------------------------------------------------------------------
@@ -815,4 +1094,45 @@ public class TestBitstampExchangeAdapter {
 
         PowerMock.verifyAll();
     }
+
+    // ------------------------------------------------------------------------------------------------
+    //  Private utils
+    // ------------------------------------------------------------------------------------------------
+
+    private void expectResilienceConfig(Integer maxRetries, Integer hedgePercentile) {
+        PowerMock.reset(networkConfig);
+        expect(networkConfig.getConnectionTimeout()).andReturn(30);
+        expect(networkConfig.getNonFatalErrorCodes()).andReturn(nonFatalNetworkErrorCodes);
+        expect(networkConfig.getNonFatalErrorMessages()).andReturn(nonFatalNetworkErrorMessages);
+        expect(networkConfig.getAcceptEncoding()).andReturn(null);
+        expect(networkConfig.getMaxRetries()).andReturn(maxRetries);
+        expect(networkConfig.getRetryBackoffMillis()).andReturn(1);
+        expect(networkConfig.getHedgePercentile()).andReturn(hedgePercentile);
+    }
+
+    /*
+     * Returns the response, its parsed payload, and the network and coalesced requests counted on the caller's thread.
+     */
+    private static Object[] fetchAndParse(BitstampExchangeAdapter exchangeAdapter, Gson gson, URL url)
+            throws Exception {
+        TransferMeter.reset();
+        final AbstractExchangeAdapter.ExchangeHttpResponse response =
+                exchangeAdapter.sendNetworkRequest(url, "GET", null, null);
+        final Object parsedPayload = exchangeAdapter.parseJson(gson, response.getPayload(), Map.class);
+        return new Object[]{response, parsedPayload, TransferMeter.getNetworkRequests(),
+                TransferMeter.getCoalescedRequests()};
+    }
+
+    private static byte[] decode(byte[] responseBody, String contentEncoding) throws IOException {
+        try (InputStream decodedStream = AbstractExchangeAdapter.decodeContentEncoding(
+                new ByteArrayInputStream(responseBody), contentEncoding)) {
+            final ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int bytesRead;
+            while ((bytesRead = decodedStream.read(buffer)) != -1) {
+                decoded.write(buffer, 0, bytesRead);
+            }
+            return decoded.toByteArray();
+        }
+    }
 }
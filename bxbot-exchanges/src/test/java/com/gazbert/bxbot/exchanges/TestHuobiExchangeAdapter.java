@@ -134,6 +134,10 @@ public class TestHuobiExchangeAdapter {
         expect(networkConfig.getConnectionTimeout()).andReturn(30);
         expect(networkConfig.getNonFatalErrorCodes()).andReturn(nonFatalNetworkErrorCodes);
         expect(networkConfig.getNonFatalErrorMessages()).andReturn(nonFatalNetworkErrorMessages);
+        expect(networkConfig.getAcceptEncoding()).andReturn(null);
+        expect(networkConfig.getMaxRetries()).andReturn(null);
+        expect(networkConfig.getRetryBackoffMillis()).andReturn(null);
+        expect(networkConfig.getHedgePercentile()).andReturn(null);
 
         optionalConfig = PowerMock.createMock(OptionalConfig.class);
         expect(optionalConfig.getItem("buy-fee")).andReturn("0.2");
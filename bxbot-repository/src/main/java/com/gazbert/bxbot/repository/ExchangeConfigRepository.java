@@ -24,6 +24,8 @@ package com.gazbert.bxbot.repository;
 
 import com.gazbert.bxbot.domain.exchange.ExchangeConfig;
 
+import java.util.List;
+
 /**
  * The Exchange configuration repository.
  *
@@ -33,5 +35,7 @@ public interface ExchangeConfigRepository {
 
     ExchangeConfig get();
 
+    List<ExchangeConfig> findAll();
+
     ExchangeConfig save(ExchangeConfig config);
 }
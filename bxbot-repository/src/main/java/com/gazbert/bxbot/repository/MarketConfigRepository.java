@@ -41,4 +41,21 @@ public interface MarketConfigRepository {
     MarketConfig save(MarketConfig config);
 
     MarketConfig delete(String id);
+
+    /*
+     * The version of all of the Market config. It changes whenever any Market config is saved, so it tells callers,
+     * e.g. the Trading Engine, when to reload the config. Use getVersion(id) for optimistic locking.
+     */
+    String getVersion();
+
+    /*
+     * The version of the Market config with the given id, or null if there is no such config. It changes only when
+     * that Market config changes. Passing it to save/delete makes them fail with a ConfigVersionConflictException if
+     * someone else has changed that Market config since; null means don't check.
+     */
+    String getVersion(String id);
+
+    MarketConfig save(MarketConfig config, String expectedVersion);
+
+    MarketConfig delete(String id, String expectedVersion);
 }
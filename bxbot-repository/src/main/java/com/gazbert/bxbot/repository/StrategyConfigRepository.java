@@ -42,4 +42,21 @@ public interface StrategyConfigRepository {
     StrategyConfig save(StrategyConfig config);
 
     StrategyConfig delete(String id);
+
+    /*
+     * The version of all of the Strategy config. It changes whenever any Strategy config is saved, so it tells callers,
+     * e.g. the Trading Engine, when to reload the config. Use getVersion(id) for optimistic locking.
+     */
+    String getVersion();
+
+    /*
+     * The version of the Strategy config with the given id, or null if there is no such config. It changes only when
+     * that Strategy config changes. Passing it to save/delete makes them fail with a ConfigVersionConflictException if
+     * someone else has changed that Strategy config since; null means don't check.
+     */
+    String getVersion(String id);
+
+    StrategyConfig save(StrategyConfig config, String expectedVersion);
+
+    StrategyConfig delete(String id, String expectedVersion);
 }
@@ -0,0 +1,124 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.repository.impl;
+
+import com.gazbert.bxbot.repository.store.ConfigStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.file.Paths;
+
+/**
+ * <p>
+ * The embedded config store used by the *RepositoryEmbeddedStore repositories.
+ * </p>
+ * <p>
+ * The embedded store replaces the XML datastore when the bot is run with the {@value #PROFILE} Spring profile, e.g.
+ * spring.profiles.active=dev,embedded-store in application.properties. The store is kept in the directory given by
+ * the bxbot.store.dir property, ./config/store by default.
+ * </p>
+ * <p>
+ * The first time the store is opened, the config in the XML files is migrated into it. From then on the XML files
+ * are no longer used: config changes are only made to the store.
+ * </p>
+ * <p>
+ * Each bot hosted by the TradingEngineHost has a store of its own, kept in the {@value #HOSTED_BOT_STORE_DIRECTORY}
+ * sub-directory of its config directory - see {@link #forConfigDirectory(String)}.
+ * </p>
+ *
+ * @author gazbert
+ */
+@Component
+@Profile(EmbeddedConfigStore.PROFILE)
+public class EmbeddedConfigStore {
+
+    /**
+     * The Spring profile that switches the repositories over to the embedded store.
+     */
+    public static final String PROFILE = "embedded-store";
+
+    /**
+     * The sub-directory of a hosted bot's config directory its store is kept in.
+     */
+    public static final String HOSTED_BOT_STORE_DIRECTORY = "store";
+
+    static final String ENGINE = "engine";
+    static final String EMAIL_ALERTS = "email-alerts";
+    static final String EXCHANGES = "exchanges";
+    static final String MARKETS = "markets";
+    static final String STRATEGIES = "strategies";
+
+    /*
+     * Id of the single entity in the engine and email alerts collections.
+     */
+    static final String SINGLETON_ID = "default";
+
+    private final ConfigStore configStore;
+
+
+    @Autowired
+    public EmbeddedConfigStore(@Value("${bxbot.store.dir:./config/store}") String storeDirectory) {
+        this(ConfigStore.open(Paths.get(storeDirectory)));
+    }
+
+    public EmbeddedConfigStore(ConfigStore configStore) {
+        this.configStore = configStore;
+    }
+
+    /**
+     * Opens the store for a bot hosted by the TradingEngineHost, migrating the config in the XML files in the bot's
+     * config directory into it the first time it is opened. The caller must close it.
+     *
+     * @param configDirectory the hosted bot's config directory.
+     * @return the bot's store.
+     */
+    public static EmbeddedConfigStore forConfigDirectory(String configDirectory) {
+        final ConfigStore configStore = ConfigStore.open(Paths.get(configDirectory, HOSTED_BOT_STORE_DIRECTORY));
+        try {
+            XmlConfigMigration.migrateIfRequired(configStore, configDirectory);
+        } catch (RuntimeException e) {
+            configStore.close();
+            throw e;
+        }
+        return new EmbeddedConfigStore(configStore);
+    }
+
+    @PostConstruct
+    public void migrateXmlConfig() {
+        XmlConfigMigration.migrateIfRequired(configStore);
+    }
+
+    @PreDestroy
+    public void close() {
+        configStore.close();
+    }
+
+    ConfigStore getStore() {
+        return configStore;
+    }
+}
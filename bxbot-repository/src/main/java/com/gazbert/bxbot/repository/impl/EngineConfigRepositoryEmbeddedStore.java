@@ -0,0 +1,76 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.repository.impl;
+
+import com.gazbert.bxbot.domain.engine.EngineConfig;
+import com.gazbert.bxbot.repository.EngineConfigRepository;
+import com.gazbert.bxbot.repository.store.ConfigStore;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import static com.gazbert.bxbot.repository.impl.EmbeddedConfigStore.ENGINE;
+import static com.gazbert.bxbot.repository.impl.EmbeddedConfigStore.SINGLETON_ID;
+
+/**
+ * An embedded config store implementation of the Engine config repository.
+ *
+ * @author gazbert
+ */
+@Repository("engineConfigRepository")
+@Profile(EmbeddedConfigStore.PROFILE)
+@Transactional
+public class EngineConfigRepositoryEmbeddedStore implements EngineConfigRepository {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    private final ConfigStore configStore;
+
+
+    @Autowired
+    public EngineConfigRepositoryEmbeddedStore(EmbeddedConfigStore embeddedConfigStore) {
+        this.configStore = embeddedConfigStore.getStore();
+    }
+
+    @Override
+    public EngineConfig get() {
+
+        LOG.info(() -> "Fetching EngineConfig...");
+        return configStore.get(ENGINE, SINGLETON_ID, EngineConfig.class);
+    }
+
+    @Override
+    public EngineConfig save(EngineConfig config) {
+
+        LOG.info(() -> "About to save EngineConfig: " + config);
+
+        return configStore.inTransaction(transaction -> {
+            transaction.put(ENGINE, SINGLETON_ID, config);
+            return transaction.get(ENGINE, SINGLETON_ID, EngineConfig.class);
+        });
+    }
+}
@@ -24,11 +24,13 @@
 package com.gazbert.bxbot.repository.impl;
 
 import com.gazbert.bxbot.datastore.ConfigurationManager;
+import com.gazbert.bxbot.datastore.FileLocations;
 import com.gazbert.bxbot.datastore.engine.generated.EngineType;
 import com.gazbert.bxbot.domain.engine.EngineConfig;
 import com.gazbert.bxbot.repository.EngineConfigRepository;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -41,18 +43,34 @@ import static com.gazbert.bxbot.datastore.FileLocations.ENGINE_CONFIG_XSD_FILENA
  * @author gazbert
  */
 @Repository("engineConfigRepository")
+@Profile("!" + EmbeddedConfigStore.PROFILE)
 @Transactional
 public class EngineConfigRepositoryXmlDatastore implements EngineConfigRepository {
 
     private static final Logger LOG = LogManager.getLogger();
 
+    private final String xmlConfigFile;
+
+    public EngineConfigRepositoryXmlDatastore() {
+        this.xmlConfigFile = ENGINE_CONFIG_XML_FILENAME;
+    }
+
+    /**
+     * Creates a repository for the config in another config directory, e.g. a hosted bot's.
+     *
+     * @param configDirectory the config directory.
+     */
+    public EngineConfigRepositoryXmlDatastore(String configDirectory) {
+        this.xmlConfigFile = FileLocations.inConfigDirectory(configDirectory, ENGINE_CONFIG_XML_FILENAME);
+    }
+
     @Override
     public EngineConfig get() {
 
         LOG.info(() -> "Fetching EngineConfig...");
 
         final EngineType internalEngineConfig = ConfigurationManager.loadConfig(EngineType.class,
-                ENGINE_CONFIG_XML_FILENAME, ENGINE_CONFIG_XSD_FILENAME);
+                xmlConfigFile, ENGINE_CONFIG_XSD_FILENAME);
         return adaptInternalToExternalConfig(internalEngineConfig);
     }
 
@@ -62,11 +80,8 @@ public class EngineConfigRepositoryXmlDatastore implements EngineConfigRepositor
         LOG.info(() -> "About to save EngineConfig: " + config);
 
         final EngineType internalEngineConfig = adaptExternalToInternalConfig(config);
-        ConfigurationManager.saveConfig(EngineType.class, internalEngineConfig, ENGINE_CONFIG_XML_FILENAME);
-
-        final EngineType savedEngineConfig = ConfigurationManager.loadConfig(EngineType.class,
-                ENGINE_CONFIG_XML_FILENAME, ENGINE_CONFIG_XSD_FILENAME);
-        return adaptInternalToExternalConfig(savedEngineConfig);
+        ConfigurationManager.saveConfig(EngineType.class, internalEngineConfig, xmlConfigFile);
+        return adaptInternalToExternalConfig(internalEngineConfig);
     }
 
     // ------------------------------------------------------------------------------------------------
@@ -0,0 +1,117 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.repository.impl;
+
+import com.gazbert.bxbot.domain.market.MarketConfig;
+import com.gazbert.bxbot.domain.strategy.StrategyConfig;
+import com.gazbert.bxbot.repository.ConfigVersionConflictException;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>
+ * Versions of single Market and Strategy configs, used for optimistic locking.
+ * </p>
+ * <p>
+ * A config's version is a hash of its content, so it changes only when that config changes. Two REST calls editing
+ * different Markets, or different Strategies, therefore never conflict, even though the configs are kept in the same
+ * file or store collection.
+ * </p>
+ *
+ * @author gazbert
+ */
+final class EntityVersions {
+
+    private EntityVersions() {
+    }
+
+    /*
+     * Returns the version of the given Market config, or null if there is no config.
+     */
+    static String versionOf(MarketConfig marketConfig) {
+        if (marketConfig == null) {
+            return null;
+        }
+        final Hasher hasher = Hashing.murmur3_128().newHasher();
+        putField(hasher, marketConfig.getId());
+        putField(hasher, marketConfig.getName());
+        putField(hasher, marketConfig.getBaseCurrency());
+        putField(hasher, marketConfig.getCounterCurrency());
+        hasher.putBoolean(marketConfig.isEnabled());
+        putField(hasher, marketConfig.getTradingStrategyId());
+        putField(hasher, marketConfig.getExchangeId());
+        return hasher.hash().toString();
+    }
+
+    /*
+     * Returns the version of the given Strategy config, or null if there is no config.
+     */
+    static String versionOf(StrategyConfig strategyConfig) {
+        if (strategyConfig == null) {
+            return null;
+        }
+        final Hasher hasher = Hashing.murmur3_128().newHasher();
+        putField(hasher, strategyConfig.getId());
+        putField(hasher, strategyConfig.getName());
+        putField(hasher, strategyConfig.getDescription());
+        putField(hasher, strategyConfig.getClassName());
+
+        // config items are kept in a HashMap - sort them so the version does not depend on iteration order
+        final Map<String, String> configItems = strategyConfig.getConfigItems() == null
+                ? new TreeMap<>() : new TreeMap<>(strategyConfig.getConfigItems());
+        hasher.putInt(configItems.size());
+        configItems.forEach((name, value) -> {
+            putField(hasher, name);
+            putField(hasher, value);
+        });
+        return hasher.hash().toString();
+    }
+
+    /*
+     * Fails the update if the config is not at the version the caller expects; null means don't check. A config
+     * that does not exist has no version, so an expected version never matches it.
+     */
+    static void checkVersion(String configName, String id, String currentVersion, String expectedVersion) {
+        if (expectedVersion != null && !expectedVersion.equals(currentVersion)) {
+            throw new ConfigVersionConflictException(configName + " config [" + id + "] is at version "
+                    + currentVersion + " not the expected version " + expectedVersion);
+        }
+    }
+
+    /*
+     * Length-prefixed, with null kept distinct from empty, so different field values can never hash the same input.
+     */
+    private static void putField(Hasher hasher, String value) {
+        if (value == null) {
+            hasher.putInt(-1);
+        } else {
+            hasher.putInt(value.length());
+            hasher.putString(value, StandardCharsets.UTF_8);
+        }
+    }
+}
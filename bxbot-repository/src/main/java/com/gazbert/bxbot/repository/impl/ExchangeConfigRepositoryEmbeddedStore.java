@@ -0,0 +1,112 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.repository.impl;
+
+import com.gazbert.bxbot.domain.exchange.ExchangeConfig;
+import com.gazbert.bxbot.repository.ExchangeConfigRepository;
+import com.gazbert.bxbot.repository.store.ConfigStore;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+import static com.gazbert.bxbot.repository.impl.EmbeddedConfigStore.EXCHANGES;
+
+/**
+ * An embedded config store implementation of the Exchange config repository.
+ *
+ * @author gazbert
+ */
+@Repository("exchangeConfigRepository")
+@Profile(EmbeddedConfigStore.PROFILE)
+@Transactional
+public class ExchangeConfigRepositoryEmbeddedStore implements ExchangeConfigRepository {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    private final ConfigStore configStore;
+
+
+    @Autowired
+    public ExchangeConfigRepositoryEmbeddedStore(EmbeddedConfigStore embeddedConfigStore) {
+        this.configStore = embeddedConfigStore.getStore();
+    }
+
+    /*
+     * Returns the default Exchange config, i.e. the first exchange added to the store.
+     */
+    @Override
+    public ExchangeConfig get() {
+
+        LOG.info(() -> "Fetching ExchangeConfig...");
+
+        final List<ExchangeConfig> exchangeConfigs = configStore.findAll(EXCHANGES, ExchangeConfig.class);
+        return exchangeConfigs.isEmpty() ? null : exchangeConfigs.get(0);
+    }
+
+    @Override
+    public List<ExchangeConfig> findAll() {
+
+        LOG.info(() -> "Fetching all ExchangeConfig...");
+        return configStore.findAll(EXCHANGES, ExchangeConfig.class);
+    }
+
+    /*
+     * Updates the exchange with the same id. A config without an id updates the default exchange, as it does in the
+     * XML datastore.
+     */
+    @Override
+    public ExchangeConfig save(ExchangeConfig config) {
+
+        LOG.info(() -> "About to save ExchangeConfig: " + config);
+
+        return configStore.inTransaction(transaction -> {
+
+            String key = toKey(config.getId());
+            if (key.isEmpty()) {
+                final List<ExchangeConfig> exchangeConfigs = transaction.findAll(EXCHANGES, ExchangeConfig.class);
+                key = exchangeConfigs.isEmpty() ? key : toKey(exchangeConfigs.get(0).getId());
+            }
+
+            if (!transaction.contains(EXCHANGES, key)) {
+                LOG.warn("Trying to update ExchangeConfig but id does not exist ExchangeConfig: " + config);
+                return null;
+            }
+
+            transaction.put(EXCHANGES, key, config);
+            return transaction.get(EXCHANGES, key, ExchangeConfig.class);
+        });
+    }
+
+    /*
+     * Exchanges in a single exchange XML file have no id; they are kept under an empty key.
+     */
+    static String toKey(String exchangeId) {
+        return exchangeId == null ? "" : exchangeId;
+    }
+}
@@ -24,17 +24,24 @@
 package com.gazbert.bxbot.repository.impl;
 
 import com.gazbert.bxbot.datastore.ConfigurationManager;
+import com.gazbert.bxbot.datastore.FileLocations;
 import com.gazbert.bxbot.datastore.exchange.generated.*;
 import com.gazbert.bxbot.domain.exchange.AuthenticationConfig;
 import com.gazbert.bxbot.domain.exchange.ExchangeConfig;
 import com.gazbert.bxbot.domain.exchange.NetworkConfig;
 import com.gazbert.bxbot.domain.exchange.OptionalConfig;
 import com.gazbert.bxbot.repository.ExchangeConfigRepository;
+import com.gazbert.bxbot.repository.impl.OptimisticConfigUpdate.Outcome;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
 import static com.gazbert.bxbot.datastore.FileLocations.EXCHANGE_CONFIG_XML_FILENAME;
 import static com.gazbert.bxbot.datastore.FileLocations.EXCHANGE_CONFIG_XSD_FILENAME;
 
@@ -44,19 +51,48 @@ import static com.gazbert.bxbot.datastore.FileLocations.EXCHANGE_CONFIG_XSD_FILE
  * @author gazbert
  */
 @Repository("exchangeConfigRepository")
+@Profile("!" + EmbeddedConfigStore.PROFILE)
 @Transactional
 public class ExchangeConfigRepositoryXmlDatastore implements ExchangeConfigRepository {
 
     private static final Logger LOG = LogManager.getLogger();
 
+    private final String xmlConfigFile;
+
+    public ExchangeConfigRepositoryXmlDatastore() {
+        this.xmlConfigFile = EXCHANGE_CONFIG_XML_FILENAME;
+    }
+
+    /**
+     * Creates a repository for the config in another config directory, e.g. a hosted bot's.
+     *
+     * @param configDirectory the config directory.
+     */
+    public ExchangeConfigRepositoryXmlDatastore(String configDirectory) {
+        this.xmlConfigFile = FileLocations.inConfigDirectory(configDirectory, EXCHANGE_CONFIG_XML_FILENAME);
+    }
+
+    /*
+     * Returns the default Exchange config, i.e. the first exchange in exchange.xml.
+     */
     @Override
     public ExchangeConfig get() {
 
         LOG.info(() -> "Fetching ExchangeConfig...");
 
-        final ExchangeType internalEngineConfig = ConfigurationManager.loadConfig(ExchangeType.class,
-                EXCHANGE_CONFIG_XML_FILENAME, EXCHANGE_CONFIG_XSD_FILENAME);
-        return adaptInternalToExternalConfig(internalEngineConfig);
+        final List<ExchangeType> internalExchangeConfigs = loadAllInternalExchangeConfig();
+        return adaptInternalToExternalConfig(internalExchangeConfigs.get(0));
+    }
+
+    @Override
+    public List<ExchangeConfig> findAll() {
+
+        LOG.info(() -> "Fetching all ExchangeConfig...");
+
+        return loadAllInternalExchangeConfig()
+                .stream()
+                .map(ExchangeConfigRepositoryXmlDatastore::adaptInternalToExternalConfig)
+                .collect(Collectors.toList());
     }
 
     @Override
@@ -64,13 +100,39 @@ public class ExchangeConfigRepositoryXmlDatastore implements ExchangeConfigRepos
 
         LOG.info(() -> "About to save ExchangeConfig: " + config);
 
-        final ExchangeType internalExchangeConfig = adaptExternalToInternalConfig(config);
-        ConfigurationManager.saveConfig(ExchangeType.class, internalExchangeConfig, EXCHANGE_CONFIG_XML_FILENAME);
+        return OptimisticConfigUpdate.apply(ExchangeType.class, xmlConfigFile,
+                EXCHANGE_CONFIG_XSD_FILENAME, null, (Object rootConfig) -> applySave(rootConfig, config));
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Update methods
+    // ------------------------------------------------------------------------------------------------
+
+    private static Outcome<ExchangeConfig> applySave(Object rootConfig, ExchangeConfig config) {
+
+        if (rootConfig instanceof ExchangesType) {
 
-        final ExchangeType internalEngineConfig = ConfigurationManager.loadConfig(ExchangeType.class,
-                EXCHANGE_CONFIG_XML_FILENAME, EXCHANGE_CONFIG_XSD_FILENAME);
+            final ExchangesType internalExchangesConfig = (ExchangesType) rootConfig;
+            final List<ExchangeType> exchangeTypes = internalExchangesConfig.getExchanges();
+            final int index = findExchangeIndex(exchangeTypes, config.getId());
+            if (index < 0) {
+                LOG.warn("Trying to update ExchangeConfig but id does not exist ExchangeConfig: " + config
+                        + " Existing ExchangeConfig ids: " + exchangeTypes.stream().map(ExchangeType::getId)
+                        .collect(Collectors.toList()));
+                return Outcome.noChange(null);
+            }
 
-        return adaptInternalToExternalConfig(internalEngineConfig);
+            final ExchangeType internalExchangeConfig = adaptExternalToInternalConfig(config, exchangeTypes.get(index));
+            exchangeTypes.set(index, internalExchangeConfig);
+            return Outcome.save(internalExchangesConfig, adaptInternalToExternalConfig(internalExchangeConfig));
+
+        } else {
+
+            final ExchangeType internalExchangeConfig = adaptExternalToInternalConfig(config, (ExchangeType) rootConfig);
+            return Outcome.save(internalExchangeConfig,
+                    findExchangeIndex(Collections.singletonList(internalExchangeConfig), config.getId()) < 0
+                            ? null : adaptInternalToExternalConfig(internalExchangeConfig));
+        }
     }
 
     // ------------------------------------------------------------------------------------------------
@@ -87,6 +149,10 @@ public class ExchangeConfigRepositoryXmlDatastore implements ExchangeConfigRepos
         networkConfig.setConnectionTimeout(internalExchangeConfig.getNetworkConfig().getConnectionTimeout());
         networkConfig.setNonFatalErrorCodes(internalExchangeConfig.getNetworkConfig().getNonFatalErrorCodes().getCodes());
         networkConfig.setNonFatalErrorMessages(internalExchangeConfig.getNetworkConfig().getNonFatalErrorMessages().getMessages());
+        networkConfig.setAcceptEncoding(internalExchangeConfig.getNetworkConfig().getAcceptEncoding());
+        networkConfig.setMaxRetries(internalExchangeConfig.getNetworkConfig().getMaxRetries());
+        networkConfig.setRetryBackoffMillis(internalExchangeConfig.getNetworkConfig().getRetryBackoffMillis());
+        networkConfig.setHedgePercentile(internalExchangeConfig.getNetworkConfig().getHedgePercentile());
 
         final OptionalConfig optionalConfig = new OptionalConfig();
         final OptionalConfigType internalOptionalConfig = internalExchangeConfig.getOptionalConfig();
@@ -96,6 +162,7 @@ public class ExchangeConfigRepositoryXmlDatastore implements ExchangeConfigRepos
         }
 
         final ExchangeConfig exchangeConfig = new ExchangeConfig();
+        exchangeConfig.setId(internalExchangeConfig.getId());
         exchangeConfig.setAuthenticationConfig(authenticationConfig);
         exchangeConfig.setExchangeName(internalExchangeConfig.getName());
         exchangeConfig.setExchangeAdapter(internalExchangeConfig.getAdapter());
@@ -104,7 +171,8 @@ public class ExchangeConfigRepositoryXmlDatastore implements ExchangeConfigRepos
         return exchangeConfig;
     }
 
-    private static ExchangeType adaptExternalToInternalConfig(ExchangeConfig externalExchangeConfig) {
+    private static ExchangeType adaptExternalToInternalConfig(ExchangeConfig externalExchangeConfig,
+                                                              ExchangeType existingExchangeConfig) {
 
         final NonFatalErrorCodesType nonFatalErrorCodes = new NonFatalErrorCodesType();
         nonFatalErrorCodes.getCodes().addAll(externalExchangeConfig.getNetworkConfig().getNonFatalErrorCodes());
@@ -114,6 +182,10 @@ public class ExchangeConfigRepositoryXmlDatastore implements ExchangeConfigRepos
         networkConfig.setConnectionTimeout(externalExchangeConfig.getNetworkConfig().getConnectionTimeout());
         networkConfig.setNonFatalErrorCodes(nonFatalErrorCodes);
         networkConfig.setNonFatalErrorMessages(nonFatalErrorMessages);
+        networkConfig.setAcceptEncoding(externalExchangeConfig.getNetworkConfig().getAcceptEncoding());
+        networkConfig.setMaxRetries(externalExchangeConfig.getNetworkConfig().getMaxRetries());
+        networkConfig.setRetryBackoffMillis(externalExchangeConfig.getNetworkConfig().getRetryBackoffMillis());
+        networkConfig.setHedgePercentile(externalExchangeConfig.getNetworkConfig().getHedgePercentile());
 
         final OptionalConfigType optionalConfig = new OptionalConfigType();
         externalExchangeConfig.getOptionalConfig().getItems().forEach((key, value) -> {
@@ -124,17 +196,52 @@ public class ExchangeConfigRepositoryXmlDatastore implements ExchangeConfigRepos
         });
 
         final ExchangeType exchangeConfig = new ExchangeType();
+        exchangeConfig.setId(existingExchangeConfig.getId());
         exchangeConfig.setName(externalExchangeConfig.getExchangeName());
         exchangeConfig.setAdapter(externalExchangeConfig.getExchangeAdapter());
         exchangeConfig.setNetworkConfig(networkConfig);
         exchangeConfig.setOptionalConfig(optionalConfig);
 
         // TODO - Currently, we don't accept AuthenticationConfig - security risk?
-        // We load the existing auth config and merge it in with the updated stuff...
-        final ExchangeType existingExchangeConfig = ConfigurationManager.loadConfig(ExchangeType.class,
-                EXCHANGE_CONFIG_XML_FILENAME, EXCHANGE_CONFIG_XSD_FILENAME);
+        // We take the existing auth config and merge it in with the updated stuff...
         exchangeConfig.setAuthenticationConfig(existingExchangeConfig.getAuthenticationConfig());
 
         return exchangeConfig;
     }
+
+    // ------------------------------------------------------------------------------------------------
+    // Util methods
+    // ------------------------------------------------------------------------------------------------
+
+    /*
+     * exchange.xml can hold a single <exchange> element, or an <exchanges> list when the bot trades on more than
+     * one exchange. Either way, we return a list with the default exchange first.
+     */
+    private List<ExchangeType> loadAllInternalExchangeConfig() {
+
+        final Object rootConfig = ConfigurationManager.loadRootConfig(ExchangeType.class,
+                xmlConfigFile, EXCHANGE_CONFIG_XSD_FILENAME);
+
+        if (rootConfig instanceof ExchangesType) {
+            return ((ExchangesType) rootConfig).getExchanges();
+        }
+        return Collections.singletonList((ExchangeType) rootConfig);
+    }
+
+    /*
+     * A null/empty id refers to the default exchange, i.e. the first one in the list.
+     */
+    private static int findExchangeIndex(List<ExchangeType> exchangeTypes, String id) {
+
+        if (id == null || id.isEmpty()) {
+            return exchangeTypes.isEmpty() ? -1 : 0;
+        }
+
+        for (int i = 0; i < exchangeTypes.size(); i++) {
+            if (id.equals(exchangeTypes.get(i).getId())) {
+                return i;
+            }
+        }
+        return -1;
+    }
 }
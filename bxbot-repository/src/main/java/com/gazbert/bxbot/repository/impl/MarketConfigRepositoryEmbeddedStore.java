@@ -0,0 +1,160 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.repository.impl;
+
+import com.gazbert.bxbot.domain.market.MarketConfig;
+import com.gazbert.bxbot.repository.MarketConfigRepository;
+import com.gazbert.bxbot.repository.store.ConfigStore;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.UUID;
+
+import static com.gazbert.bxbot.repository.impl.EmbeddedConfigStore.MARKETS;
+import static com.gazbert.bxbot.repository.impl.EntityVersions.checkVersion;
+import static com.gazbert.bxbot.repository.impl.EntityVersions.versionOf;
+
+/**
+ * An embedded config store implementation of the Market config repository.
+ *
+ * @author gazbert
+ */
+@Repository("marketConfigRepository")
+@Profile(EmbeddedConfigStore.PROFILE)
+@Transactional
+public class MarketConfigRepositoryEmbeddedStore implements MarketConfigRepository {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    private final ConfigStore configStore;
+
+
+    @Autowired
+    public MarketConfigRepositoryEmbeddedStore(EmbeddedConfigStore embeddedConfigStore) {
+        this.configStore = embeddedConfigStore.getStore();
+    }
+
+    @Override
+    public List<MarketConfig> findAll() {
+
+        LOG.info(() -> "Fetching all Market configs...");
+        return configStore.findAll(MARKETS, MarketConfig.class);
+    }
+
+    @Override
+    public MarketConfig findById(String id) {
+
+        LOG.info(() -> "Fetching Market config for id: " + id);
+        return configStore.get(MARKETS, id, MarketConfig.class);
+    }
+
+    @Override
+    public String getVersion() {
+        return Long.toString(configStore.getVersion(MARKETS));
+    }
+
+    @Override
+    public String getVersion(String id) {
+        return versionOf(configStore.get(MARKETS, id, MarketConfig.class));
+    }
+
+    @Override
+    public MarketConfig save(MarketConfig config) {
+        return save(config, null);
+    }
+
+    @Override
+    public MarketConfig save(MarketConfig config, String expectedVersion) {
+
+        return configStore.inTransaction(transaction -> {
+
+            if (expectedVersion != null) {
+                checkVersion("Market", config.getId(),
+                        versionOf(transaction.get(MARKETS, config.getId(), MarketConfig.class)), expectedVersion);
+            }
+
+            if (config.getId() == null || config.getId().isEmpty()) {
+
+                LOG.info(() -> "About to create MarketConfig: " + config);
+
+                final MarketConfig newMarketConfig = new MarketConfig(config);
+                newMarketConfig.setId(generateUuid());
+                transaction.put(MARKETS, newMarketConfig.getId(), newMarketConfig);
+                return transaction.get(MARKETS, newMarketConfig.getId(), MarketConfig.class);
+
+            } else {
+
+                LOG.info(() -> "About to update MarketConfig: " + config);
+
+                if (transaction.contains(MARKETS, config.getId())) {
+                    transaction.put(MARKETS, config.getId(), config);
+                    return transaction.get(MARKETS, config.getId(), MarketConfig.class);
+                } else {
+                    LOG.warn("Trying to update MarketConfig but id does not exist MarketConfig: " + config);
+                    return null;
+                }
+            }
+        });
+    }
+
+    @Override
+    public MarketConfig delete(String id) {
+        return delete(id, null);
+    }
+
+    @Override
+    public MarketConfig delete(String id, String expectedVersion) {
+
+        LOG.info(() -> "Deleting Market config for id: " + id);
+
+        return configStore.inTransaction(transaction -> {
+
+            if (expectedVersion != null) {
+                checkVersion("Market", id, versionOf(transaction.get(MARKETS, id, MarketConfig.class)),
+                        expectedVersion);
+            }
+
+            final MarketConfig marketToRemove = transaction.get(MARKETS, id, MarketConfig.class);
+            if (marketToRemove != null) {
+                transaction.delete(MARKETS, id);
+            } else {
+                LOG.warn("Trying to delete MarketConfig but id does not exist. MarketConfig id: " + id);
+            }
+            return marketToRemove;
+        });
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Util methods
+    // ------------------------------------------------------------------------------------------------
+
+    private String generateUuid() {
+        return UUID.randomUUID().toString();
+    }
+}
@@ -24,12 +24,15 @@
 package com.gazbert.bxbot.repository.impl;
 
 import com.gazbert.bxbot.datastore.ConfigurationManager;
+import com.gazbert.bxbot.datastore.FileLocations;
 import com.gazbert.bxbot.datastore.market.generated.MarketType;
 import com.gazbert.bxbot.datastore.market.generated.MarketsType;
 import com.gazbert.bxbot.domain.market.MarketConfig;
 import com.gazbert.bxbot.repository.MarketConfigRepository;
+import com.gazbert.bxbot.repository.impl.OptimisticConfigUpdate.Outcome;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -41,6 +44,8 @@ import java.util.stream.Collectors;
 
 import static com.gazbert.bxbot.datastore.FileLocations.MARKETS_CONFIG_XML_FILENAME;
 import static com.gazbert.bxbot.datastore.FileLocations.MARKETS_CONFIG_XSD_FILENAME;
+import static com.gazbert.bxbot.repository.impl.EntityVersions.checkVersion;
+import static com.gazbert.bxbot.repository.impl.EntityVersions.versionOf;
 
 /**
  * An XML datastore implementation of the Market config repository.
@@ -48,11 +53,27 @@ import static com.gazbert.bxbot.datastore.FileLocations.MARKETS_CONFIG_XSD_FILEN
  * @author gazbert
  */
 @Repository("marketConfigRepository")
+@Profile("!" + EmbeddedConfigStore.PROFILE)
 @Transactional
 public class MarketConfigRepositoryXmlDatastore implements MarketConfigRepository {
 
     private static final Logger LOG = LogManager.getLogger();
 
+    private final String xmlConfigFile;
+
+    public MarketConfigRepositoryXmlDatastore() {
+        this.xmlConfigFile = MARKETS_CONFIG_XML_FILENAME;
+    }
+
+    /**
+     * Creates a repository for the config in another config directory, e.g. a hosted bot's.
+     *
+     * @param configDirectory the config directory.
+     */
+    public MarketConfigRepositoryXmlDatastore(String configDirectory) {
+        this.xmlConfigFile = FileLocations.inConfigDirectory(configDirectory, MARKETS_CONFIG_XML_FILENAME);
+    }
+
     @Override
 
     public List<MarketConfig> findAll() {
@@ -60,7 +81,7 @@ public class MarketConfigRepositoryXmlDatastore implements MarketConfigRepositor
         LOG.info(() -> "Fetching all Market configs...");
 
         final MarketsType internalMarketsConfig = ConfigurationManager.loadConfig(MarketsType.class,
-                MARKETS_CONFIG_XML_FILENAME, MARKETS_CONFIG_XSD_FILENAME);
+                xmlConfigFile, MARKETS_CONFIG_XSD_FILENAME);
         return adaptAllInternalToAllExternalConfig(internalMarketsConfig);
     }
 
@@ -70,21 +91,60 @@ public class MarketConfigRepositoryXmlDatastore implements MarketConfigRepositor
         LOG.info(() -> "Fetching Market config for id: " + id);
 
         final MarketsType internalMarketsConfig = ConfigurationManager.loadConfig(MarketsType.class,
-                MARKETS_CONFIG_XML_FILENAME, MARKETS_CONFIG_XSD_FILENAME);
+                xmlConfigFile, MARKETS_CONFIG_XSD_FILENAME);
+        return findMarketConfig(internalMarketsConfig, id);
+    }
 
-        return adaptInternalToExternalConfig(
-                internalMarketsConfig.getMarkets()
-                        .stream()
-                        .filter((item) -> item.getId().equals(id))
-                        .distinct()
-                        .collect(Collectors.toList()));
+    @Override
+    public String getVersion() {
+        return ConfigurationManager.getConfigVersion(MarketsType.class,
+                xmlConfigFile, MARKETS_CONFIG_XSD_FILENAME);
+    }
+
+    @Override
+    public String getVersion(String id) {
+        return versionOf(findById(id));
     }
 
     @Override
     public MarketConfig save(MarketConfig config) {
+        return save(config, null);
+    }
 
-        final MarketsType internalMarketsConfig = ConfigurationManager.loadConfig(MarketsType.class,
-                MARKETS_CONFIG_XML_FILENAME, MARKETS_CONFIG_XSD_FILENAME);
+    @Override
+    public MarketConfig save(MarketConfig config, String expectedVersion) {
+        // the version is checked against the Market itself, not the whole file, so edits to other Markets don't clash
+        return OptimisticConfigUpdate.apply(MarketsType.class, xmlConfigFile, MARKETS_CONFIG_XSD_FILENAME, null,
+                (MarketsType internalMarketsConfig) -> {
+                    checkVersion("Market", config.getId(),
+                            versionOf(findMarketConfig(internalMarketsConfig, config.getId())), expectedVersion);
+                    return applySave(internalMarketsConfig, config);
+                });
+    }
+
+    @Override
+    public MarketConfig delete(String id) {
+        return delete(id, null);
+    }
+
+    @Override
+    public MarketConfig delete(String id, String expectedVersion) {
+
+        LOG.info(() -> "Deleting Market config for id: " + id);
+
+        return OptimisticConfigUpdate.apply(MarketsType.class, xmlConfigFile, MARKETS_CONFIG_XSD_FILENAME, null,
+                (MarketsType internalMarketsConfig) -> {
+                    checkVersion("Market", id, versionOf(findMarketConfig(internalMarketsConfig, id)),
+                            expectedVersion);
+                    return applyDelete(internalMarketsConfig, id);
+                });
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Update methods
+    // ------------------------------------------------------------------------------------------------
+
+    private Outcome<MarketConfig> applySave(MarketsType internalMarketsConfig, MarketConfig config) {
 
         final List<MarketType> marketTypes = internalMarketsConfig.getMarkets()
                 .stream()
@@ -101,19 +161,10 @@ public class MarketConfigRepositoryXmlDatastore implements MarketConfigRepositor
                 final MarketConfig newMarketConfig = new MarketConfig(config);
                 newMarketConfig.setId(generateUuid());
 
-                internalMarketsConfig.getMarkets().add(adaptExternalToInternalConfig(newMarketConfig));
-                ConfigurationManager.saveConfig(MarketsType.class, internalMarketsConfig,
-                        MARKETS_CONFIG_XML_FILENAME);
-
-                final MarketsType updatedInternalMarketsConfig = ConfigurationManager.loadConfig(
-                        MarketsType.class, MARKETS_CONFIG_XML_FILENAME, MARKETS_CONFIG_XSD_FILENAME);
-
-                return adaptInternalToExternalConfig(
-                        updatedInternalMarketsConfig.getMarkets()
-                                .stream()
-                                .filter((item) -> item.getId().equals(newMarketConfig.getId()))
-                                .distinct()
-                                .collect(Collectors.toList()));
+                final MarketType newMarketType = adaptExternalToInternalConfig(newMarketConfig);
+                internalMarketsConfig.getMarkets().add(newMarketType);
+                return Outcome.save(internalMarketsConfig,
+                        adaptInternalToExternalConfig(Collections.singletonList(newMarketType)));
             } else {
                 throw new IllegalStateException("Trying to create new MarketConfig but null/empty id already exists. " +
                         "MarketConfig: " + config + " Existing MarketConfig: "
@@ -126,35 +177,20 @@ public class MarketConfigRepositoryXmlDatastore implements MarketConfigRepositor
 
             if (!marketTypes.isEmpty()) {
 
+                final MarketType updatedMarketType = adaptExternalToInternalConfig(config);
                 internalMarketsConfig.getMarkets().remove(marketTypes.get(0)); // will only be 1 unique strat
-                internalMarketsConfig.getMarkets().add(adaptExternalToInternalConfig(config));
-                ConfigurationManager.saveConfig(MarketsType.class, internalMarketsConfig,
-                        MARKETS_CONFIG_XML_FILENAME);
-
-                final MarketsType updatedInternalMarketsConfig = ConfigurationManager.loadConfig(
-                        MarketsType.class, MARKETS_CONFIG_XML_FILENAME, MARKETS_CONFIG_XSD_FILENAME);
-
-                return adaptInternalToExternalConfig(
-                        updatedInternalMarketsConfig.getMarkets()
-                                .stream()
-                                .filter((item) -> item.getId().equals(config.getId()))
-                                .distinct()
-                                .collect(Collectors.toList()));
+                internalMarketsConfig.getMarkets().add(updatedMarketType);
+                return Outcome.save(internalMarketsConfig,
+                        adaptInternalToExternalConfig(Collections.singletonList(updatedMarketType)));
             } else {
                 LOG.warn("Trying to update MarketConfig but id does not exist MarketConfig: " + config +
                         " Existing MarketConfig: " + adaptAllInternalToAllExternalConfig(internalMarketsConfig));
-                return null;
+                return Outcome.noChange(null);
             }
         }
     }
 
-    @Override
-    public MarketConfig delete(String id) {
-
-        LOG.info(() -> "Deleting Market config for id: " + id);
-
-        final MarketsType internalMarketsConfig = ConfigurationManager.loadConfig(MarketsType.class,
-                MARKETS_CONFIG_XML_FILENAME, MARKETS_CONFIG_XSD_FILENAME);
+    private static Outcome<MarketConfig> applyDelete(MarketsType internalMarketsConfig, String id) {
 
         final List<MarketType> marketTypes = internalMarketsConfig.getMarkets()
                 .stream()
@@ -166,14 +202,12 @@ public class MarketConfigRepositoryXmlDatastore implements MarketConfigRepositor
 
             final MarketType marketToRemove = marketTypes.get(0); // will only be 1 unique strat
             internalMarketsConfig.getMarkets().remove(marketToRemove);
-            ConfigurationManager.saveConfig(MarketsType.class, internalMarketsConfig,
-                    MARKETS_CONFIG_XML_FILENAME);
-
-            return adaptInternalToExternalConfig(Collections.singletonList(marketToRemove));
+            return Outcome.save(internalMarketsConfig,
+                    adaptInternalToExternalConfig(Collections.singletonList(marketToRemove)));
         } else {
             LOG.warn("Trying to delete MarketConfig but id does not exist. MarketConfig id: " + id
                     + " Existing MarketConfig: " + adaptAllInternalToAllExternalConfig(internalMarketsConfig));
-            return null;
+            return Outcome.noChange(null);
         }
     }
 
@@ -181,6 +215,15 @@ public class MarketConfigRepositoryXmlDatastore implements MarketConfigRepositor
     // Adapter methods
     // ------------------------------------------------------------------------------------------------
 
+    private static MarketConfig findMarketConfig(MarketsType internalMarketsConfig, String id) {
+        return adaptInternalToExternalConfig(
+                internalMarketsConfig.getMarkets()
+                        .stream()
+                        .filter((item) -> item.getId().equals(id))
+                        .distinct()
+                        .collect(Collectors.toList()));
+    }
+
     private static List<MarketConfig> adaptAllInternalToAllExternalConfig(MarketsType internalMarketsConfig) {
 
         final List<MarketConfig> marketConfigItems = new ArrayList<>();
@@ -195,6 +238,7 @@ public class MarketConfigRepositoryXmlDatastore implements MarketConfigRepositor
             marketConfig.setBaseCurrency(item.getBaseCurrency());
             marketConfig.setCounterCurrency(item.getCounterCurrency());
             marketConfig.setTradingStrategyId(item.getTradingStrategyId());
+            marketConfig.setExchangeId(item.getExchangeId());
 
             marketConfigItems.add(marketConfig);
         });
@@ -216,6 +260,7 @@ public class MarketConfigRepositoryXmlDatastore implements MarketConfigRepositor
             marketConfig.setBaseCurrency(internalMarketConfig.getBaseCurrency());
             marketConfig.setCounterCurrency(internalMarketConfig.getCounterCurrency());
             marketConfig.setTradingStrategyId(internalMarketConfig.getTradingStrategyId());
+            marketConfig.setExchangeId(internalMarketConfig.getExchangeId());
 
             return marketConfig;
         }
@@ -231,6 +276,7 @@ public class MarketConfigRepositoryXmlDatastore implements MarketConfigRepositor
         marketType.setBaseCurrency(externalMarketConfig.getBaseCurrency());
         marketType.setCounterCurrency(externalMarketConfig.getCounterCurrency());
         marketType.setTradingStrategyId(externalMarketConfig.getTradingStrategyId());
+        marketType.setExchangeId(externalMarketConfig.getExchangeId());
         return marketType;
     }
 
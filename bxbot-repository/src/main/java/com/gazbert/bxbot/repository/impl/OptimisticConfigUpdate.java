@@ -0,0 +1,127 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gazbert.bxbot.repository.impl;
+
+import com.gazbert.bxbot.datastore.ConfigurationManager;
+import com.gazbert.bxbot.datastore.StaleConfigException;
+import com.gazbert.bxbot.datastore.VersionedConfig;
+import com.gazbert.bxbot.repository.ConfigVersionConflictException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.function.Function;
+
+/**
+ * <p>
+ * Runs a load-modify-save of an XML config file using optimistic locking.
+ * </p>
+ * <p>
+ * The config is loaded along with its version, modified, and saved only if the file is still at that version. If
+ * someone else saved the file in the meantime, the update is re-applied to a fresh load, so two REST calls updating
+ * different entities in the same file both make it in, without either of them holding a lock while it works.
+ * </p>
+ * <p>
+ * If the caller gives an expected version, e.g. from an HTTP If-Match header, the update is never retried: it fails
+ * with a {@link ConfigVersionConflictException} if the config is not at that version. Config files holding many
+ * entities, e.g. markets.xml, pass no expected version here and check the version of the single entity being changed
+ * inside the modification instead - see {@link EntityVersions}. That check is made again each time the update is
+ * re-applied.
+ * </p>
+ *
+ * @author gazbert
+ */
+final class OptimisticConfigUpdate {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    /*
+     * How many times to re-apply an update when someone else saves the file first before we give up.
+     */
+    private static final int MAX_ATTEMPTS = 5;
+
+    private OptimisticConfigUpdate() {
+    }
+
+    /*
+     * What a modification did: the config to save - null if it changed nothing - and the result to return.
+     */
+    static final class Outcome<R> {
+
+        private final Object configToSave;
+        private final R result;
+
+        private Outcome(Object configToSave, R result) {
+            this.configToSave = configToSave;
+            this.result = result;
+        }
+
+        static <R> Outcome<R> save(Object configToSave, R result) {
+            return new Outcome<>(configToSave, result);
+        }
+
+        static <R> Outcome<R> noChange(R result) {
+            return new Outcome<>(null, result);
+        }
+    }
+
+    /*
+     * Loads the root config of the given file, applies the modification, and saves the config it returns.
+     */
+    @SuppressWarnings("unchecked")
+    static <C, R> R apply(Class<?> configClass, String xmlConfigFile, String xmlSchemaFile, String expectedVersion,
+                          Function<C, Outcome<R>> modification) {
+
+        for (int attempt = 1; ; attempt++) {
+
+            final VersionedConfig<Object> versionedConfig =
+                    ConfigurationManager.loadVersionedRootConfig(configClass, xmlConfigFile, xmlSchemaFile);
+
+            if (expectedVersion != null && !expectedVersion.equals(versionedConfig.getVersion())) {
+                throw new ConfigVersionConflictException("Config in [" + xmlConfigFile + "] is at version "
+                        + versionedConfig.getVersion() + " not the expected version " + expectedVersion);
+            }
+
+            final Outcome<R> outcome = modification.apply((C) versionedConfig.getConfig());
+            if (outcome.configToSave == null) {
+                return outcome.result;
+            }
+
+            try {
+                ConfigurationManager.saveConfig((Class<Object>) outcome.configToSave.getClass(), outcome.configToSave,
+                        xmlConfigFile, versionedConfig.getVersion());
+                return outcome.result;
+
+            } catch (StaleConfigException e) {
+                if (expectedVersion != null) {
+                    throw new ConfigVersionConflictException(e.getMessage());
+                }
+                if (attempt == MAX_ATTEMPTS) {
+                    throw e;
+                }
+                final int failedAttempt = attempt;
+                LOG.warn(() -> "Config in [" + xmlConfigFile + "] was changed by someone else - re-applying update. "
+                        + "Attempt " + failedAttempt + " of " + MAX_ATTEMPTS + " failed.");
+            }
+        }
+    }
+}
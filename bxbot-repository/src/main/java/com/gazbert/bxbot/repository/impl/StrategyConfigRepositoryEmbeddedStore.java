@@ -0,0 +1,160 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.repository.impl;
+
+import com.gazbert.bxbot.domain.strategy.StrategyConfig;
+import com.gazbert.bxbot.repository.StrategyConfigRepository;
+import com.gazbert.bxbot.repository.store.ConfigStore;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.UUID;
+
+import static com.gazbert.bxbot.repository.impl.EmbeddedConfigStore.STRATEGIES;
+import static com.gazbert.bxbot.repository.impl.EntityVersions.checkVersion;
+import static com.gazbert.bxbot.repository.impl.EntityVersions.versionOf;
+
+/**
+ * An embedded config store implementation of the Strategy config repository.
+ *
+ * @author gazbert
+ */
+@Repository("strategyConfigRepository")
+@Profile(EmbeddedConfigStore.PROFILE)
+@Transactional
+public class StrategyConfigRepositoryEmbeddedStore implements StrategyConfigRepository {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    private final ConfigStore configStore;
+
+
+    @Autowired
+    public StrategyConfigRepositoryEmbeddedStore(EmbeddedConfigStore embeddedConfigStore) {
+        this.configStore = embeddedConfigStore.getStore();
+    }
+
+    @Override
+    public List<StrategyConfig> findAll() {
+
+        LOG.info(() -> "Fetching all Strategy configs...");
+        return configStore.findAll(STRATEGIES, StrategyConfig.class);
+    }
+
+    @Override
+    public StrategyConfig findById(String id) {
+
+        LOG.info(() -> "Fetching Strategy config for id: " + id);
+        return configStore.get(STRATEGIES, id, StrategyConfig.class);
+    }
+
+    @Override
+    public String getVersion() {
+        return Long.toString(configStore.getVersion(STRATEGIES));
+    }
+
+    @Override
+    public String getVersion(String id) {
+        return versionOf(configStore.get(STRATEGIES, id, StrategyConfig.class));
+    }
+
+    @Override
+    public StrategyConfig save(StrategyConfig config) {
+        return save(config, null);
+    }
+
+    @Override
+    public StrategyConfig save(StrategyConfig config, String expectedVersion) {
+
+        return configStore.inTransaction(transaction -> {
+
+            if (expectedVersion != null) {
+                checkVersion("Strategy", config.getId(),
+                        versionOf(transaction.get(STRATEGIES, config.getId(), StrategyConfig.class)), expectedVersion);
+            }
+
+            if (config.getId() == null || config.getId().isEmpty()) {
+
+                LOG.info(() -> "About to create StrategyConfig: " + config);
+
+                final StrategyConfig newStrategyConfig = new StrategyConfig(config);
+                newStrategyConfig.setId(generateUuid());
+                transaction.put(STRATEGIES, newStrategyConfig.getId(), newStrategyConfig);
+                return transaction.get(STRATEGIES, newStrategyConfig.getId(), StrategyConfig.class);
+
+            } else {
+
+                LOG.info(() -> "About to update StrategyConfig: " + config);
+
+                if (transaction.contains(STRATEGIES, config.getId())) {
+                    transaction.put(STRATEGIES, config.getId(), config);
+                    return transaction.get(STRATEGIES, config.getId(), StrategyConfig.class);
+                } else {
+                    LOG.warn("Trying to update StrategyConfig but id does not exist StrategyConfig: " + config);
+                    return null;
+                }
+            }
+        });
+    }
+
+    @Override
+    public StrategyConfig delete(String id) {
+        return delete(id, null);
+    }
+
+    @Override
+    public StrategyConfig delete(String id, String expectedVersion) {
+
+        LOG.info(() -> "Deleting Strategy config for id: " + id);
+
+        return configStore.inTransaction(transaction -> {
+
+            if (expectedVersion != null) {
+                checkVersion("Strategy", id, versionOf(transaction.get(STRATEGIES, id, StrategyConfig.class)),
+                        expectedVersion);
+            }
+
+            final StrategyConfig strategyToRemove = transaction.get(STRATEGIES, id, StrategyConfig.class);
+            if (strategyToRemove != null) {
+                transaction.delete(STRATEGIES, id);
+            } else {
+                LOG.warn("Trying to delete StrategyConfig but id does not exist. StrategyConfig id: " + id);
+            }
+            return strategyToRemove;
+        });
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Util methods
+    // ------------------------------------------------------------------------------------------------
+
+    private String generateUuid() {
+        return UUID.randomUUID().toString();
+    }
+}
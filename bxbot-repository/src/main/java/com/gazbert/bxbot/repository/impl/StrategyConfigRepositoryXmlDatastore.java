@@ -24,14 +24,17 @@
 package com.gazbert.bxbot.repository.impl;
 
 import com.gazbert.bxbot.datastore.ConfigurationManager;
+import com.gazbert.bxbot.datastore.FileLocations;
 import com.gazbert.bxbot.datastore.strategy.generated.ConfigItemType;
 import com.gazbert.bxbot.datastore.strategy.generated.OptionalConfigType;
 import com.gazbert.bxbot.datastore.strategy.generated.StrategyType;
 import com.gazbert.bxbot.datastore.strategy.generated.TradingStrategiesType;
 import com.gazbert.bxbot.domain.strategy.StrategyConfig;
 import com.gazbert.bxbot.repository.StrategyConfigRepository;
+import com.gazbert.bxbot.repository.impl.OptimisticConfigUpdate.Outcome;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -43,6 +46,8 @@ import java.util.stream.Collectors;
 
 import static com.gazbert.bxbot.datastore.FileLocations.STRATEGIES_CONFIG_XML_FILENAME;
 import static com.gazbert.bxbot.datastore.FileLocations.STRATEGIES_CONFIG_XSD_FILENAME;
+import static com.gazbert.bxbot.repository.impl.EntityVersions.checkVersion;
+import static com.gazbert.bxbot.repository.impl.EntityVersions.versionOf;
 
 /**
  * An XML datastore implementation of the Strategy config repository.
@@ -50,18 +55,34 @@ import static com.gazbert.bxbot.datastore.FileLocations.STRATEGIES_CONFIG_XSD_FI
  * @author gazbert
  */
 @Repository("strategyConfigRepository")
+@Profile("!" + EmbeddedConfigStore.PROFILE)
 @Transactional
 public class StrategyConfigRepositoryXmlDatastore implements StrategyConfigRepository {
 
     private static final Logger LOG = LogManager.getLogger();
 
+    private final String xmlConfigFile;
+
+    public StrategyConfigRepositoryXmlDatastore() {
+        this.xmlConfigFile = STRATEGIES_CONFIG_XML_FILENAME;
+    }
+
+    /**
+     * Creates a repository for the config in another config directory, e.g. a hosted bot's.
+     *
+     * @param configDirectory the config directory.
+     */
+    public StrategyConfigRepositoryXmlDatastore(String configDirectory) {
+        this.xmlConfigFile = FileLocations.inConfigDirectory(configDirectory, STRATEGIES_CONFIG_XML_FILENAME);
+    }
+
     @Override
     public List<StrategyConfig> findAll() {
 
         LOG.info(() -> "Fetching all Strategy configs...");
 
         final TradingStrategiesType internalStrategiesConfig = ConfigurationManager.loadConfig(TradingStrategiesType.class,
-                STRATEGIES_CONFIG_XML_FILENAME, STRATEGIES_CONFIG_XSD_FILENAME);
+                xmlConfigFile, STRATEGIES_CONFIG_XSD_FILENAME);
         return adaptAllInternalToAllExternalConfig(internalStrategiesConfig);
     }
 
@@ -71,21 +92,63 @@ public class StrategyConfigRepositoryXmlDatastore implements StrategyConfigRepos
         LOG.info(() -> "Fetching config for Strategy id: " + id);
 
         final TradingStrategiesType internalStrategiesConfig = ConfigurationManager.loadConfig(TradingStrategiesType.class,
-                STRATEGIES_CONFIG_XML_FILENAME, STRATEGIES_CONFIG_XSD_FILENAME);
+                xmlConfigFile, STRATEGIES_CONFIG_XSD_FILENAME);
+        return findStrategyConfig(internalStrategiesConfig, id);
+    }
 
-        return adaptInternalToExternalConfig(
-                internalStrategiesConfig.getStrategies()
-                        .stream()
-                        .filter((item) -> item.getId().equals(id))
-                        .distinct()
-                        .collect(Collectors.toList()));
+    @Override
+    public String getVersion() {
+        return ConfigurationManager.getConfigVersion(TradingStrategiesType.class,
+                xmlConfigFile, STRATEGIES_CONFIG_XSD_FILENAME);
+    }
+
+    @Override
+    public String getVersion(String id) {
+        return versionOf(findById(id));
     }
 
     @Override
     public StrategyConfig save(StrategyConfig config) {
+        return save(config, null);
+    }
 
-        final TradingStrategiesType internalStrategiesConfig = ConfigurationManager.loadConfig(TradingStrategiesType.class,
-                STRATEGIES_CONFIG_XML_FILENAME, STRATEGIES_CONFIG_XSD_FILENAME);
+    @Override
+    public StrategyConfig save(StrategyConfig config, String expectedVersion) {
+        // the version is checked against the Strategy itself, not the whole file, so edits to other Strategies
+        // don't clash
+        return OptimisticConfigUpdate.apply(TradingStrategiesType.class, xmlConfigFile,
+                STRATEGIES_CONFIG_XSD_FILENAME, null,
+                (TradingStrategiesType internalStrategiesConfig) -> {
+                    checkVersion("Strategy", config.getId(),
+                            versionOf(findStrategyConfig(internalStrategiesConfig, config.getId())), expectedVersion);
+                    return applySave(internalStrategiesConfig, config);
+                });
+    }
+
+    @Override
+    public StrategyConfig delete(String id) {
+        return delete(id, null);
+    }
+
+    @Override
+    public StrategyConfig delete(String id, String expectedVersion) {
+
+        LOG.info(() -> "Deleting Strategy config for id: " + id);
+
+        return OptimisticConfigUpdate.apply(TradingStrategiesType.class, xmlConfigFile,
+                STRATEGIES_CONFIG_XSD_FILENAME, null,
+                (TradingStrategiesType internalStrategiesConfig) -> {
+                    checkVersion("Strategy", id, versionOf(findStrategyConfig(internalStrategiesConfig, id)),
+                            expectedVersion);
+                    return applyDelete(internalStrategiesConfig, id);
+                });
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Update methods
+    // ------------------------------------------------------------------------------------------------
+
+    private Outcome<StrategyConfig> applySave(TradingStrategiesType internalStrategiesConfig, StrategyConfig config) {
 
         final List<StrategyType> strategyTypes = internalStrategiesConfig.getStrategies()
                 .stream()
@@ -102,19 +165,10 @@ public class StrategyConfigRepositoryXmlDatastore implements StrategyConfigRepos
                 final StrategyConfig newStrategyConfig = new StrategyConfig(config);
                 newStrategyConfig.setId(generateUuid());
 
-                internalStrategiesConfig.getStrategies().add(adaptExternalToInternalConfig(newStrategyConfig));
-                ConfigurationManager.saveConfig(TradingStrategiesType.class, internalStrategiesConfig,
-                        STRATEGIES_CONFIG_XML_FILENAME);
-
-                final TradingStrategiesType updatedInternalStrategiesConfig = ConfigurationManager.loadConfig(
-                        TradingStrategiesType.class, STRATEGIES_CONFIG_XML_FILENAME, STRATEGIES_CONFIG_XSD_FILENAME);
-
-                return adaptInternalToExternalConfig(
-                        updatedInternalStrategiesConfig.getStrategies()
-                                .stream()
-                                .filter((item) -> item.getId().equals(newStrategyConfig.getId()))
-                                .distinct()
-                                .collect(Collectors.toList()));
+                final StrategyType newStrategyType = adaptExternalToInternalConfig(newStrategyConfig);
+                internalStrategiesConfig.getStrategies().add(newStrategyType);
+                return Outcome.save(internalStrategiesConfig,
+                        adaptInternalToExternalConfig(Collections.singletonList(newStrategyType)));
             } else {
                 throw new IllegalStateException("Trying to create new StrategyConfig but null/empty id already exists. " +
                         "StrategyConfig: " + config + " Existing StrategyConfigs: "
@@ -127,34 +181,20 @@ public class StrategyConfigRepositoryXmlDatastore implements StrategyConfigRepos
 
             if (!strategyTypes.isEmpty()) {
 
+                final StrategyType updatedStrategyType = adaptExternalToInternalConfig(config);
                 internalStrategiesConfig.getStrategies().remove(strategyTypes.get(0)); // will only be 1 unique strat
-                internalStrategiesConfig.getStrategies().add(adaptExternalToInternalConfig(config));
-                ConfigurationManager.saveConfig(TradingStrategiesType.class, internalStrategiesConfig, STRATEGIES_CONFIG_XML_FILENAME);
-
-                final TradingStrategiesType updatedInternalStrategiesConfig = ConfigurationManager.loadConfig(
-                        TradingStrategiesType.class, STRATEGIES_CONFIG_XML_FILENAME, STRATEGIES_CONFIG_XSD_FILENAME);
-
-                return adaptInternalToExternalConfig(
-                        updatedInternalStrategiesConfig.getStrategies()
-                                .stream()
-                                .filter((item) -> item.getId().equals(config.getId()))
-                                .distinct()
-                                .collect(Collectors.toList()));
+                internalStrategiesConfig.getStrategies().add(updatedStrategyType);
+                return Outcome.save(internalStrategiesConfig,
+                        adaptInternalToExternalConfig(Collections.singletonList(updatedStrategyType)));
             } else {
                 LOG.warn("Trying to update StrategyConfig but id does not exist StrategyConfig: " + config +
                         " Existing StrategyConfig: " + adaptAllInternalToAllExternalConfig(internalStrategiesConfig));
-                return null;
+                return Outcome.noChange(null);
             }
         }
     }
 
-    @Override
-    public StrategyConfig delete(String id) {
-
-        LOG.info(() -> "Deleting Strategy config for id: " + id);
-
-        final TradingStrategiesType internalStrategiesConfig = ConfigurationManager.loadConfig(TradingStrategiesType.class,
-                STRATEGIES_CONFIG_XML_FILENAME, STRATEGIES_CONFIG_XSD_FILENAME);
+    private static Outcome<StrategyConfig> applyDelete(TradingStrategiesType internalStrategiesConfig, String id) {
 
         final List<StrategyType> strategyTypes = internalStrategiesConfig.getStrategies()
                 .stream()
@@ -166,14 +206,12 @@ public class StrategyConfigRepositoryXmlDatastore implements StrategyConfigRepos
 
             final StrategyType strategyToRemove = strategyTypes.get(0); // will only be 1 unique strat
             internalStrategiesConfig.getStrategies().remove(strategyToRemove);
-            ConfigurationManager.saveConfig(TradingStrategiesType.class, internalStrategiesConfig,
-                    STRATEGIES_CONFIG_XML_FILENAME);
-
-            return adaptInternalToExternalConfig(Collections.singletonList(strategyToRemove));
+            return Outcome.save(internalStrategiesConfig,
+                    adaptInternalToExternalConfig(Collections.singletonList(strategyToRemove)));
         } else {
             LOG.warn("Trying to delete StrategyConfig but id does not exist. StrategyConfig id: " + id
                     + " Existing StrategyConfig: " + adaptAllInternalToAllExternalConfig(internalStrategiesConfig));
-            return null;
+            return Outcome.noChange(null);
         }
     }
 
@@ -181,6 +219,15 @@ public class StrategyConfigRepositoryXmlDatastore implements StrategyConfigRepos
     // Adapter methods
     // ------------------------------------------------------------------------------------------------
 
+    private static StrategyConfig findStrategyConfig(TradingStrategiesType internalStrategiesConfig, String id) {
+        return adaptInternalToExternalConfig(
+                internalStrategiesConfig.getStrategies()
+                        .stream()
+                        .filter((item) -> item.getId().equals(id))
+                        .distinct()
+                        .collect(Collectors.toList()));
+    }
+
     private static List<StrategyConfig> adaptAllInternalToAllExternalConfig(TradingStrategiesType internalStrategiesConfig) {
 
         final List<StrategyConfig> strategyConfigItems = new ArrayList<>();
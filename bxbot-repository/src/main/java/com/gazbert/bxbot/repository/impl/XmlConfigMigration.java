@@ -0,0 +1,120 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.repository.impl;
+
+import com.gazbert.bxbot.domain.emailalerts.EmailAlertsConfig;
+import com.gazbert.bxbot.domain.engine.EngineConfig;
+import com.gazbert.bxbot.domain.exchange.ExchangeConfig;
+import com.gazbert.bxbot.domain.market.MarketConfig;
+import com.gazbert.bxbot.domain.strategy.StrategyConfig;
+import com.gazbert.bxbot.repository.store.ConfigStore;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.List;
+
+import static com.gazbert.bxbot.repository.impl.EmbeddedConfigStore.*;
+
+/**
+ * <p>
+ * One-shot migration of the config in the XML files into the embedded config store.
+ * </p>
+ * <p>
+ * All the config is copied in a single transaction, along with a marker saying the migration has been done, so it
+ * either all makes it into the store or none of it does - a failed migration is simply re-run next time the bot
+ * starts. The XML files are left untouched.
+ * </p>
+ * <p>
+ * A hosted bot's store is migrated from the XML files in the bot's config directory. Hosted bots share the main bot's
+ * email alerts, so they have no email alerts config to migrate.
+ * </p>
+ *
+ * @author gazbert
+ */
+final class XmlConfigMigration {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    private static final String MIGRATIONS = "migrations";
+    private static final String XML_MIGRATION_ID = "xml-datastore";
+
+    private XmlConfigMigration() {
+    }
+
+    static void migrateIfRequired(ConfigStore configStore) {
+        migrateIfRequired(configStore, null);
+    }
+
+    /*
+     * The config directory is null for the main bot.
+     */
+    static void migrateIfRequired(ConfigStore configStore, String configDirectory) {
+
+        final boolean migrated = configStore.inTransaction(transaction -> {
+
+            if (transaction.contains(MIGRATIONS, XML_MIGRATION_ID)) {
+                return false;
+            }
+
+            LOG.info(() -> "Migrating config from the XML datastore into the embedded config store...");
+
+            final EngineConfig engineConfig = (configDirectory == null ? new EngineConfigRepositoryXmlDatastore()
+                    : new EngineConfigRepositoryXmlDatastore(configDirectory)).get();
+            transaction.put(ENGINE, SINGLETON_ID, engineConfig);
+
+            if (configDirectory == null) {
+                final EmailAlertsConfig emailAlertsConfig = new EmailAlertsConfigRepositoryXmlDatastore().get();
+                transaction.put(EMAIL_ALERTS, SINGLETON_ID, emailAlertsConfig);
+            }
+
+            final List<ExchangeConfig> exchangeConfigs = (configDirectory == null
+                    ? new ExchangeConfigRepositoryXmlDatastore()
+                    : new ExchangeConfigRepositoryXmlDatastore(configDirectory)).findAll();
+            exchangeConfigs.forEach(exchangeConfig ->
+                    transaction.put(EXCHANGES, ExchangeConfigRepositoryEmbeddedStore.toKey(exchangeConfig.getId()),
+                            exchangeConfig));
+
+            final List<MarketConfig> marketConfigs = (configDirectory == null
+                    ? new MarketConfigRepositoryXmlDatastore()
+                    : new MarketConfigRepositoryXmlDatastore(configDirectory)).findAll();
+            marketConfigs.forEach(marketConfig -> transaction.put(MARKETS, marketConfig.getId(), marketConfig));
+
+            final List<StrategyConfig> strategyConfigs = (configDirectory == null
+                    ? new StrategyConfigRepositoryXmlDatastore()
+                    : new StrategyConfigRepositoryXmlDatastore(configDirectory)).findAll();
+            strategyConfigs.forEach(strategyConfig ->
+                    transaction.put(STRATEGIES, strategyConfig.getId(), strategyConfig));
+
+            transaction.put(MIGRATIONS, XML_MIGRATION_ID, Long.toString(System.currentTimeMillis()));
+
+            LOG.info(() -> "Migrated " + exchangeConfigs.size() + " exchanges, " + marketConfigs.size()
+                    + " markets and " + strategyConfigs.size() + " strategies from the XML datastore.");
+            return true;
+        });
+
+        if (!migrated) {
+            LOG.info(() -> "Config already migrated from the XML datastore - using the embedded config store.");
+        }
+    }
+}
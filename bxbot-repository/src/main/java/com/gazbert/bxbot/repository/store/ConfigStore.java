@@ -0,0 +1,653 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.repository.store;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * A small embedded, file-based, transactional store for the bot's config.
+ * </p>
+ * <p>
+ * Entities are kept in named collections and indexed by id. The whole store is held in memory - the bot's config
+ * is tiny - so finding an entity is a hash lookup and saving one writes only that entity, not the whole collection.
+ * Entities are stored as JSON, so any of the config domain objects can be put in the store; reads always return a
+ * fresh copy that the caller is free to modify.
+ * </p>
+ * <p>
+ * All changes are made in a {@link Transaction}. On commit, the transaction's changes are appended to the journal
+ * file as a single checksummed record and fsync'ed before they are applied in memory. A committed transaction
+ * therefore survives a crash, and a crash part way through a commit loses just that transaction: the torn record at
+ * the end of the journal is dropped when the store is next opened. Once the journal is mostly made up of entities
+ * that have since been replaced or deleted, it is compacted by writing the live entities to a new journal and
+ * atomically renaming it over the old one.
+ * </p>
+ * <p>
+ * Each collection has a version that changes whenever a transaction changes the collection. Callers can use it for
+ * optimistic locking.
+ * </p>
+ * <p>
+ * Transactions are run one at a time. Reads do not wait for a running transaction; they only wait while a committed
+ * transaction is applied in memory.
+ * </p>
+ *
+ * @author gazbert
+ */
+public final class ConfigStore implements Closeable {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    static final String JOURNAL_FILENAME = "config-store.journal";
+
+    private static final int MAGIC = 0x42585354; // "BXST"
+    private static final int FORMAT_VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    /*
+     * Transaction id of the snapshot record that starts every journal.
+     */
+    private static final long SNAPSHOT_TX_ID = 0;
+
+    /*
+     * The journal is compacted once it is bigger than this and more than half of it is dead entries.
+     */
+    private static final long MIN_COMPACTION_SIZE = 1024 * 1024;
+
+    /*
+     * Marks an entity deleted in a transaction's pending changes.
+     */
+    private static final byte[] DELETED = new byte[0];
+
+    private final Path directory;
+    private final Path journalFile;
+    private final Gson gson = new Gson();
+
+    /*
+     * Only 1 transaction runs at a time. It is also held while the journal is compacted and closed.
+     */
+    private final ReentrantLock transactionLock = new ReentrantLock();
+
+    /*
+     * Guards the in-memory index against a committed transaction being applied while it is being read.
+     */
+    private final ReadWriteLock indexLock = new ReentrantReadWriteLock();
+
+    /*
+     * Collection name -> entity id -> entity JSON. Entities are kept in the order they were first added.
+     */
+    private final Map<String, Map<String, byte[]>> collections = new HashMap<>();
+
+    /*
+     * Collection name -> id of the last transaction that changed it.
+     */
+    private final Map<String, Long> versions = new HashMap<>();
+
+    private FileChannel journal;
+    private long journalSize;
+    private long liveEntityBytes;
+    private long lastTxId;
+
+
+    private ConfigStore(Path directory) {
+        this.directory = directory;
+        this.journalFile = directory.resolve(JOURNAL_FILENAME);
+    }
+
+    /**
+     * Opens the store kept in the given directory, creating it if it does not exist.
+     *
+     * @param directory the directory holding the store's journal.
+     * @return the opened store.
+     * @throws IllegalStateException if the store cannot be opened or its journal is not a valid store journal.
+     */
+    public static ConfigStore open(Path directory) {
+
+        final ConfigStore configStore = new ConfigStore(directory);
+        try {
+            Files.createDirectories(directory);
+            configStore.openJournal();
+            return configStore;
+
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to open config store in " + directory, e);
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Reads
+    // ------------------------------------------------------------------------------------------------
+
+    /**
+     * Fetches an entity by id.
+     *
+     * @param collection the collection the entity is in.
+     * @param id         the entity id.
+     * @param type       the entity type.
+     * @param <T>        the entity type.
+     * @return a copy of the entity, or null if the collection has no entity with the given id.
+     */
+    public <T> T get(String collection, String id, Class<T> type) {
+        indexLock.readLock().lock();
+        try {
+            return fromJson(entitiesIn(collection).get(id), type);
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Fetches all the entities in a collection.
+     *
+     * @param collection the collection.
+     * @param type       the entity type.
+     * @param <T>        the entity type.
+     * @return copies of the entities, in the order they were added to the collection.
+     */
+    public <T> List<T> findAll(String collection, Class<T> type) {
+        final List<byte[]> entities;
+        indexLock.readLock().lock();
+        try {
+            entities = new ArrayList<>(entitiesIn(collection).values());
+        } finally {
+            indexLock.readLock().unlock();
+        }
+        return fromJson(entities, type);
+    }
+
+    /**
+     * Returns the current version of a collection. The version changes whenever a transaction changes the
+     * collection.
+     *
+     * @param collection the collection.
+     * @return the collection's version; 0 if it has never been changed.
+     */
+    public long getVersion(String collection) {
+        indexLock.readLock().lock();
+        try {
+            return versions.getOrDefault(collection, 0L);
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Transactions
+    // ------------------------------------------------------------------------------------------------
+
+    /**
+     * Runs some work in a transaction. The transaction's changes are committed when the work returns, and thrown
+     * away if it throws an exception.
+     *
+     * @param work the work to run.
+     * @param <R>  the work's result type.
+     * @return what the work returned.
+     * @throws IllegalStateException if the store is closed or the transaction cannot be written to the journal.
+     */
+    public <R> R inTransaction(Function<Transaction, R> work) {
+
+        transactionLock.lock();
+        try {
+            if (journal == null) {
+                throw new IllegalStateException("Config store in " + directory + " is closed.");
+            }
+
+            final Transaction transaction = new Transaction();
+            final R result = work.apply(transaction);
+            if (!transaction.changes.isEmpty()) {
+                commit(transaction.changes);
+            }
+            return result;
+
+        } finally {
+            transactionLock.unlock();
+        }
+    }
+
+    /**
+     * A transaction on the store. It sees the store as it was when the transaction started, plus its own changes.
+     * Only valid inside the work passed to {@link #inTransaction(Function)}.
+     */
+    public final class Transaction {
+
+        /*
+         * Collection name -> entity id -> new entity JSON, or DELETED.
+         */
+        private final Map<String, Map<String, byte[]>> changes = new LinkedHashMap<>();
+
+        private Transaction() {
+        }
+
+        public <T> T get(String collection, String id, Class<T> type) {
+            final byte[] change = changesTo(collection).get(id);
+            if (change != null) {
+                return change == DELETED ? null : fromJson(change, type);
+            }
+            return fromJson(entitiesIn(collection).get(id), type);
+        }
+
+        public <T> List<T> findAll(String collection, Class<T> type) {
+            final Map<String, byte[]> entities = new LinkedHashMap<>(entitiesIn(collection));
+            changesTo(collection).forEach((id, change) -> {
+                if (change == DELETED) {
+                    entities.remove(id);
+                } else {
+                    entities.put(id, change);
+                }
+            });
+            return fromJson(new ArrayList<>(entities.values()), type);
+        }
+
+        public boolean contains(String collection, String id) {
+            final byte[] change = changesTo(collection).get(id);
+            return change != null ? change != DELETED : entitiesIn(collection).containsKey(id);
+        }
+
+        /*
+         * The version of the collection when the transaction started.
+         */
+        public long getVersion(String collection) {
+            return versions.getOrDefault(collection, 0L);
+        }
+
+        public void put(String collection, String id, Object entity) {
+            if (id == null || entity == null) {
+                throw new IllegalArgumentException("Cannot put entity with null id or value into collection: "
+                        + collection);
+            }
+            changes.computeIfAbsent(collection, name -> new LinkedHashMap<>())
+                    .put(id, gson.toJson(entity).getBytes(StandardCharsets.UTF_8));
+        }
+
+        /*
+         * Returns false if there is no entity with the given id.
+         */
+        public boolean delete(String collection, String id) {
+            if (!contains(collection, id)) {
+                return false;
+            }
+            changes.computeIfAbsent(collection, name -> new LinkedHashMap<>()).put(id, DELETED);
+            return true;
+        }
+
+        private Map<String, byte[]> changesTo(String collection) {
+            return changes.getOrDefault(collection, Collections.emptyMap());
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Lifecycle
+    // ------------------------------------------------------------------------------------------------
+
+    @Override
+    public void close() {
+        transactionLock.lock();
+        try {
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+        } catch (IOException e) {
+            LOG.warn(() -> "Failed to close config store journal " + journalFile, e);
+        } finally {
+            transactionLock.unlock();
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Journal
+    // ------------------------------------------------------------------------------------------------
+
+    /*
+     * Journal layout: magic, format version, then checksummed records of [length][crc32][payload].
+     * The first record is a snapshot of the whole store; each one after it is a committed transaction.
+     */
+    private void openJournal() throws IOException {
+
+        if (!Files.exists(journalFile)) {
+            LOG.info(() -> "Creating new config store journal: " + journalFile);
+            writeSnapshotJournal();
+        }
+
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(journalFile));
+        if (buffer.remaining() < FILE_HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IllegalStateException(journalFile + " is not a config store journal.");
+        }
+        final int formatVersion = buffer.getInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IllegalStateException("Config store journal " + journalFile + " has unsupported format version "
+                    + formatVersion);
+        }
+
+        final byte[] snapshot = readRecord(buffer);
+        if (snapshot == null) {
+            throw new IllegalStateException("Config store journal " + journalFile + " is corrupt - its snapshot "
+                    + "record is incomplete or fails its checksum.");
+        }
+        applyRecord(snapshot);
+
+        int transactionCount = 0;
+        long validSize = buffer.position();
+        byte[] record;
+        while ((record = readRecord(buffer)) != null) {
+            applyRecord(record);
+            validSize = buffer.position();
+            transactionCount++;
+        }
+
+        journal = FileChannel.open(journalFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (validSize < journal.size()) {
+            final long tornBytes = journal.size() - validSize;
+            LOG.warn(() -> "Dropping " + tornBytes + " bytes of incomplete transaction at the end of config store "
+                    + "journal " + journalFile + " - the bot probably stopped while saving config.");
+            journal.truncate(validSize);
+            journal.force(true);
+        }
+        journalSize = validSize;
+
+        final int replayedCount = transactionCount;
+        LOG.info(() -> "Opened config store " + journalFile + " - replayed " + replayedCount + " transactions.");
+    }
+
+    /*
+     * Returns null if there is no complete, valid record at the buffer's position.
+     */
+    private static byte[] readRecord(ByteBuffer buffer) {
+
+        if (buffer.remaining() < RECORD_HEADER_SIZE) {
+            return null;
+        }
+        final int length = buffer.getInt();
+        final int checksum = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            return null;
+        }
+        final byte[] payload = new byte[length];
+        buffer.get(payload);
+        return checksum(payload) == checksum ? payload : null;
+    }
+
+    private void commit(Map<String, Map<String, byte[]>> changes) {
+
+        final long txId = lastTxId + 1;
+        final byte[] record = toRecord(encodeTransaction(txId, changes));
+        try {
+            writeFully(journal, record, journalSize);
+            journal.force(false);
+
+        } catch (IOException e) {
+            try {
+                journal.truncate(journalSize);
+            } catch (IOException truncateException) {
+                e.addSuppressed(truncateException);
+            }
+            throw new IllegalStateException("Failed to commit transaction to config store journal " + journalFile, e);
+        }
+        journalSize += record.length;
+
+        indexLock.writeLock().lock();
+        try {
+            applyChanges(changes);
+            changes.keySet().forEach(collection -> versions.put(collection, txId));
+            lastTxId = txId;
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+
+        if (journalSize > MIN_COMPACTION_SIZE && journalSize > 2 * liveEntityBytes) {
+            compact();
+        }
+    }
+
+    private void compact() {
+
+        LOG.info(() -> "Compacting config store journal " + journalFile + " - size: " + journalSize
+                + " bytes, live entities: " + liveEntityBytes + " bytes");
+        try {
+            journal.close();
+            writeSnapshotJournal();
+        } catch (IOException e) {
+            LOG.error("Failed to compact config store journal " + journalFile + " - carrying on with the old one.", e);
+        }
+
+        try {
+            journal = FileChannel.open(journalFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            journalSize = journal.size();
+        } catch (IOException e) {
+            journal = null;
+            throw new IllegalStateException("Failed to reopen config store journal " + journalFile
+                    + " after compaction. The store is now closed.", e);
+        }
+    }
+
+    /*
+     * Writes a new journal holding just a snapshot of the store to a temp file, then renames it over the journal.
+     */
+    private void writeSnapshotJournal() throws IOException {
+
+        final ByteBuffer fileHeader = ByteBuffer.allocate(FILE_HEADER_SIZE).putInt(MAGIC).putInt(FORMAT_VERSION);
+        final byte[] snapshotRecord = toRecord(encodeSnapshot());
+
+        final Path tempFile = Files.createTempFile(directory, JOURNAL_FILENAME + ".", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                writeFully(channel, fileHeader.array(), 0);
+                writeFully(channel, snapshotRecord, FILE_HEADER_SIZE);
+                channel.force(true);
+            }
+            Files.move(tempFile, journalFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        syncDirectory();
+    }
+
+    /*
+     * Makes the rename durable. Not supported on every platform, e.g. Windows, so it's best effort.
+     */
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            LOG.debug(() -> "Could not fsync config store directory " + directory, e);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, byte[] bytes, long position) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long writePosition = position;
+        while (buffer.hasRemaining()) {
+            writePosition += channel.write(buffer, writePosition);
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Record encoding
+    // ------------------------------------------------------------------------------------------------
+
+    private static byte[] toRecord(byte[] payload) {
+        return ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length)
+                .putInt(payload.length)
+                .putInt(checksum(payload))
+                .put(payload)
+                .array();
+    }
+
+    private static int checksum(byte[] payload) {
+        final CRC32 crc32 = new CRC32();
+        crc32.update(payload);
+        return (int) crc32.getValue();
+    }
+
+    /*
+     * Transaction payload: txId, then the changes.
+     */
+    private static byte[] encodeTransaction(long txId, Map<String, Map<String, byte[]>> changes) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(txId);
+            encodeChanges(out, changes);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to encode config store transaction " + txId, e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /*
+     * Snapshot payload: SNAPSHOT_TX_ID, last txId, the collection versions, then every entity as a put.
+     */
+    private byte[] encodeSnapshot() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(SNAPSHOT_TX_ID);
+            out.writeLong(lastTxId);
+            out.writeInt(versions.size());
+            for (final Map.Entry<String, Long> version : versions.entrySet()) {
+                out.writeUTF(version.getKey());
+                out.writeLong(version.getValue());
+            }
+            encodeChanges(out, collections);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to encode config store snapshot", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void encodeChanges(DataOutputStream out, Map<String, Map<String, byte[]>> changes)
+            throws IOException {
+        out.writeInt(changes.values().stream().mapToInt(Map::size).sum());
+        for (final Map.Entry<String, Map<String, byte[]>> collection : changes.entrySet()) {
+            for (final Map.Entry<String, byte[]> change : collection.getValue().entrySet()) {
+                if (change.getValue() == DELETED) {
+                    out.writeByte(DELETE);
+                    out.writeUTF(collection.getKey());
+                    out.writeUTF(change.getKey());
+                } else {
+                    out.writeByte(PUT);
+                    out.writeUTF(collection.getKey());
+                    out.writeUTF(change.getKey());
+                    out.writeInt(change.getValue().length);
+                    out.write(change.getValue());
+                }
+            }
+        }
+    }
+
+    /*
+     * Only called while the journal is being opened, before the store is shared, so doesn't take the index lock.
+     */
+    private void applyRecord(byte[] payload) throws IOException {
+
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        final long txId = in.readLong();
+        if (txId == SNAPSHOT_TX_ID) {
+            lastTxId = in.readLong();
+            final int versionCount = in.readInt();
+            for (int i = 0; i < versionCount; i++) {
+                versions.put(in.readUTF(), in.readLong());
+            }
+        }
+
+        final Map<String, Map<String, byte[]>> changes = new LinkedHashMap<>();
+        final int changeCount = in.readInt();
+        for (int i = 0; i < changeCount; i++) {
+            final byte operation = in.readByte();
+            final Map<String, byte[]> collectionChanges =
+                    changes.computeIfAbsent(in.readUTF(), name -> new LinkedHashMap<>());
+            final String id = in.readUTF();
+            if (operation == PUT) {
+                final byte[] entity = new byte[in.readInt()];
+                in.readFully(entity);
+                collectionChanges.put(id, entity);
+            } else if (operation == DELETE) {
+                collectionChanges.put(id, DELETED);
+            } else {
+                throw new IllegalStateException("Unknown operation " + operation + " in config store journal "
+                        + journalFile);
+            }
+        }
+        applyChanges(changes);
+
+        if (txId != SNAPSHOT_TX_ID) {
+            changes.keySet().forEach(collection -> versions.put(collection, txId));
+            lastTxId = txId;
+        }
+    }
+
+    private void applyChanges(Map<String, Map<String, byte[]>> changes) {
+        changes.forEach((collection, collectionChanges) -> {
+            final Map<String, byte[]> entities = collections.computeIfAbsent(collection, name -> new LinkedHashMap<>());
+            collectionChanges.forEach((id, change) -> {
+                final byte[] previous = change == DELETED ? entities.remove(id) : entities.put(id, change);
+                liveEntityBytes += (change == DELETED ? 0 : change.length) - (previous == null ? 0 : previous.length);
+            });
+        });
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Util methods
+    // ------------------------------------------------------------------------------------------------
+
+    private Map<String, byte[]> entitiesIn(String collection) {
+        return collections.getOrDefault(collection, Collections.emptyMap());
+    }
+
+    private <T> T fromJson(byte[] entity, Class<T> type) {
+        if (entity == null) {
+            return null;
+        }
+        try {
+            return gson.fromJson(new String(entity, StandardCharsets.UTF_8), type);
+        } catch (JsonParseException e) {
+            throw new IllegalStateException("Failed to read " + type.getSimpleName() + " from config store", e);
+        }
+    }
+
+    private <T> List<T> fromJson(List<byte[]> entities, Class<T> type) {
+        final List<T> result = new ArrayList<>(entities.size());
+        entities.forEach(entity -> result.add(fromJson(entity, type)));
+        return result;
+    }
+}
@@ -0,0 +1,6 @@
+/**
+ * An embedded, file-based, transactional store for the bot's config.
+ *
+ * @author gazbert
+ */
+package com.gazbert.bxbot.repository.store;
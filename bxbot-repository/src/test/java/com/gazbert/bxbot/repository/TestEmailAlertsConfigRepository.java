@@ -100,12 +100,6 @@ public class TestEmailAlertsConfigRepository {
 
         ConfigurationManager.saveConfig(eq(EmailAlertsType.class), anyObject(EmailAlertsType.class), eq(EMAIL_ALERTS_CONFIG_XML_FILENAME));
 
-        expect(ConfigurationManager.loadConfig(
-                eq(EmailAlertsType.class),
-                eq(EMAIL_ALERTS_CONFIG_XML_FILENAME),
-                eq(EMAIL_ALERTS_CONFIG_XSD_FILENAME))).
-                andReturn(adaptExternalToInternalConfig(withSomeExternalEmailAlertsConfig()));
-
         PowerMock.replayAll();
 
         final EmailAlertsConfigRepository emailAlertsConfigRepository = new EmailAlertsConfigRepositoryXmlDatastore();
@@ -89,12 +89,6 @@ public class TestEngineConfigRepository {
 
         ConfigurationManager.saveConfig(eq(EngineType.class), anyObject(EngineType.class), eq(ENGINE_CONFIG_XML_FILENAME));
 
-        expect(ConfigurationManager.loadConfig(
-                eq(EngineType.class),
-                eq(ENGINE_CONFIG_XML_FILENAME),
-                eq(ENGINE_CONFIG_XSD_FILENAME))).
-                andReturn(someInternalEngineConfig());
-
         PowerMock.replayAll();
 
         final EngineConfigRepository engineConfigRepository = new EngineConfigRepositoryXmlDatastore();
@@ -24,6 +24,7 @@
 package com.gazbert.bxbot.repository;
 
 import com.gazbert.bxbot.datastore.ConfigurationManager;
+import com.gazbert.bxbot.datastore.VersionedConfig;
 import com.gazbert.bxbot.datastore.exchange.generated.*;
 import com.gazbert.bxbot.domain.exchange.AuthenticationConfig;
 import com.gazbert.bxbot.domain.exchange.ExchangeConfig;
@@ -54,8 +55,16 @@ import static org.easymock.EasyMock.*;
 @PrepareForTest({ConfigurationManager.class})
 public class TestExchangeConfigRepository {
 
+    private static final String CONFIG_VERSION = "config-version-1";
+    private static final String NEW_CONFIG_VERSION = "config-version-2";
+
     private static final String EXCHANGE_NAME = "Bitstamp";
     private static final String EXCHANGE_ADAPTER = "com.gazbert.bxbot.exchanges.TestExchangeAdapter";
+    private static final String EXCHANGE_ID = "bitstamp";
+
+    private static final String EXCHANGE_2_ID = "gdax";
+    private static final String EXCHANGE_2_NAME = "GDAX";
+    private static final String UNKNOWN_EXCHANGE_ID = "unknown-exchange";
 
     private static final String API_KEY_CONFIG_ITEM_KEY = "api-key";
     private static final String API_KEY_CONFIG_ITEM_VALUE = "apiKey--123";
@@ -82,7 +91,7 @@ public class TestExchangeConfigRepository {
     @Test
     public void whenGetCalledThenReturnExchangeConfig() throws Exception {
 
-        expect(ConfigurationManager.loadConfig(
+        expect(ConfigurationManager.loadRootConfig(
                 eq(ExchangeType.class),
                 eq(EXCHANGE_CONFIG_XML_FILENAME),
                 eq(EXCHANGE_CONFIG_XSD_FILENAME))).
@@ -111,19 +120,14 @@ public class TestExchangeConfigRepository {
     @Test
     public void whenSaveCalledThenExpectRepositoryToSaveItAndReturnSavedExchangeConfig() throws Exception {
 
-        expect(ConfigurationManager.loadConfig(
+        expect(ConfigurationManager.loadVersionedRootConfig(
                 eq(ExchangeType.class),
                 eq(EXCHANGE_CONFIG_XML_FILENAME),
                 eq(EXCHANGE_CONFIG_XSD_FILENAME))).
-                andReturn(someInternalExchangeConfig());
+                andReturn(new VersionedConfig<>(someInternalExchangeConfig(), CONFIG_VERSION));
 
-        ConfigurationManager.saveConfig(eq(ExchangeType.class), anyObject(ExchangeType.class), eq(EXCHANGE_CONFIG_XML_FILENAME));
-
-        expect(ConfigurationManager.loadConfig(
-                eq(ExchangeType.class),
-                eq(EXCHANGE_CONFIG_XML_FILENAME),
-                eq(EXCHANGE_CONFIG_XSD_FILENAME))).
-                andReturn(someInternalExchangeConfig());
+        expect(ConfigurationManager.saveConfig(eq(ExchangeType.class), anyObject(ExchangeType.class),
+                eq(EXCHANGE_CONFIG_XML_FILENAME), eq(CONFIG_VERSION))).andReturn(NEW_CONFIG_VERSION);
 
         PowerMock.replayAll();
 
@@ -145,6 +149,123 @@ public class TestExchangeConfigRepository {
         PowerMock.verifyAll();
     }
 
+    @Test
+    public void whenFindAllCalledForSingleExchangeThenReturnExchangeConfigList() throws Exception {
+
+        expect(ConfigurationManager.loadRootConfig(
+                eq(ExchangeType.class),
+                eq(EXCHANGE_CONFIG_XML_FILENAME),
+                eq(EXCHANGE_CONFIG_XSD_FILENAME))).
+                andReturn(someInternalExchangeConfig());
+
+        PowerMock.replayAll();
+
+        final ExchangeConfigRepository exchangeConfigRepository = new ExchangeConfigRepositoryXmlDatastore();
+        final List<ExchangeConfig> exchangeConfigs = exchangeConfigRepository.findAll();
+
+        assertThat(exchangeConfigs.size()).isEqualTo(1);
+        assertThat(exchangeConfigs.get(0).getId()).isNull();
+        assertThat(exchangeConfigs.get(0).getExchangeName()).isEqualTo(EXCHANGE_NAME);
+        assertThat(exchangeConfigs.get(0).getExchangeAdapter()).isEqualTo(EXCHANGE_ADAPTER);
+
+        PowerMock.verifyAll();
+    }
+
+    @Test
+    public void whenFindAllCalledForMultipleExchangesThenReturnExchangeConfigList() throws Exception {
+
+        expect(ConfigurationManager.loadRootConfig(
+                eq(ExchangeType.class),
+                eq(EXCHANGE_CONFIG_XML_FILENAME),
+                eq(EXCHANGE_CONFIG_XSD_FILENAME))).
+                andReturn(someInternalExchangesConfig());
+
+        PowerMock.replayAll();
+
+        final ExchangeConfigRepository exchangeConfigRepository = new ExchangeConfigRepositoryXmlDatastore();
+        final List<ExchangeConfig> exchangeConfigs = exchangeConfigRepository.findAll();
+
+        assertThat(exchangeConfigs.size()).isEqualTo(2);
+        assertThat(exchangeConfigs.get(0).getId()).isEqualTo(EXCHANGE_ID);
+        assertThat(exchangeConfigs.get(0).getExchangeName()).isEqualTo(EXCHANGE_NAME);
+        assertThat(exchangeConfigs.get(1).getId()).isEqualTo(EXCHANGE_2_ID);
+        assertThat(exchangeConfigs.get(1).getExchangeName()).isEqualTo(EXCHANGE_2_NAME);
+        assertThat(exchangeConfigs.get(1).getAuthenticationConfig().getItems().get(API_KEY_CONFIG_ITEM_KEY)).isEqualTo(API_KEY_CONFIG_ITEM_VALUE);
+
+        PowerMock.verifyAll();
+    }
+
+    @Test
+    public void whenGetCalledForMultipleExchangesThenReturnFirstExchangeConfig() throws Exception {
+
+        expect(ConfigurationManager.loadRootConfig(
+                eq(ExchangeType.class),
+                eq(EXCHANGE_CONFIG_XML_FILENAME),
+                eq(EXCHANGE_CONFIG_XSD_FILENAME))).
+                andReturn(someInternalExchangesConfig());
+
+        PowerMock.replayAll();
+
+        final ExchangeConfigRepository exchangeConfigRepository = new ExchangeConfigRepositoryXmlDatastore();
+        final ExchangeConfig exchangeConfig = exchangeConfigRepository.get();
+
+        assertThat(exchangeConfig.getId()).isEqualTo(EXCHANGE_ID);
+        assertThat(exchangeConfig.getExchangeName()).isEqualTo(EXCHANGE_NAME);
+
+        PowerMock.verifyAll();
+    }
+
+    @Test
+    public void whenSaveCalledForOneOfMultipleExchangesThenExpectRepositoryToSaveItAndReturnSavedExchangeConfig()
+            throws Exception {
+
+        expect(ConfigurationManager.loadVersionedRootConfig(
+                eq(ExchangeType.class),
+                eq(EXCHANGE_CONFIG_XML_FILENAME),
+                eq(EXCHANGE_CONFIG_XSD_FILENAME))).
+                andReturn(new VersionedConfig<>(someInternalExchangesConfig(), CONFIG_VERSION));
+
+        expect(ConfigurationManager.saveConfig(eq(ExchangesType.class), anyObject(ExchangesType.class),
+                eq(EXCHANGE_CONFIG_XML_FILENAME), eq(CONFIG_VERSION))).andReturn(NEW_CONFIG_VERSION);
+
+        PowerMock.replayAll();
+
+        final ExchangeConfig exchangeConfigToSave = withSomeExternalExchangeConfig();
+        exchangeConfigToSave.setId(EXCHANGE_2_ID);
+        exchangeConfigToSave.setExchangeName(EXCHANGE_2_NAME);
+
+        final ExchangeConfigRepository exchangeConfigRepository = new ExchangeConfigRepositoryXmlDatastore();
+        final ExchangeConfig savedExchangeConfig = exchangeConfigRepository.save(exchangeConfigToSave);
+
+        assertThat(savedExchangeConfig.getId()).isEqualTo(EXCHANGE_2_ID);
+        assertThat(savedExchangeConfig.getExchangeName()).isEqualTo(EXCHANGE_2_NAME);
+        assertThat(savedExchangeConfig.getAuthenticationConfig().getItems().get(SECRET_CONFIG_ITEM_KEY)).isEqualTo(SECRET_CONFIG_ITEM_VALUE);
+
+        PowerMock.verifyAll();
+    }
+
+    @Test
+    public void whenSaveCalledWithUnknownExchangeIdThenReturnNull() throws Exception {
+
+        expect(ConfigurationManager.loadVersionedRootConfig(
+                eq(ExchangeType.class),
+                eq(EXCHANGE_CONFIG_XML_FILENAME),
+                eq(EXCHANGE_CONFIG_XSD_FILENAME))).
+                andReturn(new VersionedConfig<>(someInternalExchangesConfig(), CONFIG_VERSION));
+
+        PowerMock.replayAll();
+
+        final ExchangeConfig exchangeConfigToSave = withSomeExternalExchangeConfig();
+        exchangeConfigToSave.setId(UNKNOWN_EXCHANGE_ID);
+
+        final ExchangeConfigRepository exchangeConfigRepository = new ExchangeConfigRepositoryXmlDatastore();
+        final ExchangeConfig savedExchangeConfig = exchangeConfigRepository.save(exchangeConfigToSave);
+
+        assertThat(savedExchangeConfig).isNull();
+
+        PowerMock.verifyAll();
+    }
+
     // ------------------------------------------------------------------------------------------------
     // Private utils
     // ------------------------------------------------------------------------------------------------
@@ -189,6 +310,21 @@ public class TestExchangeConfigRepository {
         return exchangeConfig;
     }
 
+    private static ExchangesType someInternalExchangesConfig() {
+
+        final ExchangeType exchangeConfig = someInternalExchangeConfig();
+        exchangeConfig.setId(EXCHANGE_ID);
+
+        final ExchangeType exchangeConfig2 = someInternalExchangeConfig();
+        exchangeConfig2.setId(EXCHANGE_2_ID);
+        exchangeConfig2.setName(EXCHANGE_2_NAME);
+
+        final ExchangesType exchangesConfig = new ExchangesType();
+        exchangesConfig.getExchanges().add(exchangeConfig);
+        exchangesConfig.getExchanges().add(exchangeConfig2);
+        return exchangesConfig;
+    }
+
     private static ExchangeConfig withSomeExternalExchangeConfig() {
 
         // We don't permit updating of AuthenticationConfig in the service - security risk
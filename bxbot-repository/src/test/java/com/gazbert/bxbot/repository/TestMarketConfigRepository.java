@@ -24,6 +24,8 @@
 package com.gazbert.bxbot.repository;
 
 import com.gazbert.bxbot.datastore.ConfigurationManager;
+import com.gazbert.bxbot.datastore.StaleConfigException;
+import com.gazbert.bxbot.datastore.VersionedConfig;
 import com.gazbert.bxbot.datastore.market.generated.MarketType;
 import com.gazbert.bxbot.datastore.market.generated.MarketsType;
 import com.gazbert.bxbot.domain.market.MarketConfig;
@@ -54,6 +56,9 @@ public class TestMarketConfigRepository {
     // Mocked out methods
     private static final String MOCKED_GENERATE_UUID_METHOD = "generateUuid";
 
+    private static final String CONFIG_VERSION = "config-version-1";
+    private static final String NEW_CONFIG_VERSION = "config-version-2";
+
     private static final String UNKNOWN_MARKET_ID = "unknown-or-new-market-id";
     private static final String GENERATED_MARKET_ID = "new-market-id-123";
 
@@ -70,6 +75,7 @@ public class TestMarketConfigRepository {
     private static final String MARKET_2_COUNTER_CURRENCY = "GBP";
     private static final boolean MARKET_2_IS_ENABLED = false;
     private static final String MARKET_2_TRADING_STRATEGY_ID = "scalper";
+    private static final String MARKET_2_EXCHANGE_ID = "gdax";
 
     private static final String NEW_MARKET_NAME = "BTC/ETH";
     private static final String NEW_MARKET_BASE_CURRENCY = "BTC";
@@ -105,6 +111,7 @@ public class TestMarketConfigRepository {
         assertThat(marketConfigItems.get(0).getBaseCurrency()).isEqualTo(MARKET_1_BASE_CURRENCY);
         assertThat(marketConfigItems.get(0).getCounterCurrency()).isEqualTo(MARKET_1_COUNTER_CURRENCY);
         assertThat(marketConfigItems.get(0).getTradingStrategyId()).isEqualTo(MARKET_1_TRADING_STRATEGY_ID);
+        assertThat(marketConfigItems.get(0).getExchangeId()).isNull();
 
         assertThat(marketConfigItems.get(1).getId()).isEqualTo(MARKET_2_ID);
         assertThat(marketConfigItems.get(1).getName()).isEqualTo(MARKET_2_NAME);
@@ -112,6 +119,7 @@ public class TestMarketConfigRepository {
         assertThat(marketConfigItems.get(1).getBaseCurrency()).isEqualTo(MARKET_2_BASE_CURRENCY);
         assertThat(marketConfigItems.get(1).getCounterCurrency()).isEqualTo(MARKET_2_COUNTER_CURRENCY);
         assertThat(marketConfigItems.get(1).getTradingStrategyId()).isEqualTo(MARKET_2_TRADING_STRATEGY_ID);
+        assertThat(marketConfigItems.get(1).getExchangeId()).isEqualTo(MARKET_2_EXCHANGE_ID);
 
         PowerMock.verifyAll();
     }
@@ -161,22 +169,17 @@ public class TestMarketConfigRepository {
     @Test
     public void whenSaveCalledWithKnownIdThenReturnUpdatedMarketConfig() throws Exception {
 
-        expect(ConfigurationManager.loadConfig(
+        expect(ConfigurationManager.loadVersionedRootConfig(
                 eq(MarketsType.class),
                 eq(MARKETS_CONFIG_XML_FILENAME),
                 eq(MARKETS_CONFIG_XSD_FILENAME))).
-                andReturn(allTheInternalMarketsConfig());
+                andReturn(new VersionedConfig<>(allTheInternalMarketsConfig(), CONFIG_VERSION));
 
-        ConfigurationManager.saveConfig(
+        expect(ConfigurationManager.saveConfig(
                 eq(MarketsType.class),
                 anyObject(MarketsType.class),
-                eq(MARKETS_CONFIG_XML_FILENAME));
-
-        expect(ConfigurationManager.loadConfig(
-                eq(MarketsType.class),
                 eq(MARKETS_CONFIG_XML_FILENAME),
-                eq(MARKETS_CONFIG_XSD_FILENAME))).
-                andReturn(allTheInternalMarketsConfig());
+                eq(CONFIG_VERSION))).andReturn(NEW_CONFIG_VERSION);
 
         PowerMock.replayAll();
 
@@ -196,11 +199,11 @@ public class TestMarketConfigRepository {
     @Test
     public void whenSaveCalledWithUnknownIdThenReturnEmptyMarketConfig() throws Exception {
 
-        expect(ConfigurationManager.loadConfig(
+        expect(ConfigurationManager.loadVersionedRootConfig(
                 eq(MarketsType.class),
                 eq(MARKETS_CONFIG_XML_FILENAME),
                 eq(MARKETS_CONFIG_XSD_FILENAME))).
-                andReturn(allTheInternalMarketsConfig());
+                andReturn(new VersionedConfig<>(allTheInternalMarketsConfig(), CONFIG_VERSION));
 
         PowerMock.replayAll();
 
@@ -214,25 +217,21 @@ public class TestMarketConfigRepository {
     @Test
     public void whenSaveCalledWithEmptyIdThenExpectCreatedMarketConfigToBeReturned() throws Exception {
 
-        expect(ConfigurationManager.loadConfig(
+        expect(ConfigurationManager.loadVersionedRootConfig(
                 eq(MarketsType.class),
                 eq(MARKETS_CONFIG_XML_FILENAME),
                 eq(MARKETS_CONFIG_XSD_FILENAME))).
-                andReturn(allTheInternalMarketsConfig());
+                andReturn(new VersionedConfig<>(allTheInternalMarketsConfig(), CONFIG_VERSION));
 
-        ConfigurationManager.saveConfig(
+        expect(ConfigurationManager.saveConfig(
                 eq(MarketsType.class),
                 anyObject(MarketsType.class),
-                eq(MARKETS_CONFIG_XML_FILENAME));
-
-        expect(ConfigurationManager.loadConfig(
-                eq(MarketsType.class),
                 eq(MARKETS_CONFIG_XML_FILENAME),
-                eq(MARKETS_CONFIG_XSD_FILENAME))).
-                andReturn(allTheInternalMarketsConfigPlusNewOne());
+                eq(CONFIG_VERSION))).andReturn(NEW_CONFIG_VERSION);
 
-        final MarketConfigRepository marketConfigRepository = PowerMock.createPartialMock(
-                MarketConfigRepositoryXmlDatastore.class, MOCKED_GENERATE_UUID_METHOD);
+        final MarketConfigRepository marketConfigRepository =
+                PowerMock.createPartialMockAndInvokeDefaultConstructor(
+                        MarketConfigRepositoryXmlDatastore.class, MOCKED_GENERATE_UUID_METHOD);
         PowerMock.expectPrivate(marketConfigRepository, MOCKED_GENERATE_UUID_METHOD).andReturn(GENERATED_MARKET_ID);
 
         PowerMock.replayAll();
@@ -250,7 +249,46 @@ public class TestMarketConfigRepository {
     }
 
     @Test
-    public void whenDeleteCalledWithKnownIdThenReturnMatchingMarketConfig() throws Exception {
+    public void whenSaveCalledAndMarketsChangedBySomeoneElseThenExpectUpdateToBeReappliedToLatestConfig()
+            throws Exception {
+
+        expect(ConfigurationManager.loadVersionedRootConfig(
+                eq(MarketsType.class),
+                eq(MARKETS_CONFIG_XML_FILENAME),
+                eq(MARKETS_CONFIG_XSD_FILENAME))).
+                andReturn(new VersionedConfig<>(allTheInternalMarketsConfig(), CONFIG_VERSION));
+
+        expect(ConfigurationManager.saveConfig(
+                eq(MarketsType.class),
+                anyObject(MarketsType.class),
+                eq(MARKETS_CONFIG_XML_FILENAME),
+                eq(CONFIG_VERSION))).andThrow(new StaleConfigException("Markets changed by someone else"));
+
+        expect(ConfigurationManager.loadVersionedRootConfig(
+                eq(MarketsType.class),
+                eq(MARKETS_CONFIG_XML_FILENAME),
+                eq(MARKETS_CONFIG_XSD_FILENAME))).
+                andReturn(new VersionedConfig<>(allTheInternalMarketsConfig(), NEW_CONFIG_VERSION));
+
+        expect(ConfigurationManager.saveConfig(
+                eq(MarketsType.class),
+                anyObject(MarketsType.class),
+                eq(MARKETS_CONFIG_XML_FILENAME),
+                eq(NEW_CONFIG_VERSION))).andReturn("config-version-3");
+
+        PowerMock.replayAll();
+
+        final MarketConfigRepository marketConfigRepository = new MarketConfigRepositoryXmlDatastore();
+        final MarketConfig marketConfig = marketConfigRepository.save(someExternalMarketConfig());
+
+        assertThat(marketConfig.getId()).isEqualTo(MARKET_1_ID);
+        assertThat(marketConfig.getName()).isEqualTo(MARKET_1_NAME);
+
+        PowerMock.verifyAll();
+    }
+
+    @Test(expected = ConfigVersionConflictException.class)
+    public void whenSaveCalledWithStaleExpectedVersionThenExpectConfigVersionConflict() throws Exception {
 
         expect(ConfigurationManager.loadConfig(
                 eq(MarketsType.class),
@@ -258,10 +296,74 @@ public class TestMarketConfigRepository {
                 eq(MARKETS_CONFIG_XSD_FILENAME))).
                 andReturn(allTheInternalMarketsConfig());
 
-        ConfigurationManager.saveConfig(
+        // someone else has renamed the Market we are updating
+        final MarketsType changedMarketsConfig = allTheInternalMarketsConfig();
+        changedMarketsConfig.getMarkets().get(0).setName(NEW_MARKET_NAME);
+        expect(ConfigurationManager.loadVersionedRootConfig(
+                eq(MarketsType.class),
+                eq(MARKETS_CONFIG_XML_FILENAME),
+                eq(MARKETS_CONFIG_XSD_FILENAME))).
+                andReturn(new VersionedConfig<>(changedMarketsConfig, NEW_CONFIG_VERSION));
+
+        PowerMock.replayAll();
+
+        final MarketConfigRepository marketConfigRepository = new MarketConfigRepositoryXmlDatastore();
+        final String marketVersion = marketConfigRepository.getVersion(MARKET_1_ID);
+        marketConfigRepository.save(someExternalMarketConfig(), marketVersion);
+
+        PowerMock.verifyAll();
+    }
+
+    @Test
+    public void whenSaveCalledWithCurrentExpectedVersionAfterOtherMarketChangedThenExpectSave() throws Exception {
+
+        expect(ConfigurationManager.loadConfig(
+                eq(MarketsType.class),
+                eq(MARKETS_CONFIG_XML_FILENAME),
+                eq(MARKETS_CONFIG_XSD_FILENAME))).
+                andReturn(allTheInternalMarketsConfig());
+
+        // someone else has renamed another Market in the same file
+        final MarketsType changedMarketsConfig = allTheInternalMarketsConfig();
+        changedMarketsConfig.getMarkets().get(1).setName(NEW_MARKET_NAME);
+        expect(ConfigurationManager.loadVersionedRootConfig(
+                eq(MarketsType.class),
+                eq(MARKETS_CONFIG_XML_FILENAME),
+                eq(MARKETS_CONFIG_XSD_FILENAME))).
+                andReturn(new VersionedConfig<>(changedMarketsConfig, NEW_CONFIG_VERSION));
+
+        expect(ConfigurationManager.saveConfig(
                 eq(MarketsType.class),
                 anyObject(MarketsType.class),
-                eq(MARKETS_CONFIG_XML_FILENAME));
+                eq(MARKETS_CONFIG_XML_FILENAME),
+                eq(NEW_CONFIG_VERSION))).andReturn("config-version-3");
+
+        PowerMock.replayAll();
+
+        final MarketConfigRepository marketConfigRepository = new MarketConfigRepositoryXmlDatastore();
+        final String marketVersion = marketConfigRepository.getVersion(MARKET_1_ID);
+        assertThat(marketVersion).isNotNull();
+
+        final MarketConfig marketConfig = marketConfigRepository.save(someExternalMarketConfig(), marketVersion);
+        assertThat(marketConfig.getId()).isEqualTo(MARKET_1_ID);
+
+        PowerMock.verifyAll();
+    }
+
+    @Test
+    public void whenDeleteCalledWithKnownIdThenReturnMatchingMarketConfig() throws Exception {
+
+        expect(ConfigurationManager.loadVersionedRootConfig(
+                eq(MarketsType.class),
+                eq(MARKETS_CONFIG_XML_FILENAME),
+                eq(MARKETS_CONFIG_XSD_FILENAME))).
+                andReturn(new VersionedConfig<>(allTheInternalMarketsConfig(), CONFIG_VERSION));
+
+        expect(ConfigurationManager.saveConfig(
+                eq(MarketsType.class),
+                anyObject(MarketsType.class),
+                eq(MARKETS_CONFIG_XML_FILENAME),
+                eq(CONFIG_VERSION))).andReturn(NEW_CONFIG_VERSION);
 
         PowerMock.replayAll();
 
@@ -281,11 +383,11 @@ public class TestMarketConfigRepository {
     @Test
     public void whenDeleteCalledWithUnknownIdThenReturnEmptyMarket() throws Exception {
 
-        expect(ConfigurationManager.loadConfig(
+        expect(ConfigurationManager.loadVersionedRootConfig(
                 eq(MarketsType.class),
                 eq(MARKETS_CONFIG_XML_FILENAME),
                 eq(MARKETS_CONFIG_XSD_FILENAME))).
-                andReturn(allTheInternalMarketsConfig());
+                andReturn(new VersionedConfig<>(allTheInternalMarketsConfig(), CONFIG_VERSION));
 
         PowerMock.replayAll();
 
@@ -317,6 +419,7 @@ public class TestMarketConfigRepository {
         marketType2.setBaseCurrency(MARKET_2_BASE_CURRENCY);
         marketType2.setCounterCurrency(MARKET_2_COUNTER_CURRENCY);
         marketType2.setTradingStrategyId(MARKET_2_TRADING_STRATEGY_ID);
+        marketType2.setExchangeId(MARKET_2_EXCHANGE_ID);
 
         final MarketsType marketsType = new MarketsType();
         marketsType.getMarkets().add(marketType1);
@@ -325,21 +428,6 @@ public class TestMarketConfigRepository {
         return marketsType;
     }
 
-    private static MarketsType allTheInternalMarketsConfigPlusNewOne() {
-
-        final MarketType newMarket = new MarketType();
-        newMarket.setId(GENERATED_MARKET_ID);
-        newMarket.setName(NEW_MARKET_NAME);
-        newMarket.setEnabled(NEW_MARKET_IS_ENABLED);
-        newMarket.setBaseCurrency(NEW_MARKET_BASE_CURRENCY);
-        newMarket.setCounterCurrency(NEW_MARKET_COUNTER_CURRENCY);
-        newMarket.setTradingStrategyId(NEW_MARKET_TRADING_STRATEGY_ID);
-
-        final MarketsType existingMarketsPlusNewOne = allTheInternalMarketsConfig();
-        existingMarketsPlusNewOne.getMarkets().add(newMarket);
-        return existingMarketsPlusNewOne;
-    }
-
     private static MarketConfig someExternalMarketConfig() {
         return new MarketConfig(MARKET_1_ID, MARKET_1_NAME, MARKET_1_BASE_CURRENCY, MARKET_1_COUNTER_CURRENCY,
                 MARKET_1_IS_ENABLED, MARKET_1_TRADING_STRATEGY_ID);
@@ -0,0 +1,190 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.repository;
+
+import com.gazbert.bxbot.domain.market.MarketConfig;
+import com.gazbert.bxbot.repository.impl.EmbeddedConfigStore;
+import com.gazbert.bxbot.repository.impl.MarketConfigRepositoryEmbeddedStore;
+import com.gazbert.bxbot.repository.store.ConfigStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.List;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+/**
+ * Tests the embedded store Market configuration repository behaves as expected.
+ *
+ * @author gazbert
+ */
+public class TestMarketConfigRepositoryEmbeddedStore {
+
+    private static final String UNKNOWN_MARKET_ID = "unknown-or-new-market-id";
+
+    private static final String MARKET_1_ID = "gemini_usd/btc";
+    private static final String MARKET_1_NAME = "BTC/USD";
+    private static final String MARKET_1_BASE_CURRENCY = "BTC";
+    private static final String MARKET_1_COUNTER_CURRENCY = "USD";
+    private static final boolean MARKET_1_IS_ENABLED = true;
+    private static final String MARKET_1_TRADING_STRATEGY_ID = "macd_trend_follower";
+    private static final String MARKET_1_EXCHANGE_ID = "gemini";
+
+    private static final String NEW_MARKET_NAME = "BTC/ETH";
+
+    @Rule
+    public TemporaryFolder storeFolder = new TemporaryFolder();
+
+    private EmbeddedConfigStore embeddedConfigStore;
+    private MarketConfigRepository marketConfigRepository;
+
+
+    @Before
+    public void setupBeforeEachTest() {
+        openRepository();
+    }
+
+    @After
+    public void tearDownAfterEachTest() {
+        embeddedConfigStore.close();
+    }
+
+    @Test
+    public void whenSaveCalledWithoutIdThenExpectNewMarketConfigToBeCreatedWithGeneratedId() {
+
+        final MarketConfig newMarketConfig = someMarketConfig(null);
+        newMarketConfig.setName(NEW_MARKET_NAME);
+
+        final MarketConfig savedConfig = marketConfigRepository.save(newMarketConfig);
+        assertThat(savedConfig.getId()).isNotEmpty();
+        assertThat(savedConfig.getName()).isEqualTo(NEW_MARKET_NAME);
+
+        assertThat(marketConfigRepository.findById(savedConfig.getId()).getName()).isEqualTo(NEW_MARKET_NAME);
+        assertThat(marketConfigRepository.findAll()).hasSize(1);
+    }
+
+    @Test
+    public void whenSaveCalledForExistingMarketThenExpectItToBeUpdatedAndPersisted() {
+
+        final String id = marketConfigRepository.save(someMarketConfig(null)).getId();
+
+        final MarketConfig updatedConfig = someMarketConfig(id);
+        updatedConfig.setEnabled(false);
+        final MarketConfig savedConfig = marketConfigRepository.save(updatedConfig);
+        assertThat(savedConfig.getId()).isEqualTo(id);
+        assertThat(savedConfig.isEnabled()).isFalse();
+
+        embeddedConfigStore.close();
+        openRepository();
+
+        final List<MarketConfig> marketConfigs = marketConfigRepository.findAll();
+        assertThat(marketConfigs).hasSize(1);
+        assertThat(marketConfigs.get(0).getId()).isEqualTo(id);
+        assertThat(marketConfigs.get(0).isEnabled()).isFalse();
+        assertThat(marketConfigs.get(0).getBaseCurrency()).isEqualTo(MARKET_1_BASE_CURRENCY);
+        assertThat(marketConfigs.get(0).getCounterCurrency()).isEqualTo(MARKET_1_COUNTER_CURRENCY);
+        assertThat(marketConfigs.get(0).getTradingStrategyId()).isEqualTo(MARKET_1_TRADING_STRATEGY_ID);
+        assertThat(marketConfigs.get(0).getExchangeId()).isEqualTo(MARKET_1_EXCHANGE_ID);
+    }
+
+    @Test
+    public void whenSaveCalledForUnknownMarketThenReturnEmptyMarket() {
+
+        assertThat(marketConfigRepository.save(someMarketConfig(UNKNOWN_MARKET_ID))).isNull();
+        assertThat(marketConfigRepository.findAll()).isEmpty();
+    }
+
+    @Test
+    public void whenDeleteCalledForKnownIdThenExpectMarketToBeRemoved() {
+
+        final String id = marketConfigRepository.save(someMarketConfig(null)).getId();
+
+        final MarketConfig deletedConfig = marketConfigRepository.delete(id);
+        assertThat(deletedConfig.getId()).isEqualTo(id);
+        assertThat(deletedConfig.getName()).isEqualTo(MARKET_1_NAME);
+        assertThat(marketConfigRepository.findById(id)).isNull();
+        assertThat(marketConfigRepository.delete(UNKNOWN_MARKET_ID)).isNull();
+    }
+
+    @Test
+    public void whenSavedWithCurrentVersionThenVersionChanges() {
+
+        final String id = marketConfigRepository.save(someMarketConfig(null)).getId();
+        final String version = marketConfigRepository.getVersion(id);
+        assertThat(version).isNotNull();
+        assertThat(marketConfigRepository.getVersion(UNKNOWN_MARKET_ID)).isNull();
+
+        final MarketConfig updatedConfig = someMarketConfig(id);
+        updatedConfig.setName(NEW_MARKET_NAME);
+        marketConfigRepository.save(updatedConfig, version);
+        assertThat(marketConfigRepository.getVersion(id)).isNotEqualTo(version);
+    }
+
+    @Test
+    public void whenOtherMarketIsChangedThenVersionStaysCurrent() {
+
+        final String id = marketConfigRepository.save(someMarketConfig(null)).getId();
+        final String version = marketConfigRepository.getVersion(id);
+        final String allMarketsVersion = marketConfigRepository.getVersion();
+
+        final String otherId = marketConfigRepository.save(someMarketConfig(null)).getId();
+        final MarketConfig otherConfig = someMarketConfig(otherId);
+        otherConfig.setName(NEW_MARKET_NAME);
+        marketConfigRepository.save(otherConfig, marketConfigRepository.getVersion(otherId));
+
+        assertThat(marketConfigRepository.getVersion()).isNotEqualTo(allMarketsVersion);
+        assertThat(marketConfigRepository.getVersion(id)).isEqualTo(version);
+        assertThat(marketConfigRepository.delete(id, version).getId()).isEqualTo(id);
+    }
+
+    @Test(expected = ConfigVersionConflictException.class)
+    public void whenSavedWithStaleVersionThenExpectConflict() {
+
+        final String id = marketConfigRepository.save(someMarketConfig(null)).getId();
+        final String version = marketConfigRepository.getVersion(id);
+
+        final MarketConfig updatedConfig = someMarketConfig(id);
+        updatedConfig.setName(NEW_MARKET_NAME);
+        marketConfigRepository.save(updatedConfig);
+
+        marketConfigRepository.delete(id, version);
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Private utils
+    // ------------------------------------------------------------------------------------------------
+
+    private void openRepository() {
+        embeddedConfigStore = new EmbeddedConfigStore(ConfigStore.open(storeFolder.getRoot().toPath()));
+        marketConfigRepository = new MarketConfigRepositoryEmbeddedStore(embeddedConfigStore);
+    }
+
+    private static MarketConfig someMarketConfig(String id) {
+        return new MarketConfig(id, MARKET_1_NAME, MARKET_1_BASE_CURRENCY, MARKET_1_COUNTER_CURRENCY,
+                MARKET_1_IS_ENABLED, MARKET_1_TRADING_STRATEGY_ID, MARKET_1_EXCHANGE_ID);
+    }
+}
@@ -24,6 +24,7 @@
 package com.gazbert.bxbot.repository;
 
 import com.gazbert.bxbot.datastore.ConfigurationManager;
+import com.gazbert.bxbot.datastore.VersionedConfig;
 import com.gazbert.bxbot.datastore.strategy.generated.ConfigItemType;
 import com.gazbert.bxbot.datastore.strategy.generated.OptionalConfigType;
 import com.gazbert.bxbot.datastore.strategy.generated.StrategyType;
@@ -58,6 +59,9 @@ public class TestStrategyConfigRepository {
     // Mocked out methods
     private static final String MOCKED_GENERATE_UUID_METHOD = "generateUuid";
 
+    private static final String CONFIG_VERSION = "config-version-1";
+    private static final String NEW_CONFIG_VERSION = "config-version-2";
+
     private static final String UNKNOWN_STRAT_ID = "unknown-or-new-strat-id";
     private static final String GENERATED_STRAT_ID = "new-strat-id-123";
 
@@ -170,22 +174,17 @@ public class TestStrategyConfigRepository {
     @Test
     public void whenSaveCalledWithKnownIdThenReturnUpdatedStrategyConfig() throws Exception {
 
-        expect(ConfigurationManager.loadConfig(
+        expect(ConfigurationManager.loadVersionedRootConfig(
                 eq(TradingStrategiesType.class),
                 eq(STRATEGIES_CONFIG_XML_FILENAME),
                 eq(STRATEGIES_CONFIG_XSD_FILENAME))).
-                andReturn(allTheInternalStrategiesConfig());
+                andReturn(new VersionedConfig<>(allTheInternalStrategiesConfig(), CONFIG_VERSION));
 
-        ConfigurationManager.saveConfig(
+        expect(ConfigurationManager.saveConfig(
                 eq(TradingStrategiesType.class),
                 anyObject(TradingStrategiesType.class),
-                eq(STRATEGIES_CONFIG_XML_FILENAME));
-
-        expect(ConfigurationManager.loadConfig(
-                eq(TradingStrategiesType.class),
                 eq(STRATEGIES_CONFIG_XML_FILENAME),
-                eq(STRATEGIES_CONFIG_XSD_FILENAME))).
-                andReturn(allTheInternalStrategiesConfig());
+                eq(CONFIG_VERSION))).andReturn(NEW_CONFIG_VERSION);
 
         PowerMock.replayAll();
 
@@ -207,11 +206,11 @@ public class TestStrategyConfigRepository {
     @Test
     public void whenSaveCalledWithUnknownIdThenReturnEmptyStrategyConfig() throws Exception {
 
-        expect(ConfigurationManager.loadConfig(
+        expect(ConfigurationManager.loadVersionedRootConfig(
                 eq(TradingStrategiesType.class),
                 eq(STRATEGIES_CONFIG_XML_FILENAME),
                 eq(STRATEGIES_CONFIG_XSD_FILENAME))).
-                andReturn(allTheInternalStrategiesConfig());
+                andReturn(new VersionedConfig<>(allTheInternalStrategiesConfig(), CONFIG_VERSION));
 
         PowerMock.replayAll();
 
@@ -225,25 +224,21 @@ public class TestStrategyConfigRepository {
     @Test
     public void whenSaveCalledWithEmptyIdThenExpectCreatedStrategyConfigToBeReturned() throws Exception {
 
-        expect(ConfigurationManager.loadConfig(
+        expect(ConfigurationManager.loadVersionedRootConfig(
                 eq(TradingStrategiesType.class),
                 eq(STRATEGIES_CONFIG_XML_FILENAME),
                 eq(STRATEGIES_CONFIG_XSD_FILENAME))).
-                andReturn(allTheInternalStrategiesConfig());
+                andReturn(new VersionedConfig<>(allTheInternalStrategiesConfig(), CONFIG_VERSION));
 
-        ConfigurationManager.saveConfig(
+        expect(ConfigurationManager.saveConfig(
                 eq(TradingStrategiesType.class),
                 anyObject(TradingStrategiesType.class),
-                eq(STRATEGIES_CONFIG_XML_FILENAME));
-
-        expect(ConfigurationManager.loadConfig(
-                eq(TradingStrategiesType.class),
                 eq(STRATEGIES_CONFIG_XML_FILENAME),
-                eq(STRATEGIES_CONFIG_XSD_FILENAME))).
-                andReturn(allTheInternalStrategiesConfigPlusNewOne());
+                eq(CONFIG_VERSION))).andReturn(NEW_CONFIG_VERSION);
 
-        final StrategyConfigRepository strategyConfigRepository = PowerMock.createPartialMock(
-                StrategyConfigRepositoryXmlDatastore.class, MOCKED_GENERATE_UUID_METHOD);
+        final StrategyConfigRepository strategyConfigRepository =
+                PowerMock.createPartialMockAndInvokeDefaultConstructor(
+                        StrategyConfigRepositoryXmlDatastore.class, MOCKED_GENERATE_UUID_METHOD);
         PowerMock.expectPrivate(strategyConfigRepository, MOCKED_GENERATE_UUID_METHOD).andReturn(GENERATED_STRAT_ID);
 
         PowerMock.replayAll();
@@ -265,16 +260,17 @@ public class TestStrategyConfigRepository {
     @Test
     public void whenDeleteCalledWithKnownIdThenReturnDeletedStrategyConfig() throws Exception {
 
-        expect(ConfigurationManager.loadConfig(
+        expect(ConfigurationManager.loadVersionedRootConfig(
                 eq(TradingStrategiesType.class),
                 eq(STRATEGIES_CONFIG_XML_FILENAME),
                 eq(STRATEGIES_CONFIG_XSD_FILENAME))).
-                andReturn(allTheInternalStrategiesConfig());
+                andReturn(new VersionedConfig<>(allTheInternalStrategiesConfig(), CONFIG_VERSION));
 
-        ConfigurationManager.saveConfig(
+        expect(ConfigurationManager.saveConfig(
                 eq(TradingStrategiesType.class),
                 anyObject(TradingStrategiesType.class),
-                eq(STRATEGIES_CONFIG_XML_FILENAME));
+                eq(STRATEGIES_CONFIG_XML_FILENAME),
+                eq(CONFIG_VERSION))).andReturn(NEW_CONFIG_VERSION);
 
         PowerMock.replayAll();
 
@@ -296,11 +292,11 @@ public class TestStrategyConfigRepository {
     @Test
     public void whenDeleteCalledWithUnknownIdThenReturnEmptyStrategyConfig() throws Exception {
 
-        expect(ConfigurationManager.loadConfig(
+        expect(ConfigurationManager.loadVersionedRootConfig(
                 eq(TradingStrategiesType.class),
                 eq(STRATEGIES_CONFIG_XML_FILENAME),
                 eq(STRATEGIES_CONFIG_XSD_FILENAME))).
-                andReturn(allTheInternalStrategiesConfig());
+                andReturn(new VersionedConfig<>(allTheInternalStrategiesConfig(), CONFIG_VERSION));
 
         PowerMock.replayAll();
 
@@ -353,32 +349,6 @@ public class TestStrategyConfigRepository {
         return tradingStrategiesType;
     }
 
-    private static TradingStrategiesType allTheInternalStrategiesConfigPlusNewOne() {
-
-        final ConfigItemType buyPriceConfigItem = new ConfigItemType();
-        buyPriceConfigItem.setName(BUY_PRICE_CONFIG_ITEM_KEY);
-        buyPriceConfigItem.setValue(BUY_PRICE_CONFIG_ITEM_VALUE);
-
-        final ConfigItemType amountToBuyConfigItem = new ConfigItemType();
-        amountToBuyConfigItem.setName(AMOUNT_TO_BUY_CONFIG_ITEM_KEY);
-        amountToBuyConfigItem.setValue(AMOUNT_TO_BUY_CONFIG_ITEM_VALUE);
-
-        final OptionalConfigType configurationType = new OptionalConfigType();
-        configurationType.getConfigItem().add(buyPriceConfigItem);
-        configurationType.getConfigItem().add(amountToBuyConfigItem);
-
-        final StrategyType newStrat = new StrategyType();
-        newStrat.setId(GENERATED_STRAT_ID);
-        newStrat.setName(NEW_STRAT_NAME);
-        newStrat.setDescription(NEW_STRAT_DESCRIPTION);
-        newStrat.setClassName(NEW_STRAT_CLASSNAME);
-        newStrat.setOptionalConfig(configurationType);
-
-        final TradingStrategiesType existingStatsPlusNewOne = allTheInternalStrategiesConfig();
-        existingStatsPlusNewOne.getStrategies().add(newStrat);
-        return existingStatsPlusNewOne;
-    }
-
     private static StrategyConfig someExternalStrategyConfig() {
         final Map<String, String> configItems = new HashMap<>();
         configItems.put(BUY_PRICE_CONFIG_ITEM_KEY, BUY_PRICE_CONFIG_ITEM_VALUE);
@@ -0,0 +1,256 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.repository.store;
+
+import com.gazbert.bxbot.domain.market.MarketConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the embedded config store behaves as expected.
+ *
+ * @author gazbert
+ */
+public class TestConfigStore {
+
+    private static final String MARKETS = "markets";
+    private static final String STRATEGIES = "strategies";
+
+    private static final String MARKET_1_ID = "btc_usd";
+    private static final String MARKET_2_ID = "btc_gbp";
+    private static final String MARKET_3_ID = "ltc_btc";
+
+    @Rule
+    public TemporaryFolder storeFolder = new TemporaryFolder();
+
+    private Path storeDirectory;
+    private ConfigStore configStore;
+
+
+    @Before
+    public void setupBeforeEachTest() {
+        storeDirectory = storeFolder.getRoot().toPath();
+        configStore = ConfigStore.open(storeDirectory);
+    }
+
+    @After
+    public void tearDownAfterEachTest() {
+        configStore.close();
+    }
+
+    @Test
+    public void whenEntitiesPutThenTheyCanBeFetchedByIdAndInOrderAdded() {
+
+        putMarkets(MARKET_2_ID, MARKET_1_ID, MARKET_3_ID);
+
+        final MarketConfig marketConfig = configStore.get(MARKETS, MARKET_1_ID, MarketConfig.class);
+        assertThat(marketConfig.getId()).isEqualTo(MARKET_1_ID);
+        assertThat(marketConfig.getName()).isEqualTo("Market " + MARKET_1_ID);
+        assertThat(configStore.get(MARKETS, "unknown-id", MarketConfig.class)).isNull();
+        assertThat(configStore.get("unknown-collection", MARKET_1_ID, MarketConfig.class)).isNull();
+
+        assertThat(marketIds(configStore.findAll(MARKETS, MarketConfig.class)))
+                .containsExactly(MARKET_2_ID, MARKET_1_ID, MARKET_3_ID);
+    }
+
+    @Test
+    public void whenEntityFetchedThenCallerGetsACopy() {
+
+        putMarkets(MARKET_1_ID);
+
+        configStore.get(MARKETS, MARKET_1_ID, MarketConfig.class).setName("Changed outside a transaction");
+        assertThat(configStore.get(MARKETS, MARKET_1_ID, MarketConfig.class).getName())
+                .isEqualTo("Market " + MARKET_1_ID);
+    }
+
+    @Test
+    public void whenStoreReopenedThenCommittedTransactionsAreReplayed() {
+
+        putMarkets(MARKET_1_ID, MARKET_2_ID, MARKET_3_ID);
+        configStore.inTransaction(transaction -> transaction.delete(MARKETS, MARKET_2_ID));
+        final long marketsVersion = configStore.getVersion(MARKETS);
+
+        configStore.close();
+        configStore = ConfigStore.open(storeDirectory);
+
+        assertThat(marketIds(configStore.findAll(MARKETS, MarketConfig.class)))
+                .containsExactly(MARKET_1_ID, MARKET_3_ID);
+        assertThat(configStore.getVersion(MARKETS)).isEqualTo(marketsVersion);
+    }
+
+    @Test
+    public void whenTransactionFailsThenNoneOfItsChangesAreCommitted() {
+
+        putMarkets(MARKET_1_ID);
+        final long marketsVersion = configStore.getVersion(MARKETS);
+
+        try {
+            configStore.inTransaction(transaction -> {
+                transaction.put(MARKETS, MARKET_2_ID, someMarketConfig(MARKET_2_ID));
+                transaction.delete(MARKETS, MARKET_1_ID);
+                assertThat(marketIds(transaction.findAll(MARKETS, MarketConfig.class))).containsExactly(MARKET_2_ID);
+                throw new IllegalArgumentException("Validation failed");
+            });
+            fail("Expected the transaction's exception to be thrown");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage()).isEqualTo("Validation failed");
+        }
+
+        assertThat(marketIds(configStore.findAll(MARKETS, MarketConfig.class))).containsExactly(MARKET_1_ID);
+        assertThat(configStore.getVersion(MARKETS)).isEqualTo(marketsVersion);
+
+        configStore.close();
+        configStore = ConfigStore.open(storeDirectory);
+        assertThat(marketIds(configStore.findAll(MARKETS, MarketConfig.class))).containsExactly(MARKET_1_ID);
+    }
+
+    @Test
+    public void whenTransactionChangesCollectionThenOnlyThatCollectionsVersionChanges() {
+
+        assertThat(configStore.getVersion(MARKETS)).isEqualTo(0);
+
+        putMarkets(MARKET_1_ID);
+        final long marketsVersion = configStore.getVersion(MARKETS);
+        assertThat(marketsVersion).isGreaterThan(0);
+
+        configStore.inTransaction(transaction -> {
+            transaction.put(STRATEGIES, "scalper", "scalper-strategy");
+            return null;
+        });
+        assertThat(configStore.getVersion(MARKETS)).isEqualTo(marketsVersion);
+        assertThat(configStore.getVersion(STRATEGIES)).isGreaterThan(marketsVersion);
+
+        // a transaction that changes nothing is not committed
+        configStore.inTransaction(transaction -> transaction.delete(MARKETS, "unknown-id"));
+        assertThat(configStore.getVersion(MARKETS)).isEqualTo(marketsVersion);
+    }
+
+    @Test
+    public void whenJournalEndsWithTornTransactionThenItIsDroppedOnOpen() throws Exception {
+
+        putMarkets(MARKET_1_ID);
+        putMarkets(MARKET_2_ID);
+        configStore.close();
+
+        // Chop the end off the last transaction, as if the bot died while it was being written
+        final Path journalFile = storeDirectory.resolve(ConfigStore.JOURNAL_FILENAME);
+        final byte[] journal = Files.readAllBytes(journalFile);
+        Files.write(journalFile, Arrays.copyOf(journal, journal.length - 5), StandardOpenOption.TRUNCATE_EXISTING);
+
+        configStore = ConfigStore.open(storeDirectory);
+        assertThat(marketIds(configStore.findAll(MARKETS, MarketConfig.class))).containsExactly(MARKET_1_ID);
+
+        // and the journal can be appended to again
+        putMarkets(MARKET_3_ID);
+        configStore.close();
+        configStore = ConfigStore.open(storeDirectory);
+        assertThat(marketIds(configStore.findAll(MARKETS, MarketConfig.class)))
+                .containsExactly(MARKET_1_ID, MARKET_3_ID);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void whenJournalIsNotAConfigStoreJournalThenOpenFails() throws Exception {
+
+        configStore.close();
+        Files.write(storeDirectory.resolve(ConfigStore.JOURNAL_FILENAME), "<markets/>".getBytes("UTF-8"));
+        configStore = ConfigStore.open(storeDirectory);
+    }
+
+    @Test
+    public void whenJournalIsMostlyDeadEntriesThenItIsCompacted() throws Exception {
+
+        putMarkets(MARKET_1_ID, MARKET_2_ID);
+
+        final MarketConfig bigMarketConfig = someMarketConfig(MARKET_3_ID);
+        final char[] padding = new char[16 * 1024];
+        Arrays.fill(padding, 'x');
+        bigMarketConfig.setName(new String(padding));
+
+        final File journalFile = storeDirectory.resolve(ConfigStore.JOURNAL_FILENAME).toFile();
+        long largestJournalSize = 0;
+        for (int i = 0; i < 100; i++) {
+            bigMarketConfig.setTradingStrategyId("strategy-" + i);
+            configStore.inTransaction(transaction -> {
+                transaction.put(MARKETS, MARKET_3_ID, bigMarketConfig);
+                return null;
+            });
+            largestJournalSize = Math.max(largestJournalSize, journalFile.length());
+        }
+        final long marketsVersion = configStore.getVersion(MARKETS);
+
+        // 100 x 16KB puts would be over 1.6MB without compaction
+        assertThat(largestJournalSize).isLessThan(1024 * 1024 + 32 * 1024);
+        assertThat(journalFile.length()).isLessThan(largestJournalSize);
+        assertThat(storeDirectory.toFile().list()).containsOnly(ConfigStore.JOURNAL_FILENAME);
+
+        configStore.close();
+        configStore = ConfigStore.open(storeDirectory);
+        assertThat(marketIds(configStore.findAll(MARKETS, MarketConfig.class)))
+                .containsExactly(MARKET_1_ID, MARKET_2_ID, MARKET_3_ID);
+        assertThat(configStore.get(MARKETS, MARKET_3_ID, MarketConfig.class).getTradingStrategyId())
+                .isEqualTo("strategy-99");
+        assertThat(configStore.getVersion(MARKETS)).isEqualTo(marketsVersion);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void whenStoreClosedThenTransactionsFail() {
+        configStore.close();
+        putMarkets(MARKET_1_ID);
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Private utils
+    // ------------------------------------------------------------------------------------------------
+
+    private void putMarkets(String... marketIds) {
+        configStore.inTransaction(transaction -> {
+            for (final String marketId : marketIds) {
+                transaction.put(MARKETS, marketId, someMarketConfig(marketId));
+            }
+            return null;
+        });
+    }
+
+    private static MarketConfig someMarketConfig(String marketId) {
+        return new MarketConfig(marketId, "Market " + marketId, "BTC", "USD", true, "scalper", "bitstamp");
+    }
+
+    private static List<String> marketIds(List<MarketConfig> marketConfigs) {
+        return marketConfigs.stream().map(MarketConfig::getId).collect(Collectors.toList());
+    }
+}
@@ -23,15 +23,62 @@
 
 package com.gazbert.bxbot.rest.api.v1.config;
 
+import com.gazbert.bxbot.repository.ConfigVersionConflictException;
 import com.gazbert.bxbot.rest.api.v1.AbstractController;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 
 /**
+ * <p>
  * Base class for all config controllers.
+ * </p>
+ * <p>
+ * Config that supports optimistic locking is returned with its version as an ETag. Clients send it back in an If-Match
+ * header when updating or deleting the config; if someone else has changed the config in the meantime, the request is
+ * rejected with a 412 'Precondition Failed' HTTP status code. Requests without an If-Match header are not checked.
+ * </p>
  *
  * @author gazbert
  * @since 1.0
  */
 abstract class AbstractConfigController extends AbstractController {
 
+    private static final Logger LOG = LogManager.getLogger();
     static final String CONFIG_ENDPOINT_BASE_URI = API_ENDPOINT_BASE_URI + "/config";
+
+    ResponseEntity<?> buildResponseEntity(Object entity, HttpStatus httpStatus, String configVersion) {
+        LOG.info("Response: " + entity + " version: " + configVersion);
+        final HttpHeaders headers = new HttpHeaders();
+        if (configVersion != null) {
+            headers.setETag("\"" + configVersion + "\"");
+        }
+        return new ResponseEntity<>(entity, headers, httpStatus);
+    }
+
+    /*
+     * Returns the config version in an If-Match header value, or null if there is no header or it matches any version.
+     */
+    static String toConfigVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().isEmpty() || "*".equals(ifMatch.trim())) {
+            return null;
+        }
+        String version = ifMatch.trim();
+        if (version.startsWith("W/")) {
+            version = version.substring(2);
+        }
+        if (version.length() > 1 && version.startsWith("\"") && version.endsWith("\"")) {
+            version = version.substring(1, version.length() - 1);
+        }
+        return version;
+    }
+
+    @ExceptionHandler(ConfigVersionConflictException.class)
+    ResponseEntity<?> handleConfigVersionConflict(ConfigVersionConflictException e) {
+        LOG.warn("Rejecting config change: " + e.getMessage());
+        return new ResponseEntity<>(HttpStatus.PRECONDITION_FAILED);
+    }
 }
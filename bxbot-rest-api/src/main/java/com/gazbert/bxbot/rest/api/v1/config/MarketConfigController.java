@@ -28,6 +28,7 @@ import com.gazbert.bxbot.services.MarketConfigService;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -78,17 +79,20 @@ public class MarketConfigController extends AbstractConfigController {
      *
      * @param user     the authenticated user.
      * @param marketId the id of the Market to fetch.
-     * @return the Market configuration.
+     * @return the Market configuration, with its version in the ETag header. The version belongs to this Market alone,
+     * so changes to other Market configs do not make it stale.
      */
     @RequestMapping(value = MARKETS_RESOURCE_PATH + "/{marketId}", method = RequestMethod.GET)
     public ResponseEntity<?> getMarket(@AuthenticationPrincipal User user, @PathVariable String marketId) {
 
         LOG.info("GET " + MARKETS_RESOURCE_PATH + "/" + marketId + " - getMarket() - caller: " + user.getUsername());
 
+        // get the version first: if the config changes in between, the client gets a stale version, not stale config
+        final String configVersion = marketConfigService.getMarketConfigVersion(marketId);
         final MarketConfig marketConfig = marketConfigService.getMarketConfig(marketId);
         return marketConfig == null
                 ? new ResponseEntity<>(HttpStatus.NOT_FOUND)
-                : buildResponseEntity(marketConfig, HttpStatus.OK);
+                : buildResponseEntity(marketConfig, HttpStatus.OK, configVersion);
     }
 
     /**
@@ -97,12 +101,15 @@ public class MarketConfigController extends AbstractConfigController {
      * @param user     the authenticated user.
      * @param marketId id of the Market config to update.
      * @param config   the updated Market config.
+     * @param ifMatch  optional version of the config the update is based on.
      * @return 204 'No Content' HTTP status code if update successful, 404 'Not Found' HTTP status code if
-     * Market config not found.
+     * Market config not found, 412 'Precondition Failed' HTTP status code if the config has changed since the
+     * If-Match version.
      */
     @RequestMapping(value = MARKETS_RESOURCE_PATH + "/{marketId}", method = RequestMethod.PUT)
     public ResponseEntity<?> updateMarket(@AuthenticationPrincipal User user, @PathVariable String marketId,
-                                          @RequestBody MarketConfig config) {
+                                          @RequestBody MarketConfig config,
+                                          @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
 
         LOG.info("PUT " + MARKETS_RESOURCE_PATH + "/" + marketId + " - updateMarket() - caller: " + user.getUsername());
         LOG.info("Request: " + config);
@@ -111,7 +118,7 @@ public class MarketConfigController extends AbstractConfigController {
             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
 
-        final MarketConfig updatedConfig = marketConfigService.updateMarketConfig(config);
+        final MarketConfig updatedConfig = marketConfigService.updateMarketConfig(config, toConfigVersion(ifMatch));
         return updatedConfig == null
                 ? new ResponseEntity<>(HttpStatus.NOT_FOUND)
                 : buildResponseEntity(updatedConfig, HttpStatus.OK);
@@ -142,15 +149,18 @@ public class MarketConfigController extends AbstractConfigController {
      *
      * @param user     the authenticated user.
      * @param marketId the id of the Market configuration to delete.
+     * @param ifMatch  optional version of the config the delete is based on.
      * @return 204 'No Content' HTTP status code if delete successful, 404 'Not Found' HTTP status code if
-     * Market config not found.
+     * Market config not found, 412 'Precondition Failed' HTTP status code if the config has changed since the
+     * If-Match version.
      */
     @RequestMapping(value = MARKETS_RESOURCE_PATH + "/{marketId}", method = RequestMethod.DELETE)
-    public ResponseEntity<?> deleteMarket(@AuthenticationPrincipal User user, @PathVariable String marketId) {
+    public ResponseEntity<?> deleteMarket(@AuthenticationPrincipal User user, @PathVariable String marketId,
+                                          @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
 
         LOG.info("DELETE " + MARKETS_RESOURCE_PATH + "/" + marketId + " - deleteMarket() - caller: " + user.getUsername());
 
-        final MarketConfig deletedConfig = marketConfigService.deleteMarketConfig(marketId);
+        final MarketConfig deletedConfig = marketConfigService.deleteMarketConfig(marketId, toConfigVersion(ifMatch));
         return deletedConfig == null
                 ? new ResponseEntity<>(HttpStatus.NOT_FOUND)
                 : new ResponseEntity<>(HttpStatus.NO_CONTENT);
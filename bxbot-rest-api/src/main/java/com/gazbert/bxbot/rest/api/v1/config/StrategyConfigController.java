@@ -28,6 +28,7 @@ import com.gazbert.bxbot.services.StrategyConfigService;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -79,17 +80,20 @@ public class StrategyConfigController extends AbstractConfigController {
      *
      * @param user       the authenticated user.
      * @param strategyId the id of the Strategy to fetch.
-     * @return the Strategy configuration.
+     * @return the Strategy configuration, with its version in the ETag header. The version belongs to this Strategy alone,
+     * so changes to other Strategy configs do not make it stale.
      */
     @RequestMapping(value = STRATEGIES_RESOURCE_PATH + "/{strategyId}", method = RequestMethod.GET)
     public ResponseEntity<?> getStrategy(@AuthenticationPrincipal User user, @PathVariable String strategyId) {
 
         LOG.info("GET " + STRATEGIES_RESOURCE_PATH + "/" + strategyId + " - getStrategy() - caller: " + user.getUsername());
 
+        // get the version first: if the config changes in between, the client gets a stale version, not stale config
+        final String configVersion = strategyConfigService.getStrategyConfigVersion(strategyId);
         final StrategyConfig strategyConfig = strategyConfigService.getStrategyConfig(strategyId);
         return strategyConfig == null
                 ? new ResponseEntity<>(HttpStatus.NOT_FOUND)
-                : buildResponseEntity(strategyConfig, HttpStatus.OK);
+                : buildResponseEntity(strategyConfig, HttpStatus.OK, configVersion);
     }
 
     /**
@@ -98,12 +102,15 @@ public class StrategyConfigController extends AbstractConfigController {
      * @param user       the authenticated user.
      * @param strategyId id of the Strategy config to update.
      * @param config     the updated Strategy config.
+     * @param ifMatch    optional version of the config the update is based on.
      * @return 200 'OK' HTTP status code and updated Strategy config in the body if update successful,
-     * 404 'Not Found' HTTP status code if Strategy config not found.
+     * 404 'Not Found' HTTP status code if Strategy config not found, 412 'Precondition Failed' HTTP status code if
+     * the config has changed since the If-Match version.
      */
     @RequestMapping(value = STRATEGIES_RESOURCE_PATH + "/{strategyId}", method = RequestMethod.PUT)
     public ResponseEntity<?> updateStrategy(@AuthenticationPrincipal User user, @PathVariable String strategyId,
-                                            @RequestBody StrategyConfig config) {
+                                            @RequestBody StrategyConfig config,
+                                            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
 
         LOG.info("PUT " + STRATEGIES_RESOURCE_PATH + "/" + strategyId + " - updateStrategy() - caller: " + user.getUsername());
         LOG.info("Request: " + config);
@@ -112,7 +119,7 @@ public class StrategyConfigController extends AbstractConfigController {
             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
 
-        final StrategyConfig updatedConfig = strategyConfigService.updateStrategyConfig(config);
+        final StrategyConfig updatedConfig = strategyConfigService.updateStrategyConfig(config, toConfigVersion(ifMatch));
         return updatedConfig == null
                 ? new ResponseEntity<>(HttpStatus.NOT_FOUND)
                 : buildResponseEntity(updatedConfig, HttpStatus.OK);
@@ -143,15 +150,18 @@ public class StrategyConfigController extends AbstractConfigController {
      *
      * @param user       the authenticated user.
      * @param strategyId the id of the Strategy configuration to delete.
+     * @param ifMatch    optional version of the config the delete is based on.
      * @return 204 'No Content' HTTP status code if delete successful, 404 'Not Found' HTTP status code if
-     * Strategy config not found.
+     * Strategy config not found, 412 'Precondition Failed' HTTP status code if the config has changed since the
+     * If-Match version.
      */
     @RequestMapping(value = STRATEGIES_RESOURCE_PATH + "/{strategyId}", method = RequestMethod.DELETE)
-    public ResponseEntity<?> deleteStrategy(@AuthenticationPrincipal User user, @PathVariable String strategyId) {
+    public ResponseEntity<?> deleteStrategy(@AuthenticationPrincipal User user, @PathVariable String strategyId,
+                                            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
 
         LOG.info("DELETE " + STRATEGIES_RESOURCE_PATH + "/" + strategyId + " - deleteStrategy() - caller: " + user.getUsername());
 
-        final StrategyConfig deletedConfig = strategyConfigService.deleteStrategyConfig(strategyId);
+        final StrategyConfig deletedConfig = strategyConfigService.deleteStrategyConfig(strategyId, toConfigVersion(ifMatch));
         return deletedConfig == null
                 ? new ResponseEntity<>(HttpStatus.NOT_FOUND)
                 : new ResponseEntity<>(HttpStatus.NO_CONTENT);
@@ -0,0 +1,231 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.rest.api.v1.runtime;
+
+import com.gazbert.bxbot.core.engine.TradingEngineHost;
+import com.gazbert.bxbot.core.journal.TradeJournal;
+import com.gazbert.bxbot.domain.accounting.MarketPosition;
+import com.gazbert.bxbot.domain.bot.BotStatus;
+import com.gazbert.bxbot.domain.breaker.CircuitBreakerStatus;
+import com.gazbert.bxbot.domain.journal.TradeJournalPage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+import static com.gazbert.bxbot.rest.api.v1.runtime.AbstractRuntimeController.RUNTIME_ENDPOINT_BASE_URI;
+
+/**
+ * Controller for directing requests for the extra bots hosted in this JVM.
+ * <p>
+ * Hosted bots can be stopped and started by botId, and each has its own positions, trade journal, and circuit
+ * breakers. The main bot is not listed - its status is served by the {@link BotStatusController}, and its positions,
+ * journal, and breakers by the {@link PositionController}, {@link TradeJournalController}, and
+ * {@link CircuitBreakerController}.
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+@RestController
+@RequestMapping(RUNTIME_ENDPOINT_BASE_URI)
+public class BotsController extends AbstractRuntimeController {
+
+    private static final Logger LOG = LogManager.getLogger();
+    private static final String BOTS_RESOURCE_PATH = "/bots";
+    private static final String DEFAULT_JOURNAL_LIMIT = "100";
+    private final TradingEngineHost tradingEngineHost;
+
+    @Autowired
+    public BotsController(TradingEngineHost tradingEngineHost) {
+        this.tradingEngineHost = tradingEngineHost;
+    }
+
+    /**
+     * Returns the status of each hosted bot.
+     *
+     * @param user the authenticated user making the request.
+     * @return the hosted bot statuses.
+     */
+    @RequestMapping(value = BOTS_RESOURCE_PATH, method = RequestMethod.GET)
+    public List<BotStatus> getBots(@AuthenticationPrincipal User user) {
+
+        LOG.info("GET " + BOTS_RESOURCE_PATH + " - getBots() - caller: " + user.getUsername());
+
+        final List<BotStatus> botStatuses = tradingEngineHost.getBotStatuses();
+
+        LOG.info("Response: " + botStatuses);
+        return botStatuses;
+    }
+
+    /**
+     * Returns the status of a hosted bot.
+     *
+     * @param user  the authenticated user making the request.
+     * @param botId the id of the bot.
+     * @return the bot status.
+     */
+    @RequestMapping(value = BOTS_RESOURCE_PATH + "/{botId}", method = RequestMethod.GET)
+    public ResponseEntity<?> getBot(@AuthenticationPrincipal User user, @PathVariable String botId) {
+
+        LOG.info("GET " + BOTS_RESOURCE_PATH + "/" + botId + " - getBot() - caller: " + user.getUsername());
+
+        final BotStatus botStatus = tradingEngineHost.getBotStatus(botId);
+        return botStatus == null
+                ? new ResponseEntity<>(HttpStatus.NOT_FOUND)
+                : buildResponseEntity(botStatus, HttpStatus.OK);
+    }
+
+    /**
+     * Starts a hosted bot.
+     *
+     * @param user  the authenticated user making the request.
+     * @param botId the id of the bot.
+     * @return the bot status, or 409 Conflict if the bot is already running.
+     */
+    @RequestMapping(value = BOTS_RESOURCE_PATH + "/{botId}/start", method = RequestMethod.POST)
+    public ResponseEntity<?> startBot(@AuthenticationPrincipal User user, @PathVariable String botId) {
+
+        LOG.info("POST " + BOTS_RESOURCE_PATH + "/" + botId + "/start - startBot() - caller: " + user.getUsername());
+
+        try {
+            final BotStatus botStatus = tradingEngineHost.startBot(botId);
+            return botStatus == null
+                    ? new ResponseEntity<>(HttpStatus.NOT_FOUND)
+                    : buildResponseEntity(botStatus, HttpStatus.OK);
+        } catch (IllegalStateException e) {
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
+        }
+    }
+
+    /**
+     * Stops a hosted bot. Stopping a bot that is not running does nothing.
+     *
+     * @param user  the authenticated user making the request.
+     * @param botId the id of the bot.
+     * @return the bot status.
+     */
+    @RequestMapping(value = BOTS_RESOURCE_PATH + "/{botId}/stop", method = RequestMethod.POST)
+    public ResponseEntity<?> stopBot(@AuthenticationPrincipal User user, @PathVariable String botId) {
+
+        LOG.info("POST " + BOTS_RESOURCE_PATH + "/" + botId + "/stop - stopBot() - caller: " + user.getUsername());
+
+        final BotStatus botStatus = tradingEngineHost.stopBot(botId);
+        return botStatus == null
+                ? new ResponseEntity<>(HttpStatus.NOT_FOUND)
+                : buildResponseEntity(botStatus, HttpStatus.OK);
+    }
+
+    /**
+     * Returns a hosted bot's position and P&amp;L in each market, ordered by exchange then market.
+     *
+     * @param user  the authenticated user making the request.
+     * @param botId the id of the bot.
+     * @return the positions.
+     */
+    @RequestMapping(value = BOTS_RESOURCE_PATH + "/{botId}/positions", method = RequestMethod.GET)
+    public ResponseEntity<?> getPositions(@AuthenticationPrincipal User user, @PathVariable String botId) {
+
+        LOG.info("GET " + BOTS_RESOURCE_PATH + "/" + botId + "/positions - getPositions() - caller: "
+                + user.getUsername());
+
+        final List<MarketPosition> positions = tradingEngineHost.getPositions(botId);
+        return positions == null
+                ? new ResponseEntity<>(HttpStatus.NOT_FOUND)
+                : buildResponseEntity(positions, HttpStatus.OK);
+    }
+
+    /**
+     * Returns a page of a hosted bot's journalled order events for a market. The paging works the same as for the
+     * main bot's journal - see {@link TradeJournalController}.
+     *
+     * @param user     the authenticated user making the request.
+     * @param botId    the id of the bot.
+     * @param exchange the id of the exchange.
+     * @param market   the id of the market.
+     * @param orderId  optional order id - only events for this order are returned if set.
+     * @param from     optional start time in millis since the epoch, inclusive.
+     * @param to       optional end time in millis since the epoch, inclusive.
+     * @param cursor   where to start; 0 for the first page.
+     * @param limit    the maximum number of events to return.
+     * @return the page of events, or 400 if the cursor or limit is out of range.
+     */
+    @RequestMapping(value = BOTS_RESOURCE_PATH + "/{botId}/journal/events", method = RequestMethod.GET)
+    public ResponseEntity<?> getJournalEvents(@AuthenticationPrincipal User user, @PathVariable String botId,
+                                              @RequestParam(value = "exchange") String exchange,
+                                              @RequestParam(value = "market") String market,
+                                              @RequestParam(value = "orderId", required = false) String orderId,
+                                              @RequestParam(value = "from", required = false) Long from,
+                                              @RequestParam(value = "to", required = false) Long to,
+                                              @RequestParam(value = "cursor", defaultValue = "0") long cursor,
+                                              @RequestParam(value = "limit", defaultValue = DEFAULT_JOURNAL_LIMIT)
+                                                      int limit) {
+
+        LOG.info("GET " + BOTS_RESOURCE_PATH + "/" + botId + "/journal/events - getJournalEvents() - caller: "
+                + user.getUsername());
+
+        final TradeJournal tradeJournal = tradingEngineHost.getTradeJournal(botId);
+        if (tradeJournal == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+
+        try {
+            final TradeJournalPage page = tradeJournal.query(exchange, market, orderId, from, to, cursor, limit);
+            LOG.info("Response: " + page.getEvents().size() + " events");
+            return buildResponseEntity(page, HttpStatus.OK);
+
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Bad trade journal query: " + e.getMessage());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Returns the state of a hosted bot's circuit breakers, per exchange.
+     *
+     * @param user  the authenticated user making the request.
+     * @param botId the id of the bot.
+     * @return the circuit breaker states.
+     */
+    @RequestMapping(value = BOTS_RESOURCE_PATH + "/{botId}/circuit-breakers", method = RequestMethod.GET)
+    public ResponseEntity<?> getCircuitBreakers(@AuthenticationPrincipal User user, @PathVariable String botId) {
+
+        LOG.info("GET " + BOTS_RESOURCE_PATH + "/" + botId + "/circuit-breakers - getCircuitBreakers() - caller: "
+                + user.getUsername());
+
+        final List<CircuitBreakerStatus> circuitBreakerStatuses = tradingEngineHost.getCircuitBreakerStatuses(botId);
+        return circuitBreakerStatuses == null
+                ? new ResponseEntity<>(HttpStatus.NOT_FOUND)
+                : buildResponseEntity(circuitBreakerStatuses, HttpStatus.OK);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.rest.api.v1.runtime;
+
+import com.gazbert.bxbot.core.metrics.ExchangeMetricsRegistry;
+import com.gazbert.bxbot.domain.metrics.ExchangeCallMetrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+import static com.gazbert.bxbot.rest.api.v1.runtime.AbstractRuntimeController.RUNTIME_ENDPOINT_BASE_URI;
+
+/**
+ * Controller for directing Exchange Adapter call metrics requests.
+ * <p>
+ * Metrics are available as JSON, or in the Prometheus text exposition format for scraping.
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+@RestController
+@RequestMapping(RUNTIME_ENDPOINT_BASE_URI)
+public class ExchangeMetricsController extends AbstractRuntimeController {
+
+    private static final Logger LOG = LogManager.getLogger();
+    private static final String METRICS_RESOURCE_PATH = "/metrics/exchange";
+    private static final String PROMETHEUS_RESOURCE_PATH = METRICS_RESOURCE_PATH + "/prometheus";
+    private static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private final ExchangeMetricsRegistry exchangeMetricsRegistry;
+
+    @Autowired
+    public ExchangeMetricsController(ExchangeMetricsRegistry exchangeMetricsRegistry) {
+        this.exchangeMetricsRegistry = exchangeMetricsRegistry;
+    }
+
+    /**
+     * Returns the call metrics for every Exchange Adapter endpoint, per exchange and market.
+     *
+     * @param user the authenticated user making the request.
+     * @return the call metrics.
+     */
+    @RequestMapping(value = METRICS_RESOURCE_PATH, method = RequestMethod.GET)
+    public List<ExchangeCallMetrics> getExchangeMetrics(@AuthenticationPrincipal User user) {
+
+        LOG.info("GET " + METRICS_RESOURCE_PATH + " - getExchangeMetrics() - caller: " + user.getUsername());
+
+        final List<ExchangeCallMetrics> callMetrics = exchangeMetricsRegistry.getCallMetrics();
+
+        LOG.info("Response: " + callMetrics);
+        return callMetrics;
+    }
+
+    /**
+     * Returns the call metrics in the Prometheus text exposition format.
+     *
+     * @param user the authenticated user making the request.
+     * @return the call metrics as Prometheus text.
+     */
+    @RequestMapping(value = PROMETHEUS_RESOURCE_PATH, method = RequestMethod.GET, produces = PROMETHEUS_CONTENT_TYPE)
+    public String getExchangeMetricsForPrometheus(@AuthenticationPrincipal User user) {
+
+        LOG.info("GET " + PROMETHEUS_RESOURCE_PATH + " - getExchangeMetricsForPrometheus() - caller: "
+                + user.getUsername());
+
+        return exchangeMetricsRegistry.toPrometheusText();
+    }
+}
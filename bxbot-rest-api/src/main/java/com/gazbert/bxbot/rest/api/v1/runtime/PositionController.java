@@ -0,0 +1,78 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.rest.api.v1.runtime;
+
+import com.gazbert.bxbot.core.accounting.PositionLedger;
+import com.gazbert.bxbot.domain.accounting.MarketPosition;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+import static com.gazbert.bxbot.rest.api.v1.runtime.AbstractRuntimeController.RUNTIME_ENDPOINT_BASE_URI;
+
+/**
+ * Controller for directing position and P&amp;L requests.
+ * <p>
+ * Positions are served from the bot's running totals - no calls are made to the exchanges.
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+@RestController
+@RequestMapping(RUNTIME_ENDPOINT_BASE_URI)
+public class PositionController extends AbstractRuntimeController {
+
+    private static final Logger LOG = LogManager.getLogger();
+    private static final String POSITIONS_RESOURCE_PATH = "/positions";
+    private final PositionLedger positionLedger;
+
+    @Autowired
+    public PositionController(PositionLedger positionLedger) {
+        this.positionLedger = positionLedger;
+    }
+
+    /**
+     * Returns the bot's position and P&amp;L in each market, ordered by exchange then market.
+     *
+     * @param user the authenticated user making the request.
+     * @return the positions.
+     */
+    @RequestMapping(value = POSITIONS_RESOURCE_PATH, method = RequestMethod.GET)
+    public List<MarketPosition> getPositions(@AuthenticationPrincipal User user) {
+
+        LOG.info("GET " + POSITIONS_RESOURCE_PATH + " - getPositions() - caller: " + user.getUsername());
+
+        final List<MarketPosition> positions = positionLedger.getPositions();
+
+        LOG.info("Response: " + positions);
+        return positions;
+    }
+}
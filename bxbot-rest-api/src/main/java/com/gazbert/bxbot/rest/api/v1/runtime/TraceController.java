@@ -0,0 +1,103 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.rest.api.v1.runtime;
+
+import com.gazbert.bxbot.core.trace.TraceRecorder;
+import com.gazbert.bxbot.domain.trace.CycleTimeline;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+import static com.gazbert.bxbot.rest.api.v1.runtime.AbstractRuntimeController.RUNTIME_ENDPOINT_BASE_URI;
+
+/**
+ * Controller for directing trace timeline requests.
+ * <p>
+ * Timelines show where the time went in the last N trade cycles and Emergency Stop checks: strategy execution,
+ * Trading API calls, network I/O, response parsing, and request signing.
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+@RestController
+@RequestMapping(RUNTIME_ENDPOINT_BASE_URI)
+public class TraceController extends AbstractRuntimeController {
+
+    private static final Logger LOG = LogManager.getLogger();
+    private static final String TIMELINES_RESOURCE_PATH = "/trace/timelines";
+    private static final String DEFAULT_LIMIT = "20";
+    private final TraceRecorder traceRecorder;
+
+    @Autowired
+    public TraceController(TraceRecorder traceRecorder) {
+        this.traceRecorder = traceRecorder;
+    }
+
+    /**
+     * Returns the most recent trace timelines, newest first.
+     *
+     * @param user  the authenticated user making the request.
+     * @param name  optional timeline name to filter on, e.g. trade-cycle or emergency-stop-check.
+     * @param limit the maximum number of timelines to return.
+     * @return the timelines.
+     */
+    @RequestMapping(value = TIMELINES_RESOURCE_PATH, method = RequestMethod.GET)
+    public List<CycleTimeline> getTimelines(@AuthenticationPrincipal User user,
+                                            @RequestParam(value = "name", required = false) String name,
+                                            @RequestParam(value = "limit", defaultValue = DEFAULT_LIMIT) int limit) {
+
+        LOG.info("GET " + TIMELINES_RESOURCE_PATH + " - getTimelines() - caller: " + user.getUsername());
+
+        final List<CycleTimeline> timelines = traceRecorder.getTimelines(name, limit);
+
+        LOG.info("Response: " + timelines.size() + " timelines");
+        return timelines;
+    }
+
+    /**
+     * Returns the trace timeline for a given id.
+     *
+     * @param user       the authenticated user making the request.
+     * @param timelineId the id of the timeline to fetch.
+     * @return the timeline.
+     */
+    @RequestMapping(value = TIMELINES_RESOURCE_PATH + "/{timelineId}", method = RequestMethod.GET)
+    public ResponseEntity<?> getTimeline(@AuthenticationPrincipal User user, @PathVariable long timelineId) {
+
+        LOG.info("GET " + TIMELINES_RESOURCE_PATH + "/" + timelineId + " - getTimeline() - caller: "
+                + user.getUsername());
+
+        final CycleTimeline timeline = traceRecorder.getTimeline(timelineId);
+        return timeline == null
+                ? new ResponseEntity<>(HttpStatus.NOT_FOUND)
+                : buildResponseEntity(timeline, HttpStatus.OK);
+    }
+}
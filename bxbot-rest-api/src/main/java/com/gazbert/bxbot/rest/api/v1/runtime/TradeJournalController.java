@@ -0,0 +1,100 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.rest.api.v1.runtime;
+
+import com.gazbert.bxbot.core.journal.TradeJournal;
+import com.gazbert.bxbot.domain.journal.TradeJournalPage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import static com.gazbert.bxbot.rest.api.v1.runtime.AbstractRuntimeController.RUNTIME_ENDPOINT_BASE_URI;
+
+/**
+ * Controller for directing trade journal requests.
+ * <p>
+ * The journal holds the order events for each market: creates, exchange acks, cancels, and fills. Events are
+ * returned a page at a time, oldest first; pass the next cursor from a page to fetch the one after it.
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+@RestController
+@RequestMapping(RUNTIME_ENDPOINT_BASE_URI)
+public class TradeJournalController extends AbstractRuntimeController {
+
+    private static final Logger LOG = LogManager.getLogger();
+    private static final String JOURNAL_RESOURCE_PATH = "/journal/events";
+    private static final String DEFAULT_LIMIT = "100";
+    private final TradeJournal tradeJournal;
+
+    @Autowired
+    public TradeJournalController(TradeJournal tradeJournal) {
+        this.tradeJournal = tradeJournal;
+    }
+
+    /**
+     * Returns a page of journalled order events for a market.
+     *
+     * @param user     the authenticated user making the request.
+     * @param exchange the id of the exchange.
+     * @param market   the id of the market.
+     * @param orderId  optional order id - only events for this order are returned if set.
+     * @param from     optional start time in millis since the epoch, inclusive.
+     * @param to       optional end time in millis since the epoch, inclusive.
+     * @param cursor   where to start; 0 for the first page.
+     * @param limit    the maximum number of events to return.
+     * @return the page of events, or 400 if the cursor or limit is out of range.
+     */
+    @RequestMapping(value = JOURNAL_RESOURCE_PATH, method = RequestMethod.GET)
+    public ResponseEntity<?> getEvents(@AuthenticationPrincipal User user,
+                                       @RequestParam(value = "exchange") String exchange,
+                                       @RequestParam(value = "market") String market,
+                                       @RequestParam(value = "orderId", required = false) String orderId,
+                                       @RequestParam(value = "from", required = false) Long from,
+                                       @RequestParam(value = "to", required = false) Long to,
+                                       @RequestParam(value = "cursor", defaultValue = "0") long cursor,
+                                       @RequestParam(value = "limit", defaultValue = DEFAULT_LIMIT) int limit) {
+
+        LOG.info("GET " + JOURNAL_RESOURCE_PATH + " - getEvents() - caller: " + user.getUsername());
+
+        try {
+            final TradeJournalPage page = tradeJournal.query(exchange, market, orderId, from, to, cursor, limit);
+            LOG.info("Response: " + page.getEvents().size() + " events");
+            return buildResponseEntity(page, HttpStatus.OK);
+
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Bad trade journal query: " + e.getMessage());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+    }
+}
@@ -26,12 +26,14 @@ package com.gazbert.bxbot.rest.api.v1.config;
 import com.gazbert.bxbot.core.engine.TradingEngine;
 import com.gazbert.bxbot.core.mail.EmailAlerter;
 import com.gazbert.bxbot.domain.market.MarketConfig;
+import com.gazbert.bxbot.repository.ConfigVersionConflictException;
 import com.gazbert.bxbot.services.MarketConfigService;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
@@ -43,11 +45,13 @@ import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -72,6 +76,8 @@ public class TestMarketConfigController extends AbstractConfigControllerTest {
     private static final boolean MARKET_1_ENABLED = true;
     private static final String MARKET_1_STRATEGY_ID = "scalper-strategy";
 
+    private static final String CONFIG_VERSION = "config-version-1";
+
     private static final String MARKET_2_ID = "btc_gbp";
     private static final String MARKET_2_NAME = "BTC/GBP";
     private static final String MARKET_2_BASE_CURRENCY = "BTC";
@@ -191,7 +197,7 @@ public class TestMarketConfigController extends AbstractConfigControllerTest {
     @Test
     public void testUpdateMarketConfig() throws Exception {
 
-        given(marketConfigService.updateMarketConfig(someMarketConfig())).willReturn(someMarketConfig());
+        given(marketConfigService.updateMarketConfig(someMarketConfig(), null)).willReturn(someMarketConfig());
 
         final MvcResult result = mockMvc.perform(put(MARKETS_CONFIG_ENDPOINT_URI + MARKET_1_ID)
                 .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD))
@@ -202,7 +208,7 @@ public class TestMarketConfigController extends AbstractConfigControllerTest {
                 .andReturn();
 
         assertEquals(jsonify(someMarketConfig()), result.getResponse().getContentAsString());
-        verify(marketConfigService, times(1)).updateMarketConfig(any());
+        verify(marketConfigService, times(1)).updateMarketConfig(any(), any());
     }
 
     @Test
@@ -229,7 +235,7 @@ public class TestMarketConfigController extends AbstractConfigControllerTest {
     @Test
     public void testUpdateMarketConfigWhenIdNotRecognized() throws Exception {
 
-        given(marketConfigService.updateMarketConfig(unrecognizedMarketConfig())).willReturn(null);
+        given(marketConfigService.updateMarketConfig(unrecognizedMarketConfig(), null)).willReturn(null);
 
         mockMvc.perform(put(MARKETS_CONFIG_ENDPOINT_URI + UNKNOWN_MARKET_ID)
                 .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD))
@@ -250,16 +256,45 @@ public class TestMarketConfigController extends AbstractConfigControllerTest {
                 .andExpect(status().isBadRequest());
     }
 
+    @Test
+    public void testGetMarketConfigReturnsVersionAsETag() throws Exception {
+
+        given(marketConfigService.getMarketConfigVersion(MARKET_1_ID)).willReturn(CONFIG_VERSION);
+        given(marketConfigService.getMarketConfig(MARKET_1_ID)).willReturn(someMarketConfig());
+
+        mockMvc.perform(get(MARKETS_CONFIG_ENDPOINT_URI + MARKET_1_ID)
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD)))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + CONFIG_VERSION + "\""));
+    }
+
+    @Test
+    public void testUpdateMarketConfigWhenVersionIsStale() throws Exception {
+
+        given(marketConfigService.updateMarketConfig(any(), eq(CONFIG_VERSION)))
+                .willThrow(new ConfigVersionConflictException("Market config has changed"));
+
+        mockMvc.perform(put(MARKETS_CONFIG_ENDPOINT_URI + MARKET_1_ID)
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD))
+                .header(HttpHeaders.IF_MATCH, "\"" + CONFIG_VERSION + "\"")
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(CONTENT_TYPE)
+                .content(jsonify(someMarketConfig())))
+                .andExpect(status().isPreconditionFailed());
+
+        verify(marketConfigService, times(1)).updateMarketConfig(any(), eq(CONFIG_VERSION));
+    }
+
     @Test
     public void testDeleteMarketConfig() throws Exception {
 
-        given(marketConfigService.deleteMarketConfig(MARKET_1_ID)).willReturn(someMarketConfig());
+        given(marketConfigService.deleteMarketConfig(MARKET_1_ID, null)).willReturn(someMarketConfig());
 
         mockMvc.perform(delete(MARKETS_CONFIG_ENDPOINT_URI + MARKET_1_ID)
                 .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD)))
                 .andExpect(status().isNoContent());
 
-        verify(marketConfigService, times(1)).deleteMarketConfig(MARKET_1_ID);
+        verify(marketConfigService, times(1)).deleteMarketConfig(MARKET_1_ID, null);
     }
 
     @Test
@@ -282,7 +317,7 @@ public class TestMarketConfigController extends AbstractConfigControllerTest {
     @Test
     public void testDeleteMarketConfigWhenIdNotRecognized() throws Exception {
 
-        given(marketConfigService.deleteMarketConfig(UNKNOWN_MARKET_ID)).willReturn(null);
+        given(marketConfigService.deleteMarketConfig(UNKNOWN_MARKET_ID, null)).willReturn(null);
 
         mockMvc.perform(delete(MARKETS_CONFIG_ENDPOINT_URI + UNKNOWN_MARKET_ID)
                 .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD))
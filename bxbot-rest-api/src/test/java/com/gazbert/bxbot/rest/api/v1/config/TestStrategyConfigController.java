@@ -193,7 +193,7 @@ public class TestStrategyConfigController extends AbstractConfigControllerTest {
     @Test
     public void testUpdateStrategyConfig() throws Exception {
 
-        given(strategyConfigService.updateStrategyConfig(someStrategyConfig())).willReturn(someStrategyConfig());
+        given(strategyConfigService.updateStrategyConfig(someStrategyConfig(), null)).willReturn(someStrategyConfig());
 
         final MvcResult result = mockMvc.perform(put(STRATEGIES_CONFIG_ENDPOINT_URI + STRAT_1_ID)
                 .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD))
@@ -204,7 +204,7 @@ public class TestStrategyConfigController extends AbstractConfigControllerTest {
                 .andReturn();
 
         assertEquals(jsonify(someStrategyConfig()), result.getResponse().getContentAsString());
-        verify(strategyConfigService, times(1)).updateStrategyConfig(any());
+        verify(strategyConfigService, times(1)).updateStrategyConfig(any(), any());
     }
 
     @Test
@@ -231,7 +231,7 @@ public class TestStrategyConfigController extends AbstractConfigControllerTest {
     @Test
     public void testUpdateStrategyConfigWhenIdNotRecognized() throws Exception {
 
-        given(strategyConfigService.updateStrategyConfig(unrecognizedStrategyConfig())).willReturn(null);
+        given(strategyConfigService.updateStrategyConfig(unrecognizedStrategyConfig(), null)).willReturn(null);
 
         mockMvc.perform(put(STRATEGIES_CONFIG_ENDPOINT_URI + UNKNOWN_STRAT_ID)
                 .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD))
@@ -255,13 +255,13 @@ public class TestStrategyConfigController extends AbstractConfigControllerTest {
     @Test
     public void testDeleteStrategyConfig() throws Exception {
 
-        given(strategyConfigService.deleteStrategyConfig(STRAT_1_ID)).willReturn(someStrategyConfig());
+        given(strategyConfigService.deleteStrategyConfig(STRAT_1_ID, null)).willReturn(someStrategyConfig());
 
         mockMvc.perform(delete(STRATEGIES_CONFIG_ENDPOINT_URI + STRAT_1_ID)
                 .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD)))
                 .andExpect(status().isNoContent());
 
-        verify(strategyConfigService, times(1)).deleteStrategyConfig(STRAT_1_ID);
+        verify(strategyConfigService, times(1)).deleteStrategyConfig(STRAT_1_ID, null);
     }
 
     @Test
@@ -284,7 +284,7 @@ public class TestStrategyConfigController extends AbstractConfigControllerTest {
     @Test
     public void testDeleteStrategyConfigWhenIdNotRecognized() throws Exception {
 
-        given(strategyConfigService.deleteStrategyConfig(UNKNOWN_STRAT_ID)).willReturn(null);
+        given(strategyConfigService.deleteStrategyConfig(UNKNOWN_STRAT_ID, null)).willReturn(null);
 
         mockMvc.perform(delete(STRATEGIES_CONFIG_ENDPOINT_URI + UNKNOWN_STRAT_ID)
                 .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD))
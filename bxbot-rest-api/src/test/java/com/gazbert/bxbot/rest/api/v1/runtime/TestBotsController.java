@@ -0,0 +1,219 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.rest.api.v1.runtime;
+
+import com.gazbert.bxbot.core.engine.TradingEngine;
+import com.gazbert.bxbot.core.engine.TradingEngineHost;
+import com.gazbert.bxbot.core.journal.TradeJournal;
+import com.gazbert.bxbot.core.mail.EmailAlerter;
+import com.gazbert.bxbot.domain.accounting.MarketPosition;
+import com.gazbert.bxbot.domain.bot.BotStatus;
+import com.gazbert.bxbot.domain.journal.TradeJournalEvent;
+import com.gazbert.bxbot.domain.journal.TradeJournalPage;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Tests the Bots controller behaviour.
+ *
+ * @author gazbert
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@WebAppConfiguration
+public class TestBotsController extends AbstractRuntimeControllerTest {
+
+    private static final String BOTS_ENDPOINT_URI = RUNTIME_ENDPOINT_BASE_URI + "/bots";
+
+    private static final String BOT_ID = "gdax-bot";
+    private static final String UNKNOWN_BOT_ID = "unknown-bot";
+    private static final String DISPLAY_NAME = "GDAX Bot";
+    private static final String EXCHANGE = "gdax";
+    private static final String MARKET = "btc_gbp";
+
+    @MockBean
+    private TradingEngineHost tradingEngineHost;
+
+    // Need this even though not used in the test directly because Spring loads it on startup...
+    @MockBean
+    private TradingEngine tradingEngine;
+
+    // Need this even though not used in the test directly because Spring loads it on startup...
+    @MockBean
+    private EmailAlerter emailAlerter;
+
+    @Before
+    public void setupBeforeEachTest() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(ctx).addFilter(springSecurityFilterChain).build();
+    }
+
+    @Test
+    public void testGetBots() throws Exception {
+
+        given(tradingEngineHost.getBotStatuses()).willReturn(
+                Collections.singletonList(new BotStatus(BOT_ID, DISPLAY_NAME, "running")));
+
+        mockMvc.perform(get(BOTS_ENDPOINT_URI)
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.[0].botId").value(BOT_ID))
+                .andExpect(jsonPath("$.[0].displayName").value(DISPLAY_NAME))
+                .andExpect(jsonPath("$.[0].status").value("running"));
+
+        verify(tradingEngineHost, times(1)).getBotStatuses();
+    }
+
+    @Test
+    public void testGetBotWhenNotRecognized() throws Exception {
+
+        given(tradingEngineHost.getBotStatus(UNKNOWN_BOT_ID)).willReturn(null);
+
+        mockMvc.perform(get(BOTS_ENDPOINT_URI + "/" + UNKNOWN_BOT_ID)
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD)))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testStopBot() throws Exception {
+
+        given(tradingEngineHost.stopBot(BOT_ID)).willReturn(new BotStatus(BOT_ID, DISPLAY_NAME, "stopped"));
+
+        mockMvc.perform(post(BOTS_ENDPOINT_URI + "/" + BOT_ID + "/stop")
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.botId").value(BOT_ID))
+                .andExpect(jsonPath("$.status").value("stopped"));
+
+        verify(tradingEngineHost, times(1)).stopBot(BOT_ID);
+    }
+
+    @Test
+    public void testStartBotWhenAlreadyRunning() throws Exception {
+
+        given(tradingEngineHost.startBot(BOT_ID)).willThrow(new IllegalStateException("already running"));
+
+        mockMvc.perform(post(BOTS_ENDPOINT_URI + "/" + BOT_ID + "/start")
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD)))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    public void testGetBotPositions() throws Exception {
+
+        final MarketPosition marketPosition = new MarketPosition(EXCHANGE, MARKET);
+        marketPosition.setQuantity(new BigDecimal("1.5"));
+        given(tradingEngineHost.getPositions(BOT_ID)).willReturn(Collections.singletonList(marketPosition));
+
+        mockMvc.perform(get(BOTS_ENDPOINT_URI + "/" + BOT_ID + "/positions")
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.[0].exchange").value(EXCHANGE))
+                .andExpect(jsonPath("$.[0].market").value(MARKET))
+                .andExpect(jsonPath("$.[0].quantity").value(1.5));
+
+        verify(tradingEngineHost, times(1)).getPositions(BOT_ID);
+    }
+
+    @Test
+    public void testGetBotPositionsWhenBotNotRecognized() throws Exception {
+
+        given(tradingEngineHost.getPositions(UNKNOWN_BOT_ID)).willReturn(null);
+
+        mockMvc.perform(get(BOTS_ENDPOINT_URI + "/" + UNKNOWN_BOT_ID + "/positions")
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD)))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testGetBotJournalEvents() throws Exception {
+
+        final TradeJournal tradeJournal = mock(TradeJournal.class);
+        given(tradingEngineHost.getTradeJournal(BOT_ID)).willReturn(tradeJournal);
+        given(tradeJournal.query(EXCHANGE, MARKET, null, null, null, 0L, 100)).willReturn(new TradeJournalPage(
+                Collections.singletonList(new TradeJournalEvent(1L, 1000L, "CREATE", EXCHANGE, MARKET, "order-1",
+                        "BUY", new BigDecimal("6000"), new BigDecimal("1.5"))), null));
+
+        mockMvc.perform(get(BOTS_ENDPOINT_URI + "/" + BOT_ID + "/journal/events")
+                .param("exchange", EXCHANGE)
+                .param("market", MARKET)
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.events[0].eventType").value("CREATE"))
+                .andExpect(jsonPath("$.events[0].orderId").value("order-1"));
+    }
+
+    @Test
+    public void testGetBotJournalEventsWhenBotNotRecognized() throws Exception {
+
+        given(tradingEngineHost.getTradeJournal(UNKNOWN_BOT_ID)).willReturn(null);
+
+        mockMvc.perform(get(BOTS_ENDPOINT_URI + "/" + UNKNOWN_BOT_ID + "/journal/events")
+                .param("exchange", EXCHANGE)
+                .param("market", MARKET)
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD)))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testGetBotCircuitBreakersWhenBotNotRecognized() throws Exception {
+
+        given(tradingEngineHost.getCircuitBreakerStatuses(UNKNOWN_BOT_ID)).willReturn(null);
+
+        mockMvc.perform(get(BOTS_ENDPOINT_URI + "/" + UNKNOWN_BOT_ID + "/circuit-breakers")
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD)))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testGetBotsWhenUnauthorizedWithBadCredentials() throws Exception {
+
+        mockMvc.perform(get(BOTS_ENDPOINT_URI)
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, INVALID_USER_PASSWORD))
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isUnauthorized());
+    }
+}
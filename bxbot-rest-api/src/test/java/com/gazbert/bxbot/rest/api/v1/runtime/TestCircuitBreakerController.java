@@ -0,0 +1,121 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.rest.api.v1.runtime;
+
+import com.gazbert.bxbot.core.breaker.CircuitBreakerRegistry;
+import com.gazbert.bxbot.core.engine.TradingEngine;
+import com.gazbert.bxbot.core.mail.EmailAlerter;
+import com.gazbert.bxbot.domain.breaker.CircuitBreakerStatus;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.Collections;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Tests the Circuit Breaker controller behaviour.
+ *
+ * @author gazbert
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@WebAppConfiguration
+public class TestCircuitBreakerController extends AbstractRuntimeControllerTest {
+
+    private static final String CIRCUIT_BREAKERS_ENDPOINT_URI = RUNTIME_ENDPOINT_BASE_URI + "/circuit-breakers";
+
+    private static final String EXCHANGE = "kraken";
+    private static final String ENDPOINT = "getMarketOrders";
+    private static final String STATE = "OPEN";
+    private static final double FAILURE_RATE = 60.0;
+    private static final long NEXT_PROBE_TIME = 1508420000000L;
+
+    @MockBean
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+
+    // Need this even though not used in the test directly because Spring loads it on startup...
+    @MockBean
+    private TradingEngine tradingEngine;
+
+    // Need this even though not used in the test directly because Spring loads it on startup...
+    @MockBean
+    private EmailAlerter emailAlerter;
+
+    @Before
+    public void setupBeforeEachTest() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(ctx).addFilter(springSecurityFilterChain).build();
+    }
+
+    @Test
+    public void testGetCircuitBreakers() throws Exception {
+
+        given(circuitBreakerRegistry.getCircuitBreakerStatuses()).willReturn(
+                Collections.singletonList(someCircuitBreakerStatus()));
+
+        mockMvc.perform(get(CIRCUIT_BREAKERS_ENDPOINT_URI)
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.[0].exchange").value(EXCHANGE))
+                .andExpect(jsonPath("$.[0].endpoint").value(ENDPOINT))
+                .andExpect(jsonPath("$.[0].state").value(STATE))
+                .andExpect(jsonPath("$.[0].failureRate").value(FAILURE_RATE))
+                .andExpect(jsonPath("$.[0].nextProbeTime").value(NEXT_PROBE_TIME));
+
+        verify(circuitBreakerRegistry, times(1)).getCircuitBreakerStatuses();
+    }
+
+    @Test
+    public void testGetCircuitBreakersWhenUnauthorizedWithBadCredentials() throws Exception {
+
+        mockMvc.perform(get(CIRCUIT_BREAKERS_ENDPOINT_URI)
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, INVALID_USER_PASSWORD))
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isUnauthorized());
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Private utils
+    // ------------------------------------------------------------------------------------------------
+
+    private static CircuitBreakerStatus someCircuitBreakerStatus() {
+        final CircuitBreakerStatus circuitBreakerStatus = new CircuitBreakerStatus(EXCHANGE, ENDPOINT, STATE);
+        circuitBreakerStatus.setFailureRate(FAILURE_RATE);
+        circuitBreakerStatus.setNextProbeTime(NEXT_PROBE_TIME);
+        return circuitBreakerStatus;
+    }
+}
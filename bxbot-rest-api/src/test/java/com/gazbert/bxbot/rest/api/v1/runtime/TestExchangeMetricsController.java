@@ -0,0 +1,136 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.rest.api.v1.runtime;
+
+import com.gazbert.bxbot.core.engine.TradingEngine;
+import com.gazbert.bxbot.core.mail.EmailAlerter;
+import com.gazbert.bxbot.core.metrics.ExchangeMetricsRegistry;
+import com.gazbert.bxbot.domain.metrics.ExchangeCallMetrics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.Collections;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Tests the Exchange Metrics controller behaviour.
+ *
+ * @author gazbert
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@WebAppConfiguration
+public class TestExchangeMetricsController extends AbstractRuntimeControllerTest {
+
+    private static final String METRICS_ENDPOINT_URI = RUNTIME_ENDPOINT_BASE_URI + "/metrics/exchange";
+    private static final String PROMETHEUS_ENDPOINT_URI = METRICS_ENDPOINT_URI + "/prometheus";
+
+    private static final String EXCHANGE = "bitstamp";
+    private static final String ENDPOINT = "getMarketOrders";
+    private static final String MARKET = "btcusd";
+    private static final long CALL_COUNT = 42;
+    private static final String PROMETHEUS_TEXT =
+            "bxbot_exchange_call_duration_seconds_count{exchange=\"bitstamp\",endpoint=\"getMarketOrders\",market=\"btcusd\"} 42\n";
+
+    @MockBean
+    private ExchangeMetricsRegistry exchangeMetricsRegistry;
+
+    // Need this even though not used in the test directly because Spring loads it on startup...
+    @MockBean
+    private TradingEngine tradingEngine;
+
+    // Need this even though not used in the test directly because Spring loads it on startup...
+    @MockBean
+    private EmailAlerter emailAlerter;
+
+    @Before
+    public void setupBeforeEachTest() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(ctx).addFilter(springSecurityFilterChain).build();
+    }
+
+    @Test
+    public void testGetExchangeMetrics() throws Exception {
+
+        given(exchangeMetricsRegistry.getCallMetrics()).willReturn(
+                Collections.singletonList(someExchangeCallMetrics()));
+
+        mockMvc.perform(get(METRICS_ENDPOINT_URI)
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.[0].exchange").value(EXCHANGE))
+                .andExpect(jsonPath("$.[0].endpoint").value(ENDPOINT))
+                .andExpect(jsonPath("$.[0].market").value(MARKET))
+                .andExpect(jsonPath("$.[0].callCount").value(CALL_COUNT));
+
+        verify(exchangeMetricsRegistry, times(1)).getCallMetrics();
+    }
+
+    @Test
+    public void testGetExchangeMetricsForPrometheus() throws Exception {
+
+        given(exchangeMetricsRegistry.toPrometheusText()).willReturn(PROMETHEUS_TEXT);
+
+        mockMvc.perform(get(PROMETHEUS_ENDPOINT_URI)
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.TEXT_PLAIN))
+                .andExpect(content().string(PROMETHEUS_TEXT));
+
+        verify(exchangeMetricsRegistry, times(1)).toPrometheusText();
+    }
+
+    @Test
+    public void testGetExchangeMetricsWhenUnauthorizedWithBadCredentials() throws Exception {
+
+        mockMvc.perform(get(METRICS_ENDPOINT_URI)
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, INVALID_USER_PASSWORD))
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isUnauthorized());
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Private utils
+    // ------------------------------------------------------------------------------------------------
+
+    private static ExchangeCallMetrics someExchangeCallMetrics() {
+        final ExchangeCallMetrics callMetrics = new ExchangeCallMetrics(EXCHANGE, ENDPOINT, MARKET);
+        callMetrics.setCallCount(CALL_COUNT);
+        return callMetrics;
+    }
+}
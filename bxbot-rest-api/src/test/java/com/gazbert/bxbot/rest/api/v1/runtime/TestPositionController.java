@@ -0,0 +1,133 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.rest.api.v1.runtime;
+
+import com.gazbert.bxbot.core.accounting.PositionLedger;
+import com.gazbert.bxbot.core.engine.TradingEngine;
+import com.gazbert.bxbot.core.mail.EmailAlerter;
+import com.gazbert.bxbot.domain.accounting.MarketPosition;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Tests the Position controller behaviour.
+ *
+ * @author gazbert
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@WebAppConfiguration
+public class TestPositionController extends AbstractRuntimeControllerTest {
+
+    private static final String POSITIONS_ENDPOINT_URI = RUNTIME_ENDPOINT_BASE_URI + "/positions";
+
+    private static final String EXCHANGE = "bitstamp";
+    private static final String MARKET = "btcusd";
+    private static final BigDecimal QUANTITY = new BigDecimal("1.5");
+    private static final BigDecimal AVERAGE_COST = new BigDecimal("6000");
+    private static final BigDecimal MARK_PRICE = new BigDecimal("6100");
+    private static final BigDecimal UNREALISED_PNL = new BigDecimal("150");
+
+    @MockBean
+    private PositionLedger positionLedger;
+
+    // Need this even though not used in the test directly because Spring loads it on startup...
+    @MockBean
+    private TradingEngine tradingEngine;
+
+    // Need this even though not used in the test directly because Spring loads it on startup...
+    @MockBean
+    private EmailAlerter emailAlerter;
+
+    @Before
+    public void setupBeforeEachTest() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(ctx).addFilter(springSecurityFilterChain).build();
+    }
+
+    @Test
+    public void testGetPositions() throws Exception {
+
+        given(positionLedger.getPositions()).willReturn(Collections.singletonList(someMarketPosition()));
+
+        mockMvc.perform(get(POSITIONS_ENDPOINT_URI)
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.[0].exchange").value(EXCHANGE))
+                .andExpect(jsonPath("$.[0].market").value(MARKET))
+                .andExpect(jsonPath("$.[0].quantity").value(1.5))
+                .andExpect(jsonPath("$.[0].averageCost").value(6000))
+                .andExpect(jsonPath("$.[0].markPrice").value(6100))
+                .andExpect(jsonPath("$.[0].unrealisedPnl").value(150))
+                .andExpect(jsonPath("$.[0].inferredFillCount").value(1))
+                .andExpect(jsonPath("$.[0].confirmed").value(false));
+
+        verify(positionLedger, times(1)).getPositions();
+    }
+
+    @Test
+    public void testGetPositionsWhenUnauthorizedWithBadCredentials() throws Exception {
+
+        mockMvc.perform(get(POSITIONS_ENDPOINT_URI)
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, INVALID_USER_PASSWORD))
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isUnauthorized());
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Private utils
+    // ------------------------------------------------------------------------------------------------
+
+    private static MarketPosition someMarketPosition() {
+        final MarketPosition marketPosition = new MarketPosition(EXCHANGE, MARKET);
+        marketPosition.setQuantity(QUANTITY);
+        marketPosition.setAverageCost(AVERAGE_COST);
+        marketPosition.setRealisedPnl(BigDecimal.ZERO);
+        marketPosition.setFees(BigDecimal.ZERO);
+        marketPosition.setMarkPrice(MARK_PRICE);
+        marketPosition.setUnrealisedPnl(UNREALISED_PNL);
+        marketPosition.setNetPnl(UNREALISED_PNL);
+        marketPosition.setFillCount(1);
+        marketPosition.setInferredFillCount(1);
+        marketPosition.setConfirmed(false);
+        return marketPosition;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.rest.api.v1.runtime;
+
+import com.gazbert.bxbot.core.engine.TradingEngine;
+import com.gazbert.bxbot.core.mail.EmailAlerter;
+import com.gazbert.bxbot.core.startup.StartupProfiler;
+import com.gazbert.bxbot.domain.startup.StartupPhase;
+import com.gazbert.bxbot.domain.startup.StartupReport;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.Arrays;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Tests the Startup controller behaviour.
+ *
+ * @author gazbert
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@WebAppConfiguration
+public class TestStartupController extends AbstractRuntimeControllerTest {
+
+    private static final String STARTUP_ENDPOINT_URI = RUNTIME_ENDPOINT_BASE_URI + "/startup";
+
+    private static final long JVM_START_TIME = 1508600000000L;
+    private static final long TIME_TO_TRADING = 4200;
+
+    @MockBean
+    private StartupProfiler startupProfiler;
+
+    // Need this even though not used in the test directly because Spring loads it on startup...
+    @MockBean
+    private TradingEngine tradingEngine;
+
+    // Need this even though not used in the test directly because Spring loads it on startup...
+    @MockBean
+    private EmailAlerter emailAlerter;
+
+    @Before
+    public void setupBeforeEachTest() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(ctx).addFilter(springSecurityFilterChain).build();
+    }
+
+    @Test
+    public void testGetStartupReport() throws Exception {
+
+        given(startupProfiler.getStartupReport()).willReturn(someStartupReport());
+
+        mockMvc.perform(get(STARTUP_ENDPOINT_URI)
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.jvmStartTime").value(JVM_START_TIME))
+                .andExpect(jsonPath("$.timeToTrading").value(TIME_TO_TRADING))
+                .andExpect(jsonPath("$.phases[0].name").value(StartupProfiler.CONTEXT_PHASE))
+                .andExpect(jsonPath("$.phases[1].name").value("init-strategies"))
+                .andExpect(jsonPath("$.phases[1].start").value(3100))
+                .andExpect(jsonPath("$.phases[1].duration").value(900));
+
+        verify(startupProfiler, times(1)).getStartupReport();
+    }
+
+    @Test
+    public void testGetStartupReportWhenUnauthorizedWithBadCredentials() throws Exception {
+
+        mockMvc.perform(get(STARTUP_ENDPOINT_URI)
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, INVALID_USER_PASSWORD))
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isUnauthorized());
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Private utils
+    // ------------------------------------------------------------------------------------------------
+
+    private static StartupReport someStartupReport() {
+        return new StartupReport(JVM_START_TIME, TIME_TO_TRADING, Arrays.asList(
+                new StartupPhase(StartupProfiler.CONTEXT_PHASE, 0, 3000),
+                new StartupPhase("init-strategies", 3100, 900)));
+    }
+}
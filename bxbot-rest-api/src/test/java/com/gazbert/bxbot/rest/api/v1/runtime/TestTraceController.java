@@ -0,0 +1,163 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.rest.api.v1.runtime;
+
+import com.gazbert.bxbot.core.engine.TradingEngine;
+import com.gazbert.bxbot.core.mail.EmailAlerter;
+import com.gazbert.bxbot.core.trace.TraceRecorder;
+import com.gazbert.bxbot.domain.trace.CycleTimeline;
+import com.gazbert.bxbot.domain.trace.TimelineSpan;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.Collections;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Tests the Trace controller behaviour.
+ *
+ * @author gazbert
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@WebAppConfiguration
+public class TestTraceController extends AbstractRuntimeControllerTest {
+
+    private static final String TIMELINES_ENDPOINT_URI = RUNTIME_ENDPOINT_BASE_URI + "/trace/timelines";
+
+    private static final long TIMELINE_ID = 42;
+    private static final long UNKNOWN_TIMELINE_ID = 7;
+    private static final long START_TIME = 1508600000000L;
+    private static final long DURATION = 1250;
+    private static final String NETWORK_IO_DETAIL = "GET /api/order_book/";
+
+    @MockBean
+    private TraceRecorder traceRecorder;
+
+    // Need this even though not used in the test directly because Spring loads it on startup...
+    @MockBean
+    private TradingEngine tradingEngine;
+
+    // Need this even though not used in the test directly because Spring loads it on startup...
+    @MockBean
+    private EmailAlerter emailAlerter;
+
+    @Before
+    public void setupBeforeEachTest() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(ctx).addFilter(springSecurityFilterChain).build();
+    }
+
+    @Test
+    public void testGetTimelines() throws Exception {
+
+        given(traceRecorder.getTimelines(TraceRecorder.TRADE_CYCLE, 5)).willReturn(
+                Collections.singletonList(someCycleTimeline()));
+
+        mockMvc.perform(get(TIMELINES_ENDPOINT_URI)
+                .param("name", TraceRecorder.TRADE_CYCLE)
+                .param("limit", "5")
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.[0].id").value(TIMELINE_ID))
+                .andExpect(jsonPath("$.[0].name").value(TraceRecorder.TRADE_CYCLE))
+                .andExpect(jsonPath("$.[0].duration").value(DURATION))
+                .andExpect(jsonPath("$.[0].spans[0].name").value("network-io"))
+                .andExpect(jsonPath("$.[0].spans[0].detail").value(NETWORK_IO_DETAIL));
+
+        verify(traceRecorder, times(1)).getTimelines(TraceRecorder.TRADE_CYCLE, 5);
+    }
+
+    @Test
+    public void testGetTimelinesUsesDefaultLimit() throws Exception {
+
+        given(traceRecorder.getTimelines(null, 20)).willReturn(Collections.emptyList());
+
+        mockMvc.perform(get(TIMELINES_ENDPOINT_URI)
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$").isEmpty());
+
+        verify(traceRecorder, times(1)).getTimelines(null, 20);
+    }
+
+    @Test
+    public void testGetTimeline() throws Exception {
+
+        given(traceRecorder.getTimeline(TIMELINE_ID)).willReturn(someCycleTimeline());
+
+        mockMvc.perform(get(TIMELINES_ENDPOINT_URI + "/" + TIMELINE_ID)
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(TIMELINE_ID))
+                .andExpect(jsonPath("$.startTime").value(START_TIME))
+                .andExpect(jsonPath("$.spans[0].thread").value("bxbot-lane-bitstamp"));
+
+        verify(traceRecorder, times(1)).getTimeline(TIMELINE_ID);
+    }
+
+    @Test
+    public void testGetTimelineWhenNotFound() throws Exception {
+
+        given(traceRecorder.getTimeline(UNKNOWN_TIMELINE_ID)).willReturn(null);
+
+        mockMvc.perform(get(TIMELINES_ENDPOINT_URI + "/" + UNKNOWN_TIMELINE_ID)
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD)))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testGetTimelinesWhenUnauthorizedWithBadCredentials() throws Exception {
+
+        mockMvc.perform(get(TIMELINES_ENDPOINT_URI)
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, INVALID_USER_PASSWORD))
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isUnauthorized());
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Private utils
+    // ------------------------------------------------------------------------------------------------
+
+    private static CycleTimeline someCycleTimeline() {
+        final CycleTimeline timeline = new CycleTimeline(TIMELINE_ID, TraceRecorder.TRADE_CYCLE, START_TIME, DURATION);
+        timeline.getSpans().add(new TimelineSpan("network-io", NETWORK_IO_DETAIL, "bxbot-lane-bitstamp", 2, 20, 1100,
+                null));
+        return timeline;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.rest.api.v1.runtime;
+
+import com.gazbert.bxbot.core.engine.TradingEngine;
+import com.gazbert.bxbot.core.journal.TradeJournal;
+import com.gazbert.bxbot.core.mail.EmailAlerter;
+import com.gazbert.bxbot.domain.journal.TradeJournalEvent;
+import com.gazbert.bxbot.domain.journal.TradeJournalPage;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Tests the Trade Journal controller behaviour.
+ *
+ * @author gazbert
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@WebAppConfiguration
+public class TestTradeJournalController extends AbstractRuntimeControllerTest {
+
+    private static final String JOURNAL_ENDPOINT_URI = RUNTIME_ENDPOINT_BASE_URI + "/journal/events";
+
+    private static final String EXCHANGE_ID = "bitstamp";
+    private static final String MARKET_ID = "btc_usd";
+    private static final String ORDER_ID = "8675309";
+    private static final long FROM_TIME = 1508600000000L;
+    private static final long TO_TIME = 1508700000000L;
+    private static final long CURSOR = 12;
+    private static final long NEXT_CURSOR = 13;
+
+    @MockBean
+    private TradeJournal tradeJournal;
+
+    // Need this even though not used in the test directly because Spring loads it on startup...
+    @MockBean
+    private TradingEngine tradingEngine;
+
+    // Need this even though not used in the test directly because Spring loads it on startup...
+    @MockBean
+    private EmailAlerter emailAlerter;
+
+    @Before
+    public void setupBeforeEachTest() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(ctx).addFilter(springSecurityFilterChain).build();
+    }
+
+    @Test
+    public void testGetEvents() throws Exception {
+
+        final TradeJournalEvent fill = new TradeJournalEvent(CURSOR, FROM_TIME, TradeJournal.EventType.FILL.name(),
+                EXCHANGE_ID, MARKET_ID, ORDER_ID, "BUY", new BigDecimal("6100.5"), new BigDecimal("0.25"));
+        given(tradeJournal.query(EXCHANGE_ID, MARKET_ID, ORDER_ID, FROM_TIME, TO_TIME, CURSOR, 1)).willReturn(
+                new TradeJournalPage(Collections.singletonList(fill), NEXT_CURSOR));
+
+        mockMvc.perform(get(JOURNAL_ENDPOINT_URI)
+                .param("exchange", EXCHANGE_ID)
+                .param("market", MARKET_ID)
+                .param("orderId", ORDER_ID)
+                .param("from", String.valueOf(FROM_TIME))
+                .param("to", String.valueOf(TO_TIME))
+                .param("cursor", String.valueOf(CURSOR))
+                .param("limit", "1")
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.nextCursor").value(NEXT_CURSOR))
+                .andExpect(jsonPath("$.events[0].sequence").value(CURSOR))
+                .andExpect(jsonPath("$.events[0].eventType").value("FILL"))
+                .andExpect(jsonPath("$.events[0].orderId").value(ORDER_ID))
+                .andExpect(jsonPath("$.events[0].quantity").value(0.25));
+
+        verify(tradeJournal, times(1)).query(EXCHANGE_ID, MARKET_ID, ORDER_ID, FROM_TIME, TO_TIME, CURSOR, 1);
+    }
+
+    @Test
+    public void testGetEventsUsesDefaultCursorAndLimit() throws Exception {
+
+        given(tradeJournal.query(EXCHANGE_ID, MARKET_ID, null, null, null, 0, 100)).willReturn(
+                new TradeJournalPage(new ArrayList<>(), null));
+
+        mockMvc.perform(get(JOURNAL_ENDPOINT_URI)
+                .param("exchange", EXCHANGE_ID)
+                .param("market", MARKET_ID)
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.events").isEmpty());
+
+        verify(tradeJournal, times(1)).query(EXCHANGE_ID, MARKET_ID, null, null, null, 0, 100);
+    }
+
+    @Test
+    public void testGetEventsWhenLimitOutOfRange() throws Exception {
+
+        given(tradeJournal.query(EXCHANGE_ID, MARKET_ID, null, null, null, 0, 5000)).willThrow(
+                new IllegalArgumentException("Trade journal page limit must be between 1 and 1000"));
+
+        mockMvc.perform(get(JOURNAL_ENDPOINT_URI)
+                .param("exchange", EXCHANGE_ID)
+                .param("market", MARKET_ID)
+                .param("limit", "5000")
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, VALID_USER_PASSWORD)))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testGetEventsWhenUnauthorizedWithBadCredentials() throws Exception {
+
+        mockMvc.perform(get(JOURNAL_ENDPOINT_URI)
+                .param("exchange", EXCHANGE_ID)
+                .param("market", MARKET_ID)
+                .header("Authorization", buildAuthorizationHeaderValue(VALID_USER_LOGINID, INVALID_USER_PASSWORD))
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isUnauthorized());
+    }
+}
@@ -43,4 +43,12 @@ public interface MarketConfigService {
     MarketConfig updateMarketConfig(MarketConfig config);
 
     MarketConfig deleteMarketConfig(String id);
+
+    String getMarketConfigVersion();
+
+    String getMarketConfigVersion(String id);
+
+    MarketConfig updateMarketConfig(MarketConfig config, String expectedVersion);
+
+    MarketConfig deleteMarketConfig(String id, String expectedVersion);
 }
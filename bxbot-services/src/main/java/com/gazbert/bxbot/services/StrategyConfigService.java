@@ -44,4 +44,12 @@ public interface StrategyConfigService {
     StrategyConfig createStrategyConfig(StrategyConfig config);
 
     StrategyConfig deleteStrategyConfig(String id);
+
+    String getStrategyConfigVersion();
+
+    String getStrategyConfigVersion(String id);
+
+    StrategyConfig updateStrategyConfig(StrategyConfig config, String expectedVersion);
+
+    StrategyConfig deleteStrategyConfig(String id, String expectedVersion);
 }
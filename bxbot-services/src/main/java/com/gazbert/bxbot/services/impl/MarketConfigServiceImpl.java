@@ -84,4 +84,26 @@ public class MarketConfigServiceImpl implements MarketConfigService {
         LOG.info(() -> "About to delete Market config for id: " + id);
         return marketConfigRepository.delete(id);
     }
+
+    @Override
+    public String getMarketConfigVersion() {
+        return marketConfigRepository.getVersion();
+    }
+
+    @Override
+    public String getMarketConfigVersion(String id) {
+        return marketConfigRepository.getVersion(id);
+    }
+
+    @Override
+    public MarketConfig updateMarketConfig(MarketConfig config, String expectedVersion) {
+        LOG.info(() -> "About to update Market config: " + config + " expected version: " + expectedVersion);
+        return marketConfigRepository.save(config, expectedVersion);
+    }
+
+    @Override
+    public MarketConfig deleteMarketConfig(String id, String expectedVersion) {
+        LOG.info(() -> "About to delete Market config for id: " + id + " expected version: " + expectedVersion);
+        return marketConfigRepository.delete(id, expectedVersion);
+    }
 }
@@ -83,4 +83,26 @@ public class StrategyConfigServiceImpl implements StrategyConfigService {
         LOG.info(() -> "About to delete Strategy config for id: " + id);
         return strategyConfigRepository.delete(id);
     }
+
+    @Override
+    public String getStrategyConfigVersion() {
+        return strategyConfigRepository.getVersion();
+    }
+
+    @Override
+    public String getStrategyConfigVersion(String id) {
+        return strategyConfigRepository.getVersion(id);
+    }
+
+    @Override
+    public StrategyConfig updateStrategyConfig(StrategyConfig config, String expectedVersion) {
+        LOG.info(() -> "About to update Strategy config: " + config + " expected version: " + expectedVersion);
+        return strategyConfigRepository.save(config, expectedVersion);
+    }
+
+    @Override
+    public StrategyConfig deleteStrategyConfig(String id, String expectedVersion) {
+        LOG.info(() -> "About to delete Strategy config for id: " + id + " expected version: " + expectedVersion);
+        return strategyConfigRepository.delete(id, expectedVersion);
+    }
 }
\ No newline at end of file
@@ -23,6 +23,7 @@
 
 package com.gazbert.bxbot.strategies;
 
+import com.gazbert.bxbot.strategy.api.CheckpointableStrategy;
 import com.gazbert.bxbot.strategy.api.StrategyConfig;
 import com.gazbert.bxbot.strategy.api.StrategyException;
 import com.gazbert.bxbot.strategy.api.TradingStrategy;
@@ -34,7 +35,9 @@ import org.apache.logging.log4j.Logger;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.text.DecimalFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * <p>
@@ -115,10 +118,16 @@ import java.util.List;
  *
  * @author gazbert
  */
-public class ExampleScalpingStrategy implements TradingStrategy {
+public class ExampleScalpingStrategy implements TradingStrategy, CheckpointableStrategy {
 
     private static final Logger LOG = LogManager.getLogger();
 
+    // Checkpoint keys for the last order's state
+    private static final String CHECKPOINT_ORDER_ID = "last-order-id";
+    private static final String CHECKPOINT_ORDER_TYPE = "last-order-type";
+    private static final String CHECKPOINT_ORDER_PRICE = "last-order-price";
+    private static final String CHECKPOINT_ORDER_AMOUNT = "last-order-amount";
+
     /**
      * Reference to the main Trading API.
      */
@@ -252,6 +261,56 @@ public class ExampleScalpingStrategy implements TradingStrategy {
         }
     }
 
+    /**
+     * Returns the state of the last order, so the Trading Engine can save it after each trade cycle.
+     *
+     * @return the last order's state, or null if no order has been placed yet.
+     */
+    @Override
+    public Map<String, String> checkpoint() {
+
+        if (lastOrder == null || lastOrder.type == null) {
+            return null;
+        }
+        final Map<String, String> state = new LinkedHashMap<>();
+        state.put(CHECKPOINT_ORDER_ID, lastOrder.id);
+        state.put(CHECKPOINT_ORDER_TYPE, lastOrder.type.name());
+        state.put(CHECKPOINT_ORDER_PRICE, lastOrder.price.toPlainString());
+        state.put(CHECKPOINT_ORDER_AMOUNT, lastOrder.amount.toPlainString());
+        return state;
+    }
+
+    /**
+     * Restores the state of the last order the strategy placed before the bot was restarted. The next trade cycle
+     * then carries on from that order - checking if it has filled - instead of placing a new BUY order.
+     *
+     * @param state the last order's state, as saved by {@link #checkpoint()}.
+     * @throws StrategyException if the state is not valid.
+     */
+    @Override
+    public void restore(Map<String, String> state) throws StrategyException {
+
+        final String type = state.get(CHECKPOINT_ORDER_TYPE);
+        final String price = state.get(CHECKPOINT_ORDER_PRICE);
+        final String amount = state.get(CHECKPOINT_ORDER_AMOUNT);
+        if (type == null || price == null || amount == null) {
+            throw new StrategyException("Incomplete checkpoint for last order: " + state);
+        }
+
+        try {
+            final OrderState restoredOrder = new OrderState();
+            restoredOrder.id = state.get(CHECKPOINT_ORDER_ID);
+            restoredOrder.type = OrderType.valueOf(type);
+            restoredOrder.price = new BigDecimal(price);
+            restoredOrder.amount = new BigDecimal(amount);
+            lastOrder = restoredOrder;
+            LOG.info(() -> market.getName() + " Restored last order from checkpoint: " + lastOrder);
+
+        } catch (IllegalArgumentException e) {
+            throw new StrategyException("Invalid checkpoint for last order: " + state, e);
+        }
+    }
+
     /**
      * Algo for executing when the Trading Strategy is invoked for the first time.
      * We start off with a buy order at current BID price.
@@ -570,7 +629,8 @@ public class ExampleScalpingStrategy implements TradingStrategy {
      * </p>
      * <p>
      * Typically, you would maintain order state in a database or use some other persistent datasource to recover from
-     * restarts and for audit purposes. In this example, we are storing the state in memory to keep it simple.
+     * restarts and for audit purposes. In this example, we keep the state in memory, and the Trading Engine saves a
+     * checkpoint of it after each trade cycle so it can be restored on restart.
      * </p>
      */
     private static class OrderState {
@@ -37,9 +37,13 @@ import org.powermock.reflect.Whitebox;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 /**
  * <p>
@@ -658,4 +662,105 @@ public class TestExampleScalpingStrategy {
 
         PowerMock.verifyAll();
     }
-}
\ No newline at end of file
+
+    /*
+     * Tests the strategy checkpoints its last order once it has placed one.
+     *
+     * - Given the bot has just started
+     * - When the strategy places its initial buy order
+     * - Then the order is in the strategy's checkpoint
+     */
+    @Test
+    public void testStrategyCheckpointsLastOrderAfterSendingInitialBuyOrder() throws Exception {
+
+        // expect to get current bid and ask spot prices
+        final BigDecimal bidSpotPrice = new BigDecimal("1453.014");
+        expect(marketBuyOrders.get(0).getPrice()).andReturn(bidSpotPrice);
+        final BigDecimal askSpotPrice = new BigDecimal("1455.016");
+        expect(marketSellOrders.get(0).getPrice()).andReturn(askSpotPrice);
+
+        // expect to get amount of base currency to buy for given counter currency amount
+        expect(market.getId()).andReturn(MARKET_ID);
+        final BigDecimal lastTradePrice = new BigDecimal("1454.018");
+        expect(tradingApi.getLatestMarketPrice(MARKET_ID)).andReturn(lastTradePrice);
+
+        // expect to send initial buy order to exchange
+        final String orderId = "4239407233";
+        final BigDecimal amountOfUnitsToBuy = new BigDecimal("0.01375499");
+        expect(market.getId()).andReturn(MARKET_ID);
+        expect(market.getCounterCurrency()).andReturn(COUNTER_CURRENCY).atLeastOnce();
+        expect(market.getBaseCurrency()).andReturn(BASE_CURRENCY).atLeastOnce();
+        expect(tradingApi.createOrder(MARKET_ID, OrderType.BUY, amountOfUnitsToBuy, bidSpotPrice)).andReturn(orderId);
+
+        PowerMock.replayAll();
+
+        final ExampleScalpingStrategy strategy = new ExampleScalpingStrategy();
+        strategy.init(tradingApi, market, config);
+        assertNull(strategy.checkpoint()); // nothing to save yet
+        strategy.execute();
+
+        final Map<String, String> checkpoint = strategy.checkpoint();
+        assertEquals(orderId, checkpoint.get("last-order-id"));
+        assertEquals("BUY", checkpoint.get("last-order-type"));
+        assertEquals("1453.014", checkpoint.get("last-order-price"));
+        assertEquals("0.01375499", checkpoint.get("last-order-amount"));
+
+        PowerMock.verifyAll();
+    }
+
+    /*
+     * Tests the strategy carries on from its restored buy order after a restart, instead of placing a new one.
+     *
+     * - Given the bot has restarted and the strategy has been restored with a buy order that has not filled
+     * - When the strategy is invoked
+     * - Then the bot holds until the next trade cycle
+     */
+    @Test
+    public void testStrategyHoldsWhenRestoredBuyOrderIsNotFilled() throws Exception {
+
+        // expect to get current bid and ask spot prices
+        final BigDecimal bidSpotPrice = new BigDecimal("1453.014");
+        expect(marketBuyOrders.get(0).getPrice()).andReturn(bidSpotPrice);
+        final BigDecimal askSpotPrice = new BigDecimal("1455.016");
+        expect(marketSellOrders.get(0).getPrice()).andReturn(askSpotPrice);
+
+        // expect to check if the restored buy order has filled
+        expect(market.getId()).andReturn(MARKET_ID);
+        final OpenOrder unfilledOrder = PowerMock.createMock(OpenOrder.class);
+        final List<OpenOrder> openOrders = new ArrayList<>();
+        openOrders.add(unfilledOrder); // still have open order
+        expect(tradingApi.getYourOpenOrders(MARKET_ID)).andReturn(openOrders);
+
+        // expect strategy to find existing open order and hold current position
+        expect(openOrders.get(0).getId()).andReturn("45345346");
+
+        PowerMock.replayAll();
+
+        final Map<String, String> checkpoint = new HashMap<>();
+        checkpoint.put("last-order-id", "45345346");
+        checkpoint.put("last-order-type", "BUY");
+        checkpoint.put("last-order-price", "1454.018");
+        checkpoint.put("last-order-amount", "35");
+
+        // run test
+        final ExampleScalpingStrategy strategy = new ExampleScalpingStrategy();
+        strategy.init(tradingApi, market, config);
+        strategy.restore(checkpoint);
+        strategy.execute();
+
+        PowerMock.verifyAll();
+    }
+
+    /*
+     * Tests the strategy refuses to restore from a checkpoint that is missing the last order's details.
+     */
+    @Test(expected = StrategyException.class)
+    public void testStrategyRejectsIncompleteCheckpoint() throws Exception {
+
+        final Map<String, String> checkpoint = new HashMap<>();
+        checkpoint.put("last-order-id", "45345346");
+
+        final ExampleScalpingStrategy strategy = new ExampleScalpingStrategy();
+        strategy.restore(checkpoint);
+    }
+}
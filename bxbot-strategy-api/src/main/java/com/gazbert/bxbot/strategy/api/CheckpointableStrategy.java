@@ -0,0 +1,65 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.strategy.api;
+
+import java.util.Map;
+
+/**
+ * <p>
+ * Trading Strategies that want their state to survive a restart of the bot can implement this interface, in addition
+ * to {@link TradingStrategy}.
+ * </p>
+ * <p>
+ * After each call to {@link TradingStrategy#execute()}, the Trading Engine calls {@link #checkpoint()} and saves the
+ * snapshot in the background. When the bot next starts, the Trading Engine calls {@link #restore(Map)} with the last
+ * snapshot saved, once, after it calls
+ * {@link TradingStrategy#init(com.gazbert.bxbot.trading.api.TradingApi, com.gazbert.bxbot.trading.api.Market, StrategyConfig)}
+ * and before the first call to execute(). This lets a strategy pick up where it left off, e.g. keep track of an order
+ * it placed before the restart, rather than starting afresh.
+ * </p>
+ * <p>
+ * Snapshots are kept per exchange, market, and strategy id. Both methods are called on the same thread as execute().
+ * </p>
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+public interface CheckpointableStrategy {
+
+    /**
+     * Returns a snapshot of the strategy's state. It is copied before this method returns control to the Trading
+     * Engine, so the strategy is free to reuse the map.
+     *
+     * @return the state as key/value pairs, or null if there is nothing to save yet.
+     */
+    Map<String, String> checkpoint();
+
+    /**
+     * Called once by the Trading Engine when it starts up, if a snapshot was saved the last time the bot ran.
+     *
+     * @param state the last snapshot saved.
+     * @throws StrategyException if the snapshot cannot be restored. This stops the bot starting up.
+     */
+    void restore(Map<String, String> state) throws StrategyException;
+}
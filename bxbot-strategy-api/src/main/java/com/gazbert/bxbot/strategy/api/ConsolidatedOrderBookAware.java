@@ -0,0 +1,50 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.strategy.api;
+
+import com.gazbert.bxbot.trading.api.ConsolidatedOrderBookProvider;
+
+/**
+ * <p>
+ * Trading Strategies that want the best bid and ask for their currency pair across all the exchanges the bot trades on
+ * can implement this interface, in addition to {@link TradingStrategy}.
+ * </p>
+ * <p>
+ * If the bot is trading on more than 1 exchange, the Trading Engine will call
+ * {@link #setConsolidatedOrderBookProvider(ConsolidatedOrderBookProvider)} once, before it calls
+ * {@link TradingStrategy#init(com.gazbert.bxbot.trading.api.TradingApi, com.gazbert.bxbot.trading.api.Market, StrategyConfig)}.
+ * </p>
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+public interface ConsolidatedOrderBookAware {
+
+    /**
+     * Called once by the Trading Engine when it starts up.
+     *
+     * @param consolidatedOrderBookProvider provides the consolidated order books.
+     */
+    void setConsolidatedOrderBookProvider(ConsolidatedOrderBookProvider consolidatedOrderBookProvider);
+}
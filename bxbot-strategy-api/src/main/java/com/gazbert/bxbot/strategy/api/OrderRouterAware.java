@@ -0,0 +1,55 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.strategy.api;
+
+import com.gazbert.bxbot.trading.api.TradingApi;
+
+/**
+ * <p>
+ * Trading Strategies that want their orders routed across all the exchanges their currency pair is traded on can
+ * implement this interface, in addition to {@link TradingStrategy}.
+ * </p>
+ * <p>
+ * If the bot is trading on more than 1 exchange, the Trading Engine will call {@link #setOrderRouter(TradingApi)} once,
+ * before it calls
+ * {@link TradingStrategy#init(TradingApi, com.gazbert.bxbot.trading.api.Market, StrategyConfig)}.
+ * The order router is a {@link TradingApi}: its
+ * {@link TradingApi#createOrder(String, com.gazbert.bxbot.trading.api.OrderType, java.math.BigDecimal, java.math.BigDecimal)}
+ * picks the venue (or venues) giving the best price after fees, latency and available balance are taken into account.
+ * Use the market id of your strategy's market - the router maps it onto each exchange's own market id.
+ * The Trading API passed to init() still trades only on your market's exchange.
+ * </p>
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+public interface OrderRouterAware {
+
+    /**
+     * Called once by the Trading Engine when it starts up.
+     *
+     * @param orderRouter the order router.
+     */
+    void setOrderRouter(TradingApi orderRouter);
+}
@@ -0,0 +1,50 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.strategy.api;
+
+import com.gazbert.bxbot.trading.api.PositionProvider;
+
+/**
+ * <p>
+ * Trading Strategies that want to know their position and P&amp;L can implement this interface, in addition to
+ * {@link TradingStrategy}.
+ * </p>
+ * <p>
+ * The Trading Engine will call {@link #setPositionProvider(PositionProvider)} once, before it calls
+ * {@link TradingStrategy#init(com.gazbert.bxbot.trading.api.TradingApi, com.gazbert.bxbot.trading.api.Market, StrategyConfig)}.
+ * The provider only knows about the fills on your market's exchange, for orders placed since the bot started.
+ * </p>
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+public interface PositionAware {
+
+    /**
+     * Called once by the Trading Engine when it starts up.
+     *
+     * @param positionProvider provides the positions.
+     */
+    void setPositionProvider(PositionProvider positionProvider);
+}
@@ -0,0 +1,158 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.trading.api;
+
+import com.google.common.base.MoreObjects;
+
+import java.math.BigDecimal;
+
+/**
+ * <p>
+ * Represents a Market Order in a {@link ConsolidatedOrderBook}.
+ * </p>
+ * <p>
+ * It holds the order as sent by the exchange, plus the id of the exchange it came from and the effective price of the
+ * order once the exchange fee has been applied:
+ * </p>
+ * <ul>
+ * <li>For SELL orders (asks), the effective price is what you would pay per unit if you bought it: price * (1 + buy fee).</li>
+ * <li>For BUY orders (bids), the effective price is what you would receive per unit if you sold to it:
+ * price * (1 - sell fee).</li>
+ * </ul>
+ * <p>
+ * Instances are immutable.
+ * </p>
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+public final class ConsolidatedMarketOrder {
+
+    private final String exchangeId;
+    private final String marketId;
+    private final OrderType type;
+    private final BigDecimal price;
+    private final BigDecimal quantity;
+    private final BigDecimal total;
+    private final BigDecimal effectivePrice;
+
+
+    /**
+     * Constructor builds a Consolidated Market Order.
+     *
+     * @param exchangeId     the id of the exchange the order is on.
+     * @param marketId       the id of the market on the exchange.
+     * @param type           Type of order. Value must be {@link OrderType#BUY} or {@link OrderType#SELL}.
+     * @param price          Price of the order as quoted by the exchange.
+     * @param quantity       Quantity of the order.
+     * @param total          Total value of order (price * quantity).
+     * @param effectivePrice Price of the order after the exchange fee has been applied.
+     */
+    public ConsolidatedMarketOrder(String exchangeId, String marketId, OrderType type, BigDecimal price,
+                                   BigDecimal quantity, BigDecimal total, BigDecimal effectivePrice) {
+        this.exchangeId = exchangeId;
+        this.marketId = marketId;
+        this.type = type;
+        this.price = price;
+        this.quantity = quantity;
+        this.total = total;
+        this.effectivePrice = effectivePrice;
+    }
+
+    /**
+     * Returns the id of the exchange the order is on.
+     *
+     * @return the exchange id.
+     */
+    public String getExchangeId() {
+        return exchangeId;
+    }
+
+    /**
+     * Returns the id of the market on the exchange, e.g. 'btcusd'.
+     *
+     * @return the market id.
+     */
+    public String getMarketId() {
+        return marketId;
+    }
+
+    /**
+     * Returns the type of order. Value will be {@link OrderType#BUY} or {@link OrderType#SELL}.
+     *
+     * @return the type of order.
+     */
+    public OrderType getType() {
+        return type;
+    }
+
+    /**
+     * Returns the price of the order as quoted by the exchange.
+     *
+     * @return Price of the order.
+     */
+    public BigDecimal getPrice() {
+        return price;
+    }
+
+    /**
+     * Returns the quantity of the order.
+     *
+     * @return Quantity of the order.
+     */
+    public BigDecimal getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * Returns the total value of order (price * quantity).
+     *
+     * @return Total value of order (price * quantity).
+     */
+    public BigDecimal getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns the price of the order after the exchange fee has been applied.
+     *
+     * @return the effective price of the order.
+     */
+    public BigDecimal getEffectivePrice() {
+        return effectivePrice;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("exchangeId", exchangeId)
+                .add("marketId", marketId)
+                .add("type", type)
+                .add("price", price)
+                .add("quantity", quantity)
+                .add("total", total)
+                .add("effectivePrice", effectivePrice)
+                .toString();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.trading.api;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>
+ * Represents a Market Order Book for a currency pair, consolidated across all the exchanges the bot trades the pair on.
+ * </p>
+ * <p>
+ * Orders are ranked on their fee adjusted {@link ConsolidatedMarketOrder#getEffectivePrice()}:
+ * </p>
+ * <ul>
+ * <li>The SELL orders are ordered effective price ascending - the <em>cheapest</em> ASK across all exchanges is first in list.</li>
+ * <li>The BUY orders are ordered effective price descending - the <em>best</em> BID across all exchanges is first in list.</li>
+ * </ul>
+ * <p>
+ * Instances are immutable.
+ * </p>
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+public final class ConsolidatedOrderBook {
+
+    private final String baseCurrency;
+    private final String counterCurrency;
+    private final List<ConsolidatedMarketOrder> sellOrders;
+    private final List<ConsolidatedMarketOrder> buyOrders;
+    private final long lastUpdated;
+
+
+    /**
+     * Constructor builds a Consolidated Order Book.
+     *
+     * @param baseCurrency    the base currency short code, e.g. BTC.
+     * @param counterCurrency the counter currency short code, e.g. USD.
+     * @param sellOrders      SELL orders across all exchanges, ordered effective price ascending.
+     * @param buyOrders       BUY orders across all exchanges, ordered effective price descending.
+     * @param lastUpdated     the time the book was last updated, in millis since epoch.
+     */
+    public ConsolidatedOrderBook(String baseCurrency, String counterCurrency, List<ConsolidatedMarketOrder> sellOrders,
+                                 List<ConsolidatedMarketOrder> buyOrders, long lastUpdated) {
+        this.baseCurrency = baseCurrency;
+        this.counterCurrency = counterCurrency;
+        this.sellOrders = Collections.unmodifiableList(sellOrders);
+        this.buyOrders = Collections.unmodifiableList(buyOrders);
+        this.lastUpdated = lastUpdated;
+    }
+
+    /**
+     * Returns the base currency short code, e.g. BTC.
+     *
+     * @return the base currency.
+     */
+    public String getBaseCurrency() {
+        return baseCurrency;
+    }
+
+    /**
+     * Returns the counter currency short code, e.g. USD.
+     *
+     * @return the counter currency.
+     */
+    public String getCounterCurrency() {
+        return counterCurrency;
+    }
+
+    /**
+     * Returns the SELL orders across all exchanges, ordered effective price ascending.
+     *
+     * @return the SELL orders.
+     */
+    public List<ConsolidatedMarketOrder> getSellOrders() {
+        return sellOrders;
+    }
+
+    /**
+     * Returns the BUY orders across all exchanges, ordered effective price descending.
+     *
+     * @return the BUY orders.
+     */
+    public List<ConsolidatedMarketOrder> getBuyOrders() {
+        return buyOrders;
+    }
+
+    /**
+     * Returns the best (cheapest fee adjusted) ASK across all exchanges.
+     *
+     * @return the best ASK, or null if there are no SELL orders.
+     */
+    public ConsolidatedMarketOrder getBestAsk() {
+        return sellOrders.isEmpty() ? null : sellOrders.get(0);
+    }
+
+    /**
+     * Returns the best (highest fee adjusted) BID across all exchanges.
+     *
+     * @return the best BID, or null if there are no BUY orders.
+     */
+    public ConsolidatedMarketOrder getBestBid() {
+        return buyOrders.isEmpty() ? null : buyOrders.get(0);
+    }
+
+    /**
+     * Returns the time the book was last updated.
+     *
+     * @return the last update time in millis since epoch.
+     */
+    public long getLastUpdated() {
+        return lastUpdated;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("baseCurrency", baseCurrency)
+                .add("counterCurrency", counterCurrency)
+                .add("sellOrders", sellOrders)
+                .add("buyOrders", buyOrders)
+                .add("lastUpdated", lastUpdated)
+                .toString();
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.trading.api;
+
+/**
+ * <p>
+ * Provides Trading Strategies with a {@link ConsolidatedOrderBook} for a currency pair.
+ * </p>
+ * <p>
+ * The books are kept up to date in the background by the Trading Engine - calling this does not make any network calls
+ * to the exchanges, so it is safe to call as often as you like from within a trade cycle.
+ * </p>
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+public interface ConsolidatedOrderBookProvider {
+
+    /**
+     * Returns the latest Consolidated Order Book for the given currency pair.
+     *
+     * @param baseCurrency    the base currency short code, e.g. BTC.
+     * @param counterCurrency the counter currency short code, e.g. USD.
+     * @return the latest book, or null if the pair is not being tracked or no exchange has returned its book yet.
+     */
+    ConsolidatedOrderBook getConsolidatedOrderBook(String baseCurrency, String counterCurrency);
+}
@@ -0,0 +1,222 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.trading.api;
+
+import com.google.common.base.MoreObjects;
+
+import java.math.BigDecimal;
+
+/**
+ * <p>
+ * A snapshot of the bot's position in a market: what it holds, what that cost, and the profit and loss so far.
+ * </p>
+ * <p>
+ * The quantity is in the base currency; it is negative if the bot has sold more than it has bought. Costs, prices, fees
+ * and P&amp;L are in the counter currency. The average cost is the average price paid for the quantity held. Realised
+ * P&amp;L is from the quantity that has been closed out; unrealised P&amp;L is the quantity held marked to the latest
+ * known price. The figures do not include fees - {@link #getNetPnl()} does.
+ * </p>
+ * <p>
+ * A position is unconfirmed if any of its fills were inferred: the bot can be configured to assume an order that has
+ * gone from the exchange's open orders was filled, but it may have been cancelled or expired instead. The figures of
+ * an unconfirmed position may be wrong - check {@link #isConfirmed()} before relying on them.
+ * </p>
+ * <p>
+ * Instances are immutable.
+ * </p>
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+public final class Position {
+
+    private final String marketId;
+    private final BigDecimal quantity;
+    private final BigDecimal averageCost;
+    private final BigDecimal realisedPnl;
+    private final BigDecimal fees;
+    private final BigDecimal markPrice;
+    private final BigDecimal unrealisedPnl;
+    private final long fillCount;
+    private final long inferredFillCount;
+
+
+    /**
+     * Constructor builds a Position.
+     *
+     * @param marketId      the id of the market.
+     * @param quantity      the quantity held; negative if short.
+     * @param averageCost   the average price paid for the quantity held.
+     * @param realisedPnl   the realised P&amp;L, before fees.
+     * @param fees          the exchange fees paid.
+     * @param markPrice     the latest known price, or null if there is none yet.
+     * @param unrealisedPnl the unrealised P&amp;L at the mark price.
+     * @param fillCount     the number of fills the position is made up from.
+     */
+    public Position(String marketId, BigDecimal quantity, BigDecimal averageCost, BigDecimal realisedPnl,
+                    BigDecimal fees, BigDecimal markPrice, BigDecimal unrealisedPnl, long fillCount) {
+        this(marketId, quantity, averageCost, realisedPnl, fees, markPrice, unrealisedPnl, fillCount, 0);
+    }
+
+    /**
+     * Constructor builds a Position, some of whose fills may have been inferred.
+     *
+     * @param marketId          the id of the market.
+     * @param quantity          the quantity held; negative if short.
+     * @param averageCost       the average price paid for the quantity held.
+     * @param realisedPnl       the realised P&amp;L, before fees.
+     * @param fees              the exchange fees paid.
+     * @param markPrice         the latest known price, or null if there is none yet.
+     * @param unrealisedPnl     the unrealised P&amp;L at the mark price.
+     * @param fillCount         the number of fills the position is made up from, including the inferred ones.
+     * @param inferredFillCount the number of those fills that were inferred rather than seen.
+     */
+    public Position(String marketId, BigDecimal quantity, BigDecimal averageCost, BigDecimal realisedPnl,
+                    BigDecimal fees, BigDecimal markPrice, BigDecimal unrealisedPnl, long fillCount,
+                    long inferredFillCount) {
+        this.marketId = marketId;
+        this.quantity = quantity;
+        this.averageCost = averageCost;
+        this.realisedPnl = realisedPnl;
+        this.fees = fees;
+        this.markPrice = markPrice;
+        this.unrealisedPnl = unrealisedPnl;
+        this.fillCount = fillCount;
+        this.inferredFillCount = inferredFillCount;
+    }
+
+    /**
+     * Returns the id of the market, e.g. 'btcusd'.
+     *
+     * @return the market id.
+     */
+    public String getMarketId() {
+        return marketId;
+    }
+
+    /**
+     * Returns the quantity held. It is negative if the position is short.
+     *
+     * @return the quantity held.
+     */
+    public BigDecimal getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * Returns the average price paid for the quantity held. It is zero if the position is flat.
+     *
+     * @return the average cost.
+     */
+    public BigDecimal getAverageCost() {
+        return averageCost;
+    }
+
+    /**
+     * Returns the P&amp;L from the quantity that has been closed out, before fees.
+     *
+     * @return the realised P&amp;L.
+     */
+    public BigDecimal getRealisedPnl() {
+        return realisedPnl;
+    }
+
+    /**
+     * Returns the exchange fees paid.
+     *
+     * @return the fees paid.
+     */
+    public BigDecimal getFees() {
+        return fees;
+    }
+
+    /**
+     * Returns the latest known price the unrealised P&amp;L is marked to.
+     *
+     * @return the mark price, or null if no price has been seen yet.
+     */
+    public BigDecimal getMarkPrice() {
+        return markPrice;
+    }
+
+    /**
+     * Returns the P&amp;L on the quantity held if it were closed out at the mark price, before fees.
+     *
+     * @return the unrealised P&amp;L.
+     */
+    public BigDecimal getUnrealisedPnl() {
+        return unrealisedPnl;
+    }
+
+    /**
+     * Returns the realised plus unrealised P&amp;L, less fees.
+     *
+     * @return the net P&amp;L.
+     */
+    public BigDecimal getNetPnl() {
+        return realisedPnl.add(unrealisedPnl).subtract(fees);
+    }
+
+    /**
+     * Returns the number of fills the position is made up from.
+     *
+     * @return the fill count.
+     */
+    public long getFillCount() {
+        return fillCount;
+    }
+
+    /**
+     * Returns the number of fills that were inferred from an order going from the open orders, rather than seen.
+     *
+     * @return the inferred fill count.
+     */
+    public long getInferredFillCount() {
+        return inferredFillCount;
+    }
+
+    /**
+     * Returns whether every fill the position is made up from was seen on the exchange.
+     *
+     * @return true if none of the fills were inferred.
+     */
+    public boolean isConfirmed() {
+        return inferredFillCount == 0;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("marketId", marketId)
+                .add("quantity", quantity)
+                .add("averageCost", averageCost)
+                .add("realisedPnl", realisedPnl)
+                .add("fees", fees)
+                .add("markPrice", markPrice)
+                .add("unrealisedPnl", unrealisedPnl)
+                .add("fillCount", fillCount)
+                .add("inferredFillCount", inferredFillCount)
+                .toString();
+    }
+}
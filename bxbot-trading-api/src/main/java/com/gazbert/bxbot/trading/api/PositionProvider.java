@@ -0,0 +1,48 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.trading.api;
+
+/**
+ * <p>
+ * Provides Trading Strategies with their {@link Position} in a market on their exchange.
+ * </p>
+ * <p>
+ * Positions are updated by the Trading Engine as it spots the bot's orders being filled, and marked to the latest price
+ * fetched from the exchange - calling this does not make any network calls, so it is safe to call as often as you like
+ * from within a trade cycle.
+ * </p>
+ *
+ * @author gazbert
+ * @since 1.1
+ */
+public interface PositionProvider {
+
+    /**
+     * Returns the bot's current position in the given market.
+     *
+     * @param marketId the id of the market.
+     * @return the position. It is flat if none of the bot's orders in the market have been filled yet.
+     */
+    Position getPosition(String marketId);
+}
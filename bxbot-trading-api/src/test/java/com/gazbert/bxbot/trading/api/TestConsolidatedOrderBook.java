@@ -0,0 +1,125 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.gazbert.bxbot.trading.api;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests a Consolidated Order Book and its orders behave as expected.
+ *
+ * @author gazbert
+ */
+public class TestConsolidatedOrderBook {
+
+    private static final String BASE_CURRENCY = "BTC";
+    private static final String COUNTER_CURRENCY = "USD";
+    private static final long LAST_UPDATED = 1508412345678L;
+
+    private static final String EXCHANGE_1_ID = "bitstamp";
+    private static final String EXCHANGE_1_MARKET_ID = "btcusd";
+    private static final String EXCHANGE_2_ID = "gdax";
+    private static final String EXCHANGE_2_MARKET_ID = "BTC-USD";
+
+    private static final BigDecimal ORDER_1_PRICE = new BigDecimal("111.11");
+    private static final BigDecimal ORDER_1_EFFECTIVE_PRICE = new BigDecimal("111.38");
+    private static final BigDecimal ORDER_1_QUANTITY = new BigDecimal("0.01614453");
+    private static final BigDecimal ORDER_1_TOTAL = ORDER_1_PRICE.multiply(ORDER_1_QUANTITY);
+
+    private static final BigDecimal ORDER_2_PRICE = new BigDecimal("112.22");
+    private static final BigDecimal ORDER_2_QUANTITY = new BigDecimal("0.02423424");
+    private static final BigDecimal ORDER_2_TOTAL = ORDER_2_PRICE.multiply(ORDER_2_QUANTITY);
+
+    private List<ConsolidatedMarketOrder> sellOrders;
+    private List<ConsolidatedMarketOrder> buyOrders;
+
+
+    @Before
+    public void setupOrdersBeforeEachTest() {
+
+        sellOrders = new ArrayList<>();
+        sellOrders.add(new ConsolidatedMarketOrder(EXCHANGE_1_ID, EXCHANGE_1_MARKET_ID, OrderType.SELL,
+                ORDER_1_PRICE, ORDER_1_QUANTITY, ORDER_1_TOTAL, ORDER_1_EFFECTIVE_PRICE));
+        sellOrders.add(new ConsolidatedMarketOrder(EXCHANGE_2_ID, EXCHANGE_2_MARKET_ID, OrderType.SELL,
+                ORDER_2_PRICE, ORDER_2_QUANTITY, ORDER_2_TOTAL, ORDER_2_PRICE));
+
+        buyOrders = new ArrayList<>();
+        buyOrders.add(new ConsolidatedMarketOrder(EXCHANGE_2_ID, EXCHANGE_2_MARKET_ID, OrderType.BUY,
+                ORDER_2_PRICE, ORDER_2_QUANTITY, ORDER_2_TOTAL, ORDER_2_PRICE));
+    }
+
+    @Test
+    public void testConsolidatedMarketOrderIsInitialisedAsExpected() {
+
+        final ConsolidatedMarketOrder order = sellOrders.get(0);
+        assertEquals(EXCHANGE_1_ID, order.getExchangeId());
+        assertEquals(EXCHANGE_1_MARKET_ID, order.getMarketId());
+        assertEquals(OrderType.SELL, order.getType());
+        assertEquals(ORDER_1_PRICE, order.getPrice());
+        assertEquals(ORDER_1_QUANTITY, order.getQuantity());
+        assertEquals(ORDER_1_TOTAL, order.getTotal());
+        assertEquals(ORDER_1_EFFECTIVE_PRICE, order.getEffectivePrice());
+    }
+
+    @Test
+    public void testConsolidatedOrderBookIsInitialisedAsExpected() {
+
+        final ConsolidatedOrderBook orderBook = new ConsolidatedOrderBook(BASE_CURRENCY, COUNTER_CURRENCY,
+                sellOrders, buyOrders, LAST_UPDATED);
+
+        assertEquals(BASE_CURRENCY, orderBook.getBaseCurrency());
+        assertEquals(COUNTER_CURRENCY, orderBook.getCounterCurrency());
+        assertEquals(LAST_UPDATED, orderBook.getLastUpdated());
+        assertEquals(sellOrders, orderBook.getSellOrders());
+        assertEquals(buyOrders, orderBook.getBuyOrders());
+        assertEquals(sellOrders.get(0), orderBook.getBestAsk());
+        assertEquals(buyOrders.get(0), orderBook.getBestBid());
+    }
+
+    @Test
+    public void testBestAskAndBidAreNullForEmptyBook() {
+
+        final ConsolidatedOrderBook orderBook = new ConsolidatedOrderBook(BASE_CURRENCY, COUNTER_CURRENCY,
+                Collections.emptyList(), Collections.emptyList(), LAST_UPDATED);
+
+        assertNull(orderBook.getBestAsk());
+        assertNull(orderBook.getBestBid());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testOrdersCannotBeModified() {
+
+        final ConsolidatedOrderBook orderBook = new ConsolidatedOrderBook(BASE_CURRENCY, COUNTER_CURRENCY,
+                sellOrders, buyOrders, LAST_UPDATED);
+        orderBook.getSellOrders().clear();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 Gareth Jon Lynch
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.gazbert.bxbot.datastore;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * <p>
+ * Watches the directories holding the XML config files and tells the listener when a file in one of them changes,
+ * i.e. is created, modified or deleted. This is how the {@link ConfigurationManager} finds out that a config file has
+ * been edited outside of the bot, e.g. by hand, so it can drop its cached snapshot.
+ * </p>
+ * <p>
+ * The watcher thread is a daemon, and only started when the first directory is registered.
+ * </p>
+ *
+ * @author gazbert
+ */
+final class ConfigFileWatcher {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    /*
+     * Called with the absolute path of the file that changed. On an event overflow, or if a directory stops being
+     * watchable, it is called with the directory itself.
+     */
+    private final Consumer<Path> changeListener;
+
+    private final Map<Path, WatchKey> watchedDirectories = new ConcurrentHashMap<>();
+    private WatchService watchService;
+
+
+    ConfigFileWatcher(Consumer<Path> changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /*
+     * Starts watching the directory of the given config file. Returns false if the directory cannot be watched - the
+     * caller must then not cache anything it reads from that file.
+     */
+    synchronized boolean watch(Path configFile) {
+
+        final Path directory = configFile.getParent();
+        if (directory == null) {
+            return false;
+        }
+        if (watchedDirectories.containsKey(directory)) {
+            return true;
+        }
+
+        try {
+            if (watchService == null) {
+                watchService = directory.getFileSystem().newWatchService();
+                final Thread watcherThread = new Thread(this::processEvents, "bxbot-config-watcher");
+                watcherThread.setDaemon(true);
+                watcherThread.start();
+            }
+            watchedDirectories.put(directory, directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE));
+            LOG.info(() -> "Watching for config changes in: " + directory);
+            return true;
+
+        } catch (IOException | UnsupportedOperationException e) {
+            LOG.warn("Cannot watch [" + directory + "] for config changes. Config in it will not be cached.", e);
+            return false;
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Watcher thread
+    // ------------------------------------------------------------------------------------------------
+
+    private void processEvents() {
+
+        while (true) {
+            final WatchKey watchKey;
+            try {
+                watchKey = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                LOG.warn("Config watcher thread stopped - config snapshots will no longer be refreshed.");
+                return;
+            }
+
+            final Path directory = (Path) watchKey.watchable();
+            for (final WatchEvent<?> event : watchKey.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    changeListener.accept(directory);
+                } else {
+                    changeListener.accept(directory.resolve((Path) event.context()));
+                }
+            }
+
+            if (!watchKey.reset()) {
+                // directory has gone - forget it and drop everything read from it
+                watchedDirectories.remove(directory, watchKey);
+                changeListener.accept(directory);
+            }
+        }
+    }
+}
@@ -23,6 +23,7 @@
 
 package com.gazbert.bxbot.datastore;
 
+import com.google.common.hash.Hashing;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.xml.sax.SAXException;
@@ -33,50 +34,210 @@ import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 
 /**
+ * <p>
  * The generic configuration manager loads config from a given XML config file.
+ * </p>
+ * <p>
+ * JAXB contexts and compiled XML Schemas are built once and reused. Each config file is read and validated once;
+ * the validated XML is held as an immutable in-memory snapshot that serves all later reads until the file is saved,
+ * or changed outside of the bot - the config directories are watched for changes using a
+ * {@link java.nio.file.WatchService}.
+ * </p>
+ * <p>
+ * The unmarshalled config is never shared: every load gives the caller its own deep copy, unmarshalled from the
+ * snapshot without going back to disk or re-validating it, so callers are free to modify what they get back.
+ * </p>
+ * <p>
+ * Each config file has its own read/write lock, so saving one file does not block reads of the others. Saves are
+ * crash-safe: the config is written to a temp file, synced to disk, and then atomically renamed over the old file.
+ * Every load returns the version of the file it came from; passing it back to
+ * {@link #saveConfig(Class, Object, String, String)} makes the save fail with a {@link StaleConfigException} if the
+ * file was changed in the meantime.
+ * </p>
  *
  * @author gazbert
  */
 public final class ConfigurationManager {
 
     private static final Logger LOG = LogManager.getLogger();
-    private final static Object MUTEX = new Object();
+
+    /*
+     * JAXB contexts keyed by the package of the generated config classes. JAXBContext is thread-safe.
+     */
+    private static final ConcurrentMap<String, JAXBContext> JAXB_CONTEXTS = new ConcurrentHashMap<>();
+
+    /*
+     * Compiled XML Schemas keyed by classpath location. Schema is thread-safe.
+     */
+    private static final ConcurrentMap<String, Schema> SCHEMAS = new ConcurrentHashMap<>();
+
+    /*
+     * Config snapshots keyed by absolute path of the XML config file. A snapshot is only put while holding the file's
+     * read lock, and only removed while holding its write lock.
+     */
+    private static final ConcurrentMap<Path, ConfigSnapshot> SNAPSHOTS = new ConcurrentHashMap<>();
+
+    /*
+     * A read/write lock for each config file, keyed by absolute path.
+     */
+    private static final ConcurrentMap<Path, ReadWriteLock> FILE_LOCKS = new ConcurrentHashMap<>();
+
+    private static final ConfigFileWatcher CONFIG_FILE_WATCHER = new ConfigFileWatcher(ConfigurationManager::evictSnapshots);
 
     private ConfigurationManager() {
     }
 
     /*
-     * Loads and returns the requested configuration.
+     * Loads and returns the requested configuration. The caller gets its own copy and is free to modify it.
      */
     public static <T> T loadConfig(Class<T> configClass, String xmlConfigFile, String xmlSchemaFile) {
 
+        return configClass.cast(copyOf(getSnapshot(configClass, xmlConfigFile, xmlSchemaFile), xmlConfigFile));
+    }
+
+    /*
+     * Loads and returns the requested configuration and the version of the file it was loaded from.
+     * The caller gets its own copy and is free to modify it.
+     */
+    public static <T> VersionedConfig<T> loadVersionedConfig(Class<T> configClass, String xmlConfigFile,
+                                                             String xmlSchemaFile) {
+
+        final ConfigSnapshot snapshot = getSnapshot(configClass, xmlConfigFile, xmlSchemaFile);
+        return new VersionedConfig<>(configClass.cast(copyOf(snapshot, xmlConfigFile)), snapshot.version);
+    }
+
+    /*
+     * Versioned version of {@link #loadRootConfig(Class, String, String)}.
+     */
+    public static VersionedConfig<Object> loadVersionedRootConfig(Class<?> configClass, String xmlConfigFile,
+                                                                  String xmlSchemaFile) {
+        final ConfigSnapshot snapshot = getSnapshot(configClass, xmlConfigFile, xmlSchemaFile);
+        return new VersionedConfig<>(copyOf(snapshot, xmlConfigFile), snapshot.version);
+    }
+
+    /*
+     * Returns the current version of the given config file.
+     */
+    public static String getConfigVersion(Class<?> configClass, String xmlConfigFile, String xmlSchemaFile) {
+        return getSnapshot(configClass, xmlConfigFile, xmlSchemaFile).version;
+    }
+
+    /*
+     * Loads and returns the root element of a config file whose XML Schema declares more than one root element,
+     * e.g. exchange.xml can hold a single <exchange> or an <exchanges> list. The caller checks which type it got back.
+     */
+    public static Object loadRootConfig(Class<?> configClass, String xmlConfigFile, String xmlSchemaFile) {
+        return copyOf(getSnapshot(configClass, xmlConfigFile, xmlSchemaFile), xmlConfigFile);
+    }
+
+    /*
+     * Saves given config to filesystem.
+     */
+    public static <T> void saveConfig(Class<T> configClass, T config, String xmlConfigFile) {
+        saveConfig(configClass, config, xmlConfigFile, null);
+    }
+
+    /*
+     * Saves given config to filesystem if the file is still at the expected version, and returns the new version.
+     * A null expected version saves the config whatever the current version of the file.
+     */
+    public static <T> String saveConfig(Class<T> configClass, T config, String xmlConfigFile, String expectedVersion) {
+
+        LOG.info(() -> "Saving configuration for [" + configClass + "] to: " + xmlConfigFile + " ...");
+
+        final Path configPath = toSnapshotKey(xmlConfigFile);
+        try {
+            final Marshaller marshaller = getJaxbContext(config.getClass().getPackage().getName()).createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+            final ByteArrayOutputStream xml = new ByteArrayOutputStream();
+            marshaller.marshal(config, xml);
+
+            final Lock writeLock = getFileLock(configPath).writeLock();
+            writeLock.lock();
+            try {
+                if (expectedVersion != null) {
+                    final String currentVersion = Files.exists(configPath)
+                            ? versionOf(Files.readAllBytes(configPath)) : null;
+                    if (!expectedVersion.equals(currentVersion)) {
+                        throw new StaleConfigException("Cannot save [" + xmlConfigFile + "] config - expected version "
+                                + expectedVersion + " but file is at version " + currentVersion);
+                    }
+                }
+
+                final byte[] xmlBytes = xml.toByteArray();
+                writeAtomically(configPath, xmlBytes);
+                SNAPSHOTS.remove(configPath);
+
+                final String newVersion = versionOf(xmlBytes);
+                LOG.info(() -> "Saved configuration for [" + configClass + "] at version " + newVersion);
+                return newVersion;
+
+            } finally {
+                writeLock.unlock();
+            }
+
+        } catch (JAXBException e) {
+            final String errorMsg = "Failed to save config to [" + xmlConfigFile + "] file.";
+            LOG.error(errorMsg, e);
+            throw new IllegalArgumentException(errorMsg, e);
+        } catch (IOException e) {
+            final String errorMsg = "Failed to find or read [" + xmlConfigFile + "] config";
+            LOG.error(errorMsg, e);
+            throw new IllegalStateException(errorMsg, e);
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // Snapshot management
+    // ------------------------------------------------------------------------------------------------
+
+    private static ConfigSnapshot getSnapshot(Class<?> configClass, String xmlConfigFile, String xmlSchemaFile) {
+
+        final Path configPath = toSnapshotKey(xmlConfigFile);
+        final String contextPath = configClass.getPackage().getName();
+
+        final ConfigSnapshot cachedSnapshot = SNAPSHOTS.get(configPath);
+        if (cachedSnapshot != null && cachedSnapshot.isFor(contextPath, xmlSchemaFile)) {
+            return cachedSnapshot;
+        }
+
         LOG.info(() -> "Loading configuration for [" + configClass + "] from: " + xmlConfigFile + " ...");
 
+        final Lock readLock = getFileLock(configPath).readLock();
+        readLock.lock();
         try {
-            final JAXBContext jaxbContext = JAXBContext.newInstance(configClass.getPackage().getName());
-            final Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
-
-            // optional schema validation
-            if (xmlSchemaFile != null) {
-                final InputStream xsdStream = ConfigurationManager.class.getClassLoader().getResourceAsStream(xmlSchemaFile);
-                final StreamSource xsdSource = new StreamSource(xsdStream);
-                final SchemaFactory sf = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-                final Schema schema = sf.newSchema(xsdSource);
-                unmarshaller.setSchema(schema);
+            final ConfigSnapshot snapshot = SNAPSHOTS.get(configPath);
+            if (snapshot != null && snapshot.isFor(contextPath, xmlSchemaFile)) {
+                return snapshot; // another thread got there first
             }
 
-            synchronized (MUTEX) {
-                final FileInputStream fileInputStream = new FileInputStream(xmlConfigFile);
-                final JAXBElement<?> requestedConfigRootXmlElement = (JAXBElement<?>) unmarshaller.unmarshal(fileInputStream);
-                final T requestedConfig = (T) requestedConfigRootXmlElement.getValue();
-                fileInputStream.close();
+            // start watching before reading so we cannot miss a change made just after the read
+            final boolean watched = CONFIG_FILE_WATCHER.watch(configPath);
 
-                LOG.info(() -> "Loaded and set configuration for [" + configClass + "] successfully!");
-                return requestedConfig;
+            final byte[] xml = Files.readAllBytes(configPath);
+            unmarshal(contextPath, xml, xmlSchemaFile); // validates it
+            final ConfigSnapshot newSnapshot = new ConfigSnapshot(contextPath, xmlSchemaFile, xml, versionOf(xml));
+            if (watched) {
+                SNAPSHOTS.put(configPath, newSnapshot);
             }
 
+            LOG.info(() -> "Loaded and set configuration for [" + configClass + "] successfully!");
+            return newSnapshot;
+
         } catch (JAXBException | SAXException e) {
             final String errorMsg = "Failed to load [" + xmlConfigFile + "] file and validate it using XML Schema [" + xmlSchemaFile + "]";
             LOG.error(errorMsg, e);
@@ -85,35 +246,188 @@ public final class ConfigurationManager {
             final String errorMsg = "Failed to find or read [" + xmlConfigFile + "] config";
             LOG.error(errorMsg, e);
             throw new IllegalStateException(errorMsg, e);
+        } finally {
+            readLock.unlock();
         }
     }
 
     /*
-     * Saves given config to filesystem.
+     * Gives the caller its own deep copy of the config. The XML was validated when the snapshot was taken.
      */
-    public static <T> void saveConfig(Class<T> configClass, T config, String xmlConfigFile) {
+    private static Object copyOf(ConfigSnapshot snapshot, String xmlConfigFile) {
+        try {
+            return unmarshal(snapshot.contextPath, snapshot.xml, null);
 
-        LOG.info(() -> "Saving configuration for [" + configClass + "] to: " + xmlConfigFile + " ...");
+        } catch (JAXBException | SAXException e) {
+            final String errorMsg = "Failed to copy [" + xmlConfigFile + "] config snapshot";
+            LOG.error(errorMsg, e);
+            throw new IllegalStateException(errorMsg, e);
+        }
+    }
+
+    /*
+     * Drops the snapshot for the given config file, or every snapshot taken from a directory if given a directory.
+     */
+    private static void evictSnapshots(Path changedPath) {
+        for (final Path configPath : SNAPSHOTS.keySet()) {
+            if (configPath.equals(changedPath) || changedPath.equals(configPath.getParent())) {
+                final Lock writeLock = getFileLock(configPath).writeLock();
+                writeLock.lock();
+                try {
+                    if (SNAPSHOTS.remove(configPath) != null) {
+                        LOG.info(() -> "Config snapshot evicted for: " + configPath);
+                    }
+                } finally {
+                    writeLock.unlock();
+                }
+            }
+        }
+    }
+
+    private static Path toSnapshotKey(String xmlConfigFile) {
+        return Paths.get(xmlConfigFile).toAbsolutePath().normalize();
+    }
+
+    private static ReadWriteLock getFileLock(Path configPath) {
+        return FILE_LOCKS.computeIfAbsent(configPath, path -> new ReentrantReadWriteLock());
+    }
+
+    private static String versionOf(byte[] xml) {
+        return Hashing.murmur3_128().hashBytes(xml).toString();
+    }
 
+    // ------------------------------------------------------------------------------------------------
+    // File util methods
+    // ------------------------------------------------------------------------------------------------
+
+    /*
+     * Writes to a temp file in the same directory, syncs it to disk, and then renames it over the config file.
+     * If we crash part way through, the config file is either the old version or the new one - never half written.
+     */
+    private static void writeAtomically(Path configPath, byte[] xml) throws IOException {
+
+        final Path directory = configPath.getParent();
+        final Path tempFile = Files.createTempFile(directory, configPath.getFileName() + ".", ".tmp");
         try {
-            final JAXBContext context = JAXBContext.newInstance(config.getClass());
-            final Marshaller marshaller = context.createMarshaller();
-            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                final ByteBuffer buffer = ByteBuffer.wrap(xml);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            copyPermissions(configPath, tempFile);
 
-            synchronized (MUTEX) {
-                final FileOutputStream fileOutputStream = new FileOutputStream(xmlConfigFile);
-                marshaller.marshal(config, fileOutputStream);
-                fileOutputStream.close();
+            try {
+                Files.move(tempFile, configPath, ATOMIC_MOVE, REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                LOG.warn("Filesystem does not support atomic rename - replacing [" + configPath + "] non-atomically");
+                Files.move(tempFile, configPath, REPLACE_EXISTING);
             }
+            syncDirectory(directory);
 
-        } catch (JAXBException e) {
-            final String errorMsg = "Failed to save config to [" + xmlConfigFile + "] file.";
-            LOG.error(errorMsg, e);
-            throw new IllegalArgumentException(errorMsg, e);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /*
+     * Temp files are created owner-only - give the new file the same permissions as the one it replaces.
+     */
+    private static void copyPermissions(Path configPath, Path tempFile) throws IOException {
+        if (Files.exists(configPath)
+                && configPath.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.setPosixFilePermissions(tempFile, Files.getPosixFilePermissions(configPath));
+        }
+    }
+
+    /*
+     * Makes the rename durable. Not all platforms let you open a directory, e.g. Windows, so failure is not fatal.
+     */
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
         } catch (IOException e) {
-            final String errorMsg = "Failed to find or read [" + xmlConfigFile + "] config";
-            LOG.error(errorMsg, e);
-            throw new IllegalStateException(errorMsg, e);
+            LOG.debug(() -> "Cannot sync directory " + directory + " - " + e.getMessage());
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // JAXB util methods
+    // ------------------------------------------------------------------------------------------------
+
+    private static Object unmarshal(String contextPath, byte[] xml, String xmlSchemaFile)
+            throws JAXBException, SAXException {
+
+        final Unmarshaller unmarshaller = getJaxbContext(contextPath).createUnmarshaller();
+
+        // optional schema validation
+        if (xmlSchemaFile != null) {
+            unmarshaller.setSchema(getSchema(xmlSchemaFile));
+        }
+        return JAXBIntrospector.getValue(unmarshaller.unmarshal(new ByteArrayInputStream(xml)));
+    }
+
+    private static JAXBContext getJaxbContext(String contextPath) throws JAXBException {
+
+        final JAXBContext jaxbContext = JAXB_CONTEXTS.get(contextPath);
+        if (jaxbContext != null) {
+            return jaxbContext;
+        }
+        final JAXBContext newJaxbContext = JAXBContext.newInstance(contextPath);
+        final JAXBContext existingJaxbContext = JAXB_CONTEXTS.putIfAbsent(contextPath, newJaxbContext);
+        return existingJaxbContext != null ? existingJaxbContext : newJaxbContext;
+    }
+
+    private static Schema getSchema(String xmlSchemaFile) throws SAXException {
+
+        final Schema schema = SCHEMAS.get(xmlSchemaFile);
+        if (schema != null) {
+            return schema;
+        }
+
+        final InputStream xsdStream = ConfigurationManager.class.getClassLoader().getResourceAsStream(xmlSchemaFile);
+        final SchemaFactory sf = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+        final Schema newSchema;
+        try {
+            newSchema = sf.newSchema(new StreamSource(xsdStream));
+        } finally {
+            closeQuietly(xsdStream);
+        }
+        final Schema existingSchema = SCHEMAS.putIfAbsent(xmlSchemaFile, newSchema);
+        return existingSchema != null ? existingSchema : newSchema;
+    }
+
+    private static void closeQuietly(InputStream inputStream) {
+        if (inputStream != null) {
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close XML Schema stream", e);
+            }
+        }
+    }
+
+    /*
+     * A validated config file: the raw XML, from which each caller is given their own copy, and its version.
+     * The XML is never handed out, so the snapshot cannot be changed once taken.
+     */
+    private static final class ConfigSnapshot {
+
+        private final String contextPath;
+        private final String xmlSchemaFile;
+        private final byte[] xml;
+        private final String version;
+
+        ConfigSnapshot(String contextPath, String xmlSchemaFile, byte[] xml, String version) {
+            this.contextPath = contextPath;
+            this.xmlSchemaFile = xmlSchemaFile;
+            this.xml = xml;
+            this.version = version;
+        }
+
+        boolean isFor(String contextPath, String xmlSchemaFile) {
+            return this.contextPath.equals(contextPath) && Objects.equals(this.xmlSchemaFile, xmlSchemaFile);
         }
     }
 }
@@ -1,5 +1,6 @@
 package com.gazbert.bxbot.datastore;
 
+import java.nio.file.Paths;
 
 /**
  * Locations of XML and XSD files for the entities.
@@ -28,4 +29,15 @@ public final class FileLocations {
 
     private FileLocations() {
     }
+
+    /**
+     * Returns the location of a config file in another config directory, e.g. a hosted bot's.
+     *
+     * @param configDirectory   the config directory.
+     * @param xmlConfigFilename the default location of the config file, e.g. {@link #MARKETS_CONFIG_XML_FILENAME}.
+     * @return the location of the config file in the config directory.
+     */
+    public static String inConfigDirectory(String configDirectory, String xmlConfigFilename) {
+        return Paths.get(configDirectory, Paths.get(xmlConfigFilename).getFileName().toString()).toString();
+    }
 }
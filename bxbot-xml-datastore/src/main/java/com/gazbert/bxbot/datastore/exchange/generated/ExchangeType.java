@@ -21,6 +21,14 @@ import javax.xml.bind.annotation.*;
  *   &lt;complexContent&gt;
  *     &lt;restriction base="{http://www.w3.org/2001/XMLSchema}anyType"&gt;
  *       &lt;sequence&gt;
+ *         &lt;element name="id" minOccurs="0"&gt;
+ *           &lt;simpleType&gt;
+ *             &lt;restriction base="{http://www.w3.org/2001/XMLSchema}string"&gt;
+ *               &lt;pattern value="[a-zA-Z0-9_\-]*"/&gt;
+ *               &lt;minLength value="1"/&gt;
+ *             &lt;/restriction&gt;
+ *           &lt;/simpleType&gt;
+ *         &lt;/element&gt;
  *         &lt;element name="name"&gt;
  *           &lt;simpleType&gt;
  *             &lt;restriction base="{http://www.w3.org/2001/XMLSchema}string"&gt;
@@ -48,6 +56,7 @@ import javax.xml.bind.annotation.*;
  */
 @XmlAccessorType(XmlAccessType.FIELD)
 @XmlType(name = "exchangeType", propOrder = {
+    "id",
     "name",
     "adapter",
     "authenticationConfig",
@@ -57,6 +66,7 @@ import javax.xml.bind.annotation.*;
 @XmlRootElement(name="exchange")
 public class ExchangeType {
 
+    protected String id;
     @XmlElement(required = true)
     protected String name;
     @XmlElement(required = true)
@@ -68,6 +78,30 @@ public class ExchangeType {
     @XmlElement(name = "optional-config")
     protected OptionalConfigType optionalConfig;
 
+    /**
+     * Gets the value of the id property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link String }
+     *     
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Sets the value of the id property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link String }
+     *     
+     */
+    public void setId(String value) {
+        this.id = value;
+    }
+
     /**
      * Gets the value of the name property.
      * 
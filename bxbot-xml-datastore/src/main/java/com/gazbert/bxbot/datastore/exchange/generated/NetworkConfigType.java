@@ -32,6 +32,29 @@ import javax.xml.bind.annotation.XmlType;
  *         &lt;/element&gt;
  *         &lt;element name="non-fatal-error-codes" type="{}non-fatal-error-codesType" minOccurs="0"/&gt;
  *         &lt;element name="non-fatal-error-messages" type="{}non-fatal-error-messagesType" minOccurs="0"/&gt;
+ *         &lt;element name="accept-encoding" type="{http://www.w3.org/2001/XMLSchema}string" minOccurs="0"/&gt;
+ *         &lt;element name="max-retries" minOccurs="0"&gt;
+ *           &lt;simpleType&gt;
+ *             &lt;restriction base="{http://www.w3.org/2001/XMLSchema}int"&gt;
+ *               &lt;minInclusive value="0"/&gt;
+ *             &lt;/restriction&gt;
+ *           &lt;/simpleType&gt;
+ *         &lt;/element&gt;
+ *         &lt;element name="retry-backoff-millis" minOccurs="0"&gt;
+ *           &lt;simpleType&gt;
+ *             &lt;restriction base="{http://www.w3.org/2001/XMLSchema}int"&gt;
+ *               &lt;minInclusive value="1"/&gt;
+ *             &lt;/restriction&gt;
+ *           &lt;/simpleType&gt;
+ *         &lt;/element&gt;
+ *         &lt;element name="hedge-percentile" minOccurs="0"&gt;
+ *           &lt;simpleType&gt;
+ *             &lt;restriction base="{http://www.w3.org/2001/XMLSchema}int"&gt;
+ *               &lt;minInclusive value="0"/&gt;
+ *               &lt;maxInclusive value="99"/&gt;
+ *             &lt;/restriction&gt;
+ *           &lt;/simpleType&gt;
+ *         &lt;/element&gt;
  *       &lt;/sequence&gt;
  *     &lt;/restriction&gt;
  *   &lt;/complexContent&gt;
@@ -44,7 +67,11 @@ import javax.xml.bind.annotation.XmlType;
 @XmlType(name = "network-configType", propOrder = {
     "connectionTimeout",
     "nonFatalErrorCodes",
-    "nonFatalErrorMessages"
+    "nonFatalErrorMessages",
+    "acceptEncoding",
+    "maxRetries",
+    "retryBackoffMillis",
+    "hedgePercentile"
 })
 public class NetworkConfigType {
 
@@ -54,6 +81,14 @@ public class NetworkConfigType {
     protected NonFatalErrorCodesType nonFatalErrorCodes;
     @XmlElement(name = "non-fatal-error-messages")
     protected NonFatalErrorMessagesType nonFatalErrorMessages;
+    @XmlElement(name = "accept-encoding")
+    protected String acceptEncoding;
+    @XmlElement(name = "max-retries")
+    protected Integer maxRetries;
+    @XmlElement(name = "retry-backoff-millis")
+    protected Integer retryBackoffMillis;
+    @XmlElement(name = "hedge-percentile")
+    protected Integer hedgePercentile;
 
     /**
      * Gets the value of the connectionTimeout property.
@@ -127,4 +162,100 @@ public class NetworkConfigType {
         this.nonFatalErrorMessages = value;
     }
 
+    /**
+     * Gets the value of the acceptEncoding property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link String }
+     *     
+     */
+    public String getAcceptEncoding() {
+        return acceptEncoding;
+    }
+
+    /**
+     * Sets the value of the acceptEncoding property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link String }
+     *     
+     */
+    public void setAcceptEncoding(String value) {
+        this.acceptEncoding = value;
+    }
+
+    /**
+     * Gets the value of the maxRetries property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Integer }
+     *     
+     */
+    public Integer getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Sets the value of the maxRetries property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Integer }
+     *     
+     */
+    public void setMaxRetries(Integer value) {
+        this.maxRetries = value;
+    }
+
+    /**
+     * Gets the value of the retryBackoffMillis property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Integer }
+     *     
+     */
+    public Integer getRetryBackoffMillis() {
+        return retryBackoffMillis;
+    }
+
+    /**
+     * Sets the value of the retryBackoffMillis property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Integer }
+     *     
+     */
+    public void setRetryBackoffMillis(Integer value) {
+        this.retryBackoffMillis = value;
+    }
+
+    /**
+     * Gets the value of the hedgePercentile property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Integer }
+     *     
+     */
+    public Integer getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    /**
+     * Sets the value of the hedgePercentile property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Integer }
+     *     
+     */
+    public void setHedgePercentile(Integer value) {
+        this.hedgePercentile = value;
+    }
+
 }
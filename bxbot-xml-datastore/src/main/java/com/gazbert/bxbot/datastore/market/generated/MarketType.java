@@ -61,6 +61,14 @@ import javax.xml.bind.annotation.XmlType;
  *             &lt;/restriction&gt;
  *           &lt;/simpleType&gt;
  *         &lt;/element&gt;
+ *         &lt;element name="exchange-id" minOccurs="0"&gt;
+ *           &lt;simpleType&gt;
+ *             &lt;restriction base="{http://www.w3.org/2001/XMLSchema}string"&gt;
+ *               &lt;pattern value="[a-zA-Z0-9_\-]*"/&gt;
+ *               &lt;minLength value="1"/&gt;
+ *             &lt;/restriction&gt;
+ *           &lt;/simpleType&gt;
+ *         &lt;/element&gt;
  *       &lt;/sequence&gt;
  *     &lt;/restriction&gt;
  *   &lt;/complexContent&gt;
@@ -76,7 +84,8 @@ import javax.xml.bind.annotation.XmlType;
     "baseCurrency",
     "counterCurrency",
     "enabled",
-    "tradingStrategyId"
+    "tradingStrategyId",
+    "exchangeId"
 })
 public class MarketType {
 
@@ -91,6 +100,8 @@ public class MarketType {
     protected boolean enabled;
     @XmlElement(name = "trading-strategy-id", required = true)
     protected String tradingStrategyId;
+    @XmlElement(name = "exchange-id")
+    protected String exchangeId;
 
     /**
      * Gets the value of the id property.
@@ -228,4 +239,28 @@ public class MarketType {
         this.tradingStrategyId = value;
     }
 
+    /**
+     * Gets the value of the exchangeId property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link String }
+     *     
+     */
+    public String getExchangeId() {
+        return exchangeId;
+    }
+
+    /**
+     * Sets the value of the exchangeId property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link String }
+     *     
+     */
+    public void setExchangeId(String value) {
+        this.exchangeId = value;
+    }
+
 }
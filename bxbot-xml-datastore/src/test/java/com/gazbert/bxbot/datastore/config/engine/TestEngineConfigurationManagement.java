@@ -24,15 +24,17 @@
 package com.gazbert.bxbot.datastore.config.engine;
 
 import com.gazbert.bxbot.datastore.ConfigurationManager;
+import com.gazbert.bxbot.datastore.VersionedConfig;
 import com.gazbert.bxbot.datastore.engine.generated.EngineType;
 import org.junit.Test;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.Path;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 
 /**
  * Tests the Trading Engine configuration is loaded as expected.
@@ -49,12 +51,17 @@ public class TestEngineConfigurationManagement {
     private static final String INVALID_XML_CONFIG_FILENAME = "src/test/config/engine/invalid-engine.xml";
     private static final String MISSING_XML_CONFIG_FILENAME = "src/test/config/engine/missing-engine.xml";
     private static final String XML_CONFIG_TO_SAVE_FILENAME = "src/test/config/engine/saved-engine.xml";
+    private static final String XML_CONFIG_TO_EDIT_FILENAME = "src/test/config/engine/edited-engine.xml";
 
     private static final String BOT_ID = "avro-707_1";
     private static final String BOT_NAME = "Avro 707";
     private static final String EMERGENCY_STOP_CURRENCY = "BTC";
     private static final BigDecimal EMERGENCY_STOP_BALANCE = new BigDecimal("0.5");
     private static final int TRADE_CYCLE_INTERVAL = 60;
+    private static final String UPDATED_BOT_NAME = "Avro 748";
+
+    /* Max time to wait for the config watcher to spot a file being edited - polling watchers can be slow */
+    private static final long FILE_CHANGE_TIMEOUT_MILLIS = 30 * 1000;
 
 
     @Test
@@ -105,4 +112,96 @@ public class TestEngineConfigurationManagement {
         // cleanup
         Files.delete(FileSystems.getDefault().getPath(XML_CONFIG_TO_SAVE_FILENAME));
     }
+
+    @Test
+    public void testLoadingConfigReturnsCopyCallerCanModify() {
+
+        final EngineType engine = ConfigurationManager.loadConfig(EngineType.class,
+                VALID_XML_CONFIG_FILENAME, XML_SCHEMA_FILENAME);
+        engine.setBotName(UPDATED_BOT_NAME);
+
+        final EngineType engineReloaded = ConfigurationManager.loadConfig(EngineType.class,
+                VALID_XML_CONFIG_FILENAME, XML_SCHEMA_FILENAME);
+        assertNotSame(engine, engineReloaded);
+        assertEquals(BOT_NAME, engineReloaded.getBotName());
+    }
+
+    @Test
+    public void testRootConfigAndVersionedConfigAreCopiesToo() {
+
+        final EngineType rootConfig = (EngineType) ConfigurationManager.loadRootConfig(EngineType.class,
+                VALID_XML_CONFIG_FILENAME, XML_SCHEMA_FILENAME);
+        rootConfig.setBotName(UPDATED_BOT_NAME);
+
+        final VersionedConfig<EngineType> versionedConfig = ConfigurationManager.loadVersionedConfig(EngineType.class,
+                VALID_XML_CONFIG_FILENAME, XML_SCHEMA_FILENAME);
+        assertNotSame(rootConfig, versionedConfig.getConfig());
+        assertEquals(BOT_NAME, versionedConfig.getConfig().getBotName());
+        versionedConfig.getConfig().setBotName(UPDATED_BOT_NAME);
+
+        assertEquals(BOT_NAME, ((EngineType) ConfigurationManager.loadVersionedRootConfig(EngineType.class,
+                VALID_XML_CONFIG_FILENAME, XML_SCHEMA_FILENAME).getConfig()).getBotName());
+    }
+
+    @Test
+    public void testSnapshotIsServedUntilConfigIsSaved() throws Exception {
+
+        final EngineType engineConfig = new EngineType();
+        engineConfig.setBotId(BOT_ID);
+        engineConfig.setBotName(BOT_NAME);
+        engineConfig.setEmergencyStopCurrency(EMERGENCY_STOP_CURRENCY);
+        engineConfig.setEmergencyStopBalance(EMERGENCY_STOP_BALANCE);
+        engineConfig.setTradeCycleInterval(TRADE_CYCLE_INTERVAL);
+        ConfigurationManager.saveConfig(EngineType.class, engineConfig, XML_CONFIG_TO_SAVE_FILENAME);
+
+        final String version = ConfigurationManager.getConfigVersion(EngineType.class,
+                XML_CONFIG_TO_SAVE_FILENAME, XML_SCHEMA_FILENAME);
+        final EngineType snapshot = ConfigurationManager.loadConfig(EngineType.class,
+                XML_CONFIG_TO_SAVE_FILENAME, XML_SCHEMA_FILENAME);
+        assertEquals(version, ConfigurationManager.getConfigVersion(EngineType.class,
+                XML_CONFIG_TO_SAVE_FILENAME, XML_SCHEMA_FILENAME));
+
+        engineConfig.setBotName(UPDATED_BOT_NAME);
+        ConfigurationManager.saveConfig(EngineType.class, engineConfig, XML_CONFIG_TO_SAVE_FILENAME);
+
+        final EngineType snapshotAfterSave = ConfigurationManager.loadConfig(EngineType.class,
+                XML_CONFIG_TO_SAVE_FILENAME, XML_SCHEMA_FILENAME);
+        assertNotEquals(version, ConfigurationManager.getConfigVersion(EngineType.class,
+                XML_CONFIG_TO_SAVE_FILENAME, XML_SCHEMA_FILENAME));
+        assertEquals(BOT_NAME, snapshot.getBotName());
+        assertEquals(UPDATED_BOT_NAME, snapshotAfterSave.getBotName());
+
+        // cleanup
+        Files.delete(FileSystems.getDefault().getPath(XML_CONFIG_TO_SAVE_FILENAME));
+    }
+
+    @Test
+    public void testSnapshotIsRefreshedWhenConfigFileIsEditedOutsideOfBot() throws Exception {
+
+        final Path validConfigFile = FileSystems.getDefault().getPath(VALID_XML_CONFIG_FILENAME);
+        final Path configFileToEdit = FileSystems.getDefault().getPath(XML_CONFIG_TO_EDIT_FILENAME);
+        Files.copy(validConfigFile, configFileToEdit);
+
+        try {
+            assertEquals(BOT_NAME, ConfigurationManager.loadConfig(EngineType.class,
+                    XML_CONFIG_TO_EDIT_FILENAME, XML_SCHEMA_FILENAME).getBotName());
+
+            // config files are UTF-16 with a BOM
+            final String editedXml = new String(Files.readAllBytes(validConfigFile), StandardCharsets.UTF_16)
+                    .replace(BOT_NAME, UPDATED_BOT_NAME);
+            Files.write(configFileToEdit, editedXml.getBytes(StandardCharsets.UTF_16));
+
+            final long timeout = System.currentTimeMillis() + FILE_CHANGE_TIMEOUT_MILLIS;
+            String botName = BOT_NAME;
+            while (!UPDATED_BOT_NAME.equals(botName) && System.currentTimeMillis() < timeout) {
+                Thread.sleep(50);
+                botName = ConfigurationManager.loadConfig(EngineType.class,
+                        XML_CONFIG_TO_EDIT_FILENAME, XML_SCHEMA_FILENAME).getBotName();
+            }
+            assertEquals(UPDATED_BOT_NAME, botName);
+
+        } finally {
+            Files.delete(configFileToEdit);
+        }
+    }
 }
@@ -50,9 +50,17 @@ public class TestExchangeConfigurationManagement {
     private static final String INVALID_XML_CONFIG_FILENAME = "src/test/config/exchange/invalid-exchange.xml";
     private static final String MISSING_XML_CONFIG_FILENAME = "src/test/config/exchange-/missing-exchange.xml";
     private static final String XML_CONFIG_TO_SAVE_FILENAME = "src/test/config/exchange/saved-exchange.xml";
+    private static final String VALID_MULTIPLE_EXCHANGES_XML_CONFIG_FILENAME = "src/test/config/exchange/valid-exchanges.xml";
+    private static final String MULTIPLE_EXCHANGES_XML_CONFIG_TO_SAVE_FILENAME = "src/test/config/exchange/saved-exchanges.xml";
 
     private static final String EXCHANGE_NAME = "Bitstamp";
     private static final String EXCHANGE_ADAPTER = "com.gazbert.bxbot.exchanges.BitstampExchangeAdapter";
+    private static final String EXCHANGE_ID = "bitstamp";
+
+    private static final String EXCHANGE_2_ID = "gdax";
+    private static final String EXCHANGE_2_NAME = "GDAX";
+    private static final String EXCHANGE_2_ADAPTER = "com.gazbert.bxbot.exchanges.GdaxExchangeAdapter";
+    private static final Integer EXCHANGE_2_CONNECTION_TIMEOUT = 20;
 
     private static final String CLIENT_ID_CONFIG_ITEM_KEY = "client-id";
     private static final String CLIENT_ID_CONFIG_ITEM_VALUE = "your-client-id";
@@ -101,6 +109,62 @@ public class TestExchangeConfigurationManagement {
         assertThat(exchangeType.getOptionalConfig().getConfigItems().get(1).getValue()).isEqualTo(SELL_FEE_CONFIG_ITEM_VALUE);
     }
 
+    @Test
+    public void testLoadingSingleExchangeAsRootConfigIsSuccessful() {
+
+        final Object rootConfig = ConfigurationManager.loadRootConfig(ExchangeType.class,
+                VALID_XML_CONFIG_FILENAME, XML_SCHEMA_FILENAME);
+
+        assertTrue(rootConfig instanceof ExchangeType);
+        assertThat(((ExchangeType) rootConfig).getId()).isNull();
+        assertThat(((ExchangeType) rootConfig).getName()).isEqualTo(EXCHANGE_NAME);
+    }
+
+    @Test
+    public void testLoadingValidMultipleExchangesXmlConfigFileIsSuccessful() {
+
+        final Object rootConfig = ConfigurationManager.loadRootConfig(ExchangeType.class,
+                VALID_MULTIPLE_EXCHANGES_XML_CONFIG_FILENAME, XML_SCHEMA_FILENAME);
+
+        assertTrue(rootConfig instanceof ExchangesType);
+        final List<ExchangeType> exchanges = ((ExchangesType) rootConfig).getExchanges();
+        assertThat(exchanges.size()).isEqualTo(2);
+
+        assertThat(exchanges.get(0).getId()).isEqualTo(EXCHANGE_ID);
+        assertThat(exchanges.get(0).getName()).isEqualTo(EXCHANGE_NAME);
+        assertThat(exchanges.get(0).getAdapter()).isEqualTo(EXCHANGE_ADAPTER);
+        assertThat(exchanges.get(0).getNetworkConfig().getConnectionTimeout()).isEqualTo(CONNECTION_TIMEOUT);
+
+        assertThat(exchanges.get(1).getId()).isEqualTo(EXCHANGE_2_ID);
+        assertThat(exchanges.get(1).getName()).isEqualTo(EXCHANGE_2_NAME);
+        assertThat(exchanges.get(1).getAdapter()).isEqualTo(EXCHANGE_2_ADAPTER);
+        assertThat(exchanges.get(1).getNetworkConfig().getConnectionTimeout()).isEqualTo(EXCHANGE_2_CONNECTION_TIMEOUT);
+    }
+
+    @Test
+    public void testSavingMultipleExchangesConfigToXmlIsSuccessful() throws Exception {
+
+        final ExchangesType exchangesConfig = (ExchangesType) ConfigurationManager.loadRootConfig(ExchangeType.class,
+                VALID_MULTIPLE_EXCHANGES_XML_CONFIG_FILENAME, XML_SCHEMA_FILENAME);
+
+        // Save it!
+        ConfigurationManager.saveConfig(ExchangesType.class, exchangesConfig, MULTIPLE_EXCHANGES_XML_CONFIG_TO_SAVE_FILENAME);
+
+        // Read it back in
+        final Object rootConfig = ConfigurationManager.loadRootConfig(ExchangeType.class,
+                MULTIPLE_EXCHANGES_XML_CONFIG_TO_SAVE_FILENAME, XML_SCHEMA_FILENAME);
+
+        assertTrue(rootConfig instanceof ExchangesType);
+        final List<ExchangeType> exchanges = ((ExchangesType) rootConfig).getExchanges();
+        assertThat(exchanges.size()).isEqualTo(2);
+        assertThat(exchanges.get(0).getId()).isEqualTo(EXCHANGE_ID);
+        assertThat(exchanges.get(1).getId()).isEqualTo(EXCHANGE_2_ID);
+        assertThat(exchanges.get(1).getAdapter()).isEqualTo(EXCHANGE_2_ADAPTER);
+
+        // cleanup
+        Files.delete(FileSystems.getDefault().getPath(MULTIPLE_EXCHANGES_XML_CONFIG_TO_SAVE_FILENAME));
+    }
+
     @Test(expected = IllegalStateException.class)
     public void testLoadingMissingXmlConfigFileThrowsException() {
         ConfigurationManager.loadConfig(ExchangeType.class, MISSING_XML_CONFIG_FILENAME, XML_SCHEMA_FILENAME);
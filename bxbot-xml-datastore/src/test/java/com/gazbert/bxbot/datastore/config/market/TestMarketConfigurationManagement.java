@@ -24,12 +24,16 @@
 package com.gazbert.bxbot.datastore.config.market;
 
 import com.gazbert.bxbot.datastore.ConfigurationManager;
+import com.gazbert.bxbot.datastore.StaleConfigException;
+import com.gazbert.bxbot.datastore.VersionedConfig;
 import com.gazbert.bxbot.datastore.market.generated.MarketType;
 import com.gazbert.bxbot.datastore.market.generated.MarketsType;
 import org.junit.Test;
 
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.Path;
 
 import static org.assertj.core.api.Java6Assertions.assertThat;
 import static org.junit.Assert.*;
@@ -49,6 +53,7 @@ public class TestMarketConfigurationManagement {
     private static final String INVALID_XML_CONFIG_FILENAME = "src/test/config/markets/invalid-markets.xml";
     private static final String MISSING_XML_CONFIG_FILENAME = "src/test/config/markets/missing-markets.xml";
     private static final String XML_CONFIG_TO_SAVE_FILENAME = "src/test/config/markets/saved-markets.xml";
+    private static final String XML_CONFIG_TO_UPDATE_FILENAME = "src/test/config/markets/updated-markets.xml";
 
     private static final String MARKET_1_ID = "gemini_usd/btc";
     private static final String MARKET_1_NAME = "BTC/USD";
@@ -148,4 +153,71 @@ public class TestMarketConfigurationManagement {
         // cleanup
         Files.delete(FileSystems.getDefault().getPath(XML_CONFIG_TO_SAVE_FILENAME));
     }
+
+    @Test
+    public void testSavingConfigAtExpectedVersionIsSuccessfulAndChangesVersion() throws Exception {
+
+        final Path configFile = FileSystems.getDefault().getPath(XML_CONFIG_TO_UPDATE_FILENAME);
+        Files.copy(FileSystems.getDefault().getPath(VALID_XML_CONFIG_FILENAME), configFile);
+
+        try {
+            final VersionedConfig<MarketsType> versionedMarkets = ConfigurationManager.loadVersionedConfig(
+                    MarketsType.class, XML_CONFIG_TO_UPDATE_FILENAME, XML_SCHEMA_FILENAME);
+            assertEquals(versionedMarkets.getVersion(), ConfigurationManager.getConfigVersion(
+                    MarketsType.class, XML_CONFIG_TO_UPDATE_FILENAME, XML_SCHEMA_FILENAME));
+
+            versionedMarkets.getConfig().getMarkets().remove(1);
+            final String newVersion = ConfigurationManager.saveConfig(MarketsType.class,
+                    versionedMarkets.getConfig(), XML_CONFIG_TO_UPDATE_FILENAME, versionedMarkets.getVersion());
+
+            assertNotEquals(versionedMarkets.getVersion(), newVersion);
+            final VersionedConfig<MarketsType> reloadedMarkets = ConfigurationManager.loadVersionedConfig(
+                    MarketsType.class, XML_CONFIG_TO_UPDATE_FILENAME, XML_SCHEMA_FILENAME);
+            assertEquals(newVersion, reloadedMarkets.getVersion());
+            assertEquals(1, reloadedMarkets.getConfig().getMarkets().size());
+
+            // the new file is renamed into place - no temp files should be left behind
+            try (DirectoryStream<Path> tempFiles = Files.newDirectoryStream(configFile.getParent(), "*.tmp")) {
+                assertFalse(tempFiles.iterator().hasNext());
+            }
+
+        } finally {
+            Files.delete(configFile);
+        }
+    }
+
+    @Test
+    public void testSavingConfigAtStaleVersionThrowsExceptionAndLeavesFileUntouched() throws Exception {
+
+        final Path configFile = FileSystems.getDefault().getPath(XML_CONFIG_TO_UPDATE_FILENAME);
+        Files.copy(FileSystems.getDefault().getPath(VALID_XML_CONFIG_FILENAME), configFile);
+
+        try {
+            final VersionedConfig<MarketsType> firstCaller = ConfigurationManager.loadVersionedConfig(
+                    MarketsType.class, XML_CONFIG_TO_UPDATE_FILENAME, XML_SCHEMA_FILENAME);
+            final VersionedConfig<MarketsType> secondCaller = ConfigurationManager.loadVersionedConfig(
+                    MarketsType.class, XML_CONFIG_TO_UPDATE_FILENAME, XML_SCHEMA_FILENAME);
+
+            firstCaller.getConfig().getMarkets().remove(1);
+            ConfigurationManager.saveConfig(MarketsType.class, firstCaller.getConfig(), XML_CONFIG_TO_UPDATE_FILENAME,
+                    firstCaller.getVersion());
+
+            secondCaller.getConfig().getMarkets().remove(0);
+            try {
+                ConfigurationManager.saveConfig(MarketsType.class, secondCaller.getConfig(),
+                        XML_CONFIG_TO_UPDATE_FILENAME, secondCaller.getVersion());
+                fail("Expected StaleConfigException");
+            } catch (StaleConfigException e) {
+                // expected
+            }
+
+            final MarketsType marketsReloaded = ConfigurationManager.loadConfig(MarketsType.class,
+                    XML_CONFIG_TO_UPDATE_FILENAME, XML_SCHEMA_FILENAME);
+            assertEquals(1, marketsReloaded.getMarkets().size());
+            assertEquals("btc_usd", marketsReloaded.getMarkets().get(0).getId());
+
+        } finally {
+            Files.delete(configFile);
+        }
+    }
 }